@@ -71,6 +71,12 @@ CREATE INDEX certificatedata_idx_san ON CertificateData (subjectAltName(750));
 -- CREATE INDEX certificatedata_idx_exp ON CertificateData (expireDate);
 -- CREATE INDEX certificatedata_idx_rev ON CertificateData (revocationDate);
 -- CREATE INDEX certificatedata_idx_upd ON CertificateData (updateTime);
+-- Next indexes are useful for deep pages of REST API v2 certificate searches sorted by UPDATE_TIME or EXPIRE_DATE, which continue after
+-- the last (value, fingerprint) of the previous page. They can replace certificatedata_idx_upd and certificatedata_idx_exp.
+-- CREATE INDEX certificatedata_idx_upd_fp ON CertificateData (updateTime, fingerprint);
+-- CREATE INDEX certificatedata_idx_exp_fp ON CertificateData (expireDate, fingerprint);
+-- Index useful on OCSP responders with ocsp.revocationstatusindex.enabled=true, where changed certificates are polled per issuer by updateTime.
+-- CREATE INDEX certificatedata_idx_issuer_upd ON CertificateData (issuerDN, updateTime, fingerprint);
 
 CREATE INDEX historydata_idx1 ON CertReqHistoryData (username);
 CREATE INDEX historydata_idx3 ON CertReqHistoryData (serialNumber);
@@ -52,6 +52,10 @@ public final class LdapPublisherMBData implements Serializable {
     private int connectionTimeout;
     private int readTimeout;
     private int storeTimeout;
+    private boolean useConnectionPool;
+    private int poolMinConnections;
+    private int poolMaxConnections;
+    private int poolHealthCheckInterval;
     private boolean createNonExistingUsers;
     private boolean modifyExistingUsers;
     private boolean modifyExistingAttributes;
@@ -171,6 +175,38 @@ public final class LdapPublisherMBData implements Serializable {
         this.storeTimeout = ldapPublisherStoreTimeout;
     }
 
+    public boolean isUseConnectionPool() {
+        return useConnectionPool;
+    }
+
+    public void setUseConnectionPool(final boolean useConnectionPool) {
+        this.useConnectionPool = useConnectionPool;
+    }
+
+    public int getPoolMinConnections() {
+        return poolMinConnections;
+    }
+
+    public void setPoolMinConnections(final int poolMinConnections) {
+        this.poolMinConnections = poolMinConnections;
+    }
+
+    public int getPoolMaxConnections() {
+        return poolMaxConnections;
+    }
+
+    public void setPoolMaxConnections(final int poolMaxConnections) {
+        this.poolMaxConnections = poolMaxConnections;
+    }
+
+    public int getPoolHealthCheckInterval() {
+        return poolHealthCheckInterval;
+    }
+
+    public void setPoolHealthCheckInterval(final int poolHealthCheckInterval) {
+        this.poolHealthCheckInterval = poolHealthCheckInterval;
+    }
+
     public boolean isCreateNonExistingUsers() {
         return createNonExistingUsers;
     }
@@ -345,6 +381,10 @@ public final class LdapPublisherMBData implements Serializable {
         connectionTimeout = publisher.getConnectionTimeOut();
         readTimeout = publisher.getReadTimeOut();
         storeTimeout = publisher.getStoreTimeOut();
+        useConnectionPool = publisher.getUseConnectionPool();
+        poolMinConnections = publisher.getPoolMinConnections();
+        poolMaxConnections = publisher.getPoolMaxConnections();
+        poolHealthCheckInterval = publisher.getPoolHealthCheckInterval();
         createNonExistingUsers = publisher.getCreateNonExistingUsers();
         modifyExistingUsers = publisher.getModifyExistingUsers();
         modifyExistingAttributes = publisher.getModifyExistingAttributes();
@@ -392,6 +432,10 @@ public final class LdapPublisherMBData implements Serializable {
         ldapPublisher.setConnectionTimeOut(connectionTimeout);
         ldapPublisher.setReadTimeOut(readTimeout);
         ldapPublisher.setStoreTimeOut(storeTimeout);
+        ldapPublisher.setUseConnectionPool(useConnectionPool);
+        ldapPublisher.setPoolMinConnections(poolMinConnections);
+        ldapPublisher.setPoolMaxConnections(poolMaxConnections);
+        ldapPublisher.setPoolHealthCheckInterval(poolHealthCheckInterval);
         ldapPublisher.setCreateNonExistingUsers(createNonExistingUsers);
         ldapPublisher.setModifyExistingUsers(modifyExistingUsers);
         ldapPublisher.setModifyExistingAttributes(modifyExistingAttributes);
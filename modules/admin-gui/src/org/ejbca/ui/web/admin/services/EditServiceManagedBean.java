@@ -47,6 +47,7 @@ import org.ejbca.core.model.services.workers.CRLUpdateWorker;
 import org.ejbca.core.model.services.workers.CertificateExpirationNotifierWorker;
 import org.ejbca.core.model.services.workers.DatabaseMaintenanceWorkerConstants;
 import org.ejbca.core.model.services.workers.HsmKeepAliveWorker;
+import org.ejbca.core.model.services.workers.OcspResponseUpdaterWorker;
 import org.ejbca.core.model.services.workers.PreCertificateMaintenanceWorkerConstants;
 import org.ejbca.core.model.services.workers.PublishQueueProcessWorker;
 import org.ejbca.core.model.services.workers.RenewCAWorker;
@@ -68,6 +69,7 @@ import org.ejbca.ui.web.admin.services.servicetypes.DatabaseMaintenanceWorkerTyp
 import org.ejbca.ui.web.admin.services.servicetypes.HsmKeepAliveWorkerType;
 import org.ejbca.ui.web.admin.services.servicetypes.IntervalType;
 import org.ejbca.ui.web.admin.services.servicetypes.MailActionType;
+import org.ejbca.ui.web.admin.services.servicetypes.OcspResponseUpdaterWorkerType;
 import org.ejbca.ui.web.admin.services.servicetypes.PeriodicalIntervalType;
 import org.ejbca.ui.web.admin.services.servicetypes.PreCertificateMaintenanceWorkerType;
 import org.ejbca.ui.web.admin.services.servicetypes.PublishQueueWorkerType;
@@ -285,6 +287,9 @@ public class EditServiceManagedBean extends BaseManagedBean {
         if ((cp != null) && cp.equals(HsmKeepAliveWorker.class.getName())) {
             ret = HsmKeepAliveWorkerType.NAME;
         }
+        if ((cp != null) && cp.equals(OcspResponseUpdaterWorker.class.getName())) {
+            ret = OcspResponseUpdaterWorkerType.NAME;
+        }
         if ((cp != null) && cp.equals(PreCertificateMaintenanceWorkerConstants.WORKER_CLASS)) {
             ret = PreCertificateMaintenanceWorkerType.NAME;
         }
@@ -314,6 +319,11 @@ public class EditServiceManagedBean extends BaseManagedBean {
         return (CRLDownloadWorkerType) serviceConfigurationView.getServiceTypeManager().getServiceTypeByName(name);
     }
 
+    /** Help method used to edit data in the OcspResponseUpdaterWorkerType. */
+    public OcspResponseUpdaterWorkerType getOcspResponseUpdaterType() {
+        return (OcspResponseUpdaterWorkerType) serviceConfigurationView.getServiceTypeManager().getServiceTypeByName(OcspResponseUpdaterWorkerType.NAME);
+    }
+
     /** Help method used to edit data in the PreCertificateMaintenanceWorkerType. */
     public PreCertificateMaintenanceWorkerType getPreCertificateMaintenanceWorkerType() {
         String name = PreCertificateMaintenanceWorkerType.NAME;
@@ -29,6 +29,7 @@ import org.ejbca.ui.web.admin.services.servicetypes.HsmKeepAliveWorkerType;
 import org.ejbca.ui.web.admin.services.servicetypes.PreCertificateMaintenanceWorkerType;
 import org.ejbca.ui.web.admin.services.servicetypes.MailActionType;
 import org.ejbca.ui.web.admin.services.servicetypes.NoActionType;
+import org.ejbca.ui.web.admin.services.servicetypes.OcspResponseUpdaterWorkerType;
 import org.ejbca.ui.web.admin.services.servicetypes.PeriodicalIntervalType;
 import org.ejbca.ui.web.admin.services.servicetypes.PublishQueueWorkerType;
 import org.ejbca.ui.web.admin.services.servicetypes.RenewCAWorkerType;
@@ -73,6 +74,7 @@ public class ServiceTypeManager implements Serializable {
         registerServiceType(new RolloverWorkerType());
         registerServiceType(new PublishQueueWorkerType());
         registerServiceType(new HsmKeepAliveWorkerType());
+        registerServiceType(new OcspResponseUpdaterWorkerType());
         // Enterprise Edition workers that don't use the custom worker framework
         final ServiceType[] eeWorkerTypes = { new PreCertificateMaintenanceWorkerType(), new DatabaseMaintenanceWorkerType() };
         for (final ServiceType eeWorkerType : eeWorkerTypes) {
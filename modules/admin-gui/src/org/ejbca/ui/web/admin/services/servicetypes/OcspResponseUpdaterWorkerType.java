@@ -0,0 +1,138 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.ui.web.admin.services.servicetypes;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import jakarta.faces.model.SelectItem;
+
+import org.cesecore.util.PropertyTools;
+import org.ejbca.core.model.services.IWorker;
+import org.ejbca.core.model.services.intervals.PeriodicalInterval;
+import org.ejbca.core.model.services.workers.OcspResponseUpdaterWorker;
+import org.ejbca.ui.web.jsf.configuration.EjbcaJSFHelper;
+
+/**
+ * Class managing the view of the OCSP Response Updater Worker, which re-signs pre-produced OCSP responses.
+ */
+public class OcspResponseUpdaterWorkerType extends BaseWorkerType {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final String NAME = "OCSPRESPONSEUPDATERWORKER";
+
+    private static final String WORKER_SUB_PAGE = "ocspresponseworker.xhtml";
+
+    private static final String[] CERTID_HASH_ALGORITHMS = { "SHA1", "SHA256", "SHA384", "SHA512" };
+
+    private String timeUnit = IWorker.UNIT_MINUTES;
+    private String timeValue = "30";
+    private boolean includeExpiredCertificates = false;
+    private String certIdHashAlgorithm = OcspResponseUpdaterWorker.DEFAULT_CERTID_HASH_ALGORITHM;
+    private int maxSignaturesPerSecond = OcspResponseUpdaterWorker.DEFAULT_MAX_SIGNATURES_PER_SECOND;
+
+    public OcspResponseUpdaterWorkerType() {
+        super(WORKER_SUB_PAGE, NAME, true, OcspResponseUpdaterWorker.class.getName());
+        // No action available for this worker
+        addCompatibleActionTypeName(NoActionType.NAME);
+        // Only periodical interval available for this worker
+        addCompatibleIntervalTypeName(PeriodicalIntervalType.NAME);
+    }
+
+    @Override
+    public Properties getProperties(final ArrayList<String> errorMessages) throws IOException {
+        final Properties ret = super.getProperties(errorMessages);
+        try {
+            if (Integer.parseInt(timeValue) < 1) {
+                throw new NumberFormatException();
+            }
+        } catch (NumberFormatException e) {
+            errorMessages.add("TIMEBEFOREEXPIRATIONERROR");
+        }
+        ret.setProperty(IWorker.PROP_TIMEUNIT, timeUnit);
+        ret.setProperty(IWorker.PROP_TIMEBEFOREEXPIRING, timeValue);
+        ret.setProperty(OcspResponseUpdaterWorker.PROP_INCLUDE_EXPIRED_CERTIFICATES, Boolean.toString(includeExpiredCertificates));
+        ret.setProperty(OcspResponseUpdaterWorker.PROP_CERTID_HASH_ALGORITHM, certIdHashAlgorithm);
+        ret.setProperty(OcspResponseUpdaterWorker.PROP_MAX_SIGNATURES_PER_SECOND, Integer.toString(Math.max(0, maxSignaturesPerSecond)));
+        return ret;
+    }
+
+    @Override
+    public void setProperties(final Properties properties) throws IOException {
+        super.setProperties(properties);
+        timeUnit = properties.getProperty(IWorker.PROP_TIMEUNIT, timeUnit);
+        timeValue = properties.getProperty(IWorker.PROP_TIMEBEFOREEXPIRING, timeValue);
+        includeExpiredCertificates = PropertyTools.get(properties, OcspResponseUpdaterWorker.PROP_INCLUDE_EXPIRED_CERTIFICATES, includeExpiredCertificates);
+        certIdHashAlgorithm = properties.getProperty(OcspResponseUpdaterWorker.PROP_CERTID_HASH_ALGORITHM, certIdHashAlgorithm);
+        maxSignaturesPerSecond = PropertyTools.get(properties, OcspResponseUpdaterWorker.PROP_MAX_SIGNATURES_PER_SECOND, maxSignaturesPerSecond);
+    }
+
+    public List<SelectItem> getAvailableUnits() {
+        final List<SelectItem> ret = new ArrayList<>();
+        for (final String unit : PeriodicalInterval.AVAILABLE_UNITS) {
+            ret.add(new SelectItem(unit, EjbcaJSFHelper.getBean().getText().get(unit)));
+        }
+        return ret;
+    }
+
+    public List<SelectItem> getAvailableCertIdHashAlgorithms() {
+        final List<SelectItem> ret = new ArrayList<>();
+        for (final String algorithm : CERTID_HASH_ALGORITHMS) {
+            ret.add(new SelectItem(algorithm, algorithm));
+        }
+        return ret;
+    }
+
+    public String getTimeUnit() {
+        return timeUnit;
+    }
+
+    public void setTimeUnit(final String timeUnit) {
+        this.timeUnit = timeUnit;
+    }
+
+    public String getTimeValue() {
+        return timeValue;
+    }
+
+    public void setTimeValue(final String timeValue) {
+        this.timeValue = timeValue;
+    }
+
+    public boolean isIncludeExpiredCertificates() {
+        return includeExpiredCertificates;
+    }
+
+    public void setIncludeExpiredCertificates(final boolean includeExpiredCertificates) {
+        this.includeExpiredCertificates = includeExpiredCertificates;
+    }
+
+    public String getCertIdHashAlgorithm() {
+        return certIdHashAlgorithm;
+    }
+
+    public void setCertIdHashAlgorithm(final String certIdHashAlgorithm) {
+        this.certIdHashAlgorithm = certIdHashAlgorithm;
+    }
+
+    public int getMaxSignaturesPerSecond() {
+        return maxSignaturesPerSecond;
+    }
+
+    public void setMaxSignaturesPerSecond(final int maxSignaturesPerSecond) {
+        this.maxSignaturesPerSecond = maxSignaturesPerSecond;
+    }
+}
@@ -39,6 +39,8 @@ public class PublishQueueWorkerType extends BaseEmailNotifyingWorkerType {
 	
 	private long maxNumberOfEntriesToPublish = PublishQueueProcessWorker.DEFAULT_QUEUE_WORKER_JOBS;
 	
+	private int parallelism = PublishQueueProcessWorker.DEFAULT_PARALLELISM;
+	
 
 	public PublishQueueWorkerType(){
 		super(NAME, PUBLISHQUEUEPROCESSWORKER_SUB_PAGE, PublishQueueProcessWorker.class.getName());
@@ -70,6 +72,7 @@ public class PublishQueueWorkerType extends BaseEmailNotifyingWorkerType {
 		
 		ret.setProperty(PublishQueueProcessWorker.PROP_PUBLISHER_IDS, publisherIdString);
 		ret.setProperty(PublishQueueProcessWorker.PROP_MAX_WORKER_JOBS, Long.toString(maxNumberOfEntriesToPublish));
+		ret.setProperty(PublishQueueProcessWorker.PROP_PARALLELISM, Integer.toString(Math.max(1, parallelism)));
 		return ret;
 	}
 	
@@ -88,6 +91,8 @@ public class PublishQueueWorkerType extends BaseEmailNotifyingWorkerType {
         if (properties.containsKey(PublishQueueProcessWorker.PROP_MAX_WORKER_JOBS)) {
             maxNumberOfEntriesToPublish = Integer.valueOf(properties.getProperty(PublishQueueProcessWorker.PROP_MAX_WORKER_JOBS));
         }
+        parallelism = Integer.parseInt(properties.getProperty(PublishQueueProcessWorker.PROP_PARALLELISM,
+                Integer.toString(PublishQueueProcessWorker.DEFAULT_PARALLELISM)));
 	}
 
     public List<String> getSelectedPublisherIdsToCheck() {
@@ -108,4 +113,12 @@ public class PublishQueueWorkerType extends BaseEmailNotifyingWorkerType {
         this.maxNumberOfEntriesToPublish = maxNumberOfEntriesToPublish;
     }
 
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
 }
@@ -33,6 +33,7 @@ dependencies {
     compileOnly(libs.xmlpull)
     compileOnly(libs.x509.common.util)
     compileOnly(libs.bundles.cryptotokens)
+    compileOnly(libs.caffeine)
     // hibernate
     compileOnly(libs.antlr4.runtime)
     compileOnly(libs.byte.buddy)
@@ -54,6 +55,7 @@ dependencies {
     testImplementation(project(":modules:cesecore-entity"))
     testImplementation(project(":modules:cesecore-x509ca"))
     testRuntimeOnly(libs.xpp3.min)
+    testRuntimeOnly(libs.caffeine)
 
     if (project.extra["edition"] == "ee") {
         testRuntimeOnly(project(":modules:cesecore-cvcca"))
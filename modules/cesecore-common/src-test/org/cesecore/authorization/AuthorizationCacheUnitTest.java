@@ -13,8 +13,11 @@
 package org.cesecore.authorization;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -31,11 +34,13 @@ import org.apache.log4j.Logger;
 import org.cesecore.authentication.AuthenticationFailedException;
 import org.cesecore.authentication.tokens.AlwaysAllowLocalAuthenticationToken;
 import org.cesecore.authentication.tokens.AuthenticationToken;
+import org.cesecore.authentication.tokens.PublicAccessAuthenticationToken;
 import org.cesecore.authentication.tokens.UsernamePrincipal;
 import org.cesecore.authorization.AuthorizationCache.AuthorizationCacheCallback;
 import org.cesecore.authorization.AuthorizationCache.AuthorizationResult;
 import org.cesecore.authorization.access.AuthorizationCacheReload;
 import org.cesecore.authorization.access.AuthorizationCacheReloadListener;
+import org.cesecore.roles.CompiledAccessRules;
 import org.junit.Test;
 
 /**
@@ -341,4 +346,48 @@ public class AuthorizationCacheUnitTest {
             }
         }
     }
+
+    /** Test that tokens with the same access rules share the same compiled access rules */
+    @Test
+    public void testCompiledAccessRulesAreShared() throws AuthenticationFailedException {
+        log.trace(">testCompiledAccessRulesAreShared");
+        AuthorizationCache.INSTANCE.reset();
+        final AtomicInteger updateNumber = new AtomicInteger(0);
+        final AuthenticationToken at1 = new PublicAccessAuthenticationToken("AuthorizationCacheUnitTest1");
+        final AuthenticationToken at2 = new PublicAccessAuthenticationToken("AuthorizationCacheUnitTest2");
+        final AuthenticationToken at3 = new PublicAccessAuthenticationToken("AuthorizationCacheUnitTest3");
+        final AuthorizationCacheCallback callback = new AuthorizationCacheCallback() {
+            @Override
+            public AuthorizationResult loadAuthorization(AuthenticationToken authenticationToken) throws AuthenticationFailedException {
+                final HashMap<String, Boolean> accessRules = new HashMap<>();
+                accessRules.put("/ca/", Boolean.TRUE);
+                if (authenticationToken==at3) {
+                    accessRules.put("/ca/123/", Boolean.FALSE);
+                }
+                return new AuthorizationResult(accessRules, updateNumber.get());
+            }
+            @Override
+            public long getKeepUnusedEntriesFor() {
+                return 3600000L;
+            }
+            @Override
+            public void subscribeToAuthorizationCacheReload(AuthorizationCacheReloadListener authorizationCacheReloadListener) {
+                // Not needed for this test
+            }
+        };
+        final CompiledAccessRules compiled1 = AuthorizationCache.INSTANCE.getCompiledAccessRules(at1, callback);
+        final CompiledAccessRules compiled2 = AuthorizationCache.INSTANCE.getCompiledAccessRules(at2, callback);
+        final CompiledAccessRules compiled3 = AuthorizationCache.INSTANCE.getCompiledAccessRules(at3, callback);
+        assertSame("Tokens with the same access rules should share the compiled rules", compiled1, compiled2);
+        assertNotSame(compiled1, compiled3);
+        assertTrue(compiled1.hasAccessToResource("/ca/123"));
+        assertFalse(compiled3.hasAccessToResource("/ca/123"));
+        assertSame(compiled1, AuthorizationCache.INSTANCE.getCompiledAccessRules(at1, callback));
+        // A changed authorization system should give newly compiled rules
+        updateNumber.incrementAndGet();
+        AuthorizationCache.INSTANCE.refresh(callback, updateNumber.get());
+        assertNotSame(compiled1, AuthorizationCache.INSTANCE.getCompiledAccessRules(at1, callback));
+        assertEquals(0, AuthorizationCache.INSTANCE.getCompiledAccessRules(null, callback).size());
+        log.trace("<testCompiledAccessRulesAreShared");
+    }
 }
@@ -0,0 +1,174 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.crl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Security;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.CRLNumber;
+import org.bouncycastle.asn1.x509.CRLReason;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.TBSCertList.CRLEntry;
+import org.bouncycastle.cert.X509CRLEntryHolder;
+import org.bouncycastle.cert.X509CRLHolder;
+import org.bouncycastle.cert.X509v2CRLBuilder;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.cesecore.certificates.util.cert.CrlExtensions;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests reading and comparing the entries of CRLs with {@link CrlEntryReader} and {@link CrlEntryIndex}.
+ */
+public class CrlEntryIndexUnitTest {
+
+    private static final X500Name ISSUER = new X500Name("CN=CRL Entry Index Test,O=Test,C=SE");
+    private static final Date THIS_UPDATE = new Date(1700000000000L);
+
+    private static KeyPair keyPair;
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        Security.addProvider(new BouncyCastleProvider());
+        final KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA", BouncyCastleProvider.PROVIDER_NAME);
+        kpg.initialize(1024);
+        keyPair = kpg.generateKeyPair();
+    }
+
+    /** Builds a CRL with the given serial numbers, where the reason code of each entry is given by reasonOffset */
+    private static byte[] buildCrl(final long[] serials, final int reasonOffset, final boolean withNextUpdate) throws Exception {
+        final X509v2CRLBuilder builder = new X509v2CRLBuilder(ISSUER, THIS_UPDATE);
+        if (withNextUpdate) {
+            builder.setNextUpdate(new Date(THIS_UPDATE.getTime() + 86400000L));
+        }
+        for (final long serial : serials) {
+            builder.addCRLEntry(BigInteger.valueOf(serial), new Date(THIS_UPDATE.getTime() - Math.abs(serial)),
+                    (int) ((Math.abs(serial) + reasonOffset) % 6));
+        }
+        builder.addExtension(Extension.cRLNumber, false, new CRLNumber(BigInteger.ONE));
+        return builder.build(new JcaContentSignerBuilder("SHA256WithRSA").setProvider(BouncyCastleProvider.PROVIDER_NAME).build(keyPair.getPrivate()))
+                .getEncoded();
+    }
+
+    @Test
+    public void testReaderMatchesCrl() throws Exception {
+        for (final boolean withNextUpdate : new boolean[] { true, false }) {
+            final long[] serials = { 5, -3, 300, 0x7fffffffffffL, 1, -70000 };
+            final byte[] crlBytes = buildCrl(serials, 0, withNextUpdate);
+            final CrlEntryReader reader = new CrlEntryReader(crlBytes);
+            final Iterator<?> expected = new X509CRLHolder(crlBytes).getRevokedCertificates().iterator();
+            int count = 0;
+            CRLEntry entry;
+            while ((entry = reader.next()) != null) {
+                final X509CRLEntryHolder expectedEntry = (X509CRLEntryHolder) expected.next();
+                assertEquals(expectedEntry.getSerialNumber(), entry.getUserCertificate().getValue());
+                assertEquals(expectedEntry.getRevocationDate(), entry.getRevocationDate().getDate());
+                assertEquals((int) ((Math.abs(serials[count]) % 6)), CrlExtensions.extractReasonCode(entry));
+                count++;
+                assertEquals(count, reader.getPosition());
+            }
+            assertFalse(expected.hasNext());
+            assertEquals(serials.length, count);
+        }
+    }
+
+    @Test
+    public void testEmptyCrl() throws Exception {
+        for (final boolean withNextUpdate : new boolean[] { true, false }) {
+            final byte[] crlBytes = buildCrl(new long[0], 0, withNextUpdate);
+            assertNull(new CrlEntryReader(crlBytes).next());
+            final CrlEntryIndex index = CrlEntryIndex.fromCrl(crlBytes);
+            assertEquals(0, index.size());
+            assertEquals(0, index.diff(CrlEntryIndex.fromCrl(buildCrl(new long[] { 1, 2 }, 0, true))).getChangedCount());
+            assertEquals(2, index.diff(CrlEntryIndex.fromCrl(buildCrl(new long[] { 1, 2 }, 0, true))).getRemovedCount());
+        }
+        assertEquals(0, CrlEntryIndex.fromCrl(null).size());
+    }
+
+    @Test
+    public void testSortedLikeBigInteger() throws Exception {
+        final long[] serials = { 256, 255, -1, -256, -257, 0, 128, 127, -128, -129, 0x123456789L, -0x123456789L };
+        final CrlEntryIndex index = CrlEntryIndex.fromCrl(buildCrl(serials, 0, true));
+        assertEquals(serials.length, index.size());
+        for (int i = 0; i < serials.length; i++) {
+            assertEquals(BigInteger.valueOf(serials[i]), index.getSerialNumber(i));
+        }
+        // Against a CRL with the same entries in another order, nothing has changed
+        final long[] reversed = new long[serials.length];
+        for (int i = 0; i < serials.length; i++) {
+            reversed[i] = serials[serials.length - 1 - i];
+        }
+        final CrlEntryIndex.Diff diff = index.diff(CrlEntryIndex.fromCrl(buildCrl(reversed, 0, true)));
+        assertEquals(0, diff.getChangedCount());
+        assertEquals(0, diff.getRemovedCount());
+    }
+
+    @Test
+    public void testDiff() throws Exception {
+        final long[] previous = new long[1000];
+        for (int i = 0; i < previous.length; i++) {
+            previous[i] = 10L * i;
+        }
+        final byte[] previousCrl = buildCrl(previous, 0, true);
+        // Remove every 100th entry, add 50 new entries, and change the reason code of 10 entries
+        final long[] current = new long[previous.length - 10 + 50];
+        final Set<Integer> expectedChanged = new HashSet<>();
+        int n = 0;
+        for (int i = 0; i < previous.length; i++) {
+            if (i % 100 != 0) {
+                current[n++] = previous[i];
+            }
+        }
+        for (int i = 0; i < 50; i++) {
+            expectedChanged.add(n);
+            current[n++] = 10L * i + 5;
+        }
+        final byte[] currentCrl = buildCrl(current, 0, true);
+        final CrlEntryIndex index = CrlEntryIndex.fromCrl(currentCrl);
+        CrlEntryIndex.Diff diff = index.diff(CrlEntryIndex.fromCrl(previousCrl));
+        assertEquals(50, diff.getChangedCount());
+        assertEquals(10, diff.getRemovedCount());
+        for (int i = 0; i < current.length; i++) {
+            assertEquals("Entry " + i, expectedChanged.contains(i), diff.isChanged(i));
+        }
+        // With a changed reason code, every entry is changed
+        diff = CrlEntryIndex.fromCrl(buildCrl(current, 1, true)).diff(index);
+        assertEquals(current.length, diff.getChangedCount());
+        assertEquals(0, diff.getRemovedCount());
+        // Without a previous CRL, everything is new
+        diff = index.diff(null);
+        assertEquals(current.length, diff.getChangedCount());
+        assertTrue(diff.isChanged(current.length - 1));
+    }
+
+    @Test
+    public void testReasonCodeOfEntry() throws Exception {
+        final byte[] crlBytes = buildCrl(new long[] { 4 }, 0, true);
+        final CRLEntry entry = new CrlEntryReader(crlBytes).next();
+        assertEquals(CRLReason.superseded, CrlExtensions.extractReasonCode(entry));
+        assertNull(CrlExtensions.extractInvalidityDate(entry));
+    }
+}
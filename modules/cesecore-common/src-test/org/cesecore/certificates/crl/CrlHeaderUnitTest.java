@@ -0,0 +1,170 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.crl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Security;
+import java.security.SignatureException;
+import java.security.cert.CRLException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509CRL;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.bouncycastle.asn1.DERIA5String;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.CRLDistPoint;
+import org.bouncycastle.asn1.x509.CRLNumber;
+import org.bouncycastle.asn1.x509.CRLReason;
+import org.bouncycastle.asn1.x509.DistributionPoint;
+import org.bouncycastle.asn1.x509.DistributionPointName;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.cert.X509v2CRLBuilder;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.cesecore.certificates.util.cert.CrlExtensions;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests reading the header of CRLs with {@link CrlHeader}, compared to X509CRL.
+ */
+public class CrlHeaderUnitTest {
+
+    private static final X500Name ISSUER = new X500Name("CN=CRL Header Test,O=Test,C=SE");
+    private static final Date THIS_UPDATE = new Date(1700000000000L);
+    private static final String FRESHEST_CRL_URL = "http://crl.example.com/delta.crl";
+
+    private static KeyPair keyPair;
+    private static KeyPair otherKeyPair;
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        Security.addProvider(new BouncyCastleProvider());
+        final KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA", BouncyCastleProvider.PROVIDER_NAME);
+        kpg.initialize(1024);
+        keyPair = kpg.generateKeyPair();
+        otherKeyPair = kpg.generateKeyPair();
+    }
+
+    private static byte[] buildCrl(final int entries, final boolean withNextUpdate, final boolean delta) throws Exception {
+        final X509v2CRLBuilder builder = new X509v2CRLBuilder(ISSUER, THIS_UPDATE);
+        if (withNextUpdate) {
+            builder.setNextUpdate(new Date(THIS_UPDATE.getTime() + 86400000L));
+        }
+        for (int i = 0; i < entries; i++) {
+            builder.addCRLEntry(BigInteger.valueOf(1000 + i), THIS_UPDATE, CRLReason.keyCompromise);
+        }
+        builder.addExtension(Extension.cRLNumber, false, new CRLNumber(BigInteger.valueOf(42)));
+        if (delta) {
+            builder.addExtension(Extension.deltaCRLIndicator, true, new CRLNumber(BigInteger.valueOf(40)));
+        } else {
+            final GeneralNames url = new GeneralNames(new GeneralName(GeneralName.uniformResourceIdentifier, new DERIA5String(FRESHEST_CRL_URL)));
+            builder.addExtension(Extension.freshestCRL, false,
+                    new CRLDistPoint(new DistributionPoint[] { new DistributionPoint(new DistributionPointName(url), null, null) }));
+        }
+        return builder.build(new JcaContentSignerBuilder("SHA256WithRSA").setProvider(BouncyCastleProvider.PROVIDER_NAME).build(keyPair.getPrivate()))
+                .getEncoded();
+    }
+
+    @Test
+    public void testHeaderMatchesX509Crl() throws Exception {
+        for (final int entries : new int[] { 0, 1, 5000 }) {
+            for (final boolean withNextUpdate : new boolean[] { true, false }) {
+                for (final boolean delta : new boolean[] { true, false }) {
+                    final byte[] crlBytes = buildCrl(entries, withNextUpdate, delta);
+                    final X509CRL x509crl = (X509CRL) CertificateFactory.getInstance("X.509", BouncyCastleProvider.PROVIDER_NAME)
+                            .generateCRL(new ByteArrayInputStream(crlBytes));
+                    final CrlHeader header = CrlHeader.fromCrl(crlBytes);
+                    assertEquals(x509crl.getIssuerX500Principal(), header.getIssuer());
+                    assertEquals(x509crl.getThisUpdate(), header.getThisUpdate());
+                    assertEquals(x509crl.getNextUpdate(), header.getNextUpdate());
+                    assertEquals(CrlExtensions.getCrlNumber(x509crl), header.getCrlNumber());
+                    assertEquals(CrlExtensions.getDeltaCRLIndicator(x509crl), header.getDeltaCrlIndicator());
+                    assertEquals(CrlExtensions.extractFreshestCrlDistributionPoints(x509crl),
+                            CrlExtensions.extractFreshestCrlDistributionPoints(header.getExtensions()));
+                    header.verify(keyPair.getPublic());
+                }
+            }
+        }
+        assertEquals(List.of(FRESHEST_CRL_URL), CrlExtensions.extractFreshestCrlDistributionPoints(CrlHeader.fromCrl(buildCrl(1, true, false)).getExtensions()));
+        assertEquals(BigInteger.valueOf(40), CrlHeader.fromCrl(buildCrl(1, true, true)).getDeltaCrlIndicator());
+    }
+
+    @Test
+    public void testWithoutExtensions() throws Exception {
+        final byte[] crlBytes = new X509v2CRLBuilder(ISSUER, THIS_UPDATE)
+                .build(new JcaContentSignerBuilder("SHA256WithRSA").setProvider(BouncyCastleProvider.PROVIDER_NAME).build(keyPair.getPrivate()))
+                .getEncoded();
+        final CrlHeader header = CrlHeader.fromCrl(crlBytes);
+        assertNull(header.getExtensions());
+        assertNull(header.getNextUpdate());
+        assertEquals(BigInteger.ZERO, header.getCrlNumber());
+        assertEquals(BigInteger.valueOf(-1), header.getDeltaCrlIndicator());
+        assertEquals(0, CrlExtensions.extractFreshestCrlDistributionPoints(header.getExtensions()).size());
+    }
+
+    @Test
+    public void testVerify() throws Exception {
+        final byte[] crlBytes = buildCrl(10, true, false);
+        try {
+            CrlHeader.fromCrl(crlBytes).verify(otherKeyPair.getPublic());
+            fail("CRL should not verify with another key");
+        } catch (SignatureException e) {
+            // Expected
+        }
+        // Change the serial number of the last entry, which is within the signed part
+        final byte[] tampered = crlBytes.clone();
+        // The serial number 1009 is encoded as INTEGER 0x03f1
+        final int index = indexOf(tampered, new byte[] { 0x02, 0x02, 0x03, (byte) 0xf1 });
+        tampered[index + 3]++;
+        try {
+            CrlHeader.fromCrl(tampered).verify(keyPair.getPublic());
+            fail("Modified CRL should not verify");
+        } catch (SignatureException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testMalformed() throws Exception {
+        final byte[] crlBytes = buildCrl(10, true, false);
+        for (final byte[] malformed : new byte[][] { new byte[0], Arrays.copyOf(crlBytes, crlBytes.length / 2), "not a CRL".getBytes() }) {
+            try {
+                CrlHeader.fromCrl(malformed);
+                fail("Malformed CRL should not be read");
+            } catch (CRLException e) {
+                // Expected
+            }
+        }
+    }
+
+    private static int indexOf(final byte[] bytes, final byte[] value) {
+        for (int i = 0; i <= bytes.length - value.length; i++) {
+            if (Arrays.equals(Arrays.copyOfRange(bytes, i, i + value.length), value)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Value not found");
+    }
+}
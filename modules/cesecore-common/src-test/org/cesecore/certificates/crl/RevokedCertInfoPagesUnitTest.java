@@ -0,0 +1,135 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.crl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link RevokedCertInfoPages}.
+ */
+public class RevokedCertInfoPagesUnitTest {
+
+    /** Revoked certificates by fingerprint, as in the database */
+    private final TreeMap<String, RevokedCertInfo> database = new TreeMap<>();
+    /** Number of entries in each page that was read */
+    private final List<Integer> pageSizes = new ArrayList<>();
+
+    private void addRevoked(final int count) {
+        for (int i = 0; i < count; i++) {
+            final String fingerprint = String.format("%040x", database.size());
+            database.put(fingerprint, new RevokedCertInfo(fingerprint.getBytes(), BigInteger.valueOf(database.size()).toByteArray(), 1000L,
+                    RevocationReasons.KEYCOMPROMISE.getDatabaseValue(), 2000L));
+        }
+    }
+
+    private List<RevokedCertInfo> readPage(final String afterFingerprint, final int maxResults) {
+        final List<RevokedCertInfo> ret = new ArrayList<>();
+        for (final RevokedCertInfo entry : (afterFingerprint == null ? database : database.tailMap(afterFingerprint, false)).values()) {
+            if (ret.size() == maxResults) {
+                break;
+            }
+            // A new object for each read, as from the database
+            ret.add(new RevokedCertInfo(entry.getCertificateFingerprint().getBytes(), entry.getUserCertificate().toByteArray(),
+                    entry.getRevocationDate().getTime(), entry.getReason(), entry.getExpireDate().getTime()));
+        }
+        pageSizes.add(ret.size());
+        return ret;
+    }
+
+    private static List<BigInteger> serialNumbers(final Iterable<RevokedCertInfo> entries) {
+        final List<BigInteger> ret = new ArrayList<>();
+        for (final RevokedCertInfo entry : entries) {
+            ret.add(entry.getUserCertificate());
+        }
+        return ret;
+    }
+
+    @Test
+    public void testReadInPages() {
+        addRevoked(25);
+        final RevokedCertInfoPages pages = RevokedCertInfoPages.of(this::readPage, 10);
+        assertEquals(serialNumbers(database.values()), serialNumbers(pages));
+        assertEquals(List.of(10, 10, 5), pageSizes);
+        // Every iteration reads the pages again
+        pageSizes.clear();
+        assertEquals(25, pages.size());
+        assertEquals(List.of(10, 10, 5), pageSizes);
+    }
+
+    @Test
+    public void testLastPageFull() {
+        addRevoked(20);
+        pageSizes.clear();
+        assertEquals(20, RevokedCertInfoPages.of(this::readPage, 10).size());
+        assertEquals(List.of(10, 10, 0), pageSizes);
+        pageSizes.clear();
+        database.clear();
+        assertEquals(0, RevokedCertInfoPages.of(this::readPage, 10).size());
+        assertEquals(List.of(0), pageSizes);
+    }
+
+    @Test
+    public void testEntriesRemovedWhileIterating() {
+        addRevoked(25);
+        final List<BigInteger> read = new ArrayList<>();
+        for (final RevokedCertInfo entry : RevokedCertInfoPages.of(this::readPage, 10)) {
+            read.add(entry.getUserCertificate());
+            // Archived after it has been read, which does not move the following pages
+            database.remove(entry.getCertificateFingerprint());
+        }
+        assertEquals(25, read.size());
+        assertEquals(0, database.size());
+    }
+
+    @Test
+    public void testAppendAndFilter() {
+        addRevoked(5);
+        final List<RevokedCertInfo> previousName = new ArrayList<>();
+        previousName.add(new RevokedCertInfo("old".getBytes(), BigInteger.valueOf(100).toByteArray(), 0L,
+                RevocationReasons.REMOVEFROMCRL.getDatabaseValue(), 2000L));
+        previousName.add(new RevokedCertInfo("older".getBytes(), BigInteger.valueOf(101).toByteArray(), 0L,
+                RevocationReasons.CACOMPROMISE.getDatabaseValue(), 2000L));
+        final RevokedCertInfoPages entries = new RevokedCertInfoPages().append(previousName).append(RevokedCertInfoPages.of(this::readPage, 2))
+                .filter(entry -> {
+                    if (!entry.isRevocationDateSet()) {
+                        entry.setRevocationDate(new Date(3000L));
+                    }
+                    return entry.getReason() != RevocationReasons.REMOVEFROMCRL.getDatabaseValue();
+                });
+        final List<BigInteger> expected = new ArrayList<>();
+        expected.add(BigInteger.valueOf(101));
+        expected.addAll(serialNumbers(database.values()));
+        assertEquals(expected, serialNumbers(entries));
+        assertEquals(3000L, entries.iterator().next().getRevocationDate().getTime());
+        assertEquals(6, entries.size());
+    }
+
+    @Test
+    public void testInvalidPageSize() {
+        try {
+            RevokedCertInfoPages.of(this::readPage, 0);
+            fail("Page size 0 should not be allowed");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+}
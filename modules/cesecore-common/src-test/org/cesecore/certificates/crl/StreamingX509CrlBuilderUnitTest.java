@@ -0,0 +1,115 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.crl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Security;
+import java.util.Date;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.CRLNumber;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.cert.X509CRLHolder;
+import org.bouncycastle.cert.X509v2CRLBuilder;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentVerifierProviderBuilder;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests that the streaming CRL builder produces the same encoding as X509v2CRLBuilder.
+ */
+public class StreamingX509CrlBuilderUnitTest {
+
+    private static final X500Name ISSUER = new X500Name("CN=Streaming CRL Test,O=Test,C=SE");
+    private static final Date THIS_UPDATE = new Date(1700000000000L);
+    private static final Date NEXT_UPDATE = new Date(1700086400000L);
+
+    private static KeyPair keyPair;
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        Security.addProvider(new BouncyCastleProvider());
+        final KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA", BouncyCastleProvider.PROVIDER_NAME);
+        kpg.initialize(1024);
+        keyPair = kpg.generateKeyPair();
+    }
+
+    private static ContentSigner signer() throws Exception {
+        // PKCS#1 v1.5 signatures are deterministic, so the complete encodings can be compared
+        return new JcaContentSignerBuilder("SHA256WithRSA").setProvider(BouncyCastleProvider.PROVIDER_NAME).build(keyPair.getPrivate());
+    }
+
+    private static byte[] buildReference(final int entries) throws Exception {
+        final X509v2CRLBuilder builder = new X509v2CRLBuilder(ISSUER, THIS_UPDATE);
+        builder.setNextUpdate(NEXT_UPDATE);
+        for (int i = 0; i < entries; i++) {
+            if (i % 3 == 0) {
+                builder.addCRLEntry(BigInteger.valueOf(1000L + i), new Date(THIS_UPDATE.getTime() - i * 1000L), i % 11, new Date(THIS_UPDATE.getTime() - i * 2000L));
+            } else {
+                builder.addCRLEntry(BigInteger.valueOf(1000L + i), new Date(THIS_UPDATE.getTime() - i * 1000L), i % 11);
+            }
+        }
+        builder.addExtension(Extension.cRLNumber, false, new CRLNumber(BigInteger.valueOf(entries)));
+        return builder.build(signer()).getEncoded();
+    }
+
+    private static X509CRLHolder buildStreaming(final StreamingX509CrlBuilder builder, final int entries) throws Exception {
+        for (int i = 0; i < entries; i++) {
+            if (i % 3 == 0) {
+                builder.addCRLEntry(BigInteger.valueOf(1000L + i), new Date(THIS_UPDATE.getTime() - i * 1000L), i % 11, new Date(THIS_UPDATE.getTime() - i * 2000L));
+            } else {
+                builder.addCRLEntry(BigInteger.valueOf(1000L + i), new Date(THIS_UPDATE.getTime() - i * 1000L), i % 11);
+            }
+        }
+        builder.addExtension(Extension.cRLNumber, false, new CRLNumber(BigInteger.valueOf(entries)));
+        return builder.build(signer());
+    }
+
+    @Test
+    public void testSameEncodingAsBuilder() throws Exception {
+        for (final int entries : new int[] { 0, 1, 5, 2000 }) {
+            final StreamingX509CrlBuilder builder = new StreamingX509CrlBuilder(ISSUER, THIS_UPDATE, NEXT_UPDATE, -1);
+            final X509CRLHolder crl = buildStreaming(builder, entries);
+            assertArrayEquals("Encoding differs for a CRL with " + entries + " entries.", buildReference(entries), crl.getEncoded());
+            assertEquals(entries, crl.getRevokedCertificates().size());
+            assertTrue(builder.isSignatureValid(new JcaContentVerifierProviderBuilder().setProvider(BouncyCastleProvider.PROVIDER_NAME).build(keyPair.getPublic())));
+        }
+    }
+
+    @Test
+    public void testTemporaryFile() throws Exception {
+        final StreamingX509CrlBuilder builder = new StreamingX509CrlBuilder(ISSUER, THIS_UPDATE, NEXT_UPDATE, 1024);
+        final X509CRLHolder crl = buildStreaming(builder, 2000);
+        assertArrayEquals("Encoding should not depend on where the entries are buffered.", buildReference(2000), crl.getEncoded());
+        assertTrue(crl.isSignatureValid(new JcaContentVerifierProviderBuilder().setProvider(BouncyCastleProvider.PROVIDER_NAME).build(keyPair.getPublic())));
+    }
+
+    @Test
+    public void testWrongVerificationKey() throws Exception {
+        final StreamingX509CrlBuilder builder = new StreamingX509CrlBuilder(ISSUER, THIS_UPDATE, NEXT_UPDATE, -1);
+        buildStreaming(builder, 10);
+        final KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA", BouncyCastleProvider.PROVIDER_NAME);
+        kpg.initialize(1024);
+        assertFalse(builder.isSignatureValid(new JcaContentVerifierProviderBuilder().setProvider(BouncyCastleProvider.PROVIDER_NAME).build(kpg.generateKeyPair().getPublic())));
+    }
+}
@@ -0,0 +1,197 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.ocsp.cache;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import jakarta.transaction.Status;
+import jakarta.transaction.Synchronization;
+import jakarta.transaction.TransactionSynchronizationRegistry;
+
+import org.bouncycastle.cert.ocsp.CertificateID;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.bouncycastle.cert.ocsp.OCSPRespBuilder;
+import org.bouncycastle.cert.ocsp.jcajce.JcaCertificateID;
+import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
+import org.cesecore.config.ConfigurationHolder;
+import org.cesecore.config.OcspConfiguration;
+import org.cesecore.util.ComponentMetrics;
+import org.cesecore.util.ComponentMetrics.Sample;
+import org.easymock.EasyMock;
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.keyfactor.util.CertTools;
+import com.keyfactor.util.CryptoProviderTools;
+import com.keyfactor.util.crypto.algorithm.AlgorithmConstants;
+import com.keyfactor.util.keys.KeyTools;
+
+/**
+ * Unit tests for {@link OcspResponseCache}.
+ */
+public class OcspResponseCacheUnitTest {
+
+    private static final String ISSUER_DN = "CN=OcspResponseCacheUnitTest";
+    private static final String OTHER_ISSUER_DN = "CN=Other";
+
+    private static X509Certificate caCertificate;
+    private static OCSPResp response;
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        CryptoProviderTools.installBCProviderIfNotAvailable();
+        ConfigurationHolder.updateConfiguration(OcspConfiguration.RESPONSE_CACHE_MAX_SIZE, "100000");
+        ConfigurationHolder.updateConfiguration(OcspConfiguration.RESPONSE_CACHE_MAX_AGE, "60000");
+        final KeyPair keys = KeyTools.genKeys("1024", AlgorithmConstants.KEYALGORITHM_RSA);
+        caCertificate = CertTools.genSelfCert(ISSUER_DN, 365, null, keys.getPrivate(), keys.getPublic(),
+                AlgorithmConstants.SIGALG_SHA256_WITH_RSA, true);
+        response = new OCSPRespBuilder().build(OCSPRespBuilder.SUCCESSFUL, null);
+    }
+
+    @After
+    public void after() {
+        OcspResponseCache.INSTANCE.invalidateAll();
+    }
+
+    private CertificateID createCertId(final long serialNumber) throws Exception {
+        return new JcaCertificateID(new JcaDigestCalculatorProviderBuilder().build().get(CertificateID.HASH_SHA1), caCertificate,
+                BigInteger.valueOf(serialNumber));
+    }
+
+    @Test
+    public void cachedUntilNextUpdate() throws Exception {
+        assertTrue(OcspResponseCache.INSTANCE.isEnabled());
+        OcspResponseCache.INSTANCE.put(ISSUER_DN, createCertId(1), response, 100, System.currentTimeMillis() + 10000, 0, null);
+        // An equal CertID from another request finds the response
+        final OcspResponseCache.Entry entry = OcspResponseCache.INSTANCE.get(createCertId(1));
+        assertNotNull("Response should be cached", entry);
+        assertSame(response, entry.getResponse());
+        assertNull("Other serial numbers should not be found", OcspResponseCache.INSTANCE.get(createCertId(2)));
+        // Responses are not cached past their nextUpdate
+        OcspResponseCache.INSTANCE.put(ISSUER_DN, createCertId(3), response, 100, System.currentTimeMillis() + 100, 0, null);
+        Thread.sleep(200);
+        assertNull("Response should have expired", OcspResponseCache.INSTANCE.get(createCertId(3)));
+        OcspResponseCache.INSTANCE.put(ISSUER_DN, createCertId(4), response, 100, System.currentTimeMillis() - 1, 0, null);
+        assertNull("Expired response should not be cached", OcspResponseCache.INSTANCE.get(createCertId(4)));
+    }
+
+    /** @return a registry of an active transaction, that keeps the registered synchronizations in the given list */
+    private static TransactionSynchronizationRegistry activeTransaction(final List<Synchronization> synchronizations) {
+        final Map<Object, Object> resources = new HashMap<>();
+        final TransactionSynchronizationRegistry registry = EasyMock.createMock(TransactionSynchronizationRegistry.class);
+        expect(registry.getTransactionStatus()).andReturn(Status.STATUS_ACTIVE).anyTimes();
+        expect(registry.getResource(anyObject())).andAnswer(() -> resources.get(EasyMock.getCurrentArguments()[0])).anyTimes();
+        registry.putResource(anyObject(), anyObject());
+        expectLastCall().andAnswer(() -> {
+            resources.put(EasyMock.getCurrentArguments()[0], EasyMock.getCurrentArguments()[1]);
+            return null;
+        }).anyTimes();
+        registry.registerInterposedSynchronization(anyObject(Synchronization.class));
+        expectLastCall().andAnswer(() -> {
+            synchronizations.add((Synchronization) EasyMock.getCurrentArguments()[0]);
+            return null;
+        }).anyTimes();
+        EasyMock.replay(registry);
+        return registry;
+    }
+
+    @Test
+    public void invalidate() throws Exception {
+        OcspResponseCache.INSTANCE.put(ISSUER_DN, createCertId(1), response, 100, System.currentTimeMillis() + 10000, 0, null);
+        OcspResponseCache.INSTANCE.put(ISSUER_DN, createCertId(2), response, 100, System.currentTimeMillis() + 10000, 0, null);
+        OcspResponseCache.INSTANCE.invalidate(OTHER_ISSUER_DN, BigInteger.ONE);
+        assertNotNull("Response of a certificate with the same serial number from another issuer should be kept",
+                OcspResponseCache.INSTANCE.get(createCertId(1)));
+        OcspResponseCache.INSTANCE.invalidate(ISSUER_DN, BigInteger.ONE);
+        assertNull("Response should have been removed", OcspResponseCache.INSTANCE.get(createCertId(1)));
+        assertNotNull("Response of other certificate should be kept", OcspResponseCache.INSTANCE.get(createCertId(2)));
+        assertEquals(1, OcspResponseCache.INSTANCE.getIndexedCount());
+        OcspResponseCache.INSTANCE.invalidateIssuer(ISSUER_DN);
+        assertNull("Responses of the issuer should have been removed", OcspResponseCache.INSTANCE.get(createCertId(2)));
+        assertEquals(0, OcspResponseCache.INSTANCE.getIndexedCount());
+    }
+
+    @Test
+    public void expiredResponsesAreRemovedFromIndex() throws Exception {
+        OcspResponseCache.INSTANCE.put(ISSUER_DN, createCertId(1), response, 100, System.currentTimeMillis() + 100, 0, null);
+        assertEquals(1, OcspResponseCache.INSTANCE.getIndexedCount());
+        // Caffeine evicts entries with variable expiration on a timer wheel with a resolution of about one second
+        Thread.sleep(1500);
+        assertNull(OcspResponseCache.INSTANCE.get(createCertId(1)));
+        assertEquals(0, OcspResponseCache.INSTANCE.getIndexedCount());
+    }
+
+    @Test
+    public void invalidateAfterCommit() throws Exception {
+        OcspResponseCache.INSTANCE.put(ISSUER_DN, createCertId(1), response, 100, System.currentTimeMillis() + 10000, 0, null);
+        OcspResponseCache.INSTANCE.put(ISSUER_DN, createCertId(2), response, 100, System.currentTimeMillis() + 10000, 0, null);
+        final List<Synchronization> synchronizations = new ArrayList<>();
+        final TransactionSynchronizationRegistry registry = activeTransaction(synchronizations);
+        OcspResponseCache.INSTANCE.invalidateAfterCommit(registry, ISSUER_DN, BigInteger.ONE);
+        OcspResponseCache.INSTANCE.invalidateAfterCommit(registry, ISSUER_DN, BigInteger.TWO);
+        assertEquals("All changes of a transaction should be handled together", 1, synchronizations.size());
+        assertNotNull("Response should be kept until the change is committed", OcspResponseCache.INSTANCE.get(createCertId(1)));
+        synchronizations.get(0).afterCompletion(Status.STATUS_COMMITTED);
+        assertNull(OcspResponseCache.INSTANCE.get(createCertId(1)));
+        assertNull(OcspResponseCache.INSTANCE.get(createCertId(2)));
+        // Nothing has changed if the transaction is rolled back
+        OcspResponseCache.INSTANCE.put(ISSUER_DN, createCertId(1), response, 100, System.currentTimeMillis() + 10000, 0, null);
+        final List<Synchronization> rolledBack = new ArrayList<>();
+        OcspResponseCache.INSTANCE.invalidateAfterCommit(activeTransaction(rolledBack), ISSUER_DN, BigInteger.ONE);
+        rolledBack.get(0).afterCompletion(Status.STATUS_ROLLEDBACK);
+        assertNotNull(OcspResponseCache.INSTANCE.get(createCertId(1)));
+        // Without a transaction the response is removed at once
+        OcspResponseCache.INSTANCE.invalidateAfterCommit(null, ISSUER_DN, BigInteger.ONE);
+        assertNull(OcspResponseCache.INSTANCE.get(createCertId(1)));
+    }
+
+    private static Map<String, Double> getMetrics() {
+        final Map<String, Double> ret = new HashMap<>();
+        for (final Sample sample : ComponentMetrics.INSTANCE.getSamples()) {
+            ret.put(sample.getName(), sample.getValue());
+        }
+        return ret;
+    }
+
+    @Test
+    public void metricsAreExported() throws Exception {
+        final Map<String, Double> before = getMetrics();
+        OcspResponseCache.INSTANCE.put(ISSUER_DN, createCertId(1), response, 100, System.currentTimeMillis() + 10000, 0, null);
+        assertNotNull(OcspResponseCache.INSTANCE.get(createCertId(1)));
+        assertNull(OcspResponseCache.INSTANCE.get(createCertId(2)));
+        OcspResponseCache.INSTANCE.invalidate(ISSUER_DN, BigInteger.ONE);
+        final Map<String, Double> after = getMetrics();
+        assertEquals(1, after.get("ejbca_ocsp_response_cache_hits_total") - before.getOrDefault("ejbca_ocsp_response_cache_hits_total", 0.0), 0);
+        assertEquals(1, after.get("ejbca_ocsp_response_cache_misses_total") - before.getOrDefault("ejbca_ocsp_response_cache_misses_total", 0.0), 0);
+        assertEquals(1, after.get("ejbca_ocsp_response_cache_invalidations_total")
+                - before.getOrDefault("ejbca_ocsp_response_cache_invalidations_total", 0.0), 0);
+        assertNotNull(after.get("ejbca_ocsp_response_cache_hit_ratio"));
+        assertNotNull(after.get("ejbca_ocsp_response_cache_evictions_total"));
+    }
+}
@@ -0,0 +1,128 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.ocsp.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.cesecore.certificates.certificate.CertificateConstants;
+import org.cesecore.certificates.certificate.CertificateStatus;
+import org.cesecore.certificates.certificateprofile.CertificateProfileConstants;
+import org.cesecore.certificates.crl.RevokedCertInfo;
+import org.cesecore.util.ComponentMetrics;
+import org.cesecore.util.ComponentMetrics.Sample;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test of the in-memory index of certificate revocation status used by the OCSP responder.
+ */
+public class OcspRevocationStatusIndexUnitTest {
+
+    private static final String ISSUER1 = "CN=Issuer1";
+    private static final String ISSUER2 = "CN=Issuer2";
+
+    @Before
+    public void before() {
+        OcspRevocationStatusIndex.INSTANCE.flush();
+    }
+
+    @Test
+    public void testLookupBeforeInitialFill() {
+        OcspRevocationStatusIndex.INSTANCE.update(ISSUER1, BigInteger.ONE, CertificateConstants.CERT_ACTIVE, -1L, RevokedCertInfo.NOT_REVOKED, 1000L, 1, 10L);
+        assertNull("Issuer that has not been completely filled should not answer lookups.", OcspRevocationStatusIndex.INSTANCE.getStatus(ISSUER1, BigInteger.ONE));
+        assertEquals("Highest update time should not be used before the initial fill is complete.", -1L, OcspRevocationStatusIndex.INSTANCE.getHighestUpdateTime(ISSUER1));
+        OcspRevocationStatusIndex.INSTANCE.setRefreshed(ISSUER1, System.currentTimeMillis());
+        assertEquals(CertificateStatus.OK, OcspRevocationStatusIndex.INSTANCE.getStatus(ISSUER1, BigInteger.ONE));
+        assertEquals(10L, OcspRevocationStatusIndex.INSTANCE.getHighestUpdateTime(ISSUER1));
+        assertEquals(1, OcspRevocationStatusIndex.INSTANCE.getHitCount());
+        assertEquals(1, OcspRevocationStatusIndex.INSTANCE.getMissCount());
+    }
+
+    @Test
+    public void testStatusInterpretation() {
+        OcspRevocationStatusIndex.INSTANCE.update(ISSUER1, BigInteger.valueOf(1), CertificateConstants.CERT_REVOKED, 500L,
+                RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE, 1000L, 2, 10L);
+        OcspRevocationStatusIndex.INSTANCE.update(ISSUER1, BigInteger.valueOf(2), CertificateConstants.CERT_ARCHIVED, 500L,
+                RevokedCertInfo.REVOCATION_REASON_SUPERSEDED, 1000L, 2, 11L);
+        OcspRevocationStatusIndex.INSTANCE.update(ISSUER1, BigInteger.valueOf(3), CertificateConstants.CERT_ARCHIVED, -1L,
+                RevokedCertInfo.NOT_REVOKED, 1000L, null, 12L);
+        OcspRevocationStatusIndex.INSTANCE.setRefreshed(ISSUER1, System.currentTimeMillis());
+        final CertificateStatus revoked = OcspRevocationStatusIndex.INSTANCE.getStatus(ISSUER1, BigInteger.valueOf(1));
+        assertEquals(CertificateStatus.REVOKED, revoked);
+        assertTrue(revoked.isRevoked());
+        assertEquals(500L, revoked.revocationDate.getTime());
+        assertEquals(RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE, revoked.revocationReason);
+        assertEquals(1000L, revoked.getExpirationDate());
+        assertEquals(2, revoked.certificateProfileId);
+        assertEquals("Archived certificate with a revocation reason is revoked.", CertificateStatus.REVOKED,
+                OcspRevocationStatusIndex.INSTANCE.getStatus(ISSUER1, BigInteger.valueOf(2)));
+        final CertificateStatus archived = OcspRevocationStatusIndex.INSTANCE.getStatus(ISSUER1, BigInteger.valueOf(3));
+        assertEquals("Archived certificate without a revocation reason is not revoked.", CertificateStatus.OK, archived);
+        assertEquals(CertificateProfileConstants.CERTPROFILE_NO_PROFILE, archived.certificateProfileId);
+        assertEquals(12L, OcspRevocationStatusIndex.INSTANCE.getHighestUpdateTime(ISSUER1));
+    }
+
+    @Test
+    public void testUpdateReplacesStatus() {
+        OcspRevocationStatusIndex.INSTANCE.update(ISSUER1, BigInteger.TEN, CertificateConstants.CERT_ACTIVE, -1L, RevokedCertInfo.NOT_REVOKED, 1000L, 1, 10L);
+        OcspRevocationStatusIndex.INSTANCE.setRefreshed(ISSUER1, System.currentTimeMillis());
+        assertFalse(OcspRevocationStatusIndex.INSTANCE.getStatus(ISSUER1, BigInteger.TEN).isRevoked());
+        OcspRevocationStatusIndex.INSTANCE.update(ISSUER1, BigInteger.TEN, CertificateConstants.CERT_REVOKED, 20L, RevokedCertInfo.REVOCATION_REASON_CERTIFICATEHOLD, 1000L, 1, 20L);
+        assertTrue(OcspRevocationStatusIndex.INSTANCE.getStatus(ISSUER1, BigInteger.TEN).isRevoked());
+        assertEquals(1, OcspRevocationStatusIndex.INSTANCE.getSize());
+        // Re-reading an older row during the overlap window should not move the high-water mark backwards
+        OcspRevocationStatusIndex.INSTANCE.update(ISSUER1, BigInteger.ONE, CertificateConstants.CERT_ACTIVE, -1L, RevokedCertInfo.NOT_REVOKED, 1000L, 1, 5L);
+        assertEquals(20L, OcspRevocationStatusIndex.INSTANCE.getHighestUpdateTime(ISSUER1));
+    }
+
+    @Test
+    public void testIssuersAreSeparateAndRetained() {
+        OcspRevocationStatusIndex.INSTANCE.update(ISSUER1, BigInteger.ONE, CertificateConstants.CERT_REVOKED, 20L, RevokedCertInfo.REVOCATION_REASON_UNSPECIFIED, 1000L, 1, 10L);
+        OcspRevocationStatusIndex.INSTANCE.update(ISSUER2, BigInteger.ONE, CertificateConstants.CERT_ACTIVE, -1L, RevokedCertInfo.NOT_REVOKED, 1000L, 1, 10L);
+        OcspRevocationStatusIndex.INSTANCE.setRefreshed(ISSUER1, System.currentTimeMillis());
+        OcspRevocationStatusIndex.INSTANCE.setRefreshed(ISSUER2, System.currentTimeMillis());
+        assertEquals(CertificateStatus.REVOKED, OcspRevocationStatusIndex.INSTANCE.getStatus(ISSUER1, BigInteger.ONE));
+        assertEquals(CertificateStatus.OK, OcspRevocationStatusIndex.INSTANCE.getStatus(ISSUER2, BigInteger.ONE));
+        assertNull("Unknown serial number should not be answered by the index.", OcspRevocationStatusIndex.INSTANCE.getStatus(ISSUER2, BigInteger.TEN));
+        OcspRevocationStatusIndex.INSTANCE.retainIssuers(Collections.singleton(ISSUER2));
+        assertNull("Issuer that is no longer served should have been removed.", OcspRevocationStatusIndex.INSTANCE.getStatus(ISSUER1, BigInteger.ONE));
+        assertEquals(1, OcspRevocationStatusIndex.INSTANCE.getSize());
+        assertTrue(OcspRevocationStatusIndex.INSTANCE.getMaxStalenessMs() >= 0);
+    }
+
+    @Test
+    public void testMetricsAreExported() {
+        final long refreshed = System.currentTimeMillis() - 5000L;
+        OcspRevocationStatusIndex.INSTANCE.update(ISSUER1, BigInteger.ONE, CertificateConstants.CERT_ACTIVE, -1L, RevokedCertInfo.NOT_REVOKED, 1000L, 1, 10L);
+        OcspRevocationStatusIndex.INSTANCE.setRefreshed(ISSUER1, refreshed);
+        OcspRevocationStatusIndex.INSTANCE.getStatus(ISSUER1, BigInteger.ONE);
+        OcspRevocationStatusIndex.INSTANCE.getStatus(ISSUER1, BigInteger.TEN);
+        OcspRevocationStatusIndex.INSTANCE.getStatus(ISSUER2, BigInteger.ONE);
+        final Map<String, Double> values = new HashMap<>();
+        for (final Sample sample : ComponentMetrics.INSTANCE.getSamples()) {
+            values.put(sample.getName(), sample.getValue());
+        }
+        assertEquals(1, values.get("ejbca_ocsp_status_index_entries"), 0);
+        assertEquals(1, values.get("ejbca_ocsp_status_index_hits_total"), 0);
+        assertEquals(2, values.get("ejbca_ocsp_status_index_misses_total"), 0);
+        assertTrue("Staleness should be at least the time since the refresh", values.get("ejbca_ocsp_status_index_max_staleness_seconds") >= 5);
+    }
+}
@@ -13,8 +13,13 @@
 
 package org.cesecore.certificates.ocsp.logging;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.lang.reflect.Method;
 
 import org.apache.log4j.Logger;
@@ -60,7 +65,34 @@ public class PatternLoggerUnitTest {
         log.trace("<testPatternLoggerInternal");
     }
     
-    private class TestPatternLogger extends PatternLogger {
+    /** Values are written as is, and placeholders without a value or with an unknown key are kept. */
+    @Test
+    public void testInterpolateValues() {
+        final PatternLogger patternLogger = new TestPatternLogger("\\$\\{(.+?)\\}", "${A};${B};${C};${D};${E};${A}", "yyyy", "GMT");
+        patternLogger.paramPut("A", "$1 \\, CN=x");
+        patternLogger.paramPut("B", new byte[] { (byte) 0xab, 0x01 });
+        patternLogger.paramPut("C", 42);
+        patternLogger.paramPut("D", (String) null);
+        patternLogger.paramPut("F", "not in the pattern");
+        assertEquals("$1 \\, CN=x;ab01;42;;${E};$1 \\, CN=x", patternLogger.interpolate());
+    }
+
+    /** The parsed pattern is not serialized, and has to be restored after deserialization. */
+    @Test
+    public void testSerialization() throws Exception {
+        final PatternLogger patternLogger = new TestPatternLogger("\\$\\{(.+?)\\}", "${A}-${" + PatternLogger.LOG_ID + "}", "yyyy", "GMT");
+        patternLogger.paramPut("A", "value");
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+            oos.writeObject(patternLogger);
+        }
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray()))) {
+            final PatternLogger deserialized = (PatternLogger) ois.readObject();
+            assertEquals("value-0", deserialized.interpolate());
+        }
+    }
+
+    private static class TestPatternLogger extends PatternLogger {
 
         private static final long serialVersionUID = -8096112483409703781L;
 
@@ -22,6 +22,7 @@ import java.security.interfaces.RSAPublicKey;
 import java.security.spec.RSAPublicKeySpec;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 import org.apache.log4j.Logger;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
@@ -340,10 +341,9 @@ public class RsaKeyValidatorUnitTest {
 
         BigInteger modulus2048 = new BigInteger(
                 "135253271074378184290126435546666091495057097246829408541196270645232645477924688225635651598675866808820785572943817237337557196378645497560351383628324706536080486180455448996646985667891738346505771576771134762012536044972691177382786401341057394042017796805414677173199794244010442024923795849646025390781");
-        BigInteger modulus4096 = new BigInteger(
-                "135253271074378184290126435546666091495057097246829408541196270645232645477924688225635651598675866808820785572943817237337557196378645497560351383628324706536080486180455448996646985667891738346505771576771134762012536044972691177382786401341057394042017796805414677173199794244010442024923795849646025390781135253271074378184290126435546666091495057097246829408541196270645232645477924688225635651598675866808820785572943817237337557196378645497560351383628324706536080486180455448996646985667891738346505771576771134762012536044972691177382786401341057394042017796805414677173199794244010442024923795849646025390781");
-        BigInteger modulus8192 = new BigInteger(
-                "135253271074378184290126435546666091495057097246829408541196270645232645477924688225635651598675866808820785572943817237337557196378645497560351383628324706536080486180455448996646985667891738346505771576771134762012536044972691177382786401341057394042017796805414677173199794244010442024923795849646025390781135253271074378184290126435546666091495057097246829408541196270645232645477924688225635651598675866808820785572943817237337557196378645497560351383628324706536080486180455448996646985667891738346505771576771134762012536044972691177382786401341057394042017796805414677173199794244010442024923795849646025390781135253271074378184290126435546666091495057097246829408541196270645232645477924688225635651598675866808820785572943817237337557196378645497560351383628324706536080486180455448996646985667891738346505771576771134762012536044972691177382786401341057394042017796805414677173199794244010442024923795849646025390781135253271074378184290126435546666091495057097246829408541196270645232645477924688225635651598675866808820785572943817237337557196378645497560351383628324706536080486180455448996646985667891738346505771576771134762012536044972691177382786401341057394042017796805414677173199794244010442024923795849646025390781");
+        // Powers of a number without factors below the bound
+        BigInteger modulus4096 = modulus2048.multiply(modulus2048);
+        BigInteger modulus8192 = modulus4096.multiply(modulus4096);
         // Can be a time consuming task!
         int factor = 1522342;
         profileHasSmallerFactor(factor, new BigInteger[] { modulus2048, modulus4096, modulus8192 });
@@ -594,6 +594,78 @@ public class RsaKeyValidatorUnitTest {
         log.trace("<test05ClosePrimesVulnerabilityExpectFoundInPublicKeys()");        
     }
 
+    @Test
+    public void test06FastChecksMatchReferenceImplementation() throws Exception {
+        log.trace(">test06FastChecksMatchReferenceImplementation()");
+        final Random random = new Random(4711);
+        for (int i = 0; i < 2000; i++) {
+            final BigInteger n = new BigInteger(16 + random.nextInt(200), random);
+            for (final int factor : new int[] { 3, 4, 9, 101, 752, 753 }) {
+                assertEquals("Small factor check for " + n + " and factor " + factor, hasSmallerFactorThanByTrialDivision(n, factor),
+                        RsaKeyValidator.hasSmallerFactorThan(n, factor));
+            }
+            assertEquals("ROCA check for " + n, isRocaAffectedReference(n), RocaBrokenKey.isAffected(n));
+        }
+        // Products of primes just above the bound, and of one prime at the bound and one far above
+        final BigInteger p751 = BigInteger.valueOf(751);
+        final BigInteger p757 = BigInteger.valueOf(757);
+        final BigInteger large = BigInteger.probablePrime(1024, random);
+        Assert.assertFalse(RsaKeyValidator.hasSmallerFactorThan(p757.multiply(large), 753));
+        Assert.assertTrue(RsaKeyValidator.hasSmallerFactorThan(p751.multiply(large), 753));
+        Assert.assertTrue(RsaKeyValidator.hasSmallerFactorThan(p757.multiply(large), 757));
+        // Odd factors are found for an even bound as well
+        final BigInteger p3 = BigInteger.valueOf(3);
+        Assert.assertTrue(RsaKeyValidator.hasSmallerFactorThan(p3.multiply(large), 752));
+        Assert.assertTrue(RsaKeyValidator.hasSmallerFactorThan(p3.multiply(large), 4));
+        Assert.assertTrue(RsaKeyValidator.hasSmallerFactorThan(p751.multiply(large), 752));
+        Assert.assertFalse(RsaKeyValidator.hasSmallerFactorThan(p757.multiply(large), 752));
+        // Fermat factorization finds primes close to each other
+        final BigInteger p = BigInteger.probablePrime(1024, random);
+        final BigInteger closeToP = p.add(BigInteger.valueOf(1L << 20)).nextProbablePrime();
+        assertTrue("Close primes should be found", RsaKeyValidator.testClosePrimes(p.multiply(closeToP)));
+        assertTrue("Square of a prime should be found", RsaKeyValidator.testClosePrimes(p.multiply(p)));
+        Assert.assertFalse("Primes far apart should not be found", RsaKeyValidator.testClosePrimes(p.multiply(large.nextProbablePrime())));
+        // The cached checks give the same results, also when asked again
+        for (int i = 0; i < 2; i++) {
+            assertTrue(RsaKeyValidator.hasClosePrimes(p.multiply(closeToP)));
+            Assert.assertFalse(RsaKeyValidator.hasClosePrimes(p.multiply(large.nextProbablePrime())));
+            Assert.assertFalse(RsaKeyValidator.isRocaAffected(p.multiply(large)));
+        }
+        log.trace("<test06FastChecksMatchReferenceImplementation()");
+    }
+
+    /** Trial division by 2 and every odd number up to the bound */
+    private static boolean hasSmallerFactorThanByTrialDivision(final BigInteger n, final int intFactor) {
+        if (intFactor < 3) {
+            return false;
+        }
+        if (n.mod(BigInteger.valueOf(2)).equals(BigInteger.ZERO)) {
+            return true;
+        }
+        for (int i = 3; i <= intFactor; i = i + 2) {
+            if (n.mod(BigInteger.valueOf(i)).equals(BigInteger.ZERO)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** The original implementation of RocaBrokenKey.isAffected, with one BigInteger remainder per prime */
+    private static boolean isRocaAffectedReference(final BigInteger modulus) throws Exception {
+        final java.lang.reflect.Field primesField = RocaBrokenKey.class.getDeclaredField("prims");
+        final java.lang.reflect.Field markersField = RocaBrokenKey.class.getDeclaredField("markers");
+        primesField.setAccessible(true);
+        markersField.setAccessible(true);
+        final int[] primes = (int[]) primesField.get(null);
+        final BigInteger[] markers = (BigInteger[]) markersField.get(null);
+        for (int i = 0; i < primes.length; i++) {
+            if (BigInteger.ONE.shiftLeft(modulus.remainder(BigInteger.valueOf(primes[i])).intValue()).and(markers[i]).equals(BigInteger.ZERO)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private void profileHasSmallerFactor(final int factor, final BigInteger... modulus) {
         log.trace(">profileHasSmallerFactor()");
 
@@ -0,0 +1,148 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.roles;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.log4j.Logger;
+import org.junit.Test;
+
+/**
+ * Test of {@link CompiledAccessRules}.
+ *
+ * @version $Id$
+ */
+public class CompiledAccessRulesUnitTest {
+
+    private static final Logger log = Logger.getLogger(CompiledAccessRulesUnitTest.class);
+
+    @Test
+    public void testBasicRules() {
+        final HashMap<String, Boolean> accessRules = new HashMap<>();
+        accessRules.put("/ca/", Role.STATE_ALLOW);
+        accessRules.put("/ca/-123/", Role.STATE_DENY);
+        accessRules.put("/endentityprofilesrules/1/", Role.STATE_ALLOW);
+        accessRules.put("/endentityprofilesrules/1/view_end_entity/", Role.STATE_DENY);
+        accessRules.put("/administrator", Role.STATE_ALLOW);
+        final CompiledAccessRules compiledAccessRules = new CompiledAccessRules(accessRules);
+        assertEquals(5, compiledAccessRules.size());
+        assertTrue(compiledAccessRules.hasAccessToResource("/ca"));
+        assertTrue(compiledAccessRules.hasAccessToResource("/ca/"));
+        assertTrue(compiledAccessRules.hasAccessToResource("/ca/123"));
+        assertFalse(compiledAccessRules.hasAccessToResource("/ca/-123"));
+        assertFalse(compiledAccessRules.hasAccessToResource("/ca/-123/sub"));
+        assertFalse(compiledAccessRules.hasAccessToResource("/caa"));
+        assertFalse(compiledAccessRules.hasAccessToResource("/"));
+        assertFalse(compiledAccessRules.hasAccessToResource("/endentityprofilesrules"));
+        assertTrue(compiledAccessRules.hasAccessToResource("/endentityprofilesrules/1/create_end_entity"));
+        assertFalse(compiledAccessRules.hasAccessToResource("/endentityprofilesrules/1/view_end_entity"));
+        assertFalse(compiledAccessRules.hasAccessToResource("/endentityprofilesrules/2/view_end_entity"));
+        assertTrue(compiledAccessRules.hasAccessToResource("/administrator/"));
+        assertFalse(compiledAccessRules.hasAccessToResource(null));
+        assertFalse(compiledAccessRules.hasAccessToResource("ca"));
+        assertTrue(compiledAccessRules.hasAccessToResources("/ca/1", "/ca/2", "/administrator"));
+        assertFalse(compiledAccessRules.hasAccessToResources("/ca/1", "/ca/-123"));
+        assertFalse(new CompiledAccessRules(null).hasAccessToResource("/ca"));
+    }
+
+    /** Compare with {@link AccessRulesHelper#hasAccessToResource(HashMap, String)} for random rules and resources */
+    @Test
+    public void testSameAsAccessRulesHelper() {
+        final Random random = new Random(42);
+        final String[] components = { "", "a", "b", "ab", "ca", "1", "-1", "12" };
+        for (int round = 0; round < 200; round++) {
+            final HashMap<String, Boolean> accessRules = new HashMap<>();
+            final int ruleCount = random.nextInt(12);
+            for (int i = 0; i < ruleCount; i++) {
+                accessRules.put(randomResource(random, components), random.nextBoolean());
+            }
+            final CompiledAccessRules compiledAccessRules = new CompiledAccessRules(accessRules);
+            for (int i = 0; i < 200; i++) {
+                final String resource = randomResource(random, components);
+                assertEquals("Unexpected result for " + resource + " with rules " + accessRules,
+                        AccessRulesHelper.hasAccessToResource(accessRules, resource), compiledAccessRules.hasAccessToResource(resource));
+            }
+        }
+    }
+
+    /** @return a resource, sometimes with a trailing slash and with empty components */
+    private static String randomResource(final Random random, final String[] components) {
+        final StringBuilder sb = new StringBuilder();
+        final int depth = random.nextInt(4);
+        for (int i = 0; i < depth; i++) {
+            sb.append('/').append(components[random.nextInt(components.length)]);
+        }
+        if (sb.length() == 0 || random.nextInt(3) == 0) {
+            sb.append('/');
+        }
+        return sb.toString();
+    }
+
+    /** Simple timing comparison of typical admin and RA checks. Only logged, since timing depends on the environment. */
+    @Test
+    public void testPerformance() {
+        final HashMap<String, Boolean> accessRules = new HashMap<>();
+        accessRules.put("/administrator/", Role.STATE_ALLOW);
+        accessRules.put("/ca_functionality/view_certificate/", Role.STATE_ALLOW);
+        accessRules.put("/ra_functionality/view_end_entity/", Role.STATE_ALLOW);
+        accessRules.put("/ra_functionality/create_end_entity/", Role.STATE_ALLOW);
+        for (int i = 0; i < 50; i++) {
+            accessRules.put("/ca/" + (1000 + i) + "/", Role.STATE_ALLOW);
+            accessRules.put("/endentityprofilesrules/" + i + "/", Role.STATE_ALLOW);
+            accessRules.put("/endentityprofilesrules/" + i + "/delete_end_entity/", Role.STATE_DENY);
+        }
+        final List<String> resources = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            resources.add("/ca/" + (1000 + i));
+            resources.add("/endentityprofilesrules/" + i + "/view_end_entity");
+            resources.add("/endentityprofilesrules/" + i + "/delete_end_entity");
+        }
+        resources.add("/ra_functionality/view_end_entity");
+        resources.add("/administrator");
+        final CompiledAccessRules compiledAccessRules = new CompiledAccessRules(accessRules);
+        long helperTime = 0;
+        long compiledTime = 0;
+        int granted = 0;
+        // Warm up, then measure
+        for (int round = 0; round < 2; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < 500; i++) {
+                for (final String resource : resources) {
+                    if (AccessRulesHelper.hasAccessToResource(accessRules, resource)) {
+                        granted++;
+                    }
+                }
+            }
+            helperTime = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < 500; i++) {
+                for (final String resource : resources) {
+                    if (compiledAccessRules.hasAccessToResource(resource)) {
+                        granted--;
+                    }
+                }
+            }
+            compiledTime = System.nanoTime() - start;
+        }
+        assertEquals("Both implementations should grant access to the same resources", 0, granted);
+        log.info(500 * resources.size() + " access checks took " + helperTime / 1000000 + " ms with the access rules map and " + compiledTime / 1000000
+                + " ms with the compiled access rules.");
+    }
+}
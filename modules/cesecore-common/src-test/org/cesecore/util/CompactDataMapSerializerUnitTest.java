@@ -0,0 +1,157 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import org.apache.log4j.Logger;
+import org.cesecore.certificates.certificateprofile.CertificatePolicy;
+import org.cesecore.certificates.certificateprofile.CertificateProfile;
+import org.cesecore.certificates.certificateprofile.CertificateProfileConstants;
+import org.cesecore.certificates.certificateprofile.PKIDisclosureStatement;
+import org.cesecore.config.ConfigurationHolder;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link CompactDataMapSerializer}.
+ */
+public class CompactDataMapSerializerUnitTest {
+
+    private static final Logger log = Logger.getLogger(CompactDataMapSerializerUnitTest.class);
+
+    @After
+    public void after() {
+        ConfigurationHolder.updateConfiguration("database.compactdatamaps", "false");
+    }
+
+    private static LinkedHashMap<Object, Object> createMap() {
+        final LinkedHashMap<Object, Object> map = new Base64PutHashMap();
+        map.put("version", 4.0f);
+        map.put("int", 17);
+        map.put("long", 1234567890123L);
+        map.put("double", 1.25d);
+        map.put("boolean", true);
+        map.put("null", null);
+        map.put("string", "I am from Sweden");
+        map.put("utf8", "baråäö € 😀");
+        map.put("date", new Date(1588783538788L));
+        map.put("class", CompactDataMapSerializer.class);
+        map.put("list", new ArrayList<>(Arrays.asList(1, "two", null, 3L)));
+        map.put("set", new HashSet<>(Arrays.asList("a", "b")));
+        final Properties properties = new Properties();
+        properties.put("tokensequence", "00000");
+        map.put("properties", properties);
+        final LinkedHashMap<Object, Object> nested = new LinkedHashMap<>();
+        nested.put(1, new TreeMap<>(Map.of("x", "y")));
+        map.put("nested", nested);
+        map.put("hashmap", new HashMap<>(Map.of(5, "five")));
+        map.put("policies", new ArrayList<>(Arrays.asList(new CertificatePolicy("1.2.3", CertificatePolicy.id_qt_cps, "https://example.com/cps"),
+                new CertificatePolicy("2.5.29.32.0", null, null))));
+        map.put("pds", new ArrayList<>(Arrays.asList(new PKIDisclosureStatement("https://example.com/pds", "en"))));
+        return map;
+    }
+
+    private static void assertSameDecoded(final Map<?, ?> map) throws IOException {
+        final String xml = CompactDataMapSerializer.encodeXml(map);
+        final String compact = CompactDataMapSerializer.encodeCompact(map);
+        assertFalse(CompactDataMapSerializer.isCompact(xml));
+        assertTrue(CompactDataMapSerializer.isCompact(compact));
+        final Object fromXml = CompactDataMapSerializer.decode(xml);
+        final Object fromCompact = CompactDataMapSerializer.decode(compact);
+        assertEquals("Compact and XML format should decode to the same class", fromXml.getClass(), fromCompact.getClass());
+        assertEquals("Compact and XML format should decode to the same data", fromXml, fromCompact);
+        final Base64GetHashMap xmlValues = new Base64GetHashMap((Map<?, ?>) fromXml);
+        final Base64GetHashMap compactValues = new Base64GetHashMap((Map<?, ?>) fromCompact);
+        for (final Object key : xmlValues.keySet()) {
+            assertEquals("Base64 encoded value of " + key + " should decode the same", xmlValues.get(key), compactValues.get(key));
+        }
+        // Same iteration order as well
+        assertArrayEquals(((Map<?, ?>) fromXml).keySet().toArray(), ((Map<?, ?>) fromCompact).keySet().toArray());
+        log.debug("XML size: " + xml.length() + ", compact size: " + compact.length());
+    }
+
+    @Test
+    public void sameDataAsXml() throws Exception {
+        assertSameDecoded(createMap());
+        final LinkedHashMap<Object, Object> profileData = new Base64PutHashMap();
+        profileData.putAll(new CertificateProfile(CertificateProfileConstants.CERTPROFILE_FIXED_ENDUSER).getRawData());
+        assertSameDecoded(profileData);
+    }
+
+    @Test
+    public void writesXmlUnlessEnabled() throws Exception {
+        final LinkedHashMap<Object, Object> map = createMap();
+        assertFalse("XML should be written by default", CompactDataMapSerializer.isCompact(CompactDataMapSerializer.encode(map)));
+        ConfigurationHolder.updateConfiguration("database.compactdatamaps", "true");
+        assertTrue(CompactDataMapSerializer.isCompact(CompactDataMapSerializer.encode(map)));
+        // Types that are not handled are written as XML
+        map.put("unhandled", new StringBuilder("x"));
+        assertFalse(CompactDataMapSerializer.isCompact(CompactDataMapSerializer.encode(map)));
+    }
+
+    @Test
+    public void invalidData() {
+        final String compact = CompactDataMapSerializer.encodeCompact(createMap());
+        for (final String data : new String[] { CompactDataMapSerializer.COMPACT_PREFIX + "not base64!",
+                compact.substring(0, compact.length() - 8), CompactDataMapSerializer.COMPACT_PREFIX + "Hf////8=", compact + "AAAA" }) {
+            try {
+                CompactDataMapSerializer.decode(data);
+                fail("Invalid data should not be decoded: " + data);
+            } catch (IOException e) {
+                // Expected
+            }
+        }
+    }
+
+    @Test
+    public void decodeFasterThanXml() throws Exception {
+        final LinkedHashMap<Object, Object> profileData = new Base64PutHashMap();
+        profileData.putAll(new CertificateProfile(CertificateProfileConstants.CERTPROFILE_FIXED_ENDUSER).getRawData());
+        final String xml = CompactDataMapSerializer.encodeXml(profileData);
+        final String compact = CompactDataMapSerializer.encodeCompact(profileData);
+        // Warm up, then measure
+        long xmlTime = 0;
+        long compactTime = 0;
+        for (int round = 0; round < 2; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < 200; i++) {
+                CompactDataMapSerializer.decode(xml);
+            }
+            xmlTime = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < 200; i++) {
+                CompactDataMapSerializer.decode(compact);
+            }
+            compactTime = System.nanoTime() - start;
+        }
+        log.info("Decoding a certificate profile 200 times took " + xmlTime / 1000000 + " ms from XML (" + xml.length() + " characters) and "
+                + compactTime / 1000000 + " ms from the compact format (" + compact.length() + " characters).");
+        assertTrue("Compact data should be smaller", compact.length() < xml.length());
+    }
+}
@@ -0,0 +1,91 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.cesecore.util.ComponentMetrics.Sample;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.keyfactor.util.certificate.DnComponents;
+
+/**
+ * Unit tests of {@link NormalizedDnCache}
+ */
+public class NormalizedDnCacheUnitTest {
+
+    @Before
+    @After
+    public void flush() {
+        NormalizedDnCache.INSTANCE.flush();
+    }
+
+    @Test
+    public void testSameResultAsDnComponents() {
+        for (final String dn : new String[] { "C=SE,O=Test,CN=Test CA", "CN=Test CA, O=Test, C=SE", "cn=Test CA,o=Test,c=SE", "CN=Other CA" }) {
+            final String expected = DnComponents.stringToBCDNString(dn);
+            assertEquals(expected, NormalizedDnCache.INSTANCE.getNormalizedDn(dn));
+            assertEquals(expected.hashCode(), NormalizedDnCache.INSTANCE.getCaId(dn));
+            // Again from the cache
+            assertEquals(expected, NormalizedDnCache.INSTANCE.getNormalizedDn(dn));
+        }
+        assertNull(NormalizedDnCache.INSTANCE.getNormalizedDn(null));
+    }
+
+    @Test
+    public void testEqualDnsShareInstance() {
+        final String first = NormalizedDnCache.INSTANCE.getNormalizedDn("C=SE,O=Test,CN=Test CA");
+        final String second = NormalizedDnCache.INSTANCE.getNormalizedDn("CN=Test CA, O=Test, C=SE");
+        assertEquals("CN=Test CA,O=Test,C=SE", first);
+        assertSame(first, second);
+        // The normalized form is found without parsing
+        final long misses = NormalizedDnCache.INSTANCE.getMissCount();
+        assertSame(first, NormalizedDnCache.INSTANCE.getNormalizedDn(first));
+        assertEquals(misses, NormalizedDnCache.INSTANCE.getMissCount());
+    }
+
+    @Test
+    public void testBounded() {
+        for (int i = 0; i < 5000; i++) {
+            assertEquals("CN=CA " + i, NormalizedDnCache.INSTANCE.getNormalizedDn("cn=CA " + i));
+        }
+        assertTrue("Cache has grown to " + NormalizedDnCache.INSTANCE.getSize(), NormalizedDnCache.INSTANCE.getSize() <= 1024 + 1);
+    }
+
+    @Test
+    public void metricsAreExported() {
+        final long hits = NormalizedDnCache.INSTANCE.getHitCount();
+        final long misses = NormalizedDnCache.INSTANCE.getMissCount();
+        NormalizedDnCache.INSTANCE.getNormalizedDn("CN=Metrics CA");
+        NormalizedDnCache.INSTANCE.getNormalizedDn("CN=Metrics CA");
+        final Map<String, Double> values = new HashMap<>();
+        for (final Sample sample : ComponentMetrics.INSTANCE.getSamples()) {
+            values.put(sample.getName(), sample.getValue());
+        }
+        assertEquals(1, values.get("ejbca_normalized_dn_cache_entries"), 0);
+        assertEquals(hits + 1, values.get("ejbca_normalized_dn_cache_hits_total"), 0);
+        assertEquals(misses + 1, values.get("ejbca_normalized_dn_cache_misses_total"), 0);
+        // Clearing the cache keeps the counters
+        NormalizedDnCache.INSTANCE.flush();
+        assertEquals(0, NormalizedDnCache.INSTANCE.getSize());
+        assertEquals(misses + 1, NormalizedDnCache.INSTANCE.getMissCount());
+    }
+}
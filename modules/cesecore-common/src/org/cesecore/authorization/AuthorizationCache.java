@@ -12,8 +12,11 @@
  *************************************************************************/
 package org.cesecore.authorization;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -24,6 +27,7 @@ import org.cesecore.authentication.AuthenticationFailedException;
 import org.cesecore.authentication.tokens.AuthenticationToken;
 import org.cesecore.authorization.access.AuthorizationCacheReload;
 import org.cesecore.authorization.access.AuthorizationCacheReloadListener;
+import org.cesecore.roles.CompiledAccessRules;
 import org.cesecore.util.ValidityDate;
 
 /**
@@ -33,6 +37,7 @@ import org.cesecore.util.ValidityDate;
  * - Concurrent cache misses for the same AuthenticationToken will only lead to a single call-back while the other threads wait
  * - Never return stale entries (when signaled that newer data might be available)
  * - Supports background reload via the rebuild(...) method which also purges unused entries
+ * - Access rules are compiled once into a {@link CompiledAccessRules} tree, which is shared by all AuthenticationTokens with the same access
  * 
  * @version $Id$
  */
@@ -70,6 +75,7 @@ public enum AuthorizationCache {
     
     private class AuthorizationCacheEntry {
         HashMap<String, Boolean> accessRules;
+        CompiledAccessRules compiledAccessRules;
         int updateNumber = 0;
         long timeOfLastUse = 0L;
         AuthenticationToken authenticationToken;
@@ -77,6 +83,8 @@ public enum AuthorizationCache {
     }
     
     private ConcurrentHashMap<String, AuthorizationCacheEntry> cacheMap = new ConcurrentHashMap<>();
+    /** Compiled access rules by the access rules they were compiled from, so that tokens with the same roles share the same instance */
+    private ConcurrentHashMap<HashMap<String, Boolean>, CompiledAccessRules> compiledAccessRulesMap = new ConcurrentHashMap<>();
     private AtomicInteger latestUpdateNumber = new AtomicInteger(0);
 
     private final AtomicBoolean authorizationCacheReloadListenerRegistered = new AtomicBoolean(false);
@@ -94,17 +102,20 @@ public enum AuthorizationCache {
     public void clear(final int updateNumber) {
         setUpdateNumberIfLower(updateNumber);
         cacheMap.clear();
+        compiledAccessRulesMap.clear();
     }
 
     public void clearWhenStale(final int updateNumber) {
         if (setUpdateNumberIfLower(updateNumber)) {
             cacheMap.clear();
+            compiledAccessRulesMap.clear();
         }
     }
 
     /** Full reset should only be invoked by JUnit tests */
     protected void reset() {
         cacheMap.clear();
+        compiledAccessRulesMap.clear();
         latestUpdateNumber.set(0);
         authorizationCacheReloadListenerRegistered.set(false);
     }
@@ -147,6 +158,34 @@ public enum AuthorizationCache {
                 }
             }
         }
+        purgeUnusedCompiledAccessRules();
+    }
+
+    /** Remove compiled access rules that are no longer used by any cache entry */
+    private void purgeUnusedCompiledAccessRules() {
+        final Set<CompiledAccessRules> used = Collections.newSetFromMap(new IdentityHashMap<CompiledAccessRules, Boolean>());
+        for (final AuthorizationCacheEntry entry : cacheMap.values()) {
+            if (entry.compiledAccessRules != null) {
+                used.add(entry.compiledAccessRules);
+            }
+        }
+        final int sizeBefore = compiledAccessRulesMap.size();
+        compiledAccessRulesMap.values().removeIf(compiledAccessRules -> !used.contains(compiledAccessRules));
+        if (log.isDebugEnabled() && sizeBefore != compiledAccessRulesMap.size()) {
+            log.debug("Removed " + (sizeBefore - compiledAccessRulesMap.size()) + " unused compiled access rules. " + compiledAccessRulesMap.size() + " remain.");
+        }
+    }
+
+    /**
+     * @return the access rules granted to the specified authenticationToken, compiled for fast lookups, using the callback to load them if needed.
+     * Never null.
+     */
+    public CompiledAccessRules getCompiledAccessRules(final AuthenticationToken authenticationToken, final AuthorizationCacheCallback authorizationCacheCallback)
+            throws AuthenticationFailedException {
+        if (authenticationToken==null || authorizationCacheCallback==null) {
+            return new CompiledAccessRules(null);
+        }
+        return getEntry(authenticationToken, authorizationCacheCallback).compiledAccessRules;
     }
 
     /** @return the access rules granted to the specified authenticationToken using the callback to load them if needed. Never null.  */
@@ -159,6 +198,12 @@ public enum AuthorizationCache {
         if (authenticationToken==null || authorizationCacheCallback==null) {
             return new AuthorizationResult(new HashMap<String,Boolean>(), 0);
         }
+        final AuthorizationCacheEntry entry = getEntry(authenticationToken, authorizationCacheCallback);
+        return new AuthorizationResult(entry.accessRules, entry.updateNumber);
+    }
+
+    /** @return the cache entry for the specified authenticationToken using the callback to load it if needed. Never null. */
+    private AuthorizationCacheEntry getEntry(final AuthenticationToken authenticationToken, final AuthorizationCacheCallback authorizationCacheCallback) throws AuthenticationFailedException {
         final String key = authenticationToken.getUniqueId();
         final AuthorizationCacheEntry authorizationCacheEntry = new AuthorizationCacheEntry();
         AuthorizationCacheEntry ret = cacheMap.putIfAbsent(key, authorizationCacheEntry);
@@ -178,6 +223,7 @@ public enum AuthorizationCache {
                     // Cache a copy of the loaded access rules map
                     ret.accessRules.putAll(authorizationResult.accessRules);
                 }
+                ret.compiledAccessRules = getCompiledAccessRules(ret.accessRules);
             } finally {
                 // Ensure that we release any waiting thread
                 ret.countDownLatch.countDown();
@@ -203,13 +249,19 @@ public enum AuthorizationCache {
                         log.debug("Removed entry for key '" + key + "' since its updateNumber was " + ret.updateNumber + ".");
                     }
                 }
-                return getAuthorizationResult(authenticationToken, authorizationCacheCallback);
+                return getEntry(authenticationToken, authorizationCacheCallback);
             }
             // Don't care about last time of use here, just be happy that it was found if it was found 
         }
         // Weak indication of last use, so rebuild can eventually purge unused entries
         ret.timeOfLastUse = System.currentTimeMillis();
-        return new AuthorizationResult(ret.accessRules, ret.updateNumber);
+        return ret;
+    }
+
+    /** @return compiled access rules for the given rules, shared with all other entries with the same rules */
+    private CompiledAccessRules getCompiledAccessRules(final HashMap<String, Boolean> accessRules) {
+        // Key on a private copy, since the returned maps of the entries are not protected against modification
+        return compiledAccessRulesMap.computeIfAbsent(new HashMap<>(accessRules), CompiledAccessRules::new);
     }
     
     public int getLastUpdateNumber() {
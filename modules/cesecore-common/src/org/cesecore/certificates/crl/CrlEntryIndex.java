@@ -0,0 +1,229 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.crl;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import org.bouncycastle.asn1.ASN1Encoding;
+import org.bouncycastle.asn1.x509.TBSCertList.CRLEntry;
+
+/**
+ * Compact index of the revoked certificate entries of a CRL, used to find the entries that differ between two CRLs
+ * without keeping X509CRLEntry objects for millions of entries in memory.
+ * <p>
+ * The serial numbers are kept as their encoded bytes in one array, together with a 64-bit hash of the encoding of each
+ * entry. A sorted order of the entries is computed once, so two indexes can be compared with a linear merge instead of
+ * comparing every entry with every other entry.
+ */
+public final class CrlEntryIndex {
+
+    /** The entries of a CRL that are new or changed, or have been removed, compared to a previous CRL */
+    public static final class Diff {
+        private final BitSet changedPositions;
+        private final int changedCount;
+        private final int removedCount;
+
+        private Diff(final BitSet changedPositions, final int removedCount) {
+            this.changedPositions = changedPositions;
+            this.changedCount = changedPositions.cardinality();
+            this.removedCount = removedCount;
+        }
+
+        /** @return true if the entry at the given position (in the order of the newer CRL) is new or has changed */
+        public boolean isChanged(final int position) {
+            return changedPositions.get(position);
+        }
+
+        /** @return the number of entries in the newer CRL that are new or have changed */
+        public int getChangedCount() {
+            return changedCount;
+        }
+
+        /** @return the number of entries in the previous CRL whose serial number is not in the newer CRL */
+        public int getRemovedCount() {
+            return removedCount;
+        }
+    }
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /** Encoded serial numbers (two's complement content octets), in the order of the CRL */
+    private byte[] serials;
+    /** Start of each serial number in serials, in the order of the CRL, with the end of the last one at index size */
+    private int[] offsets;
+    /** Hash of each encoded entry, in the order of the CRL */
+    private long[] hashes;
+    /** Positions of the entries sorted by serial number */
+    private int[] sorted;
+    private int size;
+
+    private CrlEntryIndex(final int initialCapacity) {
+        serials = new byte[initialCapacity * 16];
+        offsets = new int[initialCapacity + 1];
+        hashes = new long[initialCapacity];
+    }
+
+    /**
+     * Reads all entries of the CRL into a new index.
+     *
+     * @param crlBytes DER encoded CRL, or null for an empty index
+     * @return the index. Never null.
+     * @throws IOException if the CRL could not be parsed
+     */
+    public static CrlEntryIndex fromCrl(final byte[] crlBytes) throws IOException {
+        // An entry with a 20 byte serial number, a date and a reason code is about 40 bytes
+        final CrlEntryIndex index = new CrlEntryIndex(crlBytes == null ? 0 : Math.max(16, crlBytes.length / 40));
+        if (crlBytes != null) {
+            final CrlEntryReader reader = new CrlEntryReader(crlBytes);
+            CRLEntry entry;
+            while ((entry = reader.next()) != null) {
+                index.add(entry);
+            }
+        }
+        index.sort();
+        return index;
+    }
+
+    /** @return the number of entries */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Compares the entries of a CRL with the entries of the previous CRL of the same type.
+     *
+     * @param previous index of the previous CRL, or null if there was none
+     * @return the entries that have to be processed, and the number of removed entries
+     */
+    public Diff diff(final CrlEntryIndex previous) {
+        final BitSet changed = new BitSet(size);
+        if (previous == null) {
+            changed.set(0, size);
+            return new Diff(changed, 0);
+        }
+        int removed = 0;
+        int i = 0;
+        int j = 0;
+        while (i < size && j < previous.size) {
+            final int position = sorted[i];
+            final int previousPosition = previous.sorted[j];
+            final int cmp = compareSerials(this, position, previous, previousPosition);
+            if (cmp < 0) {
+                changed.set(position);
+                i++;
+            } else if (cmp > 0) {
+                removed++;
+                j++;
+            } else {
+                if (hashes[position] != previous.hashes[previousPosition]) {
+                    changed.set(position);
+                }
+                i++;
+                j++;
+            }
+        }
+        for (; i < size; i++) {
+            changed.set(sorted[i]);
+        }
+        removed += previous.size - j;
+        return new Diff(changed, removed);
+    }
+
+    private void add(final CRLEntry entry) throws IOException {
+        final byte[] serial = entry.getUserCertificate().getValue().toByteArray();
+        if (size == hashes.length) {
+            final int capacity = Math.max(16, size + (size >> 1));
+            offsets = Arrays.copyOf(offsets, capacity + 1);
+            hashes = Arrays.copyOf(hashes, capacity);
+        }
+        final int offset = offsets[size];
+        if (offset + serial.length > serials.length) {
+            serials = Arrays.copyOf(serials, Math.max(offset + serial.length, serials.length + (serials.length >> 1) + 16));
+        }
+        System.arraycopy(serial, 0, serials, offset, serial.length);
+        offsets[size + 1] = offset + serial.length;
+        hashes[size] = hash(entry.getEncoded(ASN1Encoding.DER));
+        size++;
+    }
+
+    /** Sorts the positions by serial number, with a merge sort on primitive arrays */
+    private void sort() {
+        int[] src = new int[size];
+        for (int i = 0; i < size; i++) {
+            src[i] = i;
+        }
+        int[] dst = new int[size];
+        for (int width = 1; width < size; width *= 2) {
+            for (int low = 0; low < size; low += 2 * width) {
+                final int mid = Math.min(low + width, size);
+                final int high = Math.min(low + 2 * width, size);
+                int left = low;
+                int right = mid;
+                for (int k = low; k < high; k++) {
+                    if (left < mid && (right >= high || compareSerials(this, src[left], this, src[right]) <= 0)) {
+                        dst[k] = src[left++];
+                    } else {
+                        dst[k] = src[right++];
+                    }
+                }
+            }
+            final int[] tmp = src;
+            src = dst;
+            dst = tmp;
+        }
+        sorted = src;
+    }
+
+    /** Compares two serial numbers in minimal two's complement encoding, in the same order as BigInteger.compareTo */
+    private static int compareSerials(final CrlEntryIndex a, final int aPosition, final CrlEntryIndex b, final int bPosition) {
+        final int aStart = a.offsets[aPosition];
+        final int aLength = a.offsets[aPosition + 1] - aStart;
+        final int bStart = b.offsets[bPosition];
+        final int bLength = b.offsets[bPosition + 1] - bStart;
+        final boolean aNegative = a.serials[aStart] < 0;
+        final boolean bNegative = b.serials[bStart] < 0;
+        if (aNegative != bNegative) {
+            return aNegative ? -1 : 1;
+        }
+        if (aLength != bLength) {
+            // A longer positive number is larger, and a longer negative number is smaller
+            return (aLength < bLength) != aNegative ? -1 : 1;
+        }
+        for (int i = 0; i < aLength; i++) {
+            final int diff = (a.serials[aStart + i] & 0xff) - (b.serials[bStart + i] & 0xff);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return 0;
+    }
+
+    /** @return the serial number of the entry at the given position in the CRL */
+    BigInteger getSerialNumber(final int position) {
+        return new BigInteger(Arrays.copyOfRange(serials, offsets[position], offsets[position + 1]));
+    }
+
+    /** 64-bit FNV-1a hash, so that a changed entry is missed only with a negligible probability */
+    private static long hash(final byte[] bytes) {
+        long hash = FNV_OFFSET_BASIS;
+        for (final byte b : bytes) {
+            hash ^= b & 0xff;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+}
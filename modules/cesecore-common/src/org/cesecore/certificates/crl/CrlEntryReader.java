@@ -0,0 +1,94 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.crl;
+
+import java.io.IOException;
+
+import org.bouncycastle.asn1.ASN1Encodable;
+import org.bouncycastle.asn1.ASN1GeneralizedTime;
+import org.bouncycastle.asn1.ASN1SequenceParser;
+import org.bouncycastle.asn1.ASN1StreamParser;
+import org.bouncycastle.asn1.ASN1UTCTime;
+import org.bouncycastle.asn1.x509.TBSCertList.CRLEntry;
+
+/**
+ * Reads the revoked certificate entries of an encoded CRL one at a time, without parsing the whole CRL into memory as
+ * X509CRL.getRevokedCertificates() does.
+ * <p>
+ * The CRL signature is not verified. Use {@link CrlHeader#verify(java.security.PublicKey)} on the same encoding before trusting the
+ * entries, which also avoids parsing the entries into memory.
+ */
+public class CrlEntryReader {
+
+    private final ASN1SequenceParser revokedCertificates;
+    private int position = 0;
+
+    /**
+     * @param crlBytes DER encoded CRL
+     * @throws IOException if the CRL could not be parsed
+     */
+    public CrlEntryReader(final byte[] crlBytes) throws IOException {
+        try {
+            final ASN1SequenceParser certificateList = (ASN1SequenceParser) new ASN1StreamParser(crlBytes).readObject();
+            final ASN1SequenceParser tbsCertList = (ASN1SequenceParser) certificateList.readObject();
+            // TBSCertList ::= SEQUENCE { version INTEGER OPTIONAL, signature AlgorithmIdentifier, issuer Name, thisUpdate Time,
+            //     nextUpdate Time OPTIONAL, revokedCertificates SEQUENCE OF SEQUENCE {...} OPTIONAL, crlExtensions [0] EXPLICIT Extensions OPTIONAL }
+            // The signature, issuer and revokedCertificates are the only SEQUENCEs, and the others are primitives or tagged.
+            ASN1SequenceParser revoked = null;
+            int sequenceCount = 0;
+            ASN1Encodable object;
+            while ((object = tbsCertList.readObject()) != null) {
+                if (object instanceof ASN1SequenceParser) {
+                    if (++sequenceCount == 3) {
+                        revoked = (ASN1SequenceParser) object;
+                        break;
+                    }
+                    // Read to the end of the signature algorithm and issuer, so the stream is positioned at the next element
+                    ((ASN1SequenceParser) object).getLoadedObject();
+                } else if (sequenceCount == 2 && !(object instanceof ASN1UTCTime)
+                        && !(object instanceof ASN1GeneralizedTime)) {
+                    // Tagged CRL extensions, so there are no revoked certificates
+                    break;
+                }
+            }
+            this.revokedCertificates = revoked;
+        } catch (ClassCastException | IllegalStateException e) {
+            throw new IOException("Malformed CRL: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return the next entry in the order of the CRL, or null if there are no more entries
+     * @throws IOException if the entry could not be parsed
+     */
+    public CRLEntry next() throws IOException {
+        if (revokedCertificates == null) {
+            return null;
+        }
+        try {
+            final ASN1Encodable entry = revokedCertificates.readObject();
+            if (entry == null) {
+                return null;
+            }
+            position++;
+            return CRLEntry.getInstance(entry.toASN1Primitive());
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            throw new IOException("Malformed CRL entry " + position + ": " + e.getMessage(), e);
+        }
+    }
+
+    /** @return the number of entries read so far, which is also the position of the next entry in the CRL */
+    public int getPosition() {
+        return position;
+    }
+}
@@ -0,0 +1,252 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.crl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.security.PublicKey;
+import java.security.SignatureException;
+import java.security.cert.CRLException;
+import java.util.Arrays;
+import java.util.Date;
+
+import javax.security.auth.x500.X500Principal;
+
+import org.bouncycastle.asn1.ASN1BitString;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.ASN1Primitive;
+import org.bouncycastle.asn1.ASN1TaggedObject;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.CRLNumber;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.Extensions;
+import org.bouncycastle.asn1.x509.Time;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.ContentVerifier;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.bouncycastle.operator.jcajce.JcaContentVerifierProviderBuilder;
+
+/**
+ * The fields of an encoded CRL outside of the revoked certificate entries, read without parsing the entries, as X509CRL does.
+ * The entries are skipped using their encoded length, so reading the header of a CRL with millions of entries takes no more
+ * memory than reading the header of an empty CRL. Use {@link CrlEntryReader} to read the entries.
+ * <p>
+ * The CRL must be DER encoded, as required by RFC 5280.
+ */
+public final class CrlHeader {
+
+    private static final int TAG_INTEGER = 0x02;
+    private static final int TAG_BIT_STRING = 0x03;
+    private static final int TAG_SEQUENCE = 0x30;
+    private static final int TAG_UTC_TIME = 0x17;
+    private static final int TAG_GENERALIZED_TIME = 0x18;
+    private static final int TAG_CRL_EXTENSIONS = 0xa0;
+
+    /** Position of an encoded element in the CRL */
+    private static final class Element {
+        private final int tag;
+        private final int offset;
+        private final int contentsOffset;
+        private final int end;
+
+        private Element(final int tag, final int offset, final int contentsOffset, final int end) {
+            this.tag = tag;
+            this.offset = offset;
+            this.contentsOffset = contentsOffset;
+            this.end = end;
+        }
+    }
+
+    private final byte[] crlBytes;
+    private final int tbsOffset;
+    private final int tbsLength;
+    private final AlgorithmIdentifier tbsSignatureAlgorithm;
+    private final X500Principal issuer;
+    private final Date thisUpdate;
+    private final Date nextUpdate;
+    private final Extensions extensions;
+    private final AlgorithmIdentifier signatureAlgorithm;
+    private final byte[] signature;
+
+    private CrlHeader(final byte[] crlBytes) throws IOException {
+        this.crlBytes = crlBytes;
+        // CertificateList ::= SEQUENCE { tbsCertList TBSCertList, signatureAlgorithm AlgorithmIdentifier, signatureValue BIT STRING }
+        final Element certificateList = readElement(crlBytes, 0, crlBytes.length, TAG_SEQUENCE);
+        final Element tbsCertList = readElement(crlBytes, certificateList.contentsOffset, certificateList.end, TAG_SEQUENCE);
+        tbsOffset = tbsCertList.offset;
+        tbsLength = tbsCertList.end - tbsCertList.offset;
+        // TBSCertList ::= SEQUENCE { version INTEGER OPTIONAL, signature AlgorithmIdentifier, issuer Name, thisUpdate Time,
+        //     nextUpdate Time OPTIONAL, revokedCertificates SEQUENCE OF SEQUENCE {...} OPTIONAL, crlExtensions [0] EXPLICIT Extensions OPTIONAL }
+        Element element = readElement(crlBytes, tbsCertList.contentsOffset, tbsCertList.end, -1);
+        if (element.tag == TAG_INTEGER) {
+            element = readElement(crlBytes, element.end, tbsCertList.end, -1);
+        }
+        tbsSignatureAlgorithm = AlgorithmIdentifier.getInstance(toPrimitive(element, TAG_SEQUENCE));
+        element = readElement(crlBytes, element.end, tbsCertList.end, TAG_SEQUENCE);
+        issuer = new X500Principal(Arrays.copyOfRange(crlBytes, element.offset, element.end));
+        element = readElement(crlBytes, element.end, tbsCertList.end, -1);
+        thisUpdate = getTime(element);
+        Date nextUpdate = null;
+        Extensions extensions = null;
+        int position = element.end;
+        while (position < tbsCertList.end) {
+            element = readElement(crlBytes, position, tbsCertList.end, -1);
+            if (element.tag == TAG_UTC_TIME || element.tag == TAG_GENERALIZED_TIME) {
+                nextUpdate = getTime(element);
+            } else if (element.tag == TAG_CRL_EXTENSIONS) {
+                extensions = Extensions.getInstance(ASN1TaggedObject.getInstance(toPrimitive(element, TAG_CRL_EXTENSIONS)), true);
+            } else if (element.tag != TAG_SEQUENCE) {
+                throw new IOException("Malformed CRL: unexpected tag " + element.tag + " at offset " + element.offset);
+            }
+            // The revokedCertificates SEQUENCE is skipped
+            position = element.end;
+        }
+        this.nextUpdate = nextUpdate;
+        this.extensions = extensions;
+        element = readElement(crlBytes, tbsCertList.end, certificateList.end, TAG_SEQUENCE);
+        signatureAlgorithm = AlgorithmIdentifier.getInstance(toPrimitive(element, TAG_SEQUENCE));
+        element = readElement(crlBytes, element.end, certificateList.end, TAG_BIT_STRING);
+        signature = ASN1BitString.getInstance(toPrimitive(element, TAG_BIT_STRING)).getOctets();
+    }
+
+    /**
+     * @param crlBytes DER encoded CRL
+     * @return the header of the CRL
+     * @throws CRLException if the CRL could not be parsed
+     */
+    public static CrlHeader fromCrl(final byte[] crlBytes) throws CRLException {
+        if (crlBytes == null) {
+            throw new CRLException("No CRL.");
+        }
+        try {
+            return new CrlHeader(crlBytes);
+        } catch (IOException | IllegalArgumentException | IllegalStateException e) {
+            throw new CRLException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Reads the tag and length of the element at the given offset.
+     *
+     * @param expectedTag the tag the element must have, or -1 for any tag
+     */
+    private static Element readElement(final byte[] bytes, final int offset, final int limit, final int expectedTag) throws IOException {
+        if (offset + 2 > limit) {
+            throw new IOException("Malformed CRL: truncated at offset " + offset);
+        }
+        final int tag = bytes[offset] & 0xff;
+        if (expectedTag != -1 && tag != expectedTag) {
+            throw new IOException("Malformed CRL: expected tag " + expectedTag + " but found " + tag + " at offset " + offset);
+        }
+        int position = offset + 1;
+        final int firstLengthOctet = bytes[position++] & 0xff;
+        long length;
+        if (firstLengthOctet < 0x80) {
+            length = firstLengthOctet;
+        } else {
+            final int lengthOctets = firstLengthOctet & 0x7f;
+            if (lengthOctets == 0 || lengthOctets > 4 || position + lengthOctets > limit) {
+                throw new IOException("Malformed CRL: unsupported length encoding at offset " + offset + ", the CRL must be DER encoded");
+            }
+            length = 0;
+            for (int i = 0; i < lengthOctets; i++) {
+                length = (length << 8) | (bytes[position++] & 0xff);
+            }
+        }
+        if (position + length > limit) {
+            throw new IOException("Malformed CRL: element at offset " + offset + " is longer than the enclosing element");
+        }
+        return new Element(tag, offset, position, (int) (position + length));
+    }
+
+    private ASN1Primitive toPrimitive(final Element element, final int expectedTag) throws IOException {
+        if (element.tag != expectedTag) {
+            throw new IOException("Malformed CRL: expected tag " + expectedTag + " but found " + element.tag + " at offset " + element.offset);
+        }
+        return ASN1Primitive.fromByteArray(Arrays.copyOfRange(crlBytes, element.offset, element.end));
+    }
+
+    private Date getTime(final Element element) throws IOException {
+        if (element.tag != TAG_UTC_TIME && element.tag != TAG_GENERALIZED_TIME) {
+            throw new IOException("Malformed CRL: expected a time at offset " + element.offset);
+        }
+        return Time.getInstance(toPrimitive(element, element.tag)).getDate();
+    }
+
+    /**
+     * Verifies the signature of the CRL, like X509CRL.verify.
+     *
+     * @param publicKey the public key of the issuer
+     * @throws CRLException if the signature algorithms of the CRL do not match
+     * @throws SignatureException if the signature is not valid, or could not be verified
+     */
+    public void verify(final PublicKey publicKey) throws CRLException, SignatureException {
+        if (!signatureAlgorithm.equals(tbsSignatureAlgorithm)) {
+            throw new CRLException("Signature algorithm on CertificateList does not match TBSCertList.");
+        }
+        try {
+            final ContentVerifier verifier = new JcaContentVerifierProviderBuilder().setProvider(BouncyCastleProvider.PROVIDER_NAME).build(publicKey)
+                    .get(signatureAlgorithm);
+            try (OutputStream out = verifier.getOutputStream()) {
+                out.write(crlBytes, tbsOffset, tbsLength);
+            }
+            if (!verifier.verify(signature)) {
+                throw new SignatureException("CRL does not verify with supplied public key.");
+            }
+        } catch (OperatorCreationException | IOException e) {
+            throw new SignatureException("Unable to verify CRL signature: " + e.getMessage(), e);
+        }
+    }
+
+    /** @return the issuer of the CRL, comparable to X509Certificate.getSubjectX500Principal */
+    public X500Principal getIssuer() {
+        return issuer;
+    }
+
+    public Date getThisUpdate() {
+        return thisUpdate;
+    }
+
+    /** @return the nextUpdate of the CRL, or null if it has none */
+    public Date getNextUpdate() {
+        return nextUpdate;
+    }
+
+    /** @return the CRL extensions, or null if there are none */
+    public Extensions getExtensions() {
+        return extensions;
+    }
+
+    /** @return the CRL number, or 0 if the CRL has none, as CrlExtensions.getCrlNumber */
+    public BigInteger getCrlNumber() {
+        return getCrlNumberExtension(Extension.cRLNumber, BigInteger.ZERO);
+    }
+
+    /** @return the base CRL number of a delta CRL, or -1 if this is not a delta CRL, as CrlExtensions.getDeltaCRLIndicator */
+    public BigInteger getDeltaCrlIndicator() {
+        return getCrlNumberExtension(Extension.deltaCRLIndicator, BigInteger.valueOf(-1));
+    }
+
+    private BigInteger getCrlNumberExtension(final ASN1ObjectIdentifier oid, final BigInteger defaultValue) {
+        final Extension extension = extensions == null ? null : extensions.getExtension(oid);
+        if (extension == null) {
+            return defaultValue;
+        }
+        try {
+            return CRLNumber.getInstance(extension.getParsedValue()).getCRLNumber();
+        } catch (IllegalArgumentException e) {
+            return defaultValue;
+        }
+    }
+}
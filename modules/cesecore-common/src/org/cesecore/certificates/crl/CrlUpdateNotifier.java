@@ -0,0 +1,63 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.crl;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Notifies in-JVM listeners, such as CRL caches, that a new CRL has been stored on this node.
+ * <p>
+ * Notifications are sent when the CRL is persisted, which is before the storing transaction is committed.
+ * Listeners must therefore be prepared to not find the CRL in the database right away. CRLs stored on other
+ * nodes are not notified.
+ */
+public enum CrlUpdateNotifier {
+    INSTANCE;
+
+    private static final Logger log = Logger.getLogger(CrlUpdateNotifier.class);
+
+    /** Callback for stored CRLs. Implementations must be fast and must not block. */
+    public interface Listener {
+        /**
+         * @param issuerDn normalized DN of the CA that issued the CRL
+         * @param crlPartitionIndex CRL partition index, or CertificateConstants.NO_CRL_PARTITION
+         * @param crlNumber the CRL number of the new CRL
+         * @param deltaCrl true if the stored CRL is a delta CRL
+         */
+        void crlStored(String issuerDn, int crlPartitionIndex, int crlNumber, boolean deltaCrl);
+    }
+
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    public void addListener(final Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(final Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /** Sends a notification about a stored CRL to all listeners. Failing listeners are logged and ignored. */
+    public void notifyCrlStored(final String issuerDn, final int crlPartitionIndex, final int crlNumber, final boolean deltaCrl) {
+        for (final Listener listener : listeners) {
+            try {
+                listener.crlStored(issuerDn, crlPartitionIndex, crlNumber, deltaCrl);
+            } catch (RuntimeException e) {
+                log.warn("CRL update listener failed for issuer '" + issuerDn + "' and CRL number " + crlNumber + ": " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.crl;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Predicate;
+
+/**
+ * Revoked certificates that are read from the database one page at a time while they are iterated, so that generating a CRL only keeps
+ * one page of entries in memory, and not all entries of the CA. Pages are read with keyset pagination on the certificate fingerprint.
+ * <p>
+ * The entries of several sources can be combined, e.g. for a CA that has changed its name, and filtered while they are read. Nothing is
+ * kept between iterations, so every iteration reads the entries again. This includes {@link #size()}, which should be avoided.
+ */
+public final class RevokedCertInfoPages extends AbstractCollection<RevokedCertInfo> {
+
+    /** Reads one page of revoked certificates */
+    @FunctionalInterface
+    public interface PageReader {
+        /**
+         * @param afterFingerprint the fingerprint of the last entry of the previous page, or null to read the first page
+         * @param maxResults the maximum number of entries to read
+         * @return the entries with a fingerprint greater than afterFingerprint, ordered by fingerprint
+         */
+        List<RevokedCertInfo> readPage(String afterFingerprint, int maxResults);
+    }
+
+    /** Entries read from a {@link PageReader} */
+    private static final class Pages extends AbstractCollection<RevokedCertInfo> {
+        private final PageReader reader;
+        private final int pageSize;
+
+        private Pages(final PageReader reader, final int pageSize) {
+            this.reader = reader;
+            this.pageSize = pageSize;
+        }
+
+        @Override
+        public Iterator<RevokedCertInfo> iterator() {
+            return new Iterator<>() {
+                private Iterator<RevokedCertInfo> page = Collections.emptyIterator();
+                private String afterFingerprint = null;
+                private boolean lastPage = false;
+
+                @Override
+                public boolean hasNext() {
+                    while (!page.hasNext() && !lastPage) {
+                        final List<RevokedCertInfo> entries = reader.readPage(afterFingerprint, pageSize);
+                        lastPage = entries.size() < pageSize;
+                        if (!entries.isEmpty()) {
+                            afterFingerprint = entries.get(entries.size() - 1).getCertificateFingerprint();
+                        }
+                        page = entries.iterator();
+                    }
+                    return page.hasNext();
+                }
+
+                @Override
+                public RevokedCertInfo next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    return page.next();
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            int ret = 0;
+            for (final Iterator<RevokedCertInfo> iterator = iterator(); iterator.hasNext(); iterator.next()) {
+                ret++;
+            }
+            return ret;
+        }
+    }
+
+    private final List<Collection<RevokedCertInfo>> sources = new ArrayList<>();
+    private Predicate<RevokedCertInfo> filter = null;
+
+    /** Creates an empty collection, to {@link #append(Collection)} entries to */
+    public RevokedCertInfoPages() {
+    }
+
+    /**
+     * @param reader reads the pages
+     * @param pageSize the number of entries to read at a time
+     * @return the entries read by the reader
+     */
+    public static RevokedCertInfoPages of(final PageReader reader, final int pageSize) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Page size must be at least 1: " + pageSize);
+        }
+        return new RevokedCertInfoPages().append(new Pages(reader, pageSize));
+    }
+
+    /**
+     * Adds entries after the entries added before. The collection is not copied, but iterated each time these entries are iterated.
+     *
+     * @param entries revoked certificates, e.g. another RevokedCertInfoPages
+     * @return this object
+     */
+    public RevokedCertInfoPages append(final Collection<RevokedCertInfo> entries) {
+        sources.add(entries);
+        return this;
+    }
+
+    /**
+     * Sets a filter that is applied to each entry as it is read. The filter may also update the entry, since entries are not kept
+     * between iterations.
+     *
+     * @param filter returns true for the entries to include
+     * @return this object
+     */
+    public RevokedCertInfoPages filter(final Predicate<RevokedCertInfo> filter) {
+        this.filter = filter;
+        return this;
+    }
+
+    @Override
+    public Iterator<RevokedCertInfo> iterator() {
+        final Iterator<Collection<RevokedCertInfo>> sourceIterator = new ArrayList<>(sources).iterator();
+        return new Iterator<>() {
+            private Iterator<RevokedCertInfo> current = Collections.emptyIterator();
+            private RevokedCertInfo next = null;
+
+            @Override
+            public boolean hasNext() {
+                while (next == null) {
+                    while (!current.hasNext()) {
+                        if (!sourceIterator.hasNext()) {
+                            return false;
+                        }
+                        current = sourceIterator.next().iterator();
+                    }
+                    final RevokedCertInfo entry = current.next();
+                    if (filter == null || filter.test(entry)) {
+                        next = entry;
+                    }
+                }
+                return true;
+            }
+
+            @Override
+            public RevokedCertInfo next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                final RevokedCertInfo ret = next;
+                next = null;
+                return ret;
+            }
+        };
+    }
+
+    /** @return the number of entries. All pages are read to count them. */
+    @Override
+    public int size() {
+        int ret = 0;
+        for (final Iterator<RevokedCertInfo> iterator = iterator(); iterator.hasNext(); iterator.next()) {
+            ret++;
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,350 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.crl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.util.Date;
+
+import org.apache.log4j.Logger;
+import org.bouncycastle.asn1.ASN1Encodable;
+import org.bouncycastle.asn1.ASN1EncodableVector;
+import org.bouncycastle.asn1.ASN1Encoding;
+import org.bouncycastle.asn1.ASN1GeneralizedTime;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.DERBitString;
+import org.bouncycastle.asn1.DEROctetString;
+import org.bouncycastle.asn1.DERSequence;
+import org.bouncycastle.asn1.DERTaggedObject;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.CRLReason;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.Extensions;
+import org.bouncycastle.asn1.x509.ExtensionsGenerator;
+import org.bouncycastle.asn1.x509.Time;
+import org.bouncycastle.cert.X509CRLHolder;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.ContentVerifier;
+import org.bouncycastle.operator.ContentVerifierProvider;
+import org.bouncycastle.operator.OperatorCreationException;
+
+/**
+ * Builds a version 2 X.509 CRL without keeping an ASN.1 object tree of all CRL entries in memory.
+ * <p>
+ * X509v2CRLBuilder keeps every added entry as a set of ASN.1 objects until the CRL is built, and then needs a few more
+ * copies of the encoding while signing. This builder DER encodes each entry as it is added, into a byte buffer that is
+ * moved to a temporary file when it grows above a threshold. When the CRL is built, the TBSCertList is streamed into
+ * the signer and the final encoding is assembled directly, so the only full size copy kept in memory is the encoded CRL.
+ * <p>
+ * The produced encoding is identical to what X509v2CRLBuilder produces for the same input. Instances are not thread safe
+ * and must be closed, to remove any temporary file, if {@link #build(ContentSigner)} is not called.
+ */
+public final class StreamingX509CrlBuilder implements Closeable {
+
+    private static final Logger log = Logger.getLogger(StreamingX509CrlBuilder.class);
+
+    private static final int TAG_SEQUENCE = 0x30;
+    private static final int FILE_BUFFER_SIZE = 65536;
+
+    private final X500Name issuer;
+    private final Time thisUpdate;
+    private final Time nextUpdate;
+    private final long memoryThreshold;
+    private final ExtensionsGenerator extGenerator = new ExtensionsGenerator();
+
+    private ByteArrayOutputStream entryBuffer = new ByteArrayOutputStream();
+    private File entryFile = null;
+    private OutputStream entryOut = entryBuffer;
+    private long entriesLength = 0;
+    private int entryCount = 0;
+
+    private byte[] encoded = null;
+    private int tbsOffset;
+    private int tbsLength;
+    private AlgorithmIdentifier signatureAlgorithm;
+    private byte[] signature;
+
+    /**
+     * @param issuer the issuer of the CRL
+     * @param thisUpdate thisUpdate of the CRL
+     * @param nextUpdate nextUpdate of the CRL, or null to leave it out
+     * @param memoryThreshold the number of bytes of encoded CRL entries that are kept in memory before they are moved to a temporary file, or -1 to
+     *      always keep entries in memory
+     */
+    public StreamingX509CrlBuilder(final X500Name issuer, final Date thisUpdate, final Date nextUpdate, final long memoryThreshold) {
+        this.issuer = issuer;
+        this.thisUpdate = new Time(thisUpdate);
+        this.nextUpdate = nextUpdate == null ? null : new Time(nextUpdate);
+        this.memoryThreshold = memoryThreshold;
+    }
+
+    /**
+     * Adds a CRL entry with a reason code extension, unless the reason is 0 (unspecified).
+     *
+     * @see #addCRLEntry(BigInteger, Date, int, Date)
+     */
+    public StreamingX509CrlBuilder addCRLEntry(final BigInteger serialNumber, final Date revocationDate, final int reason) throws IOException {
+        return addCRLEntry(serialNumber, revocationDate, reason, null);
+    }
+
+    /**
+     * Adds a CRL entry. Entries are written in the order they are added.
+     *
+     * @param serialNumber serial number of the revoked certificate
+     * @param revocationDate date of the revocation
+     * @param reason the CRL reason code, a reason code extension is only included if the reason is not 0 (unspecified)
+     * @param invalidityDate invalidity date of the certificate, or null to leave out the invalidity date extension
+     * @return this builder
+     * @throws IOException if the entry could not be written to the temporary file
+     */
+    public StreamingX509CrlBuilder addCRLEntry(final BigInteger serialNumber, final Date revocationDate, final int reason, final Date invalidityDate)
+            throws IOException {
+        if (encoded != null) {
+            throw new IllegalStateException("CRL has already been built.");
+        }
+        if (reason < 0) {
+            throw new IllegalArgumentException("invalid reason value: " + reason);
+        }
+        final ASN1EncodableVector entry = new ASN1EncodableVector(3);
+        entry.add(new ASN1Integer(serialNumber));
+        entry.add(new Time(revocationDate));
+        if (reason != 0 || invalidityDate != null) {
+            final ASN1EncodableVector entryExtensions = new ASN1EncodableVector(2);
+            if (reason != 0) {
+                entryExtensions.add(new Extension(Extension.reasonCode, false, new DEROctetString(CRLReason.lookup(reason))));
+            }
+            if (invalidityDate != null) {
+                entryExtensions.add(new Extension(Extension.invalidityDate, false, new DEROctetString(new ASN1GeneralizedTime(invalidityDate))));
+            }
+            entry.add(Extensions.getInstance(new DERSequence(entryExtensions)));
+        }
+        final byte[] entryEncoded = new DERSequence(entry).getEncoded(ASN1Encoding.DER);
+        entryOut.write(entryEncoded);
+        entriesLength += entryEncoded.length;
+        entryCount++;
+        if (entryFile == null && memoryThreshold >= 0 && entriesLength > memoryThreshold) {
+            moveEntriesToFile();
+        }
+        return this;
+    }
+
+    /** Adds a CRL extension. */
+    public StreamingX509CrlBuilder addExtension(final ASN1ObjectIdentifier oid, final boolean critical, final ASN1Encodable value) throws IOException {
+        extGenerator.addExtension(oid, critical, value);
+        return this;
+    }
+
+    /** @return the number of entries added so far */
+    public int getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * Signs the CRL. The TBSCertList is streamed into the signer, and any temporary file is removed.
+     *
+     * @param signer the signer to use
+     * @return the CRL. It is parsed lazily, so the CRL entries are not decoded until they are accessed.
+     * @throws IOException if the CRL could not be encoded
+     */
+    public X509CRLHolder build(final ContentSigner signer) throws IOException {
+        if (encoded != null) {
+            throw new IllegalStateException("CRL has already been built.");
+        }
+        try {
+            entryOut.close();
+            signatureAlgorithm = signer.getAlgorithmIdentifier();
+            // Everything in the TBSCertList before the revokedCertificates field
+            final ASN1EncodableVector prefixFields = new ASN1EncodableVector(5);
+            prefixFields.add(new ASN1Integer(1));
+            prefixFields.add(signatureAlgorithm);
+            prefixFields.add(issuer);
+            prefixFields.add(thisUpdate);
+            if (nextUpdate != null) {
+                prefixFields.add(nextUpdate);
+            }
+            final ByteArrayOutputStream prefixOut = new ByteArrayOutputStream();
+            for (int i = 0; i < prefixFields.size(); i++) {
+                prefixOut.write(prefixFields.get(i).toASN1Primitive().getEncoded(ASN1Encoding.DER));
+            }
+            final byte[] prefix = prefixOut.toByteArray();
+            final byte[] entriesHeader = entryCount == 0 ? new byte[0] : encodeHeader(TAG_SEQUENCE, entriesLength);
+            final byte[] suffix = extGenerator.isEmpty() ? new byte[0]
+                    : new DERTaggedObject(true, 0, extGenerator.generate()).getEncoded(ASN1Encoding.DER);
+            final long tbsContentLength = prefix.length + entriesHeader.length + (entryCount == 0 ? 0 : entriesLength) + suffix.length;
+            final byte[] tbsHeader = encodeHeader(TAG_SEQUENCE, tbsContentLength);
+
+            try (OutputStream signerOut = signer.getOutputStream()) {
+                signerOut.write(tbsHeader);
+                signerOut.write(prefix);
+                signerOut.write(entriesHeader);
+                writeEntries(signerOut);
+                signerOut.write(suffix);
+            }
+            signature = signer.getSignature();
+            final ByteArrayOutputStream signatureFieldsOut = new ByteArrayOutputStream();
+            signatureFieldsOut.write(signatureAlgorithm.getEncoded(ASN1Encoding.DER));
+            signatureFieldsOut.write(new DERBitString(signature).getEncoded(ASN1Encoding.DER));
+            final byte[] signatureFields = signatureFieldsOut.toByteArray();
+            final long crlContentLength = tbsHeader.length + tbsContentLength + signatureFields.length;
+            final byte[] crlHeader = encodeHeader(TAG_SEQUENCE, crlContentLength);
+            final long totalLength = crlHeader.length + crlContentLength;
+            if (totalLength > Integer.MAX_VALUE - 8) {
+                throw new IOException("The encoded CRL of " + totalLength + " bytes is too large.");
+            }
+            final byte[] crl = new byte[(int) totalLength];
+            int pos = 0;
+            pos = copy(crlHeader, crl, pos);
+            tbsOffset = pos;
+            pos = copy(tbsHeader, crl, pos);
+            pos = copy(prefix, crl, pos);
+            pos = copy(entriesHeader, crl, pos);
+            pos = readEntries(crl, pos);
+            pos = copy(suffix, crl, pos);
+            tbsLength = pos - tbsOffset;
+            copy(signatureFields, crl, pos);
+            encoded = crl;
+            if (log.isDebugEnabled()) {
+                log.debug("Built CRL with " + entryCount + " entries and a size of " + totalLength + " bytes" + (entryFile != null ? ", using a temporary file." : "."));
+            }
+            return new X509CRLHolder(encoded);
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Verifies the signature of the built CRL over the encoded TBSCertList, without decoding the CRL entries.
+     *
+     * @param verifierProvider provider of a verifier for the public key of the CRL issuer
+     * @return true if the signature is valid
+     * @throws IOException if the verification could not be performed
+     * @throws OperatorCreationException if no verifier could be created
+     */
+    public boolean isSignatureValid(final ContentVerifierProvider verifierProvider) throws IOException, OperatorCreationException {
+        if (encoded == null) {
+            throw new IllegalStateException("CRL has not been built.");
+        }
+        final ContentVerifier verifier = verifierProvider.get(signatureAlgorithm);
+        try (OutputStream verifierOut = verifier.getOutputStream()) {
+            verifierOut.write(encoded, tbsOffset, tbsLength);
+        }
+        return verifier.verify(signature);
+    }
+
+    /** @return the DER encoded CRL, or null if the CRL has not been built. The returned array is shared and must not be modified. */
+    public byte[] getEncoded() {
+        return encoded;
+    }
+
+    /** Releases the entry buffer and removes the temporary file, if any. */
+    @Override
+    public void close() {
+        try {
+            entryOut.close();
+        } catch (IOException e) {
+            log.debug("Failed to close CRL entry output: " + e.getMessage());
+        }
+        entryBuffer = null;
+        if (entryFile != null && entryFile.exists() && !entryFile.delete()) {
+            log.warn("Failed to delete temporary CRL file: " + entryFile.getAbsolutePath());
+            entryFile.deleteOnExit();
+        }
+    }
+
+    private void moveEntriesToFile() throws IOException {
+        entryFile = File.createTempFile("crlentries", ".der");
+        if (log.isDebugEnabled()) {
+            log.debug("Moving " + entriesLength + " bytes of CRL entries to temporary file " + entryFile.getAbsolutePath());
+        }
+        final OutputStream fileOut = new BufferedOutputStream(new FileOutputStream(entryFile), FILE_BUFFER_SIZE);
+        entryBuffer.writeTo(fileOut);
+        entryBuffer = null;
+        entryOut = fileOut;
+    }
+
+    private void writeEntries(final OutputStream out) throws IOException {
+        if (entryFile == null) {
+            entryBuffer.writeTo(out);
+            return;
+        }
+        try (InputStream in = new FileInputStream(entryFile)) {
+            final byte[] buf = new byte[FILE_BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buf)) != -1) {
+                out.write(buf, 0, read);
+            }
+        }
+    }
+
+    private int readEntries(final byte[] dest, final int pos) throws IOException {
+        if (entryFile == null) {
+            // Written directly into the CRL, since toByteArray would make one more copy of all entries
+            final OutputStream destOut = new OutputStream() {
+                private int destPos = pos;
+
+                @Override
+                public void write(final int b) {
+                    dest[destPos++] = (byte) b;
+                }
+
+                @Override
+                public void write(final byte[] b, final int off, final int len) {
+                    System.arraycopy(b, off, dest, destPos, len);
+                    destPos += len;
+                }
+            };
+            entryBuffer.writeTo(destOut);
+            entryBuffer = null;
+            return pos + (int) entriesLength;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(entryFile), FILE_BUFFER_SIZE))) {
+            in.readFully(dest, pos, (int) entriesLength);
+        }
+        return pos + (int) entriesLength;
+    }
+
+    private static int copy(final byte[] src, final byte[] dest, final int pos) {
+        System.arraycopy(src, 0, dest, pos, src.length);
+        return pos + src.length;
+    }
+
+    /** @return the DER encoded tag and definite length octets of a value with the given content length */
+    private static byte[] encodeHeader(final int tag, final long contentLength) {
+        if (contentLength < 0x80) {
+            return new byte[] { (byte) tag, (byte) contentLength };
+        }
+        int lengthOctets = 0;
+        for (long l = contentLength; l > 0; l >>>= 8) {
+            lengthOctets++;
+        }
+        final byte[] ret = new byte[2 + lengthOctets];
+        ret[0] = (byte) tag;
+        ret[1] = (byte) (0x80 | lengthOctets);
+        for (int i = 0; i < lengthOctets; i++) {
+            ret[ret.length - 1 - i] = (byte) (contentLength >>> (8 * i));
+        }
+        return ret;
+    }
+}
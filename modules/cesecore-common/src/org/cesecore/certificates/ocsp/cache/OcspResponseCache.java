@@ -0,0 +1,401 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.ocsp.cache;
+
+import java.math.BigInteger;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import jakarta.transaction.Status;
+import jakarta.transaction.Synchronization;
+import jakarta.transaction.TransactionSynchronizationRegistry;
+
+import org.apache.log4j.Logger;
+import org.bouncycastle.cert.ocsp.CertificateID;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.cesecore.config.OcspConfiguration;
+import org.cesecore.util.ComponentMetrics;
+import org.cesecore.util.ComponentMetrics.Sample;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+/**
+ * In-memory cache of signed OCSP responses for single certificate requests, keyed by CertID (hash algorithm, issuer name hash,
+ * issuer key hash and serial number).
+ * <p>
+ * This is the first tier in front of the pre-produced responses stored in OcspResponseData, and in front of producing and signing
+ * a new response. Only responses that are the same for every requester may be cached, i.e. responses to unsigned requests without
+ * extensions, see OcspResponseGeneratorSessionBean. A response is removed at its nextUpdate, after at most
+ * {@link OcspConfiguration#getResponseCacheMaxAgeMs()}, or when the status of the certificate changes, see
+ * {@link #invalidateAfterCommit(TransactionSynchronizationRegistry, String, BigInteger)}. The total size of the cached responses
+ * is bounded by {@link OcspConfiguration#getResponseCacheMaxSize()}.
+ * <p>
+ * Issuer DNs are expected in the normalized form stored in CertificateData.issuerDN.
+ * <p>
+ * The hit ratio, evictions and invalidations are exported with {@link ComponentMetrics}.
+ */
+public enum OcspResponseCache {
+    INSTANCE;
+
+    private static final Logger log = Logger.getLogger(OcspResponseCache.class);
+
+    /** A cached response, with the information needed to answer a request and log it as if it was produced */
+    public static final class Entry {
+        private final String issuerDn;
+        private final OCSPResp response;
+        private final int size;
+        private final long maxAge;
+        private final X509Certificate signerCert;
+        private final long expireTime;
+
+        private Entry(final String issuerDn, final OCSPResp response, final int size, final long maxAge, final X509Certificate signerCert,
+                final long expireTime) {
+            this.issuerDn = issuerDn;
+            this.response = response;
+            this.size = size;
+            this.maxAge = maxAge;
+            this.signerCert = signerCert;
+            this.expireTime = expireTime;
+        }
+
+        public OCSPResp getResponse() {
+            return response;
+        }
+
+        /** @return the max-age of the HTTP response, in milliseconds */
+        public long getMaxAge() {
+            return maxAge;
+        }
+
+        /** @return the signer certificate, or null if not known (responses read from the response store) */
+        public X509Certificate getSignerCert() {
+            return signerCert;
+        }
+    }
+
+    /**
+     * Certificates whose status is changed by a transaction. Registered with the transaction, so that the cached responses are removed
+     * once the change is visible to other transactions. Removing them before the commit would let a concurrent request cache a response
+     * with the old status again.
+     */
+    private final class PendingInvalidations implements Synchronization {
+        private final Map<String, Set<BigInteger>> serialNumbersByIssuer = new HashMap<>();
+
+        @Override
+        public void beforeCompletion() {
+            // NOOP
+        }
+
+        @Override
+        public void afterCompletion(final int transactionStatus) {
+            // Nothing has changed if the transaction was rolled back
+            if (transactionStatus == Status.STATUS_COMMITTED) {
+                for (final Map.Entry<String, Set<BigInteger>> entry : serialNumbersByIssuer.entrySet()) {
+                    for (final BigInteger serialNumber : entry.getValue()) {
+                        invalidate(entry.getKey(), serialNumber);
+                    }
+                }
+            }
+        }
+    }
+
+    /** Key of the {@link PendingInvalidations} of a transaction in the TransactionSynchronizationRegistry */
+    private static final String PENDING_INVALIDATIONS_KEY = OcspResponseCache.class.getName() + ".pendingInvalidations";
+
+    private final ReentrantLock startLock = new ReentrantLock();
+    /** Null until the first use, and also when the cache is disabled */
+    private volatile Cache<CertificateID, Entry> cache = null;
+    private volatile boolean started = false;
+    private volatile long maxAgeMs;
+    /**
+     * CertIDs of the cached responses by issuer DN and serial number, so that the responses for a certificate or an issuer can be removed
+     * without scanning the cache. There can be more than one CertID per certificate, one for each hash algorithm. The inner maps are only
+     * accessed while holding the lock of the issuer's mapping, i.e. in compute methods of this map. Entries are added and removed while
+     * holding the lock of the CertID in the cache, so that the index matches the cache.
+     */
+    private final ConcurrentHashMap<String, Map<BigInteger, Set<CertificateID>>> index = new ConcurrentHashMap<>();
+    private final LongAdder invalidations = new LongAdder();
+
+    private OcspResponseCache() {
+        ComponentMetrics.INSTANCE.register("ocsp_response_cache", this::collectMetrics);
+    }
+
+    private Cache<CertificateID, Entry> getCache() {
+        if (started) {
+            return cache;
+        }
+        startLock.lock();
+        try {
+            if (!started) {
+                final long maxSize = OcspConfiguration.getResponseCacheMaxSize();
+                maxAgeMs = OcspConfiguration.getResponseCacheMaxAgeMs();
+                if (maxSize > 0 && maxAgeMs > 0) {
+                    cache = Caffeine.newBuilder()
+                            .maximumWeight(maxSize)
+                            .weigher((final CertificateID key, final Entry entry) -> entry.size)
+                            .expireAfter(new Expiry<CertificateID, Entry>() {
+                                @Override
+                                public long expireAfterCreate(final CertificateID key, final Entry entry, final long currentTime) {
+                                    return TimeUnit.MILLISECONDS.toNanos(Math.max(0, entry.expireTime - System.currentTimeMillis()));
+                                }
+
+                                @Override
+                                public long expireAfterUpdate(final CertificateID key, final Entry entry, final long currentTime,
+                                        final long currentDuration) {
+                                    return expireAfterCreate(key, entry, currentTime);
+                                }
+
+                                @Override
+                                public long expireAfterRead(final CertificateID key, final Entry entry, final long currentTime,
+                                        final long currentDuration) {
+                                    return currentDuration;
+                                }
+                            })
+                            // Called while holding the lock of the entry, unlike a removal listener
+                            .evictionListener((final CertificateID key, final Entry entry, final RemovalCause cause) -> {
+                                if (key != null && entry != null) {
+                                    removeFromIndex(entry.issuerDn, key);
+                                }
+                            })
+                            .recordStats()
+                            .build();
+                    log.info("Enabled in-memory OCSP response cache of " + maxSize + " bytes, responses are cached for at most " + maxAgeMs + " ms.");
+                }
+                started = true;
+            }
+        } finally {
+            startLock.unlock();
+        }
+        return cache;
+    }
+
+    /** @return true if responses are cached */
+    public boolean isEnabled() {
+        return getCache() != null;
+    }
+
+    /**
+     * @param certId the CertID of a request for a single certificate
+     * @return the cached response, or null if there is none
+     */
+    public Entry get(final CertificateID certId) {
+        final Cache<CertificateID, Entry> c = getCache();
+        if (c == null) {
+            return null;
+        }
+        final Entry entry = c.getIfPresent(certId);
+        // Caffeine expires entries with a slightly coarse timer, so check the time as well
+        if (entry != null && entry.expireTime <= System.currentTimeMillis()) {
+            c.asMap().computeIfPresent(certId, (key, current) -> {
+                if (current != entry) {
+                    return current;
+                }
+                removeFromIndex(entry.issuerDn, key);
+                return null;
+            });
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Caches a response, if the cache is enabled.
+     *
+     * @param issuerDn the normalized subject DN of the CA that issued the certificate
+     * @param certId the CertID of a request for a single certificate
+     * @param response the successful response to the request
+     * @param encodedSize size of the encoded response, in bytes
+     * @param nextUpdate nextUpdate of the single response, in milliseconds since epoch
+     * @param maxAge the max-age of the HTTP response, in milliseconds
+     * @param signerCert the signer certificate, may be null
+     */
+    public void put(final String issuerDn, final CertificateID certId, final OCSPResp response, final int encodedSize, final long nextUpdate,
+            final long maxAge, final X509Certificate signerCert) {
+        final Cache<CertificateID, Entry> c = getCache();
+        if (c == null) {
+            return;
+        }
+        final long expireTime = Math.min(nextUpdate, System.currentTimeMillis() + maxAgeMs);
+        if (expireTime > System.currentTimeMillis()) {
+            final Entry entry = new Entry(issuerDn, response, encodedSize, maxAge, signerCert, expireTime);
+            c.asMap().compute(certId, (key, previous) -> {
+                if (previous != null && !previous.issuerDn.equals(issuerDn)) {
+                    removeFromIndex(previous.issuerDn, key);
+                }
+                addToIndex(issuerDn, key);
+                return entry;
+            });
+        }
+    }
+
+    /**
+     * Removes the cached responses for a certificate, after its status has changed.
+     *
+     * @param issuerDn the normalized issuer DN of the certificate
+     * @param serialNumber the serial number of the certificate
+     */
+    public void invalidate(final String issuerDn, final BigInteger serialNumber) {
+        final Cache<CertificateID, Entry> c = getCache();
+        if (c == null) {
+            return;
+        }
+        final List<CertificateID> removed = new ArrayList<>();
+        index.computeIfPresent(issuerDn, (key, serialNumbers) -> {
+            final Set<CertificateID> certIds = serialNumbers.remove(serialNumber);
+            if (certIds != null) {
+                removed.addAll(certIds);
+            }
+            return serialNumbers.isEmpty() ? null : serialNumbers;
+        });
+        if (!removed.isEmpty()) {
+            // Called outside of the index lock, since removing entries from the cache may call the eviction listener
+            c.invalidateAll(removed);
+            invalidations.increment();
+        }
+    }
+
+    /**
+     * Removes the cached responses for all certificates of an issuer, e.g. after a part of the certificates have been revoked at once.
+     *
+     * @param issuerDn the normalized subject DN of the CA
+     */
+    public void invalidateIssuer(final String issuerDn) {
+        final Cache<CertificateID, Entry> c = getCache();
+        if (c == null) {
+            return;
+        }
+        final Map<BigInteger, Set<CertificateID>> serialNumbers = index.remove(issuerDn);
+        if (serialNumbers != null) {
+            final List<CertificateID> removed = new ArrayList<>();
+            for (final Set<CertificateID> certIds : serialNumbers.values()) {
+                removed.addAll(certIds);
+            }
+            c.invalidateAll(removed);
+            invalidations.add(serialNumbers.size());
+        }
+    }
+
+    /**
+     * Removes the cached responses for a certificate when the current transaction has committed, or immediately if there is no
+     * transaction. Does nothing if the cache is disabled.
+     *
+     * @param registry the transaction synchronization registry of the calling bean
+     * @param issuerDn the normalized issuer DN of the certificate
+     * @param serialNumber the serial number of the certificate
+     */
+    public void invalidateAfterCommit(final TransactionSynchronizationRegistry registry, final String issuerDn, final BigInteger serialNumber) {
+        if (!isEnabled()) {
+            return;
+        }
+        final int transactionStatus = registry == null ? Status.STATUS_NO_TRANSACTION : registry.getTransactionStatus();
+        if (transactionStatus != Status.STATUS_ACTIVE && transactionStatus != Status.STATUS_MARKED_ROLLBACK) {
+            invalidate(issuerDn, serialNumber);
+            return;
+        }
+        PendingInvalidations pending = (PendingInvalidations) registry.getResource(PENDING_INVALIDATIONS_KEY);
+        if (pending == null) {
+            pending = new PendingInvalidations();
+            registry.putResource(PENDING_INVALIDATIONS_KEY, pending);
+            registry.registerInterposedSynchronization(pending);
+        }
+        pending.serialNumbersByIssuer.computeIfAbsent(issuerDn, key -> new HashSet<>()).add(serialNumber);
+    }
+
+    /** Removes all cached responses, e.g. when the signing keys or the OCSP configuration may have changed */
+    public void invalidateAll() {
+        final Cache<CertificateID, Entry> c = cache;
+        if (c != null) {
+            c.invalidateAll();
+            index.clear();
+        }
+    }
+
+    private void addToIndex(final String issuerDn, final CertificateID certId) {
+        index.compute(issuerDn, (key, serialNumbers) -> {
+            final Map<BigInteger, Set<CertificateID>> ret = serialNumbers == null ? new HashMap<>() : serialNumbers;
+            ret.computeIfAbsent(certId.getSerialNumber(), serialNumber -> new HashSet<>()).add(certId);
+            return ret;
+        });
+    }
+
+    private void removeFromIndex(final String issuerDn, final CertificateID certId) {
+        index.computeIfPresent(issuerDn, (key, serialNumbers) -> {
+            final Collection<CertificateID> certIds = serialNumbers.get(certId.getSerialNumber());
+            if (certIds != null && certIds.remove(certId) && certIds.isEmpty()) {
+                serialNumbers.remove(certId.getSerialNumber());
+            }
+            return serialNumbers.isEmpty() ? null : serialNumbers;
+        });
+    }
+
+    /** @return the number of certificates that have cached responses, after pending evictions, for tests */
+    int getIndexedCount() {
+        final Cache<CertificateID, Entry> c = getCache();
+        if (c != null) {
+            c.cleanUp();
+        }
+        int count = 0;
+        for (final Map<BigInteger, Set<CertificateID>> serialNumbers : index.values()) {
+            count += serialNumbers.size();
+        }
+        return count;
+    }
+
+    private void collectMetrics(final List<Sample> samples) {
+        // Not started here, since reading the metrics should not enable the cache
+        final Cache<CertificateID, Entry> c = cache;
+        if (c == null) {
+            return;
+        }
+        final CacheStats stats = c.stats();
+        samples.add(Sample.gauge("ejbca_ocsp_response_cache_entries", "Number of OCSP responses in the in-memory cache.", c.estimatedSize()));
+        samples.add(Sample.counter("ejbca_ocsp_response_cache_hits_total", "Number of OCSP requests answered from the in-memory cache.",
+                stats.hitCount()));
+        samples.add(Sample.counter("ejbca_ocsp_response_cache_misses_total", "Number of cacheable OCSP requests not found in the in-memory cache.",
+                stats.missCount()));
+        samples.add(Sample.gauge("ejbca_ocsp_response_cache_hit_ratio", "Share of cacheable OCSP requests answered from the in-memory cache.",
+                stats.hitRate()));
+        samples.add(Sample.counter("ejbca_ocsp_response_cache_evictions_total",
+                "Number of OCSP responses evicted from the in-memory cache because of its size or their expiry.", stats.evictionCount()));
+        samples.add(Sample.counter("ejbca_ocsp_response_cache_evicted_bytes_total", "Size of the OCSP responses evicted from the in-memory cache.",
+                stats.evictionWeight()));
+        samples.add(Sample.counter("ejbca_ocsp_response_cache_invalidations_total",
+                "Number of certificates whose cached OCSP responses were removed because their status changed.", invalidations.sum()));
+    }
+
+    /** @return a one line summary of the cache metrics, suitable for logging */
+    public String getStatistics() {
+        final Cache<CertificateID, Entry> c = getCache();
+        if (c == null) {
+            return "disabled";
+        }
+        final CacheStats stats = c.stats();
+        return "entries=" + c.estimatedSize() + ", hits=" + stats.hitCount() + ", misses=" + stats.missCount() + ", hitRatio="
+                + String.format("%.3f", stats.hitRate()) + ", evictions=" + stats.evictionCount() + ", evictedBytes=" + stats.evictionWeight()
+                + ", invalidations=" + invalidations.sum();
+    }
+}
@@ -0,0 +1,204 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.ocsp.cache;
+
+import java.math.BigInteger;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.cesecore.certificates.certificate.CertificateConstants;
+import org.cesecore.certificates.certificate.CertificateStatus;
+import org.cesecore.certificates.certificateprofile.CertificateProfileConstants;
+import org.cesecore.certificates.crl.RevokedCertInfo;
+import org.cesecore.util.ComponentMetrics;
+import org.cesecore.util.ComponentMetrics.Sample;
+
+/**
+ * In-memory index of the revocation status of all certificates issued by the CAs served by this OCSP responder.
+ * <p>
+ * The index is filled in bulk and then kept current by polling for rows with a newer CertificateData.updateTime,
+ * see OcspResponseGeneratorSessionBean. A lookup that is not found in the index returns null, and the caller is
+ * expected to fall back to a database lookup. A status found in the index is at most one refresh interval old.
+ * <p>
+ * Issuer DNs are expected in the normalized form stored in CertificateData.issuerDN.
+ */
+public enum OcspRevocationStatusIndex {
+    INSTANCE;
+
+    /** Compact representation of the status information of a single certificate. */
+    private static final class IndexEntry {
+        final long revocationDate;
+        final long expireDate;
+        final int revocationReason;
+        final int certificateProfileId;
+        final boolean revoked;
+
+        IndexEntry(final boolean revoked, final long revocationDate, final int revocationReason, final long expireDate, final int certificateProfileId) {
+            this.revoked = revoked;
+            this.revocationDate = revocationDate;
+            this.revocationReason = revocationReason;
+            this.expireDate = expireDate;
+            this.certificateProfileId = certificateProfileId;
+        }
+    }
+
+    /** All indexed certificates of a single issuer, and how far the index has caught up with the database. */
+    private static final class IssuerIndex {
+        final Map<BigInteger, IndexEntry> entries = new ConcurrentHashMap<>();
+        /** Highest CertificateData.updateTime seen so far */
+        volatile long highestUpdateTime = -1L;
+        /** Start time of the last successful refresh, or 0 if the initial fill is not yet complete */
+        volatile long lastRefreshed = 0L;
+    }
+
+    private final Map<String, IssuerIndex> issuers = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    private OcspRevocationStatusIndex() {
+        ComponentMetrics.INSTANCE.register("ocsp_status_index", this::collectMetrics);
+    }
+
+    /**
+     * Look up the status of a certificate in the index.
+     *
+     * @param issuerDn normalized issuer DN, as stored in CertificateData.issuerDN
+     * @param serialNumber serial number of the certificate
+     * @return the status of the certificate, or null if the status is not known by the index
+     */
+    public CertificateStatus getStatus(final String issuerDn, final BigInteger serialNumber) {
+        final IssuerIndex issuerIndex = issuers.get(issuerDn);
+        if (issuerIndex == null || issuerIndex.lastRefreshed == 0L) {
+            misses.increment();
+            return null;
+        }
+        final IndexEntry entry = issuerIndex.entries.get(serialNumber);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        final CertificateStatus ret = new CertificateStatus(entry.revoked ? CertificateStatus.REVOKED.toString() : CertificateStatus.OK.toString(),
+                entry.revocationDate, entry.revocationReason, entry.certificateProfileId);
+        ret.setExpirationDate(entry.expireDate);
+        return ret;
+    }
+
+    /**
+     * Adds or replaces the status of a certificate. The revocation status is interpreted the same way as when the status is read from
+     * CertificateData by CertificateStatusHelper.
+     *
+     * @param issuerDn normalized issuer DN, as stored in CertificateData.issuerDN
+     * @param serialNumber serial number of the certificate
+     * @param status CertificateData.status, one of CertificateConstants.CERT_*
+     * @param revocationDate CertificateData.revocationDate
+     * @param revocationReason CertificateData.revocationReason
+     * @param expireDate CertificateData.expireDate
+     * @param certificateProfileId CertificateData.certificateProfileId, or null
+     * @param updateTime CertificateData.updateTime
+     */
+    public void update(final String issuerDn, final BigInteger serialNumber, final int status, final long revocationDate, final int revocationReason,
+            final long expireDate, final Integer certificateProfileId, final long updateTime) {
+        final IssuerIndex issuerIndex = issuers.computeIfAbsent(issuerDn, dn -> new IssuerIndex());
+        final boolean revoked = status == CertificateConstants.CERT_REVOKED || (status == CertificateConstants.CERT_ARCHIVED
+                && revocationReason != RevokedCertInfo.REVOCATION_REASON_REMOVEFROMCRL && revocationReason != RevokedCertInfo.NOT_REVOKED);
+        final int profileId = certificateProfileId != null ? certificateProfileId : CertificateProfileConstants.CERTPROFILE_NO_PROFILE;
+        issuerIndex.entries.put(serialNumber, new IndexEntry(revoked, revocationDate, revocationReason, expireDate, profileId));
+        if (updateTime > issuerIndex.highestUpdateTime) {
+            issuerIndex.highestUpdateTime = updateTime;
+        }
+    }
+
+    /**
+     * @param issuerDn normalized issuer DN
+     * @return the highest CertificateData.updateTime that has been indexed for the issuer, or -1 if the issuer has not been filled yet.
+     */
+    public long getHighestUpdateTime(final String issuerDn) {
+        final IssuerIndex issuerIndex = issuers.get(issuerDn);
+        return issuerIndex == null || issuerIndex.lastRefreshed == 0L ? -1L : issuerIndex.highestUpdateTime;
+    }
+
+    /**
+     * Marks that all changes up to a point in time have been read for the issuer. Lookups are only answered for issuers that have been filled once.
+     *
+     * @param issuerDn normalized issuer DN
+     * @param refreshTime the time when the refresh started
+     */
+    public void setRefreshed(final String issuerDn, final long refreshTime) {
+        issuers.computeIfAbsent(issuerDn, dn -> new IssuerIndex()).lastRefreshed = refreshTime;
+    }
+
+    /** Removes all issuers that are not in the given collection, e.g. when a CA is no longer served by the responder. */
+    public void retainIssuers(final Collection<String> issuerDns) {
+        issuers.keySet().retainAll(issuerDns);
+    }
+
+    /** @return the number of certificates currently held by the index */
+    public long getSize() {
+        long ret = 0;
+        for (final IssuerIndex issuerIndex : issuers.values()) {
+            ret += issuerIndex.entries.size();
+        }
+        return ret;
+    }
+
+    /** @return the number of lookups that were answered by the index */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /** @return the number of lookups that had to fall back to the database */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /** @return the age in milliseconds of the least recently refreshed issuer, or -1 if nothing has been indexed */
+    public long getMaxStalenessMs() {
+        final long now = System.currentTimeMillis();
+        long ret = -1L;
+        for (final IssuerIndex issuerIndex : issuers.values()) {
+            if (issuerIndex.lastRefreshed != 0L) {
+                ret = Math.max(ret, now - issuerIndex.lastRefreshed);
+            }
+        }
+        return ret;
+    }
+
+    private void collectMetrics(final List<Sample> samples) {
+        samples.add(Sample.gauge("ejbca_ocsp_status_index_entries", "Number of certificates in the OCSP revocation status index.", getSize()));
+        samples.add(Sample.counter("ejbca_ocsp_status_index_hits_total", "Number of OCSP status lookups answered by the index.", getHitCount()));
+        samples.add(Sample.counter("ejbca_ocsp_status_index_misses_total", "Number of OCSP status lookups that fell back to the database.",
+                getMissCount()));
+        samples.add(Sample.gauge("ejbca_ocsp_status_index_max_staleness_seconds",
+                "Time since the least recently refreshed issuer was refreshed, or -1 if nothing has been indexed.",
+                getMaxStalenessMs() < 0 ? -1 : getMaxStalenessMs() / 1000.0));
+    }
+
+    /** @return a one line summary of the index metrics, suitable for logging */
+    public String getStatistics() {
+        final long hitCount = getHitCount();
+        final long total = hitCount + getMissCount();
+        return "issuers=" + issuers.size() + ", entries=" + getSize() + ", hits=" + hitCount + ", lookups=" + total
+                + ", hitRate=" + (total == 0 ? 0 : (100 * hitCount / total)) + "%, maxStalenessMs=" + getMaxStalenessMs();
+    }
+
+    /** Clear the index and its metrics. */
+    public void flush() {
+        issuers.clear();
+        hits.reset();
+        misses.reset();
+    }
+}
@@ -14,7 +14,7 @@ package org.cesecore.certificates.ocsp.logging;
 
 import org.cesecore.config.GlobalOcspConfiguration;
 
-import java.text.SimpleDateFormat;
+import java.util.TimeZone;
 
 /**
  * TODO: Document me!
@@ -37,7 +37,7 @@ public class AuditLogger extends PatternLogger {
     public AuditLogger(String ocspRequest, Integer logId, String sessionId, String clientIp, GlobalOcspConfiguration ocspConfiguration) {
         super(ocspConfiguration.getIsOcspAuditLoggingEnabled(), AuditLogger.class, ocspConfiguration.getOcspAuditLogPattern(),
                 ocspConfiguration.getOcspAuditLogValues(), ocspConfiguration.getOcspLoggingDateFormat(),
-                new SimpleDateFormat(ocspConfiguration.getOcspLoggingDateFormat()).getTimeZone().toString());
+                TimeZone.getDefault().toString());
 
         paramPut(OCSPREQUEST, ocspRequest);
         paramPut(PatternLogger.LOG_ID, logId);
@@ -18,23 +18,27 @@ import org.apache.commons.lang.time.FastDateFormat;
 import org.apache.log4j.Logger;
 import org.bouncycastle.util.encoders.Hex;
 
-import java.io.PrintWriter;
 import java.io.Serializable;
-import java.io.StringWriter;
-import java.util.Date;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
- * This class can be extended to create highly configurable log classes. Values that are to be logged are stored in a Hashmap and the output is
+ * This class can be extended to create highly configurable log classes. Values that are to be logged are stored by key and the output is
  * configured using a Java.util.regex.Matcher and a sortString. The extending classes also need to supply a Logger and a String specifying how to log
  * Dates.
  * 
  * Use paramPut(String key, String value) to add values, Use writeln() to log all the stored values and then use flush() to store them to file.
  * 
+ * The sortString is parsed once per pattern, and the parsed template is shared by all loggers using it. Only values of keys that occur
+ * in the sortString are stored, and values are written as is, without the escaping of '$' and '\\' done by Matcher.appendReplacement.
+ * 
  * Roughly based on PatternLogger.java 8663 2010-02-17 10:42:41Z anatom from EJBCA
  * 
  * @version $Id$
@@ -82,22 +86,93 @@ public abstract class PatternLogger implements Serializable {
      */
     public static final String PROCESS_TIME = "PROCESS_TIME";
 
-    private final Map<String, String> valuepairs = new HashMap<>();
+    /** Upper limit on the number of cached templates, the patterns come from configuration, so there are normally only a few */
+    private static final int MAX_CACHED_TEMPLATES = 64;
+    private static final Map<String, Template> templates = new ConcurrentHashMap<>();
+
+    /**
+     * The parsed form of an orderString. Holds the literal text between the placeholders, and for each placeholder the index
+     * of the value slot it is replaced by. Immutable, and shared between all loggers using the same pattern.
+     */
+    private static final class Template {
+        /** Literal text, one more than the number of placeholders */
+        private final String[] literals;
+        /** Value slot of each placeholder */
+        private final int[] placeholderSlots;
+        /** Original text of each placeholder, used when no value has been set */
+        private final String[] placeholders;
+        /** Value slot of each key that occurs in the template */
+        private final Map<String, Integer> slots = new HashMap<>();
+        private final int length;
+
+        private Template(final String matchPattern, final String matchString) {
+            final Matcher matcher = Pattern.compile(matchPattern).matcher(matchString);
+            final List<String> literalList = new ArrayList<>();
+            final List<Integer> slotList = new ArrayList<>();
+            final List<String> placeholderList = new ArrayList<>();
+            int position = 0;
+            while (matcher.find()) {
+                literalList.add(matchString.substring(position, matcher.start()));
+                // when the pattern is ${identifier}, group 1 is 'identifier'
+                final String key = matcher.group(1);
+                Integer slot = slots.get(key);
+                if (slot == null) {
+                    slot = slots.size();
+                    slots.put(key, slot);
+                }
+                slotList.add(slot);
+                placeholderList.add(matcher.group(0));
+                position = matcher.end();
+            }
+            literalList.add(matchString.substring(position));
+            literals = literalList.toArray(new String[0]);
+            placeholders = placeholderList.toArray(new String[0]);
+            placeholderSlots = new int[slotList.size()];
+            for (int i = 0; i < placeholderSlots.length; i++) {
+                placeholderSlots[i] = slotList.get(i);
+            }
+            length = matchString.length();
+        }
+
+        private static Template get(final String matchPattern, final String matchString) {
+            final String cacheKey = matchPattern + '\n' + matchString;
+            Template template = templates.get(cacheKey);
+            if (template == null) {
+                template = new Template(matchPattern, matchString);
+                if (templates.size() >= MAX_CACHED_TEMPLATES) {
+                    templates.clear();
+                }
+                templates.put(cacheKey, template);
+            }
+            return template;
+        }
+
+        /** @return the value slot of the key, or -1 if the key does not occur in the template */
+        private int getSlot(final String key) {
+            final Integer slot = slots.get(key);
+            return slot == null ? -1 : slot;
+        }
+    }
+
+    /** Values of the keys in the template, String or byte[] (hex-encoded when written). Values of other keys are never logged, and are not stored. */
+    private final Object[] values;
     private final String matchString;
     private final String matchPattern;
-    // Matcher is not Serializable
-    private transient Matcher m;
-    private final String orderString;
-    private final Date startTime;
-    private Date startProcessTime = null;
+    // Parsed from matchPattern and matchString, and shared between loggers
+    private transient Template template;
+    private final long startTime;
+    private long startProcessTime = -1;
     private boolean doLogging;
     final private Class<?> loggerClass;
     // Logger is not Serializable
     private transient Logger logger;
 
     // for writing the output
-    private transient StringWriter sw;
-    private transient PrintWriter pw;
+    private transient StringBuilder output;
+    /** Positions in the output where the REPLY_TIME and PROCESS_TIME markers were written, filled in when the output is flushed */
+    private transient int[] markerPositions;
+    private transient boolean[] markerIsProcessTime;
+    private transient int markerCount;
 
     /**
      * @param doLogging
@@ -116,27 +191,29 @@ public abstract class PatternLogger implements Serializable {
         this.doLogging = doLogging;
         this.matchString = matchString;
         this.matchPattern = matchPattern;
-        this.orderString = matchString;
         this.loggerClass = loggerClass;
-        this.startTime = new Date();
-        final FastDateFormat dateformat;
-        if (timeZone == null) {
-                dateformat = FastDateFormat.getInstance(logDateFormat);
-        } else {
-                dateformat = FastDateFormat.getInstance(logDateFormat, TimeZone.getTimeZone(timeZone));
+        this.startTime = System.currentTimeMillis();
+        this.template = Template.get(matchPattern, matchString);
+        this.values = new Object[template.slots.size()];
+        if (template.getSlot(LOG_TIME) != -1) {
+            final FastDateFormat dateformat;
+            if (timeZone == null) {
+                    dateformat = FastDateFormat.getInstance(logDateFormat);
+            } else {
+                    dateformat = FastDateFormat.getInstance(logDateFormat, TimeZone.getTimeZone(timeZone));
+            }
+            paramPut(LOG_TIME, dateformat.format(startTime));
         }
-        paramPut(LOG_TIME, dateformat.format(new Date()));
         this.paramPut(REPLY_TIME, REPLY_TIME);
         this.paramPut(LOG_ID, "0");
     }
-    
-    private Matcher getMatcher() {
-        if (this.m == null) {
-            // We have to instantiate the Matcher in the class and can not have it as an instance variable.
-            // This is because we are sending this object to a remote EJB (at least in system tests)
-            this.m = Pattern.compile(matchPattern).matcher(matchString);
+
+    private Template getTemplate() {
+        if (this.template == null) {
+            // Not serialized, since we are sending this object to a remote EJB (at least in system tests)
+            this.template = Template.get(matchPattern, matchString);
         }
-        return this.m;
+        return this.template;
     }
 
     private Logger getLogger() {
@@ -148,51 +225,71 @@ public abstract class PatternLogger implements Serializable {
         return this.logger;
     }
 
-    private PrintWriter getPrintWriter() {
-        if (this.pw == null) {
-            this.sw = new StringWriter();
-            this.pw = new PrintWriter(this.sw);
+    private static String toString(final Object value) {
+        return value instanceof byte[] ? Hex.toHexString((byte[]) value) : (String) value;
+    }
+
+    /**
+     * Appends the template with all values to the builder. Values are written as is. Placeholders without a value are kept.
+     * 
+     * @param sb the builder to append to
+     * @param recordMarkers true to record the positions of the REPLY_TIME and PROCESS_TIME markers
+     */
+    private void append(final StringBuilder sb, final boolean recordMarkers) {
+        final Template t = getTemplate();
+        for (int i = 0; i < t.placeholderSlots.length; i++) {
+            sb.append(t.literals[i]);
+            final String value = toString(values[t.placeholderSlots[i]]);
+            if (value == null) {
+                sb.append(t.placeholders[i]);
+                continue;
+            }
+            if (recordMarkers && (REPLY_TIME.equals(value) || PROCESS_TIME.equals(value))) {
+                addMarker(sb.length(), PROCESS_TIME.equals(value));
+            }
+            sb.append(value);
+        }
+        sb.append(t.literals[t.literals.length - 1]);
+    }
+
+    private void addMarker(final int position, final boolean processTime) {
+        if (markerPositions == null) {
+            markerPositions = new int[4];
+            markerIsProcessTime = new boolean[4];
+        } else if (markerCount == markerPositions.length) {
+            markerPositions = Arrays.copyOf(markerPositions, markerCount * 2);
+            markerIsProcessTime = Arrays.copyOf(markerIsProcessTime, markerCount * 2);
         }
-        return pw;
+        markerPositions[markerCount] = position;
+        markerIsProcessTime[markerCount] = processTime;
+        markerCount++;
     }
-    
+
     /**
      * 
      * @return output to be logged
      */
     public String interpolate() {
-        final StringBuffer sb = new StringBuffer(this.orderString.length());
-        final Matcher matcher = getMatcher();
-        matcher.reset();
-        while (matcher.find()) {
-            // when the pattern is ${identifier}, group 0 is 'identifier'
-            final String key = matcher.group(1);
-            final String value = this.valuepairs.get(key);
+        final StringBuilder sb = new StringBuilder(getTemplate().length + 64);
+        append(sb, false);
+        return sb.toString();
+    }
 
-            // if the pattern does exists, replace it by its value
-            // otherwise keep the pattern ( it is group(0) )
-            if (value != null) {
-                matcher.appendReplacement(sb, value);
-            } else {
-                // I'm doing this to avoid the backreference problem as there will be a $
-                // if I replace directly with the group 0 (which is also a pattern)
-                matcher.appendReplacement(sb, "");
-                final String unknown = matcher.group(0);
-                sb.append(unknown);
-            }
+    private void put(final String key, final Object value) {
+        final int slot = getTemplate().getSlot(key);
+        if (slot != -1) {
+            values[slot] = value;
         }
-        matcher.appendTail(sb);
-        return sb.toString();
     }
 
     /**
-     * Hex-encodes the bytes.
+     * Hex-encodes the bytes, but only if the value is logged.
      * method that makes sure that a "" is inserted instead of null
      * @param key
      * @param value
      */
     public void paramPut(String key, byte[] value) {
-        paramPut(key, new String(Hex.encode(value)));
+        put(key, value == null ? "" : value);
     }
 
     /**
@@ -201,14 +298,9 @@ public abstract class PatternLogger implements Serializable {
      * @param value
      */
     public void paramPut(String key, String value) {
-        // logger.debug("paramput: "+ key+ ";" +value +";" +valuepairs.toString());
-        if (value == null) {
-            this.valuepairs.put(key, "");
-        } else {
-            this.valuepairs.put(key, value);
-        }
+        put(key, value == null ? "" : value);
         if (StringUtils.equals(key, PROCESS_TIME)) {
-            startProcessTime = new Date();
+            startProcessTime = System.currentTimeMillis();
         }
     }
 
@@ -218,10 +310,18 @@ public abstract class PatternLogger implements Serializable {
      * @param value
      */
     public void paramPut(String key, Integer value) {
-        if (value == null) {
-            this.valuepairs.put(key, "");
-        } else {
-            this.valuepairs.put(key, value.toString());
+        put(key, value == null ? "" : value.toString());
+    }
+
+    /**
+     * Same as {@link #paramPut(String, Integer)}, without boxing the value, and without creating a String if the value is not logged.
+     * @param key
+     * @param value
+     */
+    public void paramPut(String key, int value) {
+        final int slot = getTemplate().getSlot(key);
+        if (slot != -1) {
+            values[slot] = Integer.toString(value);
         }
     }
 
@@ -230,7 +330,11 @@ public abstract class PatternLogger implements Serializable {
      */
     public void writeln() {
         if (doLogging) {
-            getPrintWriter().println(interpolate());
+            if (output == null) {
+                output = new StringBuilder(getTemplate().length + 256);
+            }
+            append(output, true);
+            output.append(System.lineSeparator());
         }
     }
 
@@ -239,17 +343,29 @@ public abstract class PatternLogger implements Serializable {
      */
     public void flush() {
         if (doLogging) {
-            getPrintWriter().flush();
-            String output = this.sw.toString();
-            output = output.replaceAll(REPLY_TIME, String.valueOf(new Date().getTime() - this.startTime.getTime()));
-            if (startProcessTime != null) {
-                output = output.replaceAll(PROCESS_TIME, String.valueOf(new Date().getTime() - this.startProcessTime.getTime()));
+            final StringBuilder sb = new StringBuilder(output == null ? 0 : output.length());
+            if (output != null) {
+                final long now = System.currentTimeMillis();
+                final String replyTime = String.valueOf(now - startTime);
+                final String processTime = startProcessTime == -1 ? PROCESS_TIME : String.valueOf(now - startProcessTime);
+                int position = 0;
+                for (int i = 0; i < markerCount; i++) {
+                    sb.append(output, position, markerPositions[i]);
+                    if (markerIsProcessTime[i]) {
+                        sb.append(processTime);
+                        position = markerPositions[i] + PROCESS_TIME.length();
+                    } else {
+                        sb.append(replyTime);
+                        position = markerPositions[i] + REPLY_TIME.length();
+                    }
+                }
+                sb.append(output, position, output.length());
             }
             //Remove an extra linebreak between flushes.
-            if(output.endsWith(System.getProperty("line.separator"))) {
-                output = output.substring(0, output.length()-1);
+            if (sb.length() > 0 && sb.lastIndexOf(System.lineSeparator()) == sb.length() - System.lineSeparator().length()) {
+                sb.setLength(sb.length() - 1);
             }
-            getLogger().debug(output); // Finally output the log row to the logging device
+            getLogger().debug(sb.toString()); // Finally output the log row to the logging device
         }
     }
 
@@ -16,7 +16,7 @@ import org.cesecore.certificates.certificateprofile.CertificateProfileConstants;
 import org.cesecore.certificates.crl.RevocationReasons;
 import org.cesecore.config.GlobalOcspConfiguration;
 
-import java.text.SimpleDateFormat;
+import java.util.TimeZone;
 
 /**
  * OCSP transaction logger.
@@ -94,7 +94,7 @@ public class TransactionLogger extends PatternLogger {
     public TransactionLogger(Integer logId, String sessionId, String clientIp, GlobalOcspConfiguration ocspConfiguration) {
         super(ocspConfiguration.getIsOcspTransactionLoggingEnabled(), TransactionLogger.class, ocspConfiguration.getOcspTransactionLogPattern(),
                 ocspConfiguration.getOcspTransactionLogValues(), ocspConfiguration.getOcspLoggingDateFormat(),
-                new SimpleDateFormat(ocspConfiguration.getOcspLoggingDateFormat()).getTimeZone().toString());
+                TimeZone.getDefault().toString());
         paramPut(PatternLogger.LOG_ID, logId);
         paramPut(PatternLogger.SESSION_ID, sessionId);
         paramPut(PatternLogger.CLIENT_IP, clientIp);
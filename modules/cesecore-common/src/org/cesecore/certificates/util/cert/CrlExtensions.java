@@ -32,7 +32,9 @@ import org.bouncycastle.asn1.x509.CRLDistPoint;
 import org.bouncycastle.asn1.x509.CRLNumber;
 import org.bouncycastle.asn1.x509.DistributionPoint;
 import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.Extensions;
 import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.asn1.x509.TBSCertList.CRLEntry;
 import org.bouncycastle.cert.jcajce.JcaX509ExtensionUtils;
 import org.cesecore.certificates.crl.RevokedCertInfo;
 
@@ -121,6 +123,22 @@ public class CrlExtensions {
         return reasonCode;
     }
 
+    /** @return the revocation reason of a CRL entry read with CrlEntryReader, or {@link RevokedCertInfo#REVOCATION_REASON_UNSPECIFIED} if there is none */
+    public static int extractReasonCode(final CRLEntry crlEntry) {
+        int reasonCode = RevokedCertInfo.REVOCATION_REASON_UNSPECIFIED;
+        if (crlEntry.hasExtensions()) {
+            final Extension extension = crlEntry.getExtensions().getExtension(Extension.reasonCode);
+            if (extension!=null) {
+                try {
+                    reasonCode = ASN1Enumerated.getInstance(extension.getParsedValue()).getValue().intValue();
+                } catch (IllegalArgumentException e) {
+                    log.debug("Failed to parse reason code of CRLEntry: " + e.getMessage());
+                }
+            }
+        }
+        return reasonCode;
+    }
+
     /** @return a list of URLs in String format with present freshest CRL extensions or an empty List */
     public static List<String> extractFreshestCrlDistributionPoints(final X509CRL crl) {
         final List<String> freshestCdpUrls = new ArrayList<>();
@@ -130,15 +148,28 @@ public class CrlExtensions {
             if (asn1OctetString!=null) {
                 final ASN1Sequence asn1Sequence = getAsn1ObjectFromBytes(asn1OctetString.getOctets(), ASN1Sequence.class);
                 if (asn1Sequence!=null) {
-                    final CRLDistPoint cdp = CRLDistPoint.getInstance(asn1Sequence);
-                    for (final DistributionPoint distributionPoint : cdp.getDistributionPoints()) {
-                        freshestCdpUrls.add(((DERIA5String) ((GeneralNames) distributionPoint.getDistributionPoint().getName()).getNames()[0].getName()).getString());
-                    }
+                    addDistributionPointUrls(freshestCdpUrls, CRLDistPoint.getInstance(asn1Sequence));
                 }
             }
         }
         return freshestCdpUrls;
     }
+
+    /** @return a list of URLs in String format with present freshest CRL extensions, from the extensions of a CRL read with CrlHeader, or an empty List */
+    public static List<String> extractFreshestCrlDistributionPoints(final Extensions crlExtensions) {
+        final List<String> freshestCdpUrls = new ArrayList<>();
+        final Extension extension = crlExtensions == null ? null : crlExtensions.getExtension(Extension.freshestCRL);
+        if (extension!=null) {
+            addDistributionPointUrls(freshestCdpUrls, CRLDistPoint.getInstance(extension.getParsedValue()));
+        }
+        return freshestCdpUrls;
+    }
+
+    private static void addDistributionPointUrls(final List<String> urls, final CRLDistPoint cdp) {
+        for (final DistributionPoint distributionPoint : cdp.getDistributionPoints()) {
+            urls.add(((DERIA5String) ((GeneralNames) distributionPoint.getDistributionPoint().getName()).getNames()[0].getName()).getString());
+        }
+    }
     
     /** @return the first object found when treating the provided byte array as an ASN1InputStream */
     private static <T> T getAsn1ObjectFromBytes(final byte[] bytes, final Class<T> clazz) {
@@ -181,4 +212,19 @@ public class CrlExtensions {
         }
         return null;
     }
+
+    /** @return the invalidity date of a CRL entry read with CrlEntryReader, or null if there is none */
+    public static ASN1GeneralizedTime extractInvalidityDate(final CRLEntry crlEntry) {
+        if (crlEntry.hasExtensions()) {
+            final Extension extension = crlEntry.getExtensions().getExtension(Extension.invalidityDate);
+            if (extension != null) {
+                try {
+                    return ASN1GeneralizedTime.getInstance(extension.getParsedValue());
+                } catch (IllegalArgumentException e) {
+                    log.debug("Failed to parse invalidity date  of CRLEntry: " + e.getMessage());
+                }
+            }
+        }
+        return null;
+    }
 }
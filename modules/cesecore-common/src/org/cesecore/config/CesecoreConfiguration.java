@@ -152,6 +152,14 @@ public final class CesecoreConfiguration {
         return getLongValue("validator.cachetime", 30000L, "milliseconds to cache validators");
     }
 
+    /**
+     * Parameter to specify how long the latest CRL downloaded through the CRL store is served from memory before the database is checked for a newer CRL.
+     * CRLs stored on the same node are picked up right away.
+     */
+    public static long getCacheCrlStoreTime() {
+        return getLongValue("crlstore.cachetime", 10000L, "milliseconds to cache the latest CRLs");
+    }
+
     /** Parameter to specify if retrieving Authorization Access Rules (in AuthorizationSession) should be cached, and in that case for how long. */
     public static long getCacheAuthorizationTime() {
         return getLongValue("authorization.cachetime", 30000L, "milliseconds to cache authorization");
@@ -228,6 +236,14 @@ public final class CesecoreConfiguration {
         return value!=null && Boolean.parseBoolean(value.trim());
     }
 
+    /**
+     * @return true if the data of CAs, profiles, roles, key bindings, publishers and services should be written in the compact
+     * format of CompactDataMapSerializer instead of XML. Data in either format can always be read.
+     */
+    public static boolean useCompactDataMapFormat() {
+        return Boolean.TRUE.toString().equalsIgnoreCase(ConfigurationHolder.getString("database.compactdatamaps"));
+    }
+
     /** If database integrity protection should be used or not. */
     public static boolean useDatabaseIntegrityProtection(final String tableName) {
         // First check if we have explicit configuration for this entity
@@ -255,6 +271,14 @@ public final class CesecoreConfiguration {
         return (int) getLongValue("database.crlgenfetchsize", 500000L, "rows");
     }
 
+    /**
+     * @return the number of bytes of encoded CRL entries that are kept in memory while generating a CRL, before they are moved
+     *      to a temporary file. -1 means that entries are always kept in memory.
+     */
+    public static long getCrlGenerationMemoryThreshold() {
+        return getLongValue("crlgen.memorythreshold", 67108864L, "bytes");
+    }
+
     /**
      * Whether EJBCA should request ordered fetching of revoked certificates when generating CRLs.
      * This is a workaround for MS-SQL.
@@ -38,6 +38,15 @@ public class OcspConfiguration {
     public static final String SIGNING_CERTD_VALID_TIME = "ocsp.signingCertsValidTime";
     public static final String REQUEST_SIGNING_CERT_REVOCATION_CACHE_TIME = "ocsp.reqsigncertrevcachetime";
     public static final String SIGNING_TRUSTSTORE_VALID_TIME = "ocsp.signtrustvalidtime";
+    public static final String REVOCATION_STATUS_INDEX_ENABLED = "ocsp.revocationstatusindex.enabled";
+    public static final String REVOCATION_STATUS_INDEX_REFRESH_TIME = "ocsp.revocationstatusindex.refreshtime";
+    public static final String REVOCATION_STATUS_INDEX_OVERLAP_TIME = "ocsp.revocationstatusindex.overlaptime";
+    public static final String REVOCATION_STATUS_INDEX_FETCH_SIZE = "ocsp.revocationstatusindex.fetchsize";
+    public static final String SIGNING_THREADS = "ocsp.signing.threads";
+    public static final String SIGNING_QUEUE_SIZE = "ocsp.signing.queuesize";
+    public static final String SIGNING_MAX_BATCH_SIZE = "ocsp.signing.maxbatchsize";
+    public static final String RESPONSE_CACHE_MAX_SIZE = "ocsp.responsecache.maxsize";
+    public static final String RESPONSE_CACHE_MAX_AGE = "ocsp.responsecache.maxage";
     public static final String SIGNATUREREQUIRED = "ocsp.signaturerequired";
     public static final String CARD_PASSWORD = "ocsp.keys.cardPassword";
     public static final String WARNING_BEFORE_EXPERATION_TIME = "ocsp.warningBeforeExpirationTime";
@@ -134,6 +143,88 @@ public class OcspConfiguration {
         return timeInSeconds;
     }
 
+    /**
+     * @return true if certificate status lookups should be answered from the in-memory revocation status index when possible
+     */
+    public static boolean isRevocationStatusIndexEnabled() {
+        final String value = ConfigurationHolder.getString(REVOCATION_STATUS_INDEX_ENABLED);
+        return "true".equalsIgnoreCase(value) || "yes".equalsIgnoreCase(value);
+    }
+
+    /**
+     * @return the interval in milliseconds on which changed certificate statuses are polled into the revocation status index
+     */
+    public static long getRevocationStatusIndexRefreshTimeMs() {
+        return getLongValue(REVOCATION_STATUS_INDEX_REFRESH_TIME, 10000L, "ms");
+    }
+
+    /**
+     * @return how far back in milliseconds each incremental poll of the revocation status index reaches before the last seen updateTime,
+     * to pick up rows from transactions that committed late or clocks that are slightly out of sync
+     */
+    public static long getRevocationStatusIndexOverlapTimeMs() {
+        return getLongValue(REVOCATION_STATUS_INDEX_OVERLAP_TIME, 60000L, "ms");
+    }
+
+    /**
+     * @return the maximum number of certificate status rows read per database query when filling the revocation status index
+     */
+    public static int getRevocationStatusIndexFetchSize() {
+        return (int) getLongValue(REVOCATION_STATUS_INDEX_FETCH_SIZE, 10000L, "rows");
+    }
+
+    /**
+     * @return the number of threads that sign OCSP responses, which should not exceed the number of sessions the crypto tokens can use
+     */
+    public static int getSigningThreads() {
+        return (int) getLongValue(SIGNING_THREADS, 16L, "threads");
+    }
+
+    /**
+     * @return the maximum number of OCSP responses waiting to be signed, before requests have to wait for room in the queue
+     */
+    public static int getSigningQueueSize() {
+        return (int) getLongValue(SIGNING_QUEUE_SIZE, 1000L, "responses");
+    }
+
+    /**
+     * @return the maximum number of queued OCSP responses for the same key that one signing thread signs in a row
+     */
+    public static int getSigningMaxBatchSize() {
+        return (int) getLongValue(SIGNING_MAX_BATCH_SIZE, 32L, "responses");
+    }
+
+    /**
+     * @return the maximum total size in bytes of the responses kept in the in-memory OCSP response cache, 0 if the cache is disabled
+     */
+    public static long getResponseCacheMaxSize() {
+        return getLongValue(RESPONSE_CACHE_MAX_SIZE, 0L, "bytes");
+    }
+
+    /**
+     * @return the longest time in milliseconds a response is served from the in-memory OCSP response cache, even if its nextUpdate is later
+     */
+    public static long getResponseCacheMaxAgeMs() {
+        return getLongValue(RESPONSE_CACHE_MAX_AGE, 60000L, "ms");
+    }
+
+    private static long getLongValue(final String key, final long defaultValue, final String unit) {
+        final String value = ConfigurationHolder.getString(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            final long ret = Long.parseLong(value.trim());
+            if (ret > 0) {
+                return ret;
+            }
+            log.warn(key + " must be a positive number. Using default " + defaultValue + " " + unit + ".");
+        } catch (NumberFormatException e) {
+            log.warn(key + " is not a decimal long. Using default " + defaultValue + " " + unit + ".");
+        }
+        return defaultValue;
+    }
+
     /**
      * If set to true the responder will enforce OCSP request signing
      */
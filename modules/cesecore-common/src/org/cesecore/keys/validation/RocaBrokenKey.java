@@ -46,17 +46,12 @@ package org.cesecore.keys.validation;
  * @version $Id$
  */
 import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
 
 public class RocaBrokenKey {
     private static final int[] prims = new int[]{3, 5, 7, 11, 13, 17, 19, 23, 29, 31, 37, 41, 43, 47, 53, 59, 61, 67, 71, 73, 79, 83, 89, 97, 101,
             103, 107, 109, 113, 127, 131, 137, 139, 149, 151, 157, 163, 167};
-    private static final BigInteger[] primes = new BigInteger[prims.length];
-
-    static {
-        for (int i = 0; i < prims.length; i++) {
-            primes[i] = BigInteger.valueOf(prims[i]);
-        }
-    }
 
     private static final BigInteger[] markers = new BigInteger[]{
             new BigInteger("6"),
@@ -115,10 +110,41 @@ public class RocaBrokenKey {
 //        return true;
 //    }
 
+    /**
+     * The primes grouped so that the product of each group fits in a long. The residue of the modulus is computed once per group
+     * with BigInteger, and the residue for each prime in the group from that with long arithmetic.
+     */
+    private static final BigInteger[] groupProducts;
+    private static final int[] groupEnds;
+
+    static {
+        final List<BigInteger> products = new ArrayList<>();
+        final List<Integer> ends = new ArrayList<>();
+        long product = 1;
+        for (int i = 0; i < prims.length; i++) {
+            if (product > Long.MAX_VALUE / prims[i]) {
+                products.add(BigInteger.valueOf(product));
+                ends.add(i);
+                product = 1;
+            }
+            product *= prims[i];
+        }
+        products.add(BigInteger.valueOf(product));
+        ends.add(prims.length);
+        groupProducts = products.toArray(new BigInteger[0]);
+        groupEnds = ends.stream().mapToInt(Integer::intValue).toArray();
+    }
+
     public static boolean isAffected(BigInteger modulus) {
-        for (int i = 0; i < primes.length; i++) {
-            if (BigInteger.ONE.shiftLeft(modulus.remainder(primes[i]).intValue()).and(markers[i]).equals(BigInteger.ZERO)) {
-                return false;
+        // Same test as above, i.e. bit (modulus mod prime) must be set in the marker for every prime, but without creating a
+        // BigInteger for each prime. Most keys are rejected by one of the first primes.
+        int i = 0;
+        for (int group = 0; group < groupProducts.length; group++) {
+            final long groupResidue = modulus.mod(groupProducts[group]).longValue();
+            for (; i < groupEnds[group]; i++) {
+                if (!markers[i].testBit((int) (groupResidue % prims[i]))) {
+                    return false;
+                }
             }
         }
         return true;
@@ -22,6 +22,7 @@ import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
@@ -33,6 +34,8 @@ import org.cesecore.util.ui.DynamicUiActionCallback;
 import org.cesecore.util.ui.DynamicUiCallbackException;
 import org.cesecore.util.ui.DynamicUiProperty;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.keyfactor.util.crypto.algorithm.AlgorithmConstants;
 import com.keyfactor.util.crypto.algorithm.AlgorithmTools;
 import com.keyfactor.util.keys.KeyTools;
@@ -136,25 +139,124 @@ public class RsaKeyValidator extends KeyValidatorBase {
 
     /**
      * Gets the smallest factor of the positive natural number greater than 2.
+     * <p>
+     * This is true if n is divisible by any prime up to and including the bound. Instead of dividing by every odd number, the
+     * greatest common divisor of n and the product of the odd primes is computed, see {@link #getPrimorial(int)}.
+     *
      * @param n the number
-     * @return the smallest factor or 2 for n=0.
+     * @param intFactor the largest factor to test
+     * @return true if a factor up to intFactor was found
      */
     protected static final boolean hasSmallerFactorThan(BigInteger n, int intFactor) {
-        final BigInteger two = new BigInteger("2");
         if (intFactor < 3) {
             return false;
         }
-        if (n.mod(two).equals(BigInteger.ZERO) && intFactor > 2) {
+        if (!n.testBit(0)) {
             return true;
         }
-        for (int i = intFactor; i > 2; i = i - 2) {
-            if (n.mod(BigInteger.valueOf(i)).equals(BigInteger.ZERO)) {
-                return true;
+        return !n.gcd(getPrimorial(intFactor)).equals(BigInteger.ONE);
+    }
+
+    /** Products of the odd primes up to a bound, by bound. Validators are configured with few distinct bounds. */
+    private static final Map<Integer, BigInteger> primorials = new ConcurrentHashMap<>();
+    private static final int MAX_CACHED_PRIMORIALS = 16;
+
+    /**
+     * @param bound the largest prime to include
+     * @return the product of all odd primes up to and including bound
+     */
+    protected static BigInteger getPrimorial(final int bound) {
+        BigInteger primorial = primorials.get(bound);
+        if (primorial == null) {
+            // Sieve of Eratosthenes over the odd numbers, index i represents 2i+1
+            final boolean[] composite = new boolean[bound / 2 + 1];
+            final List<BigInteger> factors = new ArrayList<>();
+            for (int i = 1; 2 * i + 1 <= bound; i++) {
+                if (!composite[i]) {
+                    final long prime = 2L * i + 1;
+                    factors.add(BigInteger.valueOf(prime));
+                    for (long j = prime * prime / 2; j < composite.length; j += prime) {
+                        composite[(int) j] = true;
+                    }
+                }
+            }
+            primorial = product(factors, 0, factors.size());
+            if (primorials.size() < MAX_CACHED_PRIMORIALS) {
+                primorials.put(bound, primorial);
             }
         }
-        return false;
+        return primorial;
+    }
+
+    /** Multiplies factors pairwise, which is much faster than a running product when there are many factors */
+    private static BigInteger product(final List<BigInteger> factors, final int from, final int to) {
+        if (to - from == 0) {
+            return BigInteger.ONE;
+        }
+        if (to - from == 1) {
+            return factors.get(from);
+        }
+        final int middle = (from + to) >>> 1;
+        return product(factors, from, middle).multiply(product(factors, middle, to));
+    }
+
+    /** Quadratic residues modulo 64, 63, 65 and 11, used to rule out most non-squares without computing a square root */
+    private static final boolean[] squareMod64 = squaresModulo(64);
+    private static final boolean[] squareMod63 = squaresModulo(63);
+    private static final boolean[] squareMod65 = squaresModulo(65);
+    private static final boolean[] squareMod11 = squaresModulo(11);
+    private static final BigInteger SQUARE_FILTER_MODULUS = BigInteger.valueOf(63L * 65 * 11);
+
+    private static boolean[] squaresModulo(final int modulus) {
+        final boolean[] squares = new boolean[modulus];
+        for (int i = 0; i < modulus; i++) {
+            squares[(i * i) % modulus] = true;
+        }
+        return squares;
     }
-    
+
+    /**
+     * @param x a non-negative number
+     * @return the square root of x if x is a perfect square, or null
+     */
+    private static BigInteger perfectSquareRoot(final BigInteger x) {
+        if (!squareMod64[x.intValue() & 63]) {
+            return null;
+        }
+        final int residue = x.mod(SQUARE_FILTER_MODULUS).intValue();
+        if (!squareMod63[residue % 63] || !squareMod65[residue % 65] || !squareMod11[residue % 11]) {
+            return null;
+        }
+        final BigInteger root = x.sqrt();
+        return root.multiply(root).equals(x) ? root : null;
+    }
+
+    /** Maximum number of moduli to keep the results of the close primes and ROCA checks for */
+    private static final int MAX_CACHED_RESULTS = 1024;
+
+    /**
+     * Results of the close primes and ROCA checks by modulus. The same key is often validated more than once, e.g. in several validation
+     * phases, by several validators, or when a certificate is renewed with the same key, and these checks only depend on the modulus.
+     */
+    private static final Cache<BigInteger, Boolean> closePrimesResults = Caffeine.newBuilder().maximumSize(MAX_CACHED_RESULTS).build();
+    private static final Cache<BigInteger, Boolean> rocaResults = Caffeine.newBuilder().maximumSize(MAX_CACHED_RESULTS).build();
+
+    /**
+     * @param n the modulus to test
+     * @return the result of {@link #testClosePrimes(BigInteger)}, which is computed only once for each of the recently tested moduli
+     */
+    protected static boolean hasClosePrimes(final BigInteger n) {
+        return closePrimesResults.get(n, RsaKeyValidator::testClosePrimes);
+    }
+
+    /**
+     * @param n the modulus to test
+     * @return the result of {@link RocaBrokenKey#isAffected(BigInteger)}, which is computed only once for each of the recently tested moduli
+     */
+    protected static boolean isRocaAffected(final BigInteger n) {
+        return rocaResults.get(n, RocaBrokenKey::isAffected);
+    }
+
     /**
      * Check public key modulus for close primes using Fermat's Factorization Method
      * https://fermatattack.secvuln.info/
@@ -169,44 +271,30 @@ public class RsaKeyValidator extends KeyValidatorBase {
         //n = (a + b)(a - b)
         //Prime 'p' will be: (a + b)
         //Prime 'q' will be: (a - b)
-        BigInteger a;
-        BigInteger b;
-        BigInteger a_toThePowerOfTwo;
-        BigInteger b_toThePowerOfTwo;
-        BigInteger b_verifyPerfectSquare;
-        boolean closePrimesFound = false;
-        a = n.sqrt();
+        BigInteger a = n.sqrt();
         //Check if 'a' is a perfect square and thus both our primes p and q
-        if (a.pow(2).compareTo(n) == 0){
-            closePrimesFound = true;
+        if (a.multiply(a).equals(n)) {
             log.debug("RSA key validation failed. RSA modulus " + n + " is the product of close primes.");
-            return closePrimesFound;
+            return true;
         }
         //Try starting with an integer 'a' from the ceil of the square root of 'n'. BigInteger.sqrt() returns the floor, so we add 1.
         //Given n = a²-b², then 'a' can never be less than the square root of 'n'.
-        a = n.sqrt().add(BigInteger.ONE);
-        //We calculate our 'a²' 
-        a_toThePowerOfTwo = a.pow(2);
+        a = a.add(BigInteger.ONE);
         //Try by creating 'b²', an integer value we call 'b_toThePowerOfTwo' based on our current 'a'. If n = a² - b², then b² = a² - n 
-        b_toThePowerOfTwo = a_toThePowerOfTwo.subtract(n);
-        int rounds = 0;
-        for(rounds = 1; rounds < 100; rounds++) {
-            //The square root of 'b_toThePowerOfTwo' is our 'b' to test
-            b = b_toThePowerOfTwo.sqrt();
-            //We want to verify that 'b' is a perfect square...
-            b_verifyPerfectSquare = b.multiply(b);
-            if (b_verifyPerfectSquare.compareTo(b_toThePowerOfTwo) == 0){
-                closePrimesFound = true;
+        BigInteger b_toThePowerOfTwo = a.multiply(a).subtract(n);
+        for (int rounds = 1; rounds < 100; rounds++) {
+            //'b²' must be a perfect square. Most candidates are ruled out by their residues, before any square root is computed.
+            final BigInteger b = perfectSquareRoot(b_toThePowerOfTwo);
+            if (b != null) {
                 log.debug("RSA key validation failed. RSA modulus close primes found in " + rounds + " rounds using Fermat Factorization: n = " 
                         + n + " p = " + a.add(b) + " q = " + a.subtract(b));
-                break;
+                return true;
             }
-            //Increase 'a' by 1 and re-calculate 'b_toThePowerOfTwo' for next round
+            //Increase 'a' by 1, which increases 'b²' by (a+1)² - a² = 2a + 1
+            b_toThePowerOfTwo = b_toThePowerOfTwo.add(a.shiftLeft(1)).add(BigInteger.ONE);
             a = a.add(BigInteger.ONE);
-            a_toThePowerOfTwo = a.pow(2);
-            b_toThePowerOfTwo = (a_toThePowerOfTwo.subtract(n));
         }        
-        return closePrimesFound;
+        return false;
     }
 
     /**
@@ -732,21 +820,22 @@ public class RsaKeyValidator extends KeyValidatorBase {
             }
         }
         if (isPublicKeyModulusDontAllowRocaWeakKeys()) {
-            if (RocaBrokenKey.isAffected(publicKeyModulus)) {
+            if (isRocaAffected(publicKeyModulus)) {
                 messages.add("Invalid: RSA public key modulus is a weak key according to CVE-2017-15361.");
             } else {
                 log.trace("isPublicKeyModulusDontAllowRocaWeakKeys passed");
             }
         }
         if (isPublicKeyModulusDontAllowClosePrimes()) {
-            if (testClosePrimes(publicKeyModulus)) {
+            if (hasClosePrimes(publicKeyModulus)) {
                 messages.add("Invalid: RSA public key modulus from close primes detected.");
             } else {
                 log.trace("isPublicKeyModulusDontAllowClosePrimes passed");
             }
         }
         if (null != getPublicKeyModulusMinFactor()) {
-            if (hasSmallerFactorThan(publicKeyModulus, getPublicKeyModulusMinFactor() + 1)) {
+            // A factor equal to the minimum is allowed
+            if (hasSmallerFactorThan(publicKeyModulus, getPublicKeyModulusMinFactor() - 1)) {
                 messages.add("Invalid: RSA public key modulus smallest factor is less than " + getPublicKeyModulusMinFactor());
             } else {
                 log.trace("getPublicKeyModulusMinFactor passed");
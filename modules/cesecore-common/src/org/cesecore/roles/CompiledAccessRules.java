@@ -0,0 +1,208 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.roles;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+/**
+ * Immutable prefix tree of access rules, with one node per resource path component.
+ * <p>
+ * {@link #hasAccessToResource(String)} gives the same result as {@link AccessRulesHelper#hasAccessToResource(HashMap, String)}
+ * for the access rules the tree was compiled from, but walks the tree with the components of the resource instead of
+ * creating and looking up a substring for each parent resource. No objects are allocated during the check.
+ * <p>
+ * Instances are shared between all authentication tokens that are granted the same access rules, see AuthorizationCache.
+ *
+ * @version $Id$
+ */
+public final class CompiledAccessRules {
+
+    private static final String[] NO_NAMES = new String[0];
+    private static final Node[] NO_CHILDREN = new Node[0];
+
+    private static final class Node {
+        /** Access state of the resource ending at this node, or null if there is no rule for it */
+        private final Boolean state;
+        /** Sorted names of the child path components */
+        private final String[] names;
+        private final Node[] children;
+
+        private Node(final Boolean state, final String[] names, final Node[] children) {
+            this.state = state;
+            this.names = names;
+            this.children = children;
+        }
+
+        /** @return the child named by resource.substring(start, end), or null if there is no such child */
+        private Node getChild(final String resource, final int start, final int end) {
+            int low = 0;
+            int high = names.length - 1;
+            while (low <= high) {
+                final int mid = (low + high) >>> 1;
+                final int cmp = compare(names[mid], resource, start, end);
+                if (cmp < 0) {
+                    low = mid + 1;
+                } else if (cmp > 0) {
+                    high = mid - 1;
+                } else {
+                    return children[mid];
+                }
+            }
+            return null;
+        }
+
+        /** Same ordering as String.compareTo, with the second string given as a region */
+        private static int compare(final String name, final String resource, final int start, final int end) {
+            final int length = end - start;
+            final int min = Math.min(name.length(), length);
+            for (int i = 0; i < min; i++) {
+                final int diff = name.charAt(i) - resource.charAt(start + i);
+                if (diff != 0) {
+                    return diff;
+                }
+            }
+            return name.length() - length;
+        }
+    }
+
+    /** Mutable node used while compiling */
+    private static final class Builder {
+        /** State of a rule with exactly this path */
+        private Boolean state;
+        /** State of a rule with this path and a trailing '/' */
+        private Boolean normalizedState;
+        private final TreeMap<String, Builder> children = new TreeMap<>();
+
+        private Builder getDescendant(final String path) {
+            Builder builder = this;
+            if (!path.isEmpty()) {
+                for (final String name : path.substring(1).split("/", -1)) {
+                    builder = builder.children.computeIfAbsent(name, n -> new Builder());
+                }
+            }
+            return builder;
+        }
+
+        private Node build() {
+            final Boolean state = this.state != null ? this.state : normalizedState;
+            if (children.isEmpty()) {
+                return new Node(state, NO_NAMES, NO_CHILDREN);
+            }
+            final String[] names = new String[children.size()];
+            final Node[] nodes = new Node[children.size()];
+            int i = 0;
+            for (final Entry<String, Builder> entry : children.entrySet()) {
+                names[i] = entry.getKey();
+                nodes[i++] = entry.getValue().build();
+            }
+            return new Node(state, names, nodes);
+        }
+    }
+
+    private final Node root;
+    private final int size;
+
+    /**
+     * Compiles the access rules. Rules in both the normalized ("/a/b/") and the non-normalized ("/a/b") form are allowed, and
+     * as in {@link AccessRulesHelper#hasAccessToResource(HashMap, String)} the non-normalized form wins if both are present.
+     *
+     * @param accessRules map of resources to access state. Not modified.
+     */
+    public CompiledAccessRules(final Map<String, Boolean> accessRules) {
+        final Builder rootBuilder = new Builder();
+        int count = 0;
+        if (accessRules != null) {
+            for (final Entry<String, Boolean> entry : accessRules.entrySet()) {
+                final String resource = entry.getKey();
+                if (resource == null || entry.getValue() == null || (!resource.isEmpty() && resource.charAt(0) != '/')) {
+                    // Can never match a resource, since those start with '/'
+                    continue;
+                }
+                count++;
+                rootBuilder.getDescendant(resource).state = entry.getValue();
+                if (resource.endsWith("/")) {
+                    // A rule "/a/b/" is also found by a lookup of "/a/b" + "/"
+                    rootBuilder.getDescendant(resource.substring(0, resource.length() - 1)).normalizedState = entry.getValue();
+                }
+            }
+        }
+        this.root = rootBuilder.build();
+        this.size = count;
+    }
+
+    /** @return the number of resources with an access rule */
+    public int size() {
+        return size;
+    }
+
+    /** @return true if access is granted to all the given resources */
+    public boolean hasAccessToResources(final String... resources) {
+        if (resources != null) {
+            for (final String resource : resources) {
+                if (!hasAccessToResource(resource)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /** @return true if access is granted to the given resource, i.e. if the closest rule for it or any of its parents is an allow rule */
+    public boolean hasAccessToResource(final String resource) {
+        if (resource == null || resource.isEmpty() || resource.charAt(0) != '/') {
+            return false;
+        }
+        final int length = resource.length();
+        Node node = root;
+        Boolean state = root.state;
+        int start = 1;
+        while (start <= length) {
+            int end = resource.indexOf('/', start);
+            if (end == -1) {
+                if (start == length) {
+                    // Resource ended with a '/'
+                    break;
+                }
+                end = length;
+            }
+            node = node.getChild(resource, start, end);
+            if (node == null) {
+                break;
+            }
+            if (node.state != null) {
+                state = node.state;
+            }
+            start = end + 1;
+        }
+        return state != null && state.booleanValue();
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        append(sb, "", root);
+        return sb.toString();
+    }
+
+    private static void append(final StringBuilder sb, final String path, final Node node) {
+        if (node.state != null) {
+            sb.append(path).append("/=").append(node.state).append('\n');
+        }
+        for (int i = 0; i < node.names.length; i++) {
+            append(sb, path + "/" + node.names[i], node.children[i]);
+        }
+    }
+}
@@ -0,0 +1,418 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.util;
+
+import java.beans.XMLEncoder;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.apache.log4j.Logger;
+import org.cesecore.certificates.certificateprofile.CertificatePolicy;
+import org.cesecore.certificates.certificateprofile.PKIDisclosureStatement;
+import org.cesecore.config.CesecoreConfiguration;
+
+/**
+ * Serializes the data maps of UpgradeableDataHashMap based objects (CAs, profiles, roles, key bindings, publishers and services)
+ * for storage in the database.
+ * <p>
+ * Data is read in either of two formats:
+ * <ul>
+ * <li>XML, as written by java.beans.XMLEncoder and read with {@link SecureXMLDecoder}. This is the legacy format.
+ * <li>A compact, versioned binary format, Base64 encoded and prefixed with {@link #COMPACT_PREFIX}. It holds the same
+ *     values as the XML, with type tags, and is several times smaller and faster to read.
+ * </ul>
+ * Data is written in the compact format if enabled with {@link CesecoreConfiguration#useCompactDataMapFormat()}, so that
+ * existing rows are converted when they are next saved. Maps with values that the compact format does not handle, such as
+ * enums or other custom classes, are always written as XML.
+ */
+public final class CompactDataMapSerializer {
+
+    private static final Logger log = Logger.getLogger(CompactDataMapSerializer.class);
+
+    /** Prefix of data in the compact format. XML data always starts with "&lt;" */
+    public static final String COMPACT_PREFIX = "cdm1:";
+
+    /** Same limit as in SecureXMLDecoder */
+    private static final int MAX_NESTING_LEVEL = 100;
+
+    private static final byte TYPE_NULL = 0;
+    private static final byte TYPE_STRING = 1;
+    private static final byte TYPE_BOOLEAN = 2;
+    private static final byte TYPE_INTEGER = 3;
+    private static final byte TYPE_LONG = 4;
+    private static final byte TYPE_FLOAT = 5;
+    private static final byte TYPE_DOUBLE = 6;
+    private static final byte TYPE_SHORT = 7;
+    private static final byte TYPE_BYTE = 8;
+    private static final byte TYPE_CHARACTER = 9;
+    private static final byte TYPE_DATE = 10;
+    private static final byte TYPE_CLASS = 11;
+    private static final byte TYPE_BYTE_ARRAY = 12;
+    private static final byte TYPE_ARRAY_LIST = 20;
+    private static final byte TYPE_LINKED_LIST = 21;
+    private static final byte TYPE_HASH_SET = 22;
+    private static final byte TYPE_LINKED_HASH_SET = 23;
+    private static final byte TYPE_TREE_SET = 24;
+    private static final byte TYPE_HASH_MAP = 30;
+    private static final byte TYPE_LINKED_HASH_MAP = 31;
+    private static final byte TYPE_TREE_MAP = 32;
+    private static final byte TYPE_PROPERTIES = 33;
+    private static final byte TYPE_BASE64_PUT_HASH_MAP = 34;
+    private static final byte TYPE_BASE64_GET_HASH_MAP = 35;
+    private static final byte TYPE_CERTIFICATE_POLICY = 40;
+    private static final byte TYPE_PKI_DISCLOSURE_STATEMENT = 41;
+
+    private CompactDataMapSerializer() {}
+
+    /** @return true if the data is in the compact format */
+    public static boolean isCompact(final String data) {
+        return data != null && data.startsWith(COMPACT_PREFIX);
+    }
+
+    /**
+     * Reads data written by {@link #encode(Map)}, or by java.beans.XMLEncoder.
+     *
+     * @param data the data from the database
+     * @return the decoded object, with the same types as SecureXMLDecoder.readObject would return for the XML
+     * @throws IOException if the data could not be parsed
+     */
+    public static Object decode(final String data) throws IOException {
+        if (isCompact(data)) {
+            final byte[] bytes;
+            try {
+                bytes = Base64.getDecoder().decode(data.substring(COMPACT_PREFIX.length()));
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Invalid Base64 encoding of compact data: " + e.getMessage(), e);
+            }
+            try (final DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+                final Object ret = readValue(in, bytes.length, 0);
+                if (in.available() > 0) {
+                    throw new IOException("Unexpected data after the end of the compact data.");
+                }
+                return ret;
+            } catch (EOFException e) {
+                throw new IOException("Unexpected end of compact data.", e);
+            }
+        }
+        try (final SecureXMLDecoder decoder = new SecureXMLDecoder(new ByteArrayInputStream(data.getBytes(StandardCharsets.UTF_8)))) {
+            return decoder.readObject();
+        }
+    }
+
+    /**
+     * Serializes a data map, in the compact format if enabled and possible, otherwise with java.beans.XMLEncoder.
+     *
+     * @param map the map to serialize, typically a Base64PutHashMap
+     * @return the serialized data, for storage in the database
+     */
+    public static String encode(final Map<?, ?> map) {
+        if (CesecoreConfiguration.useCompactDataMapFormat()) {
+            try {
+                return encodeCompact(map);
+            } catch (IllegalArgumentException e) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Writing data map as XML, since the compact format does not handle it: " + e.getMessage());
+                }
+            }
+        }
+        return encodeXml(map);
+    }
+
+    /** @return the map serialized with java.beans.XMLEncoder */
+    public static String encodeXml(final Map<?, ?> map) {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (final XMLEncoder encoder = new XMLEncoder(baos)) {
+            encoder.writeObject(map);
+        }
+        return new String(baos.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the map in the compact format
+     * @throws IllegalArgumentException if the map contains a type that is not handled by the compact format
+     */
+    public static String encodeCompact(final Map<?, ?> map) {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream(1024);
+        try (final DataOutputStream out = new DataOutputStream(baos)) {
+            writeValue(out, map, 0);
+        } catch (IOException e) {
+            // Not possible when writing to a byte array
+            throw new IllegalStateException(e);
+        }
+        return COMPACT_PREFIX + Base64.getEncoder().encodeToString(baos.toByteArray());
+    }
+
+    private static void writeValue(final DataOutputStream out, final Object o, final int level) throws IOException {
+        if (level > MAX_NESTING_LEVEL) {
+            throw new IllegalArgumentException("Data is nested more than " + MAX_NESTING_LEVEL + " levels.");
+        }
+        if (o == null) {
+            out.writeByte(TYPE_NULL);
+            return;
+        }
+        // Only exact classes are handled, so that subclasses with a different behavior are not silently converted
+        final Class<?> type = o.getClass();
+        if (type == String.class) {
+            out.writeByte(TYPE_STRING);
+            writeString(out, (String) o);
+        } else if (type == Boolean.class) {
+            out.writeByte(TYPE_BOOLEAN);
+            out.writeBoolean((Boolean) o);
+        } else if (type == Integer.class) {
+            out.writeByte(TYPE_INTEGER);
+            out.writeInt((Integer) o);
+        } else if (type == Long.class) {
+            out.writeByte(TYPE_LONG);
+            out.writeLong((Long) o);
+        } else if (type == Float.class) {
+            out.writeByte(TYPE_FLOAT);
+            out.writeFloat((Float) o);
+        } else if (type == Double.class) {
+            out.writeByte(TYPE_DOUBLE);
+            out.writeDouble((Double) o);
+        } else if (type == Short.class) {
+            out.writeByte(TYPE_SHORT);
+            out.writeShort((Short) o);
+        } else if (type == Byte.class) {
+            out.writeByte(TYPE_BYTE);
+            out.writeByte((Byte) o);
+        } else if (type == Character.class) {
+            out.writeByte(TYPE_CHARACTER);
+            out.writeChar((Character) o);
+        } else if (type == Date.class) {
+            out.writeByte(TYPE_DATE);
+            out.writeLong(((Date) o).getTime());
+        } else if (type == Class.class) {
+            final String className = ((Class<?>) o).getName();
+            if (!isAllowedClassName(className)) {
+                throw new IllegalArgumentException("Class not allowed: " + className);
+            }
+            out.writeByte(TYPE_CLASS);
+            writeString(out, className);
+        } else if (type == byte[].class) {
+            out.writeByte(TYPE_BYTE_ARRAY);
+            out.writeInt(((byte[]) o).length);
+            out.write((byte[]) o);
+        } else if (type == ArrayList.class) {
+            writeCollection(out, TYPE_ARRAY_LIST, (Collection<?>) o, level);
+        } else if (type == LinkedList.class) {
+            writeCollection(out, TYPE_LINKED_LIST, (Collection<?>) o, level);
+        } else if (type == HashSet.class) {
+            writeCollection(out, TYPE_HASH_SET, (Collection<?>) o, level);
+        } else if (type == LinkedHashSet.class) {
+            writeCollection(out, TYPE_LINKED_HASH_SET, (Collection<?>) o, level);
+        } else if (type == TreeSet.class && ((TreeSet<?>) o).comparator() == null) {
+            writeCollection(out, TYPE_TREE_SET, (Collection<?>) o, level);
+        } else if (type == HashMap.class) {
+            writeMap(out, TYPE_HASH_MAP, (Map<?, ?>) o, level);
+        } else if (type == LinkedHashMap.class) {
+            writeMap(out, TYPE_LINKED_HASH_MAP, (Map<?, ?>) o, level);
+        } else if (type == TreeMap.class && ((TreeMap<?, ?>) o).comparator() == null) {
+            writeMap(out, TYPE_TREE_MAP, (Map<?, ?>) o, level);
+        } else if (type == Properties.class) {
+            writeMap(out, TYPE_PROPERTIES, (Map<?, ?>) o, level);
+        } else if (type == Base64PutHashMap.class) {
+            writeMap(out, TYPE_BASE64_PUT_HASH_MAP, (Map<?, ?>) o, level);
+        } else if (type == Base64GetHashMap.class) {
+            writeMap(out, TYPE_BASE64_GET_HASH_MAP, (Map<?, ?>) o, level);
+        } else if (type == CertificatePolicy.class) {
+            final CertificatePolicy policy = (CertificatePolicy) o;
+            out.writeByte(TYPE_CERTIFICATE_POLICY);
+            writeValue(out, policy.getPolicyID(), level + 1);
+            writeValue(out, policy.getQualifierId(), level + 1);
+            writeValue(out, policy.getQualifier(), level + 1);
+        } else if (type == PKIDisclosureStatement.class) {
+            final PKIDisclosureStatement statement = (PKIDisclosureStatement) o;
+            out.writeByte(TYPE_PKI_DISCLOSURE_STATEMENT);
+            writeValue(out, statement.getUrl(), level + 1);
+            writeValue(out, statement.getLanguage(), level + 1);
+        } else {
+            throw new IllegalArgumentException("Type not handled: " + type.getName());
+        }
+    }
+
+    private static void writeString(final DataOutputStream out, final String s) throws IOException {
+        final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static void writeCollection(final DataOutputStream out, final byte type, final Collection<?> collection, final int level) throws IOException {
+        out.writeByte(type);
+        out.writeInt(collection.size());
+        for (final Object element : collection) {
+            writeValue(out, element, level + 1);
+        }
+    }
+
+    private static void writeMap(final DataOutputStream out, final byte type, final Map<?, ?> map, final int level) throws IOException {
+        out.writeByte(type);
+        out.writeInt(map.size());
+        for (final Map.Entry<?, ?> entry : map.entrySet()) {
+            writeValue(out, entry.getKey(), level + 1);
+            writeValue(out, entry.getValue(), level + 1);
+        }
+    }
+
+    private static Object readValue(final DataInputStream in, final int totalLength, final int level) throws IOException {
+        if (level > MAX_NESTING_LEVEL) {
+            throw new IOException("Compact data is nested more than " + MAX_NESTING_LEVEL + " levels.");
+        }
+        final byte type = in.readByte();
+        switch (type) {
+        case TYPE_NULL:
+            return null;
+        case TYPE_STRING:
+            return readString(in, totalLength);
+        case TYPE_BOOLEAN:
+            return in.readBoolean();
+        case TYPE_INTEGER:
+            return in.readInt();
+        case TYPE_LONG:
+            return in.readLong();
+        case TYPE_FLOAT:
+            return in.readFloat();
+        case TYPE_DOUBLE:
+            return in.readDouble();
+        case TYPE_SHORT:
+            return in.readShort();
+        case TYPE_BYTE:
+            return in.readByte();
+        case TYPE_CHARACTER:
+            return in.readChar();
+        case TYPE_DATE:
+            return new Date(in.readLong());
+        case TYPE_CLASS: {
+            final String className = readString(in, totalLength);
+            if (!isAllowedClassName(className)) {
+                throw new IOException("Unauthorized class was decoded from compact data: " + className);
+            }
+            try {
+                return Class.forName(className);
+            } catch (ClassNotFoundException e) {
+                throw new IOException("Unknown class in compact data: " + className, e);
+            }
+        }
+        case TYPE_BYTE_ARRAY: {
+            final byte[] bytes = new byte[readLength(in, totalLength)];
+            in.readFully(bytes);
+            return bytes;
+        }
+        case TYPE_ARRAY_LIST:
+            return readCollection(in, new ArrayList<>(), totalLength, level);
+        case TYPE_LINKED_LIST:
+            return readCollection(in, new LinkedList<>(), totalLength, level);
+        case TYPE_HASH_SET:
+            return readCollection(in, new HashSet<>(), totalLength, level);
+        case TYPE_LINKED_HASH_SET:
+            return readCollection(in, new LinkedHashSet<>(), totalLength, level);
+        case TYPE_TREE_SET:
+            return readCollection(in, new TreeSet<>(), totalLength, level);
+        case TYPE_HASH_MAP:
+            return readMap(in, new HashMap<>(), totalLength, level);
+        case TYPE_LINKED_HASH_MAP:
+            return readMap(in, new LinkedHashMap<>(), totalLength, level);
+        case TYPE_TREE_MAP:
+            return readMap(in, new TreeMap<>(), totalLength, level);
+        case TYPE_PROPERTIES:
+            return readMap(in, new Properties(), totalLength, level);
+        case TYPE_BASE64_PUT_HASH_MAP:
+            return readMap(in, new Base64PutHashMap(), totalLength, level);
+        case TYPE_BASE64_GET_HASH_MAP: {
+            @SuppressWarnings("unchecked")
+            final Map<Object, Object> map = new Base64GetHashMap();
+            return readMap(in, map, totalLength, level);
+        }
+        case TYPE_CERTIFICATE_POLICY: {
+            final CertificatePolicy policy = new CertificatePolicy();
+            policy.setPolicyID(readNullableString(in, totalLength, level));
+            policy.setQualifierId(readNullableString(in, totalLength, level));
+            policy.setQualifier(readNullableString(in, totalLength, level));
+            return policy;
+        }
+        case TYPE_PKI_DISCLOSURE_STATEMENT: {
+            final PKIDisclosureStatement statement = new PKIDisclosureStatement();
+            statement.setUrl(readNullableString(in, totalLength, level));
+            statement.setLanguage(readNullableString(in, totalLength, level));
+            return statement;
+        }
+        default:
+            throw new IOException("Unknown type " + type + " in compact data.");
+        }
+    }
+
+    /** Reads a length, and checks it against the total length of the data, so that corrupt data can not cause huge allocations */
+    private static int readLength(final DataInputStream in, final int totalLength) throws IOException {
+        final int length = in.readInt();
+        if (length < 0 || length > totalLength) {
+            throw new IOException("Invalid length " + length + " in compact data.");
+        }
+        return length;
+    }
+
+    private static String readString(final DataInputStream in, final int totalLength) throws IOException {
+        final byte[] bytes = new byte[readLength(in, totalLength)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static String readNullableString(final DataInputStream in, final int totalLength, final int level) throws IOException {
+        final Object value = readValue(in, totalLength, level + 1);
+        if (value != null && !(value instanceof String)) {
+            throw new IOException("Expected a string in compact data, but found " + value.getClass().getName());
+        }
+        return (String) value;
+    }
+
+    private static Collection<Object> readCollection(final DataInputStream in, final Collection<Object> collection, final int totalLength,
+            final int level) throws IOException {
+        final int size = readLength(in, totalLength);
+        for (int i = 0; i < size; i++) {
+            collection.add(readValue(in, totalLength, level + 1));
+        }
+        return collection;
+    }
+
+    private static Map<Object, Object> readMap(final DataInputStream in, final Map<Object, Object> map, final int totalLength, final int level)
+            throws IOException {
+        final int size = readLength(in, totalLength);
+        for (int i = 0; i < size; i++) {
+            final Object key = readValue(in, totalLength, level + 1);
+            map.put(key, readValue(in, totalLength, level + 1));
+        }
+        return map;
+    }
+
+    /** Same rule as for &lt;class&gt; elements in SecureXMLDecoder */
+    private static boolean isAllowedClassName(final String className) {
+        return className.startsWith("org.ejbca.") || className.startsWith("org.cesecore.") || className.startsWith("org.signserver.");
+    }
+}
@@ -0,0 +1,109 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Metrics of internal components, such as thread pools and caches, that are exposed through the metrics servlet together with
+ * the EJB invocation statistics.
+ * <p>
+ * Components register a source, which is asked for the current values when the metrics are read. Nothing is collected in between,
+ * so a component only has to keep the counters it already has.
+ */
+public enum ComponentMetrics {
+    INSTANCE;
+
+    /** Type of a metric, as in the Prometheus text exposition format */
+    public enum Type {
+        COUNTER, GAUGE;
+
+        @Override
+        public String toString() {
+            return name().toLowerCase();
+        }
+    }
+
+    /** Current value of a metric, optionally with a label */
+    public static final class Sample {
+        private final String name;
+        private final String help;
+        private final Type type;
+        private final double value;
+        private final String labelName;
+        private final String labelValue;
+
+        private Sample(final String name, final String help, final Type type, final double value, final String labelName, final String labelValue) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+            this.value = value;
+            this.labelName = labelName;
+            this.labelValue = labelValue;
+        }
+
+        /** @return a counter, i.e. a value that only increases, e.g. "ejbca_ocsp_signing_signed_total" */
+        public static Sample counter(final String name, final String help, final double value) {
+            return new Sample(name, help, Type.COUNTER, value, null, null);
+        }
+
+        /** @return a gauge, i.e. a value that can go up and down, e.g. "ejbca_ocsp_signing_queue_depth" */
+        public static Sample gauge(final String name, final String help, final double value) {
+            return new Sample(name, help, Type.GAUGE, value, null, null);
+        }
+
+        /** @return a copy of this sample with a label, e.g. to tell the pools of different key specs apart */
+        public Sample withLabel(final String labelName, final String labelValue) {
+            return new Sample(name, help, type, value, labelName, labelValue);
+        }
+
+        public String getName() { return name; }
+        public String getHelp() { return help; }
+        public Type getType() { return type; }
+        public double getValue() { return value; }
+        /** @return the name of the label, or null if the sample has no label */
+        public String getLabelName() { return labelName; }
+        public String getLabelValue() { return labelValue; }
+    }
+
+    /** A component that has metrics */
+    @FunctionalInterface
+    public interface Source {
+        /** Adds the current values of the metrics of the component */
+        void collect(List<Sample> samples);
+    }
+
+    private final Map<String, Source> sources = new ConcurrentSkipListMap<>();
+
+    /**
+     * Registers the metrics of a component. A source that is registered again with the same name replaces the previous one.
+     *
+     * @param componentName unique name of the component, used to sort the output
+     * @param source source of the metrics of the component
+     */
+    public void register(final String componentName, final Source source) {
+        sources.put(componentName, source);
+    }
+
+    /** @return the current values of the metrics of all registered components, sorted by component */
+    public List<Sample> getSamples() {
+        final List<Sample> samples = new ArrayList<>();
+        for (final Source source : sources.values()) {
+            source.collect(samples);
+        }
+        return samples;
+    }
+}
@@ -0,0 +1,128 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.util;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.cesecore.util.ComponentMetrics.Sample;
+
+import com.keyfactor.util.certificate.DnComponents;
+
+/**
+ * Cache of DNs normalized with {@link DnComponents#stringToBCDNString(String)}, for issuer DNs that are normalized on every
+ * status lookup, revocation and CRL request.
+ * <p>
+ * A deployment only has a few issuer DNs, so the cache is small. It is bounded anyway, since the DNs may come from requests,
+ * and it is cleared when full. Equal normalized DNs share a single String instance, and the CA id (the hash code of the
+ * normalized DN) is computed only once.
+ * <p>
+ * The cache is cleared with the other caches, and its hit and miss counters are available from the metrics servlet, see
+ * {@link ComponentMetrics}.
+ */
+public enum NormalizedDnCache {
+    INSTANCE;
+
+    private static final int MAX_ENTRIES = 1024;
+
+    private static final class Entry {
+        final String normalizedDn;
+        final int caId;
+
+        Entry(final String normalizedDn) {
+            this.normalizedDn = normalizedDn;
+            this.caId = normalizedDn.hashCode();
+        }
+    }
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    private NormalizedDnCache() {
+        ComponentMetrics.INSTANCE.register("normalized_dn_cache", this::collectMetrics);
+    }
+
+    /**
+     * @param dn a DN in any order and format accepted by DnComponents
+     * @return the same as DnComponents.stringToBCDNString(dn), or null if dn is null
+     */
+    public String getNormalizedDn(final String dn) {
+        if (dn == null) {
+            return null;
+        }
+        final Entry entry = getEntry(dn);
+        return entry == null ? null : entry.normalizedDn;
+    }
+
+    /**
+     * @param dn the subject DN of a CA, in any order and format accepted by DnComponents
+     * @return the CA id, i.e. the hash code of the normalized DN
+     */
+    public int getCaId(final String dn) {
+        final Entry entry = dn == null ? null : getEntry(dn);
+        if (entry == null) {
+            // Same exception as DnComponents.stringToBCDNString(dn).hashCode() would give
+            throw new NullPointerException("Unable to compute the CA id of DN '" + dn + "'.");
+        }
+        return entry.caId;
+    }
+
+    private Entry getEntry(final String dn) {
+        Entry entry = entries.get(dn);
+        if (entry != null) {
+            hits.increment();
+            return entry;
+        }
+        misses.increment();
+        final String normalizedDn = DnComponents.stringToBCDNString(dn);
+        if (normalizedDn == null) {
+            return null;
+        }
+        if (entries.size() >= MAX_ENTRIES) {
+            entries.clear();
+        }
+        // Share the instance of an already normalized DN, which also makes the normalized form a key of its own
+        entry = entries.computeIfAbsent(normalizedDn, Entry::new);
+        entries.putIfAbsent(dn, entry);
+        return entry;
+    }
+
+    /** @return the number of cached DNs */
+    public int getSize() {
+        return entries.size();
+    }
+
+    /** @return the number of lookups that did not have to parse the DN */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /** @return the number of lookups that had to parse the DN */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    private void collectMetrics(final List<Sample> samples) {
+        samples.add(Sample.gauge("ejbca_normalized_dn_cache_entries", "Number of DNs in the normalized DN cache.", getSize()));
+        samples.add(Sample.counter("ejbca_normalized_dn_cache_hits_total", "Number of DN lookups that did not have to parse the DN.", getHitCount()));
+        samples.add(Sample.counter("ejbca_normalized_dn_cache_misses_total", "Number of DN lookups that had to parse the DN.", getMissCount()));
+    }
+
+    /** Clear the cache, e.g. if the DN ordering configuration has changed. The hit and miss counters are kept. */
+    public void flush() {
+        entries.clear();
+    }
+}
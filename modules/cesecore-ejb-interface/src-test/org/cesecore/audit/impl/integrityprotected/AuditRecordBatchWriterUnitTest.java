@@ -0,0 +1,295 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.audit.impl.integrityprotected;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.cesecore.audit.enums.EventStatus;
+import org.cesecore.audit.enums.EventTypes;
+import org.cesecore.audit.enums.ModuleTypes;
+import org.cesecore.audit.enums.ServiceTypes;
+import org.cesecore.audit.log.AuditRecordStorageException;
+import org.cesecore.time.TrustedTime;
+import org.cesecore.util.ComponentMetrics;
+import org.cesecore.util.ComponentMetrics.Sample;
+import org.easymock.EasyMock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests of {@link AuditRecordBatchWriter} and batching in {@link IntegrityProtectedDevice}
+ */
+public class AuditRecordBatchWriterUnitTest {
+
+    private static final String BAD_RECORD = "bad";
+
+    /** Sizes of the batches passed to logBatch, in call order */
+    private final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicInteger directWrites = new AtomicInteger();
+    /** Each call to logBatch waits until this latch is released */
+    private volatile CountDownLatch commitLatch = new CountDownLatch(0);
+    private final CountDownLatch firstCommitStarted = new CountDownLatch(1);
+
+    private IntegrityProtectedLoggerSessionLocal loggerSession() {
+        final IntegrityProtectedLoggerSessionLocal loggerSession = EasyMock.createMock(IntegrityProtectedLoggerSessionLocal.class);
+        try {
+            loggerSession.logBatch(anyObject());
+            expectLastCall().andAnswer(() -> {
+                @SuppressWarnings("unchecked")
+                final List<PendingAuditRecord> records = (List<PendingAuditRecord>) EasyMock.getCurrentArguments()[0];
+                firstCommitStarted.countDown();
+                commitLatch.await();
+                batchSizes.add(records.size());
+                for (final PendingAuditRecord record : records) {
+                    if (BAD_RECORD.equals(record.getCustomId())) {
+                        throw new IllegalStateException("Rolled back");
+                    }
+                }
+                return null;
+            }).anyTimes();
+            loggerSession.log(anyObject(), anyObject(), anyObject(), anyObject(), anyObject(), anyObject(), anyObject(), anyObject(), anyObject(),
+                    anyObject(), anyObject());
+            expectLastCall().andAnswer(() -> {
+                directWrites.incrementAndGet();
+                return null;
+            }).anyTimes();
+        } catch (AuditRecordStorageException e) {
+            throw new IllegalStateException(e);
+        }
+        EasyMock.replay(loggerSession);
+        return loggerSession;
+    }
+
+    private static PendingAuditRecord newRecord(final String customId) {
+        return new PendingAuditRecord(System.currentTimeMillis(), EventTypes.CERT_CREATION, EventStatus.SUCCESS, "test", ServiceTypes.CORE,
+                ModuleTypes.CERTIFICATE, customId, null, null, new HashMap<>());
+    }
+
+    private IntegrityProtectedDevice newDevice() {
+        final Map<Class<?>, Object> ejbs = new HashMap<>();
+        ejbs.put(IntegrityProtectedLoggerSessionLocal.class, loggerSession());
+        final IntegrityProtectedDevice device = new IntegrityProtectedDevice();
+        device.setEjbs(ejbs);
+        return device;
+    }
+
+    private static Properties batchProperties(final String durability, final int timeout) {
+        final Properties properties = new Properties();
+        properties.setProperty("batch.enabled", "true");
+        properties.setProperty("batch.durability", durability);
+        properties.setProperty("batch.queuesize", "2");
+        properties.setProperty("batch.timeout", String.valueOf(timeout));
+        return properties;
+    }
+
+    private static void log(final IntegrityProtectedDevice device, final String customId, final Properties properties) throws AuditRecordStorageException {
+        device.log(new TrustedTime(), EventTypes.CERT_CREATION, EventStatus.SUCCESS, ModuleTypes.CERTIFICATE, ServiceTypes.CORE, "test", customId, null,
+                null, new HashMap<>(), properties);
+    }
+
+    @Before
+    public void before() {
+        AuditRecordBatchWriter.INSTANCE.open(loggerSession(), Executors.defaultThreadFactory());
+    }
+
+    @After
+    public void after() {
+        commitLatch.countDown();
+        AuditRecordBatchWriter.INSTANCE.close(10000L);
+    }
+
+    @Test
+    public void testQueuedRecordsAreCommittedTogether() throws Exception {
+        assertTrue(AuditRecordBatchWriter.INSTANCE.start(100, 200));
+        commitLatch = new CountDownLatch(1);
+        final PendingAuditRecord first = newRecord("first");
+        AuditRecordBatchWriter.INSTANCE.enqueue(first, 1000L);
+        assertTrue(firstCommitStarted.await(10, TimeUnit.SECONDS));
+        // Queued while the first record is being committed
+        final List<PendingAuditRecord> records = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            records.add(newRecord("record" + i));
+            AuditRecordBatchWriter.INSTANCE.enqueue(records.get(i), 1000L);
+        }
+        assertEquals(5, AuditRecordBatchWriter.INSTANCE.getQueueDepth());
+        commitLatch.countDown();
+        for (final PendingAuditRecord record : records) {
+            assertNull(record.getCompletion().get(10, TimeUnit.SECONDS));
+        }
+        assertNull(first.getCompletion().get(10, TimeUnit.SECONDS));
+        assertEquals("Records queued during a commit should be written in one transaction", List.of(1, 5), batchSizes);
+        assertTrue(AuditRecordBatchWriter.INSTANCE.awaitEmpty(1000L));
+    }
+
+    @Test
+    public void testFailedBatchIsRetriedOneRecordAtATime() throws Exception {
+        assertTrue(AuditRecordBatchWriter.INSTANCE.start(100, 200));
+        final long failed = AuditRecordBatchWriter.INSTANCE.getFailedCount();
+        commitLatch = new CountDownLatch(1);
+        AuditRecordBatchWriter.INSTANCE.enqueue(newRecord("first"), 1000L);
+        assertTrue(firstCommitStarted.await(10, TimeUnit.SECONDS));
+        final PendingAuditRecord good = newRecord("good");
+        final PendingAuditRecord bad = newRecord(BAD_RECORD);
+        AuditRecordBatchWriter.INSTANCE.enqueue(good, 1000L);
+        AuditRecordBatchWriter.INSTANCE.enqueue(bad, 1000L);
+        commitLatch.countDown();
+        assertNull(good.getCompletion().get(10, TimeUnit.SECONDS));
+        try {
+            bad.getCompletion().get(10, TimeUnit.SECONDS);
+            fail("The failed record should not be reported as committed");
+        } catch (ExecutionException e) {
+            assertEquals("Rolled back", e.getCause().getMessage());
+        }
+        assertEquals(List.of(1, 2, 1, 1), batchSizes);
+        assertEquals(failed + 1, AuditRecordBatchWriter.INSTANCE.getFailedCount());
+    }
+
+    @Test
+    public void testSynchronousFailureIsPropagated() throws Exception {
+        final IntegrityProtectedDevice device = newDevice();
+        log(device, "good", batchProperties("sync", 10000));
+        try {
+            log(device, BAD_RECORD, batchProperties("sync", 10000));
+            fail("The caller should be told that the record was not written");
+        } catch (AuditRecordStorageException e) {
+            assertEquals("Rolled back", e.getMessage());
+        }
+        assertEquals("Records should not be written directly while the writer is running", 0, directWrites.get());
+        // Asynchronous callers only learn about the failure from the log
+        log(device, BAD_RECORD, batchProperties("async", 10000));
+        assertTrue(AuditRecordBatchWriter.INSTANCE.awaitEmpty(10000L));
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        final IntegrityProtectedDevice device = newDevice();
+        commitLatch = new CountDownLatch(1);
+        try {
+            log(device, "slow", batchProperties("sync", 200));
+            fail("The caller should not wait longer than the timeout for the commit");
+        } catch (AuditRecordStorageException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("not committed within 200 ms"));
+        }
+        // The writer is still busy with the first record, so the queue (size 2) fills up
+        log(device, "queued1", batchProperties("async", 200));
+        log(device, "queued2", batchProperties("async", 200));
+        try {
+            log(device, "rejected", batchProperties("async", 200));
+            fail("The caller should not wait longer than the timeout for room in the queue");
+        } catch (AuditRecordStorageException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("full for 200 ms"));
+        }
+        commitLatch.countDown();
+        assertTrue(AuditRecordBatchWriter.INSTANCE.awaitEmpty(10000L));
+        assertEquals(List.of(1, 2), batchSizes);
+    }
+
+    @Test
+    public void testTimedOutRecordIsRemovedFromQueue() throws Exception {
+        final IntegrityProtectedDevice device = newDevice();
+        commitLatch = new CountDownLatch(1);
+        log(device, "first", batchProperties("async", 10000));
+        assertTrue(firstCommitStarted.await(10, TimeUnit.SECONDS));
+        try {
+            log(device, "queued", batchProperties("sync", 200));
+            fail("The caller should not wait longer than the timeout for the commit");
+        } catch (AuditRecordStorageException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("removed from the queue"));
+        }
+        assertEquals(0, AuditRecordBatchWriter.INSTANCE.getQueueDepth());
+        commitLatch.countDown();
+        assertTrue(AuditRecordBatchWriter.INSTANCE.awaitEmpty(10000L));
+        assertEquals("The record the caller gave up on should not be written", List.of(1), batchSizes);
+    }
+
+    @Test
+    public void testMetricsAreExported() throws Exception {
+        assertTrue(AuditRecordBatchWriter.INSTANCE.start(100, 200));
+        final long written = AuditRecordBatchWriter.INSTANCE.getWrittenCount();
+        final PendingAuditRecord record = newRecord("record");
+        AuditRecordBatchWriter.INSTANCE.enqueue(record, 1000L);
+        assertNull(record.getCompletion().get(10, TimeUnit.SECONDS));
+        final Map<String, Double> values = new HashMap<>();
+        for (final Sample sample : ComponentMetrics.INSTANCE.getSamples()) {
+            values.put(sample.getName(), sample.getValue());
+        }
+        assertEquals(written + 1, values.get("ejbca_audit_batch_records_written_total"), 0);
+        assertEquals(0, values.get("ejbca_audit_batch_queue_depth"), 0);
+        assertTrue(values.containsKey("ejbca_audit_batch_last_commit_seconds"));
+    }
+
+    @Test
+    public void testDirectWriteWhenNotRunning() throws Exception {
+        final IntegrityProtectedDevice device = newDevice();
+        // Batching not enabled for the device
+        log(device, "direct", new Properties());
+        assertEquals(1, directWrites.get());
+        // Batching enabled, but the application has been undeployed
+        AuditRecordBatchWriter.INSTANCE.close(1000L);
+        assertFalse(AuditRecordBatchWriter.INSTANCE.start(100, 200));
+        log(device, "direct", batchProperties("sync", 1000));
+        assertEquals(2, directWrites.get());
+        assertTrue(batchSizes.isEmpty());
+    }
+
+    @Test
+    public void testCloseWritesQueuedRecords() throws Exception {
+        assertTrue(AuditRecordBatchWriter.INSTANCE.start(100, 200));
+        commitLatch = new CountDownLatch(1);
+        final List<PendingAuditRecord> records = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            records.add(newRecord("record" + i));
+            AuditRecordBatchWriter.INSTANCE.enqueue(records.get(i), 1000L);
+        }
+        assertTrue(firstCommitStarted.await(10, TimeUnit.SECONDS));
+        final Thread releaser = new Thread(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            commitLatch.countDown();
+        });
+        releaser.start();
+        AuditRecordBatchWriter.INSTANCE.close(10000L);
+        for (final PendingAuditRecord record : records) {
+            assertTrue(record.getCompletion().isDone());
+            assertFalse(record.getCompletion().isCompletedExceptionally());
+        }
+        try {
+            AuditRecordBatchWriter.INSTANCE.enqueue(newRecord("late"), 100L);
+            fail("A closed writer should not accept records");
+        } catch (AuditRecordStorageException e) {
+            // Expected
+        }
+    }
+}
@@ -206,6 +206,34 @@ public class AuditDevicesConfig {
         return getInt(properties, "export.fetchsize", 1000);
     }
 
+    /** Parameter to specify if a device that supports it should write audit records in batches, instead of one transaction per record. */
+    public static boolean isAuditLogBatchEnabled(final Properties properties) {
+        return Boolean.parseBoolean(properties.getProperty("batch.enabled", "false").trim());
+    }
+
+    /** Parameter to specify the maximum number of audit records waiting to be written by a batched device. */
+    public static int getAuditLogBatchQueueSize(final Properties properties) {
+        return getInt(properties, "batch.queuesize", 10000);
+    }
+
+    /** Parameter to specify the maximum number of audit records written in a single transaction by a batched device. */
+    public static int getAuditLogBatchMaxSize(final Properties properties) {
+        return getInt(properties, "batch.maxsize", 200);
+    }
+
+    /**
+     * Parameter to specify if callers of a batched device should wait until their audit record has been committed ("sync"), or
+     * return as soon as it has been queued ("async"). Queued records are lost if the node stops before they have been written.
+     */
+    public static boolean isAuditLogBatchSynchronous(final Properties properties) {
+        return !"async".equalsIgnoreCase(properties.getProperty("batch.durability", "sync").trim());
+    }
+
+    /** Parameter to specify how long, in milliseconds, a caller of a batched device waits for room in the queue or for the commit. */
+    public static int getAuditLogBatchTimeout(final Properties properties) {
+        return getInt(properties, "batch.timeout", 30000);
+    }
+
     private static int getInt(final Properties properties, final String key, final int defaultValue) {
         int ret = defaultValue;
         try {
@@ -0,0 +1,385 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.audit.impl.integrityprotected;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.log4j.Logger;
+import org.cesecore.audit.log.AuditRecordStorageException;
+import org.cesecore.util.ComponentMetrics;
+import org.cesecore.util.ComponentMetrics.Sample;
+
+/**
+ * Group commit of audit records. Records are placed in a bounded queue, and a single writer thread writes everything
+ * that is queued, up to a maximum batch size, in one transaction using {@link IntegrityProtectedLoggerSessionLocal#logBatch(List)}.
+ * <p>
+ * Since there is a single writer, sequence numbers are assigned in queue order. If a batch fails, its records are retried one
+ * at a time so that a single bad record does not cause the loss of the others. Row protection is calculated when each
+ * AuditRecordData is persisted, exactly as for records written one at a time.
+ * <p>
+ * The writer thread is created by the container managed thread factory registered with {@link #open(IntegrityProtectedLoggerSessionLocal, ThreadFactory)}
+ * when the application starts, and is drained and stopped by {@link #close(long)} when it is undeployed. Until the writer is open, or after
+ * it has been closed, {@link #start(int, int)} returns false and records should be written directly.
+ * <p>
+ * Queue depth, throughput and commit latency are exported through {@link ComponentMetrics}.
+ */
+public enum AuditRecordBatchWriter {
+    INSTANCE;
+
+    private static final Logger log = Logger.getLogger(AuditRecordBatchWriter.class);
+
+    private final ReentrantLock startLock = new ReentrantLock();
+    private volatile BlockingQueue<PendingAuditRecord> queue = null;
+    private volatile IntegrityProtectedLoggerSessionLocal loggerSession = null;
+    private volatile ThreadFactory threadFactory = null;
+    private Thread writerThread = null;
+    private volatile int maxBatchSize;
+
+    private final LongAdder writtenRecords = new LongAdder();
+    private final LongAdder failedRecords = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder totalCommitMs = new LongAdder();
+    private final AtomicLong maxCommitMs = new AtomicLong();
+    private volatile long lastCommitMs = 0;
+    private volatile long lastQueueWaitMs = 0;
+    /** Number of records that have been queued but are not yet written or failed */
+    private final AtomicLong pending = new AtomicLong();
+    private final ReentrantLock emptyLock = new ReentrantLock();
+    /** Signalled when {@link #pending} reaches zero */
+    private final Condition empty = emptyLock.newCondition();
+
+    private AuditRecordBatchWriter() {
+        ComponentMetrics.INSTANCE.register("audit_batch_writer", this::collectMetrics);
+    }
+
+    /**
+     * Makes the writer available. Called by the application when it starts.
+     *
+     * @param loggerSession session bean used to write the batches
+     * @param threadFactory container managed factory used to create the writer thread
+     */
+    public void open(final IntegrityProtectedLoggerSessionLocal loggerSession, final ThreadFactory threadFactory) {
+        startLock.lock();
+        try {
+            this.loggerSession = loggerSession;
+            this.threadFactory = threadFactory;
+        } finally {
+            startLock.unlock();
+        }
+    }
+
+    /**
+     * Starts the writer thread, unless it is already running. The configuration of the first call is used.
+     *
+     * @param queueSize maximum number of records in the queue
+     * @param maxBatchSize maximum number of records written in one transaction
+     * @return true if the writer is running, false if it has not been opened or has been closed
+     */
+    public boolean start(final int queueSize, final int maxBatchSize) {
+        if (queue != null) {
+            return true;
+        }
+        startLock.lock();
+        try {
+            if (queue == null) {
+                if (threadFactory == null) {
+                    return false;
+                }
+                this.maxBatchSize = Math.max(1, maxBatchSize);
+                final BlockingQueue<PendingAuditRecord> newQueue = new ArrayBlockingQueue<>(Math.max(1, queueSize));
+                final Thread newThread = threadFactory.newThread(() -> writeLoop(newQueue));
+                if (newThread == null) {
+                    log.warn("Unable to create batched audit record writer thread. Audit records will be written directly.");
+                    return false;
+                }
+                newThread.setName("AuditRecordBatchWriter");
+                newThread.start();
+                writerThread = newThread;
+                queue = newQueue;
+                log.info("Started batched audit record writer with queue size " + queueSize + " and maximum batch size " + this.maxBatchSize + ".");
+            }
+            return true;
+        } finally {
+            startLock.unlock();
+        }
+    }
+
+    /**
+     * Stops accepting records, waits for the queued records to be written and stops the writer thread. Records that are still queued
+     * when the timeout expires are failed, so that no caller waits for them. Called by the application when it is undeployed.
+     *
+     * @param timeoutMs maximum time to wait for the queued records to be written
+     */
+    public void close(final long timeoutMs) {
+        final BlockingQueue<PendingAuditRecord> closedQueue;
+        final Thread closedThread;
+        startLock.lock();
+        try {
+            threadFactory = null;
+            closedQueue = queue;
+            closedThread = writerThread;
+            queue = null;
+            writerThread = null;
+        } finally {
+            startLock.unlock();
+        }
+        if (closedQueue == null) {
+            return;
+        }
+        if (!awaitEmpty(timeoutMs)) {
+            log.warn("Audit record queue was not drained within " + timeoutMs + " ms. " + getStatistics());
+        }
+        closedThread.interrupt();
+        try {
+            closedThread.join(timeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        final List<PendingAuditRecord> remaining = new ArrayList<>();
+        closedQueue.drainTo(remaining);
+        for (final PendingAuditRecord record : remaining) {
+            fail(record, new AuditRecordStorageException("Batched audit record writer was stopped before the record was written."));
+        }
+        release(remaining.size());
+        loggerSession = null;
+        log.info("Stopped batched audit record writer. " + getStatistics());
+    }
+
+    /**
+     * Adds a record to the queue, waiting for free space if the queue is full.
+     *
+     * @param record the record to write
+     * @param timeoutMs how long to wait for free space in the queue
+     * @throws AuditRecordStorageException if the writer is not started, the queue stays full or the thread is interrupted
+     */
+    public void enqueue(final PendingAuditRecord record, final long timeoutMs) throws AuditRecordStorageException {
+        final BlockingQueue<PendingAuditRecord> currentQueue = queue;
+        if (currentQueue == null) {
+            throw new AuditRecordStorageException("Batched audit record writer is not running.");
+        }
+        pending.incrementAndGet();
+        try {
+            if (!currentQueue.offer(record, timeoutMs, TimeUnit.MILLISECONDS)) {
+                release(1);
+                throw new AuditRecordStorageException("Audit record queue has been full for " + timeoutMs + " ms.");
+            }
+        } catch (InterruptedException e) {
+            release(1);
+            Thread.currentThread().interrupt();
+            throw new AuditRecordStorageException("Interrupted while waiting for room in the audit record queue.", e);
+        }
+    }
+
+    /**
+     * Waits until all records that were queued before this call have been written.
+     *
+     * @param timeoutMs maximum time to wait
+     * @return true if the queue was drained within the timeout
+     */
+    public boolean awaitEmpty(final long timeoutMs) {
+        long remainingNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        emptyLock.lock();
+        try {
+            while (pending.get() > 0) {
+                if (remainingNanos <= 0) {
+                    return false;
+                }
+                remainingNanos = empty.awaitNanos(remainingNanos);
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            emptyLock.unlock();
+        }
+    }
+
+    /**
+     * Removes a record that has not been picked up by the writer yet, e.g. when the caller has given up waiting for it. A record that
+     * is already being written can not be removed, and will be committed unless the write fails.
+     *
+     * @param record a record that was queued with {@link #enqueue(PendingAuditRecord, long)}
+     * @return true if the record was removed and will not be written, false if it is being written or has already been written
+     */
+    public boolean cancel(final PendingAuditRecord record) {
+        final BlockingQueue<PendingAuditRecord> currentQueue = queue;
+        if (currentQueue == null || !currentQueue.remove(record)) {
+            return false;
+        }
+        release(1);
+        record.getCompletion().completeExceptionally(new AuditRecordStorageException("Audit record was removed from the queue before it was written."));
+        return true;
+    }
+
+    /** Counts records that are no longer queued or being written, and wakes up {@link #awaitEmpty(long)} when there are none left */
+    private void release(final int records) {
+        if (records > 0 && pending.addAndGet(-records) == 0) {
+            emptyLock.lock();
+            try {
+                empty.signalAll();
+            } finally {
+                emptyLock.unlock();
+            }
+        }
+    }
+
+    private void writeLoop(final BlockingQueue<PendingAuditRecord> writerQueue) {
+        final List<PendingAuditRecord> batch = new ArrayList<>();
+        while (true) {
+            try {
+                final PendingAuditRecord first = writerQueue.take();
+                batch.add(first);
+                // Everything that was queued while the previous batch was committed is written together
+                writerQueue.drainTo(batch, maxBatchSize - 1);
+                writeBatch(batch);
+            } catch (InterruptedException e) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Batched audit record writer was interrupted with " + writerQueue.size() + " queued records.");
+                }
+                return;
+            } catch (RuntimeException e) {
+                // Should not happen, since writeBatch handles all failures, but never let the writer thread die
+                log.error("Unexpected failure in batched audit record writer: " + e.getMessage(), e);
+                for (final PendingAuditRecord record : batch) {
+                    record.getCompletion().completeExceptionally(e);
+                }
+            } finally {
+                release(batch.size());
+                batch.clear();
+            }
+        }
+    }
+
+    private void writeBatch(final List<PendingAuditRecord> batch) {
+        lastQueueWaitMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - batch.get(0).getEnqueuedNanos());
+        final long start = System.currentTimeMillis();
+        try {
+            loggerSession.logBatch(batch);
+            recordCommit(start, batch.size());
+            for (final PendingAuditRecord record : batch) {
+                record.getCompletion().complete(null);
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("Wrote batch of " + batch.size() + " audit records in " + lastCommitMs + " ms. " + getStatistics());
+            }
+            return;
+        } catch (RuntimeException e) {
+            if (batch.size() == 1) {
+                fail(batch.get(0), e);
+                return;
+            }
+            log.warn("Failed to write batch of " + batch.size() + " audit records, retrying one record at a time: " + e.getMessage());
+        }
+        for (final PendingAuditRecord record : batch) {
+            final long singleStart = System.currentTimeMillis();
+            try {
+                loggerSession.logBatch(Collections.singletonList(record));
+                recordCommit(singleStart, 1);
+                record.getCompletion().complete(null);
+            } catch (RuntimeException e) {
+                fail(record, e);
+            }
+        }
+    }
+
+    private void fail(final PendingAuditRecord record, final Exception e) {
+        failedRecords.increment();
+        log.error("Failed to write audit record with sequence number " + record.getSequenceNumber() + ", event type " + record.getEventType()
+                + " and timestamp " + record.getTimeStamp() + ": " + e.getMessage(), e);
+        record.getCompletion().completeExceptionally(e);
+    }
+
+    private void recordCommit(final long start, final int records) {
+        final long commitMs = System.currentTimeMillis() - start;
+        lastCommitMs = commitMs;
+        maxCommitMs.accumulateAndGet(commitMs, Math::max);
+        totalCommitMs.add(commitMs);
+        batches.increment();
+        writtenRecords.add(records);
+    }
+
+    /** @return the number of records waiting in the queue */
+    public int getQueueDepth() {
+        final BlockingQueue<PendingAuditRecord> currentQueue = queue;
+        return currentQueue == null ? 0 : currentQueue.size();
+    }
+
+    /** @return the number of records written so far */
+    public long getWrittenCount() {
+        return writtenRecords.sum();
+    }
+
+    /** @return the number of records that could not be written */
+    public long getFailedCount() {
+        return failedRecords.sum();
+    }
+
+    /** @return the number of committed transactions */
+    public long getBatchCount() {
+        return batches.sum();
+    }
+
+    /** @return the duration of the last commit in milliseconds */
+    public long getLastCommitLatencyMs() {
+        return lastCommitMs;
+    }
+
+    /** @return the longest commit in milliseconds */
+    public long getMaxCommitLatencyMs() {
+        return maxCommitMs.get();
+    }
+
+    /** @return the average commit duration in milliseconds */
+    public long getAverageCommitLatencyMs() {
+        final long count = batches.sum();
+        return count == 0 ? 0 : totalCommitMs.sum() / count;
+    }
+
+    /** @return the time the oldest record of the last batch waited in the queue, in milliseconds */
+    public long getLastQueueWaitMs() {
+        return lastQueueWaitMs;
+    }
+
+    private void collectMetrics(final List<Sample> samples) {
+        samples.add(Sample.gauge("ejbca_audit_batch_queue_depth", "Number of audit records waiting in the queue of the batch writer.", getQueueDepth()));
+        samples.add(Sample.counter("ejbca_audit_batch_records_written_total", "Number of audit records written by the batch writer.", getWrittenCount()));
+        samples.add(Sample.counter("ejbca_audit_batch_records_failed_total", "Number of audit records the batch writer could not write.", getFailedCount()));
+        samples.add(Sample.counter("ejbca_audit_batch_commits_total", "Number of transactions committed by the batch writer.", getBatchCount()));
+        samples.add(Sample.counter("ejbca_audit_batch_commit_seconds_total", "Total time spent committing audit record batches.",
+                totalCommitMs.sum() / 1000.0));
+        samples.add(Sample.gauge("ejbca_audit_batch_last_commit_seconds", "Duration of the last audit record batch commit.", getLastCommitLatencyMs() / 1000.0));
+        samples.add(Sample.gauge("ejbca_audit_batch_max_commit_seconds", "Longest audit record batch commit.", getMaxCommitLatencyMs() / 1000.0));
+        samples.add(Sample.gauge("ejbca_audit_batch_last_queue_wait_seconds", "Time the oldest record of the last batch waited in the queue.",
+                getLastQueueWaitMs() / 1000.0));
+    }
+
+    /** @return a one line summary of the writer metrics, suitable for logging */
+    public String getStatistics() {
+        final long written = getWrittenCount();
+        final long batchCount = getBatchCount();
+        return "queueDepth=" + getQueueDepth() + ", written=" + written + ", failed=" + getFailedCount() + ", batches=" + batchCount
+                + ", avgBatchSize=" + (batchCount == 0 ? 0 : written / batchCount) + ", lastCommitMs=" + getLastCommitLatencyMs()
+                + ", avgCommitMs=" + getAverageCommitLatencyMs() + ", maxCommitMs=" + getMaxCommitLatencyMs() + ", lastQueueWaitMs=" + getLastQueueWaitMs();
+    }
+}
@@ -14,10 +14,12 @@ package org.cesecore.audit.impl.integrityprotected;
 
 import java.util.Date;
 import java.util.Properties;
+import java.util.concurrent.Future;
 
 import jakarta.ejb.Local;
 
 import org.cesecore.audit.Auditable;
+import org.cesecore.audit.audit.AuditLogValidationReport;
 import org.cesecore.authentication.tokens.AuthenticationToken;
 import org.cesecore.authorization.AuthorizationDeniedException;
 
@@ -39,4 +41,19 @@ public interface IntegrityProtectedAuditorSessionLocal extends Auditable {
 	 * @throws AuthorizationDeniedException unless token has StandardRules.AUDITLOGEXPORT rights
 	 */
 	int deleteRows(AuthenticationToken token, Date timestamp, Properties properties) throws AuthorizationDeniedException;
+
+	/**
+	 * Delete the log entries of a node up to the specified time within a range of sequence numbers, in a transaction of its own.
+	 * Should not be used externally, since it does not check authorization or audit log.
+	 * @return number of rows deleted
+	 */
+	int deleteRowsInTransaction(String nodeId, long timestamp, long firstSequenceNumber, long lastSequenceNumber);
+
+	/**
+	 * Verify the log entries of a single node up to the specified time, asynchronously so that several nodes can be verified in parallel.
+	 * Should not be used externally, since it does not audit log the verification.
+	 * @param fetchSize number of entries to read from the database at a time
+	 * @return the verification report of the node
+	 */
+	Future<AuditLogValidationReport> verifyNodeLogsIntegrity(String nodeId, Date timestamp, int fetchSize);
 }
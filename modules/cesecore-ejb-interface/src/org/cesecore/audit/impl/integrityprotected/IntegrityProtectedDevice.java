@@ -16,7 +16,12 @@ import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
+import org.apache.log4j.Logger;
+import org.cesecore.audit.AuditDevicesConfig;
 import org.cesecore.audit.AuditLogDevice;
 import org.cesecore.audit.AuditLogEntry;
 import org.cesecore.audit.audit.AuditExporter;
@@ -69,10 +74,26 @@ import com.keyfactor.util.keys.token.CryptoToken;
  * This implementation makes this information available via AuditRecordData.getRowProtection() and this is also
  * included in exported log files.
  * 
+ * With the device property batch.enabled=true, records are written in batches by {@link AuditRecordBatchWriter} instead of using one
+ * transaction per security event. The records, sequence numbers and row protection are the same. The following device properties
+ * are supported:
+ * <ul>
+ * <li>batch.durability - "sync" (default) to let the caller wait until the record is committed, or "async" to return as soon
+ *     as the record is queued. With "async", queued records are lost if the node crashes before they are written.</li>
+ * <li>batch.queuesize - maximum number of queued records, default 10000</li>
+ * <li>batch.maxsize - maximum number of records per transaction, default 200</li>
+ * <li>batch.timeout - milliseconds to wait for room in the queue, and for the commit in "sync" mode, default 30000. In "sync" mode, a record
+ *     that is still queued when the timeout expires is removed from the queue and not written. A record that the writer has already
+ *     started to write can not be removed, and may be committed even though the caller got an exception.</li>
+ * </ul>
+ * Records are written directly while the batch writer is not running, e.g. during startup and undeployment.
+ * 
  * @version $Id$
  */
 public class IntegrityProtectedDevice implements AuditLogDevice {
 
+	private static final Logger log = Logger.getLogger(IntegrityProtectedDevice.class);
+
 	private Map<Class<?>, ?> ejbs;
 
 	@Override
@@ -103,9 +124,37 @@ public class IntegrityProtectedDevice implements AuditLogDevice {
 	@Override
 	public void log(TrustedTime trustedTime, EventType eventType, EventStatus eventStatus, ModuleType module, ServiceType service, String authToken, String customId,
 			String searchDetail1, String searchDetail2, Map<String, Object> additionalDetails, Properties properties) throws AuditRecordStorageException {
+		if (AuditDevicesConfig.isAuditLogBatchEnabled(properties) && AuditRecordBatchWriter.INSTANCE.start(AuditDevicesConfig.getAuditLogBatchQueueSize(properties),
+				AuditDevicesConfig.getAuditLogBatchMaxSize(properties))) {
+			logBatched(new PendingAuditRecord(trustedTime.getTime().getTime(), eventType, eventStatus, authToken, service, module, customId, searchDetail1,
+					searchDetail2, additionalDetails), properties);
+			return;
+		}
 		getEjb(IntegrityProtectedLoggerSessionLocal.class).log(trustedTime, eventType, eventStatus, module, service, authToken, customId, searchDetail1, searchDetail2, additionalDetails, properties);
 	}
 
+	private void logBatched(final PendingAuditRecord record, final Properties properties) throws AuditRecordStorageException {
+		final int timeout = AuditDevicesConfig.getAuditLogBatchTimeout(properties);
+		AuditRecordBatchWriter.INSTANCE.enqueue(record, timeout);
+		if (!AuditDevicesConfig.isAuditLogBatchSynchronous(properties)) {
+			return;
+		}
+		try {
+			record.getCompletion().get(timeout, TimeUnit.MILLISECONDS);
+		} catch (ExecutionException e) {
+			throw new AuditRecordStorageException(e.getCause().getMessage(), e.getCause());
+		} catch (TimeoutException e) {
+			// Remove the record, so it is not written after the caller has been told that it failed
+			if (AuditRecordBatchWriter.INSTANCE.cancel(record)) {
+				throw new AuditRecordStorageException("Audit record was not written within " + timeout + " ms and was removed from the queue.", e);
+			}
+			throw new AuditRecordStorageException("Audit record was not committed within " + timeout + " ms. It is being written, and may still be committed.", e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new AuditRecordStorageException("Interrupted while waiting for audit record to be committed.", e);
+		}
+	}
+
 	@Override
 	public boolean isSupportingQueries() {
 		return true;
@@ -113,7 +162,11 @@ public class IntegrityProtectedDevice implements AuditLogDevice {
 
 	@Override
 	public void prepareReset() throws AuditLogResetException {
-		// Do nothing.. we keep logging here, since there is no reasonable way to disable logging on all nodes
+		// We keep logging here, since there is no reasonable way to disable logging on all nodes.
+		// Write what is already queued, so nothing logged before the reset is written with the sequence numbers after it
+		if (!AuditRecordBatchWriter.INSTANCE.awaitEmpty(60000L)) {
+			log.warn("Audit record queue was not drained before reset. " + AuditRecordBatchWriter.INSTANCE.getStatistics());
+		}
 	}
 
 	@Override
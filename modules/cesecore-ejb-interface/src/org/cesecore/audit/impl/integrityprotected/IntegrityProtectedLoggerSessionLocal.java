@@ -12,13 +12,25 @@
  *************************************************************************/
 package org.cesecore.audit.impl.integrityprotected;
 
+import java.util.List;
+
 import jakarta.ejb.Local;
 
 import org.cesecore.audit.AuditLogger;
+import org.cesecore.audit.log.AuditRecordStorageException;
 
 /**
  * @version $Id$
  */
 @Local
 public interface IntegrityProtectedLoggerSessionLocal extends AuditLogger {
+
+    /**
+     * Writes audit records in a single new transaction. Records without a sequence number are assigned the next sequence numbers
+     * of this node, in list order.
+     *
+     * @param records the records to write
+     * @throws AuditRecordStorageException if the records could not be written. No record in the list is written in that case.
+     */
+    void logBatch(List<PendingAuditRecord> records) throws AuditRecordStorageException;
 }
@@ -0,0 +1,79 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.audit.impl.integrityprotected;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.cesecore.audit.enums.EventStatus;
+import org.cesecore.audit.enums.EventType;
+import org.cesecore.audit.enums.ModuleType;
+import org.cesecore.audit.enums.ServiceType;
+
+/**
+ * A security event waiting in the queue of {@link AuditRecordBatchWriter} to be written as an AuditRecordData row.
+ * <p>
+ * The sequence number is assigned when the record is first written, and is kept if the write has to be retried.
+ */
+public class PendingAuditRecord {
+
+    private final long timeStamp;
+    private final EventType eventType;
+    private final EventStatus eventStatus;
+    private final String authToken;
+    private final ServiceType service;
+    private final ModuleType module;
+    private final String customId;
+    private final String searchDetail1;
+    private final String searchDetail2;
+    private final Map<String, Object> additionalDetails;
+    private final long enqueuedNanos = System.nanoTime();
+    private final CompletableFuture<Void> completion = new CompletableFuture<>();
+    private Long sequenceNumber = null;
+
+    public PendingAuditRecord(final long timeStamp, final EventType eventType, final EventStatus eventStatus, final String authToken,
+            final ServiceType service, final ModuleType module, final String customId, final String searchDetail1, final String searchDetail2,
+            final Map<String, Object> additionalDetails) {
+        this.timeStamp = timeStamp;
+        this.eventType = eventType;
+        this.eventStatus = eventStatus;
+        this.authToken = authToken;
+        this.service = service;
+        this.module = module;
+        this.customId = customId;
+        this.searchDetail1 = searchDetail1;
+        this.searchDetail2 = searchDetail2;
+        this.additionalDetails = additionalDetails;
+    }
+
+    public long getTimeStamp() { return timeStamp; }
+    public EventType getEventType() { return eventType; }
+    public EventStatus getEventStatus() { return eventStatus; }
+    public String getAuthToken() { return authToken; }
+    public ServiceType getService() { return service; }
+    public ModuleType getModule() { return module; }
+    public String getCustomId() { return customId; }
+    public String getSearchDetail1() { return searchDetail1; }
+    public String getSearchDetail2() { return searchDetail2; }
+    public Map<String, Object> getAdditionalDetails() { return additionalDetails; }
+
+    /** @return the value of System.nanoTime() when the record was created */
+    public long getEnqueuedNanos() { return enqueuedNanos; }
+
+    /** @return a future that completes when the record has been committed, or completes exceptionally if it could not be written */
+    public CompletableFuture<Void> getCompletion() { return completion; }
+
+    /** @return the sequence number of the record, or null if it has not been written yet */
+    public Long getSequenceNumber() { return sequenceNumber; }
+    public void setSequenceNumber(final Long sequenceNumber) { this.sequenceNumber = sequenceNumber; }
+}
@@ -100,8 +100,42 @@ public interface CertificateDataSessionLocal extends CertificateDataSession {
                                                         long expireDate, int limit, int offset);
 
     
+    /**
+     * Reads the status columns of certificates from an issuer that were updated after a given point, ordered by (updateTime, fingerprint).
+     * The certificate itself is not read. Intended for keyset pagination, where the updateTime and fingerprint of the last row in one page
+     * are passed as parameters for the next page.
+     *
+     * @param issuerDN normalized DN of the issuer
+     * @param updateTime only rows with a later updateTime, or the same updateTime and a higher fingerprint, are returned. Use -1 to read from the start.
+     * @param fingerprint the fingerprint of the last row of the previous page, or an empty string to read from the start.
+     * @param maxResults maximum number of rows to return
+     * @return [0] = (String) fingerprint, [1] = (String) serialNumber, [2] status, [3] revocationDate, [4] revocationReason, [5] expireDate,
+     *  [6] certificateProfileId (may be null), [7] updateTime. Numeric values may be of any Number type depending on the database,
+     *  use ValueExtractor to read them.
+     */
+    List<Object[]> findStatusInfoByIssuerDNUpdatedAfter(String issuerDN, long updateTime, String fingerprint, int maxResults);
+
+    /**
+     * Reads the status of the certificates with the given issuer and serial number, without reading the certificates or verifying the row protection.
+     *
+     * @param issuerDN normalized DN of the issuer
+     * @param serialNumber serial number as a decimal string
+     * @return the same columns as {@link #findStatusInfoByIssuerDNUpdatedAfter(String, long, String, int)}
+     */
+    List<Object[]> findStatusInfoByIssuerDNSerialNumber(String issuerDN, String serialNumber);
+
     /** @return return the query results as a Collection<RevokedCertInfo>. */
     Collection<RevokedCertInfo> getRevokedCertInfos(String issuerDN, boolean deltaCrl, int crlPartitionIndex, long lastBaseCrlDate, boolean allowInvalidityDate);
+
+    /**
+     * Reads a page of the same revoked certificates as {@link #getRevokedCertInfos(String, boolean, int, long, boolean)}, ordered by fingerprint.
+     *
+     * @param afterFingerprint the fingerprint of the last entry of the previous page, or null to read the first page
+     * @param maxResults the maximum number of entries to read
+     * @return the entries with a fingerprint greater than afterFingerprint
+     */
+    List<RevokedCertInfo> getRevokedCertInfosPage(String issuerDN, boolean deltaCrl, int crlPartitionIndex, long lastBaseCrlDate, boolean allowInvalidityDate,
+            String afterFingerprint, int maxResults);
     
     /** @return return the query results as a List. */
     List<CertificateData> findByExpireDateWithLimit(long expireDate, int maxNumberOfResults);
@@ -175,6 +209,20 @@ public interface CertificateDataSessionLocal extends CertificateDataSession {
     List<Object[]> findExpirationInfo(Collection<String> cas, Collection<Integer> certificateProfiles,
             long activeNotifiedExpireDateMin, long activeNotifiedExpireDateMax, long activeExpireDateMin);
 
+    /**
+     * Like {@link #findExpirationInfo(Collection, Collection, long, long, long)}, but returns at most maxResults rows ordered by fingerprint,
+     * so that a large number of expiring certificates can be processed in chunks.
+     *
+     * @param afterFingerprint the last fingerprint of the previous chunk, or null for the first chunk
+     * @param maxResults the maximum number of rows to return, or 0 for no limit
+     * @return [0] = (String) fingerprint, [1] = (String) username
+     */
+    List<Object[]> findExpirationInfo(Collection<String> cas, Collection<Integer> certificateProfiles,
+            long activeNotifiedExpireDateMin, long activeNotifiedExpireDateMax, long activeExpireDateMin, String afterFingerprint, int maxResults);
+
+    /** @return the certificates with the given fingerprints, in no particular order. Fingerprints that are not found are ignored. */
+    List<CertificateData> findByFingerprints(Collection<String> fingerprints);
+
     /**
      * Finds certificates expiring after the given date.
      *
@@ -340,7 +340,10 @@ public interface CertificateStoreSession {
     /**
      * Method revoking all certificates generated by the specified issuerdn. Sets revocationDate to current time. 
      * Should only be called by when a CA is about to be revoked.
-     * 
+     * <p>
+     * The certificates are revoked in chunks that are committed separately, so certificates revoked before a failure stay revoked,
+     * and calling the method again continues with the certificates that are not yet revoked.
+     *
      * @param admin    the administrator performing the event.
      * @param issuerdn the dn of CA about to be revoked
      * @param reason   the reason of revocation.
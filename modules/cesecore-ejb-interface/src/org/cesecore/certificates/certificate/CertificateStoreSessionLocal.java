@@ -16,6 +16,7 @@ import org.cesecore.authentication.tokens.AuthenticationToken;
 import org.cesecore.authorization.AuthorizationDeniedException;
 import org.cesecore.certificates.certificate.request.RequestMessage;
 import org.cesecore.certificates.crl.RevocationReasons;
+import org.cesecore.certificates.crl.RevokedCertInfo;
 
 import jakarta.ejb.Local;
 import java.math.BigInteger;
@@ -23,6 +24,7 @@ import java.security.cert.Certificate;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -152,6 +154,71 @@ public interface CertificateStoreSessionLocal extends CertificateStoreSession {
      * @return [0] = (String) fingerprint, [1] = (String) username
      */
     List<Object[]> findExpirationInfo(Collection<String> cas, Collection<Integer> certificateProfiles, long activeNotifiedExpireDateMin, long activeNotifiedExpireDateMax, long activeExpireDateMin);
+
+    /**
+     * Like {@link CertificateStoreSession#getStatus(String, BigInteger)}, for callers that already have the issuer DN in the normalized form
+     * of CertificateData.issuerDN, e.g. from CertTools.getSubjectDN of the CA certificate, so it is not normalized again for every lookup.
+     * Only the status columns are read, and not the certificate.
+     *
+     * @param issuerDn the issuer DN, normalized with DnComponents.stringToBCDNString
+     * @param serno the serial number of the certificate
+     * @return CertificateStatus status of the certificate, never null, CertificateStatus.NOT_AVAILABLE if the certificate is not found.
+     */
+    CertificateStatus getStatusForNormalizedIssuerDn(String issuerDn, BigInteger serno);
+
+    /**
+     * Like {@link #findExpirationInfo(Collection, Collection, long, long, long)}, but returns at most maxResults rows ordered by fingerprint,
+     * so that a large number of expiring certificates can be processed in chunks.
+     *
+     * @param afterFingerprint the last fingerprint of the previous chunk, or null for the first chunk
+     * @param maxResults the maximum number of rows to return, or 0 for no limit
+     * @return [0] = (String) fingerprint, [1] = (String) username
+     */
+    List<Object[]> findExpirationInfo(Collection<String> cas, Collection<Integer> certificateProfiles, long activeNotifiedExpireDateMin,
+            long activeNotifiedExpireDateMax, long activeExpireDateMin, String afterFingerprint, int maxResults);
+
+    /**
+     * Finds the certificates with the given fingerprints with a single query.
+     *
+     * @param fingerprints the fingerprints, at most 1000 since some databases limit the number of values in an IN clause
+     * @return map from fingerprint to certificate. Fingerprints that are not found are not included.
+     */
+    Map<String, Certificate> findCertificatesByFingerprints(Collection<String> fingerprints);
+
+    /**
+     * Sets the status of the given certificates to {@link CertificateConstants#CERT_NOTIFIEDABOUTEXPIRATION} with a single update statement,
+     * unless database integrity protection is enabled for CertificateData. Certificates that are no longer active, e.g. because they have
+     * been revoked, are not changed. The status change of each certificate is audit logged.
+     *
+     * @param admin the administrator performing the action
+     * @param fingerprints the fingerprints, at most 1000 since some databases limit the number of values in an IN clause
+     * @return the number of certificates that were changed
+     * @throws AuthorizationDeniedException if the administrator is not authorized to the CA of any of the certificates. Nothing is changed then.
+     */
+    int setNotifiedAboutExpirationStatus(AuthenticationToken admin, Collection<String> fingerprints) throws AuthorizationDeniedException;
+
+    /**
+     * Revokes one chunk of certificates for {@link CertificateStoreSession#revokeAllCertByCA}, in a transaction of its own.
+     * Should not be used externally, since it does not check authorization or audit log.
+     *
+     * @param issuerDn normalized issuer DN of the certificates
+     * @param fingerprints the fingerprints, at most 1000 since some databases limit the number of values in an IN clause
+     * @param reason the revocation reason
+     * @param revocationDate the revocation date
+     * @return the number of certificates that were revoked. Certificates that were already revoked or archived are not changed.
+     */
+    int revokeCertificatesInTransaction(String issuerDn, Collection<String> fingerprints, int reason, long revocationDate);
+
+    /**
+     * Like {@link CertificateStoreSession#listRevokedCertInfo(String, boolean, int, long, boolean)}, but returns at most maxResults entries
+     * ordered by fingerprint, so that the entries of a large CRL can be read one page at a time.
+     *
+     * @param afterFingerprint the fingerprint of the last entry of the previous page, or null for the first page
+     * @param maxResults the maximum number of entries to return
+     * @return the entries with a fingerprint greater than afterFingerprint
+     */
+    List<RevokedCertInfo> listRevokedCertInfoPage(String issuerDN, boolean deltaCrl, int crlPartitionIndex, long lastBaseCrlDate,
+            boolean allowInvalidityDate, String afterFingerprint, int maxResults);
     
     /**
      * Query if we have a clear cut case where no username or the provided username is the only user of the subjectDN and subjectKeyId.
@@ -12,12 +12,14 @@
  *************************************************************************/
 package org.cesecore.certificates.certificate;
 
+import java.util.Collection;
 import java.util.Date;
 
 import jakarta.ejb.Local;
 
 import org.cesecore.authentication.tokens.AuthenticationToken;
 import org.cesecore.authorization.AuthorizationDeniedException;
+import org.cesecore.certificates.crl.RevokedCertInfo;
 
 /**
  * Local interface for {@link NoConflictCertificateStoreSession}.
@@ -30,4 +32,15 @@ public interface NoConflictCertificateStoreSessionLocal extends NoConflictCertif
     
     /** @see CertificateStoreSessionLocal#getCertificateData(String) */
     public CertificateDataWrapper getCertificateData(final String fingerprint);
+
+    /**
+     * Like {@link #listRevokedCertInfo(String, boolean, int, long, boolean, boolean)}, but the entries in CertificateData are read one page
+     * at a time while the returned collection is iterated, so that generating a large CRL does not keep all entries in memory. Each
+     * iteration reads the entries again. If the issuer has entries in NoConflictCertificateData, they have to be merged in memory,
+     * and all entries are read at once as before.
+     *
+     * @return revoked certificates, not ordered
+     */
+    Collection<RevokedCertInfo> listRevokedCertInfoInPages(String issuerDN, boolean deltaCrl, int crlPartitionIndex, long lastBaseCrlDate,
+            boolean keepExpiredCertsOnCrl, boolean allowInvalidityDate);
 }
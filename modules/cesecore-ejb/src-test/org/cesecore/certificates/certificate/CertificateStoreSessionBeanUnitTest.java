@@ -0,0 +1,226 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.certificate;
+
+import static org.easymock.EasyMock.anyInt;
+import static org.easymock.EasyMock.anyLong;
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.anyString;
+import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.expect;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.Field;
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.TypedQuery;
+
+import org.bouncycastle.cert.ocsp.CertificateID;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.bouncycastle.cert.ocsp.OCSPRespBuilder;
+import org.bouncycastle.cert.ocsp.jcajce.JcaCertificateID;
+import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
+import org.cesecore.certificates.ocsp.cache.OcspResponseCache;
+import org.cesecore.config.ConfigurationHolder;
+import org.cesecore.config.OcspConfiguration;
+import org.easymock.EasyMock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.keyfactor.util.CertTools;
+import com.keyfactor.util.CryptoProviderTools;
+import com.keyfactor.util.crypto.algorithm.AlgorithmConstants;
+import com.keyfactor.util.keys.KeyTools;
+
+/**
+ * Unit tests for {@link CertificateStoreSessionBean}.
+ */
+public class CertificateStoreSessionBeanUnitTest {
+
+    private static final String ISSUER_DN = "CN=CertificateStoreSessionBeanUnitTest";
+
+    private static CertificateID cachedCertId;
+    private static OCSPResp response;
+
+    /** Status of the certificates of the issuer, by fingerprint */
+    private final TreeMap<String, Integer> statusByFingerprint = new TreeMap<>();
+    /** Sizes of the chunks that were revoked */
+    private final List<Integer> chunkSizes = new ArrayList<>();
+    /** Whether the OCSP response that was cached before each chunk was still cached when the chunk started */
+    private final List<Boolean> cachedAtChunkStart = new ArrayList<>();
+    /** The chunk number that fails, or -1 */
+    private int failingChunk = -1;
+
+    private CertificateStoreSessionBean certificateStoreSessionBean;
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        CryptoProviderTools.installBCProviderIfNotAvailable();
+        ConfigurationHolder.updateConfiguration(OcspConfiguration.RESPONSE_CACHE_MAX_SIZE, "100000");
+        ConfigurationHolder.updateConfiguration(OcspConfiguration.RESPONSE_CACHE_MAX_AGE, "60000");
+        final KeyPair keys = KeyTools.genKeys("1024", AlgorithmConstants.KEYALGORITHM_RSA);
+        final X509Certificate caCertificate = CertTools.genSelfCert(ISSUER_DN, 365, null, keys.getPrivate(), keys.getPublic(),
+                AlgorithmConstants.SIGALG_SHA256_WITH_RSA, true);
+        cachedCertId = new JcaCertificateID(new JcaDigestCalculatorProviderBuilder().build().get(CertificateID.HASH_SHA1), caCertificate,
+                BigInteger.ONE);
+        response = new OCSPRespBuilder().build(OCSPRespBuilder.SUCCESSFUL, null);
+    }
+
+    @Before
+    public void before() throws Exception {
+        for (int i = 0; i < 25; i++) {
+            statusByFingerprint.put(String.format("%040x", i), CertificateConstants.CERT_ACTIVE);
+        }
+        certificateStoreSessionBean = new CertificateStoreSessionBean();
+        setField("entityManager", entityManager());
+        setField("certificateStoreSession", certificateStoreSession());
+    }
+
+    @After
+    public void after() {
+        OcspResponseCache.INSTANCE.invalidateAll();
+    }
+
+    private void setField(final String name, final Object value) throws Exception {
+        final Field field = CertificateStoreSessionBean.class.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(certificateStoreSessionBean, value);
+    }
+
+    private void cacheResponse() {
+        OcspResponseCache.INSTANCE.put(ISSUER_DN, cachedCertId, response, 100, System.currentTimeMillis() + 60000, 0, null);
+    }
+
+    /** @return an entity manager that answers the query for non revoked fingerprints from {@link #statusByFingerprint} */
+    private EntityManager entityManager() {
+        final EntityManager entityManager = EasyMock.createMock(EntityManager.class);
+        expect(entityManager.createQuery(anyString(), eq(String.class))).andAnswer(this::nonRevokedFingerprintsQuery).anyTimes();
+        EasyMock.replay(entityManager);
+        return entityManager;
+    }
+
+    @SuppressWarnings("unchecked")
+    private TypedQuery<String> nonRevokedFingerprintsQuery() {
+        final Map<String, Object> parameters = new HashMap<>();
+        final int[] maxResults = { Integer.MAX_VALUE };
+        final TypedQuery<String> query = EasyMock.createMock(TypedQuery.class);
+        expect(query.setParameter(anyString(), anyObject())).andAnswer(() -> {
+            parameters.put((String) EasyMock.getCurrentArguments()[0], EasyMock.getCurrentArguments()[1]);
+            return query;
+        }).anyTimes();
+        expect(query.setMaxResults(anyInt())).andAnswer(() -> {
+            maxResults[0] = (Integer) EasyMock.getCurrentArguments()[0];
+            return query;
+        }).anyTimes();
+        expect(query.getResultList()).andAnswer(() -> {
+            assertEquals(ISSUER_DN, parameters.get("issuerDN"));
+            final String afterFingerprint = (String) parameters.get("afterFingerprint");
+            final List<String> result = new ArrayList<>();
+            for (final Map.Entry<String, Integer> entry : (afterFingerprint == null ? statusByFingerprint
+                    : statusByFingerprint.tailMap(afterFingerprint, false)).entrySet()) {
+                if (entry.getValue() != CertificateConstants.CERT_REVOKED && result.size() < maxResults[0]) {
+                    result.add(entry.getKey());
+                }
+            }
+            return result;
+        }).anyTimes();
+        EasyMock.replay(query);
+        return query;
+    }
+
+    /** @return a session that revokes the chunks in {@link #statusByFingerprint}, and caches a response again after each chunk */
+    private CertificateStoreSessionLocal certificateStoreSession() {
+        final CertificateStoreSessionLocal certificateStoreSession = EasyMock.createMock(CertificateStoreSessionLocal.class);
+        expect(certificateStoreSession.revokeCertificatesInTransaction(eq(ISSUER_DN), anyObject(), anyInt(), anyLong())).andAnswer(() -> {
+            cachedAtChunkStart.add(OcspResponseCache.INSTANCE.get(cachedCertId) != null);
+            if (chunkSizes.size() == failingChunk) {
+                // Rolled back, nothing is revoked
+                chunkSizes.add(0);
+                throw new IllegalStateException("Chunk " + failingChunk + " failed");
+            }
+            @SuppressWarnings("unchecked")
+            final Collection<String> fingerprints = (Collection<String>) EasyMock.getCurrentArguments()[1];
+            for (final String fingerprint : fingerprints) {
+                statusByFingerprint.put(fingerprint, CertificateConstants.CERT_REVOKED);
+            }
+            chunkSizes.add(fingerprints.size());
+            // A request during the chunk transaction caches a response with the old status
+            cacheResponse();
+            return fingerprints.size();
+        }).anyTimes();
+        EasyMock.replay(certificateStoreSession);
+        return certificateStoreSession;
+    }
+
+    private int countRevoked() {
+        int count = 0;
+        for (final int status : statusByFingerprint.values()) {
+            if (status == CertificateConstants.CERT_REVOKED) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Test
+    public void revokeAllInChunks() {
+        cacheResponse();
+        assertEquals(25, certificateStoreSessionBean.revokeAllInChunks(ISSUER_DN, 0, System.currentTimeMillis(), 10));
+        assertEquals(List.of(10, 10, 5), chunkSizes);
+        assertEquals(25, countRevoked());
+        // The responses of the issuer are invalidated after each chunk
+        assertEquals(List.of(true, false, false), cachedAtChunkStart);
+        assertNull("Response should have been invalidated after the last chunk", OcspResponseCache.INSTANCE.get(cachedCertId));
+        // Nothing left to revoke
+        chunkSizes.clear();
+        assertEquals(0, certificateStoreSessionBean.revokeAllInChunks(ISSUER_DN, 0, System.currentTimeMillis(), 10));
+        assertEquals(List.of(), chunkSizes);
+    }
+
+    @Test
+    public void revokeAllInChunksResumesAfterFailure() {
+        failingChunk = 1;
+        cacheResponse();
+        try {
+            certificateStoreSessionBean.revokeAllInChunks(ISSUER_DN, 0, System.currentTimeMillis(), 10);
+            fail("The failure of the second chunk should be thrown");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+        // The first chunk is committed, and its responses are invalidated
+        assertEquals(10, countRevoked());
+        assertEquals(List.of(true, false), cachedAtChunkStart);
+        assertNull("Response cached during the first chunk should have been invalidated", OcspResponseCache.INSTANCE.get(cachedCertId));
+        // Running again revokes the rest
+        failingChunk = -1;
+        chunkSizes.clear();
+        cachedAtChunkStart.clear();
+        assertEquals(15, certificateStoreSessionBean.revokeAllInChunks(ISSUER_DN, 0, System.currentTimeMillis(), 10));
+        assertEquals(List.of(10, 5), chunkSizes);
+        assertEquals(25, countRevoked());
+        assertNull(OcspResponseCache.INSTANCE.get(cachedCertId));
+    }
+}
@@ -0,0 +1,56 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.audit.impl.integrityprotected;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.EJB;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import jakarta.ejb.TransactionAttribute;
+import jakarta.ejb.TransactionAttributeType;
+import jakarta.enterprise.concurrent.ManagedThreadFactory;
+
+/**
+ * Ties the lifecycle of the {@link AuditRecordBatchWriter} to the application. The writer thread is created by the container's default
+ * managed thread factory, so it runs with the application's context, and queued audit records are written before the application is
+ * undeployed.
+ */
+@Singleton
+@Startup
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+public class AuditRecordBatchWriterBean {
+
+    /** Maximum time to wait for queued audit records to be written on undeploy */
+    private static final long SHUTDOWN_TIMEOUT_MS = 60000L;
+
+    @Resource
+    private ManagedThreadFactory managedThreadFactory;
+
+    @EJB
+    private IntegrityProtectedLoggerSessionLocal loggerSession;
+
+    @PostConstruct
+    public void startup() {
+        AuditRecordBatchWriter.INSTANCE.open(loggerSession, managedThreadFactory);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        AuditRecordBatchWriter.INSTANCE.close(SHUTDOWN_TIMEOUT_MS);
+    }
+}
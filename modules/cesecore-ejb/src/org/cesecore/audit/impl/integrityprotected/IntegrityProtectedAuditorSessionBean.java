@@ -14,15 +14,19 @@ package org.cesecore.audit.impl.integrityprotected;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.TimeZone;
+import java.util.concurrent.Future;
 
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.Resource;
+import jakarta.ejb.AsyncResult;
+import jakarta.ejb.Asynchronous;
 import jakarta.ejb.EJB;
 import jakarta.ejb.SessionContext;
 import jakarta.ejb.Stateless;
@@ -132,15 +136,47 @@ public class IntegrityProtectedAuditorSessionBean implements IntegrityProtectedA
         return report;
 	}
 	
-	/* Since we modify the database we need to run this in a transaction. */
+	/*
+	 * The rows are deleted in chunks of sequence numbers for each node, where each chunk is committed in a transaction of its own,
+	 * so a large delete does not hold locks or undo space for all the rows at once. If the delete fails, calling it again
+	 * deletes the remaining rows.
+	 */
 	@Override
-	@TransactionAttribute(TransactionAttributeType.REQUIRED)
+	@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
 	public int deleteRows(final AuthenticationToken token, final Date timestamp, final Properties properties) {
         final Map<String, Object> detailsDelete = new LinkedHashMap<String, Object>();
         detailsDelete.put("timestamp", FastDateFormat.getInstance(ValidityDate.ISO8601_DATE_FORMAT, TimeZone.getTimeZone("GMT")).format(timestamp));
         securityEventsLogger.log(EventTypes.LOG_DELETE, EventStatus.VOID, ModuleTypes.SECURITY_AUDIT, ServiceTypes.CORE, token.toString(), null, null, null, detailsDelete);
         // Delete all the exported logs (from all nodes)
-		final QueryCriteria queryCriteria = QueryCriteria.create().add(Criteria.leq(AuditLogEntry.FIELD_TIMESTAMP, timestamp.getTime()));
+        final int chunkSize = AuditDevicesConfig.getAuditLogExportFetchSize(properties);
+        int deleted = 0;
+        for (final String nodeId : getNodeIds()) {
+            final long startTime = System.currentTimeMillis();
+            final Object[] range = (Object[]) entityManager.createQuery("SELECT MIN(a.sequenceNumber), MAX(a.sequenceNumber) FROM AuditRecordData a"
+                    + " WHERE a.nodeId=:nodeId AND a.timeStamp<=:timeStamp").setParameter("nodeId", nodeId).setParameter("timeStamp", timestamp.getTime())
+                    .getSingleResult();
+            if (range[0] == null) {
+                continue;
+            }
+            final long last = ((Number) range[1]).longValue();
+            int deletedForNode = 0;
+            for (long first = ((Number) range[0]).longValue(); first <= last; first += chunkSize) {
+                // needs to call using "integrityProtectedAuditorSession." in order to honor the transaction annotations
+                deletedForNode += integrityProtectedAuditorSession.deleteRowsInTransaction(nodeId, timestamp.getTime(), first, Math.min(last, first + chunkSize - 1));
+            }
+            deleted += deletedForNode;
+            logThroughput("Deleted", deletedForNode, nodeId, startTime);
+        }
+        return deleted;
+	}
+
+	/* Since we modify the database we need to run this in a transaction. */
+	@Override
+	@TransactionAttribute(TransactionAttributeType.REQUIRED)
+	public int deleteRowsInTransaction(final String nodeId, final long timestamp, final long firstSequenceNumber, final long lastSequenceNumber) {
+		final QueryCriteria queryCriteria = QueryCriteria.create().add(Criteria.and(Criteria.and(Criteria.eq(AuditLogEntry.FIELD_NODEID, nodeId),
+		        Criteria.leq(AuditLogEntry.FIELD_TIMESTAMP, timestamp)),
+		        Criteria.between(AuditLogEntry.FIELD_SEQUENCENUMBER, firstSequenceNumber, lastSequenceNumber)));
 		return buildConditionalQuery(entityManager, "DELETE FROM AuditRecordData a", queryCriteria, 0, 0).executeUpdate();
 	}
 
@@ -155,7 +191,16 @@ public class IntegrityProtectedAuditorSessionBean implements IntegrityProtectedA
 	public AuditLogValidationReport verifyLogsIntegrity(final AuthenticationToken token, final Date timestamp, final Properties properties) throws AuditLogValidatorException {
         final AuditLogValidationReport report = new AuditLogValidationReport();
         try {
-            verifyAndOptionalExport(null, report, timestamp, AuditDevicesConfig.getAuditLogExportFetchSize(properties));
+            // Nodes have their own sequence numbers, so they are verified in parallel
+            final int fetchSize = AuditDevicesConfig.getAuditLogExportFetchSize(properties);
+            final List<Future<AuditLogValidationReport>> nodeReports = new ArrayList<>();
+            for (final String nodeId : getNodeIds()) {
+                nodeReports.add(integrityProtectedAuditorSession.verifyNodeLogsIntegrity(nodeId, timestamp, fetchSize));
+            }
+            for (final Future<AuditLogValidationReport> nodeReport : nodeReports) {
+                report.errors().addAll(nodeReport.get().errors());
+                report.warnings().addAll(nodeReport.get().warnings());
+            }
         	// Log the success or failure depending on if verification returns error or not
         	logVerificationResult(report.errors().size(), timestamp, token);
         } catch (final Exception e) {
@@ -164,8 +209,22 @@ public class IntegrityProtectedAuditorSessionBean implements IntegrityProtectedA
         return report;
 	}
 
+	@Asynchronous
+	@Override
+	@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+	public Future<AuditLogValidationReport> verifyNodeLogsIntegrity(final String nodeId, final Date timestamp, final int fetchSize) {
+        final AuditLogValidationReport report = new AuditLogValidationReport();
+        try {
+            verifyAndOptionalExport(null, report, nodeId, timestamp, fetchSize);
+        } catch (IOException e) {
+            // Nothing is written without an exporter
+            throw new IllegalStateException(e);
+        }
+        return new AsyncResult<>(report);
+	}
+
 	/**
-	 * Read batches of logs from the database. If the database integrity check fails, the batch will be processed row by row.
+	 * Read batches of logs from the database for all nodes. If the database integrity check fails, the batch will be processed row by row.
 	 * Results are added to the report.
 	 * @param auditExporter can be null if no export should take place
 	 * @param report is a AuditLogValidationReport or AuditLogExportReport
@@ -174,21 +233,30 @@ public class IntegrityProtectedAuditorSessionBean implements IntegrityProtectedA
 	private void verifyAndOptionalExport(AuditExporter auditExporter, AuditLogValidationReport report, Date timestamp, final int fetchSize) throws IOException {
     	// Get a list of the nodes that have data in the database
     	for (final String nodeId : getNodeIds()) {
+    		verifyAndOptionalExport(auditExporter, report, nodeId, timestamp, fetchSize);
+    	}
+	}
+
+	/**
+	 * Read batches of logs of a single node from the database, in sequence number order. Each batch is read after the last sequence number of
+	 * the previous batch, so reading a batch does not get slower the further into the log it is.
+	 * @see #verifyAndOptionalExport(AuditExporter, AuditLogValidationReport, Date, int)
+	 */
+	private void verifyAndOptionalExport(AuditExporter auditExporter, AuditLogValidationReport report, String nodeId, Date timestamp, final int fetchSize) throws IOException {
     		if (log.isDebugEnabled()) {
     			log.debug("exportAuditLogs for nodeId " + nodeId);
     		}
-    		// Assuming timeStamp is in UTC
-    		final QueryCriteria queryCriteria = QueryCriteria.create().add((Criteria.and(Criteria.eq(AuditLogEntry.FIELD_NODEID, nodeId), Criteria.leq(AuditLogEntry.FIELD_TIMESTAMP, timestamp.getTime())))).add(Criteria.orderAsc(AuditLogEntry.FIELD_SEQUENCENUMBER));
-    		int startIndex = 1;
+    		final long startTime = System.currentTimeMillis();
+    		long rows = 0;
     		final Holder<Long> lastSeqNumber = new Holder<Long>(Long.valueOf(-1L));
     		while (true) {
     			try {
-        			final List<AuditRecordData> queryResult = verifyLogsIntegritySubset(startIndex, fetchSize, queryCriteria, report, lastSeqNumber, nodeId);
+        			final List<AuditRecordData> queryResult = verifyLogsIntegritySubset(fetchSize, timestamp, report, lastSeqNumber, nodeId);
     				final int results = queryResult.size();
     				if (results == 0) {
     					break;	// No more data for this node
     				}
-    				startIndex += results;
+    				rows += results;
 					if (auditExporter!=null) {
 						for (final AuditRecordData auditRecordData : queryResult) {
 							writeToExport(auditExporter, auditRecordData);
@@ -199,11 +267,12 @@ public class IntegrityProtectedAuditorSessionBean implements IntegrityProtectedA
     				// One of the FETCH_SIZE entries failed.. we have to go through line by line to find out witch one..
     				for (int i=0; i<fetchSize; i++) {
         				try {
-                			final List<AuditRecordData> queryResult = verifyLogsIntegritySubset(startIndex, 1, queryCriteria, report, lastSeqNumber, nodeId);
+                			final List<AuditRecordData> queryResult = verifyLogsIntegritySubset(1, timestamp, report, lastSeqNumber, nodeId);
             				final int results = queryResult.size();
             				if (results != 1) {
             					break;	// No more data for this node
             				}
+            				rows++;
         					if (auditExporter!=null) {
         						writeToExport(auditExporter, queryResult.get(0));
             					((AuditLogExportReport) report).incExportCount();
@@ -213,6 +282,7 @@ public class IntegrityProtectedAuditorSessionBean implements IntegrityProtectedA
         					// Add to report
         					report.warn(new AuditLogReportElem(lastSeqNumber.get().longValue(), auditRecordData.getSequenceNumber(), "log with sequence number after " + lastSeqNumber + " on nodeId " + nodeId + " could not be verified"));
         					lastSeqNumber.set(auditRecordData.getSequenceNumber());
+        					rows++;
         					// We still export it
         					// TODO: It might make sense to make it configurable to export when verification fails..
         					if (auditExporter!=null) {
@@ -220,11 +290,18 @@ public class IntegrityProtectedAuditorSessionBean implements IntegrityProtectedA
             					((AuditLogExportReport) report).incExportCount();
         					}
         				}
-        				startIndex += 1;
     				}
     			}
     		}
-    	}
+    		logThroughput(auditExporter == null ? "Verified" : "Verified and exported", rows, nodeId, startTime);
+	}
+
+	/** Log how many rows of a node were processed and how fast. */
+	private void logThroughput(final String operation, final long rows, final String nodeId, final long startTime) {
+	    if (log.isDebugEnabled()) {
+	        final long duration = Math.max(1L, System.currentTimeMillis() - startTime);
+	        log.debug(operation + " " + rows + " audit log rows of nodeId " + nodeId + " in " + duration + " ms (" + (rows * 1000 / duration) + " rows/s).");
+	    }
 	}
 
 	/** We want to export exactly like it was stored in the database, to comply with requirements on logging systems where no altering of the original log data is allowed. */
@@ -250,17 +327,20 @@ public class IntegrityProtectedAuditorSessionBean implements IntegrityProtectedA
     /**
      * Fetch a batch of log rows from the database (implying database integrity check) and verifies
      * that all sequence numbers are present.
-     * @param startIndex start batch from this position 
      * @param max entries per batch
-     * @param queryCriteria where clause
+     * @param timestamp only fetch entries up until this time
      * @param report will be updated when a problem is found
-     * @param lastSeqNumber will be updated to the last sequence number processed in this subset
+     * @param lastSeqNumber the batch starts after this sequence number, and it will be updated to the last sequence number processed in this subset
      * @param nodeId identifier of which node that claims to have written this data
      * @return the log entries we fetched from the database so the caller may export these
      * @throws DatabaseProtectionException if the intregrity verification fails for one of the entries in the batch during fetch
      */
-	private List<AuditRecordData> verifyLogsIntegritySubset(final int startIndex, final int max, final QueryCriteria queryCriteria, final AuditLogValidationReport report, final Holder<Long> lastSeqNumber, final String nodeId) throws DatabaseProtectionException {
-		final List<AuditRecordData> queryResult = internalSelectAuditLogs(startIndex, max, queryCriteria);	// Might throw DatabaseProtectionException
+	private List<AuditRecordData> verifyLogsIntegritySubset(final int max, final Date timestamp, final AuditLogValidationReport report, final Holder<Long> lastSeqNumber, final String nodeId) throws DatabaseProtectionException {
+		// Assuming timeStamp is in UTC
+		final QueryCriteria queryCriteria = QueryCriteria.create().add(Criteria.and(Criteria.and(Criteria.eq(AuditLogEntry.FIELD_NODEID, nodeId),
+		        Criteria.leq(AuditLogEntry.FIELD_TIMESTAMP, timestamp.getTime())), Criteria.grt(AuditLogEntry.FIELD_SEQUENCENUMBER, lastSeqNumber.get())))
+		        .add(Criteria.orderAsc(AuditLogEntry.FIELD_SEQUENCENUMBER));
+		final List<AuditRecordData> queryResult = internalSelectAuditLogs(0, max, queryCriteria);	// Might throw DatabaseProtectionException
 		// Loop through results and verify that the sequence order is correct
 		for (int i=0; i<queryResult.size(); i++) {
 			final long currentSeqNumber = queryResult.get(i).getSequenceNumber().longValue();
@@ -12,6 +12,7 @@
  *************************************************************************/
 package org.cesecore.audit.impl.integrityprotected;
 
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 
@@ -48,6 +49,11 @@ public class IntegrityProtectedLoggerSessionBean implements IntegrityProtectedLo
 
     private static final Logger log = Logger.getLogger(IntegrityProtectedLoggerSessionBean.class);
     private static final int MAX_AUTH_TOKEN_SIZE = 250;
+    /**
+     * Hibernate property for the number of statements sent in one JDBC batch. It is only set on the persistence context of {@link #logBatch(List)},
+     * so that the inserts of a batch are sent together without changing how other entities are flushed. Other JPA providers ignore it.
+     */
+    private static final String JDBC_BATCH_SIZE_PROPERTY = "hibernate.jdbc.batch_size";
 
     @PersistenceContext(unitName = CesecoreConfiguration.PERSISTENCE_UNIT)
     private EntityManager entityManager;
@@ -91,16 +97,9 @@ public class IntegrityProtectedLoggerSessionBean implements IntegrityProtectedLo
         }
         try {
             final Long sequenceNumber = NodeSequenceHolder.INSTANCE.getNext(sequenceHolderInitialization);
-            // Make sure to use the Node Identifier that this log sequence was initialized with (for example hostnames reported by the system could change)
-            final String nodeId = NodeSequenceHolder.INSTANCE.getNodeId();
             final Long timeStamp = trustedTime.getTime().getTime();
-            if(authToken.length() > MAX_AUTH_TOKEN_SIZE) {
-                additionalDetails.put("authToken", authToken);
-                authToken = "[trimmed] " + authToken.substring(0, MAX_AUTH_TOKEN_SIZE - 15);
-            }
-            final AuditRecordData auditRecordData = new AuditRecordData(nodeId, sequenceNumber, timeStamp, eventType, eventStatus, authToken,
-                    service, module, customId, searchDetail1, searchDetail2, additionalDetails);
-            entityManager.persist(auditRecordData);
+            entityManager.persist(createAuditRecordData(sequenceNumber, timeStamp, eventType, eventStatus, authToken, service, module, customId,
+                    searchDetail1, searchDetail2, additionalDetails));
         } catch (Exception e) {
             log.error(e.getMessage(), e);
             throw new AuditRecordStorageException(e.getMessage(), e);
@@ -110,4 +109,45 @@ public class IntegrityProtectedLoggerSessionBean implements IntegrityProtectedLo
             }
         }
     }
+
+    @Override
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void logBatch(final List<PendingAuditRecord> records) throws AuditRecordStorageException {
+        if (log.isTraceEnabled()) {
+            log.trace(">logBatch: " + records.size());
+        }
+        try {
+            // The persistence context only lives for this transaction, so the batch size does not apply to any other transaction
+            entityManager.setProperty(JDBC_BATCH_SIZE_PROPERTY, records.size());
+            for (final PendingAuditRecord record : records) {
+                if (record.getSequenceNumber() == null) {
+                    record.setSequenceNumber(NodeSequenceHolder.INSTANCE.getNext(sequenceHolderInitialization));
+                }
+                entityManager.persist(createAuditRecordData(record.getSequenceNumber(), record.getTimeStamp(), record.getEventType(), record.getEventStatus(),
+                        record.getAuthToken(), record.getService(), record.getModule(), record.getCustomId(), record.getSearchDetail1(),
+                        record.getSearchDetail2(), record.getAdditionalDetails()));
+            }
+            entityManager.flush();
+        } catch (Exception e) {
+            log.error(e.getMessage(), e);
+            throw new AuditRecordStorageException(e.getMessage(), e);
+        } finally {
+            if (log.isTraceEnabled()) {
+                log.trace("<logBatch");
+            }
+        }
+    }
+
+    private AuditRecordData createAuditRecordData(final Long sequenceNumber, final Long timeStamp, final EventType eventType, final EventStatus eventStatus,
+            String authToken, final ServiceType service, final ModuleType module, final String customId, final String searchDetail1,
+            final String searchDetail2, final Map<String, Object> additionalDetails) {
+        // Make sure to use the Node Identifier that this log sequence was initialized with (for example hostnames reported by the system could change)
+        final String nodeId = NodeSequenceHolder.INSTANCE.getNodeId();
+        if(authToken.length() > MAX_AUTH_TOKEN_SIZE) {
+            additionalDetails.put("authToken", authToken);
+            authToken = "[trimmed] " + authToken.substring(0, MAX_AUTH_TOKEN_SIZE - 15);
+        }
+        return new AuditRecordData(nodeId, sequenceNumber, timeStamp, eventType, eventStatus, authToken, service, module, customId, searchDetail1,
+                searchDetail2, additionalDetails);
+    }
 }
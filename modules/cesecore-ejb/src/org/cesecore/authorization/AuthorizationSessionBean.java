@@ -35,6 +35,7 @@ import org.cesecore.certificates.certificate.CertificateStoreSessionLocal;
 import org.cesecore.config.CesecoreConfiguration;
 import org.cesecore.internal.InternalResources;
 import org.cesecore.roles.AccessRulesHelper;
+import org.cesecore.roles.CompiledAccessRules;
 import org.cesecore.roles.management.RoleDataSessionLocal;
 import org.cesecore.roles.member.RoleMemberDataSessionLocal;
 import org.cesecore.time.TrustedTime;
@@ -135,11 +136,11 @@ public class AuthorizationSessionBean implements AuthorizationSessionLocal, Auth
 
     private boolean isAuthorized(final AuthenticationToken authenticationToken, final boolean doLogging, final String... resources) {
         try {
-            final HashMap<String, Boolean> accessRules = getAccessAvailableToAuthenticationToken(authenticationToken);
+            final CompiledAccessRules accessRules = AuthorizationCache.INSTANCE.getCompiledAccessRules(authenticationToken, authorizationCacheCallback);
             final Map<String, Object> details = doLogging ? new LinkedHashMap<>() : null;
             for (int i=0; i<resources.length; i++) {
                 final String resource = resources[i];
-                final boolean authorizedToResource = AccessRulesHelper.hasAccessToResource(accessRules, resource);
+                final boolean authorizedToResource = accessRules.hasAccessToResource(resource);
                 if (authorizedToResource) {
                     if (doLogging) {
                         details.put("resource"+i, resource);
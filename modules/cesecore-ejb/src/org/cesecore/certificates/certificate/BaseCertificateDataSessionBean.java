@@ -51,28 +51,48 @@ public abstract class BaseCertificateDataSessionBean {
                 log.debug("Read batch of " + incompleteCertificateDatas.size() + " RevokedCertInfo.");
             }
             for (final Object[] current : incompleteCertificateDatas) {
-                // The order of the results are defined by the SqlResultSetMapping annotation
-                final byte[] fingerprint = ((String)current[0]).getBytes();
-                final byte[] serialNumber = new BigInteger((String)current[1]).toByteArray();
-                final long expireDate = ValueExtractor.extractLongValue(current[2]);
-                final long revocationDate = ValueExtractor.extractLongValue(current[3]);
-                int revocationReason = ValueExtractor.extractIntValue(current[4]);
-                if (revocationReason == -1) {
-                    revocationReason = RevokedCertInfo.REVOCATION_REASON_REMOVEFROMCRL;
-                }
-                if (allowInvalidityDate) {
-                    Long invalidityDate = null;
-                    if (current[5] != null && ValueExtractor.extractLongValue(current[5]) != -1L){
-                        invalidityDate = ValueExtractor.extractLongValue(current[5]);
-                    }
-                    revokedCertInfos.add(new RevokedCertInfo(fingerprint, serialNumber, revocationDate, revocationReason, expireDate, invalidityDate));
-                } else {
-                    revokedCertInfos.add(new RevokedCertInfo(fingerprint, serialNumber, revocationDate, revocationReason, expireDate));
-                }
+                revokedCertInfos.add(toRevokedCertInfo(current, allowInvalidityDate));
             }
             firstResult += maxResults;
         }
         return revokedCertInfos;
     }
-    
+
+    /**
+     * Reads a single page of revoked certificates. The query must be ordered by fingerprint, and select the entries after a given
+     * fingerprint, to read the following page.
+     */
+    protected List<RevokedCertInfo> getRevokedCertInfosPageInternal(final Query query, final boolean allowInvalidityDate, final int maxResults) {
+        query.setMaxResults(maxResults);
+        @SuppressWarnings("unchecked")
+        final List<Object[]> incompleteCertificateDatas = query.getResultList();
+        if (log.isDebugEnabled()) {
+            log.debug("Read page of " + incompleteCertificateDatas.size() + " RevokedCertInfo.");
+        }
+        final List<RevokedCertInfo> revokedCertInfos = new ArrayList<>(incompleteCertificateDatas.size());
+        for (final Object[] current : incompleteCertificateDatas) {
+            revokedCertInfos.add(toRevokedCertInfo(current, allowInvalidityDate));
+        }
+        return revokedCertInfos;
+    }
+
+    private static RevokedCertInfo toRevokedCertInfo(final Object[] current, final boolean allowInvalidityDate) {
+        // The order of the results are defined by the SqlResultSetMapping annotation
+        final byte[] fingerprint = ((String)current[0]).getBytes();
+        final byte[] serialNumber = new BigInteger((String)current[1]).toByteArray();
+        final long expireDate = ValueExtractor.extractLongValue(current[2]);
+        final long revocationDate = ValueExtractor.extractLongValue(current[3]);
+        int revocationReason = ValueExtractor.extractIntValue(current[4]);
+        if (revocationReason == -1) {
+            revocationReason = RevokedCertInfo.REVOCATION_REASON_REMOVEFROMCRL;
+        }
+        if (allowInvalidityDate) {
+            Long invalidityDate = null;
+            if (current[5] != null && ValueExtractor.extractLongValue(current[5]) != -1L){
+                invalidityDate = ValueExtractor.extractLongValue(current[5]);
+            }
+            return new RevokedCertInfo(fingerprint, serialNumber, revocationDate, revocationReason, expireDate, invalidityDate);
+        }
+        return new RevokedCertInfo(fingerprint, serialNumber, revocationDate, revocationReason, expireDate);
+    }
 }
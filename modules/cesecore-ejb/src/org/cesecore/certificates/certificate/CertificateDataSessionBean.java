@@ -37,6 +37,7 @@ import jakarta.persistence.Query;
 import jakarta.persistence.TypedQuery;
 import java.math.BigInteger;
 import java.security.cert.Certificate;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
@@ -283,26 +284,43 @@ public class CertificateDataSessionBean extends BaseCertificateDataSessionBean i
                     ", Last Base CRL Date: " + FastDateFormat.getInstance(ValidityDate.ISO8601_DATE_FORMAT, TimeZone.getTimeZone("GMT")).format(lastBaseCrlDate) +
                     ", Allow Invalidity Date: " + allowInvalidityDate);
         }
-        final String crlPartitionExpression;
         final String ordering;
+        if (CesecoreConfiguration.getDatabaseRevokedCertInfoFetchOrdered()) {
+            ordering = " ORDER BY revocationDate, fingerprint ASC";
+        } else {
+            ordering = "";
+        }
+        final Query query = createRevokedCertInfoQuery(issuerDN, deltaCrl, crlPartitionIndex, lastBaseCrlDate, allowInvalidityDate, "", ordering);
+        return getRevokedCertInfosInternal(query, allowInvalidityDate);
+    }
+
+    @Override
+    public List<RevokedCertInfo> getRevokedCertInfosPage(final String issuerDN, final boolean deltaCrl, final int crlPartitionIndex,
+            final long lastBaseCrlDate, final boolean allowInvalidityDate, final String afterFingerprint, final int maxResults) {
+        final Query query = createRevokedCertInfoQuery(issuerDN, deltaCrl, crlPartitionIndex, lastBaseCrlDate, allowInvalidityDate,
+                afterFingerprint == null ? "" : " AND a.fingerprint>:afterFingerprint", " ORDER BY a.fingerprint");
+        if (afterFingerprint != null) {
+            query.setParameter("afterFingerprint", afterFingerprint);
+        }
+        return getRevokedCertInfosPageInternal(query, allowInvalidityDate, maxResults);
+    }
+
+    private Query createRevokedCertInfoQuery(final String issuerDN, final boolean deltaCrl, final int crlPartitionIndex, final long lastBaseCrlDate,
+            final boolean allowInvalidityDate, final String keysetExpression, final String ordering) {
+        final String crlPartitionExpression;
         final Query query;
         if (crlPartitionIndex != 0) {
             crlPartitionExpression = " AND crlPartitionIndex = :crlPartitionIndex";
         } else {
             crlPartitionExpression = " AND (crlPartitionIndex = :crlPartitionIndex OR crlPartitionIndex IS NULL)";
         }
-        if (CesecoreConfiguration.getDatabaseRevokedCertInfoFetchOrdered()) {
-            ordering = " ORDER BY revocationDate, fingerprint ASC";
-        } else {
-            ordering = "";
-        }
         if (allowInvalidityDate && deltaCrl) {
             // For delta CRL generation with invalidityDate. Results will be filtered later. This is needed since we will need to compare the results with the revoked cert entries
             // in the last base CRL in order to figure out which certificates had their invalidity date changed since the last base CRL. We can't determine that in the query here.
             query = getEntityManager().createNativeQuery(
                     "SELECT a.fingerprint as fingerprint, a.serialNumber as serialNumber, a.expireDate as expireDate, a.revocationDate as revocationDate, a.revocationReason as revocationReason, a.invalidityDate as invalidityDate  FROM CertificateData a WHERE "
                             + "a.issuerDN=:issuerDN AND a.revocationDate>:revocationDate AND a.updateTime>:lastBaseCrlDate AND (a.status=:status1 OR a.status=:status2 OR a.status=:status3)"
-                            + crlPartitionExpression + ordering,
+                            + crlPartitionExpression + keysetExpression + ordering,
                     "RevokedCertInfoSubset");
             query.setParameter("lastBaseCrlDate", lastBaseCrlDate);
             query.setParameter("revocationDate", -1L);
@@ -315,7 +333,7 @@ public class CertificateDataSessionBean extends BaseCertificateDataSessionBean i
             query = getEntityManager().createNativeQuery(
                     "SELECT a.fingerprint as fingerprint, a.serialNumber as serialNumber, a.expireDate as expireDate, a.revocationDate as revocationDate, a.revocationReason as revocationReason, a.invalidityDate as invalidityDate  FROM CertificateData a WHERE "
                             + "a.issuerDN=:issuerDN AND a.revocationDate>:revocationDate AND (a.status=:status1 OR a.status=:status2 OR a.status=:status3)"
-                            + crlPartitionExpression + ordering,
+                            + crlPartitionExpression + keysetExpression + ordering,
                     "RevokedCertInfoSubset");
             query.setParameter("revocationDate", lastBaseCrlDate);
             query.setParameter("status1", CertificateConstants.CERT_REVOKED);
@@ -326,13 +344,43 @@ public class CertificateDataSessionBean extends BaseCertificateDataSessionBean i
             query = getEntityManager().createNativeQuery(
                     "SELECT a.fingerprint as fingerprint, a.serialNumber as serialNumber, a.expireDate as expireDate, a.revocationDate as revocationDate, a.revocationReason as revocationReason, a.invalidityDate as invalidityDate FROM CertificateData a WHERE "
                             + "a.issuerDN=:issuerDN AND a.status=:status"
-                            + crlPartitionExpression + ordering,
+                            + crlPartitionExpression + keysetExpression + ordering,
                     "RevokedCertInfoSubset");
             query.setParameter("status", CertificateConstants.CERT_REVOKED);
         }
         query.setParameter("issuerDN", issuerDN);
         query.setParameter("crlPartitionIndex", crlPartitionIndex);
-        return getRevokedCertInfosInternal(query, allowInvalidityDate);
+        return query;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<Object[]> findStatusInfoByIssuerDNUpdatedAfter(final String issuerDN, final long updateTime, final String fingerprint, final int maxResults) {
+        // We don't select the base64 certificate data here, since only the status is needed
+        final Query query = entityManager.createNativeQuery("SELECT a.fingerprint as fingerprint, a.serialNumber as serialNumber, a.status as status,"
+                + " a.revocationDate as revocationDate, a.revocationReason as revocationReason, a.expireDate as expireDate,"
+                + " a.certificateProfileId as certificateProfileId, a.updateTime as updateTime FROM CertificateData a WHERE a.issuerDN=:issuerDN"
+                + " AND (a.updateTime>:updateTime OR (a.updateTime=:updateTime2 AND a.fingerprint>:fingerprint)) ORDER BY a.updateTime, a.fingerprint",
+                "CertificateStatusSubset");
+        query.setParameter("issuerDN", issuerDN);
+        query.setParameter("updateTime", updateTime);
+        query.setParameter("updateTime2", updateTime);
+        query.setParameter("fingerprint", fingerprint);
+        query.setMaxResults(maxResults);
+        return query.getResultList();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<Object[]> findStatusInfoByIssuerDNSerialNumber(final String issuerDN, final String serialNumber) {
+        // Same columns as findStatusInfoByIssuerDNUpdatedAfter, so neither the base64 certificate data is read nor the row protection verified
+        final Query query = entityManager.createNativeQuery("SELECT a.fingerprint as fingerprint, a.serialNumber as serialNumber, a.status as status,"
+                + " a.revocationDate as revocationDate, a.revocationReason as revocationReason, a.expireDate as expireDate,"
+                + " a.certificateProfileId as certificateProfileId, a.updateTime as updateTime FROM CertificateData a"
+                + " WHERE a.issuerDN=:issuerDN AND a.serialNumber=:serialNumber", "CertificateStatusSubset");
+        query.setParameter("issuerDN", issuerDN);
+        query.setParameter("serialNumber", serialNumber);
+        return query.getResultList();
     }
 
     @Override
@@ -585,17 +633,28 @@ public class CertificateDataSessionBean extends BaseCertificateDataSessionBean i
     }
 
     @Override
-    @SuppressWarnings("unchecked")
     public List<Object[]> findExpirationInfo(final Collection<String> cas, final Collection<Integer> certificateProfiles,
             final long activeNotifiedExpireDateMin, final long activeNotifiedExpireDateMax, final long activeExpireDateMin) {
+        return findExpirationInfo(cas, certificateProfiles, activeNotifiedExpireDateMin, activeNotifiedExpireDateMax, activeExpireDateMin, null, 0);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<Object[]> findExpirationInfo(final Collection<String> cas, final Collection<Integer> certificateProfiles,
+            final long activeNotifiedExpireDateMin, final long activeNotifiedExpireDateMax, final long activeExpireDateMin,
+            final String afterFingerprint, final int maxResults) {
         // We don't select the base64 certificate data here, because it may be a LONG data type which we can't simply select, or we don't want to read all the data.
+        // The fingerprint is the primary key, so a chunk can be continued after the last fingerprint of the previous chunk. Unlike an offset, this
+        // works even if the status of the certificates of the previous chunks has been changed so they no longer match.
         final Query query = entityManager.createNativeQuery("SELECT DISTINCT fingerprint as fingerprint, username as username"
                 + " FROM CertificateData WHERE "
                 + "issuerDN IN (:cas) AND "
                 // If the list of certificate profiles is empty, ignore it as a parameter
                 + (!certificateProfiles.isEmpty() ? "certificateProfileId IN (:certificateProfiles) AND" : "")
                 + "(expireDate>:activeNotifiedExpireDateMin) AND " + "(expireDate<:activeNotifiedExpireDateMax) AND (status=:status1"
-                + " OR status=:status2) AND (expireDate>=:activeExpireDateMin OR " + "status=:status3)", "FingerprintUsernameSubset");
+                + " OR status=:status2) AND (expireDate>=:activeExpireDateMin OR " + "status=:status3)"
+                + (afterFingerprint != null ? " AND fingerprint>:afterFingerprint" : "")
+                + (maxResults > 0 ? " ORDER BY fingerprint" : ""), "FingerprintUsernameSubset");
         query.setParameter("cas", cas);
         if(!certificateProfiles.isEmpty()) {
             query.setParameter("certificateProfiles", certificateProfiles);
@@ -606,11 +665,28 @@ public class CertificateDataSessionBean extends BaseCertificateDataSessionBean i
         query.setParameter("status2", CertificateConstants.CERT_NOTIFIEDABOUTEXPIRATION);
         query.setParameter("activeExpireDateMin", activeExpireDateMin);
         query.setParameter("status3", CertificateConstants.CERT_ACTIVE);
+        if (afterFingerprint != null) {
+            query.setParameter("afterFingerprint", afterFingerprint);
+        }
+        if (maxResults > 0) {
+            query.setMaxResults(maxResults);
+        }
         // How to debug log the SQL query:
         // log.debug("findExpirationInfo: "+query.unwrap(org.hibernate.Query.class).getQueryString());
         return query.getResultList();
     }
 
+    @Override
+    public List<CertificateData> findByFingerprints(final Collection<String> fingerprints) {
+        if (fingerprints.isEmpty()) {
+            return new ArrayList<>();
+        }
+        final TypedQuery<CertificateData> query = entityManager.createQuery("SELECT a FROM CertificateData a WHERE a.fingerprint IN (:fingerprints)",
+                CertificateData.class);
+        query.setParameter("fingerprints", fingerprints);
+        return query.getResultList();
+    }
+
     @Override
     public List<CertificateInfo> findOldCertificates(final Collection<String> issuerDns, final Date expiredBefore, final int maxNumberOfResults) {
         final StringBuilder sb = new StringBuilder(SELECT_QUERY_FOR_CERTIFICATEINFO_SUBSET);
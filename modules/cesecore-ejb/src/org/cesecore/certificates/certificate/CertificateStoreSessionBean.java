@@ -25,10 +25,11 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
@@ -48,6 +49,8 @@ import jakarta.ejb.TransactionAttributeType;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
 import jakarta.persistence.Query;
+import jakarta.persistence.TypedQuery;
+import jakarta.transaction.TransactionSynchronizationRegistry;
 
 import org.apache.commons.lang.ArrayUtils;
 import org.apache.commons.lang.StringUtils;
@@ -75,6 +78,7 @@ import org.cesecore.certificates.certificateprofile.CertificateProfileSessionLoc
 import org.cesecore.certificates.crl.RevocationReasons;
 import org.cesecore.certificates.crl.RevokedCertInfo;
 import org.cesecore.certificates.endentity.EndEntityConstants;
+import org.cesecore.certificates.ocsp.cache.OcspResponseCache;
 import org.cesecore.config.CesecoreConfiguration;
 import org.cesecore.config.GlobalCesecoreConfiguration;
 import org.cesecore.config.OcspConfiguration;
@@ -82,6 +86,7 @@ import org.cesecore.configuration.GlobalConfigurationSessionLocal;
 import org.cesecore.internal.InternalResources;
 import org.cesecore.keys.util.CvcKeyTools;
 import org.cesecore.util.LogRedactionUtils;
+import org.cesecore.util.NormalizedDnCache;
 import org.cesecore.util.ValueExtractor;
 import org.ejbca.cvc.PublicKeyEC;
 
@@ -101,6 +106,8 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
     /** Internal localization of logs and errors */
     private static final InternalResources INTRES = InternalResources.getInstance();
     private static final int TIMERID_CACERTIFICATECACHE = 1;
+    /** Number of certificates revoked per transaction by revokeAllCertByCA, at most 1000 since some databases limit the number of values in an IN clause */
+    private static final int REVOKE_ALL_CHUNK_SIZE = 1000;
 
     @PersistenceContext(unitName = CesecoreConfiguration.PERSISTENCE_UNIT)
     private EntityManager entityManager;
@@ -120,6 +127,8 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
     // Myself needs to be looked up in postConstruct
     @Resource
     private SessionContext sessionContext;
+    @Resource
+    private TransactionSynchronizationRegistry registry;
     private CertificateStoreSessionLocal certificateStoreSession;
     /* When the sessionContext is injected, the timerService should be looked up.
      * This is due to the Glassfish EJB verifier complaining.
@@ -267,6 +276,8 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
             certificateData.setRevocationReason(revocationReason.getDatabaseValue());
         }
         entityManager.persist(certificateData);
+        // A response for a certificate that was unknown until now may be cached, e.g. on a VA that the certificate is published to
+        invalidateOcspResponseCache(certificateData.getIssuerDN(), certificateData.getSerialNumber());
         if (doAuditLog) {
             final String serialNo = CertTools.getSerialNumberAsString(incert);
             final String msg = INTRES.getLocalizedMessage("store.storecertwithaccountbindingid", username, certificateData.getFingerprint(), 
@@ -405,7 +416,7 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
             log.trace(">listAllCertificates()");
         }
         // This method was only used from CertificateDataTest and it didn't care about the expireDate, so it will only select fingerprints now.
-        return certificateDataSession.findFingerprintsByIssuerDN(DnComponents.stringToBCDNString(StringTools.strip(issuerdn)));
+        return certificateDataSession.findFingerprintsByIssuerDN(NormalizedDnCache.INSTANCE.getNormalizedDn(StringTools.strip(issuerdn)));
     }
     
     @Override
@@ -413,7 +424,17 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
         if (log.isTraceEnabled()) {
             log.trace(">listRevokedCertInfo()");
         }
-        return certificateDataSession.getRevokedCertInfos(DnComponents.stringToBCDNString(StringTools.strip(issuerDN)), deltaCrl, crlPartitionIndex, lastBaseCrlDate, allowInvalidityDate);
+        return certificateDataSession.getRevokedCertInfos(NormalizedDnCache.INSTANCE.getNormalizedDn(StringTools.strip(issuerDN)), deltaCrl, crlPartitionIndex, lastBaseCrlDate, allowInvalidityDate);
+    }
+
+    @Override
+    public List<RevokedCertInfo> listRevokedCertInfoPage(String issuerDN, boolean deltaCrl, int crlPartitionIndex, long lastBaseCrlDate,
+            boolean allowInvalidityDate, String afterFingerprint, int maxResults) {
+        if (log.isTraceEnabled()) {
+            log.trace(">listRevokedCertInfoPage(" + afterFingerprint + ", " + maxResults + ")");
+        }
+        return certificateDataSession.getRevokedCertInfosPage(NormalizedDnCache.INSTANCE.getNormalizedDn(StringTools.strip(issuerDN)), deltaCrl,
+                crlPartitionIndex, lastBaseCrlDate, allowInvalidityDate, afterFingerprint, maxResults);
     }
 
     @Override
@@ -842,7 +863,7 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
         // Selecting an int column is optimal speed
         final Query query = entityManager.createQuery("SELECT 1 FROM CertificateData a WHERE a.issuerDN=:issuerDN AND a.serialNumber=:serialNumber");
         // First make a DN in our well-known format
-        query.setParameter("issuerDN", DnComponents.stringToBCDNString(StringTools.strip(issuerDN)));
+        query.setParameter("issuerDN", NormalizedDnCache.INSTANCE.getNormalizedDn(StringTools.strip(issuerDN)));
         query.setParameter("serialNumber", serno.toString());
         final boolean ret = query.getResultList().size() > 0;
         if (log.isTraceEnabled()) {
@@ -865,7 +886,7 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
             log.trace(">findCertificateByIssuerAndSerno(), dn:" + issuerDN + ", serno=" + serno);
         }
         // First make a DN in our well-known format
-        final String dn = DnComponents.stringToBCDNString(StringTools.strip(issuerDN));
+        final String dn = NormalizedDnCache.INSTANCE.getNormalizedDn(StringTools.strip(issuerDN));
         if (log.isDebugEnabled()) {
             log.debug("Looking for cert with (transformed)DN: " + LogRedactionUtils.getSubjectDnLogSafe(dn));
         }
@@ -897,7 +918,7 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
     @Override
     public CertificateDataWrapper getCertificateDataByIssuerAndSerno(String issuerDN, BigInteger serno) {
         // First make a DN in our well-known format
-        final String dn = DnComponents.stringToBCDNString(StringTools.strip(issuerDN));
+        final String dn = NormalizedDnCache.INSTANCE.getNormalizedDn(StringTools.strip(issuerDN));
         final List<CertificateData> certs = certificateDataSession.findByIssuerDNSerialNumber(dn, serno.toString());
         if (log.isDebugEnabled()) {
             log.debug("Found "+certs.size()+" cert(s) with (transformed) DN: " + LogRedactionUtils.getSubjectDnLogSafe(dn) + " serialNumber: " + serno.toString());
@@ -923,13 +944,13 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
 
     @Override
     public CertificateInfo findFirstCertificateInfo(final String issuerDN, final BigInteger serno) {
-        return certificateDataSession.findFirstCertificateInfo(DnComponents.stringToBCDNString(issuerDN), serno.toString());
+        return certificateDataSession.findFirstCertificateInfo(NormalizedDnCache.INSTANCE.getNormalizedDn(issuerDN), serno.toString());
     }
 
     @Override
     public int getFirstStatusByIssuerAndSerno(final String issuerDN, final BigInteger serno) {
         final Query query = entityManager.createQuery("SELECT a.status FROM CertificateData a WHERE a.issuerDN=:issuerDN AND a.serialNumber=:serialNumber");
-        query.setParameter("issuerDN", DnComponents.stringToBCDNString(issuerDN));
+        query.setParameter("issuerDN", NormalizedDnCache.INSTANCE.getNormalizedDn(issuerDN));
         query.setParameter("serialNumber", serno.toString());
         final int status;
         @SuppressWarnings("rawtypes")
@@ -975,7 +996,7 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
         if (null == issuerDN || issuerDN.length() <= 0 || null == sernos || sernos.isEmpty()) {
             ret = new ArrayList<>();
         } else {
-            String dn = DnComponents.stringToBCDNString(issuerDN);
+            String dn = NormalizedDnCache.INSTANCE.getNormalizedDn(issuerDN);
             if (log.isDebugEnabled()) {
                 log.debug("Looking for cert with (transformed)DN: " + dn);
             }
@@ -1008,7 +1029,7 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
         if (log.isTraceEnabled()) {
             log.trace(">findUsernameByCertSerno(), serno: " + serno.toString(16) + ", issuerdn: " + issuerdn);
         }
-        final String ret = certificateDataSession.findLastUsernameByIssuerDNSerialNumber(DnComponents.stringToBCDNString(issuerdn), serno.toString());
+        final String ret = certificateDataSession.findLastUsernameByIssuerDNSerialNumber(NormalizedDnCache.INSTANCE.getNormalizedDn(issuerdn), serno.toString());
         if (log.isTraceEnabled()) {
             log.trace("<findUsernameByCertSerno(), ret=" + ret);
         }
@@ -1142,6 +1163,15 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
         return ret;
     }
 
+    @Override
+    public Map<String, Certificate> findCertificatesByFingerprints(final Collection<String> fingerprints) {
+        final Map<String, Certificate> ret = new HashMap<>();
+        for (final CertificateData certificateData : certificateDataSession.findByFingerprints(fingerprints)) {
+            ret.put(certificateData.getFingerprint(), certificateData.getCertificate(this.entityManager));
+        }
+        return ret;
+    }
+
     @Override
     public CertificateWrapper findCertificateByFingerprintRemote(String fingerprint) {
         if (log.isTraceEnabled()) {
@@ -1189,7 +1219,7 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
         List<Certificate> ret;
         // FIXME: These queries can easily make the server run out of memory on a large database
         if (null != issuerDN && issuerDN.length() > 0) {
-            ret = certificateDataSession.findActiveCertificatesByTypeAndIssuer(ctypes, DnComponents.stringToBCDNString(issuerDN));
+            ret = certificateDataSession.findActiveCertificatesByTypeAndIssuer(ctypes, NormalizedDnCache.INSTANCE.getNormalizedDn(issuerDN));
         } else {
             ret = certificateDataSession.findActiveCertificatesByType(ctypes);
         }
@@ -1330,6 +1360,7 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
             } else {
                 entityManager.merge(certificateData);
             }
+            invalidateOcspResponseCache(issuerDn, certificateData.getSerialNumber());
         }
         if (log.isTraceEnabled()) {
             log.trace("<private setRevokeStatusNoAuth(), issuerdn=" + issuerDn + ", serno=" + serialNumber);
@@ -1338,32 +1369,17 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
     }
 
     @Override
-    @TransactionAttribute(TransactionAttributeType.REQUIRED)
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
     public void revokeAllCertByCA(AuthenticationToken admin, String issuerdn, int reason) throws AuthorizationDeniedException {
-        int revoked = 0;
-
         // Must be authorized to CA in order to change status is certificates issued by the CA
-        String bcdn = DnComponents.stringToBCDNString(issuerdn);
-    	int caid = bcdn.hashCode();
+        String bcdn = NormalizedDnCache.INSTANCE.getNormalizedDn(issuerdn);
+        int caid = NormalizedDnCache.INSTANCE.getCaId(bcdn);
         authorizedToCA(admin, caid);
         try {
-            final int maxRows = 10000;
-            int firstResult = 0;
-            // Revoking all non revoked certificates.
-            // Update 10000 records at a time
-            List<CertificateData> list = findAllNonRevokedCertificates(bcdn, firstResult, maxRows);
-            while (list.size() > 0) {
-            	for (int i = 0; i<list.size(); i++) {
-                	CertificateData d = list.get(i);
-                	d.setStatus(CertificateConstants.CERT_REVOKED);
-                	d.setRevocationDate(System.currentTimeMillis());
-                	d.setRevocationReason(reason);
-                	revoked++;
-            	}
-            	firstResult += maxRows;
-            	list = findAllNonRevokedCertificates(bcdn, firstResult, maxRows);
-            }
+            final long startTime = System.currentTimeMillis();
+            final int revoked = revokeAllInChunks(bcdn, reason, startTime, REVOKE_ALL_CHUNK_SIZE);
             final String msg = INTRES.getLocalizedMessage("store.revokedallbyca", issuerdn, revoked, reason);
+            log.info(msg + " Time: " + (System.currentTimeMillis() - startTime) + " ms.");
     		Map<String, Object> details = new LinkedHashMap<>();
     		details.put("msg", msg);
     		logSession.log(EventTypes.CERT_REVOKED, EventStatus.SUCCESS, ModuleTypes.CERTIFICATE, ServiceTypes.CORE, admin.toString(), String.valueOf(caid), null, null, details);
@@ -1375,19 +1391,93 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
     }
 
     /**
-     * @return the certificates that have CertificateConstants.CERT_REVOKED.
-     * @param firstResult pagination variable, 0 for the first call, insrease by maxRows for further calls if return value is == maxRows
+     * Revokes all non revoked certificates of an issuer, a chunk at a time in separate transactions, so the table is not locked for the whole run.
+     * The cached OCSP responses of the issuer are invalidated after each committed chunk. If a chunk fails, the chunks before it stay
+     * revoked, and running again resumes with the certificates that are left, since the revoked certificates drop out of the query.
+     *
+     * @param issuerDn normalized issuer DN
+     * @return the number of revoked certificates
+     */
+    int revokeAllInChunks(final String issuerDn, final int reason, final long revocationDate, final int chunkSize) {
+        final long startTime = System.currentTimeMillis();
+        int revoked = 0;
+        int chunks = 0;
+        // Pages are read after the last fingerprint instead of with an offset, since the revoked certificates drop out of the result.
+        String afterFingerprint = null;
+        List<String> fingerprints;
+        try {
+            while (!(fingerprints = findAllNonRevokedFingerprints(issuerDn, afterFingerprint, chunkSize)).isEmpty()) {
+                // needs to call using "certificateStoreSession." in order to honor the transaction annotations
+                revoked += certificateStoreSession.revokeCertificatesInTransaction(issuerDn, fingerprints, reason, revocationDate);
+                // The chunk is committed when the call returns, so requests after this won't get a cached response with the old status
+                OcspResponseCache.INSTANCE.invalidateIssuer(issuerDn);
+                chunks++;
+                afterFingerprint = fingerprints.get(fingerprints.size() - 1);
+                if (log.isDebugEnabled()) {
+                    log.debug("Revoked " + revoked + " certificates from issuer '" + issuerDn + "' in " + chunks + " chunks, "
+                            + (System.currentTimeMillis() - startTime) + " ms.");
+                }
+            }
+        } catch (RuntimeException e) {
+            log.info("Revoked " + revoked + " certificates from issuer '" + issuerDn + "' in " + chunks + " chunks before the error.");
+            throw e;
+        }
+        return revoked;
+    }
+
+    @Override
+    @TransactionAttribute(TransactionAttributeType.REQUIRED)
+    public int revokeCertificatesInTransaction(final String issuerDn, final Collection<String> fingerprints, final int reason, final long revocationDate) {
+        if (fingerprints.isEmpty()) {
+            return 0;
+        }
+        final long now = System.currentTimeMillis();
+        if (CesecoreConfiguration.useDatabaseIntegrityProtection(CertificateData.class.getSimpleName())) {
+            // The row protection has to be calculated for each row, so the rows can't be updated with a single statement
+            int count = 0;
+            for (final CertificateData certificateData : certificateDataSession.findByFingerprints(fingerprints)) {
+                if (issuerDn.equals(certificateData.getIssuerDN()) && certificateData.getStatus() != CertificateConstants.CERT_ARCHIVED
+                        && certificateData.getStatus() != CertificateConstants.CERT_REVOKED) {
+                    certificateData.setStatus(CertificateConstants.CERT_REVOKED);
+                    certificateData.setRevocationDate(revocationDate);
+                    certificateData.setRevocationReason(reason);
+                    certificateData.setUpdateTime(now);
+                    count++;
+                }
+            }
+            return count;
+        }
+        // The update time is set so that the change is picked up by anything polling for changed rows, e.g. the OCSP revocation status index
+        final Query query = entityManager.createQuery("UPDATE CertificateData a SET a.status=:status, a.revocationDate=:revocationDate,"
+                + " a.revocationReason=:reason, a.updateTime=:updateTime, a.rowVersion=a.rowVersion+1"
+                + " WHERE a.fingerprint IN (:fingerprints) AND a.issuerDN=:issuerDN AND a.status NOT IN (:statusExcluded)");
+        query.setParameter("status", CertificateConstants.CERT_REVOKED);
+        query.setParameter("revocationDate", revocationDate);
+        query.setParameter("reason", reason);
+        query.setParameter("updateTime", now);
+        query.setParameter("fingerprints", fingerprints);
+        query.setParameter("issuerDN", issuerDn);
+        query.setParameter("statusExcluded", Arrays.asList(CertificateConstants.CERT_ARCHIVED, CertificateConstants.CERT_REVOKED));
+        return query.executeUpdate();
+    }
+
+    /**
+     * @return the fingerprints of the unexpired certificates that are neither CertificateConstants.CERT_REVOKED nor CERT_ARCHIVED, in fingerprint order.
+     * @param issuerDN normalized issuer DN
+     * @param afterFingerprint pagination variable, null for the first call, the last fingerprint of the previous result for further calls
      * @param maxRows pagination variable max number of rows that should be returned, used in order to make it somewhat efficient on large data
      *            volumes
      * */
-    @SuppressWarnings("unchecked")
-    private List<CertificateData> findAllNonRevokedCertificates(String issuerDN, int firstResult, int maxRows) {
-        final Query query = entityManager.createQuery("SELECT a FROM CertificateData a WHERE a.issuerDN=:issuerDN AND a.status  NOT IN (:statusExcluded) AND " +
-                " a.expireDate > :currentTime");
+    private List<String> findAllNonRevokedFingerprints(String issuerDN, String afterFingerprint, int maxRows) {
+        final TypedQuery<String> query = entityManager.createQuery("SELECT a.fingerprint FROM CertificateData a WHERE a.issuerDN=:issuerDN"
+                + " AND a.status NOT IN (:statusExcluded) AND a.expireDate > :currentTime"
+                + (afterFingerprint == null ? "" : " AND a.fingerprint > :afterFingerprint") + " ORDER BY a.fingerprint", String.class);
         query.setParameter("issuerDN", issuerDN);
         query.setParameter("statusExcluded", Arrays.asList(CertificateConstants.CERT_ARCHIVED, CertificateConstants.CERT_REVOKED));
         query.setParameter("currentTime", System.currentTimeMillis());
-        query.setFirstResult(firstResult);
+        if (afterFingerprint != null) {
+            query.setParameter("afterFingerprint", afterFingerprint);
+        }
         query.setMaxResults(maxRows);
         return query.getResultList();
     }
@@ -1399,20 +1489,18 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
             log.trace(">isRevoked(), dn:" + issuerDN + ", serno=" + serno.toString(16));
         }
         // First make a DN in our well-known format
-        String dn = DnComponents.stringToBCDNString(issuerDN);
+        String dn = NormalizedDnCache.INSTANCE.getNormalizedDn(issuerDN);
         boolean ret = false;
         try {
-            Collection<CertificateData> coll = certificateDataSession.findByIssuerDNSerialNumber(dn, serno.toString());
-            if (coll.size() > 0) {
-                if (coll.size() > 1) {
+            final List<Object[]> statusInfos = findStatusInfo(dn, serno);
+            if (statusInfos.size() > 0) {
+                if (statusInfos.size() > 1) {
                     final String msg = INTRES.getLocalizedMessage("store.errorseveralissuerserno", issuerDN, serno.toString(16));
                     log.error(msg);
                 }
-                Iterator<CertificateData> iter = coll.iterator();
-                while (iter.hasNext()) {
-                    CertificateData data = iter.next();
+                for (final Object[] statusInfo : statusInfos) {
                     // if any of the certificates with this serno is revoked, return true
-                    if (data.getStatus() == CertificateConstants.CERT_REVOKED) {
+                    if (ValueExtractor.extractIntValue(statusInfo[2]) == CertificateConstants.CERT_REVOKED) {
                         ret = true;
                         break;
                     }
@@ -1435,31 +1523,33 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
 
     @Override
     public CertificateStatus getStatus(String issuerDN, BigInteger serno) {
-        if (log.isTraceEnabled()) {
-            log.trace(">getStatus(), dn:" + issuerDN + ", serno=" + serno.toString(16));
-        }
         // First make a DN in our well-known format
-        final String dn = DnComponents.stringToBCDNString(issuerDN);
+        return getStatusForNormalizedIssuerDn(NormalizedDnCache.INSTANCE.getNormalizedDn(issuerDN), serno);
+    }
 
+    @Override
+    public CertificateStatus getStatusForNormalizedIssuerDn(final String issuerDn, final BigInteger serno) {
+        if (log.isTraceEnabled()) {
+            log.trace(">getStatus(), dn:" + issuerDn + ", serno=" + serno.toString(16));
+        }
         try {
-            Collection<CertificateData> coll = certificateDataSession.findByIssuerDNSerialNumber(dn, serno.toString());
-
-
-            if (coll.size() > 1) {
-                final String msg = INTRES.getLocalizedMessage("store.errorseveralissuerserno", issuerDN, serno.toString(16));
+            final List<Object[]> statusInfos = findStatusInfo(issuerDn, serno);
+            if (statusInfos.size() > 1) {
+                final String msg = INTRES.getLocalizedMessage("store.errorseveralissuerserno", issuerDn, serno.toString(16));
                 log.error(msg);
             }
-
-            for(CertificateData data : coll) {
-                final CertificateStatus result = CertificateStatusHelper.getCertificateStatus(data);
+            for (final Object[] statusInfo : statusInfos) {
+                final CertificateStatus result = CertificateStatusHelper.getCertificateStatus(ValueExtractor.extractIntValue(statusInfo[2]),
+                        ValueExtractor.extractLongValue(statusInfo[3]), ValueExtractor.extractIntValue(statusInfo[4]),
+                        statusInfo[6] == null ? null : ValueExtractor.extractIntValue(statusInfo[6]));
                 if (log.isTraceEnabled()) {
                     log.trace("<getStatus() returned " + result + " for cert number " + serno.toString(16));
                 }
-                result.setExpirationDate(data.getExpireDate());
+                result.setExpirationDate(ValueExtractor.extractLongValue(statusInfo[5]));
                 return result;
             }
             if (log.isTraceEnabled()) {
-                log.trace("<getStatus() did not find certificate with dn " + dn + " and serno " + serno.toString(16));
+                log.trace("<getStatus() did not find certificate with dn " + issuerDn + " and serno " + serno.toString(16));
             }
         } catch (Exception e) {
             throw new EJBException(e);
@@ -1467,13 +1557,32 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
         return CertificateStatus.NOT_AVAILABLE;
     }
 
+    /**
+     * Reads only the status columns of the certificates, unless the row protection of CertificateData must be verified, which requires the
+     * whole entity.
+     *
+     * @param issuerDn normalized issuer DN
+     * @return the columns of {@link CertificateDataSessionLocal#findStatusInfoByIssuerDNSerialNumber(String, String)}
+     */
+    private List<Object[]> findStatusInfo(final String issuerDn, final BigInteger serno) {
+        if (!CesecoreConfiguration.useDatabaseIntegrityVerification(CertificateData.class.getSimpleName())) {
+            return certificateDataSession.findStatusInfoByIssuerDNSerialNumber(issuerDn, serno.toString());
+        }
+        final List<Object[]> ret = new ArrayList<>();
+        for (final CertificateData data : certificateDataSession.findByIssuerDNSerialNumber(issuerDn, serno.toString())) {
+            ret.add(new Object[] { data.getFingerprint(), data.getSerialNumber(), data.getStatus(), data.getRevocationDate(), data.getRevocationReason(),
+                    data.getExpireDate(), data.getCertificateProfileId(), data.getUpdateTime() });
+        }
+        return ret;
+    }
+
     @Override
     public CertificateStatusHolder getCertificateAndStatus(String issuerDN, BigInteger serno) {
         if (log.isTraceEnabled()) {
             log.trace(">getCertificateAndStatus(), dn:" + issuerDN + ", serno=" + serno.toString(16));
         }
         // First make a DN in our well-known format
-        final String dn = DnComponents.stringToBCDNString(issuerDN);
+        final String dn = NormalizedDnCache.INSTANCE.getNormalizedDn(issuerDN);
         Collection<CertificateData> collection = certificateDataSession.findByIssuerDNSerialNumber(dn, serno.toString());
         if (collection.size() > 1) {
             final String msg = INTRES.getLocalizedMessage("store.errorseveralissuerserno", issuerDN, serno.toString(16));
@@ -1500,17 +1609,25 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
                 activeExpireDateMin);
     }
 
+    @Override
+    public List<Object[]> findExpirationInfo(final Collection<String> cas, final Collection<Integer> certificateProfiles,
+            final long activeNotifiedExpireDateMin, final long activeNotifiedExpireDateMax, final long activeExpireDateMin, final String afterFingerprint,
+            final int maxResults) {
+        return certificateDataSession.findExpirationInfo(cas, certificateProfiles, activeNotifiedExpireDateMin, activeNotifiedExpireDateMax,
+                activeExpireDateMin, afterFingerprint, maxResults);
+    }
+
     private void changeStatus(AuthenticationToken admin, CertificateData certificateData, int status) throws AuthorizationDeniedException {
         if (log.isDebugEnabled()) {
             log.debug("Set status " + status + " for certificate with fp: " + certificateData.getFingerprint());
         }
 
         // Must be authorized to CA in order to change status is certificates issued by the CA
-        String bcdn = DnComponents.stringToBCDNString(certificateData.getIssuerDN());
-        int caid = bcdn.hashCode();
+        int caid = NormalizedDnCache.INSTANCE.getCaId(certificateData.getIssuerDN());
         authorizedToCA(admin, caid);
 
         certificateData.setStatus(status);
+        invalidateOcspResponseCache(certificateData.getIssuerDN(), certificateData.getSerialNumber());
         final Certificate certificate = certificateData.getCertificate(this.entityManager);
         String serialNo;
         if (certificate==null) {
@@ -1544,6 +1661,83 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
         return (certificateData != null);
     }
 
+    @Override
+    @TransactionAttribute(TransactionAttributeType.REQUIRED)
+    public int setNotifiedAboutExpirationStatus(final AuthenticationToken admin, final Collection<String> fingerprints) throws AuthorizationDeniedException {
+        if (fingerprints.isEmpty()) {
+            return 0;
+        }
+        final int status = CertificateConstants.CERT_NOTIFIEDABOUTEXPIRATION;
+        if (CesecoreConfiguration.useDatabaseIntegrityProtection(CertificateData.class.getSimpleName())) {
+            // The row protection has to be calculated for each row, so the rows can't be updated with a single statement
+            int count = 0;
+            for (final CertificateData certificateData : certificateDataSession.findByFingerprints(fingerprints)) {
+                if (certificateData.getStatus() == CertificateConstants.CERT_ACTIVE || certificateData.getStatus() == status) {
+                    changeStatus(admin, certificateData, status);
+                    count++;
+                }
+            }
+            return count;
+        }
+        // Only read the columns needed for authorization and audit logging, and not the certificates
+        final Query selectQuery = entityManager.createQuery("SELECT a.fingerprint, a.issuerDN, a.username, a.serialNumber, a.subjectDN, a.endEntityProfileId"
+                + " FROM CertificateData a WHERE a.fingerprint IN (:fingerprints) AND (a.status=:active OR a.status=:notified)");
+        selectQuery.setParameter("fingerprints", fingerprints);
+        selectQuery.setParameter("active", CertificateConstants.CERT_ACTIVE);
+        selectQuery.setParameter("notified", status);
+        @SuppressWarnings("unchecked")
+        final List<Object[]> rows = selectQuery.getResultList();
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        // Must be authorized to all CAs before anything is changed
+        final Map<String, Integer> caIds = new HashMap<>();
+        for (final Object[] row : rows) {
+            final String issuerDn = (String) row[1];
+            if (!caIds.containsKey(issuerDn)) {
+                final int caId = NormalizedDnCache.INSTANCE.getCaId(issuerDn);
+                authorizedToCA(admin, caId);
+                caIds.put(issuerDn, caId);
+            }
+        }
+        // Certificates that have been revoked since they were found are not changed
+        final Query updateQuery = entityManager.createQuery("UPDATE CertificateData a SET a.status=:status, a.rowVersion=a.rowVersion+1"
+                + " WHERE a.fingerprint IN (:fingerprints) AND (a.status=:active OR a.status=:notified)");
+        updateQuery.setParameter("status", status);
+        updateQuery.setParameter("fingerprints", fingerprints);
+        updateQuery.setParameter("active", CertificateConstants.CERT_ACTIVE);
+        updateQuery.setParameter("notified", status);
+        final int count = updateQuery.executeUpdate();
+        for (final Object[] row : rows) {
+            final String fingerprint = (String) row[0];
+            final String issuerDn = (String) row[1];
+            final String username = (String) row[2];
+            final String serialNo = getSerialNumberHex((String) row[3]);
+            final Integer endEntityProfileId = (Integer) row[5];
+            final String logSafeSubjectDn = LogRedactionUtils.getSubjectDnLogSafe(StringUtils.defaultString((String) row[4]),
+                    endEntityProfileId == null ? 0 : endEntityProfileId);
+            final String caId = String.valueOf(caIds.get(issuerDn));
+            if (log.isDebugEnabled()) {
+                log.debug("Set status " + status + " for certificate with fp: " + fingerprint);
+            }
+            final String msg = INTRES.getLocalizedMessage("store.setstatus", username, fingerprint, status, logSafeSubjectDn, issuerDn, serialNo);
+            final Map<String, Object> details = new LinkedHashMap<>();
+            details.put("msg", msg);
+            logSession.log(EventTypes.CERT_CHANGEDSTATUS, EventStatus.SUCCESS, ModuleTypes.CERTIFICATE, ServiceTypes.CORE, admin.toString(), caId,
+                    serialNo, username, details);
+        }
+        return count;
+    }
+
+    /** @return the decimal serial number as upper case hex, as in the audit log of a single status change */
+    private static String getSerialNumberHex(final String serialNumber) {
+        try {
+            return new BigInteger(serialNumber, 10).toString(16).toUpperCase(Locale.ROOT);
+        } catch (NumberFormatException e) {
+            return serialNumber;
+        }
+    }
+
     @Override
     @TransactionAttribute(TransactionAttributeType.REQUIRED)
     public void setRolloverDoneStatus(AuthenticationToken admin, String fingerprint) throws IllegalArgumentException, AuthorizationDeniedException {
@@ -1813,6 +2007,23 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
             // Refuse to update a normal entry with this method
         	throw new UnsupportedOperationException("Only limited certificate entries can be updated using this method.");
         }
+        invalidateOcspResponseCache(issuerDn, serialNumber.toString());
+    }
+
+    /**
+     * Removes the cached OCSP responses for a certificate once the current transaction has committed, since its status has changed.
+     *
+     * @param issuerDn issuer DN of the certificate
+     * @param serialNumber decimal serial number, as stored in CertificateData
+     */
+    private void invalidateOcspResponseCache(final String issuerDn, final String serialNumber) {
+        if (OcspResponseCache.INSTANCE.isEnabled()) {
+            try {
+                OcspResponseCache.INSTANCE.invalidateAfterCommit(registry, NormalizedDnCache.INSTANCE.getNormalizedDn(issuerDn), new BigInteger(serialNumber));
+            } catch (NumberFormatException e) {
+                // Not an X.509 certificate, e.g. a CV certificate, so there are no OCSP responses for it
+            }
+        }
     }
 
     @Override
@@ -47,6 +47,7 @@ import org.cesecore.certificates.certificateprofile.CertificateProfile;
 import org.cesecore.certificates.certificateprofile.CertificateProfileSessionLocal;
 import org.cesecore.certificates.crl.RevocationReasons;
 import org.cesecore.certificates.crl.RevokedCertInfo;
+import org.cesecore.certificates.crl.RevokedCertInfoPages;
 import org.cesecore.certificates.endentity.EndEntityConstants;
 import org.cesecore.config.CesecoreConfiguration;
 import org.cesecore.internal.InternalResources;
@@ -216,6 +217,20 @@ public class NoConflictCertificateStoreSessionBean implements NoConflictCertific
         }
         return RevokedCertInfo.mergeByDateAndStatus(revokedInCertData, revokedInNoConflictData, lastBaseCrlDate);
     }
+
+    @Override
+    public Collection<RevokedCertInfo> listRevokedCertInfoInPages(String issuerDN, boolean deltaCrl, int crlPartitionIndex, long lastBaseCrlDate,
+            boolean keepExpiredCertsOnCrl, boolean allowInvalidityDate) {
+        final Collection<RevokedCertInfo> revokedInNoConflictData = noConflictCertificateDataSession.getRevokedCertInfosWithDuplicates(issuerDN, deltaCrl,
+                crlPartitionIndex, lastBaseCrlDate, keepExpiredCertsOnCrl, allowInvalidityDate);
+        if (!revokedInNoConflictData.isEmpty()) {
+            // Entries of the same certificate in both tables are merged by date and status, which needs all entries
+            return listRevokedCertInfo(issuerDN, deltaCrl, crlPartitionIndex, lastBaseCrlDate, keepExpiredCertsOnCrl, allowInvalidityDate);
+        }
+        return RevokedCertInfoPages.of((afterFingerprint, maxResults) -> certificateStoreSession.listRevokedCertInfoPage(issuerDN, deltaCrl,
+                crlPartitionIndex, lastBaseCrlDate, allowInvalidityDate, afterFingerprint, maxResults),
+                CesecoreConfiguration.getDatabaseRevokedCertInfoFetchSize());
+    }
     
     /**
      * Locates the most recent entry in NoConflictCertificateData for a given issuerdn/serial number combination.
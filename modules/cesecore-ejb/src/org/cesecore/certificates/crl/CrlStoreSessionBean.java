@@ -41,11 +41,10 @@ import org.cesecore.authorization.control.StandardRules;
 import org.cesecore.certificates.certificate.CertificateConstants;
 import org.cesecore.config.CesecoreConfiguration;
 import org.cesecore.internal.InternalResources;
+import org.cesecore.util.NormalizedDnCache;
 import org.cesecore.util.QueryResultWrapper;
 import org.cesecore.util.ValueExtractor;
 
-import com.keyfactor.util.certificate.DnComponents;
-
 /**
  * The name is kept for historic reasons. This Session Bean is used for creating and retrieving CRLs and information about CRLs. CRLs are signed using
  * SignSessionBean.
@@ -83,8 +82,7 @@ public class CrlStoreSessionBean implements CrlStoreSessionLocal, CrlStoreSessio
             log.trace(">storeCRL(" + cafp + ", " + number + ")");
         }
         // Check that user is authorized to the CA that issued this CRL
-        String bcdn = DnComponents.stringToBCDNString(issuerDN);
-        int caid = bcdn.hashCode();
+        int caid = NormalizedDnCache.INSTANCE.getCaId(issuerDN);
         authorizedToCA(admin, caid);
 
         try {
@@ -97,6 +95,7 @@ public class CrlStoreSessionBean implements CrlStoreSessionLocal, CrlStoreSessio
             }
             CRLData data = new CRLData(incrl, number, crlPartitionIndex, issuerDN, thisUpdate, nextUpdate, cafp, deltaCRLIndicator);
             this.entityManager.persist(data);
+            CrlUpdateNotifier.INSTANCE.notifyCrlStored(data.getIssuerDN(), crlPartitionIndex, number, deltaCRL);
             String msg = intres.getLocalizedMessage("store.storecrl", Integer.valueOf(number), data.getFingerprint(), data.getIssuerDN());
             Map<String, Object> details = new LinkedHashMap<>();
             details.put("msg", msg);
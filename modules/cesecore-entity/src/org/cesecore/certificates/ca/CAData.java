@@ -14,8 +14,6 @@ package org.cesecore.certificates.ca;
 
 import java.io.IOException;
 import java.io.Serializable;
-import java.io.UnsupportedEncodingException;
-import java.nio.charset.StandardCharsets;
 import java.security.cert.Certificate;
 import java.util.Date;
 import java.util.LinkedHashMap;
@@ -34,7 +32,7 @@ import org.cesecore.dbprotection.ProtectedData;
 import org.cesecore.dbprotection.ProtectionStringBuilder;
 import org.cesecore.util.Base64GetHashMap;
 import org.cesecore.util.Base64PutHashMap;
-import org.cesecore.util.SecureXMLDecoder;
+import org.cesecore.util.CompactDataMapSerializer;
 
 import com.keyfactor.util.CertTools;
 
@@ -183,8 +181,8 @@ public class CAData extends ProtectedData implements Serializable {
 
 	@Transient
 	public LinkedHashMap<Object, Object> getDataMap() {
-        try (SecureXMLDecoder decoder = new SecureXMLDecoder(new java.io.ByteArrayInputStream(getData().getBytes(StandardCharsets.UTF_8)))) {
-            final Map<?, ?> h = (Map<?, ?>)decoder.readObject();
+        try {
+            final Map<?, ?> h = (Map<?, ?>) CompactDataMapSerializer.decode(getData());
             // Handle Base64 encoded string values
             @SuppressWarnings("unchecked")
             final LinkedHashMap<Object, Object> dataMap = new Base64GetHashMap(h);
@@ -201,23 +199,15 @@ public class CAData extends ProtectedData implements Serializable {
     @Transient
     @SuppressWarnings({"rawtypes", "unchecked"})
 	public void setDataMap(final LinkedHashMap<Object, Object> dataMap) {
-        try {
-            // We must base64 encode string for UTF safety
-            final LinkedHashMap<?, ?> a = new Base64PutHashMap();
-            a.putAll((LinkedHashMap)dataMap);
-            final java.io.ByteArrayOutputStream baos = new java.io.ByteArrayOutputStream();
-            final java.beans.XMLEncoder encoder = new java.beans.XMLEncoder(baos);
-            encoder.writeObject(a);
-            encoder.close();
-            final String data = baos.toString("UTF8");
-            if (log.isDebugEnabled()) {
-                log.debug("Saving CA data with length: "+data.length()+" for CA.");
-            }
-            setData(data);
-            setUpdateTime(System.currentTimeMillis());
-        } catch (UnsupportedEncodingException e) {
-            throw new RuntimeException(e);
+        // We must base64 encode string for UTF safety
+        final LinkedHashMap<?, ?> a = new Base64PutHashMap();
+        a.putAll((LinkedHashMap)dataMap);
+        final String data = CompactDataMapSerializer.encode(a);
+        if (log.isDebugEnabled()) {
+            log.debug("Saving CA data with length: "+data.length()+" for CA.");
         }
+        setData(data);
+        setUpdateTime(System.currentTimeMillis());
 	}
 
 	//
@@ -98,6 +98,15 @@ import org.cesecore.util.SshCertificateUtils;
                 @ColumnResult(name = "subjectKeyId"),
                 @ColumnResult(name = "subjectAltName"),
                 @ColumnResult(name = "accountBindingId") }),
+        @SqlResultSetMapping(name = "CertificateStatusSubset", columns = {
+                @ColumnResult(name = "fingerprint"),
+                @ColumnResult(name = "serialNumber"),
+                @ColumnResult(name = "status"),
+                @ColumnResult(name = "revocationDate"),
+                @ColumnResult(name = "revocationReason"),
+                @ColumnResult(name = "expireDate"),
+                @ColumnResult(name = "certificateProfileId"),
+                @ColumnResult(name = "updateTime") }),
         @SqlResultSetMapping(name = "FingerprintUsernameSubset", columns = {
                 @ColumnResult(name = "fingerprint"),
                 @ColumnResult(name = "username") }) })
@@ -35,14 +35,17 @@ public abstract class CertificateStatusHelper {
         if (certificateData == null) {
             return CertificateStatus.NOT_AVAILABLE;
         }
-        final int certProfileId;
-        {
-            final Integer tmp = certificateData.getCertificateProfileId();
-            certProfileId = tmp != null ? tmp.intValue() : CertificateProfileConstants.CERTPROFILE_NO_PROFILE;
-        }
-        final int status = certificateData.getStatus();
-        final int revReason = certificateData.getRevocationReason();
-        final long revDate = certificateData.getRevocationDate();
+        return getCertificateStatus(certificateData.getStatus(), certificateData.getRevocationDate(), certificateData.getRevocationReason(),
+                certificateData.getCertificateProfileId());
+    }
+
+    /**
+     * Same as {@link #getCertificateStatus(BaseCertificateData)}, but from the columns of CertificateData, for when only those columns were read.
+     * 
+     * @param certificateProfileId the certificate profile ID, or null if it is not known
+     */
+    public static CertificateStatus getCertificateStatus(final int status, final long revDate, final int revReason, final Integer certificateProfileId) {
+        final int certProfileId = certificateProfileId != null ? certificateProfileId.intValue() : CertificateProfileConstants.CERTPROFILE_NO_PROFILE;
         if (status == CertificateConstants.CERT_REVOKED) {
             return new CertificateStatus(CertificateStatus.REVOKED.toString(), revDate, revReason, certProfileId);
         }
@@ -60,8 +60,15 @@ import org.cesecore.dbprotection.ProtectionStringBuilder;
                                   "     SELECT serialNumber as maxSerialNumber, MAX(producedAt) as maximumProducedAt FROM OcspResponseData GROUP BY serialNumber" +
                                   ") maxProducedAtTable " +
                                   "ON ocsp.serialNumber = maxProducedAtTable.maxSerialNumber AND ocsp.producedAt = maxProducedAtTable.maximumProducedAt " +
-                                  "WHERE cAId = :caId AND ocsp.nextUpdate <= :expirationDate",
+                                  "WHERE cAId = :caId AND ocsp.nextUpdate <= :expirationDate " +
+                                  "ORDER BY ocsp.nextUpdate ASC",
                           resultSetMapping = "OcspResponseData"),
+        @NamedNativeQuery(name = OcspResponseData.COUNT_EXPIRING_OCSP_DATA_BY_CAID,
+                          query = "SELECT COUNT(*) FROM OcspResponseData ocsp INNER JOIN (" +
+                                  "     SELECT serialNumber as maxSerialNumber, MAX(producedAt) as maximumProducedAt FROM OcspResponseData GROUP BY serialNumber" +
+                                  ") maxProducedAtTable " +
+                                  "ON ocsp.serialNumber = maxProducedAtTable.maxSerialNumber AND ocsp.producedAt = maxProducedAtTable.maximumProducedAt " +
+                                  "WHERE cAId = :caId AND ocsp.nextUpdate <= :expirationDate"),
 
         // ORACLE   : It doesn't support deleting directly using joins and subqueries.
         // MARIADB  : Current version requires another subquery "SELECT latestResponses.id FROM" when querying and deleting from the same table.
@@ -114,6 +121,7 @@ import org.cesecore.dbprotection.ProtectionStringBuilder;
 public class OcspResponseData extends ProtectedData implements Serializable {
 
     public static final String FIND_EXPIRING_OCPS_DATA_BY_CAID = "OcspResponseData.findExpiringOcpsDataByCaId";
+    public static final String COUNT_EXPIRING_OCSP_DATA_BY_CAID = "OcspResponseData.countExpiringOcspDataByCaId";
     public static final String DELETE_OLD_OCSP_DATA_BY_CAID = "OcspResponseData.deleteOldOcspDataByCaId";
     public static final String DELETE_OLD_OCSP_DATA = "OcspResponseData.deleteOldOcspData";
 
@@ -12,12 +12,8 @@
  *************************************************************************/
 package org.cesecore.roles;
 
-import java.beans.XMLEncoder;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.Serializable;
-import java.nio.charset.StandardCharsets;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
@@ -35,7 +31,7 @@ import org.cesecore.dbprotection.ProtectedData;
 import org.cesecore.dbprotection.ProtectionStringBuilder;
 import org.cesecore.util.Base64GetHashMap;
 import org.cesecore.util.Base64PutHashMap;
-import org.cesecore.util.SecureXMLDecoder;
+import org.cesecore.util.CompactDataMapSerializer;
 
 /**
  * Represents a role.
@@ -101,9 +97,9 @@ public class RoleData extends ProtectedData implements Serializable {
     @Transient
     @SuppressWarnings("unchecked")
     public LinkedHashMap<Object, Object> getDataMap() {
-        try (final SecureXMLDecoder decoder = new SecureXMLDecoder(new ByteArrayInputStream(getRawData().getBytes(StandardCharsets.UTF_8)));) {
+        try {
             // Handle Base64 encoded string values
-            return new Base64GetHashMap((Map<?, ?>)decoder.readObject());
+            return new Base64GetHashMap((Map<?, ?>) CompactDataMapSerializer.decode(getRawData()));
         } catch (IOException e) {
             final String msg = "Failed to parse data map for role '" + roleName + "': " + e.getMessage();
             if (log.isDebugEnabled()) {
@@ -115,12 +111,8 @@ public class RoleData extends ProtectedData implements Serializable {
 
     @Transient
     public void setDataMap(final LinkedHashMap<Object, Object> dataMap) {
-        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        try (final XMLEncoder encoder = new XMLEncoder(baos);){
-            // We must base64 encode string for UTF safety
-            encoder.writeObject(new Base64PutHashMap(dataMap));
-        }
-        setRawData(new String(baos.toByteArray(), StandardCharsets.UTF_8));
+        // We must base64 encode string for UTF safety
+        setRawData(CompactDataMapSerializer.encode(new Base64PutHashMap(dataMap)));
     }
 
     @Transient
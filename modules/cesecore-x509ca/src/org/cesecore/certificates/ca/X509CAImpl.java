@@ -100,11 +100,9 @@ import org.bouncycastle.asn1.x509.KeyUsage;
 import org.bouncycastle.asn1.x509.SubjectAltPublicKeyInfo;
 import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
 import org.bouncycastle.asn1.x9.X9ObjectIdentifiers;
-import org.bouncycastle.cert.CertException;
 import org.bouncycastle.cert.CertIOException;
 import org.bouncycastle.cert.X509CRLHolder;
 import org.bouncycastle.cert.X509CertificateHolder;
-import org.bouncycastle.cert.X509v2CRLBuilder;
 import org.bouncycastle.cert.X509v3CertificateBuilder;
 import org.bouncycastle.cert.jcajce.JcaX509CertificateHolder;
 import org.bouncycastle.cert.jcajce.JcaX509ExtensionUtils;
@@ -151,6 +149,7 @@ import org.cesecore.certificates.certificatetransparency.CTLogInfo;
 import org.cesecore.certificates.certificatetransparency.CertificateTransparency;
 import org.cesecore.certificates.certificatetransparency.CertificateTransparencyFactory;
 import org.cesecore.certificates.crl.RevokedCertInfo;
+import org.cesecore.certificates.crl.StreamingX509CrlBuilder;
 import org.cesecore.certificates.endentity.EndEntityInformation;
 import org.cesecore.certificates.endentity.EndEntityType;
 import org.cesecore.certificates.endentity.EndEntityTypes;
@@ -2173,7 +2172,7 @@ public class X509CAImpl extends CABase implements Serializable, X509CA {
         final String sigAlg = getCAInfo().getCAToken().getSignatureAlgorithm();
 
         if (log.isDebugEnabled()) {
-            log.debug("generateCRL(crlPartitionIndex=" + crlPartitionIndex + ", certs.size=" + certs.size() + ", crlPeriod=" + crlPeriod + ", crlNumber=" + crlnumber + ", isDeltaCRL=" + isDeltaCRL + ", baseCRLNumber=" + basecrlnumber);
+            log.debug("generateCRL(crlPartitionIndex=" + crlPartitionIndex + ", crlPeriod=" + crlPeriod + ", crlNumber=" + crlnumber + ", isDeltaCRL=" + isDeltaCRL + ", baseCRLNumber=" + basecrlnumber);
         }
 
 
@@ -2215,23 +2214,8 @@ public class X509CAImpl extends CABase implements Serializable, X509CA {
             }
         }
 
-        final X509v2CRLBuilder crlgen = new X509v2CRLBuilder(issuer, thisUpdate);
-        crlgen.setNextUpdate(nextUpdate);
-        if (certs != null) {
-            if (log.isDebugEnabled()) {
-                log.debug("Adding "+certs.size()+" revoked certificates to CRL. Free memory="+Runtime.getRuntime().freeMemory());
-            }
-            for (final RevokedCertInfo certinfo : certs) {
-                if (certinfo.getInvalidityDate() != null) {
-                    crlgen.addCRLEntry(certinfo.getUserCertificate(), certinfo.getRevocationDate(), certinfo.getReason(), certinfo.getInvalidityDate());
-                } else {
-                    crlgen.addCRLEntry(certinfo.getUserCertificate(), certinfo.getRevocationDate(), certinfo.getReason());
-                }
-            }
-            if (log.isDebugEnabled()) {
-                log.debug("Finished adding "+certs.size()+" revoked certificates to CRL. Free memory="+Runtime.getRuntime().freeMemory());
-            }
-        }
+        // CRL entries are added last, just before signing, so that no temporary file is created unless the CRL is also built
+        final StreamingX509CrlBuilder crlgen = new StreamingX509CrlBuilder(issuer, thisUpdate, nextUpdate, CesecoreConfiguration.getCrlGenerationMemoryThreshold());
 
 
         // Authority key identifier
@@ -2357,10 +2341,23 @@ public class X509CAImpl extends CABase implements Serializable, X509CA {
                 prov = CryptoProviderTools.getProviderNameFromAlg(sigAlg);
             }
             final ContentSigner signer = new BufferingContentSigner(new JcaContentSignerBuilder(sigAlg).setProvider(prov).build(cryptoToken.getPrivateKey(alias)), X509CAImpl.SIGN_BUFFER_SIZE);
+            if (certs != null) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Adding revoked certificates to CRL. Free memory="+Runtime.getRuntime().freeMemory());
+                }
+                for (final RevokedCertInfo certinfo : certs) {
+                    crlgen.addCRLEntry(certinfo.getUserCertificate(), certinfo.getRevocationDate(), certinfo.getReason(), certinfo.getInvalidityDate());
+                }
+                if (log.isDebugEnabled()) {
+                    log.debug("Finished adding "+crlgen.getEntryCount()+" revoked certificates to CRL. Free memory="+Runtime.getRuntime().freeMemory());
+                }
+            }
             crl = crlgen.build(signer);
         } catch (OperatorCreationException e) {
             // Very fatal error
             throw new RuntimeException("Can not create Jca content signer: ", e);
+        } finally {
+            crlgen.close();
         }
         if (log.isDebugEnabled()) {
             log.debug("Finished signing CRL. Free memory="+Runtime.getRuntime().freeMemory());
@@ -2383,7 +2380,8 @@ public class X509CAImpl extends CABase implements Serializable, X509CA {
         }
         try {
             final ContentVerifierProvider verifier = CertTools.genContentVerifierProvider(verifyKey);
-            if (!crl.isSignatureValid(verifier)) {
+            // Verify the streamed TBSCertList, to avoid decoding all CRL entries of the returned CRL
+            if (!crlgen.isSignatureValid(verifier)) {
                 if (log.isTraceEnabled()) {
                     log.trace("The public key used to verify the CRL:" + System.lineSeparator() + KeyTools.getAsPem(verifyKey));
                     log.trace("The CRL whose signature could not be verified:" + System.lineSeparator() + KeyTools.getAsPem(crl));
@@ -2396,8 +2394,6 @@ public class X509CAImpl extends CABase implements Serializable, X509CA {
         } catch (OperatorCreationException e) {
             // Very fatal error
             throw new RuntimeException("Can not create Jca content signer: ", e);
-        } catch (CertException e) {
-            throw new SignatureException(e.getMessage(), e);
         }
         if (log.isDebugEnabled()) {
             log.debug("Returning CRL. Free memory="+Runtime.getRuntime().freeMemory());
@@ -14,26 +14,34 @@
 package org.ejbca.core.protocol.crlstore;
 
 import java.security.cert.X509Certificate;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.log4j.Logger;
 import org.cesecore.certificates.ca.internal.CaCertificateCache;
+import org.cesecore.certificates.certificate.CertificateConstants;
 import org.cesecore.certificates.certificate.HashID;
 import org.cesecore.certificates.crl.CRLInfo;
 import org.cesecore.certificates.crl.CrlStoreSessionLocal;
+import org.cesecore.certificates.crl.CrlUpdateNotifier;
+import org.cesecore.config.CesecoreConfiguration;
 
 import com.keyfactor.util.CertTools;
 
 /**
  * An implementation of this is managing a cache of CRLs. The implementation should be optimized for quick lookups of CRLs that the 
  * VA responder needs to fetch.
+ * <p>
+ * The latest CRL for each issuer, partition and delta flag is kept in memory and served without any locking or database access
+ * until it is older than crlstore.cachetime, or a newer CRL has been stored on this node. Then one request checks the database for
+ * a newer CRL number, while concurrent requests keep getting the cached CRL.
  *
  */
-public class CRLCache {
+public class CRLCache implements CrlUpdateNotifier.Listener {
 	private static final Logger log = Logger.getLogger(CRLCache.class);
 	
     private static CRLCache instance = null;
@@ -41,44 +49,58 @@ public class CRLCache {
 	
 	private final CrlStoreSessionLocal crlStoreSession;
 	private final CaCertificateCache certCache;
-	private final Map<Integer, CRLEntity> crls = new HashMap<>();
-	private final Map<Integer, CRLEntity> deltaCrls = new HashMap<>();
-	private class CRLEntity {
-		final CRLInfo crlInfo;
-		final byte[] encoded;
-		/**
-		 * @param crlInfo
-		 * @param encoded
-		 */
-		CRLEntity(CRLInfo crlInfo, byte[] encoded) {
-			super();
-			this.crlInfo = crlInfo;
-			this.encoded = encoded;
+	private final Map<CacheKey, CacheSlot> crls = new ConcurrentHashMap<>();
+
+	/** Identifies the latest CRL of an issuer and partition. */
+	private static final class CacheKey {
+		final String issuerDN;
+		final int crlPartitionIndex;
+		final boolean isDelta;
+
+		CacheKey(final String issuerDN, final int crlPartitionIndex, final boolean isDelta) {
+			this.issuerDN = issuerDN;
+			this.crlPartitionIndex = crlPartitionIndex == -1 ? CertificateConstants.NO_CRL_PARTITION : crlPartitionIndex;
+			this.isDelta = isDelta;
 		}
 
 		@Override
 		public boolean equals(Object o) {
-			if (o == this)
+			if (o == this) {
 				return true;
-			if (!(o instanceof CRLEntity)) {
+			}
+			if (!(o instanceof CacheKey)) {
 				return false;
 			}
-			CRLEntity crlEntity = (CRLEntity) o;
-			return Objects.equals(crlInfo.getSubjectDN(), crlEntity.crlInfo.getSubjectDN()) && crlInfo.getCrlPartitionIndex() == crlEntity.crlInfo.getCrlPartitionIndex();
+			final CacheKey other = (CacheKey) o;
+			return crlPartitionIndex == other.crlPartitionIndex && isDelta == other.isDelta && issuerDN.equals(other.issuerDN);
 		}
 
 		@Override
 		public int hashCode() {
-			// Ignore CRL number. Always overwrite cache with latest CRL for the partition.
-			return Objects.hash(crlInfo.getSubjectDN(), crlInfo.getCrlPartitionIndex());
+			return Objects.hash(issuerDN, crlPartitionIndex, isDelta);
 		}
+	}
 
+	/** Holds the current version of a cached CRL and tracks when it has to be checked against the database. */
+	private static final class CacheSlot {
+		volatile CRLCacheEntry entry;
+		/** Time of the last check against the database */
+		volatile long lastChecked;
+		/** Highest CRL number that has been notified as stored on this node */
+		volatile int notifiedCrlNumber = -1;
+		volatile long notifiedTime;
+		/** Makes sure that only one thread at a time checks the database for a newer CRL */
+		final AtomicBoolean refreshing = new AtomicBoolean(false);
+
+		boolean isStale(final long now, final long cacheTime) {
+			final CRLCacheEntry current = entry;
+			if (current == null || cacheTime < 0 || now - lastChecked >= cacheTime) {
+				return true;
+			}
+			// A newer CRL was stored on this node. It may not be committed yet, so keep checking until it shows up or the cache time has passed.
+			return notifiedCrlNumber > current.getCrlNumber() && now - notifiedTime < cacheTime;
+		}
 	}
-	/** We need an object to synchronize around when rebuilding and reading the cache. When rebuilding the cache no thread
-	 * can be allowed to read the cache, since the cache will be in an inconsistent state. In the normal case we want to use
-	 * as fast objects as possible (HashMap) for reading fast.
-	 */
-	private final Lock rebuildlock = new ReentrantLock();
 
 	 /**
      * @return  {@link CRLCache} for the CA.
@@ -91,6 +113,7 @@ public class CRLCache {
          try {
              if (instance == null) {
                  instance = new CRLCache(crlDataSession, certCache);
+                 CrlUpdateNotifier.INSTANCE.addListener(instance);
              }
              return instance;
          } finally {
@@ -115,7 +138,7 @@ public class CRLCache {
      * @return CRL or null if the CRL does not exist in the cache.
      */
 	public byte[] findBySubjectKeyIdentifier(HashID id, int crlPartitionIndex, boolean isDelta, int crlNumber) {
-		return findCRL(certCache.findBySubjectKeyIdentifier(id), crlPartitionIndex, isDelta, crlNumber);
+		return getEncoded(findEntryBySubjectKeyIdentifier(id, crlPartitionIndex, isDelta, crlNumber));
 	}
 
 	/**
@@ -125,55 +148,115 @@ public class CRLCache {
      * @return CRL or null if the CRL does not exist in the cache.
      */
 	public byte[] findByIssuerDN(HashID id, int crlPartitionIndex, boolean isDelta, int crlNumber) {
+		return getEncoded(findEntryByIssuerDN(id, crlPartitionIndex, isDelta, crlNumber));
+	}
+
+	/**
+     * @param id The ID of the subject key identifier.
+     * @param isDelta true if delta CRL
+     * @param crlNumber specific crlNumber of the CRL to be retrieved, when not the latest, or -1 for the latest
+     * @return CRL with meta data, or null if the CRL does not exist.
+     */
+	public CRLCacheEntry findEntryBySubjectKeyIdentifier(HashID id, int crlPartitionIndex, boolean isDelta, int crlNumber) {
+		return findCRL(certCache.findBySubjectKeyIdentifier(id), crlPartitionIndex, isDelta, crlNumber);
+	}
+
+	/**
+     * @param id The ID of the issuer DN.
+     * @param isDelta true if delta CRL
+     * @param crlNumber specific crlNumber of the CRL to be retrieved, when not the latest, or -1 for the latest
+     * @return CRL with meta data, or null if the CRL does not exist.
+     */
+	public CRLCacheEntry findEntryByIssuerDN(HashID id, int crlPartitionIndex, boolean isDelta, int crlNumber) {
 		return findCRL(certCache.findLatestBySubjectDN(id), crlPartitionIndex, isDelta, crlNumber);
 	}
 
-	private byte[] findCRL(final X509Certificate caCert, final int crlPartitionIndex, final boolean isDelta, final int crlNumber) {
+	@Override
+	public void crlStored(final String issuerDn, final int crlPartitionIndex, final int crlNumber, final boolean deltaCrl) {
+		// Only track CRLs that are requested through this cache
+		final CacheSlot slot = crls.get(new CacheKey(issuerDn, crlPartitionIndex, deltaCrl));
+		if (slot != null) {
+			if (log.isDebugEnabled()) {
+				log.debug("New CRL with number " + crlNumber + " stored for issuerDN '" + issuerDn + "' and partition " + crlPartitionIndex + ".");
+			}
+			slot.notifiedTime = System.currentTimeMillis();
+			if (crlNumber > slot.notifiedCrlNumber) {
+				slot.notifiedCrlNumber = crlNumber;
+			}
+		}
+	}
+
+	private byte[] getEncoded(final CRLCacheEntry entry) {
+		return entry == null ? new byte[0] : entry.getEncoded();
+	}
+
+	private CRLCacheEntry findCRL(final X509Certificate caCert, final int crlPartitionIndex, final boolean isDelta, final int crlNumber) {
 		if ( caCert==null ) {
 			if (log.isDebugEnabled()) {
 				log.debug("No CA certificate, returning null.");
 			}
-			return new byte[0];
+			return null;
 		}
 		final String issuerDN = CertTools.getSubjectDN(caCert);
-		this.rebuildlock.lock();
-		try {
-			final CRLInfo crlInfo = this.crlStoreSession.getLastCRLInfo(issuerDN, crlPartitionIndex, isDelta);
-			if ( crlInfo==null ) {
-				if (log.isDebugEnabled()) {
-					log.debug("No CRL found with issuerDN '"+issuerDN+"', returning null.");
-				}
-				return new byte[0];
+		if (crlNumber > -1) {
+			// Only cache latest CRLs, these should be the ones accessed regularly, and we don't want to fill the cache with old CRLs
+			if (log.isDebugEnabled()) {
+				log.debug("Getting CRL with CRL number "+crlNumber);
 			}
-			final Integer cacheId = new CRLEntity(crlInfo, null).hashCode();
-            final Map<Integer, CRLEntity> usedCrls = isDelta ? this.deltaCrls : this.crls;
-			// If we have not specified a crlNumber we can try to find the latest CRL in the cache
-			if (crlNumber == -1) {
-			    final CRLEntity cachedCRL = usedCrls.get(cacheId);
-			    if ( cachedCRL!=null && !crlInfo.getCreateDate().after(cachedCRL.crlInfo.getCreateDate()) ) {
-			        if (log.isDebugEnabled()) {
-			            log.debug("Retrieved CRL (from cache) with issuerDN '"+issuerDN+"', with CRL number "+crlInfo.getLastCRLNumber() + " and partition " + crlInfo.getCrlPartitionIndex());
-			        }
-			        return cachedCRL.encoded;
-			    }
+			final byte[] encoded = this.crlStoreSession.getCRL(issuerDN, crlPartitionIndex, crlNumber);
+			return encoded == null ? null : new CRLCacheEntry(issuerDN, crlPartitionIndex, crlNumber, null, null, encoded);
+		}
+		final CacheSlot slot = crls.computeIfAbsent(new CacheKey(issuerDN, crlPartitionIndex, isDelta), key -> new CacheSlot());
+		final long now = System.currentTimeMillis();
+		final CRLCacheEntry cached = slot.entry;
+		if (!slot.isStale(now, CesecoreConfiguration.getCacheCrlStoreTime())) {
+			if (log.isDebugEnabled()) {
+				log.debug("Retrieved CRL (from cache) with issuerDN '"+issuerDN+"', with CRL number "+cached.getCrlNumber() + " and partition " + crlPartitionIndex);
 			}
-			final CRLEntity entry;
-			if (crlNumber > -1) {
-			    if (log.isDebugEnabled()) {
-			        log.debug("Getting CRL with CRL number "+crlNumber);
-			    }
-			    entry = new CRLEntity( crlInfo, this.crlStoreSession.getCRL(issuerDN, crlPartitionIndex, crlNumber) );
-			} else {
-			    entry = new CRLEntity( crlInfo, this.crlStoreSession.getLastCRL(issuerDN, crlPartitionIndex, isDelta) );
-			    // Only cache latest CRLs, these should be the ones accessed regularly, and we don't want to fill the cache with old CRLs
-	            usedCrls.put(cacheId, entry);
+			return cached;
+		}
+		if (cached != null && !slot.refreshing.compareAndSet(false, true)) {
+			// Another thread is already checking for a newer CRL, serve the one we have in the meantime
+			return cached;
+		}
+		try {
+			return refresh(slot, issuerDN, crlPartitionIndex, isDelta, now);
+		} finally {
+			if (cached != null) {
+				slot.refreshing.set(false);
+			}
+		}
+	}
+
+	/** Checks the database for a newer CRL than the cached one, and replaces the cached CRL if one is found. */
+	private CRLCacheEntry refresh(final CacheSlot slot, final String issuerDN, final int crlPartitionIndex, final boolean isDelta, final long now) {
+		final CRLInfo crlInfo = this.crlStoreSession.getLastCRLInfoLightWeight(issuerDN, crlPartitionIndex, isDelta);
+		if ( crlInfo==null ) {
+			if (log.isDebugEnabled()) {
+				log.debug("No CRL found with issuerDN '"+issuerDN+"', returning null.");
 			}
+			return null;
+		}
+		final CRLCacheEntry cached = slot.entry;
+		if (cached != null && cached.getCrlNumber() >= crlInfo.getLastCRLNumber()) {
+			slot.lastChecked = now;
 			if (log.isDebugEnabled()) {
-				log.debug("Retrieved CRL (not from cache) with issuerDN '"+issuerDN+"', with CRL number "+crlInfo.getLastCRLNumber() + " and partition " + crlInfo.getCrlPartitionIndex());
+				log.debug("Retrieved CRL (from cache) with issuerDN '"+issuerDN+"', with CRL number "+cached.getCrlNumber() + " and partition " + crlPartitionIndex);
 			}
-			return entry.encoded;
-		} finally {
-			this.rebuildlock.unlock();
+			return cached;
+		}
+		// Fetch by number, so that the meta data matches the CRL even if yet another CRL is stored in between
+		final byte[] encoded = this.crlStoreSession.getCRL(issuerDN, crlPartitionIndex, crlInfo.getLastCRLNumber());
+		if (encoded == null) {
+			return cached;
+		}
+		final CRLCacheEntry entry = new CRLCacheEntry(issuerDN, crlPartitionIndex, crlInfo.getLastCRLNumber(), crlInfo.getCreateDate(),
+				crlInfo.getExpireDate(), encoded);
+		slot.entry = entry;
+		slot.lastChecked = now;
+		if (log.isDebugEnabled()) {
+			log.debug("Retrieved CRL (not from cache) with issuerDN '"+issuerDN+"', with CRL number "+crlInfo.getLastCRLNumber() + " and partition " + crlInfo.getCrlPartitionIndex());
 		}
+		return entry;
 	}
 }
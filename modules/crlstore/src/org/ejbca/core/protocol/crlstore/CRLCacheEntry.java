@@ -0,0 +1,70 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+
+package org.ejbca.core.protocol.crlstore;
+
+import java.util.Date;
+
+/**
+ * An immutable, encoded CRL together with the meta data needed to answer conditional HTTP requests for it.
+ *
+ */
+public final class CRLCacheEntry {
+
+	private final int crlNumber;
+	private final Date thisUpdate;
+	private final Date nextUpdate;
+	private final byte[] encoded;
+	private final String eTag;
+
+	/**
+	 * @param issuerDN DN of the CA that issued the CRL
+	 * @param crlPartitionIndex CRL partition index
+	 * @param crlNumber CRL number
+	 * @param thisUpdate thisUpdate of the CRL, or null if not known
+	 * @param nextUpdate nextUpdate of the CRL, or null if not known
+	 * @param encoded the DER encoded CRL
+	 */
+	CRLCacheEntry(final String issuerDN, final int crlPartitionIndex, final int crlNumber, final Date thisUpdate, final Date nextUpdate, final byte[] encoded) {
+		this.crlNumber = crlNumber;
+		this.thisUpdate = thisUpdate;
+		this.nextUpdate = nextUpdate;
+		this.encoded = encoded;
+		// Base and delta CRLs share the CRL number sequence, so issuer, partition and CRL number identifies the CRL
+		this.eTag = "\"" + Integer.toHexString(issuerDN.hashCode()) + "-" + crlPartitionIndex + "-" + crlNumber + "\"";
+	}
+
+	public int getCrlNumber() {
+		return crlNumber;
+	}
+
+	/** @return thisUpdate of the CRL, or null if not known */
+	public Date getThisUpdate() {
+		return thisUpdate;
+	}
+
+	/** @return nextUpdate of the CRL, or null if not known */
+	public Date getNextUpdate() {
+		return nextUpdate;
+	}
+
+	/** @return the DER encoded CRL. The returned array is shared and must not be modified. */
+	public byte[] getEncoded() {
+		return encoded;
+	}
+
+	/** @return a quoted strong entity tag for use in the HTTP ETag header */
+	public String getETag() {
+		return eTag;
+	}
+}
@@ -30,6 +30,7 @@ import org.cesecore.certificates.certificate.CertificateConstants;
 import org.cesecore.certificates.certificate.HashID;
 import org.cesecore.certificates.crl.CrlStoreSessionLocal;
 import org.ejbca.core.protocol.crlstore.CRLCache;
+import org.ejbca.core.protocol.crlstore.CRLCacheEntry;
 import org.ejbca.util.HTMLTools;
 
 import com.keyfactor.util.CertTools;
@@ -73,8 +74,8 @@ public class CRLStoreServlet extends StoreServletBase {
 	@Override
 	public void iHash(String iHash, HttpServletResponse resp, HttpServletRequest req) throws IOException, ServletException {
 	    final int crlPartitionIndex = getCrlPartitionIndex(req);
-	    final byte[] crlBytes = crlCache.findByIssuerDN(HashID.getFromB64(iHash), crlPartitionIndex, isDelta(req), getCrlNumber(req));
-		returnCrl(crlBytes, resp, iHash, crlPartitionIndex, isDelta(req));
+	    final CRLCacheEntry crl = crlCache.findEntryByIssuerDN(HashID.getFromB64(iHash), crlPartitionIndex, isDelta(req), getCrlNumber(req));
+		returnCrl(crl, req, resp, iHash, crlPartitionIndex, isDelta(req));
 	}
 
 	@Override
@@ -85,8 +86,8 @@ public class CRLStoreServlet extends StoreServletBase {
 	@Override
 	public void sKIDHash(String sKIDHash, HttpServletResponse resp, HttpServletRequest req, String name) throws IOException, ServletException {
 	    final int crlPartitionIndex = getCrlPartitionIndex(req);
-	    final byte[] crlBytes = crlCache.findBySubjectKeyIdentifier(HashID.getFromB64(sKIDHash), crlPartitionIndex, isDelta(req), getCrlNumber(req));
-		returnCrl(crlBytes, resp, name, crlPartitionIndex, isDelta(req));
+	    final CRLCacheEntry crl = crlCache.findEntryBySubjectKeyIdentifier(HashID.getFromB64(sKIDHash), crlPartitionIndex, isDelta(req), getCrlNumber(req));
+		returnCrl(crl, req, resp, name, crlPartitionIndex, isDelta(req));
 	}
 
 	@Override
@@ -124,14 +125,32 @@ public class CRLStoreServlet extends StoreServletBase {
         return CertificateConstants.NO_CRL_PARTITION;
     }
 
-	private void returnCrl(final byte[] crl, HttpServletResponse resp, String name, final int crlPartitionIndex, boolean isDelta) throws IOException {
-		if (ArrayUtils.isEmpty(crl)) {
+	private void returnCrl(final CRLCacheEntry crlEntry, HttpServletRequest req, HttpServletResponse resp, String name, final int crlPartitionIndex,
+	        boolean isDelta) throws IOException {
+		if (crlEntry == null || ArrayUtils.isEmpty(crlEntry.getEncoded())) {
 		    if (log.isDebugEnabled()) {
 		        log.debug("CRL was not found. Hash=" + name + ", DeltaCRL=" + isDelta + ", Partition=" + crlPartitionIndex);
 		    }
 			resp.sendError(HttpServletResponse.SC_NO_CONTENT, "No CRL with hash: "+HTMLTools.htmlescape(name));
 			return;
 		}
+		// Let clients and CDNs revalidate their copy without downloading the CRL again
+		resp.setHeader("ETag", crlEntry.getETag());
+		if (crlEntry.getThisUpdate() != null) {
+		    resp.setDateHeader("Last-Modified", crlEntry.getThisUpdate().getTime());
+		}
+		if (crlEntry.getNextUpdate() != null) {
+		    final long maxAge = Math.max(0, (crlEntry.getNextUpdate().getTime() - System.currentTimeMillis()) / 1000);
+		    resp.setHeader("Cache-Control", "public, max-age=" + maxAge + (maxAge == 0 ? ", must-revalidate" : ""));
+		}
+		if (isNotModified(crlEntry, req)) {
+		    if (log.isDebugEnabled()) {
+		        log.debug("CRL was not modified. Hash=" + name + ", DeltaCRL=" + isDelta + ", Partition=" + crlPartitionIndex);
+		    }
+		    resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+		    return;
+		}
+		final byte[] crl = crlEntry.getEncoded();
 		resp.setContentType("application/pkix-crl");
 		resp.setHeader("Content-disposition", "attachment; filename=\"" + 
 		        (isDelta?"delta":"") +
@@ -142,6 +161,32 @@ public class CRLStoreServlet extends StoreServletBase {
 		resp.getOutputStream().write(crl);
 	}
 	
+	/** @return true if the conditional request headers show that the client already has this CRL, according to RFC 9110 section 13.2.2 */
+	private boolean isNotModified(final CRLCacheEntry crlEntry, final HttpServletRequest req) {
+	    final String ifNoneMatch = req.getHeader("If-None-Match");
+	    if (ifNoneMatch != null) {
+	        // If-Modified-Since must be ignored when If-None-Match is present
+	        for (final String eTag : ifNoneMatch.split(",")) {
+	            final String trimmed = StringUtils.removeStart(eTag.trim(), "W/");
+	            if ("*".equals(trimmed) || crlEntry.getETag().equals(trimmed)) {
+	                return true;
+	            }
+	        }
+	        return false;
+	    }
+	    if (crlEntry.getThisUpdate() != null) {
+	        try {
+	            final long ifModifiedSince = req.getDateHeader("If-Modified-Since");
+	            // HTTP dates have second precision
+	            return ifModifiedSince != -1 && crlEntry.getThisUpdate().getTime() / 1000 <= ifModifiedSince / 1000;
+	        } catch (IllegalArgumentException e) {
+	            // Invalid date, send the full response
+	            return false;
+	        }
+	    }
+	    return false;
+	}
+
     @Override
     protected void printInfo(X509Certificate[] certs, String indent, PrintWriter pw) {
         for (X509Certificate cert : certs) {
@@ -0,0 +1,192 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.model.services.workers;
+
+import static org.easymock.EasyMock.anyInt;
+import static org.easymock.EasyMock.anyLong;
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.expect;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.cesecore.authentication.tokens.AlwaysAllowLocalAuthenticationToken;
+import org.cesecore.authentication.tokens.AuthenticationToken;
+import org.cesecore.authentication.tokens.UsernamePrincipal;
+import org.cesecore.certificates.ca.CaSessionLocal;
+import org.cesecore.certificates.ca.X509CAInfo;
+import org.cesecore.certificates.certificate.CertificateStoreSessionLocal;
+import org.easymock.EasyMock;
+import org.ejbca.core.ejb.ra.EndEntityAccessSessionLocal;
+import org.ejbca.core.model.services.ActionException;
+import org.ejbca.core.model.services.ActionInfo;
+import org.ejbca.core.model.services.BaseAction;
+import org.ejbca.core.model.services.IWorker;
+import org.ejbca.core.model.services.ServiceConfiguration;
+import org.ejbca.core.model.services.ServiceExecutionFailedException;
+import org.ejbca.core.model.services.ServiceExecutionResult;
+import org.ejbca.core.model.services.actions.NoAction;
+import org.ejbca.core.model.services.intervals.DummyInterval;
+import org.junit.Test;
+
+/**
+ * Tests that {@link CertificateExpirationNotifierWorker} processes the expiring certificates in chunks.
+ */
+public class CertificateExpirationNotifierWorkerUnitTest {
+
+    private static final int CA_ID = 4711;
+
+    private final List<String> expiringFingerprints = new ArrayList<>();
+    private final List<Collection<String>> statusUpdates = new ArrayList<>();
+    private int queryCount = 0;
+    /** Thrown when the status of the certificates is updated, if set */
+    private RuntimeException statusUpdateFailure = null;
+
+    /** An action that sends the first email, and fails to send the others */
+    public static class FailingAction extends BaseAction {
+        private static final AtomicInteger performed = new AtomicInteger();
+
+        @Override
+        public void performAction(final ActionInfo actionInfo, final Map<Class<?>, Object> ejbs) throws ActionException {
+            if (performed.incrementAndGet() > 1) {
+                throw new ActionException("Mail server unavailable");
+            }
+        }
+    }
+
+    private CertificateStoreSessionLocal certificateStoreSession() throws Exception {
+        final CertificateStoreSessionLocal certificateStoreSession = EasyMock.createMock(CertificateStoreSessionLocal.class);
+        expect(certificateStoreSession.findExpirationInfo(anyObject(), anyObject(), anyLong(), anyLong(), anyLong(), anyObject(), anyInt())).andAnswer(() -> {
+            queryCount++;
+            final String afterFingerprint = (String) EasyMock.getCurrentArguments()[5];
+            final int maxResults = (Integer) EasyMock.getCurrentArguments()[6];
+            final List<Object[]> ret = new ArrayList<>();
+            for (final String fingerprint : expiringFingerprints) {
+                if ((afterFingerprint == null || fingerprint.compareTo(afterFingerprint) > 0) && ret.size() < maxResults) {
+                    ret.add(new Object[] { fingerprint, "user" + fingerprint });
+                }
+            }
+            return ret;
+        }).anyTimes();
+        expect(certificateStoreSession.setNotifiedAboutExpirationStatus(anyObject(AuthenticationToken.class), anyObject())).andAnswer(() -> {
+            @SuppressWarnings("unchecked")
+            final Collection<String> fingerprints = (Collection<String>) EasyMock.getCurrentArguments()[1];
+            statusUpdates.add(new ArrayList<>(fingerprints));
+            if (statusUpdateFailure != null) {
+                throw statusUpdateFailure;
+            }
+            return fingerprints.size();
+        }).anyTimes();
+        expect(certificateStoreSession.findCertificatesByFingerprints(anyObject())).andReturn(new HashMap<>()).anyTimes();
+        EasyMock.replay(certificateStoreSession);
+        return certificateStoreSession;
+    }
+
+    private static CaSessionLocal caSession() throws Exception {
+        final CaSessionLocal caSession = EasyMock.createMock(CaSessionLocal.class);
+        expect(caSession.getCAInfo(anyObject(AuthenticationToken.class), eq(CA_ID)))
+                .andReturn(new X509CAInfo.X509CAInfoBuilder().setSubjectDn("CN=Expiration Notifier Test").setCaId(CA_ID).build()).anyTimes();
+        EasyMock.replay(caSession);
+        return caSession;
+    }
+
+    /** @return an end entity access session without any end entities */
+    private static EndEntityAccessSessionLocal endEntityAccessSession() {
+        final EndEntityAccessSessionLocal endEntityAccessSession = EasyMock.createMock(EndEntityAccessSessionLocal.class);
+        expect(endEntityAccessSession.findUsers(anyObject())).andReturn(new HashMap<>()).anyTimes();
+        EasyMock.replay(endEntityAccessSession);
+        return endEntityAccessSession;
+    }
+
+    private ServiceExecutionResult runWorker() throws Exception {
+        return runWorker(new Properties(), NoAction.class.getName());
+    }
+
+    private ServiceExecutionResult runWorker(final Properties properties, final String actionClassPath) throws Exception {
+        properties.setProperty(IWorker.PROP_CAIDSTOCHECK, String.valueOf(CA_ID));
+        properties.setProperty(IWorker.PROP_TIMEUNIT, IWorker.UNIT_DAYS);
+        properties.setProperty(IWorker.PROP_TIMEBEFOREEXPIRING, "7");
+        final ServiceConfiguration serviceConfiguration = new ServiceConfiguration();
+        serviceConfiguration.setWorkerProperties(properties);
+        serviceConfiguration.setActionClassPath(actionClassPath);
+        serviceConfiguration.setIntervalClassPath(DummyInterval.class.getName());
+        final CertificateExpirationNotifierWorker worker = new CertificateExpirationNotifierWorker();
+        final long now = System.currentTimeMillis();
+        worker.init(new AlwaysAllowLocalAuthenticationToken(new UsernamePrincipal("CertificateExpirationNotifierWorkerUnitTest")), serviceConfiguration,
+                "CertificateExpirationNotifierWorkerUnitTest", now, now + 3600000L);
+        final Map<Class<?>, Object> ejbs = new HashMap<>();
+        ejbs.put(CaSessionLocal.class, caSession());
+        ejbs.put(CertificateStoreSessionLocal.class, certificateStoreSession());
+        ejbs.put(EndEntityAccessSessionLocal.class, endEntityAccessSession());
+        return worker.work(ejbs);
+    }
+
+    @Test
+    public void testStatusIsUpdatedInChunks() throws Exception {
+        for (int i = 0; i < 2500; i++) {
+            expiringFingerprints.add(String.format("%040x", i));
+        }
+        final ServiceExecutionResult result = runWorker();
+        assertEquals(ServiceExecutionResult.Result.NO_ACTION, result.getResult());
+        assertTrue(result.getMessage(), result.getMessage().contains("Processed 2500 expiring certificates in 3 chunks"));
+        assertEquals("One query per chunk", 3, queryCount);
+        assertEquals("One status update per chunk", 3, statusUpdates.size());
+        assertEquals(1000, statusUpdates.get(0).size());
+        assertEquals(500, statusUpdates.get(2).size());
+        final Set<String> updated = new HashSet<>();
+        for (final Collection<String> statusUpdate : statusUpdates) {
+            updated.addAll(statusUpdate);
+        }
+        assertEquals("Each certificate should be updated exactly once", new HashSet<>(expiringFingerprints), updated);
+    }
+
+    @Test
+    public void testFullLastChunk() throws Exception {
+        for (int i = 0; i < 1000; i++) {
+            expiringFingerprints.add(String.format("%040x", i));
+        }
+        runWorker();
+        assertEquals("An empty chunk should end the processing", 2, queryCount);
+        assertEquals(1, statusUpdates.size());
+    }
+
+    @Test
+    public void testStatusUpdateFailureDoesNotHideSendFailure() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            expiringFingerprints.add(String.format("%040x", i));
+        }
+        statusUpdateFailure = new IllegalStateException("Database unavailable");
+        final Properties properties = new Properties();
+        properties.setProperty(EmailSendingWorkerConstants.PROP_SENDTOADMINS, "true");
+        try {
+            runWorker(properties, FailingAction.class.getName());
+            fail("Sending the emails failed");
+        } catch (ServiceExecutionFailedException e) {
+            assertEquals(ActionException.class, e.getCause().getClass());
+            assertEquals(1, e.getSuppressed().length);
+            assertEquals(statusUpdateFailure, e.getSuppressed()[0]);
+        }
+        assertEquals("The certificate that an email was sent for should be updated", List.of(List.of(expiringFingerprints.get(0))), statusUpdates);
+    }
+}
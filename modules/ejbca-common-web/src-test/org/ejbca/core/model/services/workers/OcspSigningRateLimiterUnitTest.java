@@ -0,0 +1,58 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.model.services.workers;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link OcspSigningRateLimiter}.
+ */
+public class OcspSigningRateLimiterUnitTest {
+
+    @After
+    public void after() {
+        OcspSigningRateLimiter.INSTANCE.clear();
+    }
+
+    @Test
+    public void rateIsLimitedPerKey() throws InterruptedException {
+        final long start = System.currentTimeMillis();
+        // 10 per second, so the fifth signature is allowed after 400 ms
+        for (int i = 0; i < 5; i++) {
+            assertTrue(OcspSigningRateLimiter.INSTANCE.acquire("keybinding:1", 10, start + 10000));
+        }
+        final long duration = System.currentTimeMillis() - start;
+        assertTrue("Signatures were not limited, took " + duration + " ms", duration >= 350);
+        // Other keys have their own limit
+        assertTrue(OcspSigningRateLimiter.INSTANCE.acquire("keybinding:2", 10, System.currentTimeMillis()));
+    }
+
+    @Test
+    public void deadline() throws InterruptedException {
+        assertTrue(OcspSigningRateLimiter.INSTANCE.acquire("ca:1", 1, System.currentTimeMillis() + 100));
+        assertFalse("Next signature is not allowed until after the deadline",
+                OcspSigningRateLimiter.INSTANCE.acquire("ca:1", 1, System.currentTimeMillis() + 100));
+    }
+
+    @Test
+    public void noLimit() throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 10000;
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(OcspSigningRateLimiter.INSTANCE.acquire("ca:2", 0, deadline));
+        }
+    }
+}
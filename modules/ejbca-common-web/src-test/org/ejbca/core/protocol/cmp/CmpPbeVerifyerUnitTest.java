@@ -0,0 +1,110 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.protocol.cmp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.bouncycastle.asn1.DERBitString;
+import org.bouncycastle.asn1.DERNull;
+import org.bouncycastle.asn1.cmp.PKIBody;
+import org.bouncycastle.asn1.cmp.PKIHeader;
+import org.bouncycastle.asn1.cmp.PKIHeaderBuilder;
+import org.bouncycastle.asn1.cmp.PKIMessage;
+import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.cert.cmp.GeneralPKIMessage;
+import org.bouncycastle.cert.cmp.ProtectedPKIMessage;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.pkcs.jcajce.JcePBMac1CalculatorProviderBuilder;
+import org.cesecore.util.ComponentMetrics;
+import org.cesecore.util.ComponentMetrics.Sample;
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.keyfactor.util.CryptoProviderTools;
+
+/**
+ * Unit tests for {@link CmpPbeVerifyer} and {@link CmpPbmac1Verifyer} with {@link CmpPbeKeyCache}.
+ */
+public class CmpPbeVerifyerUnitTest {
+
+    private static final String SECRET = "foo123";
+
+    @BeforeClass
+    public static void beforeClass() {
+        CryptoProviderTools.installBCProviderIfNotAvailable();
+    }
+
+    @After
+    public void after() {
+        CmpPbeKeyCache.INSTANCE.clear();
+    }
+
+    private static PKIMessage createMessage() {
+        final PKIHeaderBuilder header = new PKIHeaderBuilder(PKIHeader.CMP_2000, new GeneralName(new X500Name("CN=sender")),
+                new GeneralName(new X500Name("CN=recipient")));
+        return new PKIMessage(header.build(), new PKIBody(PKIBody.TYPE_CONFIRM, DERNull.INSTANCE));
+    }
+
+    @Test
+    public void passwordBasedMacKeyIsCached() throws Exception {
+        final PKIMessage msg = PKIMessage.getInstance(CmpMessageHelper.protectPKIMessageWithPBE(createMessage(), "keyId", SECRET,
+                "1.3.14.3.2.26", "1.3.6.1.5.5.8.1.2", 1024));
+        assertFalse("Wrong secret should not verify", new CmpPbeVerifyer(msg).verify("wrong"));
+        assertEquals("Keys that do not verify should not be cached", 0, CmpPbeKeyCache.INSTANCE.size());
+        assertTrue(new CmpPbeVerifyer(msg).verify(SECRET));
+        assertEquals(1, CmpPbeKeyCache.INSTANCE.size());
+        assertTrue("Cached key should verify", new CmpPbeVerifyer(msg).verify(SECRET));
+        assertFalse("Wrong secret should not verify", new CmpPbeVerifyer(msg).verify("wrong"));
+        assertFalse("Tampered message should not verify with cached key", new CmpPbeVerifyer(tamper(msg)).verify(SECRET));
+        assertEquals(1, CmpPbeKeyCache.INSTANCE.size());
+        assertTrue(CmpPbeKeyCache.INSTANCE.getHitRate() > 0);
+        final Map<String, Double> values = new HashMap<>();
+        for (final Sample sample : ComponentMetrics.INSTANCE.getSamples()) {
+            values.put(sample.getName(), sample.getValue());
+        }
+        assertEquals(1, values.get("ejbca_cmp_pbe_key_cache_entries"), 0);
+        assertEquals(CmpPbeKeyCache.INSTANCE.getHitRate(), values.get("ejbca_cmp_pbe_key_cache_hit_ratio"), 0);
+        assertTrue(values.get("ejbca_cmp_pbe_key_cache_hits_total") > 0);
+    }
+
+    @Test
+    public void pbmac1KeyIsCached() throws Exception {
+        final PKIMessage msg = CmpMessageHelper.protectPKIMessageWithPBMAC1(createMessage(), "keyId", SECRET, "1.2.840.113549.2.9", 10000, 32,
+                PKCSObjectIdentifiers.id_hmacWithSHA256.getId());
+        // Same result as verifying with BouncyCastle directly
+        assertTrue(new ProtectedPKIMessage(new GeneralPKIMessage(msg))
+                .verify(new JcePBMac1CalculatorProviderBuilder().setProvider(BouncyCastleProvider.PROVIDER_NAME).build(), SECRET.toCharArray()));
+        assertFalse("Wrong secret should not verify", new CmpPbmac1Verifyer(msg).verify("wrong"));
+        assertEquals("Keys that do not verify should not be cached", 0, CmpPbeKeyCache.INSTANCE.size());
+        assertTrue(new CmpPbmac1Verifyer(msg).verify(SECRET));
+        assertEquals(1, CmpPbeKeyCache.INSTANCE.size());
+        assertTrue("Cached key should verify", new CmpPbmac1Verifyer(msg).verify(SECRET));
+        assertFalse("Tampered message should not verify with cached key", new CmpPbmac1Verifyer(tamper(msg)).verify(SECRET));
+        CmpPbeKeyCache.INSTANCE.clear();
+        assertEquals(0, CmpPbeKeyCache.INSTANCE.size());
+    }
+
+    private static PKIMessage tamper(final PKIMessage msg) {
+        final byte[] protection = msg.getProtection().getOctets();
+        protection[0] ^= 1;
+        return new PKIMessage(msg.getHeader(), msg.getBody(), new DERBitString(protection), msg.getExtraCerts());
+    }
+}
@@ -14,7 +14,6 @@ package org.ejbca.core.model.services.workers;
 
 import java.net.URL;
 import java.security.cert.CRLException;
-import java.security.cert.X509CRL;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -30,6 +29,7 @@ import org.cesecore.certificates.ca.CAInfo;
 import org.cesecore.certificates.ca.CaSessionLocal;
 import org.cesecore.certificates.ca.X509CAInfo;
 import org.cesecore.certificates.certificate.CertificateConstants;
+import org.cesecore.certificates.crl.CrlHeader;
 import org.cesecore.certificates.crl.CrlImportException;
 import org.cesecore.certificates.crl.CrlStoreException;
 import org.cesecore.certificates.crl.CrlStoreSessionLocal;
@@ -154,13 +154,13 @@ public class CRLDownloadWorker extends BaseWorker {
             final String issuerDn = CertTools.getSubjectDN(caCertificate);
             final boolean ignoreNextUpdate = PropertyTools.get(properties, PROP_IGNORE_NEXT_UPDATE, false);
             // Get last known CRL (if any) and check when the next update will be
-            final X509CRL lastFullCrl = getCRLFromBytes(crlStoreSession.getLastCRL(issuerDn, crlPartitionIndex, false));
-            final X509CRL newestFullCrl;
+            final CrlHeader lastFullCrl = getCRLFromBytes(crlStoreSession.getLastCRL(issuerDn, crlPartitionIndex, false));
+            final CrlHeader newestFullCrl;
             if (!ignoreNextUpdate && lastFullCrl != null && now.before(lastFullCrl.getNextUpdate())) {
                 log.info("Next full CRL update for CA '" + caInfo.getName() + "' will be " + ValidityDate.formatAsISO8601(lastFullCrl.getNextUpdate(), null) + ". Skipping download.");
                 newestFullCrl = lastFullCrl;
             } else {
-                final X509CRL downloadedFullCrl = getAndProcessCrl(url, caCertificate, caInfo, importCrlSession, crlPartitionIndex);
+                final CrlHeader downloadedFullCrl = getAndProcessCrl(url, caCertificate, caInfo, importCrlSession, crlPartitionIndex);
                 if (downloadedFullCrl == null) {
                     newestFullCrl = lastFullCrl;
                 } else {
@@ -168,10 +168,10 @@ public class CRLDownloadWorker extends BaseWorker {
                 }
             }
             if (newestFullCrl != null) {
-                final List<String> freshestCdps = CrlExtensions.extractFreshestCrlDistributionPoints(newestFullCrl);
+                final List<String> freshestCdps = CrlExtensions.extractFreshestCrlDistributionPoints(newestFullCrl.getExtensions());
                 if (!freshestCdps.isEmpty()) {
                     // Delta CRLs are used and we might already have a valid one stored
-                    X509CRL lastDeltaCrl = getCRLFromBytes(crlStoreSession.getLastCRL(issuerDn, crlPartitionIndex, true));
+                    CrlHeader lastDeltaCrl = getCRLFromBytes(crlStoreSession.getLastCRL(issuerDn, crlPartitionIndex, true));
                     if (lastDeltaCrl != null && lastDeltaCrl.getThisUpdate().before(newestFullCrl.getThisUpdate())) {
                         // The last known delta CRL info is already included in the latest full CRL, so treat the last delta as non-existent
                         lastDeltaCrl = null;
@@ -186,7 +186,7 @@ public class CRLDownloadWorker extends BaseWorker {
                                 log.info("Unusable Freshest CDP HTTP URL '" + freshestCdp + "' in CRL. Skipping download.");
                                 continue;
                             }
-                            final X509CRL newDeltaCrl = getAndProcessCrl(freshestCdpUrl, caCertificate, caInfo, importCrlSession, crlPartitionIndex);
+                            final CrlHeader newDeltaCrl = getAndProcessCrl(freshestCdpUrl, caCertificate, caInfo, importCrlSession, crlPartitionIndex);
                             if (newDeltaCrl != null) {
                                 break;
                             }
@@ -203,17 +203,17 @@ public class CRLDownloadWorker extends BaseWorker {
         } 
     }
 
-    private X509CRL getCRLFromBytes(final byte[] crlBytes) throws CRLException {
+    private CrlHeader getCRLFromBytes(final byte[] crlBytes) throws CRLException {
         if (crlBytes != null) {
-            return CertTools.getCRLfromByteArray(crlBytes);
+            return CrlHeader.fromCrl(crlBytes);
         }
         return null;
     }
 
-    private X509CRL getAndProcessCrl(final URL cdpUrl, final X509Certificate caCertificate, final CAInfo caInfo,
+    private CrlHeader getAndProcessCrl(final URL cdpUrl, final X509Certificate caCertificate, final CAInfo caInfo,
                                      final ImportCrlSessionLocal importCrlSession, final int crlPartitionIndex) throws CrlStoreException, CrlImportException, ServiceExecutionFailedException {
         final int maxSize = PropertyTools.get(properties, PROP_MAX_DOWNLOAD_SIZE, DEFAULT_MAX_DOWNLOAD_SIZE);
-        X509CRL newCrl = null;
+        CrlHeader newCrl = null;
         final byte[] crlBytesNew = NetworkTools.downloadDataFromUrl(cdpUrl, maxSize);
         if (crlBytesNew == null) {
             String msg = "Unable to download CRL for " + CertTools.getSubjectDN(caCertificate) + "  with url: " + cdpUrl;
@@ -221,7 +221,7 @@ public class CRLDownloadWorker extends BaseWorker {
             throw new ServiceExecutionFailedException(msg);
         } else {
             try {
-                newCrl = CertTools.getCRLfromByteArray(crlBytesNew);
+                newCrl = CrlHeader.fromCrl(crlBytesNew);
                 importCrlSession.importCrl(admin, caInfo, crlBytesNew, crlPartitionIndex);
             } catch (CRLException e) {
                 String msg = "Unable to decode downloaded CRL for '" + caInfo.getSubjectDN() + "'.";
@@ -15,9 +15,12 @@ package org.ejbca.core.model.services.workers;
 import java.security.cert.Certificate;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.log4j.Logger;
 import org.cesecore.authorization.AuthorizationDeniedException;
@@ -45,9 +48,19 @@ public class CertificateExpirationNotifierWorker extends EmailSendingWorker {
 
     private static final Logger log = Logger.getLogger(CertificateExpirationNotifierWorker.class);
 
+    /** Number of certificates to process at a time. Some databases limit the number of values in an IN clause to 1000. */
+    private static final int BATCH_SIZE = 1000;
+
     private CertificateStoreSessionLocal certificateStoreSession;
     private transient List<Integer> certificateProfileIds;
 
+    // Progress of the current run
+    private int certificateCount;
+    private int chunkCount;
+    private int updatedCount;
+    private int userNotificationCount;
+    private int adminNotificationCount;
+
     
     @Override
     public void canWorkerRun(Map<Class<?>, Object> ejbs) throws ServiceExecutionFailedException {
@@ -65,9 +78,11 @@ public class CertificateExpirationNotifierWorker extends EmailSendingWorker {
         final CaSessionLocal caSession = ((CaSessionLocal) ejbs.get(CaSessionLocal.class));
         certificateStoreSession = ((CertificateStoreSessionLocal) ejbs.get(CertificateStoreSessionLocal.class));
         final EndEntityAccessSessionLocal endEntityAccessSession = ((EndEntityAccessSessionLocal) ejbs.get(EndEntityAccessSessionLocal.class));
-
-        List<EmailCertData> userEmailQueue = new ArrayList<>();
-        List<EmailCertData> adminEmailQueue = new ArrayList<>();
+        certificateCount = 0;
+        chunkCount = 0;
+        updatedCount = 0;
+        userNotificationCount = 0;
+        adminNotificationCount = 0;
 
         // Build Query
         Collection<String> cas = new ArrayList<>();
@@ -140,82 +155,27 @@ public class CertificateExpirationNotifierWorker extends EmailSendingWorker {
                     log.debug("Looking for expiring certificates for CAs '"+caIds+"' and certificate profiles '"+certificateProfileIds+"', with expire treshold: "+thresHold+
                             ". activeNotifiedExpireDateMin: "+now+", activeNotifiedExpireDateMax: "+(nextRunTimeStamp + thresHold)+", activeExpireDateMin: "+(runTimeStamp + thresHold));
                 }
-                try {
-                    List<Object[]> fingerprintUsernameList = certificateStoreSession.findExpirationInfo(cas, certificateProfileIds, now, (nextRunTimeStamp + thresHold),
-                            (runTimeStamp + thresHold));
-                    int count = 0;
-                    for (Object[] next : fingerprintUsernameList) {
-                        count++;
-                        // For each certificate update status.
-                        String fingerprint = (String) next[0];
-                        String username = (String) next[1];
-                        // Get the certificate through a session bean
-                        if(log.isDebugEnabled()) {
-                            log.debug("Found a certificate we should notify. Username=" + username + ", fp=" + fingerprint);
-                        }
-                        Certificate cert = certificateStoreSession.findCertificateByFingerprint(fingerprint);
-                        EndEntityInformation userData = endEntityAccessSession.findUser(getAdmin(), username);
-                        if (userData != null) {
-                            if (isSendToEndUsers()) {
-                                if (userData.getEmail() == null || userData.getEmail().trim().equals("")) {
-                                    log.info("Sending email notification to user " + username + " failed, no email address configured.");
-                                } else {
-                                    // Populate end user message
-                                    if(log.isDebugEnabled()) {
-                                        log.debug("Adding to email queue for user: " + userData.getEmail());
-                                    }
-                                    final UserNotificationParamGen userNotificationParamGen = new UserNotificationParamGen(userData, cert);
-                                    final String message = userNotificationParamGen.interpolate(getEndUserMessage());
-                                    final String subject = userNotificationParamGen.interpolate(getEndUserSubject());
-                                    final MailActionInfo mailActionInfo = new MailActionInfo(userData.getEmail(), subject, message);
-                                    userEmailQueue.add(new EmailCertData(fingerprint, mailActionInfo));
-                                }
-                            }
-                        } else {
-                            if(log.isDebugEnabled()) {
-                                log.debug("Trying to send notification to user, but no UserData can be found for user '" + username
-                                    + "', will only send to admin if admin notifications are defined.");
-                            }
-                        }
-                        if (isSendToAdmins()) {
-                            // If we did not have any user for this, we will simply use empty values for substitution
-                            if (userData == null) {
-                                userData = new EndEntityInformation();
-                                userData.setUsername(username);
-                            }
-                            // Populate admin message
-                            if(log.isDebugEnabled()) {
-                                log.debug("Adding to email queue for admin");
-                            }
-                            final UserNotificationParamGen userNotificationParamGen = new UserNotificationParamGen(userData, cert);
-                            final String message = userNotificationParamGen.interpolate(getAdminMessage());
-                            final String subject = userNotificationParamGen.interpolate(getAdminSubject());
-                            final MailActionInfo mailActionInfo = new MailActionInfo(null, subject, message);
-                            adminEmailQueue.add(new EmailCertData(fingerprint, mailActionInfo));
-                        }
-                        if (!isSendToEndUsers() && !isSendToAdmins()) {
-                            // a little bit of a kludge to make JUnit testing feasible...
-                            if(log.isDebugEnabled()) {
-                                log.debug("nobody to notify for cert with fp:" + fingerprint);
-                            }
-                            updateStatus(fingerprint, CertificateConstants.CERT_NOTIFIEDABOUTEXPIRATION);
-                        }
+                // Process the certificates in chunks, so that the certificates and users are read with one query per chunk, and the
+                // status of the certificates is updated with one statement per chunk, instead of one of each per certificate.
+                String lastFingerprint = null;
+                List<Object[]> fingerprintUsernameList;
+                do {
+                    fingerprintUsernameList = certificateStoreSession.findExpirationInfo(cas, certificateProfileIds, now, (nextRunTimeStamp + thresHold),
+                            (runTimeStamp + thresHold), lastFingerprint, BATCH_SIZE);
+                    if (fingerprintUsernameList.isEmpty()) {
+                        break;
                     }
-                    if (count == 0) {
-                        if(log.isDebugEnabled()) {
-                            log.debug("No certificates found for notification.");
-                        }
+                    lastFingerprint = (String) fingerprintUsernameList.get(fingerprintUsernameList.size() - 1)[0];
+                    processCertificates(fingerprintUsernameList, endEntityAccessSession, ejbs);
+                    chunkCount++;
+                    if (log.isDebugEnabled()) {
+                        log.debug("Processed chunk " + chunkCount + " with " + fingerprintUsernameList.size() + " certificates. " + getProgress());
+                    }
+                } while (fingerprintUsernameList.size() == BATCH_SIZE);
+                if (certificateCount == 0) {
+                    if(log.isDebugEnabled()) {
+                        log.debug("No certificates found for notification.");
                     }
-
-                } catch (AuthorizationDeniedException fe) {
-                    log.error("Error running service work: ", fe);
-                    throw new IllegalStateException("Internal admin was denied access.", fe);
-                }
-                if (isSendToEndUsers()) {
-                    sendEmails(userEmailQueue, ejbs);
-                }
-                if (isSendToAdmins()) {
-                    sendEmails(adminEmailQueue, ejbs);
                 }
             } else {
                 log.info("CAs select collection is empty, there were ids but no names?");
@@ -225,13 +185,110 @@ public class CertificateExpirationNotifierWorker extends EmailSendingWorker {
             
         }
         log.trace("<CertificateExpirationNotifierWorker.work ended");
-        if (userEmailQueue.isEmpty() && adminEmailQueue.isEmpty()) {
-            return new ServiceExecutionResult(Result.NO_ACTION, "Certificate Expiration Worker ran, but no notifications were needed to be sent out.");
+        if (userNotificationCount == 0 && adminNotificationCount == 0) {
+            return new ServiceExecutionResult(Result.NO_ACTION, "Certificate Expiration Worker ran, but no notifications were needed to be sent out. "
+                    + getProgress());
+        } else {
+            return new ServiceExecutionResult(Result.SUCCESS, "Notifications were sent out to " + userNotificationCount + " users and "
+                    + adminNotificationCount + " administrators. " + getProgress());
+        }
+    }
+
+    /**
+     * Creates the notifications for a chunk of expiring certificates, sends them and marks the certificates as notified about expiration.
+     *
+     * @param fingerprintUsernameList [0] = (String) fingerprint, [1] = (String) username
+     */
+    private void processCertificates(final List<Object[]> fingerprintUsernameList, final EndEntityAccessSessionLocal endEntityAccessSession,
+            final Map<Class<?>, Object> ejbs) throws ServiceExecutionFailedException {
+        final List<EmailCertData> emailQueue = new ArrayList<>();
+        final List<String> notNotifiedFingerprints = new ArrayList<>();
+        final Map<String, Certificate> certificates;
+        final Map<String, EndEntityInformation> users;
+        if (isSendToEndUsers() || isSendToAdmins()) {
+            final Set<String> fingerprints = new HashSet<>();
+            final Set<String> usernames = new HashSet<>();
+            for (final Object[] next : fingerprintUsernameList) {
+                fingerprints.add((String) next[0]);
+                if (next[1] != null) {
+                    usernames.add((String) next[1]);
+                }
+            }
+            certificates = certificateStoreSession.findCertificatesByFingerprints(fingerprints);
+            users = endEntityAccessSession.findUsers(usernames);
         } else {
-            return new ServiceExecutionResult(Result.SUCCESS, "Notifications were sent out to "
-                    + (userEmailQueue.isEmpty() ? "" : userEmailQueue.size() + " users")
-                    + (userEmailQueue.isEmpty() ? "" : " and" + (adminEmailQueue.isEmpty() ? "" : adminEmailQueue.size() + " administators") + "."));
+            certificates = Collections.emptyMap();
+            users = Collections.emptyMap();
+        }
+        for (final Object[] next : fingerprintUsernameList) {
+            certificateCount++;
+            // For each certificate update status.
+            final String fingerprint = (String) next[0];
+            final String username = (String) next[1];
+            if(log.isDebugEnabled()) {
+                log.debug("Found a certificate we should notify. Username=" + username + ", fp=" + fingerprint);
+            }
+            final Certificate cert = certificates.get(fingerprint);
+            EndEntityInformation userData = users.get(username);
+            if (userData != null) {
+                if (isSendToEndUsers()) {
+                    if (userData.getEmail() == null || userData.getEmail().trim().equals("")) {
+                        log.info("Sending email notification to user " + username + " failed, no email address configured.");
+                    } else {
+                        // Populate end user message
+                        if(log.isDebugEnabled()) {
+                            log.debug("Adding to email queue for user: " + userData.getEmail());
+                        }
+                        final UserNotificationParamGen userNotificationParamGen = new UserNotificationParamGen(userData, cert);
+                        final String message = userNotificationParamGen.interpolate(getEndUserMessage());
+                        final String subject = userNotificationParamGen.interpolate(getEndUserSubject());
+                        final MailActionInfo mailActionInfo = new MailActionInfo(userData.getEmail(), subject, message);
+                        emailQueue.add(new EmailCertData(fingerprint, mailActionInfo));
+                        userNotificationCount++;
+                    }
+                }
+            } else {
+                if(log.isDebugEnabled()) {
+                    log.debug("Trying to send notification to user, but no UserData can be found for user '" + username
+                        + "', will only send to admin if admin notifications are defined.");
+                }
+            }
+            if (isSendToAdmins()) {
+                // If we did not have any user for this, we will simply use empty values for substitution
+                if (userData == null) {
+                    userData = new EndEntityInformation();
+                    userData.setUsername(username);
+                }
+                // Populate admin message
+                if(log.isDebugEnabled()) {
+                    log.debug("Adding to email queue for admin");
+                }
+                final UserNotificationParamGen userNotificationParamGen = new UserNotificationParamGen(userData, cert);
+                final String message = userNotificationParamGen.interpolate(getAdminMessage());
+                final String subject = userNotificationParamGen.interpolate(getAdminSubject());
+                final MailActionInfo mailActionInfo = new MailActionInfo(null, subject, message);
+                emailQueue.add(new EmailCertData(fingerprint, mailActionInfo));
+                adminNotificationCount++;
+            }
+            if (!isSendToEndUsers() && !isSendToAdmins()) {
+                // a little bit of a kludge to make JUnit testing feasible...
+                if(log.isDebugEnabled()) {
+                    log.debug("nobody to notify for cert with fp:" + fingerprint);
+                }
+                notNotifiedFingerprints.add(fingerprint);
+            }
         }
+        if (!notNotifiedFingerprints.isEmpty()) {
+            updateStatus(notNotifiedFingerprints, CertificateConstants.CERT_NOTIFIEDABOUTEXPIRATION);
+        }
+        // The user and admin emails of the chunk are sent together, so each certificate is only updated once
+        sendEmails(emailQueue, ejbs);
+    }
+
+    /** @return the progress of the current run, included in the result of the service execution */
+    private String getProgress() {
+        return "Processed " + certificateCount + " expiring certificates in " + chunkCount + " chunks, and updated the status of "
+                + updatedCount + " certificates.";
     }
 
     /**
@@ -245,6 +302,8 @@ public class CertificateExpirationNotifierWorker extends EmailSendingWorker {
         try {
             if (!certificateStoreSession.setStatus(getAdmin(), pk, status)) {
                 log.error("Error updating certificate status for certificate with fingerprint: " + pk);
+            } else {
+                updatedCount++;
             }
         } catch (AuthorizationDeniedException e) {
             // Should not be possible...
@@ -253,6 +312,31 @@ public class CertificateExpirationNotifierWorker extends EmailSendingWorker {
         }
     }
     
+    /**
+     * Updates the status of all certificates with a single statement, if the status is {@link CertificateConstants#CERT_NOTIFIEDABOUTEXPIRATION}.
+     * 
+     * @param pks fingerprints of the certificates to update
+     * @param status status to update to
+     */
+    @Override
+    protected void updateStatus(Collection<String> pks, int status) {
+        if (status != CertificateConstants.CERT_NOTIFIEDABOUTEXPIRATION) {
+            super.updateStatus(pks, status);
+            return;
+        }
+        try {
+            final int updated = certificateStoreSession.setNotifiedAboutExpirationStatus(getAdmin(), pks);
+            updatedCount += updated;
+            if (updated != pks.size() && log.isDebugEnabled()) {
+                log.debug("Updated the status of " + updated + " of " + pks.size() + " certificates. The others are no longer active.");
+            }
+        } catch (AuthorizationDeniedException e) {
+            // Should not be possible...
+            log.error("Internal admin not authorized: ", e);
+            throw new RuntimeException(e);
+        }
+    }
+
     /**
      * Returns the Set of Certificate Profile IDs. For performance reasons cached as a 
      * transient class variable.
@@ -13,9 +13,11 @@
 
 package org.ejbca.core.model.services.workers;
 
-import java.util.Iterator;
+import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.log4j.Logger;
 import org.cesecore.certificates.certificate.CertificateConstants;
@@ -67,17 +69,45 @@ public abstract class EmailSendingWorker extends BaseWorker {
 	 */
 	protected abstract void updateStatus(String pk, int status);
 	
+	/** Updates the status of several objects. The default implementation updates one object at a time with {@link #updateStatus(String, int)}.
+	 * @param pks primary keys of objects to update
+	 * @param status status to update to
+	 */
+	protected void updateStatus(Collection<String> pks, int status) {
+		for (final String pk : pks) {
+			updateStatus(pk, status);
+		}
+	}
+
+	/** Sends the emails in the queue, and then updates the status of all objects that emails were sent for at once,
+	 * also if sending an email fails. An object with several emails in the queue is only updated once.
+	 * If both sending and the status update fail, the status update error is added as suppressed to the send error.
+	 */
 	protected void sendEmails(List<EmailCertData> queue, Map<Class<?>, Object> ejbs) throws ServiceExecutionFailedException {
-		Iterator<EmailCertData> iter = queue.iterator();
-		while(iter.hasNext()){			
-			try{
-				EmailCertData next = iter.next();								
+		final Set<String> sent = new LinkedHashSet<>();
+		ServiceExecutionFailedException sendFailure = null;
+		try {
+			for (final EmailCertData next : queue) {
 				getAction().performAction(next.getActionInfo(), ejbs);
-				updateStatus(next.getFingerPrint(), CertificateConstants.CERT_NOTIFIEDABOUTEXPIRATION);
-			} catch (Exception fe) {
-				log.error("Error sending emails: ", fe);
-				throw new ServiceExecutionFailedException(fe);
-			} 
+				sent.add(next.getFingerPrint());
+			}
+		} catch (Exception fe) {
+			log.error("Error sending emails: ", fe);
+			sendFailure = new ServiceExecutionFailedException(fe);
+		}
+		if (!sent.isEmpty()) {
+			try {
+				updateStatus(sent, CertificateConstants.CERT_NOTIFIEDABOUTEXPIRATION);
+			} catch (RuntimeException e) {
+				if (sendFailure == null) {
+					throw e;
+				}
+				log.error("Error updating the status of " + sent.size() + " objects that emails were sent for: ", e);
+				sendFailure.addSuppressed(e);
+			}
+		}
+		if (sendFailure != null) {
+			throw sendFailure;
 		}
 	}
 
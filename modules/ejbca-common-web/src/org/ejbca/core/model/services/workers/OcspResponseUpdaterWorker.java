@@ -0,0 +1,222 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.model.services.workers;
+
+import java.math.BigInteger;
+import java.security.cert.X509Certificate;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.log4j.Logger;
+import org.cesecore.authorization.AuthorizationDeniedException;
+import org.cesecore.certificates.ca.CAConstants;
+import org.cesecore.certificates.ca.CAInfo;
+import org.cesecore.certificates.ca.CaSessionLocal;
+import org.cesecore.certificates.ca.X509CAInfo;
+import org.cesecore.certificates.ocsp.cache.OcspSigningCache;
+import org.cesecore.certificates.ocsp.cache.OcspSigningCacheEntry;
+import org.cesecore.oscp.OcspResponseData;
+import org.ejbca.core.ejb.ocsp.OcspDataSessionLocal;
+import org.ejbca.core.ejb.ocsp.OcspPresignStatistics;
+import org.ejbca.core.ejb.ocsp.OcspResponseGeneratorSessionLocal;
+import org.ejbca.core.ejb.ocsp.PresignResponseValidity;
+import org.ejbca.core.model.services.BaseWorker;
+import org.ejbca.core.model.services.ServiceExecutionFailedException;
+import org.ejbca.core.model.services.ServiceExecutionResult;
+import org.ejbca.core.model.services.ServiceExecutionResult.Result;
+
+/**
+ * Re-signs pre-produced OCSP responses before they expire, so that OCSP requests for CAs with pre-production enabled
+ * can be answered from the response store without signing.
+ * <p>
+ * Each run re-signs the stored responses with a nextUpdate within the configured time before expiry, the responses that expire
+ * first are re-signed first. The number of signatures per second is limited per OcspKeyBinding (or per CA, if the CA signs its
+ * own responses), so a large number of responses that become due at the same time, e.g. after pre-production was enabled
+ * for a CA, is spread over several runs and their new nextUpdate values are spread in the same way. A run stops before the
+ * next run is due, and what is left is processed by the next run. The validity of each pre-signed response is shortened by a
+ * random part (see OcspResponseGeneratorSessionBean), so responses signed together do not all become due together again.
+ * <p>
+ * The results are counted in {@link OcspPresignStatistics}, which is available from the metrics servlet.
+ */
+public class OcspResponseUpdaterWorker extends BaseWorker {
+
+    private static final Logger log = Logger.getLogger(OcspResponseUpdaterWorker.class);
+
+    public static final String PROP_INCLUDE_EXPIRED_CERTIFICATES = "includeExpiredCertificates";
+    public static final String PROP_CERTID_HASH_ALGORITHM = "certIdHashAlgorithm";
+    public static final String PROP_MAX_SIGNATURES_PER_SECOND = "maxSignaturesPerSecond";
+
+    public static final String DEFAULT_CERTID_HASH_ALGORITHM = "SHA256";
+    public static final int DEFAULT_MAX_SIGNATURES_PER_SECOND = 10;
+
+    /** Number of stored responses fetched from the database at a time */
+    private static final int BATCH_SIZE = 100;
+    /** Part of the service interval that a run may use, so runs do not overlap */
+    private static final double MAX_RUN_TIME_FRACTION = 0.9;
+
+    @Override
+    public void canWorkerRun(final Map<Class<?>, Object> ejbs) throws ServiceExecutionFailedException {
+        // Signing failures are counted per response when the worker runs, so there is nothing to check in advance
+    }
+
+    @Override
+    public ServiceExecutionResult work(final Map<Class<?>, Object> ejbs) throws ServiceExecutionFailedException {
+        final CaSessionLocal caSession = (CaSessionLocal) ejbs.get(CaSessionLocal.class);
+        final OcspDataSessionLocal ocspDataSession = (OcspDataSessionLocal) ejbs.get(OcspDataSessionLocal.class);
+        final OcspResponseGeneratorSessionLocal ocspResponseGeneratorSession = (OcspResponseGeneratorSessionLocal) ejbs
+                .get(OcspResponseGeneratorSessionLocal.class);
+        final long timeBeforeExpire = getTimeBeforeExpire();
+        final boolean includeExpiredCertificates = Boolean.parseBoolean(properties.getProperty(PROP_INCLUDE_EXPIRED_CERTIFICATES, "false"));
+        final String certIdHashAlgorithm = properties.getProperty(PROP_CERTID_HASH_ALGORITHM, DEFAULT_CERTID_HASH_ALGORITHM);
+        final int maxSignaturesPerSecond = getMaxSignaturesPerSecond();
+        final long start = System.currentTimeMillis();
+        final long deadline = start + (long) (getNextInterval() * 1000 * MAX_RUN_TIME_FRACTION);
+
+        final RunStatus status = new RunStatus();
+        for (final int caId : getAllCAIdsToCheck(caSession, false)) {
+            final X509Certificate caCertificate = getCaCertificate(caSession, caId);
+            if (caCertificate == null) {
+                continue;
+            }
+            try {
+                resignCa(ocspDataSession, ocspResponseGeneratorSession, caId, caCertificate, getRateLimitKey(caId, caCertificate),
+                        start + timeBeforeExpire, includeExpiredCertificates, certIdHashAlgorithm, maxSignaturesPerSecond, deadline, status);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.info("OCSP Response Updater Worker " + serviceName + " was interrupted.");
+                break;
+            }
+        }
+        final long duration = System.currentTimeMillis() - start;
+        OcspPresignStatistics.INSTANCE.addResigned(status.resigned);
+        OcspPresignStatistics.INSTANCE.addFailed(status.failed);
+        OcspPresignStatistics.INSTANCE.addExpiredBeforeResign(status.expired);
+        OcspPresignStatistics.INSTANCE.setLastRun(status.resigned, duration, status.resigned == 0 ? 0 : status.minMarginMs, status.backlog);
+        if (log.isDebugEnabled()) {
+            log.debug("OCSP Response Updater Worker " + serviceName + " finished in " + duration + " ms. " + OcspPresignStatistics.INSTANCE.getStatistics());
+        }
+        if (status.resigned == 0 && status.failed == 0) {
+            return new ServiceExecutionResult(Result.NO_ACTION, "OCSP Response Updater Worker " + serviceName + " ran, but no responses needed updating.");
+        }
+        final StringBuilder msg = new StringBuilder("OCSP Response Updater Worker " + serviceName + " re-signed " + status.resigned + " responses.");
+        if (status.failed > 0) {
+            msg.append(" ").append(status.failed).append(" responses could not be re-signed.");
+        }
+        if (status.backlog > 0) {
+            msg.append(" Due responses were left for the next run because of the signing rate limit.");
+        }
+        return new ServiceExecutionResult(status.failed == 0 ? Result.SUCCESS : Result.FAILURE, msg.toString());
+    }
+
+    private void resignCa(final OcspDataSessionLocal ocspDataSession, final OcspResponseGeneratorSessionLocal ocspResponseGeneratorSession,
+            final int caId, final X509Certificate caCertificate, final String rateLimitKey, final long expirationDate,
+            final boolean includeExpiredCertificates, final String certIdHashAlgorithm, final int maxSignaturesPerSecond, final long deadline,
+            final RunStatus status) throws InterruptedException {
+        // A re-signed response no longer matches the query, so the same page is read again until nothing is due. Responses that
+        // are still returned after an attempt could not be re-signed, and are skipped.
+        final Set<String> attempted = new HashSet<>();
+        int offset = 0;
+        while (true) {
+            final List<OcspResponseData> responses = ocspDataSession.findExpiringOcspResponses(caId, expirationDate, BATCH_SIZE, offset);
+            if (responses.isEmpty()) {
+                return;
+            }
+            boolean attemptedAny = false;
+            for (final OcspResponseData response : responses) {
+                if (!attempted.add(response.getSerialNumber())) {
+                    continue;
+                }
+                if (!OcspSigningRateLimiter.INSTANCE.acquire(rateLimitKey, maxSignaturesPerSecond, deadline)) {
+                    // Everything still due is left for the next run, including the responses that could not be re-signed in this run
+                    status.backlog += ocspDataSession.countExpiringOcspResponses(caId, expirationDate);
+                    return;
+                }
+                attemptedAny = true;
+                final long now = System.currentTimeMillis();
+                final long marginMs = response.getNextUpdate() == null ? 0 : response.getNextUpdate() - now;
+                ocspResponseGeneratorSession.preSignOcspResponse(caCertificate, new BigInteger(response.getSerialNumber()),
+                        PresignResponseValidity.CONFIGURATION_BASED_SPREAD, includeExpiredCertificates, certIdHashAlgorithm);
+                // preSignOcspResponse logs and swallows errors, so a stored response with a newer producedAt is the only sign of success
+                final OcspResponseData latest = ocspDataSession.findOcspDataByCaIdSerialNumber(caId, response.getSerialNumber());
+                if (latest == null || latest.getProducedAt() <= response.getProducedAt()) {
+                    status.failed++;
+                    continue;
+                }
+                status.resigned++;
+                status.minMarginMs = Math.min(status.minMarginMs, marginMs);
+                if (marginMs < 0) {
+                    status.expired++;
+                }
+            }
+            if (!attemptedAny) {
+                offset += responses.size();
+            }
+        }
+    }
+
+    private X509Certificate getCaCertificate(final CaSessionLocal caSession, final int caId) {
+        try {
+            final CAInfo caInfo = caSession.getCAInfo(getAdmin(), caId);
+            if (caInfo == null) {
+                log.warn("CA with CA id " + caId + " not found.");
+                return null;
+            }
+            if (caInfo.getCAType() != CAInfo.CATYPE_X509 || caInfo.getStatus() != CAConstants.CA_ACTIVE
+                    || !((X509CAInfo) caInfo).isDoPreProduceOcspResponses() || caInfo.getCertificateChain().isEmpty()) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Not updating OCSP responses of CA " + caInfo.getName() + ", since it is not an active X509 CA with pre-production of OCSP responses.");
+                }
+                return null;
+            }
+            return (X509Certificate) caInfo.getCertificateChain().get(0);
+        } catch (AuthorizationDeniedException e) {
+            log.error("Internal authentication token was denied access to CA with CA id " + caId + ".", e);
+            return null;
+        }
+    }
+
+    /** @return the key that the signing rate is limited by, the OcspKeyBinding used for the CA if there is one, otherwise the CA itself */
+    private String getRateLimitKey(final int caId, final X509Certificate caCertificate) {
+        for (final OcspSigningCacheEntry entry : OcspSigningCache.INSTANCE.getEntries()) {
+            if (entry.getOcspKeyBinding() != null && caCertificate.equals(entry.getIssuerCaCertificate())) {
+                return "keybinding:" + entry.getOcspKeyBinding().getId();
+            }
+        }
+        return "ca:" + caId;
+    }
+
+    private int getMaxSignaturesPerSecond() throws ServiceExecutionFailedException {
+        final String value = properties.getProperty(PROP_MAX_SIGNATURES_PER_SECOND);
+        if (StringUtils.isEmpty(value)) {
+            return DEFAULT_MAX_SIGNATURES_PER_SECOND;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new ServiceExecutionFailedException("OCSP Response Updater Worker " + serviceName + " is misconfigured, check "
+                    + PROP_MAX_SIGNATURES_PER_SECOND + " value.", e);
+        }
+    }
+
+    /** Results of one run */
+    private static final class RunStatus {
+        private int resigned = 0;
+        private int failed = 0;
+        private int expired = 0;
+        private long backlog = 0;
+        private long minMarginMs = Long.MAX_VALUE;
+    }
+}
@@ -0,0 +1,65 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.model.services.workers;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the number of background OCSP signatures per signing key on this node, so that re-signing of pre-produced responses
+ * leaves enough HSM capacity for OCSP requests that must be signed on demand. All services on the node share the limit of a key.
+ */
+public enum OcspSigningRateLimiter {
+    INSTANCE;
+
+    /** Time at which the next signature with a key may be made, in System.nanoTime() */
+    private final Map<String, long[]> nextPermitNanos = new ConcurrentHashMap<>();
+
+    /**
+     * Waits until one more signature may be made with the key.
+     *
+     * @param key identifies the signing key, for example the id of the OcspKeyBinding
+     * @param signaturesPerSecond maximum rate for the key, 0 or less for no limit
+     * @param deadline System.currentTimeMillis() after which the caller does not want to wait
+     * @return true if the signature may be made, false if that would not be until after the deadline
+     * @throws InterruptedException if the thread was interrupted while waiting
+     */
+    public boolean acquire(final String key, final int signaturesPerSecond, final long deadline) throws InterruptedException {
+        if (signaturesPerSecond <= 0) {
+            return System.currentTimeMillis() <= deadline;
+        }
+        final long intervalNanos = TimeUnit.SECONDS.toNanos(1) / signaturesPerSecond;
+        final long[] nextPermit = nextPermitNanos.computeIfAbsent(key, k -> new long[] { System.nanoTime() });
+        final long waitNanos;
+        synchronized (nextPermit) {
+            final long now = System.nanoTime();
+            // Unused permits are not saved up, so a key that has been idle does not get a burst
+            final long permit = Math.max(now, nextPermit[0]);
+            waitNanos = permit - now;
+            if (System.currentTimeMillis() + TimeUnit.NANOSECONDS.toMillis(waitNanos) > deadline) {
+                return false;
+            }
+            nextPermit[0] = permit + intervalNanos;
+        }
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+        return true;
+    }
+
+    /** Forget all keys. */
+    public void clear() {
+        nextPermitNanos.clear();
+    }
+}
@@ -19,6 +19,7 @@ import org.apache.log4j.Logger;
 import org.cesecore.util.KeyedLock;
 import org.cesecore.util.PropertyTools;
 import org.ejbca.core.ejb.ca.publisher.PublisherQueueSessionLocal;
+import org.ejbca.core.ejb.ca.publisher.PublisherQueueStatistics;
 import org.ejbca.core.ejb.ca.publisher.PublisherSessionLocal;
 import org.ejbca.core.ejb.ca.publisher.PublishingResult;
 import org.ejbca.core.model.ca.publisher.BasePublisher;
@@ -39,8 +40,11 @@ public class PublishQueueProcessWorker extends EmailSendingWorker {
 
     public static final String PROP_PUBLISHER_IDS = "publisherids";
     public static final String PROP_MAX_WORKER_JOBS = "maxWorkerJobs";
+    /** Number of queue partitions that are published concurrently, 1 (the default) publishes one entry at a time */
+    public static final String PROP_PARALLELISM = "publisherQueueParallelism";
     
     public static final long DEFAULT_QUEUE_WORKER_JOBS = 20000L;
+    public static final int DEFAULT_PARALLELISM = 1;
 
     /**
      * Semaphore making sure not two identical services run at the same time.
@@ -92,6 +96,7 @@ public class PublishQueueProcessWorker extends EmailSendingWorker {
                 Object o = properties.get(PROP_PUBLISHER_IDS);
                 if (o != null) {
                     final long maxNumberOfEntriesToCheck = PropertyTools.get(properties, PROP_MAX_WORKER_JOBS, DEFAULT_QUEUE_WORKER_JOBS);
+                    final int parallelism = PropertyTools.get(properties, PROP_PARALLELISM, DEFAULT_PARALLELISM);
                     String idstr = (String) o;
                     if (log.isDebugEnabled()) {
                         log.debug("Publisher IDs: " + idstr);
@@ -106,7 +111,15 @@ public class PublishQueueProcessWorker extends EmailSendingWorker {
                         int publisherId = Integer.valueOf(ids[i]);
                         // Get everything from the queue for this publisher id
                         BasePublisher publisher = publisherSession.getPublisher(publisherId);
-                        publishingResult.append(publisherQueueSession.plainFifoTryAlwaysLimit100EntriesOrderByTimeCreated(getAdmin(), publisher, maxNumberOfEntriesToCheck));
+                        if (parallelism > 1) {
+                            publishingResult.append(publisherQueueSession.processQueueInParallel(getAdmin(), publisher, maxNumberOfEntriesToCheck, parallelism));
+                            if (log.isDebugEnabled()) {
+                                log.debug("Publisher queue statistics for publisher " + publisherId + ": "
+                                        + PublisherQueueStatistics.INSTANCE.getCounters(publisherId));
+                            }
+                        } else {
+                            publishingResult.append(publisherQueueSession.plainFifoTryAlwaysLimit100EntriesOrderByTimeCreated(getAdmin(), publisher, maxNumberOfEntriesToCheck));
+                        }
                     }
                 } else {
                     log.debug("No publisher IDs configured for worker.");
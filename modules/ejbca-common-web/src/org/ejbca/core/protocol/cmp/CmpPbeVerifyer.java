@@ -12,6 +12,7 @@
  *************************************************************************/
 package org.ejbca.core.protocol.cmp;
 
+import java.nio.ByteBuffer;
 import java.security.InvalidKeyException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
@@ -110,20 +111,27 @@ public class CmpPbeVerifyer implements CmpMessageProtectionVerifyer {
 			LOG.error(errMsg);
 			return ret;
 		} else {
-			byte[] raSecret = raAuthenticationSecret.getBytes();
-			byte[] basekey = new byte[raSecret.length + salt.length];
-	        System.arraycopy(raSecret, 0, basekey, 0, raSecret.length);
-	        System.arraycopy(salt, 0, basekey, raSecret.length, salt.length);
-			// Construct the base key according to rfc4210, section 5.1.3.1
+			// Deriving the base key is the expensive part, and clients typically use the same secret and salt for many messages
+			final ByteBuffer cacheKey = CmpPbeKeyCache.createKey(raAuthenticationSecret, salt, iterationCount,
+			        CMPObjectIdentifiers.passwordBasedMac.getId(), owfOid, macOid);
+			SecretKey key = CmpPbeKeyCache.INSTANCE.get(cacheKey);
             try {
-                MessageDigest dig = MessageDigest.getInstance(owfOid, BouncyCastleProvider.PROVIDER_NAME);
-                for (int i = 0; i < iterationCount; i++) {
-                    basekey = dig.digest(basekey);
-                    dig.reset();
+                final boolean cached = key != null;
+                if (!cached) {
+                    byte[] raSecret = raAuthenticationSecret.getBytes();
+                    byte[] basekey = new byte[raSecret.length + salt.length];
+                    System.arraycopy(raSecret, 0, basekey, 0, raSecret.length);
+                    System.arraycopy(salt, 0, basekey, raSecret.length, salt.length);
+                    // Construct the base key according to rfc4210, section 5.1.3.1
+                    MessageDigest dig = MessageDigest.getInstance(owfOid, BouncyCastleProvider.PROVIDER_NAME);
+                    for (int i = 0; i < iterationCount; i++) {
+                        basekey = dig.digest(basekey);
+                        dig.reset();
+                    }
+                    key = new SecretKeySpec(basekey, macOid);
                 }
                 // HMAC/SHA1 is normal 1.3.6.1.5.5.8.1.2 or 1.2.840.113549.2.7 
                 Mac mac = Mac.getInstance(macOid, BouncyCastleProvider.PROVIDER_NAME);
-                SecretKey key = new SecretKeySpec(basekey, macOid);
                 mac.init(key);
                 mac.reset();
                 mac.update(protectedBytes, 0, protectedBytes.length);
@@ -131,6 +139,9 @@ public class CmpPbeVerifyer implements CmpMessageProtectionVerifyer {
                 // My out should now be the same as the protection bits
                 byte[] pb = protection.getBytes();
                 ret = Arrays.equals(out, pb);
+                if (ret && !cached) {
+                    CmpPbeKeyCache.INSTANCE.put(cacheKey, key);
+                }
             } catch (NoSuchProviderException e) {
                 throw new IllegalStateException("BouncyCastle provider not found.");
             }
@@ -14,8 +14,14 @@
 package org.ejbca.core.protocol.cmp;
 
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
 import java.security.NoSuchAlgorithmException;
 
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.SecretKeyFactory;
+
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
 import org.bouncycastle.asn1.ASN1ObjectIdentifier;
@@ -28,9 +34,11 @@ import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
 import org.bouncycastle.cert.cmp.CMPException;
 import org.bouncycastle.cert.cmp.GeneralPKIMessage;
 import org.bouncycastle.cert.cmp.ProtectedPKIMessage;
+import org.bouncycastle.jcajce.spec.PBKDF2KeySpec;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.bouncycastle.operator.PBEMacCalculatorProvider;
 import org.bouncycastle.pkcs.jcajce.JcePBMac1CalculatorProviderBuilder;
+import org.bouncycastle.util.Arrays;
 import org.ejbca.core.model.InternalEjbcaResources;
 
 /**
@@ -50,6 +58,7 @@ public class CmpPbmac1Verifyer implements CmpMessageProtectionVerifyer {
     private String lastUsedRaSecret;
     private final BigInteger dkLen;
     private final AlgorithmIdentifier prf;
+    private final byte[] salt;
 	
     /**
      * Constructor for CmpPbmac1Verifyer
@@ -78,6 +87,7 @@ public class CmpPbmac1Verifyer implements CmpMessageProtectionVerifyer {
         this.iterationCount = pbkdf2Params.getIterationCount().intValue();
         this.dkLen = pbkdf2Params.getKeyLength();
         this.prf = pbkdf2Params.getPrf();
+        this.salt = pbkdf2Params.getSalt();
         final AlgorithmIdentifier macAlg = pbmac1Params.getMessageAuthScheme();
         macOid = macAlg.getAlgorithm().getId();
         if (log.isDebugEnabled()) {
@@ -109,14 +119,46 @@ public class CmpPbmac1Verifyer implements CmpMessageProtectionVerifyer {
             return ret;
         } else {
             final char[] password = raAuthenticationSecret.toCharArray();
-            final ProtectedPKIMessage protectedPkiMessage = new ProtectedPKIMessage(new GeneralPKIMessage(this.msg));
-            PBEMacCalculatorProvider macProvider = new JcePBMac1CalculatorProviderBuilder()
-                    .setProvider(BouncyCastleProvider.PROVIDER_NAME).build();
-            ret = protectedPkiMessage.verify(macProvider, password);
+            if (dkLen == null) {
+                final ProtectedPKIMessage protectedPkiMessage = new ProtectedPKIMessage(new GeneralPKIMessage(this.msg));
+                PBEMacCalculatorProvider macProvider = new JcePBMac1CalculatorProviderBuilder()
+                        .setProvider(BouncyCastleProvider.PROVIDER_NAME).build();
+                ret = protectedPkiMessage.verify(macProvider, password);
+            } else {
+                ret = verifyWithCachedKey(raAuthenticationSecret, password);
+            }
         }
         return ret;
     }
 
+    /**
+     * Verifies the MAC the same way as ProtectedPKIMessage.verify with JcePBMac1CalculatorProviderBuilder, but with the PBKDF2 key
+     * from CmpPbeKeyCache if the same secret and parameters were used before.
+     */
+    private boolean verifyWithCachedKey(final String raAuthenticationSecret, final char[] password) throws CMPException {
+        final ByteBuffer cacheKey = CmpPbeKeyCache.createKey(raAuthenticationSecret, salt, iterationCount,
+                PKCSObjectIdentifiers.id_PBMAC1.getId(), prf.getAlgorithm().getId(), dkLen.toString(), macOid);
+        SecretKey key = CmpPbeKeyCache.INSTANCE.get(cacheKey);
+        try {
+            final boolean cached = key != null;
+            if (!cached) {
+                final SecretKeyFactory keyFactory = SecretKeyFactory.getInstance("PBKDF2", BouncyCastleProvider.PROVIDER_NAME);
+                key = keyFactory.generateSecret(new PBKDF2KeySpec(password, salt, iterationCount, dkLen.intValueExact() * 8, prf));
+            }
+            final Mac mac = Mac.getInstance(macOid, BouncyCastleProvider.PROVIDER_NAME);
+            mac.init(key);
+            final byte[] protectedBytes = CmpMessageHelper.getProtectedBytes(msg);
+            mac.update(protectedBytes, 0, protectedBytes.length);
+            final boolean ret = Arrays.constantTimeAreEqual(mac.doFinal(), msg.getProtection().getOctets());
+            if (ret && !cached) {
+                CmpPbeKeyCache.INSTANCE.put(cacheKey, key);
+            }
+            return ret;
+        } catch (GeneralSecurityException | ArithmeticException e) {
+            throw new CMPException("unable to verify MAC: " + e.getMessage(), e);
+        }
+    }
+
     public String getErrMsg() {
         return errMsg;
     }
@@ -0,0 +1,87 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.ejb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link LatencyHistogram} and {@link ProfilingStats}.
+ */
+public class LatencyHistogramUnitTest {
+
+    @Test
+    public void bucketBounds() {
+        final Random random = new Random(1);
+        for (int i = 0; i < 100000; i++) {
+            final long value = (random.nextLong() >>> 1) >>> random.nextInt(63);
+            final int index = LatencyHistogram.getBucketIndex(value);
+            assertTrue("Value " + value + " below its bucket", LatencyHistogram.getBucketLowerBound(index) <= value);
+            assertTrue("Value " + value + " above its bucket", value < LatencyHistogram.getBucketLowerBound(index + 1) || value == Long.MAX_VALUE);
+        }
+        assertEquals(0, LatencyHistogram.getBucketIndex(0));
+        assertEquals(15, LatencyHistogram.getBucketIndex(15));
+        assertEquals(16, LatencyHistogram.getBucketIndex(16));
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.getBucketLowerBound(LatencyHistogram.getBucketIndex(Long.MAX_VALUE) + 1));
+    }
+
+    @Test
+    public void quantiles() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getValueAtQuantile(0.99));
+        for (long i = 1; i <= 10000; i++) {
+            // 1 µs to 10 ms
+            histogram.record(i * 1000);
+        }
+        histogram.record(-5);
+        assertEquals(10001, histogram.getCount());
+        assertEquals(10000L * 10001 / 2 * 1000, histogram.getSum());
+        for (final double quantile : new double[] { 0.5, 0.9, 0.99, 0.999, 1.0 }) {
+            final double expected = quantile * 10_000_000;
+            final long actual = histogram.getValueAtQuantile(quantile);
+            assertTrue("Quantile " + quantile + " was " + actual + ", expected about " + expected, Math.abs(actual - expected) / expected < 0.125);
+        }
+    }
+
+    @Test
+    public void profilingStats() throws Exception {
+        final ProfilingStats.MethodStats stats = ProfilingStats.INSTANCE.getMethodStats(LatencyHistogramUnitTest.class,
+                LatencyHistogramUnitTest.class.getMethod("profilingStats"));
+        assertEquals(LatencyHistogramUnitTest.class.getName() + ".profilingStats", stats.getFullMethodName());
+        final Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 10000; j++) {
+                    stats.add(2_000_000L, j % 100 == 0);
+                }
+            });
+            threads[i].start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(40000, stats.getInvocations());
+        assertEquals(400, stats.getFailures());
+        assertEquals(stats, ProfilingStats.INSTANCE.getMethodStats(stats.getFullMethodName()));
+        for (final ProfilingStat profilingStat : ProfilingStats.INSTANCE.getEjbInvocationStats()) {
+            if (profilingStat.getFullmethodName().equals(stats.getFullMethodName())) {
+                assertEquals(2, profilingStat.getAverageMilliSeconds());
+                assertEquals(2000, profilingStat.getAverageMicroSeconds());
+            }
+        }
+    }
+}
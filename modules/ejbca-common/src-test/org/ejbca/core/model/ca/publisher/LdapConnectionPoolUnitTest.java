@@ -0,0 +1,161 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA: The OpenSource Certificate Authority                          *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.model.ca.publisher;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import org.cesecore.util.ComponentMetrics;
+import org.cesecore.util.ComponentMetrics.Sample;
+import org.junit.After;
+import org.junit.Test;
+
+import com.novell.ldap.LDAPConnection;
+import com.novell.ldap.LDAPConstraints;
+import com.novell.ldap.LDAPException;
+
+/**
+ * Unit tests for {@link LdapConnectionPool}, using connections that are never connected to a real server.
+ */
+public class LdapConnectionPoolUnitTest {
+
+    /** Connection that pretends to be connected and bound until it is disconnected */
+    private static class FakeConnection extends LDAPConnection {
+        private boolean connected = true;
+        private boolean alive = true;
+
+        @Override
+        public boolean isConnected() {
+            return connected;
+        }
+
+        @Override
+        public boolean isBound() {
+            return connected;
+        }
+
+        @Override
+        public boolean isConnectionAlive() {
+            return connected && alive;
+        }
+
+        @Override
+        public void disconnect(final LDAPConstraints constraints) {
+            connected = false;
+        }
+    }
+
+    @After
+    public void after() {
+        LdapConnectionPool.closeAll();
+    }
+
+    @Test
+    public void connectionIsReused() throws LDAPException {
+        final LdapConnectionPool pool = LdapConnectionPool.getPool(1, "reuse", 0, 2, 60000);
+        final LDAPConnection first = pool.borrow("server1", server -> new FakeConnection(), 1000);
+        pool.release(first);
+        assertSame("Released connection should be reused", first, pool.borrow("server1", server -> new FakeConnection(), 1000));
+        assertNotSame("Connections are per server", first, pool.borrow("server2", server -> new FakeConnection(), 1000));
+        assertEquals(2, pool.getCreatedCount());
+        assertEquals(1, pool.getReusedCount());
+        assertEquals(2, pool.getLeasedCount());
+    }
+
+    @Test
+    public void maxConnections() throws LDAPException {
+        final LdapConnectionPool pool = LdapConnectionPool.getPool(2, "max", 0, 1, 60000);
+        final LDAPConnection first = pool.borrow("server1", server -> new FakeConnection(), 1000);
+        try {
+            pool.borrow("server1", server -> new FakeConnection(), 10);
+            fail("Should not get more than the maximum number of connections");
+        } catch (LDAPException e) {
+            assertEquals(LDAPException.CONNECT_ERROR, e.getResultCode());
+        }
+        pool.release(first);
+        assertSame(first, pool.borrow("server1", server -> new FakeConnection(), 10));
+    }
+
+    @Test
+    public void failedFactoryReleasesLease() throws LDAPException {
+        final LdapConnectionPool pool = LdapConnectionPool.getPool(3, "factory", 0, 1, 60000);
+        try {
+            pool.borrow("server1", server -> {
+                throw new LDAPException("no server", LDAPException.CONNECT_ERROR, null);
+            }, 10);
+            fail("Factory exception should be thrown");
+        } catch (LDAPException e) {
+            // Expected
+        }
+        pool.borrow("server1", server -> new FakeConnection(), 10);
+        assertEquals(1, pool.getLeasedCount());
+    }
+
+    @Test
+    public void brokenConnectionIsDiscarded() throws LDAPException {
+        final LdapConnectionPool pool = LdapConnectionPool.getPool(4, "health", 0, 2, 0);
+        final FakeConnection first = (FakeConnection) pool.borrow("server1", server -> new FakeConnection(), 1000);
+        pool.release(first);
+        first.alive = false;
+        final LDAPConnection second = pool.borrow("server1", server -> new FakeConnection(), 1000);
+        assertNotSame("Connection that failed the health check should not be reused", first, second);
+        assertFalse(first.isConnected());
+        assertEquals(1, pool.getDiscardedCount());
+        // Released connections that are no longer connected are not kept
+        second.disconnect(null);
+        pool.release(second);
+        assertEquals(0, pool.getIdleCount());
+    }
+
+    @Test
+    public void changedSettingsClosePool() throws LDAPException {
+        final LdapConnectionPool pool = LdapConnectionPool.getPool(5, "old", 0, 2, 60000);
+        final FakeConnection connection = (FakeConnection) pool.borrow("server1", server -> new FakeConnection(), 1000);
+        pool.release(connection);
+        assertNotSame(pool, LdapConnectionPool.getPool(5, "new", 0, 2, 60000));
+        assertFalse("Idle connections of the old pool should be closed", connection.isConnected());
+    }
+
+    @Test
+    public void discardedConnectionIsClosed() throws LDAPException {
+        final LdapConnectionPool pool = LdapConnectionPool.getPool(6, "discard", 0, 1, 60000);
+        final LDAPConnection first = pool.borrow("server1", server -> new FakeConnection(), 1000);
+        pool.discard(first);
+        assertFalse("Connection should be closed after a failed operation", first.isConnected());
+        assertEquals(0, pool.getIdleCount());
+        assertEquals(1, pool.getDiscardedCount());
+        // The lease is released
+        assertNotSame(first, pool.borrow("server1", server -> new FakeConnection(), 10));
+    }
+
+    @Test
+    public void metricsAreExported() throws LDAPException {
+        final LdapConnectionPool pool = LdapConnectionPool.getPool(7, "metrics", 0, 2, 60000);
+        pool.release(pool.borrow("server1", server -> new FakeConnection(), 1000));
+        pool.borrow("server1", server -> new FakeConnection(), 1000);
+        int found = 0;
+        for (final Sample sample : ComponentMetrics.INSTANCE.getSamples()) {
+            if ("7".equals(sample.getLabelValue())) {
+                if ("ejbca_ldap_pool_created_total".equals(sample.getName()) || "ejbca_ldap_pool_reused_total".equals(sample.getName())
+                        || "ejbca_ldap_pool_leased_connections".equals(sample.getName())) {
+                    assertEquals(sample.getName(), 1, sample.getValue(), 0);
+                    found++;
+                }
+            }
+        }
+        assertEquals("Pool metrics should be exported with the publisher id as label", 3, found);
+    }
+}
@@ -0,0 +1,124 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.model.validation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.cesecore.util.ComponentMetrics;
+import org.cesecore.util.ComponentMetrics.Sample;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link PublicKeyBlacklistIndex}.
+ */
+public class PublicKeyBlacklistIndexUnitTest {
+
+    private static final long MAX_AGE = 3600000L;
+
+    @After
+    public void after() {
+        PublicKeyBlacklistIndex.INSTANCE.flush();
+    }
+
+    private static String fingerprint(final int i) {
+        return String.format("%040x", i * 2654435761L);
+    }
+
+    @Test
+    public void noFalseNegatives() {
+        assertTrue("Everything might be on the list when the index is not loaded", PublicKeyBlacklistIndex.INSTANCE.mightContain(fingerprint(1)));
+        final int size = 100000;
+        final long[] hashes = new long[size];
+        long idSum = 0;
+        for (int i = 0; i < size; i++) {
+            hashes[i] = PublicKeyBlacklistIndex.hash(fingerprint(i));
+            idSum += i;
+        }
+        PublicKeyBlacklistIndex.INSTANCE.replace(hashes, size, size, idSum, 0);
+        assertTrue(PublicKeyBlacklistIndex.INSTANCE.isUpToDate(size, idSum, 0, MAX_AGE));
+        for (int i = 0; i < size; i++) {
+            assertTrue("Fingerprint " + i + " should be found", PublicKeyBlacklistIndex.INSTANCE.mightContain(fingerprint(i)));
+        }
+        for (int i = size; i < 2 * size; i++) {
+            assertFalse("Fingerprint " + i + " should not be found", PublicKeyBlacklistIndex.INSTANCE.mightContain(fingerprint(i)));
+        }
+        final double falsePositiveRate = PublicKeyBlacklistIndex.INSTANCE.getBloomFalsePositiveRate();
+        assertTrue("Unexpected false positive rate " + falsePositiveRate, falsePositiveRate > 0 && falsePositiveRate < 0.01);
+        assertTrue(PublicKeyBlacklistIndex.INSTANCE.getMemoryFootprint() >= size * 8L);
+    }
+
+    @Test
+    public void addedDuringLoadIsKept() {
+        PublicKeyBlacklistIndex.INSTANCE.replace(new long[] { PublicKeyBlacklistIndex.hash("aa") }, 1, 1, 5, 0);
+        // The entries are read from the database, then "bb" is added on this node before the loaded index replaces the current one
+        final long[] loaded = new long[] { PublicKeyBlacklistIndex.hash("aa") };
+        PublicKeyBlacklistIndex.INSTANCE.add(7, "bb");
+        PublicKeyBlacklistIndex.INSTANCE.replace(loaded, 1, 1, 5, 0);
+        assertTrue("Fingerprint added during the load should be kept", PublicKeyBlacklistIndex.INSTANCE.mightContain("bb"));
+        assertEquals(2, PublicKeyBlacklistIndex.INSTANCE.getSize());
+        // The next load includes the entry, or it has been removed
+        PublicKeyBlacklistIndex.INSTANCE.replace(loaded, 1, 1, 5, 0);
+        assertFalse("Fingerprint should only be kept until the next load", PublicKeyBlacklistIndex.INSTANCE.mightContain("bb"));
+        assertEquals(1, PublicKeyBlacklistIndex.INSTANCE.getSize());
+    }
+
+    @Test
+    public void metricsAreExported() {
+        PublicKeyBlacklistIndex.INSTANCE.replace(new long[] { PublicKeyBlacklistIndex.hash("aa"), PublicKeyBlacklistIndex.hash("bb") }, 2, 2, 3, 0);
+        final Map<String, Double> values = new HashMap<>();
+        for (final Sample sample : ComponentMetrics.INSTANCE.getSamples()) {
+            values.put(sample.getName(), sample.getValue());
+        }
+        assertEquals(2, values.get("ejbca_public_key_blacklist_index_fingerprints"), 0);
+        assertEquals(PublicKeyBlacklistIndex.INSTANCE.getMemoryFootprint(), values.get("ejbca_public_key_blacklist_index_memory_bytes"), 0);
+        assertTrue(values.containsKey("ejbca_public_key_blacklist_index_negatives_total"));
+    }
+
+    @Test
+    public void incrementalChanges() {
+        PublicKeyBlacklistIndex.INSTANCE.replace(new long[] { PublicKeyBlacklistIndex.hash("aa") }, 1, 1, 5, 2);
+        assertFalse(PublicKeyBlacklistIndex.INSTANCE.mightContain("bb"));
+        PublicKeyBlacklistIndex.INSTANCE.add(7, "bb");
+        assertTrue("Added fingerprint should be found", PublicKeyBlacklistIndex.INSTANCE.mightContain("bb"));
+        assertTrue(PublicKeyBlacklistIndex.INSTANCE.isUpToDate(2, 12, 2, MAX_AGE));
+        PublicKeyBlacklistIndex.INSTANCE.remove(5, 2);
+        assertTrue(PublicKeyBlacklistIndex.INSTANCE.isUpToDate(1, 7, 0, MAX_AGE));
+        // Removed fingerprints are resolved by a database lookup until the index is loaded again
+        assertTrue(PublicKeyBlacklistIndex.INSTANCE.mightContain("aa"));
+    }
+
+    @Test
+    public void inPlaceChanges() {
+        PublicKeyBlacklistIndex.INSTANCE.replace(new long[] { PublicKeyBlacklistIndex.hash("aa") }, 1, 1, 5, 0);
+        // Entry 5 is changed from "aa" to "cc" on another node, which keeps the id and increments the update counter
+        assertFalse("An in-place change on another node should be detected", PublicKeyBlacklistIndex.INSTANCE.isUpToDate(1, 5, 1, MAX_AGE));
+        // The same change on this node keeps the index up to date
+        assertFalse(PublicKeyBlacklistIndex.INSTANCE.mightContain("cc"));
+        PublicKeyBlacklistIndex.INSTANCE.change("cc");
+        assertTrue("Changed fingerprint should be found", PublicKeyBlacklistIndex.INSTANCE.mightContain("cc"));
+        assertTrue(PublicKeyBlacklistIndex.INSTANCE.isUpToDate(1, 5, 1, MAX_AGE));
+    }
+
+    @Test
+    public void reloadedAfterMaxAge() throws Exception {
+        PublicKeyBlacklistIndex.INSTANCE.replace(new long[] { PublicKeyBlacklistIndex.hash("aa") }, 1, 1, 5, 0);
+        Thread.sleep(5);
+        assertFalse("An old index should be loaded again, even if no changes were detected", PublicKeyBlacklistIndex.INSTANCE.isUpToDate(1, 5, 0, 1));
+    }
+}
@@ -0,0 +1,147 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.util.keystore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.security.KeyPair;
+import java.security.interfaces.RSAPublicKey;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+
+import org.cesecore.util.ComponentMetrics;
+import org.cesecore.util.ComponentMetrics.Sample;
+import org.ejbca.config.EjbcaConfigurationHolder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.keyfactor.util.CryptoProviderTools;
+import com.keyfactor.util.crypto.algorithm.AlgorithmConstants;
+
+/**
+ * Unit tests of {@link KeyPairPool}
+ */
+public class KeyPairPoolUnitTest {
+
+    private static final String KEY_SPEC = "1024";
+
+    @BeforeClass
+    public static void beforeClass() {
+        CryptoProviderTools.installBCProviderIfNotAvailable();
+    }
+
+    @Before
+    public void before() {
+        KeyPairPool.INSTANCE.shutdown();
+        KeyPairPool.INSTANCE.reset();
+        EjbcaConfigurationHolder.updateConfiguration("keypool.keyspecs", "RSA:" + KEY_SPEC + ";invalid");
+        EjbcaConfigurationHolder.updateConfiguration("keypool.size", "3");
+        EjbcaConfigurationHolder.updateConfiguration("keypool.threads", "2");
+    }
+
+    @After
+    public void after() {
+        KeyPairPool.INSTANCE.shutdown();
+        KeyPairPool.INSTANCE.reset();
+        EjbcaConfigurationHolder.updateConfiguration("keypool.keyspecs", "");
+        EjbcaConfigurationHolder.updateConfiguration("keypool.size", "10");
+        EjbcaConfigurationHolder.updateConfiguration("keypool.threads", "1");
+    }
+
+    private static void waitForDepth(final int depth) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 60000L;
+        while (KeyPairPool.INSTANCE.getDepth(KEY_SPEC, AlgorithmConstants.KEYALGORITHM_RSA) < depth && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals("Pool was not filled", depth, KeyPairPool.INSTANCE.getDepth(KEY_SPEC, AlgorithmConstants.KEYALGORITHM_RSA));
+    }
+
+    @Test
+    public void testNotStartedIsGeneratedInline() throws Exception {
+        final long misses = KeyPairPool.INSTANCE.getMissCount();
+        assertNotNull(KeyPairPool.INSTANCE.getKeyPair(KEY_SPEC, AlgorithmConstants.KEYALGORITHM_RSA));
+        assertEquals(misses + 1, KeyPairPool.INSTANCE.getMissCount());
+        assertEquals("The pool should only be started by the application or the CLI", 0,
+                KeyPairPool.INSTANCE.getDepth(KEY_SPEC, AlgorithmConstants.KEYALGORITHM_RSA));
+    }
+
+    @Test
+    public void testPreGeneratedKeyPairs() throws Exception {
+        KeyPairPool.INSTANCE.start(Executors.defaultThreadFactory());
+        final KeyPair first = KeyPairPool.INSTANCE.getKeyPair(KEY_SPEC, AlgorithmConstants.KEYALGORITHM_RSA);
+        assertNotNull(first);
+        waitForDepth(3);
+        final long misses = KeyPairPool.INSTANCE.getMissCount();
+        final long hits = KeyPairPool.INSTANCE.getHitCount();
+        final KeyPair second = KeyPairPool.INSTANCE.getKeyPair(KEY_SPEC, AlgorithmConstants.KEYALGORITHM_RSA);
+        final KeyPair third = KeyPairPool.INSTANCE.getKeyPair(KEY_SPEC, AlgorithmConstants.KEYALGORITHM_RSA);
+        assertEquals("Key pairs should come from the pool", misses, KeyPairPool.INSTANCE.getMissCount());
+        assertEquals(hits + 2, KeyPairPool.INSTANCE.getHitCount());
+        assertEquals(1024, ((RSAPublicKey) second.getPublic()).getModulus().bitLength());
+        assertNotEquals("A key pair must only be handed out once", second.getPublic(), third.getPublic());
+        assertNotEquals(first.getPublic(), second.getPublic());
+        // The pool is refilled in the background
+        waitForDepth(3);
+        assertTrue(KeyPairPool.INSTANCE.getGeneratedCount() >= 5);
+    }
+
+    @Test
+    public void testNotConfiguredIsGeneratedInline() throws Exception {
+        final long misses = KeyPairPool.INSTANCE.getMissCount();
+        final KeyPair keyPair = KeyPairPool.INSTANCE.getKeyPair("secp256r1", AlgorithmConstants.KEYALGORITHM_EC);
+        assertEquals("EC", keyPair.getPublic().getAlgorithm());
+        assertEquals(misses + 1, KeyPairPool.INSTANCE.getMissCount());
+        assertEquals(0, KeyPairPool.INSTANCE.getDepth("secp256r1", AlgorithmConstants.KEYALGORITHM_EC));
+    }
+
+    @Test
+    public void testShutdownDiscardsKeyPairs() throws Exception {
+        KeyPairPool.INSTANCE.startStandalone();
+        waitForDepth(3);
+        KeyPairPool.INSTANCE.shutdown();
+        assertEquals(0, KeyPairPool.INSTANCE.getDepth(KEY_SPEC, AlgorithmConstants.KEYALGORITHM_RSA));
+    }
+
+    @Test
+    public void testShutdownIsTerminal() throws Exception {
+        KeyPairPool.INSTANCE.startStandalone();
+        KeyPairPool.INSTANCE.shutdown();
+        KeyPairPool.INSTANCE.startStandalone();
+        final long misses = KeyPairPool.INSTANCE.getMissCount();
+        final long generated = KeyPairPool.INSTANCE.getGeneratedCount();
+        assertNotNull(KeyPairPool.INSTANCE.getKeyPair(KEY_SPEC, AlgorithmConstants.KEYALGORITHM_RSA));
+        assertEquals("Key pair should be generated inline after shutdown", misses + 1, KeyPairPool.INSTANCE.getMissCount());
+        Thread.sleep(500);
+        assertEquals("The pool should not be started again", 0, KeyPairPool.INSTANCE.getDepth(KEY_SPEC, AlgorithmConstants.KEYALGORITHM_RSA));
+        assertEquals(generated, KeyPairPool.INSTANCE.getGeneratedCount());
+    }
+
+    @Test
+    public void testMetricsAreExported() throws Exception {
+        KeyPairPool.INSTANCE.startStandalone();
+        waitForDepth(3);
+        final Map<String, Double> values = new HashMap<>();
+        for (final Sample sample : ComponentMetrics.INSTANCE.getSamples()) {
+            values.put(sample.getLabelValue() == null ? sample.getName() : sample.getName() + "{" + sample.getLabelValue() + "}", sample.getValue());
+        }
+        assertEquals(3, values.get("ejbca_key_pair_pool_depth{RSA:" + KEY_SPEC + "}"), 0);
+        assertEquals(KeyPairPool.INSTANCE.getMissCount(), values.get("ejbca_key_pair_pool_misses_total"), 0);
+        assertEquals(KeyPairPool.INSTANCE.getGeneratedCount(), values.get("ejbca_key_pair_pool_generated_total"), 0);
+    }
+}
@@ -259,6 +259,11 @@ public final class EjbcaConfiguration {
         return getBooleanProperty("ejbca.nodetracking", true);
     }
 
+    /** @return true if invocation metrics should be collected for all EJB methods and be available from the metrics servlet */
+    public static boolean isEjbMetricsEnabled() {
+        return getBooleanProperty("ejbca.metrics.enabled", true);
+    }
+
     public static String getCliDefaultUser() {
         return EjbcaConfigurationHolder.getString("ejbca.cli.defaultusername");
     }
@@ -343,6 +348,35 @@ public final class EjbcaConfiguration {
         return Integer.valueOf(getIntProperty("peerconnector.incoming.authcachetime", 60000)).longValue();
     }
 
+    /** @return how long in milliseconds to wait for each back end when searching all back ends in parallel from an RA. */
+    public static long getPeerSearchTimeoutMillis() {
+        return getLongProperty("peerconnector.search.timeout", 30000L);
+    }
+
+    /** @return the maximum number of back end searches from an RA that run in parallel on this node, on top of the local back end. */
+    public static int getPeerSearchConcurrency() {
+        return getIntProperty("peerconnector.search.concurrency", 16);
+    }
+
+    /**
+     * @return the key pairs to pre-generate for server-side key generation, as "algorithm:spec" entries separated by ';', e.g. "RSA:3072;RSA:4096",
+     * or an empty array if no key pairs should be pre-generated.
+     */
+    public static String[] getKeyPairPoolKeySpecs() {
+        final String[] ret = StringUtils.split(EjbcaConfigurationHolder.getString("keypool.keyspecs"), ';');
+        return ret == null ? new String[0] : ret;
+    }
+
+    /** @return how many pre-generated key pairs to keep of each algorithm and spec */
+    public static int getKeyPairPoolSize() {
+        return getIntProperty("keypool.size", 10);
+    }
+
+    /** @return the number of background threads that pre-generate key pairs */
+    public static int getKeyPairPoolThreads() {
+        return getIntProperty("keypool.threads", 1);
+    }
+
     public static long getPeerDataCacheTime() {
         return getLongProperty("peerconnector.cachetime", 60000L);
     }
@@ -0,0 +1,103 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.ejb;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of durations in nanoseconds, with log-linear buckets in the same way as HdrHistogram.
+ * <p>
+ * Each power of two range is split into 8 buckets, so a recorded value is known with a relative error of at most 12.5%,
+ * from 1 ns up to Long.MAX_VALUE ns, using a fixed array of 488 counters. Recording a value is one atomic increment.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    /** Values below this are counted exactly */
+    private static final int LINEAR_LIMIT = SUB_BUCKETS * 2;
+    private static final int BUCKET_COUNT = LINEAR_LIMIT + (63 - (SUB_BUCKET_BITS + 1)) * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+
+    /** Records a duration. Negative values are counted as 0. */
+    public void record(final long nanos) {
+        final long value = Math.max(0L, nanos);
+        buckets.incrementAndGet(getBucketIndex(value));
+        count.increment();
+        sum.add(value);
+    }
+
+    /** @return the number of recorded values */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /** @return the sum of all recorded values in nanoseconds */
+    public long getSum() {
+        return sum.sum();
+    }
+
+    /**
+     * Estimates the value at the given quantile from the buckets. Since the buckets are read without locking, concurrent
+     * recording may make the result slightly inaccurate.
+     *
+     * @param quantile a value between 0 and 1, e.g. 0.99 for the 99th percentile
+     * @return the middle of the bucket containing the value at the quantile, or 0 if nothing has been recorded
+     */
+    public long getValueAtQuantile(final double quantile) {
+        final long[] counts = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1L, (long) Math.ceil(Math.min(1.0, Math.max(0.0, quantile)) * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                final long lower = getBucketLowerBound(i);
+                return lower + (getBucketLowerBound(i + 1) - 1 - lower) / 2;
+            }
+        }
+        return getBucketLowerBound(BUCKET_COUNT - 1);
+    }
+
+    static int getBucketIndex(final long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        final int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR_LIMIT + (exponent - SUB_BUCKET_BITS - 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long getBucketLowerBound(final int index) {
+        if (index < LINEAR_LIMIT) {
+            return index;
+        }
+        if (index >= BUCKET_COUNT) {
+            return Long.MAX_VALUE;
+        }
+        final int exponent = (index - LINEAR_LIMIT) / SUB_BUCKETS + SUB_BUCKET_BITS + 1;
+        final long subBucket = (index - LINEAR_LIMIT) % SUB_BUCKETS;
+        return (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+    }
+}
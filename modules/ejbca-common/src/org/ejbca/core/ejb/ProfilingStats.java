@@ -12,58 +12,88 @@
  *************************************************************************/
 package org.ejbca.core.ejb;
 
-import java.util.AbstractMap.SimpleImmutableEntry;
+import java.lang.reflect.Method;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collection;
 import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
-import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
+ * Invocation statistics of all EJB methods, collected by ProfileAndTraceInterceptor.
+ * <p>
+ * Recording is lock-free and does not allocate once the statistics object of a method has been created: the counters are
+ * LongAdders and the durations go into a {@link LatencyHistogram}, so the statistics can be collected in production and exposed
+ * through the metrics servlet.
+ *
  * @see org.ejbca.core.ejb.ProfileAndTraceInterceptor
- * 
+ *
  * Limitations:
- * - Maximum allowed sum of duration is 292471 years.. :)
+ * - Maximum allowed sum of duration is 292 years.. :)
  * - Retrieval of stats is not a perfect point in time snapshot
- * 
+ *
  * @version $Id$
  */
 public enum ProfilingStats {
     INSTANCE;
 
-    private final ConcurrentHashMap<String,Entry<Long,Long>> sums = new ConcurrentHashMap<String,Entry<Long,Long>>();
+    /** Statistics of the invocations of a single EJB method */
+    public static final class MethodStats {
+        private final String fullMethodName;
+        private final LatencyHistogram durations = new LatencyHistogram();
+        private final LongAdder failures = new LongAdder();
 
-    public void add(final String key, final long invocationDuration) {
-        Entry<Long, Long> expectedValue = null;
-        Entry<Long,Long> currentEntry = null;
-        // Since there are likely many parallel invocations to different methods but rarely to the same
-        // we use a ConcurrentHashMap to allow concurrent modifications.
-        // The drawback is that we another thread might have updated the map while we were doing preparations
-        // and in this case we have to retry.
-        do {
-            currentEntry = sums.get(key);
-            final Entry<Long,Long> newEntry;
-            if (currentEntry == null) {
-                // Populate with a first entry for this key. We expect that the old value should be null
-                newEntry = new SimpleImmutableEntry<Long,Long>(Long.valueOf(invocationDuration), Long.valueOf(1L));
-                expectedValue = sums.putIfAbsent(key, newEntry);
-            } else {
-                newEntry = new SimpleImmutableEntry<Long,Long>(Long.valueOf(currentEntry.getKey().longValue()+invocationDuration),
-                        Long.valueOf(currentEntry.getValue().longValue()+1L));
-                expectedValue = sums.replace(key, newEntry);
+        private MethodStats(final String fullMethodName) {
+            this.fullMethodName = fullMethodName;
+        }
+
+        /**
+         * Records an invocation.
+         * @param durationNanos the duration of the invocation in nanoseconds
+         * @param failed true if the invocation threw an exception
+         */
+        public void add(final long durationNanos, final boolean failed) {
+            durations.record(durationNanos);
+            if (failed) {
+                failures.increment();
             }
-        } while (expectedValue!=null && !expectedValue.equals(currentEntry));
+        }
+
+        /** @return the fully qualified name of the EJB method, e.g. "org.ejbca.core.ejb.ca.sign.SignSessionBean.createCertificate" */
+        public String getFullMethodName() { return fullMethodName; }
+        /** @return the number of invocations */
+        public long getInvocations() { return durations.getCount(); }
+        /** @return the number of invocations that threw an exception */
+        public long getFailures() { return failures.sum(); }
+        /** @return the sum of the durations of all invocations in nanoseconds */
+        public long getDurationNanos() { return durations.getSum(); }
+        /** @return the estimated duration in nanoseconds at the given quantile, e.g. 0.99 */
+        public long getDurationNanosAtQuantile(final double quantile) { return durations.getValueAtQuantile(quantile); }
     }
 
-    /**
-     * Get a shallow copy of the current invocation statistics as a Maps with full method names as keys.
-     * The key of the Entry is the sum of durations (µs) and the value is the number of invocations.
-     * Since the copy operation is non-locking, this will not be a perfect point in time snapshot.
-     */
-    private Map<String,Entry<Long,Long>> getBestEffortShallowCopyOfStats() {
-        return new HashMap<String,Entry<Long,Long>>(sums);
+    /** Statistics by full method name */
+    private final ConcurrentHashMap<String, MethodStats> stats = new ConcurrentHashMap<>();
+    /** Lookup of the statistics by invoked bean class and method, so the method name does not have to be built for each invocation */
+    private final ConcurrentHashMap<Class<?>, ConcurrentHashMap<Method, MethodStats>> statsByMethod = new ConcurrentHashMap<>();
+
+    /** @return the statistics of the given method of the given EJB implementation class. Never null. */
+    public MethodStats getMethodStats(final Class<?> targetClass, final Method method) {
+        final ConcurrentHashMap<Method, MethodStats> methods = statsByMethod.computeIfAbsent(targetClass, c -> new ConcurrentHashMap<>());
+        MethodStats methodStats = methods.get(method);
+        if (methodStats == null) {
+            methodStats = methods.computeIfAbsent(method, m -> getMethodStats(targetClass.getName() + "." + m.getName()));
+        }
+        return methodStats;
+    }
+
+    /** @return the statistics with the given full method name. Never null. */
+    public MethodStats getMethodStats(final String fullMethodName) {
+        return stats.computeIfAbsent(fullMethodName, MethodStats::new);
+    }
+
+    /** @return the statistics of all methods that have been invoked. Updates after the call are visible in the returned objects. */
+    public Collection<MethodStats> getMethodStats() {
+        return new ArrayList<>(stats.values());
     }
 
     /**
@@ -71,13 +101,12 @@ public enum ProfilingStats {
      * Since the copy operation is non-locking, this will not be a perfect point in time snapshot.
      */
     public List<ProfilingStat> getEjbInvocationStats() {
-        final Map<String,Entry<Long,Long>> sums = getBestEffortShallowCopyOfStats();
-        final Set<String> keys = sums.keySet();
-        final List<ProfilingStat> ret = new ArrayList<ProfilingStat>(keys.size());
-        for (final String key : keys) {
-            final Entry<Long, Long> durationAndInvocations = sums.get(key);
-            final ProfilingStat profilingStat = new ProfilingStat(key, durationAndInvocations.getKey(), durationAndInvocations.getValue());
-            ret.add(profilingStat);
+        final List<ProfilingStat> ret = new ArrayList<ProfilingStat>(stats.size());
+        for (final MethodStats methodStats : stats.values()) {
+            final long invocations = methodStats.getInvocations();
+            if (invocations > 0) {
+                ret.add(new ProfilingStat(methodStats.getFullMethodName(), methodStats.getDurationNanos() / 1000L, invocations));
+            }
         }
         return ret;
     }
@@ -19,6 +19,7 @@ import org.cesecore.config.CesecoreConfiguration;
 import org.cesecore.configuration.ConfigurationBase;
 import org.cesecore.configuration.ConfigurationCache;
 import org.ejbca.config.CmpConfiguration;
+import org.ejbca.core.protocol.cmp.CmpPbeKeyCache;
 
 /**
  * Class Holding cache variable for cmp configuration. Needed because EJB spec does not allow volatile, non-final 
@@ -54,6 +55,7 @@ public final class CMPConfigurationCache implements ConfigurationCache {
     
     public void clearCache() {
         cmpconfigurationCache = null;
+        CmpPbeKeyCache.INSTANCE.clear();
     }
 
     @Override
@@ -82,6 +84,11 @@ public final class CMPConfigurationCache implements ConfigurationCache {
 
     @Override
     public void updateConfiguration(final ConfigurationBase configuration) {
+        final CmpConfiguration previous = cmpconfigurationCache;
+        if (previous == null || !previous.getRawData().equals(configuration.getRawData())) {
+            // Shared secrets may have been changed or removed, so keys derived from them must not be used anymore
+            CmpPbeKeyCache.INSTANCE.clear();
+        }
         this.cmpconfigurationCache = (CmpConfiguration) configuration;
         lastupdatetime = System.currentTimeMillis();
         
@@ -0,0 +1,390 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.model.ca.publisher;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.log4j.Logger;
+import org.cesecore.util.ComponentMetrics;
+import org.cesecore.util.ComponentMetrics.Sample;
+
+import com.novell.ldap.LDAPConnection;
+import com.novell.ldap.LDAPConstraints;
+import com.novell.ldap.LDAPException;
+
+/**
+ * Pool of connected and bound LDAP connections, shared by all instances of a publisher with the same connection settings in this JVM.
+ * <p>
+ * At most <code>maxConnections</code> connections are leased at the same time. Released connections are kept open for reuse, and
+ * connections that have been idle for longer than the health check interval are verified before they are handed out again.
+ * Connections that have been idle for longer than {@link #MAX_IDLE_TIME_MS} are closed, except for <code>minConnections</code> of them.
+ * <p>
+ * The metrics of all pools are exported with {@link ComponentMetrics}, labeled with the publisher id.
+ */
+public class LdapConnectionPool {
+
+    private static final Logger log = Logger.getLogger(LdapConnectionPool.class);
+
+    /** Idle connections above the minimum are closed after this time */
+    public static final long MAX_IDLE_TIME_MS = 5 * 60 * 1000L;
+
+    private static final String PUBLISHER_LABEL = "publisher";
+
+    private static final Map<String, LdapConnectionPool> pools = new ConcurrentHashMap<>();
+
+    static {
+        ComponentMetrics.INSTANCE.register("ldap_connection_pool", LdapConnectionPool::collectMetrics);
+    }
+
+    /** Opens, optionally upgrades with STARTTLS, and binds a new connection to a server */
+    public interface ConnectionFactory {
+        LDAPConnection connect(String server) throws LDAPException;
+    }
+
+    private static class IdleConnection {
+        private final LDAPConnection connection;
+        private final long idleSince;
+
+        private IdleConnection(final LDAPConnection connection) {
+            this.connection = connection;
+            this.idleSince = System.currentTimeMillis();
+        }
+    }
+
+    private static class Lease {
+        private final String server;
+        private final long leasedAt;
+
+        private Lease(final String server) {
+            this.server = server;
+            this.leasedAt = System.currentTimeMillis();
+        }
+    }
+
+    private final int publisherId;
+    private final int minConnections;
+    private final int maxConnections;
+    private final long healthCheckIntervalMs;
+    private final Semaphore leases;
+    /** Idle connections per server, the most recently used first. Guarded by this. */
+    private final Map<String, Deque<IdleConnection>> idle = new HashMap<>();
+    /** Leased connections. Guarded by this. */
+    private final Map<LDAPConnection, Lease> leased = new IdentityHashMap<>();
+    private int idleCount = 0;
+    private volatile boolean closed = false;
+
+    private final LongAdder created = new LongAdder();
+    private final LongAdder reused = new LongAdder();
+    private final LongAdder discarded = new LongAdder();
+    private final LongAdder released = new LongAdder();
+    private final LongAdder totalWaitMs = new LongAdder();
+    private final AtomicLong maxWaitMs = new AtomicLong();
+    private final LongAdder totalLeaseMs = new LongAdder();
+    private final AtomicLong maxLeaseMs = new AtomicLong();
+
+    private LdapConnectionPool(final int publisherId, final int minConnections, final int maxConnections, final long healthCheckIntervalMs) {
+        this.publisherId = publisherId;
+        this.maxConnections = Math.max(1, maxConnections);
+        this.minConnections = Math.max(0, Math.min(minConnections, this.maxConnections));
+        this.healthCheckIntervalMs = healthCheckIntervalMs;
+        this.leases = new Semaphore(this.maxConnections, true);
+    }
+
+    /**
+     * Returns the pool for the given connection settings, creating it if needed. Pools previously created for the same publisher,
+     * but with other settings, are closed.
+     *
+     * @param publisherId id of the publisher, only used to close pools with outdated settings
+     * @param settings string that uniquely identifies the server list, port, connection security and credentials
+     * @param minConnections number of idle connections that are kept open regardless of idle time
+     * @param maxConnections maximum number of leased connections
+     * @param healthCheckIntervalMs idle time after which a connection is verified before reuse, 0 to verify every time
+     */
+    public static LdapConnectionPool getPool(final int publisherId, final String settings, final int minConnections, final int maxConnections,
+            final long healthCheckIntervalMs) {
+        final String key = settings + ";" + minConnections + ";" + maxConnections + ";" + healthCheckIntervalMs;
+        LdapConnectionPool pool = pools.get(key);
+        if (pool == null) {
+            synchronized (pools) {
+                pool = pools.get(key);
+                if (pool == null) {
+                    if (publisherId != 0) {
+                        for (final Iterator<Map.Entry<String, LdapConnectionPool>> iterator = pools.entrySet().iterator(); iterator.hasNext();) {
+                            final LdapConnectionPool existing = iterator.next().getValue();
+                            if (existing.publisherId == publisherId) {
+                                iterator.remove();
+                                existing.close();
+                            }
+                        }
+                    }
+                    pool = new LdapConnectionPool(publisherId, minConnections, maxConnections, healthCheckIntervalMs);
+                    pools.put(key, pool);
+                }
+            }
+        }
+        return pool;
+    }
+
+    /** Closes all pools. */
+    public static void closeAll() {
+        synchronized (pools) {
+            for (final LdapConnectionPool pool : pools.values()) {
+                pool.close();
+            }
+            pools.clear();
+        }
+    }
+
+    /**
+     * Leases a connected and bound connection to a server.
+     *
+     * @param server the server to connect to
+     * @param factory used to create a new connection if there is no idle connection to reuse
+     * @param timeoutMs maximum time to wait for a connection when all connections are leased
+     * @return a connection that must be returned with {@link #release(LDAPConnection)}
+     * @throws LDAPException if no connection could be leased within timeoutMs or a new connection could not be created
+     */
+    public LDAPConnection borrow(final String server, final ConnectionFactory factory, final long timeoutMs) throws LDAPException {
+        final long start = System.currentTimeMillis();
+        try {
+            if (!leases.tryAcquire(timeoutMs, TimeUnit.MILLISECONDS)) {
+                throw new LDAPException("All " + maxConnections + " pooled LDAP connections are in use.", LDAPException.CONNECT_ERROR, null);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LDAPException("Interrupted while waiting for a pooled LDAP connection.", LDAPException.CONNECT_ERROR, null);
+        }
+        final long waitMs = System.currentTimeMillis() - start;
+        totalWaitMs.add(waitMs);
+        maxWaitMs.accumulateAndGet(waitMs, Math::max);
+        try {
+            LDAPConnection connection;
+            while ((connection = takeIdle(server)) != null) {
+                if (isHealthy(connection)) {
+                    reused.increment();
+                    return lease(server, connection);
+                }
+            }
+            connection = factory.connect(server);
+            created.increment();
+            return lease(server, connection);
+        } catch (LDAPException | RuntimeException e) {
+            leases.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns a leased connection to the pool. Connections that are no longer connected and bound are closed instead. A connection that
+     * was not leased from this pool is disconnected if it is connected.
+     */
+    public void release(final LDAPConnection connection) {
+        release(connection, true);
+    }
+
+    /**
+     * Closes a leased connection instead of returning it to the pool, e.g. after an operation on it failed with an LDAPException, since
+     * the connection may be broken or in an unknown state.
+     */
+    public void discard(final LDAPConnection connection) {
+        release(connection, false);
+    }
+
+    private void release(final LDAPConnection connection, final boolean reusable) {
+        final Lease lease;
+        final boolean keep;
+        synchronized (this) {
+            lease = leased.remove(connection);
+            keep = reusable && lease != null && !closed && connection.isConnected() && connection.isBound() && idleCount < maxConnections;
+            if (keep) {
+                idle.computeIfAbsent(lease.server, server -> new ArrayDeque<>()).addFirst(new IdleConnection(connection));
+                idleCount++;
+            }
+        }
+        if (lease == null) {
+            if (connection.isConnected()) {
+                log.warn("Connection to " + connection.getHost() + " was not leased from the pool. Disconnecting it.");
+                disconnect(connection);
+            }
+            return;
+        }
+        leases.release();
+        released.increment();
+        final long leaseMs = System.currentTimeMillis() - lease.leasedAt;
+        totalLeaseMs.add(leaseMs);
+        maxLeaseMs.accumulateAndGet(leaseMs, Math::max);
+        if (!keep) {
+            discarded.increment();
+            disconnect(connection);
+        }
+        evictIdle();
+    }
+
+    /** Closes all idle connections. Leased connections are closed when they are released. */
+    public void close() {
+        closed = true;
+        final Deque<IdleConnection> toClose = new ArrayDeque<>();
+        synchronized (this) {
+            for (final Deque<IdleConnection> connections : idle.values()) {
+                toClose.addAll(connections);
+            }
+            idle.clear();
+            idleCount = 0;
+        }
+        for (final IdleConnection idleConnection : toClose) {
+            disconnect(idleConnection.connection);
+        }
+    }
+
+    private synchronized LDAPConnection lease(final String server, final LDAPConnection connection) {
+        leased.put(connection, new Lease(server));
+        return connection;
+    }
+
+    private LDAPConnection takeIdle(final String server) {
+        final IdleConnection idleConnection;
+        synchronized (this) {
+            final Deque<IdleConnection> connections = idle.get(server);
+            idleConnection = connections == null ? null : connections.pollFirst();
+            if (idleConnection == null) {
+                return null;
+            }
+            idleCount--;
+        }
+        if (System.currentTimeMillis() - idleConnection.idleSince < healthCheckIntervalMs) {
+            return idleConnection.connection;
+        }
+        // Verified with a round trip to the server, since the server or a firewall may have closed the connection while it was idle
+        if (idleConnection.connection.isConnectionAlive()) {
+            return idleConnection.connection;
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Idle LDAP connection to " + server + " failed the health check. Disconnecting it.");
+        }
+        discarded.increment();
+        disconnect(idleConnection.connection);
+        // Try the next idle connection
+        return takeIdle(server);
+    }
+
+    private boolean isHealthy(final LDAPConnection connection) {
+        if (connection.isConnected() && connection.isBound()) {
+            return true;
+        }
+        discarded.increment();
+        disconnect(connection);
+        return false;
+    }
+
+    /** Closes connections that have been idle for too long, keeping at least minConnections */
+    private void evictIdle() {
+        final long threshold = System.currentTimeMillis() - MAX_IDLE_TIME_MS;
+        final Deque<IdleConnection> toClose = new ArrayDeque<>();
+        synchronized (this) {
+            for (final Deque<IdleConnection> connections : idle.values()) {
+                // The least recently used connections are last
+                while (idleCount > minConnections && !connections.isEmpty() && connections.peekLast().idleSince < threshold) {
+                    toClose.add(connections.pollLast());
+                    idleCount--;
+                }
+            }
+        }
+        for (final IdleConnection idleConnection : toClose) {
+            disconnect(idleConnection.connection);
+        }
+    }
+
+    private static void disconnect(final LDAPConnection connection) {
+        try {
+            final LDAPConstraints constraints = connection.getConstraints();
+            connection.disconnect(constraints);
+        } catch (LDAPException e) {
+            log.info("Failed to disconnect pooled LDAP connection: " + e.getMessage());
+        }
+    }
+
+    /** @return the number of connections that are currently leased */
+    public synchronized int getLeasedCount() {
+        return leased.size();
+    }
+
+    /** @return the number of open connections that are not leased */
+    public synchronized int getIdleCount() {
+        return idleCount;
+    }
+
+    /** @return the number of connections that have been opened and bound */
+    public long getCreatedCount() {
+        return created.sum();
+    }
+
+    /** @return the number of leases that reused an open connection */
+    public long getReusedCount() {
+        return reused.sum();
+    }
+
+    /** @return the number of connections that were closed because they were broken or not needed */
+    public long getDiscardedCount() {
+        return discarded.sum();
+    }
+
+    /** @return the average time spent waiting for a free connection, in milliseconds */
+    public long getAverageWaitMs() {
+        final long leases = created.sum() + reused.sum();
+        return leases == 0 ? 0 : totalWaitMs.sum() / leases;
+    }
+
+    /** @return the average time a connection was leased, which is roughly the time the directory needed for a publishing operation */
+    public long getAverageLeaseMs() {
+        final long count = released.sum();
+        return count == 0 ? 0 : totalLeaseMs.sum() / count;
+    }
+
+    private static void collectMetrics(final List<Sample> samples) {
+        for (final LdapConnectionPool pool : pools.values()) {
+            final String publisherId = String.valueOf(pool.publisherId);
+            samples.add(Sample.gauge("ejbca_ldap_pool_leased_connections", "Number of pooled LDAP connections that are in use.",
+                    pool.getLeasedCount()).withLabel(PUBLISHER_LABEL, publisherId));
+            samples.add(Sample.gauge("ejbca_ldap_pool_idle_connections", "Number of open pooled LDAP connections that are not in use.",
+                    pool.getIdleCount()).withLabel(PUBLISHER_LABEL, publisherId));
+            samples.add(Sample.counter("ejbca_ldap_pool_created_total", "Number of LDAP connections opened and bound by the pool.",
+                    pool.getCreatedCount()).withLabel(PUBLISHER_LABEL, publisherId));
+            samples.add(Sample.counter("ejbca_ldap_pool_reused_total", "Number of leases that reused an open LDAP connection.",
+                    pool.getReusedCount()).withLabel(PUBLISHER_LABEL, publisherId));
+            samples.add(Sample.counter("ejbca_ldap_pool_discarded_total", "Number of pooled LDAP connections closed because they were broken or not needed.",
+                    pool.getDiscardedCount()).withLabel(PUBLISHER_LABEL, publisherId));
+            samples.add(Sample.gauge("ejbca_ldap_pool_average_wait_seconds", "Average time spent waiting for a free pooled LDAP connection.",
+                    pool.getAverageWaitMs() / 1000.0).withLabel(PUBLISHER_LABEL, publisherId));
+            samples.add(Sample.gauge("ejbca_ldap_pool_average_lease_seconds", "Average time a pooled LDAP connection was in use.",
+                    pool.getAverageLeaseMs() / 1000.0).withLabel(PUBLISHER_LABEL, publisherId));
+        }
+    }
+
+    /** @return a one line summary of the pool metrics, suitable for logging */
+    public String getStatistics() {
+        return "leased=" + getLeasedCount() + "/" + maxConnections + ", idle=" + getIdleCount() + ", created=" + getCreatedCount() + ", reused="
+                + getReusedCount() + ", discarded=" + getDiscardedCount() + ", avgWaitMs=" + getAverageWaitMs() + ", maxWaitMs=" + maxWaitMs.get()
+                + ", avgLeaseMs=" + getAverageLeaseMs() + ", maxLeaseMs=" + maxLeaseMs.get();
+    }
+}
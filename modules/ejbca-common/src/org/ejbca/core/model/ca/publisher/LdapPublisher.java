@@ -108,6 +108,9 @@ public class LdapPublisher extends BasePublisher {
 	public static final String DEFAULT_TIMEOUT             = "5000"; // 5 seconds
 	public static final String DEFAULT_READTIMEOUT         = "30000"; // 30 seconds
 	public static final String DEFAULT_STORETIMEOUT        = "60000"; // 1 minute
+	public static final int DEFAULT_POOLMINCONNECTIONS     = 0;
+	public static final int DEFAULT_POOLMAXCONNECTIONS     = 10;
+	public static final int DEFAULT_POOLHEALTHCHECKINTERVAL = 30000; // 30 seconds
 
 
 	// Default Values
@@ -141,6 +144,10 @@ public class LdapPublisher extends BasePublisher {
 	protected static final String REMOVEUSERONCERTREVOKE   = "removeusersoncertrevoke";    
 	protected static final String CREATEINTERMEDIATENODES  = "createintermediatenodes";
 	protected static final String SETUSERPASSWORD          = "setuserpasssword";
+	protected static final String USECONNECTIONPOOL        = "useconnectionpool";
+	protected static final String POOLMINCONNECTIONS       = "poolminconnections";
+	protected static final String POOLMAXCONNECTIONS       = "poolmaxconnections";
+	protected static final String POOLHEALTHCHECKINTERVAL  = "poolhealthcheckinterval";
 	
 	/** Arrays used to extract attributes to store in LDAP */
 	protected static final String[] MATCHINGEXTRAATTRIBUTES    = {"CN","L","OU"};
@@ -317,18 +324,9 @@ public class LdapPublisher extends BasePublisher {
     		do {
     			connectionFailed = false;
     			String currentServer = servers.next();
+    			LDAPConnection conn = lc;
     			try {
-    				TCPTool.probeConnectionLDAP(currentServer, Integer.parseInt(getPort()), getConnectionTimeOut());	// Avoid waiting for halfdead-servers
-    				lc.connect(currentServer, Integer.parseInt(getPort()));
-    				// Execute a STARTTLS handshake if it was requested.
-    				if (getConnectionSecurity() == ConnectionSecurity.STARTTLS) {
-                        if (log.isDebugEnabled()) {
-                            log.debug("STARTTLS to LDAP server "+currentServer);
-                        }
-    				    lc.startTLS();
-    				}
-    				// authenticate to the server
-                    lc.bind(ldapVersion, getLoginDN(), getLoginPassword().getBytes(StandardCharsets.UTF_8), ldapBindConstraints);
+    				conn = connect(lc, currentServer, ldapVersion);
     				// Add or modify the entry
     				if (oldEntry != null && getModifyExistingUsers()) {
     					LDAPModification[] mods = new LDAPModification[modSet.size()]; 
@@ -337,7 +335,7 @@ public class LdapPublisher extends BasePublisher {
     					if (log.isDebugEnabled()) {
     						log.debug("Writing modification to DN: " + LogRedactionUtils.getSubjectDnLogSafe(oldDn));
     					}
-    					lc.modify(oldDn, mods, ldapStoreConstraints);
+    					conn.modify(oldDn, mods, ldapStoreConstraints);
     					String msg = intres.getLocalizedMessage("publisher.ldapmodify", "CERT", LogRedactionUtils.getSubjectDnLogSafe(oldDn));
     					log.info(msg);
     				} else {
@@ -348,10 +346,10 @@ public class LdapPublisher extends BasePublisher {
     							if(getCreateIntermediateNodes()) {
     								final String parentDN = DnComponents.getParentDN(dn);
     								try {
-    									lc.read(parentDN, ldapSearchConstraints);
+    									conn.read(parentDN, ldapSearchConstraints);
     								} catch(LDAPException e) {
     									if(e.getResultCode() == LDAPException.NO_SUCH_OBJECT) {
-    										this.createIntermediateNodes(lc, dn);
+    										this.createIntermediateNodes(conn, dn);
     										String msg = intres.getLocalizedMessage("publisher.ldapaddedintermediate", "CERT", LogRedactionUtils.getSubjectDnLogSafe(parentDN));
     										log.info(msg);
     									}
@@ -361,7 +359,7 @@ public class LdapPublisher extends BasePublisher {
     							if (log.isDebugEnabled()) {
     								log.debug("Adding DN: " + LogRedactionUtils.getSubjectDnLogSafe(dn));
     							}
-    							lc.add(newEntry, ldapStoreConstraints);
+    							conn.add(newEntry, ldapStoreConstraints);
     							String msg = intres.getLocalizedMessage("publisher.ldapadd", "CERT", LogRedactionUtils.getSubjectDnLogSafe(dn));
     							log.info(msg);
     						}
@@ -384,13 +382,8 @@ public class LdapPublisher extends BasePublisher {
     					throw new PublisherException(msg);            
     				}
     			} finally {
-    				// disconnect with the server
-    				try {
-    					lc.disconnect(ldapDisconnectConstraints);
-    				} catch (LDAPException e) {
-                        String msg = intres.getLocalizedMessage("publisher.errordisconnect");
-    					log.error(msg, e);
-    				}
+    				// disconnect with the server, or return the connection to the pool unless the operation failed
+    				disconnect(conn, connectionFailed);
     			}
     		} while (connectionFailed && servers.hasNext()) ;
         } else {
@@ -539,28 +532,18 @@ public class LdapPublisher extends BasePublisher {
 		do {
 			connectionFailed = false;
 			String currentServer = servers.next();
+			LDAPConnection conn = lc;
 			try {
-				TCPTool.probeConnectionLDAP(currentServer, Integer.parseInt(getPort()), getConnectionTimeOut());	// Avoid waiting for halfdead-servers
-				// connect to the server
-				lc.connect(currentServer, Integer.parseInt(getPort()));
-				// Execute a STARTTLS handshake if it was requested.
-				if (getConnectionSecurity() == ConnectionSecurity.STARTTLS) {
-                    if (log.isDebugEnabled()) {
-                        log.debug("STARTTLS to LDAP server "+currentServer);
-                    }
-					lc.startTLS();
-				}
-				// authenticate to the server
-                lc.bind(ldapVersion, getLoginDN(), getLoginPassword().getBytes(StandardCharsets.UTF_8), ldapBindConstraints);
+				conn = connect(lc, currentServer, ldapVersion);
 				// Add or modify the entry
 				if (oldEntry != null) {
 					LDAPModification[] mods = new LDAPModification[modSet.size()]; 
 					mods = (LDAPModification[])modSet.toArray(mods);
-					lc.modify(dn, mods, ldapStoreConstraints);
+					conn.modify(dn, mods, ldapStoreConstraints);
 					String msg = intres.getLocalizedMessage("publisher.ldapmodify", "CRL", LogRedactionUtils.getSubjectDnLogSafe(dn));
 					log.info(msg);
 				} else {
-					lc.add(newEntry, ldapStoreConstraints);
+					conn.add(newEntry, ldapStoreConstraints);
 					String msg = intres.getLocalizedMessage("publisher.ldapadd", "CRL", LogRedactionUtils.getSubjectDnLogSafe(dn));
 					log.info(msg);
 				}
@@ -576,13 +559,8 @@ public class LdapPublisher extends BasePublisher {
 					throw new PublisherException(msg);            
 				}
 			} finally {
-				// disconnect with the server
-				try {
-					lc.disconnect(ldapDisconnectConstraints);
-				} catch (LDAPException e) {
-					String msg = intres.getLocalizedMessage("publisher.errordisconnect");
-					log.error(msg, e);
-				}
+				// disconnect with the server, or return the connection to the pool unless the operation failed
+				disconnect(conn, connectionFailed);
 			}
 		} while (connectionFailed && servers.hasNext()) ;
 		if (log.isTraceEnabled()) {
@@ -688,27 +666,18 @@ public class LdapPublisher extends BasePublisher {
 			if (log.isDebugEnabled()) {
 				log.debug("currentServer: "+currentServer);
 			}
+			LDAPConnection conn = lc;
 			try {
-				TCPTool.probeConnectionLDAP(currentServer, Integer.parseInt(getPort()), getConnectionTimeOut());	// Avoid waiting for halfdead-servers
-				lc.connect(currentServer, Integer.parseInt(getPort()));
-				// Execute a STARTTLS handshake if it was requested.
-				if (getConnectionSecurity() == ConnectionSecurity.STARTTLS) {
-                    if (log.isDebugEnabled()) {
-                        log.debug("STARTTLS to LDAP server "+currentServer);
-                    }
-					lc.startTLS();
-				}
-				// authenticate to the server
-                lc.bind(ldapVersion, getLoginDN(), getLoginPassword().getBytes(StandardCharsets.UTF_8), ldapBindConstraints);
+				conn = connect(lc, currentServer, ldapVersion);
 				// Add or modify the entry
 				if (modSet != null && getModifyExistingUsers()) {
 					if (removecert) {
 						LDAPModification[] mods = new LDAPModification[modSet.size()]; 
 						mods = (LDAPModification[])modSet.toArray(mods);
-						lc.modify(oldEntry.getDN(), mods, ldapStoreConstraints);            		
+						conn.modify(oldEntry.getDN(), mods, ldapStoreConstraints);            		
 					}
 					if (removeuser) {
-						lc.delete(oldEntry.getDN(), ldapStoreConstraints);            		
+						conn.delete(oldEntry.getDN(), ldapStoreConstraints);            		
 					}
 					String msg = intres.getLocalizedMessage("publisher.ldapremove", LogRedactionUtils.getSubjectDnLogSafe(dn));
 					log.info(msg);
@@ -732,13 +701,8 @@ public class LdapPublisher extends BasePublisher {
 					throw new PublisherException(msg);            
 				}
 			} finally {
-				// disconnect with the server
-				try {
-					lc.disconnect(ldapDisconnectConstraints);
-				} catch (LDAPException e) {
-					String msg = intres.getLocalizedMessage("publisher.errordisconnect");
-					log.error(msg, e);
-				}
+				// disconnect with the server, or return the connection to the pool unless the operation failed
+				disconnect(conn, isConnectionNotDone);
 			}
 		}
 		if (log.isTraceEnabled()) {
@@ -763,24 +727,14 @@ public class LdapPublisher extends BasePublisher {
 				log.debug("Current server is: "+currentServer);
 			}
 			final String ldapdn = constructLDAPDN(certDN, userDN);
+			LDAPConnection conn = lc;
 			try {
-				TCPTool.probeConnectionLDAP(currentServer, Integer.parseInt(getPort()), getConnectionTimeOut());	// Avoid waiting for halfdead-servers
-				// connect to the server
-				lc.connect(currentServer, Integer.parseInt(getPort()));
-				// Execute a STARTTLS handshake if it was requested.
-				if (getConnectionSecurity() == ConnectionSecurity.STARTTLS) {
-                    if (log.isDebugEnabled()) {
-                        log.debug("STARTTLS to LDAP server "+currentServer);
-                    }
-					lc.startTLS();
-				}
-				// authenticate to the server
-                lc.bind(ldapVersion, getLoginDN(), getLoginPassword().getBytes(StandardCharsets.UTF_8), ldapBindConstraints);
+				conn = connect(lc, currentServer, ldapVersion);
 				// try to read the old object
 				if (log.isDebugEnabled()) {
 					log.debug("Searching for old entry with DN '" + LogRedactionUtils.getSubjectDnLogSafe(ldapdn) +"'");
 				}
-				oldEntry = lc.read(ldapdn, ldapSearchConstraints);
+				oldEntry = conn.read(ldapdn, ldapSearchConstraints);
 				if (log.isDebugEnabled()) {
 					if (oldEntry != null) {
 						log.debug("Found an old entry with DN '" + LogRedactionUtils.getSubjectDnLogSafe(ldapdn) +"'");
@@ -804,13 +758,8 @@ public class LdapPublisher extends BasePublisher {
 					}
 				}
 			} finally {
-				// disconnect with the server
-				try {
-					lc.disconnect(ldapDisconnectConstraints);
-				} catch (LDAPException e) {
-					String msg = intres.getLocalizedMessage("publisher.errordisconnect");
-					log.error(msg, e);
-				}
+				// disconnect with the server, or return the connection to the pool unless the operation failed
+				disconnect(conn, connectionFailed);
 			}
 		} while (connectionFailed && servers.hasNext()) ;
 		return oldEntry;
@@ -876,6 +825,89 @@ public class LdapPublisher extends BasePublisher {
 		} while (connectionFailed && servers.hasNext()) ;
 	} 
 
+	/**
+	 * Connects and binds to a server. If connection pooling is enabled, a bound connection from the pool is returned instead, and
+	 * <code>lc</code> is not used.
+	 *
+	 * @param lc connection created with {@link #createLdapConnection()}, used when connection pooling is disabled
+	 * @param server the server to connect to
+	 * @param ldapVersion LDAP protocol version to bind with
+	 * @return a connected and bound connection, that must be passed to {@link #disconnect(LDAPConnection, boolean)} after use
+	 */
+	protected LDAPConnection connect(final LDAPConnection lc, final String server, final int ldapVersion) throws LDAPException {
+		if (!getUseConnectionPool()) {
+			connectAndBind(lc, server, ldapVersion);
+			return lc;
+		}
+		final LdapConnectionPool pool = getConnectionPool();
+		final LDAPConnection conn = pool.borrow(server, currentServer -> {
+			final LDAPConnection newConnection = createLdapConnection();
+			try {
+				connectAndBind(newConnection, currentServer, ldapVersion);
+			} catch (LDAPException e) {
+				try {
+					newConnection.disconnect(ldapDisconnectConstraints);
+				} catch (LDAPException e2) {
+					log.debug("Failed to disconnect after failed bind: " + e2.getMessage());
+				}
+				throw e;
+			}
+			return newConnection;
+		}, getConnectionTimeOut());
+		if (log.isDebugEnabled()) {
+			log.debug("LDAP connection pool for " + server + ": " + pool.getStatistics());
+		}
+		return conn;
+	}
+
+	/**
+	 * Disconnects a connection returned by {@link #connect(LDAPConnection, String, int)}, or returns it to the pool.
+	 *
+	 * @param conn the connection
+	 * @param failed true if an operation on the connection failed with an LDAPException, in which case a pooled connection is closed
+	 *        instead of being returned to the pool
+	 */
+	protected void disconnect(final LDAPConnection conn, final boolean failed) {
+		if (getUseConnectionPool()) {
+			if (failed) {
+				getConnectionPool().discard(conn);
+			} else {
+				getConnectionPool().release(conn);
+			}
+			return;
+		}
+		try {
+			conn.disconnect(ldapDisconnectConstraints);
+		} catch (LDAPException e) {
+			String msg = intres.getLocalizedMessage("publisher.errordisconnect");
+			log.error(msg, e);
+		}
+	}
+
+	/** @return the JVM wide pool of connections for the current connection settings of this publisher */
+	protected LdapConnectionPool getConnectionPool() {
+		final String settings = getHostnames() + ";" + getPort() + ";" + getConnectionSecurity() + ";" + getLoginDN() + ";"
+				+ CertTools.getSHA256FingerprintAsString(getLoginPassword().getBytes(StandardCharsets.UTF_8)) + ";" + getConnectionTimeOut();
+		return LdapConnectionPool.getPool(getPublisherId(), settings, getPoolMinConnections(), getPoolMaxConnections(), getPoolHealthCheckInterval());
+	}
+
+	private void connectAndBind(final LDAPConnection lc, final String server, final int ldapVersion) throws LDAPException {
+		TCPTool.probeConnectionLDAP(server, Integer.parseInt(getPort()), getConnectionTimeOut());	// Avoid waiting for halfdead-servers
+		// connect to the server
+		log.debug("Connecting to " + server);
+		lc.connect(server, Integer.parseInt(getPort()));
+		// Execute a STARTTLS handshake if it was requested.
+		if (getConnectionSecurity() == ConnectionSecurity.STARTTLS) {
+			if (log.isDebugEnabled()) {
+				log.debug("STARTTLS to LDAP server "+server);
+			}
+			lc.startTLS();
+		}
+		// authenticate to the server
+		log.debug("Logging in with BIND DN " + getLoginDN());
+		lc.bind(ldapVersion, getLoginDN(), getLoginPassword().getBytes(StandardCharsets.UTF_8), ldapBindConstraints);
+	}
+
 	protected LDAPConnection createLdapConnection() {
 		// Set timeouts
 		int connectiontimeout = getConnectionTimeOut();
@@ -1333,6 +1365,38 @@ public class LdapPublisher extends BasePublisher {
 		ldapStoreConstraints.setTimeLimit(timeout);
 	}
 
+	/** @return true if bound connections are kept open and reused between publishing operations */
+	public boolean getUseConnectionPool() {
+		return Boolean.TRUE.equals(data.get(USECONNECTIONPOOL));
+	}
+	public void setUseConnectionPool(boolean useConnectionPool) {
+		data.put(USECONNECTIONPOOL, Boolean.valueOf(useConnectionPool));
+	}
+
+	/** @return the number of idle pooled connections that are kept open even when they are not used */
+	public int getPoolMinConnections() {
+		return data.get(POOLMINCONNECTIONS) == null ? DEFAULT_POOLMINCONNECTIONS : Integer.parseInt((String) data.get(POOLMINCONNECTIONS));
+	}
+	public void setPoolMinConnections(int minConnections) {
+		data.put(POOLMINCONNECTIONS, Integer.toString(minConnections));
+	}
+
+	/** @return the maximum number of pooled connections that are used at the same time */
+	public int getPoolMaxConnections() {
+		return data.get(POOLMAXCONNECTIONS) == null ? DEFAULT_POOLMAXCONNECTIONS : Integer.parseInt((String) data.get(POOLMAXCONNECTIONS));
+	}
+	public void setPoolMaxConnections(int maxConnections) {
+		data.put(POOLMAXCONNECTIONS, Integer.toString(maxConnections));
+	}
+
+	/** @return the time in milliseconds a pooled connection may be idle before it is checked with the server before reuse */
+	public int getPoolHealthCheckInterval() {
+		return data.get(POOLHEALTHCHECKINTERVAL) == null ? DEFAULT_POOLHEALTHCHECKINTERVAL : Integer.parseInt((String) data.get(POOLHEALTHCHECKINTERVAL));
+	}
+	public void setPoolHealthCheckInterval(int interval) {
+		data.put(POOLHEALTHCHECKINTERVAL, Integer.toString(interval));
+	}
+
 	// Private methods   
 	/**
 	 * Returns a list of attributes found in DN
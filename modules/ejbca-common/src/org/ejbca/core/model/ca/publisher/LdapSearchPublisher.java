@@ -13,7 +13,6 @@
 
 package org.ejbca.core.model.ca.publisher;
 
-import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.regex.Pattern;
@@ -21,7 +20,6 @@ import java.util.regex.Pattern;
 import org.apache.log4j.Logger;
 import org.cesecore.util.LogRedactionUtils;
 import org.ejbca.core.model.InternalEjbcaResources;
-import org.ejbca.util.TCPTool;
 
 import com.keyfactor.util.certificate.DnComponents;
 import com.novell.ldap.LDAPConnection;
@@ -80,22 +78,9 @@ public class LdapSearchPublisher extends LdapPublisher {
 	        // PARTE 1: Search for an existing entry in the LDAP directory
 			//  If it exists, this will be returned to be populated
 			//  if not exist, nothing will be returned and a new LDAP entry created
+			LDAPConnection conn = lc;
 			try {
-				TCPTool.probeConnectionLDAP(currentServer, Integer.parseInt(getPort()), getConnectionTimeOut());	// Avoid waiting for halfdead-servers
-				// connect to the server
-				log.debug("Connecting to " + currentServer);
-				lc.connect(currentServer, Integer.parseInt(getPort()));
-				// Execute a STARTTLS handshake if it was requested.
-				if (getConnectionSecurity() == ConnectionSecurity.STARTTLS) {
-                    if (log.isDebugEnabled()) {
-                        log.debug("STARTTLS to LDAP server "+currentServer);
-                    }
-					lc.startTLS();
-				}
-
-				// authenticate to the server
-				log.debug("Logging in with BIND DN " + getLoginDN());
-				lc.bind(ldapVersion, getLoginDN(), getLoginPassword().getBytes(StandardCharsets.UTF_8), ldapBindConstraints);
+				conn = connect(lc, currentServer, ldapVersion);
 				//searchFilter = "(&(objectclass=person)(uid=" + username + "))";
 				String searchFilter = getSearchFilter();
 				if (log.isDebugEnabled()) {
@@ -136,7 +121,7 @@ public class LdapSearchPublisher extends LdapPublisher {
 				int searchScope = LDAPConnection.SCOPE_SUB;
 		        String attrs[] = { LDAPConnection.NO_ATTRS };
 				boolean attributeTypesOnly = true;
-				LDAPSearchResults searchResults = lc.search(searchbasedn, // container to search
+				LDAPSearchResults searchResults = conn.search(searchbasedn, // container to search
 						searchScope, // search scope
 						searchFilter, // search filter
 						attrs, // "1.1" returns entry name only
@@ -162,7 +147,7 @@ public class LdapSearchPublisher extends LdapPublisher {
 				}
 				// try to read the old object
 				try {
-					oldEntry = lc.read(ldapDN, ldapSearchConstraints);
+					oldEntry = conn.read(ldapDN, ldapSearchConstraints);
 				} catch (LDAPException e) {
 					if (e.getResultCode() == LDAPException.NO_SUCH_OBJECT) {
 						String msg = intres.getLocalizedMessage("publisher.noentry", LogRedactionUtils.getSubjectDnLogSafe(ldapDN));
@@ -187,13 +172,8 @@ public class LdapSearchPublisher extends LdapPublisher {
 					}
 				}
 			} finally {
-				// disconnect with the server
-				try {
-					lc.disconnect(ldapDisconnectConstraints);
-				} catch (LDAPException e) {
-					String msg = intres.getLocalizedMessage("publisher.errordisconnect");
-					log.error(msg, e);
-				}
+				// disconnect with the server, or return the connection to the pool unless the operation failed
+				disconnect(conn, connectionFailed);
 			}
 		} while (connectionFailed && servers.hasNext()) ;
         return oldEntry;
@@ -0,0 +1,370 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+
+package org.ejbca.core.model.validation;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.cesecore.config.CesecoreConfiguration;
+import org.cesecore.util.ComponentMetrics;
+import org.cesecore.util.ComponentMetrics.Sample;
+
+/**
+ * In-memory index of all fingerprints in the public key block list, so that a key which is not on the list can be validated
+ * without a database lookup.
+ * <p>
+ * Each fingerprint is stored as a 64 bit hash, in a sorted array and in a Bloom filter in front of it. A lookup that is negative
+ * in the Bloom filter or in the sorted array is a definite answer. A positive lookup means the fingerprint is probably on the list,
+ * and the caller reads the entry through BlacklistSession. Entries that were removed are left in the index until the next full load,
+ * and are resolved by that lookup as well.
+ * <p>
+ * The index is loaded by BlacklistSessionBean.refreshPublicKeyBlacklistIndex. Entries added on this node are added to the index
+ * directly. Changes made on other nodes are detected by comparing the number of entries, the sum of their ids and the sum of
+ * their update counters with the database, at most every CesecoreConfiguration.getCachePublicKeyBlacklistTime() milliseconds,
+ * and cause a full load. The update counter of an entry is incremented when it is changed, so changing the fingerprint of an
+ * existing entry is detected as well. As a safety net against changes that leave all sums unchanged, the caller also loads
+ * the index again when it has reached a maximum age. The index is not used when the cache time is 0 or less.
+ * <p>
+ * Fingerprints added on this node while the index is loaded may be missing from the entries read from the database, so the
+ * fingerprints added to the previous index that are not in the loaded entries are kept in the new index until the next full load.
+ * <p>
+ * The size and the lookup counters of the index are exported with {@link ComponentMetrics}.
+ */
+public enum PublicKeyBlacklistIndex {
+    INSTANCE;
+
+    /** Bits in the Bloom filter per fingerprint, which with {@link #HASH_FUNCTIONS} gives a false positive rate below 1% */
+    private static final int BITS_PER_ENTRY = 10;
+    private static final int HASH_FUNCTIONS = 7;
+
+    private static final class Index {
+        private final AtomicLongArray bloom;
+        private final long bloomBits;
+        private final long[] sorted;
+        /** Fingerprints added after the index was loaded */
+        private final Set<Long> added = ConcurrentHashMap.newKeySet();
+        /** Fingerprints added to the previous index that were not in the entries loaded for this index */
+        private final Set<Long> carried = ConcurrentHashMap.newKeySet();
+        private final long loadTime = System.currentTimeMillis();
+        /** Number of entries, sum of their ids and sum of their update counters, as expected in the database */
+        private long entryCount;
+        private long idSum;
+        private long updateCounterSum;
+
+        private Index(final long[] sorted, final long entryCount, final long idSum, final long updateCounterSum) {
+            this.sorted = sorted;
+            this.entryCount = entryCount;
+            this.idSum = idSum;
+            this.updateCounterSum = updateCounterSum;
+            // Leave room for entries added later, and never less than one word
+            this.bloomBits = Math.max(64, ((long) sorted.length + 1024) * BITS_PER_ENTRY * 5 / 4);
+            this.bloom = new AtomicLongArray((int) ((bloomBits + 63) / 64));
+            for (final long hash : sorted) {
+                addToBloom(hash);
+            }
+        }
+
+        private void addToBloom(final long hash) {
+            final long h2 = (hash >>> 32) | 1;
+            long combined = hash;
+            for (int i = 0; i < HASH_FUNCTIONS; i++) {
+                final long bit = (combined & Long.MAX_VALUE) % bloomBits;
+                final int word = (int) (bit >>> 6);
+                final long mask = 1L << bit;
+                long current;
+                while (((current = bloom.get(word)) & mask) == 0 && !bloom.compareAndSet(word, current, current | mask)) {
+                    // Retry, another bit in the same word was set concurrently
+                }
+                combined += h2;
+            }
+        }
+
+        private boolean bloomMightContain(final long hash) {
+            final long h2 = (hash >>> 32) | 1;
+            long combined = hash;
+            for (int i = 0; i < HASH_FUNCTIONS; i++) {
+                final long bit = (combined & Long.MAX_VALUE) % bloomBits;
+                if ((bloom.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                    return false;
+                }
+                combined += h2;
+            }
+            return true;
+        }
+
+        private long getBitsSet() {
+            long count = 0;
+            for (int i = 0; i < bloom.length(); i++) {
+                count += Long.bitCount(bloom.get(i));
+            }
+            return count;
+        }
+    }
+
+    private final ReentrantLock loadLock = new ReentrantLock();
+    private volatile Index index = null;
+    private volatile long lastChecked = 0;
+    private final LongAdder negatives = new LongAdder();
+    private final LongAdder positives = new LongAdder();
+    private final LongAdder bloomFalsePositives = new LongAdder();
+
+    private PublicKeyBlacklistIndex() {
+        ComponentMetrics.INSTANCE.register("public_key_blacklist_index", this::collectMetrics);
+    }
+
+    /**
+     * @param fingerprint a fingerprint as created by PublicKeyBlacklistEntry
+     * @return a 64 bit hash of the fingerprint, as stored in the index
+     */
+    public static long hash(final String fingerprint) {
+        // FNV-1a followed by the MurmurHash3 finalizer
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < fingerprint.length(); i++) {
+            h ^= fingerprint.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /** @return true if the index may be used, i.e. caching of the public key block list is enabled */
+    public boolean isEnabled() {
+        return CesecoreConfiguration.getCachePublicKeyBlacklistTime() > 0;
+    }
+
+    /** @return true if the index is loaded */
+    public boolean isLoaded() {
+        return index != null;
+    }
+
+    /** @return true if the index is not loaded, or has not been compared with the database for the cache time */
+    public boolean shouldCheckForUpdates() {
+        return isEnabled() && (index == null || lastChecked + CesecoreConfiguration.getCachePublicKeyBlacklistTime() < System.currentTimeMillis());
+    }
+
+    /**
+     * @param fingerprint a fingerprint as created by PublicKeyBlacklistEntry
+     * @return false if the fingerprint is certainly not on the block list, true if it may be or if the index is not loaded
+     */
+    public boolean mightContain(final String fingerprint) {
+        final Index current = index;
+        if (current == null || !isEnabled()) {
+            return true;
+        }
+        final long hash = hash(fingerprint);
+        if (!current.bloomMightContain(hash)) {
+            negatives.increment();
+            return false;
+        }
+        if (Arrays.binarySearch(current.sorted, hash) >= 0 || current.added.contains(hash) || current.carried.contains(hash)) {
+            positives.increment();
+            return true;
+        }
+        bloomFalsePositives.increment();
+        negatives.increment();
+        return false;
+    }
+
+    /**
+     * Tries to take the lock for loading or checking the index. Only one thread at a time loads the index, while other threads
+     * keep using the current index, or the database if the index is not loaded yet.
+     *
+     * @return true if the lock was taken, and {@link #unlock()} must be called
+     */
+    public boolean tryLock() {
+        return loadLock.tryLock();
+    }
+
+    public void unlock() {
+        loadLock.unlock();
+    }
+
+    /**
+     * @param entryCount number of entries in the database
+     * @param idSum sum of the ids of the entries in the database
+     * @param updateCounterSum sum of the update counters of the entries in the database
+     * @param maxAgeMs maximum time since the index was loaded
+     * @return true if the index is loaded, is not older than the maximum age, and was built from, or has been kept up to date with,
+     *     the same entries
+     */
+    public boolean isUpToDate(final long entryCount, final long idSum, final long updateCounterSum, final long maxAgeMs) {
+        final Index current = index;
+        if (current == null || current.loadTime + maxAgeMs < System.currentTimeMillis()) {
+            return false;
+        }
+        synchronized (current) {
+            return current.entryCount == entryCount && current.idSum == idSum && current.updateCounterSum == updateCounterSum;
+        }
+    }
+
+    /** Records that the index was compared with the database */
+    public void setChecked() {
+        lastChecked = System.currentTimeMillis();
+    }
+
+    /**
+     * Replaces the index. Fingerprints added to the current index that are not in the given hashes are kept, since they may have been
+     * added after the entries were read from the database. They are kept until the index is replaced again.
+     *
+     * @param hashes hashes of all fingerprints, see {@link #hash(String)}. The array is sorted by this method.
+     * @param size the number of hashes used in the array
+     * @param entryCount number of entries in the database
+     * @param idSum sum of the ids of the entries in the database
+     * @param updateCounterSum sum of the update counters of the entries in the database
+     */
+    public void replace(final long[] hashes, final int size, final long entryCount, final long idSum, final long updateCounterSum) {
+        final long[] sorted = Arrays.copyOf(hashes, size);
+        Arrays.sort(sorted);
+        final Index previous = index;
+        final Index replacement = new Index(sorted, entryCount, idSum, updateCounterSum);
+        index = replacement;
+        if (previous != null) {
+            // Read after the new index is visible, so a fingerprint added to the previous index is either seen here, or added to the
+            // new index as well, see addFingerprint
+            for (final Long hash : previous.added) {
+                if (Arrays.binarySearch(sorted, hash) < 0 && replacement.carried.add(hash)) {
+                    replacement.addToBloom(hash);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds an entry that was added on this node, with update counter 0.
+     *
+     * @param id the id of the entry
+     * @param fingerprint the fingerprint of the entry
+     */
+    public void add(final int id, final String fingerprint) {
+        final Index current = index;
+        if (current != null) {
+            addFingerprint(current, fingerprint);
+            synchronized (current) {
+                current.entryCount++;
+                current.idSum += id;
+            }
+        }
+    }
+
+    /**
+     * Adds the new fingerprint of an entry that was changed on this node, which incremented its update counter by one.
+     * The old fingerprint is left in the index until the next full load.
+     *
+     * @param fingerprint the new fingerprint of the entry
+     */
+    public void change(final String fingerprint) {
+        final Index current = index;
+        if (current != null) {
+            addFingerprint(current, fingerprint);
+            synchronized (current) {
+                current.updateCounterSum++;
+            }
+        }
+    }
+
+    private void addFingerprint(final Index current, final String fingerprint) {
+        final long hash = hash(fingerprint);
+        current.added.add(hash);
+        current.addToBloom(hash);
+        // The index may have been replaced after the previous index had been copied
+        final Index latest = index;
+        if (latest != null && latest != current) {
+            latest.added.add(hash);
+            latest.addToBloom(hash);
+        }
+    }
+
+    /**
+     * Records that an entry was removed on this node. The fingerprint is left in the index until the next full load.
+     *
+     * @param id the id of the entry
+     * @param updateCounter the update counter of the entry
+     */
+    public void remove(final int id, final int updateCounter) {
+        final Index current = index;
+        if (current != null) {
+            synchronized (current) {
+                current.entryCount--;
+                current.idSum -= id;
+                current.updateCounterSum -= updateCounter;
+            }
+        }
+    }
+
+    /** Removes the index, so it is loaded again on next use */
+    public void flush() {
+        index = null;
+        lastChecked = 0;
+    }
+
+    /** @return the approximate memory used by the index, in bytes */
+    public long getMemoryFootprint() {
+        final Index current = index;
+        if (current == null) {
+            return 0;
+        }
+        // A boxed Long in a concurrent set takes around 64 bytes
+        return current.bloom.length() * 8L + current.sorted.length * 8L + (current.added.size() + current.carried.size()) * 64L;
+    }
+
+    /** @return the expected false positive rate of the Bloom filter, given the bits that are set, or 0 if the index is not loaded */
+    public double getBloomFalsePositiveRate() {
+        final Index current = index;
+        if (current == null) {
+            return 0;
+        }
+        return Math.pow((double) current.getBitsSet() / current.bloomBits, HASH_FUNCTIONS);
+    }
+
+    /** @return the number of fingerprints in the index, or 0 if the index is not loaded */
+    public long getSize() {
+        final Index current = index;
+        return current == null ? 0 : current.sorted.length + current.added.size() + current.carried.size();
+    }
+
+    private void collectMetrics(final List<Sample> samples) {
+        samples.add(Sample.gauge("ejbca_public_key_blacklist_index_fingerprints", "Number of fingerprints in the public key block list index.",
+                getSize()));
+        samples.add(Sample.gauge("ejbca_public_key_blacklist_index_memory_bytes", "Approximate memory used by the public key block list index.",
+                getMemoryFootprint()));
+        samples.add(Sample.gauge("ejbca_public_key_blacklist_index_bloom_false_positive_rate",
+                "Expected false positive rate of the Bloom filter of the public key block list index.", getBloomFalsePositiveRate()));
+        samples.add(Sample.counter("ejbca_public_key_blacklist_index_negatives_total",
+                "Number of keys found not to be on the block list without a database lookup.", negatives.sum()));
+        samples.add(Sample.counter("ejbca_public_key_blacklist_index_positives_total",
+                "Number of keys that might be on the block list, which are looked up in the database.", positives.sum()));
+        samples.add(Sample.counter("ejbca_public_key_blacklist_index_bloom_false_positives_total",
+                "Number of keys that passed the Bloom filter but were not in the public key block list index.", bloomFalsePositives.sum()));
+    }
+
+    /** @return a one line summary of the index, suitable for logging */
+    public String getStatistics() {
+        final Index current = index;
+        if (current == null) {
+            return "not loaded";
+        }
+        return "fingerprints=" + getSize() + ", memoryBytes=" + getMemoryFootprint()
+                + ", bloomFalsePositiveRate=" + String.format("%.5f", getBloomFalsePositiveRate()) + ", negatives=" + negatives.sum()
+                + ", positives=" + positives.sum() + ", bloomFalsePositives=" + bloomFalsePositives.sum();
+    }
+}
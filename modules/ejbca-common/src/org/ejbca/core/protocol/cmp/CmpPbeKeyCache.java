@@ -0,0 +1,159 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.protocol.cmp;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.crypto.SecretKey;
+
+import org.apache.log4j.Logger;
+import org.cesecore.util.ComponentMetrics;
+import org.cesecore.util.ComponentMetrics.Sample;
+
+/**
+ * Cache of the MAC keys derived from CMP shared secrets, for password based MAC (RFC 4210 section 5.1.3.1) and PBMAC1 (RFC 9481)
+ * protected messages. Deriving the key takes up to 10000 hash iterations, while clients in RA mode typically send many messages
+ * with the same secret, salt and parameters.
+ * <p>
+ * Entries are keyed by a SHA-256 hash of the secret, the salt and all derivation parameters, so the secret itself is not kept.
+ * Only keys that verified the MAC of a message are added, so that messages with a wrong secret or random salts can not fill the
+ * cache. The number of keys is bounded, and the least recently used key is removed first. The cache is cleared when the CMP
+ * configuration is updated, see CMPConfigurationCache. The hit rate is exported with {@link ComponentMetrics}.
+ */
+public enum CmpPbeKeyCache {
+    INSTANCE;
+
+    private static final Logger log = Logger.getLogger(CmpPbeKeyCache.class);
+
+    private static final int MAX_ENTRIES = 1024;
+
+    private final Map<ByteBuffer, SecretKey> cache = new LinkedHashMap<ByteBuffer, SecretKey>(64, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<ByteBuffer, SecretKey> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    private CmpPbeKeyCache() {
+        ComponentMetrics.INSTANCE.register("cmp_pbe_key_cache", this::collectMetrics);
+    }
+
+    /**
+     * Creates the cache key for a derived key.
+     *
+     * @param secret the shared secret
+     * @param salt the salt from the protection algorithm parameters
+     * @param iterationCount the iteration count from the protection algorithm parameters
+     * @param parameters the OIDs of the algorithms used to derive and use the key, and any other parameter that affects the key
+     * @return a hash of all the inputs
+     */
+    public static ByteBuffer createKey(final String secret, final byte[] salt, final int iterationCount, final String... parameters) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            update(digest, secret.getBytes(StandardCharsets.UTF_8));
+            update(digest, salt);
+            digest.update(ByteBuffer.allocate(4).putInt(iterationCount).array());
+            for (final String parameter : parameters) {
+                update(digest, parameter == null ? new byte[0] : parameter.getBytes(StandardCharsets.UTF_8));
+            }
+            return ByteBuffer.wrap(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available.", e);
+        }
+    }
+
+    /** Adds a length prefixed value, so that the boundaries between values can not be moved */
+    private static void update(final MessageDigest digest, final byte[] value) {
+        digest.update(ByteBuffer.allocate(4).putInt(value.length).array());
+        digest.update(value);
+    }
+
+    /**
+     * @param key a key created by {@link #createKey(String, byte[], int, String...)}
+     * @return the derived key, or null if it is not cached
+     */
+    public SecretKey get(final ByteBuffer key) {
+        final SecretKey derivedKey;
+        synchronized (cache) {
+            derivedKey = cache.get(key);
+        }
+        if (derivedKey == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return derivedKey;
+    }
+
+    /**
+     * Adds a derived key that verified the MAC of a message.
+     *
+     * @param key a key created by {@link #createKey(String, byte[], int, String...)}
+     * @param derivedKey the derived key
+     */
+    public void put(final ByteBuffer key, final SecretKey derivedKey) {
+        synchronized (cache) {
+            cache.put(key, derivedKey);
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Cached derived CMP MAC key. " + getStatistics());
+        }
+    }
+
+    /** Removes all keys, e.g. when the shared secrets in the CMP configuration may have changed */
+    public void clear() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    /** @return the number of cached keys */
+    public int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    /** @return the fraction of lookups that found a cached key, or 0 if there were no lookups */
+    public double getHitRate() {
+        final long hitCount = hits.sum();
+        final long total = hitCount + misses.sum();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    private void collectMetrics(final List<Sample> samples) {
+        samples.add(Sample.gauge("ejbca_cmp_pbe_key_cache_entries", "Number of derived CMP MAC keys in the cache.", size()));
+        samples.add(Sample.counter("ejbca_cmp_pbe_key_cache_hits_total", "Number of CMP MAC verifications that used a cached derived key.",
+                hits.sum()));
+        samples.add(Sample.counter("ejbca_cmp_pbe_key_cache_misses_total", "Number of CMP MAC verifications that derived the key from the secret.",
+                misses.sum()));
+        samples.add(Sample.gauge("ejbca_cmp_pbe_key_cache_hit_ratio", "Share of CMP MAC verifications that used a cached derived key.",
+                getHitRate()));
+    }
+
+    /** @return a one line summary of the cache metrics, suitable for logging */
+    public String getStatistics() {
+        return "entries=" + size() + ", hits=" + hits.sum() + ", misses=" + misses.sum() + ", hitRatio=" + String.format("%.3f", getHitRate());
+    }
+}
@@ -0,0 +1,297 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.util.keystore;
+
+import java.security.InvalidAlgorithmParameterException;
+import java.security.KeyPair;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.security.auth.DestroyFailedException;
+
+import org.apache.log4j.Logger;
+import org.cesecore.util.ComponentMetrics;
+import org.cesecore.util.ComponentMetrics.Sample;
+import org.ejbca.config.EjbcaConfiguration;
+
+import com.keyfactor.util.keys.KeyTools;
+
+/**
+ * Pool of pre-generated key pairs for server-side key generation.
+ * <p>
+ * For each algorithm and spec configured with keypool.keyspecs, up to keypool.size key pairs are generated by keypool.threads
+ * background threads with low priority, so that e.g. RSA 4096 key generation does not add to the latency of a keystore request.
+ * Each key pair is handed out only once. When the pool is empty, or the algorithm and spec are not configured, the key pair is generated
+ * by the calling thread, exactly as without the pool.
+ * <p>
+ * The pool is started by the application at startup with {@link #start(ThreadFactory)}, so the threads are created by the container,
+ * and by the CLI with {@link #startStandalone()}. Until it has been started, all key pairs are generated by the calling thread.
+ * <p>
+ * Key pairs are only held in memory, and are discarded on {@link #shutdown()} when the application is undeployed. After that, all key
+ * pairs are generated by the calling thread. The metrics are available from the metrics servlet, see {@link ComponentMetrics}.
+ */
+public enum KeyPairPool {
+    INSTANCE;
+
+    private static final Logger log = Logger.getLogger(KeyPairPool.class);
+
+    /** Pre-generated key pairs of a single algorithm and spec */
+    private static final class Pool {
+        final String keyAlg;
+        final String keySpec;
+        final BlockingDeque<KeyPair> keyPairs;
+        /** Number of generation tasks that are queued or running */
+        final AtomicInteger pending = new AtomicInteger();
+
+        Pool(final String keyAlg, final String keySpec, final int size) {
+            this.keyAlg = keyAlg;
+            this.keySpec = keySpec;
+            this.keyPairs = new LinkedBlockingDeque<>(size);
+        }
+    }
+
+    private final Map<String, Pool> pools = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder generated = new LongAdder();
+    private final LongAdder inlineGenerationNanos = new LongAdder();
+    private volatile boolean started = false;
+    private volatile boolean shutdown = false;
+    private volatile ExecutorService executor = null;
+    private int threads;
+
+    private KeyPairPool() {
+        ComponentMetrics.INSTANCE.register("key_pair_pool", this::collectMetrics);
+    }
+
+    /**
+     * Returns a pre-generated key pair, or generates one if none is available.
+     *
+     * @param keySpec the key spec, e.g. "4096" or "secp256r1", as for KeyTools.genKeys
+     * @param keyAlg the key algorithm, e.g. "RSA", as for KeyTools.genKeys
+     * @return a key pair that has not been returned before
+     * @throws InvalidAlgorithmParameterException if the key pair could not be generated
+     */
+    public KeyPair getKeyPair(final String keySpec, final String keyAlg) throws InvalidAlgorithmParameterException {
+        final Pool pool = pools.get(getKey(keyAlg, keySpec));
+        if (pool != null) {
+            final KeyPair ret = pool.keyPairs.pollFirst();
+            refill(pool);
+            if (ret != null) {
+                hits.increment();
+                return ret;
+            }
+        }
+        misses.increment();
+        final long startTime = System.nanoTime();
+        try {
+            return KeyTools.genKeys(keySpec, keyAlg);
+        } finally {
+            inlineGenerationNanos.add(System.nanoTime() - startTime);
+        }
+    }
+
+    /**
+     * Reads the configuration and starts filling the pools, unless no key pairs are configured. Does nothing if the pool has already
+     * been started, or has been shut down.
+     *
+     * @param threadFactory creates the background threads, e.g. the container's ManagedThreadFactory
+     */
+    public synchronized void start(final ThreadFactory threadFactory) {
+        if (started || shutdown) {
+            return;
+        }
+        final int size = EjbcaConfiguration.getKeyPairPoolSize();
+        threads = Math.max(1, EjbcaConfiguration.getKeyPairPoolThreads());
+        if (size > 0) {
+            for (final String entry : EjbcaConfiguration.getKeyPairPoolKeySpecs()) {
+                final String[] parts = entry.trim().split(":", 2);
+                if (parts.length != 2 || parts[0].isEmpty() || parts[1].isEmpty()) {
+                    log.warn("Ignoring invalid keypool.keyspecs entry '" + entry + "'. Expected algorithm:spec, e.g. RSA:4096.");
+                    continue;
+                }
+                pools.put(getKey(parts[0], parts[1]), new Pool(parts[0], parts[1], size));
+            }
+        }
+        if (!pools.isEmpty()) {
+            executor = Executors.newFixedThreadPool(threads, runnable -> {
+                final Thread thread = threadFactory.newThread(runnable);
+                // Requests have priority over pre-generation
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            });
+            log.info("Pre-generating " + size + " key pairs each of " + pools.keySet() + " with " + threads + " threads.");
+            for (final Pool pool : pools.values()) {
+                refill(pool);
+            }
+        }
+        started = true;
+    }
+
+    /** Starts the pool with daemon threads that are not managed by a container, for use outside of the application server, e.g. in the CLI. */
+    public void startStandalone() {
+        final AtomicInteger threadNumber = new AtomicInteger();
+        start(runnable -> {
+            final Thread thread = new Thread(runnable, "KeyPairPool-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /** Queues generation tasks for the pool until it will be full, with at most one task per thread. */
+    private void refill(final Pool pool) {
+        final ExecutorService executor = this.executor;
+        if (executor == null) {
+            return;
+        }
+        while (true) {
+            final int pending = pool.pending.get();
+            if (pending >= threads || pending >= pool.keyPairs.remainingCapacity()) {
+                return;
+            }
+            if (pool.pending.compareAndSet(pending, pending + 1)) {
+                try {
+                    executor.execute(() -> generate(pool));
+                } catch (RejectedExecutionException e) {
+                    // Shutting down
+                    pool.pending.decrementAndGet();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void generate(final Pool pool) {
+        boolean success = false;
+        try {
+            final KeyPair keyPair = KeyTools.genKeys(pool.keySpec, pool.keyAlg);
+            if (pools.get(getKey(pool.keyAlg, pool.keySpec)) == pool && pool.keyPairs.offerLast(keyPair)) {
+                generated.increment();
+                success = true;
+            } else {
+                destroy(keyPair);
+            }
+        } catch (InvalidAlgorithmParameterException | RuntimeException e) {
+            // Don't retry forever, the key pairs will be generated when requested instead
+            log.warn("Unable to pre-generate key pairs of type " + getKey(pool.keyAlg, pool.keySpec) + ", removing it from the key pair pool: "
+                    + e.getMessage());
+            pools.remove(getKey(pool.keyAlg, pool.keySpec), pool);
+        } finally {
+            pool.pending.decrementAndGet();
+        }
+        if (success) {
+            refill(pool);
+        }
+    }
+
+    /**
+     * Stops the background generation and discards all pre-generated key pairs. The private keys are destroyed if the provider supports it.
+     * The pool is not started again, later requests generate their key pairs inline.
+     */
+    public synchronized void shutdown() {
+        shutdown = true;
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+        int discarded = 0;
+        for (final Pool pool : pools.values()) {
+            KeyPair keyPair;
+            while ((keyPair = pool.keyPairs.pollFirst()) != null) {
+                destroy(keyPair);
+                discarded++;
+            }
+        }
+        pools.clear();
+        if (started && log.isDebugEnabled()) {
+            log.debug("Key pair pool stopped, discarded " + discarded + " key pairs. " + getStatistics());
+        }
+        started = false;
+    }
+
+    /** Used by unit tests to start the pool again, with the current configuration, after {@link #shutdown()} */
+    synchronized void reset() {
+        shutdown = false;
+    }
+
+    private static void destroy(final KeyPair keyPair) {
+        try {
+            keyPair.getPrivate().destroy();
+        } catch (DestroyFailedException e) {
+            // Not supported by most providers. The key is not referenced anymore.
+        }
+    }
+
+    private static String getKey(final String keyAlg, final String keySpec) {
+        return keyAlg + ":" + keySpec;
+    }
+
+    /** @return the number of pre-generated key pairs available for the algorithm and spec */
+    public int getDepth(final String keySpec, final String keyAlg) {
+        final Pool pool = pools.get(getKey(keyAlg, keySpec));
+        return pool == null ? 0 : pool.keyPairs.size();
+    }
+
+    /** @return the number of requests that got a pre-generated key pair */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /** @return the number of requests that had to wait for a key pair to be generated */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /** @return the number of key pairs generated in the background */
+    public long getGeneratedCount() {
+        return generated.sum();
+    }
+
+    /** @return the total time in milliseconds that requests have waited for key pairs to be generated */
+    public long getInlineGenerationMillis() {
+        return inlineGenerationNanos.sum() / 1000000L;
+    }
+
+    private void collectMetrics(final List<Sample> samples) {
+        for (final Map.Entry<String, Pool> entry : pools.entrySet()) {
+            samples.add(Sample.gauge("ejbca_key_pair_pool_depth", "Number of pre-generated key pairs available.", entry.getValue().keyPairs.size())
+                    .withLabel("key_type", entry.getKey()));
+        }
+        samples.add(Sample.counter("ejbca_key_pair_pool_hits_total", "Number of requests that got a pre-generated key pair.", getHitCount()));
+        samples.add(Sample.counter("ejbca_key_pair_pool_misses_total", "Number of requests that had to wait for a key pair to be generated.",
+                getMissCount()));
+        // The rate of this counter is the refill rate of the pools
+        samples.add(Sample.counter("ejbca_key_pair_pool_generated_total", "Number of key pairs generated in the background.", getGeneratedCount()));
+        samples.add(Sample.counter("ejbca_key_pair_pool_inline_generation_seconds_total",
+                "Total time that requests have waited for key pairs to be generated.", inlineGenerationNanos.sum() / 1e9));
+    }
+
+    /** @return a one line summary of the pool metrics, suitable for logging */
+    public String getStatistics() {
+        final StringBuilder depths = new StringBuilder();
+        for (final Map.Entry<String, Pool> entry : pools.entrySet()) {
+            depths.append(depths.length() == 0 ? "" : ", ").append(entry.getKey()).append('=').append(entry.getValue().keyPairs.size());
+        }
+        return "depth=[" + depths + "], hits=" + getHitCount() + ", misses=" + getMissCount() + ", generated=" + getGeneratedCount()
+                + ", inlineGenerationMs=" + getInlineGenerationMillis();
+    }
+}
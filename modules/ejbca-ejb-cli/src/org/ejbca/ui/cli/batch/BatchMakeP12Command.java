@@ -55,6 +55,7 @@ import org.ejbca.ui.cli.infrastructure.parameter.ParameterContainer;
 import org.ejbca.ui.cli.infrastructure.parameter.enums.MandatoryMode;
 import org.ejbca.ui.cli.infrastructure.parameter.enums.ParameterMode;
 import org.ejbca.ui.cli.infrastructure.parameter.enums.StandaloneMode;
+import org.ejbca.util.keystore.KeyPairPool;
 import org.ejbca.util.keystore.P12toPEM;
 
 import com.keyfactor.util.CertTools;
@@ -157,6 +158,8 @@ public class BatchMakeP12Command extends EjbcaCliUserCommandBase {
             }
             // Bouncy Castle security provider
             CryptoProviderTools.installBCProviderIfNotAvailable();
+            // Pre-generate the key pairs configured with keypool.keyspecs while the keystores are created
+            KeyPairPool.INSTANCE.startStandalone();
             // Create subdirectory 'p12' if it does not exist
             File dir = new File(directory).getCanonicalFile();
             dir.mkdir();
@@ -419,7 +422,7 @@ public class BatchMakeP12Command extends EjbcaCliUserCommandBase {
                 Properties.removeThreadOverride(CertificateConstants.ENABLE_UNSAFE_RSA_KEYS);
             }
         } else {
-            rsaKeys = KeyTools.genKeys(getProps().getKeySpec(), getProps().getKeyAlg());
+            rsaKeys = KeyPairPool.INSTANCE.getKeyPair(getProps().getKeySpec(), getProps().getKeyAlg());
         }
         // Get certificate for user and create keystore
         if (rsaKeys != null) {
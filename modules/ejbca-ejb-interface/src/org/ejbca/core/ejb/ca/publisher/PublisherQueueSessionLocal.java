@@ -14,6 +14,7 @@ package org.ejbca.core.ejb.ca.publisher;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Set;
 
 import jakarta.ejb.CreateException;
 import jakarta.ejb.Local;
@@ -104,6 +105,18 @@ public interface PublisherQueueSessionLocal {
      */
     Collection<PublisherQueueData> getPendingEntriesForPublisherWithLimitAndOffset(int publisherId, int limit, int offset);
 
+    /**
+     * Finds entries with status {@link PublisherQueueData.STATUS_PENDING} for a specific <code>publisherId</code>, using keyset
+     * pagination. The results are ordered by time created and primary key, in ascending order, so the oldest entry is returned first.
+     *
+     * @param publisherId the id of a publisher to fetch pending entries for.
+     * @param timeCreated time created of the last entry of the previous page, or -1 for the first page
+     * @param pk primary key of the last entry of the previous page, or an empty string for the first page
+     * @param limit the maximum number of entries to return
+     * @return List of PublisherQueueData, never null
+     */
+    List<PublisherQueueData> getPendingEntriesForPublisherAfter(int publisherId, long timeCreated, String pk, int limit);
+
     /**
      * Finds all entries for a specific fingerprint.
      * 
@@ -137,6 +150,27 @@ public interface PublisherQueueSessionLocal {
      */
     PublishingResult plainFifoTryAlwaysLimit100EntriesOrderByTimeCreated(AuthenticationToken admin, BasePublisher publisher, final long maxNumberOfJobs);
 
+
+    /**
+     * Intended for use from PublishQueueProcessWorker.
+     * 
+     * Processes the queue of a publisher with several threads. The pending entries are read a page at a time, oldest first, and each page
+     * is split into <code>parallelism</code> partitions by fingerprint, so entries for the same certificate, CRL or OCSP response are
+     * always published in queue order. Each partition is published and removed from the queue in its own transaction. Once an entry
+     * could not be published, the later entries for the same fingerprint are left in the queue for the next run, so they are not
+     * published before it. As for {@link #plainFifoTryAlwaysLimit100EntriesOrderByTimeCreated}, processing stops when nothing on a
+     * page could be published. The partitions are published by the container's managed executor service.
+     * <p>
+     * The publisher implementation must be safe to use from several threads at once.
+     *
+     * @param admin the administrator that must be authorized for publishing
+     * @param publisher the publisher to publish to
+     * @param maxNumberOfJobs a long value describing how many jobs to do as max. Hard capped at 200 000.
+     * @param parallelism the number of partitions that are published concurrently. 1 or less gives the same behavior as
+     *      {@link #plainFifoTryAlwaysLimit100EntriesOrderByTimeCreated}.
+     * @return how many publishing operations that succeeded and failed
+     */
+    PublishingResult processQueueInParallel(AuthenticationToken admin, BasePublisher publisher, long maxNumberOfJobs, int parallelism);
     
     /** Publishers do not run a part of regular transactions and expect to run in auto-commit mode. */
 	boolean publishCertificateNonTransactional(BasePublisher publisher, AuthenticationToken admin, CertificateDataWrapper cert,
@@ -184,5 +218,16 @@ public interface PublisherQueueSessionLocal {
      */
     PublishingResult doChunk(AuthenticationToken admin, BasePublisher publisher);
 
+    /** Publishes a partition of the queue in a new transaction, removing published entries with a single statement.
+     * @param admin the administrator that must be authorized for publishing
+     * @param publisher the publisher to publish to
+     * @param entries the queue entries of the partition, in the order they should be published
+     * @param skippedFingerprints fingerprints whose entries are not published in this run, because an earlier entry for the same
+     *      fingerprint could not be published. Fingerprints of entries that are not published are added to the set. Shared by all
+     *      partitions of the run, so it must be thread safe.
+     * @return how many publishing operations that succeeded and failed 
+     */
+    PublishingResult doPartition(AuthenticationToken admin, BasePublisher publisher, List<PublisherQueueData> entries, Set<String> skippedFingerprints);
+
     PublishingResult doPublish(AuthenticationToken admin, BasePublisher publisher, PublisherQueueData publisherQueueData);
 }
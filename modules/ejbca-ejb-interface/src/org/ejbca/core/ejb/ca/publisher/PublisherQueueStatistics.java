@@ -0,0 +1,140 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.ejb.ca.publisher;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.cesecore.util.ComponentMetrics;
+import org.cesecore.util.ComponentMetrics.Sample;
+
+/**
+ * Per publisher counters for the parallel processing of the publisher queue on this node, exported through {@link ComponentMetrics}
+ * with the publisher id as label.
+ */
+public enum PublisherQueueStatistics {
+    INSTANCE;
+
+    private static final String PUBLISHER_LABEL = "publisher";
+
+    /** Counters of a single publisher. */
+    public static final class Counters {
+        private final LongAdder published = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private final LongAdder retries = new LongAdder();
+        private volatile long lagMs = 0;
+        private volatile long lastRunEntries = 0;
+        private volatile long lastRunMs = 0;
+        private volatile long skippedFingerprints = 0;
+
+        /** @return the number of queue entries that have been published */
+        public long getPublished() {
+            return published.sum();
+        }
+
+        /** @return the number of publishing attempts that failed */
+        public long getFailed() {
+            return failed.sum();
+        }
+
+        /** @return the number of queue entries that were left in the queue with an increased try counter */
+        public long getRetries() {
+            return retries.sum();
+        }
+
+        /** @return the age in milliseconds of the oldest pending queue entry when the last run started */
+        public long getLagMs() {
+            return lagMs;
+        }
+
+        /** @return the number of processed queue entries per second during the last run */
+        public long getLastRunThroughput() {
+            return lastRunMs == 0 ? lastRunEntries : lastRunEntries * 1000 / lastRunMs;
+        }
+
+        /** @return the number of fingerprints whose entries were left in the queue during the last run, after an entry could not be published */
+        public long getSkippedFingerprints() {
+            return skippedFingerprints;
+        }
+
+        @Override
+        public String toString() {
+            return "published=" + getPublished() + ", failed=" + getFailed() + ", retries=" + getRetries() + ", lagMs=" + getLagMs()
+                    + ", lastRunEntriesPerSecond=" + getLastRunThroughput() + ", skippedFingerprints=" + getSkippedFingerprints();
+        }
+    }
+
+    private final Map<Integer, Counters> counters = new ConcurrentHashMap<>();
+
+    private PublisherQueueStatistics() {
+        ComponentMetrics.INSTANCE.register("publisher_queue", this::collectMetrics);
+    }
+
+    /** @return the counters of the publisher, never null */
+    public Counters getCounters(final int publisherId) {
+        return counters.computeIfAbsent(publisherId, id -> new Counters());
+    }
+
+    public void addPublished(final int publisherId, final int count) {
+        getCounters(publisherId).published.add(count);
+    }
+
+    public void addFailed(final int publisherId, final int count) {
+        getCounters(publisherId).failed.add(count);
+    }
+
+    public void addRetries(final int publisherId, final int count) {
+        getCounters(publisherId).retries.add(count);
+    }
+
+    public void setLag(final int publisherId, final long lagMs) {
+        getCounters(publisherId).lagMs = lagMs;
+    }
+
+    public void setLastRun(final int publisherId, final long entries, final long durationMs) {
+        final Counters publisherCounters = getCounters(publisherId);
+        publisherCounters.lastRunEntries = entries;
+        publisherCounters.lastRunMs = durationMs;
+    }
+
+    public void setSkippedFingerprints(final int publisherId, final long count) {
+        getCounters(publisherId).skippedFingerprints = count;
+    }
+
+    private void collectMetrics(final List<Sample> samples) {
+        for (final Map.Entry<Integer, Counters> entry : counters.entrySet()) {
+            final String publisherId = String.valueOf(entry.getKey());
+            final Counters publisherCounters = entry.getValue();
+            samples.add(Sample.counter("ejbca_publisher_queue_published_total", "Number of publisher queue entries published in parallel.",
+                    publisherCounters.getPublished()).withLabel(PUBLISHER_LABEL, publisherId));
+            samples.add(Sample.counter("ejbca_publisher_queue_failed_total", "Number of failed attempts to publish publisher queue entries in parallel.",
+                    publisherCounters.getFailed()).withLabel(PUBLISHER_LABEL, publisherId));
+            samples.add(Sample.counter("ejbca_publisher_queue_retries_total", "Number of publisher queue entries left in the queue with an increased try counter.",
+                    publisherCounters.getRetries()).withLabel(PUBLISHER_LABEL, publisherId));
+            samples.add(Sample.gauge("ejbca_publisher_queue_lag_seconds", "Age of the oldest pending publisher queue entry when the last run started.",
+                    publisherCounters.getLagMs() / 1000.0).withLabel(PUBLISHER_LABEL, publisherId));
+            samples.add(Sample.gauge("ejbca_publisher_queue_last_run_entries_per_second", "Processed publisher queue entries per second during the last run.",
+                    publisherCounters.getLastRunThroughput()).withLabel(PUBLISHER_LABEL, publisherId));
+            samples.add(Sample.gauge("ejbca_publisher_queue_last_run_skipped_fingerprints",
+                    "Number of fingerprints left in the publisher queue during the last run, after an entry could not be published.",
+                    publisherCounters.getSkippedFingerprints()).withLabel(PUBLISHER_LABEL, publisherId));
+        }
+    }
+
+    /** Clear all counters. */
+    public void clear() {
+        counters.clear();
+    }
+}
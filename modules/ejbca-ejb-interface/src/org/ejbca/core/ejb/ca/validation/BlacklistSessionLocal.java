@@ -67,4 +67,10 @@ public interface BlacklistSessionLocal extends BlacklistSession {
      * Flushes the public key blacklist entry cache to ensure that next time they are read from database.
      */
     void flushBlacklistEntryCache();
+
+    /**
+     * Loads the in-memory index of public key blacklist fingerprints, see PublicKeyBlacklistIndex, or loads it again if the entries
+     * in the database have changed. Does nothing if another thread is loading the index.
+     */
+    void refreshPublicKeyBlacklistIndex();
 }
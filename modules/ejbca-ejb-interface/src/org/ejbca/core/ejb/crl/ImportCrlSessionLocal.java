@@ -12,9 +12,30 @@
  *************************************************************************/
 package org.ejbca.core.ejb.crl;
 
+import java.util.List;
+
 import jakarta.ejb.Local;
 
+import org.bouncycastle.asn1.x509.TBSCertList.CRLEntry;
+import org.cesecore.authentication.tokens.AuthenticationToken;
+import org.cesecore.authorization.AuthorizationDeniedException;
+import org.cesecore.certificates.crl.CrlImportException;
+
 @Local
 public interface ImportCrlSessionLocal extends ImportCrlSession {
 
+    /**
+     * Updates the status of the certificates in the given entries of an imported CRL, in a new transaction. Used by
+     * {@link #importCrl} to apply the new entries of huge CRLs in batches.
+     *
+     * @param authenticationToken The administrator performing the operation
+     * @param caId ID of the CA that issued the CRL
+     * @param issuerDn subject DN of the CA that issued the CRL
+     * @param caFingerprint fingerprint of the CA certificate
+     * @param crlEntries the entries to apply, read with a CrlEntryReader from a CRL with a verified signature
+     * @throws CrlImportException If a certificate could not be revoked
+     * @throws AuthorizationDeniedException If the administrator is not authorized to perform the required operations
+     */
+    void importCrlEntries(AuthenticationToken authenticationToken, int caId, String issuerDn, String caFingerprint, List<CRLEntry> crlEntries)
+            throws CrlImportException, AuthorizationDeniedException;
 }
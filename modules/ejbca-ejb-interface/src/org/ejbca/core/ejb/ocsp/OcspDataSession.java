@@ -70,4 +70,26 @@ public interface OcspDataSession {
      * @return Serial numbers of the expired responses.
      */
     List<String> findExpiringOcpsData(Integer caId, long expirationDate, int maxNumberOfResults, int offset);
+
+    /**
+     * Returns the latest responses, per serial number, that expire at or before the given expirationDate,
+     * ordered by 'nextUpdate' so that the responses that expire first are returned first.
+     * 
+     * @param caId of the CA which signed the OCSP response
+     * @param expirationDate date before OCSP response expires.
+     * @param maxNumberOfResults Maximum number of results for this query.
+     * @param offset Start offset for this query.
+     * @return the expiring responses.
+     */
+    List<OcspResponseData> findExpiringOcspResponses(Integer caId, long expirationDate, int maxNumberOfResults, int offset);
+
+    /**
+     * Returns the number of latest responses, per serial number, that expire at or before the given expirationDate,
+     * i.e. the number of responses that {@link #findExpiringOcspResponses} would return without a limit.
+     * 
+     * @param caId of the CA which signed the OCSP response
+     * @param expirationDate date before OCSP response expires.
+     * @return the number of expiring responses.
+     */
+    long countExpiringOcspResponses(Integer caId, long expirationDate);
 }
@@ -0,0 +1,138 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.ejb.ocsp;
+
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.cesecore.util.ComponentMetrics;
+import org.cesecore.util.ComponentMetrics.Sample;
+
+/**
+ * Counters for pre-produced OCSP responses on this node. Shows how many OCSP requests were answered from the response store
+ * without a signature, and how far ahead of nextUpdate the background re-signing keeps the stored responses.
+ * <p>
+ * The counters are available from the metrics servlet, see {@link ComponentMetrics}.
+ */
+public enum OcspPresignStatistics {
+    INSTANCE;
+
+    private final LongAdder servedFromStore = new LongAdder();
+    private final LongAdder resigned = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder expiredBeforeResign = new LongAdder();
+    private volatile long lastRunResigned = 0;
+    private volatile long lastRunMs = 0;
+    private volatile long lastRunMinMarginMs = 0;
+    private volatile long lastRunBacklog = 0;
+
+    private OcspPresignStatistics() {
+        ComponentMetrics.INSTANCE.register("ocsp_presign", this::collectMetrics);
+    }
+
+    /** Called when an OCSP request was answered with a stored response, i.e. one signature was saved. */
+    public void addServedFromStore() {
+        servedFromStore.increment();
+    }
+
+    public void addResigned(final int count) {
+        resigned.add(count);
+    }
+
+    public void addFailed(final int count) {
+        failed.add(count);
+    }
+
+    public void addExpiredBeforeResign(final int count) {
+        expiredBeforeResign.add(count);
+    }
+
+    /**
+     * @param resignedCount number of responses re-signed during the run
+     * @param durationMs duration of the run
+     * @param minMarginMs smallest remaining validity of a stored response when it was re-signed, negative if it had already expired
+     * @param backlog number of responses that were due but left for the next run because of the time or signing rate limit
+     */
+    public void setLastRun(final long resignedCount, final long durationMs, final long minMarginMs, final long backlog) {
+        lastRunResigned = resignedCount;
+        lastRunMs = durationMs;
+        lastRunMinMarginMs = minMarginMs;
+        lastRunBacklog = backlog;
+    }
+
+    /** @return the number of OCSP requests that were answered with a stored response */
+    public long getServedFromStore() {
+        return servedFromStore.sum();
+    }
+
+    /** @return the number of stored responses that have been re-signed */
+    public long getResigned() {
+        return resigned.sum();
+    }
+
+    /** @return the number of re-signing attempts that did not produce a new stored response */
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    /** @return the number of stored responses that had already expired when they were re-signed */
+    public long getExpiredBeforeResign() {
+        return expiredBeforeResign.sum();
+    }
+
+    /** @return the number of re-signed responses per second during the last run */
+    public long getLastRunSignaturesPerSecond() {
+        return lastRunMs == 0 ? lastRunResigned : lastRunResigned * 1000 / lastRunMs;
+    }
+
+    /** @return the smallest remaining validity in milliseconds of a response re-signed during the last run */
+    public long getLastRunMinMarginMs() {
+        return lastRunMinMarginMs;
+    }
+
+    /** @return the number of due responses that were left for the next run */
+    public long getLastRunBacklog() {
+        return lastRunBacklog;
+    }
+
+    /** @return a one line summary of the counters, suitable for logging */
+    public String getStatistics() {
+        return "servedFromStore=" + getServedFromStore() + ", resigned=" + getResigned() + ", failed=" + getFailed() + ", expiredBeforeResign="
+                + getExpiredBeforeResign() + ", lastRunSignaturesPerSecond=" + getLastRunSignaturesPerSecond() + ", lastRunMinMarginMs="
+                + getLastRunMinMarginMs() + ", lastRunBacklog=" + getLastRunBacklog();
+    }
+
+    private void collectMetrics(final List<Sample> samples) {
+        samples.add(Sample.counter("ejbca_ocsp_presign_served_from_store_total", "Number of OCSP requests answered with a stored response.",
+                getServedFromStore()));
+        samples.add(Sample.counter("ejbca_ocsp_presign_resigned_total", "Number of stored OCSP responses that have been re-signed.", getResigned()));
+        samples.add(Sample.counter("ejbca_ocsp_presign_failed_total", "Number of stored OCSP responses that could not be re-signed.", getFailed()));
+        samples.add(Sample.counter("ejbca_ocsp_presign_expired_before_resign_total",
+                "Number of stored OCSP responses that had already expired when they were re-signed.", getExpiredBeforeResign()));
+        samples.add(Sample.gauge("ejbca_ocsp_presign_last_run_signatures_per_second", "Number of re-signed OCSP responses per second during the last run.",
+                getLastRunSignaturesPerSecond()));
+        samples.add(Sample.gauge("ejbca_ocsp_presign_last_run_min_margin_seconds",
+                "Smallest remaining validity of a stored OCSP response re-signed during the last run.", getLastRunMinMarginMs() / 1000.0));
+        samples.add(Sample.gauge("ejbca_ocsp_presign_last_run_backlog", "Number of due OCSP responses that were left for the next run.",
+                getLastRunBacklog()));
+    }
+
+    /** Clear all counters. */
+    public void clear() {
+        servedFromStore.reset();
+        resigned.reset();
+        failed.reset();
+        expiredBeforeResign.reset();
+        setLastRun(0, 0, 0, 0);
+    }
+}
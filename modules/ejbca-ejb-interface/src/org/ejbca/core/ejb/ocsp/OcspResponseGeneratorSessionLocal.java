@@ -45,7 +45,8 @@ public interface OcspResponseGeneratorSessionLocal extends OcspResponseGenerator
      *
      * @param cacert of the CA which signs the OCSP response
      * @param serialNr of the certificate to produce a response for.
-     * @param presignResponseValidity causes the validity of the response to be set to 9999. WARNING: This should only be used in the ETSI EN 319 411-2 and -1 usecase. 
+     * @param presignResponseValidity causes the validity of the response to be set to 9999. WARNING: This should only be used in the ETSI EN 319 411-2 and -1 usecase.
+     *        CONFIGURATION_BASED_SPREAD shortens the validity by a random part, for bulk re-signing.
      * @param includeExpiredCertificates to include expired certificates in presigned OCSP responses
      * @param certIDHashAlgorithm of the certId
      */
@@ -15,7 +15,10 @@ package org.ejbca.core.ejb.ocsp;
 /**
  * Denotes the possible choices for response validity time. The default is for the nextUpdate value to be polled from the configuration, 
  * but in a specific eIDAS usecase this time can be set to practical infinity. The latter is a MASSIVE FOOT GUN and should be used with caution.
+ * <p>
+ * CONFIGURATION_BASED_SPREAD is used when re-signing responses in bulk. A random part of up to 1/10 of the configured validity is cut off,
+ * so that responses re-signed together are not all due again at the same time.
  */
 public enum PresignResponseValidity {
-    UNLIMITED_VALIDITY_EIDAS, CONFIGURATION_BASED;
+    UNLIMITED_VALIDITY_EIDAS, CONFIGURATION_BASED, CONFIGURATION_BASED_SPREAD;
 }
@@ -15,6 +15,7 @@ package org.ejbca.core.ejb.ra;
 import java.util.AbstractMap;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import jakarta.ejb.Local;
 
@@ -36,6 +37,14 @@ public interface EndEntityAccessSessionLocal extends EndEntityAccessSession {
      * @return EndEntityInformation or null if the user is not found.
      */
     EndEntityInformation findUser(String username);
+
+    /**
+     * Finds several users by username with a single query, performs no authorization
+     *
+     * @param usernames the user names, at most 1000 since some databases limit the number of values in an IN clause
+     * @return map from username to EndEntityInformation. Users that are not found are not included.
+     */
+    Map<String, EndEntityInformation> findUsers(Collection<String> usernames);
     
     /**
      * Using some heuristics and tarot cards, returns which algorithm and method that's been used to hash this user's password.
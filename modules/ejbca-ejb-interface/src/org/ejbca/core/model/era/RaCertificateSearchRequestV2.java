@@ -19,6 +19,7 @@ import java.io.Serializable;
 import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
 /**
  * Search request for certificates from RA UI.
@@ -34,6 +35,8 @@ public class RaCertificateSearchRequestV2 implements Serializable, Comparable<Ra
     private int pageNumber = 0;
     private String orderProperty = "";
     private String orderOperation = "";
+    /** Encoded {@link RaSearchCursor} from the previous page, or null to use the page number */
+    private String cursor = null;
     private List<Integer> eepIds = new ArrayList<>();
     private List<Integer> cpIds = new ArrayList<>();
     private List<Integer> caIds = new ArrayList<>();
@@ -76,6 +79,7 @@ public class RaCertificateSearchRequestV2 implements Serializable, Comparable<Ra
         pageNumber = request.pageNumber;
         orderProperty = request.orderProperty;
         orderOperation = request.orderOperation;
+        cursor = request.cursor;
         eepIds.addAll(request.eepIds);
         cpIds.addAll(request.cpIds);
         caIds.addAll(request.caIds);
@@ -176,6 +180,21 @@ public class RaCertificateSearchRequestV2 implements Serializable, Comparable<Ra
         this.orderOperation = orderOperation;
     }
 
+    /** @return the cursor returned with the previous page of a search, or null if the page number should be used */
+    public String getCursor() {
+        return cursor;
+    }
+
+    /**
+     * Requests the page after the one returned with the given cursor, instead of a page number. The search must have the
+     * same criteria and order as the search that returned the cursor.
+     *
+     * @param cursor a cursor from {@link RaCertificateSearchResponseV2#getNextCursor()}, or null
+     */
+    public void setCursor(final String cursor) {
+        this.cursor = cursor;
+    }
+
     public List<Integer> getEepIds() {
         return eepIds;
     }
@@ -510,7 +529,7 @@ public class RaCertificateSearchRequestV2 implements Serializable, Comparable<Ra
             return false;
         }
         final RaCertificateSearchRequestV2 request = (RaCertificateSearchRequestV2) object;
-        return compareTo(request) == 0 && request.getPageNumber() == this.pageNumber;
+        return compareTo(request) == 0 && request.getPageNumber() == this.pageNumber && Objects.equals(request.cursor, this.cursor);
     }
 
     // negative = this object is less (more narrow) than other. E.g. only when other contains this and more.
@@ -522,7 +541,7 @@ public class RaCertificateSearchRequestV2 implements Serializable, Comparable<Ra
             return 1;
         }
         // First check if there is any there is any indication that this does not contain the whole other
-        if (maxResults > other.maxResults || pageNumber > other.pageNumber ||
+        if (maxResults > other.maxResults || pageNumber > other.pageNumber || !Objects.equals(cursor, other.cursor) ||
                 isWider(eepIds, other.eepIds) || isWider(cpIds, other.cpIds) || isWider(caIds, other.caIds) ||
                 issuedAfter < other.issuedAfter || issuedBefore > other.issuedBefore ||
                 expiresAfter < other.expiresAfter || expiresBefore > other.expiresBefore ||
@@ -16,6 +16,7 @@ import org.cesecore.certificates.certificate.CertificateDataWrapper;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.LinkedHashMap;
 import java.util.List;
 
@@ -36,6 +37,11 @@ public class RaCertificateSearchResponseV2 implements Serializable {
     private Status status = Status.IN_PROGRESS;
     private List<CertificateDataWrapper> cdws = new ArrayList<>();
     private long totalCount = 0;
+    private String nextCursor = null;
+    /** Order property of a keyset paginated search, used to merge the pages of several back ends. Null for other searches. */
+    private String keysetOrderProperty = null;
+    private boolean keysetDescending = false;
+    private int keysetMaxResults = 0;
 
     public List<CertificateDataWrapper> getCdws() {
         return cdws;
@@ -53,6 +59,32 @@ public class RaCertificateSearchResponseV2 implements Serializable {
         totalCount = count;
     }
 
+    /**
+     * @return an encoded {@link RaSearchCursor} for requesting the next page with {@link RaCertificateSearchRequestV2#setCursor(String)},
+     *      or null if this was the last page or the search order does not support keyset pagination
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(final String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+
+    /**
+     * Marks this response as a page of a search with keyset pagination, so that {@link #merge(RaCertificateSearchResponseV2)} can
+     * combine the pages of several back ends into a single page in the same order.
+     *
+     * @param orderProperty the order property of the request, "UPDATE_TIME" or "EXPIRE_DATE"
+     * @param descending true if the results are in descending order
+     * @param maxResults the page size
+     */
+    public void setKeysetOrder(final String orderProperty, final boolean descending, final int maxResults) {
+        this.keysetOrderProperty = orderProperty;
+        this.keysetDescending = descending;
+        this.keysetMaxResults = maxResults;
+    }
+
     public void merge(final RaCertificateSearchResponseV2 other) {
         final LinkedHashMap<String, CertificateDataWrapper> cdwMap = new LinkedHashMap<>();
         for (final CertificateDataWrapper cdw : cdws) {
@@ -64,12 +96,56 @@ public class RaCertificateSearchResponseV2 implements Serializable {
         this.cdws.clear();
         this.cdws.addAll(cdwMap.values());
         setTotalCount(totalCount + other.totalCount);
+        if (keysetOrderProperty == null) {
+            keysetOrderProperty = other.keysetOrderProperty;
+            keysetDescending = other.keysetDescending;
+            keysetMaxResults = other.keysetMaxResults;
+        }
+        if (keysetOrderProperty != null) {
+            mergeKeysetPages(other);
+        } else if (nextCursor == null) {
+            nextCursor = other.nextCursor;
+        }
         // When merging with a reponse with fail status, fail status takes precedence
         if (other.getStatus() == Status.ERROR || other.getStatus() == Status.TIMEOUT) {
             this.setStatus(other.getStatus());
         }
     }
 
+    /**
+     * Sorts the combined results of two back ends in the order of the search and keeps the first page. Each back end only returned the
+     * rows of its own first page, so the cursor is built from the last row that is actually returned. Rows of one back end that were
+     * cut off here are found again with that cursor, since it holds column values and not a position.
+     */
+    private void mergeKeysetPages(final RaCertificateSearchResponseV2 other) {
+        Comparator<CertificateDataWrapper> comparator = Comparator.<CertificateDataWrapper>comparingLong(this::getSortValue)
+                .thenComparing(cdw -> cdw.getCertificateData().getFingerprint());
+        if (keysetDescending) {
+            comparator = comparator.reversed();
+        }
+        cdws.sort(comparator);
+        final boolean more = nextCursor != null || other.nextCursor != null || cdws.size() > keysetMaxResults;
+        if (cdws.size() > keysetMaxResults) {
+            cdws.subList(keysetMaxResults, cdws.size()).clear();
+        }
+        if (more && !cdws.isEmpty()) {
+            final CertificateDataWrapper last = cdws.get(cdws.size() - 1);
+            nextCursor = new RaSearchCursor(keysetOrderProperty, keysetDescending, getSortValue(last),
+                    last.getCertificateData().getFingerprint()).encode();
+        } else {
+            nextCursor = null;
+        }
+    }
+
+    /** @return the value of the column that the keyset paginated search is ordered by, as used in the {@link RaSearchCursor} */
+    private long getSortValue(final CertificateDataWrapper cdw) {
+        if ("UPDATE_TIME".equals(keysetOrderProperty)) {
+            final Long updateTime = cdw.getCertificateData().getUpdateTime();
+            return updateTime == null ? 0L : updateTime;
+        }
+        return cdw.getCertificateData().getExpireDate();
+    }
+
     public void setStatus(final Status newStatus) {
         this.status = newStatus;
     }
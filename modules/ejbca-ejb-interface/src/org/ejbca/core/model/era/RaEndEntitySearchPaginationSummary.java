@@ -28,6 +28,11 @@ public class RaEndEntitySearchPaginationSummary implements Serializable {
     // resets to zero after sort property moves to next id
     // e.g. search with next end entity profile
     private int currentIdentifierSearchOffset;
+
+    // sort column value and username of the last end entity of the previous page, for keyset pagination
+    // resets together with currentIdentifierSearchOffset
+    private long keysetLastValue;
+    private String keysetLastUsername;
     
     private int nextPageNumber; // to distinguish between repeated search
     
@@ -95,6 +100,24 @@ public class RaEndEntitySearchPaginationSummary implements Serializable {
         this.currentIdentifierSearchOffset = currentIdentifierSearchOffset;
     }
     
+    public long getKeysetLastValue() {
+        return keysetLastValue;
+    }
+
+    /** @return the username of the last end entity of the previous page, or null to search from the start */
+    public String getKeysetLastUsername() {
+        return keysetLastUsername;
+    }
+
+    public void setKeysetPosition(long lastValue, String lastUsername) {
+        this.keysetLastValue = lastValue;
+        this.keysetLastUsername = lastUsername;
+    }
+
+    public void resetKeysetPosition() {
+        setKeysetPosition(0, null);
+    }
+
     public void incrementCurrentIdentifierSearchOffset(int pageSize) {
         this.currentIdentifierSearchOffset += pageSize;
     }
@@ -0,0 +1,100 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.model.era;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Position after the last result of a page of a search, for keyset pagination.
+ * <p>
+ * Instead of skipping the results of all previous pages with an offset, which makes the database read and discard them, the next
+ * page is requested with a condition on the sort column and a unique key, e.g. <code>(updateTime, fingerprint) &lt; (:value, :key)</code>,
+ * so fetching page N costs the same as fetching page 1. Clients only see the {@link #encode() encoded} form, which is opaque.
+ * <p>
+ * The cursor holds the sort property as given in the request, and not a column name, so a modified cursor cannot inject SQL.
+ */
+public final class RaSearchCursor {
+
+    private static final char SEPARATOR = ':';
+
+    private final String orderProperty;
+    private final boolean descending;
+    private final long lastValue;
+    private final String lastKey;
+
+    /**
+     * @param orderProperty the sort property of the search, e.g. UPDATE_TIME
+     * @param descending true if the search is sorted in descending order
+     * @param lastValue value of the sort column of the last result
+     * @param lastKey unique key of the last result, e.g. certificate fingerprint
+     */
+    public RaSearchCursor(final String orderProperty, final boolean descending, final long lastValue, final String lastKey) {
+        this.orderProperty = orderProperty;
+        this.descending = descending;
+        this.lastValue = lastValue;
+        this.lastKey = lastKey;
+    }
+
+    public String getOrderProperty() {
+        return orderProperty;
+    }
+
+    public boolean isDescending() {
+        return descending;
+    }
+
+    public long getLastValue() {
+        return lastValue;
+    }
+
+    public String getLastKey() {
+        return lastKey;
+    }
+
+    /** @return true if this cursor was created for a search with the given order */
+    public boolean matchesOrder(final String orderProperty, final String orderOperation) {
+        return this.orderProperty.equalsIgnoreCase(orderProperty == null ? "" : orderProperty.trim())
+                && (descending ? "DESC" : "ASC").equalsIgnoreCase(orderOperation == null ? "" : orderOperation.trim());
+    }
+
+    /** @return the cursor as an URL safe string */
+    public String encode() {
+        final String plain = orderProperty + SEPARATOR + (descending ? "DESC" : "ASC") + SEPARATOR + lastValue + SEPARATOR + lastKey;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(plain.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param encoded a cursor created by {@link #encode()}
+     * @return the decoded cursor
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    public static RaSearchCursor decode(final String encoded) {
+        final String plain;
+        try {
+            plain = new String(Base64.getUrlDecoder().decode(encoded), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Malformed search cursor.", e);
+        }
+        // The key is last, so it may contain the separator
+        final String[] parts = plain.split(String.valueOf(SEPARATOR), 4);
+        if (parts.length != 4 || parts[0].isEmpty() || !("ASC".equals(parts[1]) || "DESC".equals(parts[1]))) {
+            throw new IllegalArgumentException("Malformed search cursor.");
+        }
+        try {
+            return new RaSearchCursor(parts[0], "DESC".equals(parts[1]), Long.parseLong(parts[2]), parts[3]);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Malformed search cursor.", e);
+        }
+    }
+}
@@ -330,7 +330,7 @@ public class OcspResponseGeneratorSessionUnitTest {
         expectLoggerChecks();
         expectOcspConfigRead();
         expectCacheReload();
-        expect(certificateStoreSessionMock.getStatus(ISSUER_CERT_DN, REQUEST_SERIAL)).andReturn(status).once();
+        expect(certificateStoreSessionMock.getStatusForNormalizedIssuerDn(ISSUER_CERT_DN, REQUEST_SERIAL)).andReturn(status).once();
         replay(auditLogger, transactionLogger, caSessionMock, certificateStoreSessionMock, cryptoTokenSessionMock,
                 internalKeyBindingDataSessionMock, globalConfigurationSessionMock, timerServiceMock, ocspDataSessionMock);
         final OcspResponseInformation respInfo = ocspResponseGeneratorSession.getOcspResponse(req, null, REQUEST_IP, null, null, auditLogger,
@@ -356,7 +356,7 @@ public class OcspResponseGeneratorSessionUnitTest {
         log.trace(">basicCachedRequestSHA1");
         final byte[] req = makeOcspRequest(getIssuerCert(), REQUEST_SERIAL, OIWObjectIdentifiers.idSHA1, null);
         expectLoggerChecks();
-        expect(certificateStoreSessionMock.getStatus(ISSUER_CERT_DN, REQUEST_SERIAL)).andReturn(status).once();
+        expect(certificateStoreSessionMock.getStatusForNormalizedIssuerDn(ISSUER_CERT_DN, REQUEST_SERIAL)).andReturn(status).once();
         GlobalOcspConfiguration ocspConfiguration = new GlobalOcspConfiguration();
         ocspConfiguration.setDefaultValidityTime(60L);
         ocspConfiguration.setDefaultResponseMaxAge(30L);
@@ -373,7 +373,7 @@ public class OcspResponseGeneratorSessionUnitTest {
         log.trace(">basicCachedRequestSHA224");
         final byte[] req = makeOcspRequest(getIssuerCert(), REQUEST_SERIAL, NISTObjectIdentifiers.id_sha224, null);
         expectLoggerChecks();
-        expect(certificateStoreSessionMock.getStatus(ISSUER_CERT_DN, REQUEST_SERIAL)).andReturn(status).once();
+        expect(certificateStoreSessionMock.getStatusForNormalizedIssuerDn(ISSUER_CERT_DN, REQUEST_SERIAL)).andReturn(status).once();
         GlobalOcspConfiguration ocspConfiguration = new GlobalOcspConfiguration();
         ocspConfiguration.setDefaultValidityTime(60L);
         ocspConfiguration.setDefaultResponseMaxAge(30L);
@@ -390,7 +390,7 @@ public class OcspResponseGeneratorSessionUnitTest {
         log.trace(">basicCachedRequestSHA256");
         final byte[] req = makeOcspRequest(getIssuerCert(), REQUEST_SERIAL, NISTObjectIdentifiers.id_sha256, null);
         expectLoggerChecks();
-        expect(certificateStoreSessionMock.getStatus(ISSUER_CERT_DN, REQUEST_SERIAL)).andReturn(status).once();
+        expect(certificateStoreSessionMock.getStatusForNormalizedIssuerDn(ISSUER_CERT_DN, REQUEST_SERIAL)).andReturn(status).once();
         GlobalOcspConfiguration ocspConfiguration = new GlobalOcspConfiguration();
         ocspConfiguration.setDefaultValidityTime(60L);
         ocspConfiguration.setDefaultResponseMaxAge(30L);
@@ -407,7 +407,7 @@ public class OcspResponseGeneratorSessionUnitTest {
         log.trace(">basicCachedRequestSHA256");
         final byte[] req = makeOcspRequest(getIssuerCert(), REQUEST_SERIAL, NISTObjectIdentifiers.id_sha384, null);
         expectLoggerChecks();
-        expect(certificateStoreSessionMock.getStatus(ISSUER_CERT_DN, REQUEST_SERIAL)).andReturn(status).once();
+        expect(certificateStoreSessionMock.getStatusForNormalizedIssuerDn(ISSUER_CERT_DN, REQUEST_SERIAL)).andReturn(status).once();
         GlobalOcspConfiguration ocspConfiguration = new GlobalOcspConfiguration();
         ocspConfiguration.setDefaultValidityTime(60L);
         ocspConfiguration.setDefaultResponseMaxAge(30L);
@@ -424,7 +424,7 @@ public class OcspResponseGeneratorSessionUnitTest {
         log.trace(">basicCachedRequestSHA512");
         final byte[] req = makeOcspRequest(getIssuerCert(), REQUEST_SERIAL, NISTObjectIdentifiers.id_sha512, null);
         expectLoggerChecks();
-        expect(certificateStoreSessionMock.getStatus(ISSUER_CERT_DN, REQUEST_SERIAL)).andReturn(status).once();
+        expect(certificateStoreSessionMock.getStatusForNormalizedIssuerDn(ISSUER_CERT_DN, REQUEST_SERIAL)).andReturn(status).once();
         GlobalOcspConfiguration ocspConfiguration = new GlobalOcspConfiguration();
         ocspConfiguration.setDefaultValidityTime(60L);
         ocspConfiguration.setDefaultResponseMaxAge(30L);
@@ -463,7 +463,7 @@ public class OcspResponseGeneratorSessionUnitTest {
         log.trace(">zzza_basicCachedRequestWithPresigning");
         final byte[] req = makeOcspRequest(getIssuerCert(), REQUEST_SERIAL, OIWObjectIdentifiers.idSHA1, null);
         expectLoggerChecks();
-        expect(certificateStoreSessionMock.getStatus(ISSUER_CERT_DN, REQUEST_SERIAL)).andReturn(status).once();
+        expect(certificateStoreSessionMock.getStatusForNormalizedIssuerDn(ISSUER_CERT_DN, REQUEST_SERIAL)).andReturn(status).once();
         
         setupOcspResponseCache();
         replay(caSessionMock, auditLogger, transactionLogger, globalConfigurationSessionMock, certificateStoreSessionMock, ocspDataSessionMock);
@@ -480,7 +480,7 @@ public class OcspResponseGeneratorSessionUnitTest {
         final byte[] req = makeOcspRequest(getIssuerCert(), REQUEST_SERIAL, OIWObjectIdentifiers.idSHA1, null);
         expectLoggerChecks();
         status.setExpirationDate(System.currentTimeMillis() - 3600 * 1000); // expired
-        expect(certificateStoreSessionMock.getStatus(ISSUER_CERT_DN, REQUEST_SERIAL)).andReturn(status).once();
+        expect(certificateStoreSessionMock.getStatusForNormalizedIssuerDn(ISSUER_CERT_DN, REQUEST_SERIAL)).andReturn(status).once();
         
         setupOcspResponseCache();
         replay(caSessionMock, auditLogger, transactionLogger, globalConfigurationSessionMock, certificateStoreSessionMock, ocspDataSessionMock);
@@ -496,7 +496,7 @@ public class OcspResponseGeneratorSessionUnitTest {
         final byte[] req = makeOcspRequest(getIssuerCert(), REQUEST_SERIAL, OIWObjectIdentifiers.idSHA1, null);
         expectLoggerChecks();
         status.setExpirationDate(System.currentTimeMillis() - 3600 * 1000); // expired
-        expect(certificateStoreSessionMock.getStatus(ISSUER_CERT_DN, REQUEST_SERIAL)).andReturn(status).once();
+        expect(certificateStoreSessionMock.getStatusForNormalizedIssuerDn(ISSUER_CERT_DN, REQUEST_SERIAL)).andReturn(status).once();
 
         setupOcspResponseCache();
         replay(caSessionMock, auditLogger, transactionLogger, globalConfigurationSessionMock, certificateStoreSessionMock, ocspDataSessionMock);
@@ -514,7 +514,7 @@ public class OcspResponseGeneratorSessionUnitTest {
         final byte[] req = makeOcspRequest(getIssuerCert(), REQUEST_SERIAL, OIWObjectIdentifiers.idSHA1, null);
         expectLoggerChecks();
         expectOcspConfigRead();
-        expect(certificateStoreSessionMock.getStatus(ISSUER_CERT_DN, REQUEST_SERIAL)).andReturn(status).once();
+        expect(certificateStoreSessionMock.getStatusForNormalizedIssuerDn(ISSUER_CERT_DN, REQUEST_SERIAL)).andReturn(status).once();
         replay(auditLogger, transactionLogger, caSessionMock, certificateStoreSessionMock, cryptoTokenSessionMock,
                 internalKeyBindingDataSessionMock, globalConfigurationSessionMock, timerServiceMock);
         prepareOcspCache();
@@ -529,7 +529,7 @@ public class OcspResponseGeneratorSessionUnitTest {
         final byte[] req = makeOcspRequest(getSameDnSubCert(), REQUEST_SERIAL, OIWObjectIdentifiers.idSHA1, null);
         expectLoggerChecks();
         expectOcspConfigRead();
-        expect(certificateStoreSessionMock.getStatus(ISSUER_CERT_DN, REQUEST_SERIAL)).andReturn(status).once();
+        expect(certificateStoreSessionMock.getStatusForNormalizedIssuerDn(ISSUER_CERT_DN, REQUEST_SERIAL)).andReturn(status).once();
         replay(auditLogger, transactionLogger, caSessionMock, certificateStoreSessionMock, cryptoTokenSessionMock,
                 internalKeyBindingDataSessionMock, globalConfigurationSessionMock, timerServiceMock);
         prepareOcspCache();
@@ -548,7 +548,7 @@ public class OcspResponseGeneratorSessionUnitTest {
         byte[] req = makeOcspRequest(getIssuerCert(), REQUEST_SERIAL, OIWObjectIdentifiers.idSHA1, new DEROctetString(new byte[1]).getEncoded());
         expectLoggerChecks();
         expectOcspConfigRead();
-        expect(certificateStoreSessionMock.getStatus(ISSUER_CERT_DN, REQUEST_SERIAL)).andReturn(status).once();
+        expect(certificateStoreSessionMock.getStatusForNormalizedIssuerDn(ISSUER_CERT_DN, REQUEST_SERIAL)).andReturn(status).once();
         replay(auditLogger, transactionLogger, caSessionMock, certificateStoreSessionMock, cryptoTokenSessionMock,
                 internalKeyBindingDataSessionMock, globalConfigurationSessionMock, timerServiceMock);
         prepareOcspCache();
@@ -564,7 +564,7 @@ public class OcspResponseGeneratorSessionUnitTest {
         byte[] req = makeOcspRequest(getIssuerCert(), REQUEST_SERIAL, OIWObjectIdentifiers.idSHA1, new DEROctetString(new byte[128]).getEncoded());
         expectLoggerChecks();
         expectOcspConfigRead();
-        expect(certificateStoreSessionMock.getStatus(ISSUER_CERT_DN, REQUEST_SERIAL)).andReturn(status).once();
+        expect(certificateStoreSessionMock.getStatusForNormalizedIssuerDn(ISSUER_CERT_DN, REQUEST_SERIAL)).andReturn(status).once();
         replay(auditLogger, transactionLogger, caSessionMock, certificateStoreSessionMock, cryptoTokenSessionMock,
                 internalKeyBindingDataSessionMock, globalConfigurationSessionMock, timerServiceMock);
         prepareOcspCache();
@@ -579,7 +579,7 @@ public class OcspResponseGeneratorSessionUnitTest {
         byte[] req = makeOcspRequest(getIssuerCert(), REQUEST_SERIAL, OIWObjectIdentifiers.idSHA1, new DEROctetString(new byte[129]).getEncoded());
         expectLoggerChecks();
         expectOcspConfigRead();
-        expect(certificateStoreSessionMock.getStatus(ISSUER_CERT_DN, REQUEST_SERIAL)).andReturn(status).once();
+        expect(certificateStoreSessionMock.getStatusForNormalizedIssuerDn(ISSUER_CERT_DN, REQUEST_SERIAL)).andReturn(status).once();
         replay(auditLogger, transactionLogger, caSessionMock, certificateStoreSessionMock, cryptoTokenSessionMock,
                 internalKeyBindingDataSessionMock, globalConfigurationSessionMock, timerServiceMock);
         prepareOcspCache();
@@ -595,7 +595,7 @@ public class OcspResponseGeneratorSessionUnitTest {
         byte[] req = makeOcspRequest(getIssuerCert(), REQUEST_SERIAL, OIWObjectIdentifiers.idSHA1, new byte[128]);
         expectLoggerChecks();
         expectOcspConfigRead();
-        expect(certificateStoreSessionMock.getStatus(ISSUER_CERT_DN, REQUEST_SERIAL)).andReturn(status).once();
+        expect(certificateStoreSessionMock.getStatusForNormalizedIssuerDn(ISSUER_CERT_DN, REQUEST_SERIAL)).andReturn(status).once();
         replay(auditLogger, transactionLogger, caSessionMock, certificateStoreSessionMock, cryptoTokenSessionMock,
                 internalKeyBindingDataSessionMock, globalConfigurationSessionMock, timerServiceMock);
         prepareOcspCache();
@@ -611,7 +611,7 @@ public class OcspResponseGeneratorSessionUnitTest {
         byte[] req = makeOcspRequest(getIssuerCert(), REQUEST_SERIAL, OIWObjectIdentifiers.idSHA1, new byte[129]);
         expectLoggerChecks();
         expectOcspConfigRead();
-        expect(certificateStoreSessionMock.getStatus(ISSUER_CERT_DN, REQUEST_SERIAL)).andReturn(status).once();
+        expect(certificateStoreSessionMock.getStatusForNormalizedIssuerDn(ISSUER_CERT_DN, REQUEST_SERIAL)).andReturn(status).once();
         replay(auditLogger, transactionLogger, caSessionMock, certificateStoreSessionMock, cryptoTokenSessionMock,
                 internalKeyBindingDataSessionMock, globalConfigurationSessionMock, timerServiceMock);
         prepareOcspCache();
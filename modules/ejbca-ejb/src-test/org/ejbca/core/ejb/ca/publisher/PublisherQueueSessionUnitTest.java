@@ -12,21 +12,47 @@
  *************************************************************************/
 package org.ejbca.core.ejb.ca.publisher;
 
+import static org.easymock.EasyMock.anyInt;
+import static org.easymock.EasyMock.anyLong;
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.eq;
 import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.isNull;
 import static org.easymock.EasyMock.replay;
 import static org.easymock.EasyMock.reset;
 import static org.easymock.EasyMock.same;
 import static org.easymock.EasyMock.verify;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import jakarta.enterprise.concurrent.ManagedExecutorService;
 import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
 
 import org.cesecore.authentication.tokens.AuthenticationToken;
+import org.cesecore.certificates.certificate.CertificateDataWrapper;
 import org.cesecore.certificates.certificate.NoConflictCertificateStoreSessionLocal;
+import org.cesecore.util.ComponentMetrics;
+import org.cesecore.util.ComponentMetrics.Sample;
 import org.easymock.EasyMock;
 import org.ejbca.core.ejb.ocsp.OcspDataSessionLocal;
 import org.ejbca.core.model.ca.publisher.BasePublisher;
+import org.ejbca.core.model.ca.publisher.PublisherConst;
+import org.ejbca.core.model.ca.publisher.PublisherException;
+import org.ejbca.core.model.ca.publisher.PublisherQueueData;
 import org.ejbca.core.model.services.workers.PublishQueueProcessWorker;
 import org.junit.Before;
 import org.junit.Test;
@@ -42,12 +68,22 @@ public class PublisherQueueSessionUnitTest {
     private final PublisherQueueSessionLocal publisherQueueSessionMock = EasyMock.createStrictMock(PublisherQueueSessionLocal.class);
     private final AuthenticationToken adminMock = EasyMock.createStrictMock(AuthenticationToken.class);
     private final BasePublisher publisherMock = EasyMock.createMock(BasePublisher.class);
+    private final ManagedExecutorService executorServiceMock = EasyMock.createMock(ManagedExecutorService.class);
     
-    private final PublisherQueueSessionLocal publisherQueueSession = new PublisherQueueSessionBean(entityManagerMock, noConflictCertificateStoreSessionMock, ocspDataSessionMock, publisherQueueSessionMock);
+    private final PublisherQueueSessionLocal publisherQueueSession = new PublisherQueueSessionBean(entityManagerMock, noConflictCertificateStoreSessionMock,
+            ocspDataSessionMock, publisherQueueSessionMock, executorServiceMock);
 
     @Before
     public void before() {
-        reset(entityManagerMock, noConflictCertificateStoreSessionMock, ocspDataSessionMock, publisherQueueSessionMock, adminMock, publisherMock);
+        reset(entityManagerMock, noConflictCertificateStoreSessionMock, ocspDataSessionMock, publisherQueueSessionMock, adminMock, publisherMock,
+                executorServiceMock);
+        // Partitions are run in the calling thread
+        expect(executorServiceMock.submit(EasyMock.<Callable<PublishingResult>>anyObject())).andAnswer(() -> {
+            @SuppressWarnings("unchecked")
+            final Callable<PublishingResult> task = (Callable<PublishingResult>) EasyMock.getCurrentArguments()[0];
+            return CompletableFuture.completedFuture(task.call());
+        }).anyTimes();
+        replay(executorServiceMock);
     }
     
     /** Creates a PublishingResult with the given ranges of fingerprints for successes and failures. */
@@ -109,6 +145,100 @@ public class PublisherQueueSessionUnitTest {
         verify(publisherQueueSessionMock);
     }
 
+    private PublisherQueueData makeQueueData(final String pk, final long timeCreated, final String fingerprint) {
+        return new PublisherQueueData(pk, new Date(timeCreated), new Date(timeCreated), PublisherConst.STATUS_PENDING, 0, PublisherConst.PUBLISH_TYPE_CERT,
+                fingerprint, 123, null);
+    }
+
+    /** Tests that entries for the same fingerprint end up in the same partition, in queue order, and that paging continues after the last entry. */
+    @Test
+    public void publishInParallel() {
+        final List<PublisherQueueData> page = Arrays.asList(makeQueueData("pk1", 1000, "aaaa0"), makeQueueData("pk2", 1000, "aaaa1"),
+                makeQueueData("pk3", 2000, "aaaa0"), makeQueueData("pk4", 3000, "aaaa2"));
+        final Map<String, List<String>> pksByFingerprint = new ConcurrentHashMap<>();
+        expect(publisherMock.getPublisherId()).andReturn(123).anyTimes();
+        expect(publisherQueueSessionMock.getPendingEntriesForPublisherAfter(eq(123), eq(-1L), eq(""), anyInt())).andReturn(page);
+        expect(publisherQueueSessionMock.doPartition(same(adminMock), same(publisherMock), anyObject(), anyObject())).andAnswer(() -> {
+            @SuppressWarnings("unchecked")
+            final List<PublisherQueueData> partition = (List<PublisherQueueData>) EasyMock.getCurrentArguments()[2];
+            final PublishingResult result = new PublishingResult();
+            for (final PublisherQueueData pqd : partition) {
+                pksByFingerprint.computeIfAbsent(pqd.getFingerprint(), fp -> Collections.synchronizedList(new ArrayList<>())).add(pqd.getPk());
+                result.addSuccess(pqd.getFingerprint());
+            }
+            return result;
+        }).times(1, 2);
+        expect(publisherQueueSessionMock.getPendingEntriesForPublisherAfter(eq(123), anyLong(), eq("pk4"), anyInt())).andReturn(new ArrayList<>());
+        replay(publisherQueueSessionMock, publisherMock);
+        assertResult(3, 0, publisherQueueSession.processQueueInParallel(adminMock, publisherMock, PublishQueueProcessWorker.DEFAULT_QUEUE_WORKER_JOBS, 2));
+        verify(publisherQueueSessionMock);
+        assertEquals("Entries for the same fingerprint should be published in queue order", Arrays.asList("pk1", "pk3"), pksByFingerprint.get("aaaa0"));
+        assertEquals(3, pksByFingerprint.size());
+        assertTrue(PublisherQueueStatistics.INSTANCE.getCounters(123).getLagMs() > 0);
+    }
+
+    /** Tests that the later entries for a fingerprint are not published after an entry for it failed, but other fingerprints are */
+    @Test
+    public void partitionSkipsFingerprintAfterFailure() throws Exception {
+        final List<PublisherQueueData> entries = Arrays.asList(makeQueueData("pk1", 1000, "aaaa0"), makeQueueData("pk2", 1000, "aaaa1"),
+                makeQueueData("pk3", 2000, "aaaa0"));
+        expect(publisherMock.getPublisherId()).andReturn(123).anyTimes();
+        expect(publisherMock.getKeepPublishedInQueue()).andReturn(false).anyTimes();
+        expect(noConflictCertificateStoreSessionMock.getCertificateData("aaaa0")).andReturn(EasyMock.createMock(CertificateDataWrapper.class));
+        expect(publisherQueueSessionMock.publishCertificateNonTransactional(same(publisherMock), same(adminMock), anyObject(), isNull(), isNull(), isNull()))
+                .andReturn(false);
+        expect(noConflictCertificateStoreSessionMock.getCertificateData("aaaa1")).andReturn(EasyMock.createMock(CertificateDataWrapper.class));
+        expect(publisherQueueSessionMock.publishCertificateNonTransactional(same(publisherMock), same(adminMock), anyObject(), isNull(), isNull(), isNull()))
+                .andReturn(true);
+        final Query deleteQuery = EasyMock.createNiceMock(Query.class);
+        expect(deleteQuery.executeUpdate()).andReturn(1);
+        final Query failedQuery = EasyMock.createNiceMock(Query.class);
+        expect(failedQuery.getResultList()).andReturn(new ArrayList<>());
+        expect(entityManagerMock.createQuery(EasyMock.startsWith("DELETE"))).andReturn(deleteQuery);
+        expect(entityManagerMock.createQuery(EasyMock.startsWith("SELECT"))).andReturn(failedQuery);
+        replay(publisherMock, noConflictCertificateStoreSessionMock, publisherQueueSessionMock, entityManagerMock, deleteQuery, failedQuery);
+        final Set<String> skippedFingerprints = ConcurrentHashMap.newKeySet();
+        assertResult(1, 1, publisherQueueSession.doPartition(adminMock, publisherMock, entries, skippedFingerprints));
+        // The strict mocks fail if pk3 is published
+        verify(noConflictCertificateStoreSessionMock, publisherQueueSessionMock, entityManagerMock);
+        assertEquals(Set.of("aaaa0"), skippedFingerprints);
+    }
+
+    /** Tests that a timeout stops the partition, and that the fingerprints of the entries that were not attempted are skipped for the rest of the run */
+    @Test
+    public void partitionStopsAtTimeout() throws Exception {
+        final List<PublisherQueueData> entries = Arrays.asList(makeQueueData("pk1", 1000, "aaaa0"), makeQueueData("pk2", 1000, "aaaa1"),
+                makeQueueData("pk3", 2000, "aaaa0"));
+        expect(publisherMock.getPublisherId()).andReturn(123).anyTimes();
+        expect(noConflictCertificateStoreSessionMock.getCertificateData("aaaa0")).andReturn(EasyMock.createMock(CertificateDataWrapper.class));
+        expect(publisherQueueSessionMock.publishCertificateNonTransactional(same(publisherMock), same(adminMock), anyObject(), isNull(), isNull(), isNull()))
+                .andThrow(new PublisherException("Connection timed out"));
+        final Query failedQuery = EasyMock.createNiceMock(Query.class);
+        expect(failedQuery.getResultList()).andReturn(new ArrayList<>());
+        expect(entityManagerMock.createQuery(EasyMock.startsWith("SELECT"))).andReturn(failedQuery);
+        replay(publisherMock, noConflictCertificateStoreSessionMock, publisherQueueSessionMock, entityManagerMock, failedQuery);
+        final Set<String> skippedFingerprints = ConcurrentHashMap.newKeySet();
+        assertResult(0, 1, publisherQueueSession.doPartition(adminMock, publisherMock, entries, skippedFingerprints));
+        verify(noConflictCertificateStoreSessionMock, publisherQueueSessionMock, entityManagerMock);
+        assertEquals(Set.of("aaaa0", "aaaa1"), skippedFingerprints);
+    }
+
+    /** Tests that the partition statistics are exported as metrics */
+    @Test
+    public void partitionStatisticsAreExported() {
+        PublisherQueueStatistics.INSTANCE.addPublished(456, 3);
+        PublisherQueueStatistics.INSTANCE.setSkippedFingerprints(456, 2);
+        boolean found = false;
+        for (final Sample sample : ComponentMetrics.INSTANCE.getSamples()) {
+            if ("456".equals(sample.getLabelValue()) && "ejbca_publisher_queue_published_total".equals(sample.getName())) {
+                assertEquals(3, sample.getValue(), 0);
+                found = true;
+            }
+        }
+        assertTrue("Published counter should be exported with the publisher id as label", found);
+        assertFalse(ComponentMetrics.INSTANCE.getSamples().stream().noneMatch(sample -> "ejbca_publisher_queue_last_run_skipped_fingerprints".equals(sample.getName())));
+    }
+
     private void assertResult(int numSuccesses, int numFailures, final PublishingResult actualResult) {
         assertNotNull("Should have a result object", actualResult);
         assertEquals("Wrong number of successful fingerprints", numSuccesses, actualResult.getSuccesses());
@@ -0,0 +1,53 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.ejb.ocsp;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.cesecore.util.ComponentMetrics;
+import org.cesecore.util.ComponentMetrics.Sample;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link OcspPresignStatistics}.
+ */
+public class OcspPresignStatisticsUnitTest {
+
+    @After
+    public void after() {
+        OcspPresignStatistics.INSTANCE.clear();
+    }
+
+    @Test
+    public void metricsAreExported() {
+        OcspPresignStatistics.INSTANCE.clear();
+        OcspPresignStatistics.INSTANCE.addServedFromStore();
+        OcspPresignStatistics.INSTANCE.addResigned(5);
+        OcspPresignStatistics.INSTANCE.addFailed(2);
+        OcspPresignStatistics.INSTANCE.setLastRun(5, 1000, 60000, 7);
+        final Map<String, Double> values = new HashMap<>();
+        for (final Sample sample : ComponentMetrics.INSTANCE.getSamples()) {
+            values.put(sample.getName(), sample.getValue());
+        }
+        assertEquals(1, values.get("ejbca_ocsp_presign_served_from_store_total"), 0);
+        assertEquals(5, values.get("ejbca_ocsp_presign_resigned_total"), 0);
+        assertEquals(2, values.get("ejbca_ocsp_presign_failed_total"), 0);
+        assertEquals(5, values.get("ejbca_ocsp_presign_last_run_signatures_per_second"), 0);
+        assertEquals(60, values.get("ejbca_ocsp_presign_last_run_min_margin_seconds"), 0);
+        assertEquals(7, values.get("ejbca_ocsp_presign_last_run_backlog"), 0);
+    }
+}
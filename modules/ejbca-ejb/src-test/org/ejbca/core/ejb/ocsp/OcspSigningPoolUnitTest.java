@@ -0,0 +1,212 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.ejb.ocsp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateHolder;
+import org.bouncycastle.cert.ocsp.BasicOCSPResp;
+import org.bouncycastle.cert.ocsp.BasicOCSPRespBuilder;
+import org.bouncycastle.cert.ocsp.CertificateID;
+import org.bouncycastle.cert.ocsp.CertificateStatus;
+import org.bouncycastle.cert.ocsp.RespID;
+import org.bouncycastle.cert.ocsp.jcajce.JcaCertificateID;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
+import org.cesecore.config.ConfigurationHolder;
+import org.cesecore.config.OcspConfiguration;
+import org.cesecore.util.ComponentMetrics;
+import org.cesecore.util.ComponentMetrics.Sample;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.keyfactor.util.CertTools;
+import com.keyfactor.util.CryptoProviderTools;
+import com.keyfactor.util.crypto.algorithm.AlgorithmConstants;
+import com.keyfactor.util.keys.KeyTools;
+import com.keyfactor.util.keys.token.CryptoTokenOfflineException;
+
+/**
+ * Unit tests for {@link OcspSigningPool}, signing with a software key.
+ */
+public class OcspSigningPoolUnitTest {
+
+    private static KeyPair keys;
+    private static X509Certificate signerCertificate;
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        CryptoProviderTools.installBCProviderIfNotAvailable();
+        keys = KeyTools.genKeys("1024", AlgorithmConstants.KEYALGORITHM_RSA);
+        signerCertificate = CertTools.genSelfCert("CN=OcspSigningPoolUnitTest", 365, null, keys.getPrivate(), keys.getPublic(),
+                AlgorithmConstants.SIGALG_SHA256_WITH_RSA, true);
+    }
+
+    @Before
+    public void before() {
+        // Start the pool again with the configuration of the test
+        OcspSigningPool.INSTANCE.shutdown();
+        OcspSigningPool.INSTANCE.reset();
+    }
+
+    @After
+    public void after() {
+        OcspSigningPool.INSTANCE.shutdown();
+        OcspSigningPool.INSTANCE.reset();
+        ConfigurationHolder.updateConfiguration(OcspConfiguration.SIGNING_THREADS, "16");
+    }
+
+    private static BasicOCSPRespBuilder createBuilder(final long serialNumber) throws Exception {
+        final CertificateID certId = new JcaCertificateID(new JcaDigestCalculatorProviderBuilder().build().get(CertificateID.HASH_SHA1),
+                signerCertificate, BigInteger.valueOf(serialNumber));
+        final BasicOCSPRespBuilder builder = new BasicOCSPRespBuilder(new RespID(new JcaX509CertificateHolder(signerCertificate).getSubject()));
+        builder.addResponse(certId, CertificateStatus.GOOD);
+        return builder;
+    }
+
+    private HsmResponseThread createResponse(final long serialNumber) throws Exception {
+        return new HsmResponseThread(createBuilder(serialNumber), AlgorithmConstants.SIGALG_SHA256_WITH_RSA, keys.getPrivate(),
+                new X509Certificate[] { signerCertificate }, BouncyCastleProvider.PROVIDER_NAME, new Date());
+    }
+
+    @Test
+    public void signManyResponses() throws Exception {
+        final long signedBefore = OcspSigningPool.INSTANCE.getSignedCount();
+        final List<Future<BasicOCSPResp>> futures = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            futures.add(OcspSigningPool.INSTANCE.submit(createResponse(i), 10000));
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            final BasicOCSPResp response = futures.get(i).get(30, TimeUnit.SECONDS);
+            assertEquals(BigInteger.valueOf(i), response.getResponses()[0].getCertID().getSerialNumber());
+            assertTrue("Signature should be valid", response.isSignatureValid(CertTools.genContentVerifierProvider(keys.getPublic())));
+        }
+        assertEquals(200, OcspSigningPool.INSTANCE.getSignedCount() - signedBefore);
+        assertEquals(0, OcspSigningPool.INSTANCE.getQueueDepth());
+        assertTrue(OcspSigningPool.INSTANCE.getBatchCount() > 0);
+    }
+
+    /** Simulates an HSM that hangs and does not react to interrupts, until it is released */
+    private HsmResponseThread createHungResponse(final CountDownLatch started, final CountDownLatch release) throws Exception {
+        return new HsmResponseThread(createBuilder(4711), AlgorithmConstants.SIGALG_SHA256_WITH_RSA, keys.getPrivate(),
+                new X509Certificate[] { signerCertificate }, BouncyCastleProvider.PROVIDER_NAME, new Date()) {
+            @Override
+            ContentSigner createSigner() {
+                final ContentSigner signer = super.createSigner();
+                return new ContentSigner() {
+                    @Override
+                    public AlgorithmIdentifier getAlgorithmIdentifier() {
+                        return signer.getAlgorithmIdentifier();
+                    }
+
+                    @Override
+                    public OutputStream getOutputStream() {
+                        return signer.getOutputStream();
+                    }
+
+                    @Override
+                    public byte[] getSignature() {
+                        started.countDown();
+                        while (true) {
+                            try {
+                                release.await();
+                                return signer.getSignature();
+                            } catch (InterruptedException e) {
+                                // Ignored, like a hung native call
+                            }
+                        }
+                    }
+                };
+            }
+        };
+    }
+
+    @Test
+    public void hungSigningThreadIsReplaced() throws Exception {
+        ConfigurationHolder.updateConfiguration(OcspConfiguration.SIGNING_THREADS, "1");
+        final long hungBefore = OcspSigningPool.INSTANCE.getHungCount();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        try {
+            final Future<BasicOCSPResp> hung = OcspSigningPool.INSTANCE.submit(createHungResponse(started, release), 10000);
+            assertTrue(started.await(30, TimeUnit.SECONDS));
+            // The only signing thread is hung
+            final Future<BasicOCSPResp> next = OcspSigningPool.INSTANCE.submit(createResponse(1), 10000);
+            try {
+                next.get(200, TimeUnit.MILLISECONDS);
+                fail("The response should wait for the hung signing thread");
+            } catch (TimeoutException e) {
+                // Expected
+            }
+            // The caller gives up on the hung response
+            assertTrue(hung.cancel(true));
+            assertEquals(hungBefore + 1, OcspSigningPool.INSTANCE.getHungCount());
+            assertEquals(1, OcspSigningPool.INSTANCE.getReplacementThreadCount());
+            assertEquals(BigInteger.ONE, next.get(30, TimeUnit.SECONDS).getResponses()[0].getCertID().getSerialNumber());
+        } finally {
+            release.countDown();
+        }
+        // The replacement thread is removed when the hung call returns
+        final long deadline = System.currentTimeMillis() + 30000;
+        while (OcspSigningPool.INSTANCE.getReplacementThreadCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, OcspSigningPool.INSTANCE.getReplacementThreadCount());
+        // The pool still works
+        assertEquals(BigInteger.TEN, OcspSigningPool.INSTANCE.submit(createResponse(10), 10000).get(30, TimeUnit.SECONDS).getResponses()[0]
+                .getCertID().getSerialNumber());
+    }
+
+    @Test
+    public void shutdownIsTerminal() throws Exception {
+        OcspSigningPool.INSTANCE.submit(createResponse(1), 10000).get(30, TimeUnit.SECONDS);
+        OcspSigningPool.INSTANCE.shutdown();
+        try {
+            OcspSigningPool.INSTANCE.submit(createResponse(2), 10000);
+            fail("A pool that has been shut down should not start again");
+        } catch (CryptoTokenOfflineException e) {
+            assertEquals("OCSP signing pool has been shut down.", e.getMessage());
+        }
+    }
+
+    @Test
+    public void metricsAreExported() throws Exception {
+        OcspSigningPool.INSTANCE.submit(createResponse(1), 10000).get(30, TimeUnit.SECONDS);
+        boolean found = false;
+        for (final Sample sample : ComponentMetrics.INSTANCE.getSamples()) {
+            if ("ejbca_ocsp_signing_signed_total".equals(sample.getName())) {
+                assertEquals(OcspSigningPool.INSTANCE.getSignedCount(), (long) sample.getValue());
+                found = true;
+            }
+        }
+        assertTrue("Signing pool metrics should be registered", found);
+    }
+}
@@ -0,0 +1,270 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA: The OpenSource Certificate Authority                          *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.model.era;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.enterprise.concurrent.ManagedExecutorService;
+
+import org.cesecore.authentication.tokens.AlwaysAllowLocalAuthenticationToken;
+import org.cesecore.authentication.tokens.AuthenticationToken;
+import org.cesecore.authentication.tokens.UsernamePrincipal;
+import org.cesecore.certificates.certificate.CertificateData;
+import org.cesecore.certificates.certificate.CertificateDataWrapper;
+import org.cesecore.certificates.endentity.EndEntityInformation;
+import org.cesecore.util.ComponentMetrics;
+import org.cesecore.util.ComponentMetrics.Sample;
+import org.easymock.EasyMock;
+import org.ejbca.config.EjbcaConfigurationHolder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests of the parallel searches in {@link RaMasterApiProxyBean}
+ */
+public class RaMasterApiProxyBeanUnitTest {
+
+    private static final AuthenticationToken ADMIN = new AlwaysAllowLocalAuthenticationToken(new UsernamePrincipal("RaMasterApiProxyBeanUnitTest"));
+    /** How long to wait for another back end, so a test fails instead of hanging if the back ends are not searched as expected */
+    private static final long WAIT_SECONDS = 30;
+
+    private final ExecutorService executorService = Executors.newCachedThreadPool();
+    private final ManagedExecutorService managedExecutorServiceMock = EasyMock.createMock(ManagedExecutorService.class);
+
+    @Before
+    public void before() {
+        managedExecutorServiceMock.execute(anyObject(Runnable.class));
+        expectLastCall().andAnswer(() -> {
+            executorService.execute((Runnable) EasyMock.getCurrentArguments()[0]);
+            return null;
+        }).anyTimes();
+        EasyMock.replay(managedExecutorServiceMock);
+        RaSearchStatistics.INSTANCE.clear();
+    }
+
+    @After
+    public void after() {
+        EjbcaConfigurationHolder.updateConfiguration("peerconnector.search.timeout", "30000");
+        EjbcaConfigurationHolder.updateConfiguration("peerconnector.search.concurrency", "16");
+        executorService.shutdownNow();
+        RaSearchStatistics.INSTANCE.clear();
+    }
+
+    private RaMasterApiProxyBean proxy(final RaMasterApi... raMasterApis) {
+        return new RaMasterApiProxyBean(null, null, null, managedExecutorServiceMock, raMasterApis);
+    }
+
+    /** A search of a back end, that can wait for other back ends */
+    private interface EndEntitySearch {
+        void search() throws InterruptedException;
+    }
+
+    /** @return a back end that returns end entities with the given user names, after the given search has returned */
+    private static RaMasterApi backend(final EndEntitySearch search, final String... usernames) {
+        final RaMasterApi backend = EasyMock.createMock(RaMasterApi.class);
+        expect(backend.isBackendAvailable()).andReturn(true).anyTimes();
+        expect(backend.getApiVersion()).andReturn(20).anyTimes();
+        expect(backend.searchForEndEntities(anyObject(AuthenticationToken.class), anyObject(RaEndEntitySearchRequest.class))).andAnswer(() -> {
+            search.search();
+            final RaEndEntitySearchResponse response = new RaEndEntitySearchResponse();
+            for (final String username : usernames) {
+                final EndEntityInformation endEntity = new EndEntityInformation();
+                endEntity.setUsername(username);
+                response.getEndEntities().add(endEntity);
+            }
+            return response;
+        }).anyTimes();
+        EasyMock.replay(backend);
+        return backend;
+    }
+
+    /** @return a back end that returns end entities with the given user names immediately */
+    private static RaMasterApi backend(final String... usernames) {
+        return backend(() -> { }, usernames);
+    }
+
+    /**
+     * @return a back end with certificates updated at the given times, which returns them in descending order of update time with
+     *      keyset pagination, like RaMasterApiSessionBean
+     */
+    private static RaMasterApi certificateBackend(final String name, final long... updateTimes) {
+        final RaMasterApi backend = EasyMock.createMock(RaMasterApi.class);
+        expect(backend.isBackendAvailable()).andReturn(true).anyTimes();
+        expect(backend.getApiVersion()).andReturn(20).anyTimes();
+        expect(backend.searchForCertificatesV2(anyObject(AuthenticationToken.class), anyObject(RaCertificateSearchRequestV2.class))).andAnswer(() -> {
+            final RaCertificateSearchRequestV2 request = (RaCertificateSearchRequestV2) EasyMock.getCurrentArguments()[1];
+            final RaSearchCursor cursor = request.getCursor() == null ? null : RaSearchCursor.decode(request.getCursor());
+            final RaCertificateSearchResponseV2 response = new RaCertificateSearchResponseV2();
+            response.setKeysetOrder("UPDATE_TIME", true, request.getMaxResults());
+            // Fingerprints sort in the same order as the update times within a back end
+            for (int i = 0; i < updateTimes.length && response.getCdws().size() < request.getMaxResults(); i++) {
+                final String fingerprint = name + (9 - i);
+                if (cursor == null || updateTimes[i] < cursor.getLastValue()
+                        || (updateTimes[i] == cursor.getLastValue() && fingerprint.compareTo(cursor.getLastKey()) < 0)) {
+                    final CertificateData certificateData = new CertificateData();
+                    certificateData.setFingerprint(fingerprint);
+                    certificateData.setUpdateTime(updateTimes[i]);
+                    response.getCdws().add(new CertificateDataWrapper(certificateData, null));
+                }
+            }
+            if (response.getCdws().size() == request.getMaxResults()) {
+                final CertificateData last = response.getCdws().get(response.getCdws().size() - 1).getCertificateData();
+                response.setNextCursor(new RaSearchCursor("UPDATE_TIME", true, last.getUpdateTime(), last.getFingerprint()).encode());
+            }
+            response.setStatus(RaCertificateSearchResponseV2.Status.SUCCESSFUL);
+            return response;
+        }).anyTimes();
+        EasyMock.replay(backend);
+        return backend;
+    }
+
+    private static Set<String> usernames(final RaEndEntitySearchResponse response) {
+        final Set<String> ret = new HashSet<>();
+        for (final EndEntityInformation endEntity : response.getEndEntities()) {
+            ret.add(endEntity.getUsername());
+        }
+        return ret;
+    }
+
+    @Test
+    public void searchBackendsInParallel() {
+        // Each back end waits until all back ends are searched, which only happens if they are searched at the same time
+        final CountDownLatch searching = new CountDownLatch(3);
+        final EndEntitySearch waitForOthers = () -> {
+            searching.countDown();
+            assertTrue("Back ends were not searched in parallel", searching.await(WAIT_SECONDS, TimeUnit.SECONDS));
+        };
+        // The last back end is the local one, which is searched first
+        final RaMasterApiProxyBean proxy = proxy(backend(waitForOthers, "c"), backend(waitForOthers, "d"), backend(waitForOthers, "a", "b"));
+        final RaEndEntitySearchResponse response = proxy.searchForEndEntities(ADMIN, new RaEndEntitySearchRequest());
+        assertEquals(Set.of("a", "b", "c", "d"), usernames(response));
+        assertFalse(response.isMightHaveMoreResults());
+        EasyMock.verify(managedExecutorServiceMock);
+    }
+
+    @Test
+    public void slowBackendIsSkipped() throws InterruptedException {
+        EjbcaConfigurationHolder.updateConfiguration("peerconnector.search.timeout", "200");
+        final CountDownLatch released = new CountDownLatch(1);
+        final CountDownLatch cancelled = new CountDownLatch(1);
+        final RaMasterApiProxyBean proxy = proxy(backend(() -> {
+            try {
+                // Never released, so the search has to time out
+                released.await(WAIT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                cancelled.countDown();
+                throw e;
+            }
+        }, "c"), backend("a"));
+        final RaEndEntitySearchResponse response = proxy.searchForEndEntities(ADMIN, new RaEndEntitySearchRequest());
+        assertEquals(Set.of("a"), usernames(response));
+        assertTrue("A back end timed out, so there might be more results", response.isMightHaveMoreResults());
+        assertTrue("Search of the slow back end was not cancelled", cancelled.await(WAIT_SECONDS, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void searchesAreLimited() {
+        EjbcaConfigurationHolder.updateConfiguration("peerconnector.search.concurrency", "1");
+        final Set<Thread> threads = new HashSet<>();
+        final EndEntitySearch recordThread = () -> {
+            synchronized (threads) {
+                threads.add(Thread.currentThread());
+            }
+        };
+        // Only one of the two peer back ends is searched on the executor, the other one from the calling thread
+        final RaMasterApiProxyBean proxy = proxy(backend(recordThread, "c"), backend(recordThread, "d"), backend("a"));
+        final RaEndEntitySearchResponse response = proxy.searchForEndEntities(ADMIN, new RaEndEntitySearchRequest());
+        assertEquals(Set.of("a", "c", "d"), usernames(response));
+        assertEquals(2, threads.size());
+        assertTrue("One back end should be searched from the calling thread", threads.contains(Thread.currentThread()));
+    }
+
+    @Test
+    public void searchesWithoutExecutor() {
+        final RaMasterApiProxyBean proxy = new RaMasterApiProxyBean(null, null, null, null, backend("c"), backend("a"));
+        assertEquals(Set.of("a", "c"), usernames(proxy.searchForEndEntities(ADMIN, new RaEndEntitySearchRequest())));
+    }
+
+    @Test
+    public void latencyIsExported() {
+        EjbcaConfigurationHolder.updateConfiguration("peerconnector.search.timeout", "200");
+        final CountDownLatch released = new CountDownLatch(1);
+        final RaMasterApiProxyBean proxy = proxy(backend(() -> released.await(WAIT_SECONDS, TimeUnit.SECONDS), "c"), backend("a"));
+        proxy.searchForEndEntities(ADMIN, new RaEndEntitySearchRequest());
+        proxy.searchForEndEntities(ADMIN, new RaEndEntitySearchRequest());
+        final Map<String, Double> values = new HashMap<>();
+        for (final Sample sample : ComponentMetrics.INSTANCE.getSamples()) {
+            if (sample.getName().startsWith("ejbca_ra_search_backend_")) {
+                values.put(sample.getName() + "{" + sample.getLabelValue() + "}", sample.getValue());
+            }
+        }
+        assertEquals(2, values.get("ejbca_ra_search_backend_requests_total{0}"), 0);
+        assertEquals(0, values.get("ejbca_ra_search_backend_timeouts_total{0}"), 0);
+        assertEquals(2, values.get("ejbca_ra_search_backend_timeouts_total{1}"), 0);
+        assertTrue(values.containsKey("ejbca_ra_search_backend_seconds_total{0}"));
+    }
+
+    @Test
+    public void mergedResultsAreLimited() {
+        final RaMasterApiProxyBean proxy = proxy(backend("c", "d"), backend("a", "b"));
+        final RaEndEntitySearchRequest request = new RaEndEntitySearchRequest();
+        request.setMaxResults(3);
+        final RaEndEntitySearchResponse response = proxy.searchForEndEntities(ADMIN, request);
+        assertEquals(3, response.getEndEntities().size());
+        assertTrue(response.isMightHaveMoreResults());
+    }
+
+    @Test
+    public void mergedCertificatePagesAreInOrder() {
+        final RaMasterApiProxyBean proxy = proxy(certificateBackend("b", 95, 85, 50),
+                certificateBackend("a", 100, 90, 80, 70, 60, 50));
+        final RaCertificateSearchRequestV2 request = new RaCertificateSearchRequestV2();
+        request.setOrderProperty("UPDATE_TIME");
+        request.setOrderOperation("DESC");
+        request.setMaxResults(3);
+        final List<String> fingerprints = new ArrayList<>();
+        final List<Long> updateTimes = new ArrayList<>();
+        int pages = 0;
+        do {
+            final RaCertificateSearchResponseV2 response = proxy.searchForCertificatesV2(ADMIN, request);
+            assertTrue("Page is larger than requested", response.getCdws().size() <= 3);
+            for (final CertificateDataWrapper cdw : response.getCdws()) {
+                fingerprints.add(cdw.getCertificateData().getFingerprint());
+                updateTimes.add(cdw.getCertificateData().getUpdateTime());
+            }
+            request.setCursor(response.getNextCursor());
+            pages++;
+        } while (request.getCursor() != null && pages < 10);
+        // Each certificate of both back ends exactly once, ordered by update time and then fingerprint
+        assertEquals(List.of("a9", "b9", "a8", "b8", "a7", "a6", "a5", "b7", "a4"), fingerprints);
+        assertEquals(List.of(100L, 95L, 90L, 85L, 80L, 70L, 60L, 50L, 50L), updateTimes);
+        assertEquals(3, pages);
+    }
+}
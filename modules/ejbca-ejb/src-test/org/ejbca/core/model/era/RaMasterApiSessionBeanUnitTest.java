@@ -25,6 +25,7 @@ import static org.easymock.EasyMock.replay;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class RaMasterApiSessionBeanUnitTest {
     private EntityManager entityManager;
@@ -80,4 +81,49 @@ public class RaMasterApiSessionBeanUnitTest {
         
         assertFalse(parameters.getValues().contains("serialNumber"));
     }
+
+    @Test
+    public void testCreateQueryWithCursor() throws Exception {
+        RaCertificateSearchRequestV2 request = new RaCertificateSearchRequestV2();
+        request.setOrderProperty("UPDATE_TIME");
+        request.setOrderOperation("DESC");
+        request.setPageNumber(7);
+        request.setCursor(new RaSearchCursor("UPDATE_TIME", true, 1700000000000L, "abcd").encode());
+        RaMasterApiSessionBean.createQuery(entityManager, request, false, null, null, false, null, false);
+
+        assertTrue(queryString.getValue(), queryString.getValue().startsWith("SELECT a.fingerprint, a.updateTime FROM"));
+        assertTrue(queryString.getValue(), queryString.getValue().contains(
+                " AND (a.updateTime < :cursorValue OR (a.updateTime = :cursorValue AND a.fingerprint < :cursorKey))"));
+        assertTrue(queryString.getValue(), queryString.getValue().endsWith(" ORDER BY a.updateTime DESC, a.fingerprint DESC"));
+        assertTrue(parameters.getValues().contains("cursorValue"));
+        assertTrue(parameters.getValues().contains("cursorKey"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCreateQueryWithCursorForOtherOrder() throws Exception {
+        RaCertificateSearchRequestV2 request = new RaCertificateSearchRequestV2();
+        request.setOrderProperty("EXPIRE_DATE");
+        request.setOrderOperation("ASC");
+        request.setCursor(new RaSearchCursor("UPDATE_TIME", false, 1L, "abcd").encode());
+        RaMasterApiSessionBean.createQuery(entityManager, request, false, null, null, false, null, false);
+    }
+
+    @Test
+    public void testSearchCursorEncoding() throws Exception {
+        final RaSearchCursor cursor = RaSearchCursor.decode(new RaSearchCursor("EXPIRE_DATE", false, -5L, "a:b").encode());
+        assertEquals("EXPIRE_DATE", cursor.getOrderProperty());
+        assertFalse(cursor.isDescending());
+        assertEquals(-5L, cursor.getLastValue());
+        assertEquals("a:b", cursor.getLastKey());
+        assertTrue(cursor.matchesOrder(" expire_date", "asc "));
+        assertFalse(cursor.matchesOrder("EXPIRE_DATE", "DESC"));
+        for (final String malformed : new String[] { "", "%%%", "VVBEQVRFX1RJTUU6REVTQw" }) {
+            try {
+                RaSearchCursor.decode(malformed);
+                fail("Cursor '" + malformed + "' should be malformed");
+            } catch (IllegalArgumentException e) {
+                // Expected
+            }
+        }
+    }
 }
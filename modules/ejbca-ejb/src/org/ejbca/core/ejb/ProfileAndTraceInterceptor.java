@@ -18,31 +18,34 @@ import jakarta.interceptor.AroundInvoke;
 import jakarta.interceptor.InvocationContext;
 
 import org.apache.log4j.Logger;
+import org.ejbca.config.EjbcaConfiguration;
 
 /**
- * EJB Interceptor that is normally enabled for all EJBs when EJBCA is running in non-production mode.
+ * EJB Interceptor that is enabled for all EJBs.
  * 
  * The Interceptor will perform two tasks when active:
- * - Trace log all EJB invocations including input and output if Log4J trace-logging is enabled for the invoked methods EJB.
- * - Collect profiling statistics for all EJB invocations if Log4J debug is enabled for this class.
+ * - Trace log all EJB invocations including input and output if Log4J trace-logging is enabled for the invoked methods EJB
+ *   and Log4J debug is enabled for this class.
+ * - Collect invocation statistics for all EJB invocations, unless disabled with ejbca.metrics.enabled and Log4J debug is disabled
+ *   for this class. See {@link ProfilingStats}.
  * 
  * @version $Id$
  */
 public class ProfileAndTraceInterceptor {
 
     private static final Logger log = Logger.getLogger(ProfileAndTraceInterceptor.class);
+    private static final boolean METRICS_ENABLED = EjbcaConfiguration.isEjbMetricsEnabled();
     
     @AroundInvoke
     public Object logger(final InvocationContext invocationContext) throws Exception {
-        if (!log.isDebugEnabled()) {
+        final boolean debug = log.isDebugEnabled();
+        if (!METRICS_ENABLED && !debug) {
             return invocationContext.proceed();
         }
-        long invocationStartTime = 0;
-        final String targetMethodName = invocationContext.getMethod().getName();
         final Class<?> targetMethodClass = invocationContext.getTarget().getClass();
-        final Logger targetLogger = Logger.getLogger(targetMethodClass);
-        invocationStartTime = System.currentTimeMillis();
-        if (targetLogger.isTraceEnabled()) {
+        final Logger targetLogger = debug ? Logger.getLogger(targetMethodClass) : null;
+        final boolean trace = targetLogger != null && targetLogger.isTraceEnabled();
+        if (trace) {
             StringBuilder sb = new StringBuilder("(");
             for (Object obj : invocationContext.getParameters()) {
                 if (sb.length() > 1) {
@@ -59,8 +62,9 @@ public class ProfileAndTraceInterceptor {
                 }
             }    
             sb.append(")");
-            targetLogger.trace(">" + targetMethodName + sb.toString());
+            targetLogger.trace(">" + invocationContext.getMethod().getName() + sb.toString());
         }
+        final long invocationStartTime = System.nanoTime();
         Object returnValue = null;
         Exception returnException = null; 
         try {
@@ -69,14 +73,14 @@ public class ProfileAndTraceInterceptor {
             returnException = e;
             throw e;
         } finally {
-            long invocationDuration = System.currentTimeMillis() - invocationStartTime;
-            final String fullTargetIdentifier = targetMethodClass.getName() + "." + targetMethodName;
-            ProfilingStats.INSTANCE.add(fullTargetIdentifier, invocationDuration);
-            if (targetLogger.isTraceEnabled()) {
+            final long invocationDuration = System.nanoTime() - invocationStartTime;
+            ProfilingStats.INSTANCE.getMethodStats(targetMethodClass, invocationContext.getMethod()).add(invocationDuration, returnException != null);
+            if (trace) {
+                final String targetMethodName = invocationContext.getMethod().getName();
                 if (returnException == null) {
-                    targetLogger.trace("<" + targetMethodName + " took " + invocationDuration + "micros");
+                    targetLogger.trace("<" + targetMethodName + " took " + invocationDuration / 1000L + "micros");
                 } else {
-                    targetLogger.trace("<" + targetMethodName + " took " + invocationDuration + "micros, threw " + returnException.getClass().getName() + ": " + returnException.getMessage());
+                    targetLogger.trace("<" + targetMethodName + " took " + invocationDuration / 1000L + "micros, threw " + returnException.getClass().getName() + ": " + returnException.getMessage());
                 }
             }
         }
@@ -67,6 +67,7 @@ import org.ejbca.core.ejb.authorization.AuthorizationSystemSessionLocal;
 import org.ejbca.core.ejb.ca.caadmin.CAAdminSessionLocal;
 import org.ejbca.core.ejb.ocsp.OcspResponseCleanupSessionLocal;
 import org.ejbca.core.ejb.ocsp.OcspResponseGeneratorSessionLocal;
+import org.ejbca.core.ejb.ocsp.OcspSigningPool;
 import org.ejbca.core.ejb.ra.EndEntityAccessSessionLocal;
 import org.ejbca.core.ejb.ra.EndEntityManagementSessionLocal;
 import org.ejbca.core.ejb.ra.NoSuchEndEntityException;
@@ -78,6 +79,7 @@ import org.ejbca.core.model.approval.ApprovalException;
 import org.ejbca.core.model.approval.WaitingForApprovalException;
 import org.ejbca.util.DatabaseIndexUtil;
 import org.ejbca.util.JDBCUtil;
+import org.ejbca.util.keystore.KeyPairPool;
 
 import com.keyfactor.util.Base64;
 import com.keyfactor.util.CertTools;
@@ -87,6 +89,7 @@ import com.keyfactor.util.string.StringConfigurationCache;
 
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
 import jakarta.ejb.ConcurrencyManagement;
 import jakarta.ejb.ConcurrencyManagementType;
 import jakarta.ejb.EJB;
@@ -94,6 +97,7 @@ import jakarta.ejb.Singleton;
 import jakarta.ejb.Startup;
 import jakarta.ejb.TransactionManagement;
 import jakarta.ejb.TransactionManagementType;
+import jakarta.enterprise.concurrent.ManagedThreadFactory;
 
 /**
  * Singleton used to start services and perform upgrade tasks at startup.
@@ -137,11 +141,18 @@ public class StartupSingletonBean {
     private ServiceSessionLocal serviceSession;
     @EJB
     private OcspResponseCleanupSessionLocal ocspResponseCleanupSession;
+    /** Creates the threads of the key pair pool, so they run with the context of the application */
+    @Resource
+    private ManagedThreadFactory managedThreadFactory;
 
     @PreDestroy
     private void shutdown() {
         String iMsg = InternalEjbcaResources.getInstance().getLocalizedMessage("startservice.shutdown");
         log.info(iMsg);
+        // Discard the pre-generated key pairs and stop generating them
+        KeyPairPool.INSTANCE.shutdown();
+        // Stop the OCSP signing threads
+        OcspSigningPool.INSTANCE.shutdown();
         // Make a log row that EJBCA is stopping
         //final Map<String, Object> details = new LinkedHashMap<String, Object>();
         //details.put("msg", iMsg);
@@ -418,6 +429,10 @@ public class StartupSingletonBean {
         log.debug(">startup start OCSP clean up job");
         ocspResponseCleanupSession.start();
 
+        // Start pre-generating key pairs for server-side key generation, if configured
+        log.debug(">startup start key pair pool");
+        KeyPairPool.INSTANCE.start(managedThreadFactory);
+
         log.debug(">startup completed");
     }
     
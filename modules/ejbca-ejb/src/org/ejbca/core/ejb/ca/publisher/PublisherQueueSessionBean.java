@@ -20,7 +20,10 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
@@ -39,6 +42,7 @@ import jakarta.ejb.SessionContext;
 import jakarta.ejb.Stateless;
 import jakarta.ejb.TransactionAttribute;
 import jakarta.ejb.TransactionAttributeType;
+import jakarta.enterprise.concurrent.ManagedExecutorService;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
 import jakarta.persistence.Query;
@@ -82,12 +86,23 @@ public class PublisherQueueSessionBean implements PublisherQueueSessionLocal {
     private static final String TIMEOUT_MESSAGE_INDICATOR = "timed out";
     
     private static final long MAX_JOBS_PER_QUEUE_WORKER = 200000L;
+    /** Number of queue entries per partition and page when the queue is processed in parallel */
+    private static final int PARTITION_CHUNK_SIZE = 100;
+
+    /** Outcome of a single publishing attempt */
+    private enum PublishOutcome {
+        PUBLISHED, FAILED, TIMED_OUT
+    }
 
     @PersistenceContext(unitName = "ejbca")
     private EntityManager entityManager;
 
     @Resource
     private SessionContext sessionContext;
+
+    /** Publishes the partitions of {@link #processQueueInParallel}, so the EJB calls are made from container managed threads */
+    @Resource
+    private ManagedExecutorService managedExecutorService;
     
     @EJB
     private NoConflictCertificateStoreSessionLocal noConflictCertificateStoreSession;
@@ -109,11 +124,12 @@ public class PublisherQueueSessionBean implements PublisherQueueSessionLocal {
 
     /** Constructor for unit tests */
     protected PublisherQueueSessionBean(final EntityManager entityManager, final NoConflictCertificateStoreSessionLocal noConflictCertificateStoreSession,
-            final OcspDataSessionLocal ocspDataSession, final PublisherQueueSessionLocal publisherQueueSession) {
+            final OcspDataSessionLocal ocspDataSession, final PublisherQueueSessionLocal publisherQueueSession, final ManagedExecutorService managedExecutorService) {
         this.entityManager = entityManager;
         this.noConflictCertificateStoreSession = noConflictCertificateStoreSession;
         this.ocspDataSession = ocspDataSession;
         this.publisherQueueSession = publisherQueueSession;
+        this.managedExecutorService = managedExecutorService;
     }
 
     @PostConstruct
@@ -296,6 +312,17 @@ public class PublisherQueueSessionBean implements PublisherQueueSessionLocal {
         return ret;
     }
 
+    @Override
+    public List<PublisherQueueData> getPendingEntriesForPublisherAfter(final int publisherId, final long timeCreated, final String pk, final int limit) {
+        final List<PublisherQueueData> ret = new ArrayList<>();
+        for (final org.ejbca.core.ejb.ca.publisher.PublisherQueueData d : org.ejbca.core.ejb.ca.publisher.PublisherQueueData
+                .findDataByPublisherIdAndStatusAfter(entityManager, publisherId, PublisherConst.STATUS_PENDING, timeCreated, pk, limit)) {
+            ret.add(new PublisherQueueData(d.getPk(), new Date(d.getTimeCreated()), new Date(d.getLastUpdate()), PublisherConst.STATUS_PENDING,
+                    d.getTryCounter(), d.getPublishType(), d.getFingerprint(), publisherId, d.getPublisherQueueVolatileData()));
+        }
+        return ret;
+    }
+
     @Override
     public Collection<PublisherQueueData> getEntriesByFingerprint(String fingerprint) {
         if (log.isTraceEnabled()) {
@@ -362,6 +389,153 @@ public class PublisherQueueSessionBean implements PublisherQueueSessionLocal {
         return result;
     }
 
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    @Override
+    public PublishingResult processQueueInParallel(final AuthenticationToken admin, final BasePublisher publisher, final long maxNumberOfJobs,
+            final int parallelism) {
+        if (parallelism <= 1) {
+            return plainFifoTryAlwaysLimit100EntriesOrderByTimeCreated(admin, publisher, maxNumberOfJobs);
+        }
+        final long maxJobs;
+        if (maxNumberOfJobs > MAX_JOBS_PER_QUEUE_WORKER || maxNumberOfJobs <= 0) {
+            log.warn("Number of maxmimum jobs for the queue worker must be between 1 and " + MAX_JOBS_PER_QUEUE_WORKER + ". Using the default of "
+                    + PublishQueueProcessWorker.DEFAULT_QUEUE_WORKER_JOBS + " instead.");
+            maxJobs = PublishQueueProcessWorker.DEFAULT_QUEUE_WORKER_JOBS;
+        } else {
+            maxJobs = maxNumberOfJobs;
+        }
+        final int publisherId = publisher.getPublisherId();
+        if (log.isTraceEnabled()) {
+            log.trace(">processQueueInParallel(publisherId: " + publisherId + ", parallelism: " + parallelism + ")");
+        }
+        final long startTime = System.currentTimeMillis();
+        final PublishingResult result = new PublishingResult();
+        long lastTimeCreated = -1;
+        String lastPk = "";
+        int processed = 0;
+        boolean firstPage = true;
+        // Fingerprints with an entry that could not be published. Their later entries are left for the next run, also on later pages.
+        final Set<String> skippedFingerprints = ConcurrentHashMap.newKeySet();
+        while (result.getSuccesses() < maxJobs) {
+            final List<PublisherQueueData> page = publisherQueueSession.getPendingEntriesForPublisherAfter(publisherId, lastTimeCreated, lastPk,
+                    PARTITION_CHUNK_SIZE * parallelism);
+            if (firstPage) {
+                PublisherQueueStatistics.INSTANCE.setLag(publisherId, page.isEmpty() ? 0 : startTime - page.get(0).getTimeCreated().getTime());
+                firstPage = false;
+            }
+            if (page.isEmpty()) {
+                break;
+            }
+            final PublisherQueueData last = page.get(page.size() - 1);
+            lastTimeCreated = last.getTimeCreated().getTime();
+            lastPk = last.getPk();
+            // All entries for the same certificate, CRL or OCSP response end up in the same partition, so they are published in queue order
+            final List<List<PublisherQueueData>> partitions = new ArrayList<>(parallelism);
+            for (int i = 0; i < parallelism; i++) {
+                partitions.add(new ArrayList<>());
+            }
+            for (final PublisherQueueData pqd : page) {
+                partitions.get(Math.floorMod(pqd.getFingerprint().hashCode(), parallelism)).add(pqd);
+            }
+            // At most one task per partition is running at a time, so no more than parallelism threads of the managed executor are used
+            final List<Future<PublishingResult>> futures = new ArrayList<>(parallelism);
+            for (final List<PublisherQueueData> partition : partitions) {
+                if (!partition.isEmpty()) {
+                    futures.add(managedExecutorService.submit(() -> publisherQueueSession.doPartition(admin, publisher, partition, skippedFingerprints)));
+                }
+            }
+            final PublishingResult pageResult = new PublishingResult();
+            for (final Future<PublishingResult> future : futures) {
+                try {
+                    pageResult.append(future.get());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new EJBException(e);
+                } catch (ExecutionException e) {
+                    log.error("Failed to process publisher queue partition for publisher " + publisherId + ": " + e.getCause().getMessage(), e.getCause());
+                }
+            }
+            result.append(pageResult);
+            processed += page.size();
+            // Same as for the sequential processing, stop when nothing can be published
+            if (pageResult.getSuccesses() == 0) {
+                break;
+            }
+        }
+        PublisherQueueStatistics.INSTANCE.setLastRun(publisherId, processed, System.currentTimeMillis() - startTime);
+        PublisherQueueStatistics.INSTANCE.setSkippedFingerprints(publisherId, skippedFingerprints.size());
+        if (log.isTraceEnabled()) {
+            log.trace("<processQueueInParallel(successes: " + result.getSuccesses() + ", failures: " + result.getFailures() + ")");
+        }
+        return result;
+    }
+
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    @Override
+    public PublishingResult doPartition(final AuthenticationToken admin, final BasePublisher publisher, final List<PublisherQueueData> entries,
+            final Set<String> skippedFingerprints) {
+        final int publisherId = publisher.getPublisherId();
+        final PublishingResult result = new PublishingResult();
+        final List<String> publishedPks = new ArrayList<>();
+        final List<PublisherQueueData> failed = new ArrayList<>();
+        boolean stopped = false;
+        for (final PublisherQueueData pqd : entries) {
+            if (stopped) {
+                // Not attempted, so the later entries for the same fingerprint must wait for this one
+                skippedFingerprints.add(pqd.getFingerprint());
+                continue;
+            }
+            if (skippedFingerprints.contains(pqd.getFingerprint())) {
+                continue;
+            }
+            final PublishOutcome outcome = publishEntry(admin, publisher, publisherId, pqd, result);
+            if (outcome == PublishOutcome.PUBLISHED) {
+                publishedPks.add(pqd.getPk());
+                result.addSuccess(pqd.getFingerprint());
+            } else {
+                failed.add(pqd);
+                result.addFailure(pqd.getFingerprint());
+                skippedFingerprints.add(pqd.getFingerprint());
+            }
+            if (outcome == PublishOutcome.TIMED_OUT || result.shouldBreakPublishingOperation()) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Breaking out of publisher queue partition for publisher " + publisherId + " after " + (publishedPks.size() + failed.size())
+                            + " of " + entries.size() + " entries.");
+                }
+                stopped = true;
+            }
+        }
+        if (!publishedPks.isEmpty()) {
+            if (publisher.getKeepPublishedInQueue()) {
+                final long now = System.currentTimeMillis();
+                for (final org.ejbca.core.ejb.ca.publisher.PublisherQueueData data : org.ejbca.core.ejb.ca.publisher.PublisherQueueData
+                        .findByPks(entityManager, publishedPks)) {
+                    data.setPublishStatus(PublisherConst.STATUS_SUCCESS);
+                    data.setLastUpdate(now);
+                }
+            } else {
+                org.ejbca.core.ejb.ca.publisher.PublisherQueueData.deleteByPks(entityManager, publishedPks);
+            }
+        }
+        if (!failed.isEmpty()) {
+            final long now = System.currentTimeMillis();
+            final List<String> failedPks = new ArrayList<>(failed.size());
+            for (final PublisherQueueData pqd : failed) {
+                failedPks.add(pqd.getPk());
+            }
+            // Updated through the entities (and not with a bulk update) so that the row protection is updated
+            for (final org.ejbca.core.ejb.ca.publisher.PublisherQueueData data : org.ejbca.core.ejb.ca.publisher.PublisherQueueData
+                    .findByPks(entityManager, failedPks)) {
+                data.setTryCounter(data.getTryCounter() + 1);
+                data.setLastUpdate(now);
+            }
+        }
+        PublisherQueueStatistics.INSTANCE.addPublished(publisherId, publishedPks.size());
+        PublisherQueueStatistics.INSTANCE.addFailed(publisherId, failed.size());
+        PublisherQueueStatistics.INSTANCE.addRetries(publisherId, failed.size());
+        return result;
+    }
+
     @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
     @Override
     public PublishingResult doChunk(AuthenticationToken admin, BasePublisher publisher) {
@@ -393,106 +567,9 @@ public class PublisherQueueSessionBean implements PublisherQueueSessionLocal {
         }
         final PublishingResult result = new PublishingResult();
         for (PublisherQueueData pqd : publisherQueueData) {
-            String fingerprint = pqd.getFingerprint();
-            int publishType = pqd.getPublishType();
-            if (log.isDebugEnabled()) {
-                log.debug("Publishing from queue to publisher: " + publisherId + ", fingerprint: " + fingerprint + ", pk: " + pqd.getPk()
-                        + ", type: " + publishType);
-            }
-            PublisherQueueVolatileInformation voldata = pqd.getVolatileData();
-            String password = null;
-            ExtendedInformation ei = null;
-            String userDataDN = null;
-            if (voldata != null) {
-                password = voldata.getPassword();
-                ei = voldata.getExtendedInformation();
-                userDataDN = voldata.getUserDN();
-            }
-            boolean published = false;
-            boolean connectionTimedOut = false;
-
-            try {
-                if (publishType == PublisherConst.PUBLISH_TYPE_CERT) {
-                    if (log.isDebugEnabled()) {
-                        log.debug("Publishing Certificate");
-                    }
-                    if (publisher != null) {
-                        // Read the actual certificate and try to publish it again
-                        // TODO: we might need change fetch-type for all but the actual cert or a native query w SqlResultSetMapping..
-                        final CertificateDataWrapper certificateDataWrapper = noConflictCertificateStoreSession.getCertificateData(fingerprint);
-                        if (certificateDataWrapper==null) {
-                            throw new FinderException();
-                        }
-                        try {
-                            published = publisherQueueSession.publishCertificateNonTransactional(publisher, admin, certificateDataWrapper, password, userDataDN, ei);
-                        } catch (EJBException e) {
-                            final Throwable t = e.getCause();
-                            if (t instanceof PublisherException) {
-                                throw (PublisherException) t;
-                            } else {
-                                throw e;
-                            }
-                        }
-                    } else {
-                        String msg = intres.getLocalizedMessage("publisher.nopublisher", publisherId);
-                        log.info(msg);
-                    }
-                } else if (publishType == PublisherConst.PUBLISH_TYPE_CRL) {
-                    if (log.isDebugEnabled()) {
-                        log.debug("Publishing CRL");
-                    }
-
-                    CRLData crlData = crlStoreSession.findByFingerprint(fingerprint);
-
-                    if (crlData == null) {
-                        throw new FinderException();
-                    }
-                    try {
-                        published = publisherQueueSession.publishCRLNonTransactional(publisher, admin, crlData.getCRLBytes(),
-                                crlData.getCaFingerprint(), crlData.getCrlNumber(), userDataDN);
-                    } catch (EJBException e) {
-                        final Throwable t = e.getCause();
-                        if (t instanceof PublisherException) {
-                            throw (PublisherException) t;
-                        } else {
-                            throw e;
-                        }
-                    }
-                    
-                } else if (publishType == PublisherConst.PUBLISH_TYPE_OCSP_RESPONSE) {
-                    if (log.isDebugEnabled()) {
-                        log.debug("Publishing OCSP Response");
-                    }
-                    
-                    OcspResponseData ocspResponseData = ocspDataSession.findOcspDataById(fingerprint);
-                               
-                    if (ocspResponseData == null) {
-                        throw new FinderException();
-                    }
-                    
-                    published = publisherQueueSession.publishOcspResponsesNonTransactional((CustomPublisherContainer) publisher, admin, ocspResponseData);
-                    
-                } else {
-                    String msg = intres.getLocalizedMessage("publisher.unknowntype", publishType);
-                    log.error(msg);
-                }
-            } catch (FinderException e) {
-                final String msg = intres.getLocalizedMessage("publisher.errornocert", fingerprint) + e.getMessage();
-                log.info(msg);
-                result.addFailure(fingerprint);
-            } catch (PublisherException e) {
-                // Publisher session have already logged this error nicely to
-                // getLogSession().log
-                log.debug(e.getMessage());
-                // We failed to publish, update failcount, so we can break early if nothing succeeds but everything fails.
-                result.addFailure(fingerprint, e.getMessage());
-                // We will want to break out early on timeout exceptions, to avoid delaying
-                // Publish Queue Process Service from moving on to the next publisher.
-                if (e.getMessage() != null && e.getMessage().contains(TIMEOUT_MESSAGE_INDICATOR)){
-                    connectionTimedOut = true;
-                }
-            }
-            if (published) {
+            final String fingerprint = pqd.getFingerprint();
+            final PublishOutcome outcome = publishEntry(admin, publisher, publisherId, pqd, result);
+            if (outcome == PublishOutcome.PUBLISHED) {
                 if (publisher.getKeepPublishedInQueue()) {
                     // Update with information that publishing was successful
                     updateData(pqd.getPk(), PublisherConst.STATUS_SUCCESS, pqd.getTryCounter());
@@ -509,7 +586,7 @@ public class PublisherQueueSessionBean implements PublisherQueueSessionLocal {
             }
             // Break out of the loop immediately if a connection timed out.
             // Publisher is not available for now, so we don't want to get stuck here for up to 99 timeouts.
-            if (connectionTimedOut){
+            if (outcome == PublishOutcome.TIMED_OUT) {
                 if (log.isDebugEnabled()) {
                     log.debug("Connection timed out. Breaking out of publisher loop.");
                 }
@@ -532,6 +609,118 @@ public class PublisherQueueSessionBean implements PublisherQueueSessionLocal {
         return result;
     }
 
+    /**
+     * Publishes a single queue entry, without updating the queue. Failures are added to <code>result</code>.
+     *
+     * @return the outcome of the publishing attempt
+     */
+    private PublishOutcome publishEntry(final AuthenticationToken admin, final BasePublisher publisher, final int publisherId,
+            final PublisherQueueData pqd, final PublishingResult result) {
+        String fingerprint = pqd.getFingerprint();
+        int publishType = pqd.getPublishType();
+        if (log.isDebugEnabled()) {
+            log.debug("Publishing from queue to publisher: " + publisherId + ", fingerprint: " + fingerprint + ", pk: " + pqd.getPk()
+                    + ", type: " + publishType);
+        }
+        PublisherQueueVolatileInformation voldata = pqd.getVolatileData();
+        String password = null;
+        ExtendedInformation ei = null;
+        String userDataDN = null;
+        if (voldata != null) {
+            password = voldata.getPassword();
+            ei = voldata.getExtendedInformation();
+            userDataDN = voldata.getUserDN();
+        }
+        boolean published = false;
+        boolean connectionTimedOut = false;
+
+        try {
+            if (publishType == PublisherConst.PUBLISH_TYPE_CERT) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Publishing Certificate");
+                }
+                if (publisher != null) {
+                    // Read the actual certificate and try to publish it again
+                    // TODO: we might need change fetch-type for all but the actual cert or a native query w SqlResultSetMapping..
+                    final CertificateDataWrapper certificateDataWrapper = noConflictCertificateStoreSession.getCertificateData(fingerprint);
+                    if (certificateDataWrapper==null) {
+                        throw new FinderException();
+                    }
+                    try {
+                        published = publisherQueueSession.publishCertificateNonTransactional(publisher, admin, certificateDataWrapper, password, userDataDN, ei);
+                    } catch (EJBException e) {
+                        final Throwable t = e.getCause();
+                        if (t instanceof PublisherException) {
+                            throw (PublisherException) t;
+                        } else {
+                            throw e;
+                        }
+                    }
+                } else {
+                    String msg = intres.getLocalizedMessage("publisher.nopublisher", publisherId);
+                    log.info(msg);
+                }
+            } else if (publishType == PublisherConst.PUBLISH_TYPE_CRL) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Publishing CRL");
+                }
+
+                CRLData crlData = crlStoreSession.findByFingerprint(fingerprint);
+
+                if (crlData == null) {
+                    throw new FinderException();
+                }
+                try {
+                    published = publisherQueueSession.publishCRLNonTransactional(publisher, admin, crlData.getCRLBytes(),
+                            crlData.getCaFingerprint(), crlData.getCrlNumber(), userDataDN);
+                } catch (EJBException e) {
+                    final Throwable t = e.getCause();
+                    if (t instanceof PublisherException) {
+                        throw (PublisherException) t;
+                    } else {
+                        throw e;
+                    }
+                }
+                
+            } else if (publishType == PublisherConst.PUBLISH_TYPE_OCSP_RESPONSE) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Publishing OCSP Response");
+                }
+                
+                OcspResponseData ocspResponseData = ocspDataSession.findOcspDataById(fingerprint);
+                           
+                if (ocspResponseData == null) {
+                    throw new FinderException();
+                }
+                
+                published = publisherQueueSession.publishOcspResponsesNonTransactional((CustomPublisherContainer) publisher, admin, ocspResponseData);
+                
+            } else {
+                String msg = intres.getLocalizedMessage("publisher.unknowntype", publishType);
+                log.error(msg);
+            }
+        } catch (FinderException e) {
+            final String msg = intres.getLocalizedMessage("publisher.errornocert", fingerprint) + e.getMessage();
+            log.info(msg);
+            result.addFailure(fingerprint);
+        } catch (PublisherException e) {
+            // Publisher session have already logged this error nicely to
+            // getLogSession().log
+            log.debug(e.getMessage());
+            // We failed to publish, update failcount, so we can break early if nothing succeeds but everything fails.
+            result.addFailure(fingerprint, e.getMessage());
+            // We will want to break out early on timeout exceptions, to avoid delaying
+            // Publish Queue Process Service from moving on to the next publisher.
+            if (e.getMessage() != null && e.getMessage().contains(TIMEOUT_MESSAGE_INDICATOR)){
+                connectionTimedOut = true;
+            }
+        }
+        if (connectionTimedOut) {
+            return PublishOutcome.TIMED_OUT;
+        }
+        return published ? PublishOutcome.PUBLISHED : PublishOutcome.FAILED;
+    }
+
     @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
     @Override
     public boolean publishCertificateNonTransactional(BasePublisher publisher, AuthenticationToken admin, CertificateDataWrapper certWrapper,
@@ -13,9 +13,7 @@
 
 package org.ejbca.core.ejb.ca.publisher;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
 import java.security.cert.CRLException;
 import java.security.cert.X509CRL;
 import java.util.ArrayList;
@@ -63,10 +61,10 @@ import org.cesecore.common.exception.ReferencesToItemExistException;
 import org.cesecore.configuration.GlobalConfigurationSessionLocal;
 import org.cesecore.oscp.OcspResponseData;
 import org.cesecore.util.Base64GetHashMap;
+import org.cesecore.util.CompactDataMapSerializer;
 import org.cesecore.util.EjbRemoteHelper;
 import org.cesecore.util.LogRedactionUtils;
 import org.cesecore.util.ProfileID;
-import org.cesecore.util.SecureXMLDecoder;
 import org.ejbca.core.ejb.audit.enums.EjbcaEventTypes;
 import org.ejbca.core.ejb.audit.enums.EjbcaModuleTypes;
 import org.ejbca.core.ejb.audit.enums.EjbcaServiceTypes;
@@ -1024,8 +1022,8 @@ public class PublisherSessionBean implements PublisherSessionLocal, PublisherSes
     
     private HashMap<?, ?> parseDataMapFromPublisher(final PublisherData publisherData) {
         final String data = publisherData.getData();
-        try (SecureXMLDecoder decoder = new SecureXMLDecoder(new ByteArrayInputStream(data.getBytes(StandardCharsets.UTF_8)))) {
-            return (HashMap<?, ?>) decoder.readObject();
+        try {
+            return (HashMap<?, ?>) CompactDataMapSerializer.decode(data);
         } catch (IOException e) {
             final String msg = "Failed to parse PublisherData data map in database: " + e.getMessage();
             if (log.isDebugEnabled()) {
@@ -13,6 +13,7 @@
 
 package org.ejbca.core.ejb.ca.validation;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -42,6 +43,7 @@ import org.ejbca.core.model.InternalEjbcaResources;
 import org.ejbca.core.model.validation.BlacklistEntry;
 import org.ejbca.core.model.validation.PublicKeyBlacklistEntry;
 import org.ejbca.core.model.validation.PublicKeyBlacklistEntryCache;
+import org.ejbca.core.model.validation.PublicKeyBlacklistIndex;
 
 /**
  * Handles management of public key blacklist entries.
@@ -54,6 +56,11 @@ public class BlacklistSessionBean implements BlacklistSessionLocal, BlacklistSes
     /** Class logger. */
     private static final Logger log = Logger.getLogger(BlacklistSessionBean.class);
 
+    /** Number of fingerprints read from the database at a time when loading the public key blacklist index */
+    private static final int PUBLICKEY_BLACKLIST_INDEX_BATCH_SIZE = 10000;
+    /** The public key blacklist index is loaded again after this time, even if no changes were detected */
+    private static final long PUBLICKEY_BLACKLIST_INDEX_MAX_AGE_MS = 3600000L;
+
     /** Internal localization of logs and errors */
     private static final InternalEjbcaResources intres = InternalEjbcaResources.getInstance();
 
@@ -126,9 +133,14 @@ public class BlacklistSessionBean implements BlacklistSessionLocal, BlacklistSes
         BlacklistData data = BlacklistData.findById(entityManager, entry.getID());
         if (data != null) {
             final Map<Object, Object> diff = data.getBlacklistEntry().diff(entry);
+            final String oldType = data.getType();
             data.setBlacklistEntry(entry);
             // Since loading a Blacklist is quite complex, we simple purge the cache here.
             PublicKeyBlacklistEntryCache.INSTANCE.removeEntry(data.getId());
+            if (PublicKeyBlacklistEntry.TYPE.equals(entry.getType()) && PublicKeyBlacklistEntry.TYPE.equals(oldType)) {
+                PublicKeyBlacklistIndex.INSTANCE.change(entry.getValue());
+            }
+            // A changed type is detected by the next check of the public key blacklist index, which then loads it again
             final String message = intres.getLocalizedMessage("blacklist.changedpublickeyblacklist", entry.getValue());
             final Map<String, Object> details = new LinkedHashMap<String, Object>();
             details.put("msg", message);
@@ -164,6 +176,9 @@ public class BlacklistSessionBean implements BlacklistSessionLocal, BlacklistSes
             entityManager.remove(data);
             // Purge the cache here.
             PublicKeyBlacklistEntryCache.INSTANCE.removeEntry(data.getId());
+            if (PublicKeyBlacklistEntry.TYPE.equals(type)) {
+                PublicKeyBlacklistIndex.INSTANCE.remove(data.getId(), data.getUpdateCounter());
+            }
             message = intres.getLocalizedMessage("blacklist.removedpublickeyblacklist", value);
             final Map<String, Object> details = new LinkedHashMap<String, Object>();
             details.put("msg", message);
@@ -178,6 +193,7 @@ public class BlacklistSessionBean implements BlacklistSessionLocal, BlacklistSes
     @Override
     public void flushBlacklistEntryCache() {
         PublicKeyBlacklistEntryCache.INSTANCE.flush();
+        PublicKeyBlacklistIndex.INSTANCE.flush();
         if (log.isDebugEnabled()) {
             log.debug("Flushed BlacklistEntry cache.");
         }
@@ -222,6 +238,55 @@ public class BlacklistSessionBean implements BlacklistSessionLocal, BlacklistSes
         return result;
     }
 
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    @Override
+    public void refreshPublicKeyBlacklistIndex() {
+        if (!PublicKeyBlacklistIndex.INSTANCE.isEnabled() || !PublicKeyBlacklistIndex.INSTANCE.tryLock()) {
+            return;
+        }
+        try {
+            if (!PublicKeyBlacklistIndex.INSTANCE.shouldCheckForUpdates()) {
+                // Checked by another thread while we were waiting
+                return;
+            }
+            final long[] checksums = BlacklistData.getChecksumsByType(entityManager, PublicKeyBlacklistEntry.TYPE);
+            if (!PublicKeyBlacklistIndex.INSTANCE.isUpToDate(checksums[0], checksums[1], checksums[2], PUBLICKEY_BLACKLIST_INDEX_MAX_AGE_MS)) {
+                final long start = System.currentTimeMillis();
+                long[] hashes = new long[(int) Math.min(Integer.MAX_VALUE - 8, checksums[0] + 1024)];
+                int size = 0;
+                long entryCount = 0;
+                long idSum = 0;
+                long updateCounterSum = 0;
+                int lastId = Integer.MIN_VALUE;
+                while (true) {
+                    final List<Object[]> rows = BlacklistData.findIdAndValueByType(entityManager, PublicKeyBlacklistEntry.TYPE, lastId,
+                            PUBLICKEY_BLACKLIST_INDEX_BATCH_SIZE);
+                    for (final Object[] row : rows) {
+                        lastId = ((Number) row[0]).intValue();
+                        if (size == hashes.length) {
+                            hashes = Arrays.copyOf(hashes, size * 2);
+                        }
+                        hashes[size++] = PublicKeyBlacklistIndex.hash((String) row[1]);
+                        entryCount++;
+                        idSum += lastId;
+                        updateCounterSum += ((Number) row[2]).longValue();
+                    }
+                    if (rows.size() < PUBLICKEY_BLACKLIST_INDEX_BATCH_SIZE) {
+                        break;
+                    }
+                }
+                PublicKeyBlacklistIndex.INSTANCE.replace(hashes, size, entryCount, idSum, updateCounterSum);
+                log.info("Loaded " + size + " public key block list fingerprints into memory in " + (System.currentTimeMillis() - start) + " ms. "
+                        + PublicKeyBlacklistIndex.INSTANCE.getStatistics());
+            } else if (log.isDebugEnabled()) {
+                log.debug("Public key block list index is up to date. " + PublicKeyBlacklistIndex.INSTANCE.getStatistics());
+            }
+            PublicKeyBlacklistIndex.INSTANCE.setChecked();
+        } finally {
+            PublicKeyBlacklistIndex.INSTANCE.unlock();
+        }
+    }
+
     /** Adds a public key blacklist or throws an exception. Will not update the cache, it will be read into the cache on next try to read. */
     private void addBlacklistEntryInternal(AuthenticationToken admin, int id, BlacklistEntry blacklist) throws AuthorizationDeniedException, BlacklistExistsException {
         assertIsAuthorizedToEditBlacklists(admin);
@@ -230,6 +295,9 @@ public class BlacklistSessionBean implements BlacklistSessionLocal, BlacklistSes
             blacklist.setID(Integer.valueOf(id));
             final BlacklistData entity = new BlacklistData(blacklist);
             entityManager.persist(entity);
+            if (PublicKeyBlacklistEntry.TYPE.equals(blacklist.getType())) {
+                PublicKeyBlacklistIndex.INSTANCE.add(id, blacklist.getValue());
+            }
         } else {
             final String message = intres.getLocalizedMessage("blacklist.erroraddpublickeyblacklist", blacklist.getValue());
             log.info(message);
@@ -34,6 +34,7 @@ import org.cesecore.keys.token.CryptoTokenSessionLocal;
 import org.cesecore.keys.validation.KeyValidatorSessionLocal;
 import org.cesecore.roles.management.RoleDataSessionLocal;
 import org.cesecore.roles.member.RoleMemberDataSessionLocal;
+import org.cesecore.util.NormalizedDnCache;
 import org.ejbca.config.CmpConfiguration;
 import org.ejbca.config.GlobalConfiguration;
 import org.ejbca.config.ScepConfiguration;
@@ -166,6 +167,10 @@ public class ClearCacheSessionBean implements ClearCacheSessionLocal {
         if(log.isDebugEnabled()) {
             log.debug("Certificate Store cache cleared and reloaded.");
         }
+        NormalizedDnCache.INSTANCE.flush();
+        if(log.isDebugEnabled()) {
+            log.debug("Normalized DN cache cleared.");
+        }
         roleDataSession.forceCacheExpire();
         if(log.isDebugEnabled()) {
             log.debug("Role cache cleared.");
@@ -12,33 +12,40 @@
  *************************************************************************/
 package org.ejbca.core.ejb.crl;
 
+import java.io.IOException;
 import java.math.BigInteger;
-import java.security.InvalidKeyException;
-import java.security.NoSuchAlgorithmException;
-import java.security.NoSuchProviderException;
 import java.security.SignatureException;
 import java.security.cert.CRLException;
-import java.security.cert.X509CRL;
-import java.security.cert.X509CRLEntry;
 import java.security.cert.X509Certificate;
 import java.text.ParseException;
+import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.List;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
 import jakarta.ejb.EJB;
+import jakarta.ejb.SessionContext;
 import jakarta.ejb.Stateless;
 import jakarta.ejb.TransactionAttribute;
 import jakarta.ejb.TransactionAttributeType;
 
 import org.apache.log4j.Logger;
 import org.bouncycastle.asn1.ASN1GeneralizedTime;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.asn1.x509.TBSCertList.CRLEntry;
 import org.cesecore.authentication.tokens.AuthenticationToken;
 import org.cesecore.authorization.AuthorizationDeniedException;
 import org.cesecore.certificates.ca.CAInfo;
 import org.cesecore.certificates.certificate.CertificateConstants;
 import org.cesecore.certificates.certificate.CertificateDataWrapper;
 import org.cesecore.certificates.certificate.CertificateStoreSessionLocal;
+import org.cesecore.certificates.crl.CrlEntryIndex;
+import org.cesecore.certificates.crl.CrlEntryReader;
+import org.cesecore.certificates.crl.CrlHeader;
 import org.cesecore.certificates.crl.CrlImportException;
 import org.cesecore.certificates.crl.CrlStoreException;
 import org.cesecore.certificates.crl.CrlStoreSessionLocal;
@@ -59,28 +66,44 @@ public class ImportCrlSessionBean implements ImportCrlSessionLocal, ImportCrlSes
 
     private static final Logger log = Logger.getLogger(ImportCrlSessionBean.class);
 
+    /** Number of CRL entries to apply in each transaction */
+    private static final int BATCH_SIZE = 500;
+    /** Minimum time between progress log messages */
+    private static final long PROGRESS_INTERVAL_MS = 10000L;
+
+    @Resource
+    private SessionContext sessionContext;
     @EJB
     private CertificateStoreSessionLocal certStoreSession;
     @EJB
     private CrlStoreSessionLocal crlStoreSession;
     @EJB
     private EndEntityManagementSessionLocal endentityManagementSession;
+
+    private ImportCrlSessionLocal importCrlSession;
+
+    @PostConstruct
+    public void postConstruct() {
+        importCrlSession = sessionContext.getBusinessObject(ImportCrlSessionLocal.class);
+    }
     
     @Override
     public void importCrl(final AuthenticationToken authenticationToken, final CAInfo cainfo, final byte[] crlbytes, final int crlPartitionIndex)
             throws CrlImportException, CrlStoreException, CRLException, AuthorizationDeniedException {
 
-        X509CRL x509crl = CertTools.getCRLfromByteArray(crlbytes);
+        // Only the header is parsed, the entries are read one at a time below, since a CRL may have millions of entries
+        final CrlHeader crlHeader = CrlHeader.fromCrl(crlbytes);
         
         X509Certificate cacert = (X509Certificate) cainfo.getCertificateChain().iterator().next();
         final String caFingerprint = CertTools.getFingerprintAsString(cacert);
         final String issuerDn = CertTools.getSubjectDN(cacert);
         
-        verifyCrlIssuer(x509crl, issuerDn, cacert);
+        verifyCrlIssuer(crlHeader, issuerDn, cacert);
+        
         
         // Check if the CRL is already stored locally
-        final boolean isDeltaCrl = CrlExtensions.getDeltaCRLIndicator(x509crl).intValue() != -1;
-        final int downloadedCrlNumber = CrlExtensions.getCrlNumber(x509crl).intValue();
+        final boolean isDeltaCrl = crlHeader.getDeltaCrlIndicator().intValue() != -1;
+        final int downloadedCrlNumber = crlHeader.getCrlNumber().intValue();
         if (log.isTraceEnabled()) {
             log.trace("Delta CRL:  " + isDeltaCrl);
             log.trace("IssuerDn:   " + issuerDn);
@@ -90,70 +113,47 @@ public class ImportCrlSessionBean implements ImportCrlSessionLocal, ImportCrlSes
             }
         }
         
-        X509CRL lastCrlOfSameType = getLastCrlOfSameType(x509crl, isDeltaCrl, issuerDn, crlPartitionIndex);
-        if (lastCrlOfSameType != null && !x509crl.getThisUpdate().after(lastCrlOfSameType.getThisUpdate())) {
+        final byte[] lastCrlBytes = crlStoreSession.getLastCRL(issuerDn, crlPartitionIndex, isDeltaCrl);
+        final CrlHeader lastCrlOfSameType = getLastCrlOfSameType(lastCrlBytes, issuerDn);
+        if (lastCrlOfSameType != null && !crlHeader.getThisUpdate().after(lastCrlOfSameType.getThisUpdate())) {
             log.info((isDeltaCrl ? "Delta" : "Full") + " CRL number " + downloadedCrlNumber + " for CA '" + cainfo.getName() +
                     "' is not newer than last known " + (isDeltaCrl ? "delta" : "full") + " CRL. Ignoring download.");
             return;
         }
         
         // If the CRL is newer than the last known or there wasn't any old one, loop through it
-        if (x509crl.getRevokedCertificates()==null) {
+        final CrlEntryIndex crlEntryIndex;
+        try {
+            crlEntryIndex = CrlEntryIndex.fromCrl(crlbytes);
+        } catch (IOException e) {
+            throw new CRLException("Failed to read the entries of the CRL: " + e.getMessage(), e);
+        }
+        if (crlEntryIndex.size()==0) {
             log.info("No revoked certificates in " + (isDeltaCrl?"delta":"full") + " CRL for CA '" + cainfo.getName() + "'");
         } else {
-            final Set<X509CRLEntry> crlEntries = new HashSet<X509CRLEntry>();
-            crlEntries.addAll(x509crl.getRevokedCertificates());
             if (log.isDebugEnabled()) {
-                log.debug("Downloaded CRL contains " + crlEntries.size() + " entries.");
-            }
-            
-            if(lastCrlOfSameType != null && lastCrlOfSameType.getRevokedCertificates()!=null) {
-                if (log.isDebugEnabled()) {
-                    log.debug("Last known CRL contains " + lastCrlOfSameType.getRevokedCertificates().size() + " entries.");
-                }
-                // Remove all entries that were processed last time
-                crlEntries.removeAll(lastCrlOfSameType.getRevokedCertificates());
+                log.debug("Downloaded CRL contains " + crlEntryIndex.size() + " entries.");
             }
-        
-            log.info("Found " + crlEntries.size() + " new entires in " + (isDeltaCrl?"delta":"full")+ " CRL number " + downloadedCrlNumber + " issued by '" + issuerDn + "' compared to previous.");
-            // For each entry that was updated after the last known CRL, create/update a new database entry with the new status
-            for (final X509CRLEntry crlEntry : crlEntries) {
-                final Date revocationDate = crlEntry.getRevocationDate();
-                final BigInteger serialNumber = crlEntry.getSerialNumber();
-                Date invalidityDate = null;
-                ASN1GeneralizedTime asn1GeneralizedTime = CrlExtensions.extractInvalidityDate(crlEntry);
-                if (asn1GeneralizedTime != null) {
-                    try {
-                        invalidityDate = asn1GeneralizedTime.getDate();
-                    } catch (ParseException e) {
-                        log.info("Failed to parse invalidityDate for crl entry with serial number " + serialNumber);
-                    }
-                }
-                final int reasonCode = CrlExtensions.extractReasonCode(crlEntry);
-                if (crlEntry.getCertificateIssuer()!=null) {
-                    final String entryIssuerDn = DnComponents.stringToBCDNString(crlEntry.getCertificateIssuer().getName());
-                    if (!issuerDn.equals(entryIssuerDn)) {
-                        log.warn("CA's subjectDN does not match CRL entry's issuerDn '"+entryIssuerDn+"' and entry with serialNumber " + serialNumber + " will be ignored.");
+            CrlEntryIndex lastCrlEntryIndex = null;
+            if (lastCrlOfSameType != null) {
+                try {
+                    lastCrlEntryIndex = CrlEntryIndex.fromCrl(lastCrlBytes);
+                    if (log.isDebugEnabled()) {
+                        log.debug("Last known CRL contains " + lastCrlEntryIndex.size() + " entries.");
                     }
+                } catch (IOException e) {
+                    log.warn("Could not read the entries of the older CRL issued by " + issuerDn + ". All entries will be processed.", e);
                 }
-                
-                final CertificateDataWrapper cdw = certStoreSession.getCertificateDataByIssuerAndSerno(issuerDn, serialNumber);
-                if(isLimitedCertificate(issuerDn, serialNumber, cdw)) {
-                    // Store as much as possible about what we know about the certificate and its status (which is limited) in the database
-                    certStoreSession.updateLimitedCertificateDataStatus(authenticationToken, cainfo.getCAId(), issuerDn, serialNumber, revocationDate, reasonCode, caFingerprint, invalidityDate);
-                } else {
-                    final String serialHex = serialNumber.toString(16).toUpperCase();
-                    log.info("Revoking '" + serialHex + "' " + "(" + serialNumber.toString() + ")");
-                    try {
-                        //log.info("Reason code: " + reason);
-                        endentityManagementSession.revokeCert(authenticationToken, serialNumber, crlEntry.getRevocationDate(), invalidityDate, issuerDn, reasonCode, false);
-                    } catch (AlreadyRevokedException e) {
-                        log.warn("Failed to revoke '" + serialHex + "'. (Status might be 'Archived'.) Error message was: " + e.getMessage());
-                    } catch (ApprovalException | RevokeBackDateNotAllowedForProfileException | NoSuchEndEntityException | WaitingForApprovalException e) {
-                        throw new CrlImportException("Failed to revoke certificate with serial number " + serialHex, e);
-                    }
-                    
-                }
+            }
+            // Find the entries that were not processed last time, by merging the sorted serial numbers of the two CRLs
+            final CrlEntryIndex.Diff diff = crlEntryIndex.diff(lastCrlEntryIndex);
+            log.info("Found " + diff.getChangedCount() + " new entries in " + (isDeltaCrl?"delta":"full")+ " CRL number " + downloadedCrlNumber + " issued by '" + issuerDn + "' compared to previous.");
+            if (diff.getRemovedCount() > 0) {
+                // Entries are removed from full CRLs when certificates expire, so this does not change the status of any certificate
+                log.info(diff.getRemovedCount() + " entries of the previous " + (isDeltaCrl?"delta":"full") + " CRL are not present in CRL number " + downloadedCrlNumber + ".");
+            }
+            if (diff.getChangedCount() > 0) {
+                applyCrlEntries(authenticationToken, cainfo.getCAId(), issuerDn, caFingerprint, crlbytes, diff);
             }
         }
         // Calculate (make up) the CRL Number if the number was not present
@@ -165,30 +165,138 @@ public class ImportCrlSessionBean implements ImportCrlSessionLocal, ImportCrlSes
             newCrlNumber = downloadedCrlNumber;
         }
         // Last of all, store the CRL if there were no errors during creation of database entries
-        crlStoreSession.storeCRL(authenticationToken, x509crl.getEncoded(), caFingerprint, newCrlNumber, issuerDn, crlPartitionIndex, x509crl.getThisUpdate(), x509crl.getNextUpdate(), isDeltaCrl?1:-1);
+        crlStoreSession.storeCRL(authenticationToken, crlbytes, caFingerprint, newCrlNumber, issuerDn, crlPartitionIndex, crlHeader.getThisUpdate(), crlHeader.getNextUpdate(), isDeltaCrl?1:-1);
     
     }
+
+    /** Reads the new and changed entries of the CRL a second time, and applies them to the database in batches */
+    private void applyCrlEntries(final AuthenticationToken authenticationToken, final int caId, final String issuerDn, final String caFingerprint,
+            final byte[] crlbytes, final CrlEntryIndex.Diff diff) throws CRLException, CrlImportException, AuthorizationDeniedException {
+        final long startTime = System.currentTimeMillis();
+        long lastProgressTime = startTime;
+        int processed = 0;
+        // The certificate issuer of an entry in an indirect CRL also applies to the following entries
+        String entryIssuerDn = issuerDn;
+        try {
+            final CrlEntryReader crlEntryReader = new CrlEntryReader(crlbytes);
+            final List<CRLEntry> batch = new ArrayList<>(BATCH_SIZE);
+            CRLEntry crlEntry;
+            while (true) {
+                final int position = crlEntryReader.getPosition();
+                crlEntry = crlEntryReader.next();
+                if (crlEntry == null) {
+                    break;
+                }
+                final Extension certificateIssuer = crlEntry.hasExtensions() ? crlEntry.getExtensions().getExtension(Extension.certificateIssuer) : null;
+                if (certificateIssuer != null) {
+                    entryIssuerDn = getCertificateIssuerDn(certificateIssuer, entryIssuerDn);
+                }
+                if (!diff.isChanged(position)) {
+                    continue;
+                }
+                if (!issuerDn.equals(entryIssuerDn)) {
+                    log.warn("CA's subjectDN does not match CRL entry's issuerDn '"+entryIssuerDn+"' and entry with serialNumber " + crlEntry.getUserCertificate().getValue() + " will be ignored.");
+                }
+                batch.add(crlEntry);
+                if (batch.size() == BATCH_SIZE) {
+                    importCrlSession.importCrlEntries(authenticationToken, caId, issuerDn, caFingerprint, batch);
+                    processed += batch.size();
+                    batch.clear();
+                    final long now = System.currentTimeMillis();
+                    if (now - lastProgressTime >= PROGRESS_INTERVAL_MS) {
+                        lastProgressTime = now;
+                        log.info("Processed " + processed + " of " + diff.getChangedCount() + " new CRL entries issued by '" + issuerDn + "' ("
+                                + getThroughput(processed, now - startTime) + " entries/s).");
+                    }
+                }
+            }
+            if (!batch.isEmpty()) {
+                importCrlSession.importCrlEntries(authenticationToken, caId, issuerDn, caFingerprint, batch);
+                processed += batch.size();
+            }
+        } catch (IOException e) {
+            throw new CRLException("Failed to read the entries of the CRL: " + e.getMessage(), e);
+        }
+        final long duration = System.currentTimeMillis() - startTime;
+        log.info("Processed " + processed + " new CRL entries issued by '" + issuerDn + "' in " + duration + " ms ("
+                + getThroughput(processed, duration) + " entries/s).");
+    }
+
+    private static long getThroughput(final int entries, final long durationMs) {
+        return durationMs == 0 ? entries * 1000L : entries * 1000L / durationMs;
+    }
+
+    /** @return the DN of the directoryName in the certificate issuer CRL entry extension, or the current issuer if there is none */
+    private static String getCertificateIssuerDn(final Extension certificateIssuer, final String currentIssuerDn) {
+        try {
+            for (final GeneralName generalName : GeneralNames.getInstance(certificateIssuer.getParsedValue()).getNames()) {
+                if (generalName.getTagNo() == GeneralName.directoryName) {
+                    return DnComponents.stringToBCDNString(X500Name.getInstance(generalName.getName()).toString());
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            log.info("Failed to parse certificate issuer of CRL entry: " + e.getMessage());
+        }
+        return currentIssuerDn;
+    }
+
+    @Override
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void importCrlEntries(final AuthenticationToken authenticationToken, final int caId, final String issuerDn, final String caFingerprint,
+            final List<CRLEntry> crlEntries) throws CrlImportException, AuthorizationDeniedException {
+        // For each entry that was updated after the last known CRL, create/update a new database entry with the new status
+        for (final CRLEntry crlEntry : crlEntries) {
+            final Date revocationDate = crlEntry.getRevocationDate().getDate();
+            final BigInteger serialNumber = crlEntry.getUserCertificate().getValue();
+            Date invalidityDate = null;
+            ASN1GeneralizedTime asn1GeneralizedTime = CrlExtensions.extractInvalidityDate(crlEntry);
+            if (asn1GeneralizedTime != null) {
+                try {
+                    invalidityDate = asn1GeneralizedTime.getDate();
+                } catch (ParseException e) {
+                    log.info("Failed to parse invalidityDate for crl entry with serial number " + serialNumber);
+                }
+            }
+            final int reasonCode = CrlExtensions.extractReasonCode(crlEntry);
+
+            final CertificateDataWrapper cdw = certStoreSession.getCertificateDataByIssuerAndSerno(issuerDn, serialNumber);
+            if(isLimitedCertificate(issuerDn, serialNumber, cdw)) {
+                // Store as much as possible about what we know about the certificate and its status (which is limited) in the database
+                certStoreSession.updateLimitedCertificateDataStatus(authenticationToken, caId, issuerDn, serialNumber, revocationDate, reasonCode, caFingerprint, invalidityDate);
+            } else {
+                final String serialHex = serialNumber.toString(16).toUpperCase();
+                log.info("Revoking '" + serialHex + "' " + "(" + serialNumber.toString() + ")");
+                try {
+                    //log.info("Reason code: " + reason);
+                    endentityManagementSession.revokeCert(authenticationToken, serialNumber, revocationDate, invalidityDate, issuerDn, reasonCode, false);
+                } catch (AlreadyRevokedException e) {
+                    log.warn("Failed to revoke '" + serialHex + "'. (Status might be 'Archived'.) Error message was: " + e.getMessage());
+                } catch (ApprovalException | RevokeBackDateNotAllowedForProfileException | NoSuchEndEntityException | WaitingForApprovalException e) {
+                    throw new CrlImportException("Failed to revoke certificate with serial number " + serialHex, e);
+                }
+            }
+        }
+    }
     
-    private void verifyCrlIssuer(final X509CRL crl, final String issuerDN, final X509Certificate cacert) throws CrlImportException {
+    private void verifyCrlIssuer(final CrlHeader crl, final String issuerDN, final X509Certificate cacert) throws CrlImportException {
         log.info("CA: " + issuerDN);
         // Read the supplied CRL and verify that it is issued by the specified CA
-        if (!crl.getIssuerX500Principal().equals(cacert.getSubjectX500Principal())) {
+        if (!crl.getIssuer().equals(cacert.getSubjectX500Principal())) {
             throw new CrlImportException("CRL wasn't issued by " + issuerDN);
         }
         
         try {
             crl.verify(cacert.getPublicKey());
-        } catch (InvalidKeyException | CRLException | NoSuchAlgorithmException | NoSuchProviderException | SignatureException e) {
+        } catch (CRLException | SignatureException e) {
             throw new CrlImportException("Failed to verify CRL signature.", e);
         }
     }
     
-    private X509CRL getLastCrlOfSameType(final X509CRL crl, final boolean isDeltaCrl, final String issuerDN, final int crlPartitionIndex) {
-        X509CRL lastCrlOfSameType = null;
-        final byte[] lastCrl = crlStoreSession.getLastCRL(issuerDN, crlPartitionIndex, isDeltaCrl);
+    private CrlHeader getLastCrlOfSameType(final byte[] lastCrl, final String issuerDN) {
+        CrlHeader lastCrlOfSameType = null;
         if(lastCrl != null) {
             try {
-                lastCrlOfSameType = CertTools.getCRLfromByteArray(lastCrl);
+                lastCrlOfSameType = CrlHeader.fromCrl(lastCrl);
             } catch (CRLException e) {
                 log.warn("Could not retrieve an older CRL issued by " + issuerDN, e);
             }
@@ -18,7 +18,6 @@ import java.security.cert.Certificate;
 import java.security.cert.X509CRL;
 import java.security.cert.X509CRLEntry;
 import java.text.ParseException;
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashSet;
@@ -70,6 +69,7 @@ import org.cesecore.certificates.crl.CrlStoreSessionLocal;
 import org.cesecore.certificates.crl.DeltaCrlException;
 import org.cesecore.certificates.crl.RevocationReasons;
 import org.cesecore.certificates.crl.RevokedCertInfo;
+import org.cesecore.certificates.crl.RevokedCertInfoPages;
 import org.cesecore.internal.InternalResources;
 import org.cesecore.util.LogRedactionUtils;
 import org.ejbca.core.ejb.ca.publisher.PublisherSessionLocal;
@@ -486,7 +486,6 @@ public class PublishingCrlSessionBean implements PublishingCrlSessionLocal, Publ
         }
         final CAInfo cainfo = ca.getCAInfo();
         String ret = null;
-        Collection<RevokedCertInfo> revokedCertificates = null;
         try {
             final Certificate cacert = getCaCertificate(cainfo);
             // DN from the CA issuing the CRL to be used when searching for the CRL in the database.
@@ -499,19 +498,17 @@ public class PublishingCrlSessionBean implements PublishingCrlSessionLocal, Publ
             }
             // We can not create a CRL for a CA that is waiting for certificate response
             if ( caCertSubjectDN!=null && cainfo.getStatus()==CAConstants.CA_ACTIVE )  {
-                // Find all revoked certificates for a complete CRL
+                // Find all revoked certificates for a complete CRL. They are read one page at a time while the CRL is created.
                 if (log.isDebugEnabled()) {
                     final long freeMemory = Runtime.getRuntime().maxMemory() - Runtime.getRuntime().totalMemory() + Runtime.getRuntime().freeMemory();
                     log.debug("Listing revoked certificates. Free memory=" + freeMemory);
                 }
-                revokedCertificates = noConflictCertificateStoreSession.listRevokedCertInfo(caCertSubjectDN, false,
-                        crlPartitionIndex, lastBaseCrlCreationDate.getTime(), keepExpiredCertsOnCrl, getAllowInvalidityDate(cainfo));
-
+                final boolean allowInvalidityDate = getAllowInvalidityDate(cainfo);
+                final RevokedCertInfoPages revokedCertificates = new RevokedCertInfoPages();
                 //if X509 CA is marked as it has gone through Name Change add certificates revoked with old names
                 if(ca.getCAType()==CAInfo.CATYPE_X509 && ((X509CA)ca).getNameChanged()){
                     log.info("The CA with SubjectDN " + ca.getSubjectDN() + " has been gone through ICAO Name Change. Collecting all revocation information published by this CA with previous names has started.");
                     Collection<Certificate> renewedCertificateChain = ca.getRenewedCertificateChain();
-                    Collection<RevokedCertInfo> revokedCertificatesBeforeLastCANameChange = new ArrayList<>();
                     if(renewedCertificateChain != null){
                         Collection<String> differentSubjectDNs = new HashSet<>();
                         differentSubjectDNs.add(caCertSubjectDN);
@@ -520,29 +517,30 @@ public class PublishingCrlSessionBean implements PublishingCrlSessionLocal, Publ
                             if(!differentSubjectDNs.contains(renewedCertificateSubjectDN)){
                                 log.info("Collecting revocation information for " + LogRedactionUtils.getSubjectDnLogSafe(renewedCertificateSubjectDN) + " and merging them with ones for " + caCertSubjectDN);
                                 differentSubjectDNs.add(renewedCertificateSubjectDN);
-                                Collection<RevokedCertInfo> revokedCertInfo = noConflictCertificateStoreSession.listRevokedCertInfo(renewedCertificateSubjectDN,
-                                        false, crlPartitionIndex, lastBaseCrlCreationDate.getTime(), keepExpiredCertsOnCrl, getAllowInvalidityDate(cainfo));
-                                
-                                for (RevokedCertInfo tmp : revokedCertInfo) { //for loop is necessary because revokedCertInfo.toArray is not supported...
-                                    revokedCertificatesBeforeLastCANameChange.add(tmp);
-                                }
+                                revokedCertificates.append(noConflictCertificateStoreSession.listRevokedCertInfoInPages(renewedCertificateSubjectDN,
+                                        false, crlPartitionIndex, lastBaseCrlCreationDate.getTime(), keepExpiredCertsOnCrl, allowInvalidityDate));
                             }
                         }
                     }
-                    //Make sure new compressed collection is created if revokedCertificatesBeforeLastCANameChange need to be added!
-                    Collection<RevokedCertInfo> revokedCertificatesAfterLastCANameChange = revokedCertificates;
-                    revokedCertificates = new ArrayList<>();
-                    if(!revokedCertificatesBeforeLastCANameChange.isEmpty()){
-                        revokedCertificates.addAll(revokedCertificatesBeforeLastCANameChange);
-                    }
-                    revokedCertificates.addAll(revokedCertificatesAfterLastCANameChange);
                 }
-
-                if (log.isDebugEnabled()) {
-                    final long freeMemory = Runtime.getRuntime().maxMemory() - Runtime.getRuntime().totalMemory() + Runtime.getRuntime().freeMemory();
-                    log.debug("Found "+revokedCertificates.size()+" revoked certificates. Free memory=" + freeMemory);
+                // Certificates revoked with the current name come after the ones revoked with previous names
+                revokedCertificates.append(noConflictCertificateStoreSession.listRevokedCertInfoInPages(caCertSubjectDN, false,
+                        crlPartitionIndex, lastBaseCrlCreationDate.getTime(), keepExpiredCertsOnCrl, allowInvalidityDate));
+                // The entries are read again each time they are iterated, so a missing revocation date is set on the CRL entry as it is read,
+                // and in the database when expired certificates are archived below
+                final RevokedCertInfoPages crlEntries = new RevokedCertInfoPages().append(revokedCertificates).filter(revokedCertInfo -> {
+                    if (!revokedCertInfo.isRevocationDateSet()) {
+                        revokedCertInfo.setRevocationDate(now);
+                    }
+                    return true;
+                });
+                // a full CRL
+                final byte[] crlBytes = generateAndStoreCRL(admin, ca, crlPartitionIndex, crlEntries, lastBaseCrlInfo, false, params.getValidFrom());
+                if (crlBytes != null) {
+                    ret = CertTools.getFingerprintAsString(crlBytes);
                 }
-                // Go through them and create a CRL, at the same time archive expired certificates, unless configured not to do so (keep expired certificates on CRL)
+                // Go through them again and archive expired certificates, unless configured not to do so (keep expired certificates on CRL).
+                // This is done after the CRL has been created, so the archived certificates appear on this CRL.
                 //
                 // Archiving is only done for full CRLs, not delta CRLs.
                 // RFC5280, section 3.3, states that a certificate must not be removed from the CRL until it has appeared on at least one full CRL.
@@ -582,7 +580,6 @@ public class PublishingCrlSessionBean implements PublishingCrlSessionLocal, Publ
                         numArchived++;
                     } else {
                         if (!revokedCertInfo.isRevocationDateSet()) {
-                            revokedCertInfo.setRevocationDate(now);
                             /*
                              * FIXME should use noConflictCertificateStoreSession (add a new method). the method there should also update to database. 
                              * (or can we skip this code? when can isRevocationDateSet return false?)
@@ -593,16 +590,11 @@ public class PublishingCrlSessionBean implements PublishingCrlSessionLocal, Publ
                             if (certdata == null) {
                                 throw new FinderException("No certificate with fingerprint " + revokedCertInfo.getCertificateFingerprint());
                             }
-                            // Set revocation date in the database
+                            // Set revocation date in the database, as on the CRL
                             certdata.setRevocationDate(now);
                         }
                     }
                 }
-                // a full CRL
-                final byte[] crlBytes = generateAndStoreCRL(admin, ca, crlPartitionIndex, revokedCertificates, lastBaseCrlInfo, false, params.getValidFrom());
-                if (crlBytes != null) {
-                    ret = CertTools.getFingerprintAsString(crlBytes);
-                }
                 // This debug logging is very, very heavy if you have large CRLs. Please don't use it :-)
                 //              if (log.isDebugEnabled()) {
                 //              X509CRL crl = CertTools.getCRLfromByteArray(crlBytes);
@@ -660,50 +652,19 @@ public class PublishingCrlSessionBean implements PublishingCrlSessionLocal, Publ
                 log.trace(">internalCreateDeltaCRL: "+cainfo.getSubjectDN());
         }
         byte[] crlBytes = null;
-        Collection<RevokedCertInfo> revcertinfos = null;
-        Collection<RevokedCertInfo> filteredCertInfos = null;
         try {
             final Certificate cacert = getCaCertificate(cainfo);
             final String caCertSubjectDN = cacert==null ? null : CertTools.getSubjectDN(cacert);
             // We can not create a CRL for a CA that is waiting for certificate response
             if ( caCertSubjectDN!=null && cainfo.getStatus()==CAConstants.CA_ACTIVE ) {
-                // Find all revoked certificates
-                revcertinfos = noConflictCertificateStoreSession.listRevokedCertInfo(caCertSubjectDN, true, crlPartitionIndex, lastBaseCrlInfo.getCreateDate().getTime(), 
-                        true, getAllowInvalidityDate(cainfo));
+                // Find all revoked certificates. They are read one page at a time while the CRL is created.
+                final RevokedCertInfoPages revcertinfos = new RevokedCertInfoPages();
+                final RevokedCertInfoPages revokedWithCurrentName = new RevokedCertInfoPages().append(noConflictCertificateStoreSession.listRevokedCertInfoInPages(
+                        caCertSubjectDN, true, crlPartitionIndex, lastBaseCrlInfo.getCreateDate().getTime(), true, getAllowInvalidityDate(cainfo)));
 
                 // If invalidity date is considered when generating delta CRL then additional filtering must be applied to the collection of RevokedCertInfos
                 if (getAllowInvalidityDate(cainfo)) {
-                    Collection<RevokedCertInfo> filteredRevCertInfos = new ArrayList<>();
-                    for (RevokedCertInfo revCertInfo : revcertinfos) {
-                        Date lastInvDate = null;                        
-                        X509CRLEntry crlEntry = lastBaseCrlInfo.getCrl().getRevokedCertificate(revCertInfo.getUserCertificate());
-                        // If the cert was not revoked before the last base CRL, then it needs to be included in the delta CRL
-                        if (crlEntry == null) {
-                            filteredRevCertInfos.add(revCertInfo);
-                            continue;
-                        }
-                        // The invalidity date of the certificate in the previous base CRL is determined in order to compare it to the current up to date invalidity date value
-                        if (crlEntry.hasExtensions()) {
-                            final byte[] extensionValue = crlEntry.getExtensionValue(Extension.invalidityDate.getId());
-                            if (extensionValue != null) {
-                                try {
-                                    final ASN1GeneralizedTime invalidityDateExtension = ASN1GeneralizedTime.getInstance(JcaX509ExtensionUtils.parseExtensionValue(extensionValue));
-                                    if (invalidityDateExtension != null) {
-                                        lastInvDate = invalidityDateExtension.getDate();
-                                    }
-                                } catch (IOException | ParseException e) {
-                                    log.debug("Failed to parse invalidity date of CRLEntry: " + e.getMessage());
-                                    throw new CRLException(e);
-                                }
-                            }
-                        }
-                        // Also include the revoked certificate entry in the delta CRL if invalidity date has changed since the last base CRL
-                        if (revCertInfo.getInvalidityDate() != null && !revCertInfo.getInvalidityDate().equals(lastInvDate)) {
-                            filteredRevCertInfos.add(revCertInfo);
-                            continue;
-                        }
-                    }                    
-                    revcertinfos = filteredRevCertInfos;
+                    revokedWithCurrentName.filter(revCertInfo -> isChangedSinceBaseCrl(lastBaseCrlInfo, revCertInfo));
                 }
                 
                 // if X509 CA is marked as it has gone through Name Change add certificates revoked with old names
@@ -712,7 +673,6 @@ public class PublishingCrlSessionBean implements PublishingCrlSessionLocal, Publ
                         log.debug("Gathering all revocation information published by this CA ("+ca.getName()+":"+ca.getCAId()+") since its beginning. Important only if CA has gone undergone name change");
                     }
                     Collection<Certificate> renewedCertificateChain = ca.getRenewedCertificateChain();
-                    Collection<RevokedCertInfo> revokedCertificatesBeforeLastCANameChange = new ArrayList<>();
                     if(renewedCertificateChain != null){
                         Collection<String> differentSubjectDNs = new HashSet<>();
                         differentSubjectDNs.add(caCertSubjectDN);
@@ -724,37 +684,24 @@ public class PublishingCrlSessionBean implements PublishingCrlSessionLocal, Publ
                                     log.debug("Collecting revocation information for renewed certificate '" + LogRedactionUtils.getSubjectDnLogSafe(renewedCertificateSubjectDN) + "' and merging them with ones for " + caCertSubjectDN);
                                 }
                                 differentSubjectDNs.add(renewedCertificateSubjectDN);
-                                Collection<RevokedCertInfo> revokedCertInfo = noConflictCertificateStoreSession.listRevokedCertInfo(renewedCertificateSubjectDN, false, 
-                                        crlPartitionIndex, -1, true, getAllowInvalidityDate(cainfo));
-                                
-                                for (RevokedCertInfo tmp : revokedCertInfo) { //for loop is necessary because revokedCertInfo.toArray is not supported...
-                                    revokedCertificatesBeforeLastCANameChange.add(tmp);
-                                }
+                                revcertinfos.append(noConflictCertificateStoreSession.listRevokedCertInfoInPages(renewedCertificateSubjectDN, false, 
+                                        crlPartitionIndex, -1, true, getAllowInvalidityDate(cainfo)));
                             }
                         }
                     }
-                    //Make sure new compressed collection is created if revokedCertificatesBeforeLastCANameChange need to be added!
-                    Collection<RevokedCertInfo> revokedCertificatesAfterLastCANameChange = revcertinfos;
-                    revcertinfos = new ArrayList<>();
-                    if(!revokedCertificatesBeforeLastCANameChange.isEmpty()){
-                        revcertinfos.addAll(revokedCertificatesBeforeLastCANameChange);
-                    }
-                    revcertinfos.addAll(revokedCertificatesAfterLastCANameChange);
                 }
+                // Certificates revoked with the current name come after the ones revoked with previous names
+                revcertinfos.append(revokedWithCurrentName);
 
-                if (log.isDebugEnabled()) {
-                    log.debug("Found "+revcertinfos.size()+" revoked certificates.");
-                }
-                // Go through them and create a CRL, i.e. add to cert list to be included in CRL
-                filteredCertInfos = new ArrayList<>();
-                for (final RevokedCertInfo ci : revcertinfos) {
+                // Go through them while the CRL is created, i.e. add to cert list to be included in CRL
+                revcertinfos.filter(ci -> {
                     final boolean certificateIsReleasedFromHold = ci.getReason() == RevocationReasons.REMOVEFROMCRL.getDatabaseValue();
                     final boolean certificateAppearsOnBaseCrl = lastBaseCrlInfo.getCrl().getRevokedCertificate(ci.getUserCertificate()) != null;
                     if (certificateIsReleasedFromHold && !certificateAppearsOnBaseCrl) {
                         if (log.isTraceEnabled()) {
                             log.trace("Not adding " + ci + " to CRL.");
                         }
-                        continue;
+                        return false;
                     }
                     if (ci.getRevocationDate() == null) {
                         ci.setRevocationDate(new Date());
@@ -762,10 +709,10 @@ public class PublishingCrlSessionBean implements PublishingCrlSessionLocal, Publ
                     if (log.isTraceEnabled()) {
                         log.trace("Adding " + ci + " to CRL.");
                     }
-                    filteredCertInfos.add(ci);
-                }
+                    return true;
+                });
                 // create a delta CRL
-                crlBytes = generateAndStoreCRL(admin, ca, crlPartitionIndex, filteredCertInfos, lastBaseCrlInfo, true, new Date());
+                crlBytes = generateAndStoreCRL(admin, ca, crlPartitionIndex, revcertinfos, lastBaseCrlInfo, true, new Date());
                 if (log.isDebugEnabled()) {
                     X509CRL crl = CertTools.getCRLfromByteArray(crlBytes);
                     log.debug("Created delta CRL with expire date: "+crl.getNextUpdate());
@@ -786,6 +733,39 @@ public class PublishingCrlSessionBean implements PublishingCrlSessionLocal, Publ
         return crlBytes;
     }
 
+    /**
+     * Checks if a revoked certificate needs to be included in a delta CRL, when invalidity date is considered.
+     *
+     * @return true if the certificate was not revoked on the base CRL, or if its invalidity date has changed since the base CRL
+     */
+    private boolean isChangedSinceBaseCrl(final CRLInfo lastBaseCrlInfo, final RevokedCertInfo revCertInfo) {
+        Date lastInvDate = null;
+        X509CRLEntry crlEntry = lastBaseCrlInfo.getCrl().getRevokedCertificate(revCertInfo.getUserCertificate());
+        // If the cert was not revoked before the last base CRL, then it needs to be included in the delta CRL
+        if (crlEntry == null) {
+            return true;
+        }
+        // The invalidity date of the certificate in the previous base CRL is determined in order to compare it to the current up to date invalidity date value
+        if (crlEntry.hasExtensions()) {
+            final byte[] extensionValue = crlEntry.getExtensionValue(Extension.invalidityDate.getId());
+            if (extensionValue != null) {
+                try {
+                    final ASN1GeneralizedTime invalidityDateExtension = ASN1GeneralizedTime.getInstance(JcaX509ExtensionUtils.parseExtensionValue(extensionValue));
+                    if (invalidityDateExtension != null) {
+                        lastInvDate = invalidityDateExtension.getDate();
+                    }
+                } catch (IOException | ParseException e) {
+                    log.debug("Failed to parse invalidity date of CRLEntry: " + e.getMessage());
+                    // Should really not happen
+                    log.error(e);
+                    throw new EJBException(new CRLException(e));
+                }
+            }
+        }
+        // Also include the revoked certificate entry in the delta CRL if invalidity date has changed since the last base CRL
+        return revCertInfo.getInvalidityDate() != null && !revCertInfo.getInvalidityDate().equals(lastInvDate);
+    }
+
     private byte[] generateAndStoreCRL(final AuthenticationToken admin, final CA ca, final int crlPartitionIndex,
             final Collection<RevokedCertInfo> certs, final CRLInfo lastBaseCrlInfo, final boolean delta, final Date validFrom)
             throws CryptoTokenOfflineException, AuthorizationDeniedException {
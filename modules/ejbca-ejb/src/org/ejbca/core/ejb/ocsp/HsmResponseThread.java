@@ -33,6 +33,7 @@ import com.keyfactor.util.CertTools;
 
 /**
  * This internal class exists for the sole purpose of catching deadlocks in the HSM hardware.
+ * Responses are signed by the threads of {@link OcspSigningPool}.
  * 
  * @version $Id$
  */
@@ -63,6 +64,11 @@ public class HsmResponseThread implements Callable<BasicOCSPResp> {
 
     @Override
     public BasicOCSPResp call() throws OCSPException {
+        return build(createSigner());
+    }
+
+    /** @return a content signer for the signing algorithm and key of this response */
+    ContentSigner createSigner() {
         try {
             /*
              * BufferingContentSigner defaults to allocating a 4096 bytes buffer. Since a rather large OCSP response (e.g. signed with 4K
@@ -73,10 +79,25 @@ public class HsmResponseThread implements Callable<BasicOCSPResp> {
              * 
              * Lowering this allocation from 20480 to 4096 bytes under ECA-4084 which should still be plenty.
              */
-            final ContentSigner signer = new BufferingContentSigner(new JcaContentSignerBuilder(signingAlgorithm).setProvider(provider).build(signerKey), 20480);
-            return basicRes.build(signer, chain, producedAt!=null? producedAt : new Date());
+            return new BufferingContentSigner(new JcaContentSignerBuilder(signingAlgorithm).setProvider(provider).build(signerKey), 20480);
         } catch (OperatorCreationException e) {
             throw new OcspFailureException(e);
         }
     }
+
+    /**
+     * Signs the response with a signer from {@link #createSigner()}. A signer may be used for several responses in a row, as long
+     * as they have the same signing algorithm and key.
+     */
+    BasicOCSPResp build(final ContentSigner signer) throws OCSPException {
+        return basicRes.build(signer, chain, producedAt!=null? producedAt : new Date());
+    }
+
+    String getSigningAlgorithm() {
+        return signingAlgorithm;
+    }
+
+    PrivateKey getSignerKey() {
+        return signerKey;
+    }
 }
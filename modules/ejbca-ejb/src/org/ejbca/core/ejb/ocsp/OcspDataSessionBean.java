@@ -100,7 +100,15 @@ public class OcspDataSessionBean implements OcspDataSessionLocal, OcspDataSessio
     
     @Override
     public List<String> findExpiringOcpsData(final Integer caId, final long expirationDate, final int maxNumberOfResults, final int offset) {
-        log.trace(">findExpiringOcpsData");
+        return findExpiringOcspResponses(caId, expirationDate, maxNumberOfResults, offset)
+                           .stream()
+                           .map(response -> response.getSerialNumber())
+                           .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<OcspResponseData> findExpiringOcspResponses(final Integer caId, final long expirationDate, final int maxNumberOfResults, final int offset) {
+        log.trace(">findExpiringOcspResponses");
 
         final TypedQuery<OcspResponseData> query = this.entityManager.createNamedQuery(OcspResponseData.FIND_EXPIRING_OCPS_DATA_BY_CAID, OcspResponseData.class);
         query.setParameter("caId", caId);
@@ -108,12 +116,20 @@ public class OcspDataSessionBean implements OcspDataSessionLocal, OcspDataSessio
         query.setMaxResults(maxNumberOfResults);
         query.setFirstResult(offset);
 
-        log.trace("<findExpiringOcpsData");
+        log.trace("<findExpiringOcspResponses");
+        return query.getResultList();
+    }
 
-        return query.getResultList()
-                           .stream()
-                           .map(response -> response.getSerialNumber())
-                           .collect(Collectors.toList());
+    @Override
+    public long countExpiringOcspResponses(final Integer caId, final long expirationDate) {
+        log.trace(">countExpiringOcspResponses");
+
+        final Query query = this.entityManager.createNamedQuery(OcspResponseData.COUNT_EXPIRING_OCSP_DATA_BY_CAID);
+        query.setParameter("caId", caId);
+        query.setParameter("expirationDate", expirationDate);
+
+        log.trace("<countExpiringOcspResponses");
+        return ((Number) query.getSingleResult()).longValue();
     }
     
     @Override
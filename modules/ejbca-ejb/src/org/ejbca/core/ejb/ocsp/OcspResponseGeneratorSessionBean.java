@@ -56,10 +56,9 @@ import java.util.TimeZone;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeoutException;
 
 import org.apache.commons.collections4.CollectionUtils;
@@ -97,6 +96,7 @@ import org.bouncycastle.cert.ocsp.OCSPResp;
 import org.bouncycastle.cert.ocsp.OCSPRespBuilder;
 import org.bouncycastle.cert.ocsp.Req;
 import org.bouncycastle.cert.ocsp.RevokedStatus;
+import org.bouncycastle.cert.ocsp.SingleResp;
 import org.bouncycastle.cert.ocsp.UnknownStatus;
 import org.bouncycastle.cert.ocsp.jcajce.JcaCertificateID;
 import org.bouncycastle.operator.OperatorCreationException;
@@ -118,6 +118,7 @@ import org.cesecore.certificates.ca.X509CAInfo;
 import org.cesecore.certificates.ca.catoken.CAToken;
 import org.cesecore.certificates.ca.catoken.CATokenConstants;
 import org.cesecore.certificates.ca.internal.CaCertificateCache;
+import org.cesecore.certificates.certificate.CertificateDataSessionLocal;
 import org.cesecore.certificates.certificate.CertificateDataWrapper;
 import org.cesecore.certificates.certificate.CertificateInfo;
 import org.cesecore.certificates.certificate.CertificateStatus;
@@ -132,6 +133,8 @@ import org.cesecore.certificates.ocsp.cache.OcspDataConfigCache;
 import org.cesecore.certificates.ocsp.cache.OcspDataConfigCacheEntry;
 import org.cesecore.certificates.ocsp.cache.OcspExtensionsCache;
 import org.cesecore.certificates.ocsp.cache.OcspRequestSignerStatusCache;
+import org.cesecore.certificates.ocsp.cache.OcspResponseCache;
+import org.cesecore.certificates.ocsp.cache.OcspRevocationStatusIndex;
 import org.cesecore.certificates.ocsp.cache.OcspSigningCache;
 import org.cesecore.certificates.ocsp.cache.OcspSigningCacheEntry;
 import org.cesecore.certificates.ocsp.exception.CryptoProviderException;
@@ -169,7 +172,9 @@ import org.cesecore.keys.token.PKCS11CryptoToken;
 import org.cesecore.keys.token.SoftCryptoToken;
 import org.cesecore.oscp.OcspResponseData;
 import org.cesecore.util.LogRedactionUtils;
+import org.cesecore.util.NormalizedDnCache;
 import org.cesecore.util.ValidityDate;
+import org.cesecore.util.ValueExtractor;
 import org.cesecore.util.log.ProbableErrorHandler;
 import org.cesecore.util.provider.EkuPKIXCertPathChecker;
 import org.ejbca.core.ejb.ca.publisher.PublisherSessionLocal;
@@ -212,13 +217,14 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
     private static final int MAX_REQUEST_SIZE = 100000;
     /** Timer identifiers */
     private static final int TIMERID_OCSPSIGNINGCACHE = 1;
+    private static final int TIMERID_REVOCATIONSTATUSINDEX = 2;
+    /** Responses re-signed in bulk get a validity up to 1/10 shorter than configured, at random, see PresignResponseValidity.CONFIGURATION_BASED_SPREAD */
+    private static final int PRESIGN_VALIDITY_SPREAD_DIVISOR = 10;
 
     private static final Logger log = Logger.getLogger(OcspResponseGeneratorSessionBean.class);
 
     private static final InternalResources intres = InternalResources.getInstance();
     
-    private static volatile ExecutorService service = Executors.newCachedThreadPool();
-    
     @Resource
     private SessionContext sessionContext;
     /* When the sessionContext is injected, the timerService should be looked up.
@@ -231,6 +237,8 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
     @EJB
     private CertificateStoreSessionLocal certificateStoreSession;
     @EJB
+    private CertificateDataSessionLocal certificateDataSession;
+    @EJB
     private CryptoTokenSessionLocal cryptoTokenSession;
     @EJB
     private CryptoTokenManagementSessionLocal cryptoTokenManagementSession;
@@ -271,6 +279,10 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
         } else {
             log.info("Not initing OCSP reload timers, there are already some.");
         }
+        if (OcspConfiguration.isRevocationStatusIndexEnabled() && getTimerCount(TIMERID_REVOCATIONSTATUSINDEX)==0) {
+            // Fill the revocation status index in bulk. This also schedules the timer for incremental updates.
+            refreshRevocationStatusIndex();
+        }
     }
     
     @Override
@@ -495,6 +507,11 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
                 }
                 OcspSigningCache.INSTANCE.stagingCommit(ocspConfiguration.getOcspDefaultResponderReference());
                 OcspDataConfigCache.INSTANCE.stagingCommit();
+                // Signing keys, key binding settings or pre-production settings may have changed
+                if (log.isDebugEnabled()) {
+                    log.debug("Clearing OCSP response cache: " + OcspResponseCache.INSTANCE.getStatistics());
+                }
+                OcspResponseCache.INSTANCE.invalidateAll();
             } finally {
                 OcspSigningCache.INSTANCE.stagingRelease();
             }
@@ -818,6 +835,35 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
 //        CanLogCache.INSTANCE.setCanLog(canLog);
 //    }
 
+    /** Audit and transaction logs a response that was not produced for this request, but read from the response store or the response cache */
+    private void logPreProducedResponse(final OCSPResp ocspResp, final OcspSigningCacheEntry ocspSigningCacheEntry, final AuditLogger auditLogger,
+            final TransactionLogger transactionLogger) throws IOException, OCSPException {
+        if (auditLogger.isEnabled()) {
+            auditLogger.paramPut(AuditLogger.OCSPRESPONSE, ocspResp.getEncoded());
+            auditLogger.writeln();
+            auditLogger.flush();
+        }
+        if (transactionLogger.isEnabled()) {
+            if (ocspSigningCacheEntry != null) {
+                transactionLogger.paramPut(TransactionLogger.OCSP_CERT_ISSUER_NAME_DN,
+                        ocspSigningCacheEntry.getSigningCertificateIssuerDn());
+                transactionLogger.paramPut(TransactionLogger.OCSP_CERT_ISSUER_NAME_DN_RAW,
+                        ocspSigningCacheEntry.getSigningCertificateIssuerDnRaw());
+                // Issuer of the requested certificate is not logged to save database lookup
+            }
+            org.bouncycastle.cert.ocsp.CertificateStatus status = ((BasicOCSPResp) ocspResp.getResponseObject()).getResponses()[0]
+                    .getCertStatus();
+
+            transactionLogger.paramPut(TransactionLogger.CERT_STATUS, fetchCertStatus(status));
+
+            if (!Objects.isNull(status) && ((RevokedStatus) status).hasRevocationReason()) {
+                transactionLogger.paramPut(TransactionLogger.REV_REASON, ((RevokedStatus) status).getRevocationReason());
+            }
+            transactionLogger.writeln();
+            transactionLogger.flush();
+        }
+    }
+
     /**
      * This method exists solely to avoid code duplication when error handling in getOcspResponse.
      * 
@@ -1245,13 +1291,98 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
         if (log.isTraceEnabled()) {
             log.trace(">timeoutHandler: " + timer.getInfo().toString());
         }
-        // reloadTokenAndChainCache cancels old timers and adds a new timer
-        reloadOcspSigningCache();
+        // The refresh methods cancel old timers and add a new timer
+        if (((Integer) timer.getInfo()) == TIMERID_REVOCATIONSTATUSINDEX) {
+            refreshRevocationStatusIndex();
+        } else {
+            reloadOcspSigningCache();
+        }
         if (log.isTraceEnabled()) {
             log.trace("<timeoutHandler");
         }
     }
 
+    /**
+     * Reads certificate statuses that have changed since the last refresh into the revocation status index, for all CAs that
+     * the responder signs for. The first refresh of a CA reads the status of all its certificates.
+     */
+    // We don't want the appserver to persist/update the timer in the same transaction if they are stored in different non XA DataSources. This method
+    // should not be run from within a transaction.
+    private void refreshRevocationStatusIndex() {
+        if (log.isTraceEnabled()) {
+            log.trace(">refreshRevocationStatusIndex");
+        }
+        cancelTimers(TIMERID_REVOCATIONSTATUSINDEX);
+        if (!OcspConfiguration.isRevocationStatusIndexEnabled()) {
+            OcspRevocationStatusIndex.INSTANCE.flush();
+            return;
+        }
+        try {
+            final Set<String> issuerDns = new HashSet<>();
+            for (final OcspSigningCacheEntry entry : OcspSigningCache.INSTANCE.getEntries()) {
+                if (entry.getIssuerCaCertificate() != null) {
+                    issuerDns.add(NormalizedDnCache.INSTANCE.getNormalizedDn(CertTools.getSubjectDN(entry.getIssuerCaCertificate())));
+                }
+                for (final X509Certificate signedBehalfOfCaCertificate : entry.getSignedBehalfOfCaCerticates().values()) {
+                    issuerDns.add(NormalizedDnCache.INSTANCE.getNormalizedDn(CertTools.getSubjectDN(signedBehalfOfCaCertificate)));
+                }
+            }
+            OcspRevocationStatusIndex.INSTANCE.retainIssuers(issuerDns);
+            final int fetchSize = OcspConfiguration.getRevocationStatusIndexFetchSize();
+            final long overlap = OcspConfiguration.getRevocationStatusIndexOverlapTimeMs();
+            for (final String issuerDn : issuerDns) {
+                final long refreshTime = System.currentTimeMillis();
+                final long highestUpdateTime = OcspRevocationStatusIndex.INSTANCE.getHighestUpdateTime(issuerDn);
+                // Re-read a window before the last seen change, since updateTime is set by the writing node before its transaction commits
+                long updateTime = highestUpdateTime == -1L ? -1L : highestUpdateTime - overlap;
+                String fingerprint = "";
+                int count = 0;
+                while (true) {
+                    final List<Object[]> rows = certificateDataSession.findStatusInfoByIssuerDNUpdatedAfter(issuerDn, updateTime, fingerprint, fetchSize);
+                    for (final Object[] row : rows) {
+                        // The order of the results are defined by the SqlResultSetMapping annotation
+                        fingerprint = (String) row[0];
+                        updateTime = ValueExtractor.extractLongValue(row[7]);
+                        final BigInteger serialNumber = new BigInteger((String) row[1]);
+                        OcspRevocationStatusIndex.INSTANCE.update(issuerDn, serialNumber, ValueExtractor.extractIntValue(row[2]),
+                                ValueExtractor.extractLongValue(row[3]), ValueExtractor.extractIntValue(row[4]), ValueExtractor.extractLongValue(row[5]),
+                                row[6] == null ? null : ValueExtractor.extractIntValue(row[6]), updateTime);
+                        if (highestUpdateTime != -1L) {
+                            // The status may have changed since a response was cached
+                            OcspResponseCache.INSTANCE.invalidate(issuerDn, serialNumber);
+                        }
+                    }
+                    count += rows.size();
+                    if (rows.size() < fetchSize) {
+                        break;
+                    }
+                }
+                OcspRevocationStatusIndex.INSTANCE.setRefreshed(issuerDn, refreshTime);
+                if (highestUpdateTime == -1L) {
+                    log.info("Loaded the status of " + count + " certificates issued by '" + issuerDn + "' into the OCSP revocation status index in "
+                            + (System.currentTimeMillis() - refreshTime) + " ms.");
+                } else if (log.isDebugEnabled()) {
+                    log.debug("Read " + count + " changed certificate statuses for '" + issuerDn + "' into the OCSP revocation status index.");
+                }
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("OCSP revocation status index: " + OcspRevocationStatusIndex.INSTANCE.getStatistics());
+            }
+        } catch (RuntimeException e) {
+            // Lookups will keep using the last known state, until it is stale enough to be noticed in the statistics
+            log.warn("Failed to refresh the OCSP revocation status index: " + e.getMessage());
+            if (log.isDebugEnabled()) {
+                log.debug("Failed to refresh the OCSP revocation status index.", e);
+            }
+        } finally {
+            // Schedule a new timer of this type
+            addTimer(OcspConfiguration.getRevocationStatusIndexRefreshTimeMs(), TIMERID_REVOCATIONSTATUSINDEX);
+        }
+        if (log.isTraceEnabled()) {
+            log.trace("<refreshRevocationStatusIndex");
+        }
+    }
+
     /**
      * This method cancels all timers associated with this bean.
      */
@@ -1374,7 +1505,7 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
         }
         if (!isPreSigning  && auditLogger.isEnabled()) {
             auditLogger.paramPut(PatternLogger.PROCESS_TIME, PatternLogger.PROCESS_TIME);
-            auditLogger.paramPut(AuditLogger.OCSPREQUEST, StringTools.hex(request));
+            auditLogger.paramPut(AuditLogger.OCSPREQUEST, request);
         }
         
         GlobalOcspConfiguration ocspConfiguration = (GlobalOcspConfiguration) globalConfigurationSession
@@ -1386,6 +1517,8 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
         X509Certificate signerCert = null;
         String serialNrForResponseStore = null;
         int caIdForResponseStore = 0;
+        CertificateID certIdForResponseCache = null;
+        String issuerDnForResponseCache = null;
         try {
             req = translateRequestFromByteArray(request, remoteAddress, transactionLogger);
             // Get the certificate status requests that are inside this OCSP req
@@ -1404,6 +1537,9 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
             if (log.isDebugEnabled()) {
                 log.debug("The OCSP request contains " + ocspRequests.length + " simpleRequests.");
             }
+            // Only responses that are the same for all requesters are cached, so signed requests and requests with a nonce or other extensions are not
+            final boolean useResponseCache = !isPreSigning && ocspRequests.length == 1 && !req.isSigned() && req.getExtensionOIDs().isEmpty()
+                    && OcspResponseCache.INSTANCE.isEnabled();
             if (!isPreSigning && transactionLogger.isEnabled()) {
                 transactionLogger.paramPut(TransactionLogger.NUM_CERT_ID, ocspRequests.length);
                 transactionLogger.paramPut(TransactionLogger.STATUS, OCSPRespBuilder.SUCCESSFUL);
@@ -1472,6 +1608,22 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
 
                     }
                 }
+
+                if (useResponseCache && ocspSigningCacheEntry != null) {
+                    final OcspResponseCache.Entry cachedResponse = OcspResponseCache.INSTANCE.get(certId);
+                    if (cachedResponse != null) {
+                        if (log.isDebugEnabled()) {
+                            log.debug("Returning cached OCSP response for cert serial " + certId.getSerialNumber().toString(16));
+                        }
+                        try {
+                            logPreProducedResponse(cachedResponse.getResponse(), ocspSigningCacheEntry, auditLogger, transactionLogger);
+                            return new OcspResponseInformation(cachedResponse.getResponse(), cachedResponse.getMaxAge(), cachedResponse.getSignerCert());
+                        } catch (IOException e) {
+                            log.warn("Cached OCSP response for certificate with serialNr '" + certId.getSerialNumber() + "' could not be encoded. Producing new response.");
+                        }
+                    }
+                    certIdForResponseCache = certId;
+                }
                                 
                 // We only store pre-produced single responses
                 if (ocspRequests.length == 1 && ocspDataConfig != null && ocspDataConfig.isPreProductionEnabled()) {
@@ -1487,39 +1639,27 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
                         OCSPResp ocspResp = null;
                         try {
                             ocspResp = new OCSPResp(ocspResponseData.getOcspResponse());
+                            OcspPresignStatistics.INSTANCE.addServedFromStore();
                             if (ocspSigningCacheEntry != null && ocspSigningCacheEntry.isUsingSeparateOcspSigningCertificate()) {
                                 maxAge = ocspSigningCacheEntry.getOcspKeyBinding().getMaxAge() * 1000L;
                             }
+                            // The stored response may have a shorter validity than configured, and must not be cached beyond its nextUpdate
+                            maxAge = Math.min(maxAge, ocspResponseData.getNextUpdate() - System.currentTimeMillis());
                             if (log.isDebugEnabled()) {
                                 log.debug("Returning pre-produced OCSP response for CA " + ocspResponseData.getCaId() + " and cert serial "
                                         + ocspResponseData.getSerialNumber());
                             }
 
                             // Audit ant transaction log before returning the response info (if not a pre-signing situation).
-                            if (auditLogger.isEnabled()) {
-                                auditLogger.paramPut(AuditLogger.OCSPRESPONSE, StringTools.hex(ocspResponseData.getOcspResponse()));
-                                auditLogger.writeln();
-                                auditLogger.flush();
-                            }
-
-                            if (transactionLogger.isEnabled()) {
-                                if (ocspSigningCacheEntry != null) {
-                                    transactionLogger.paramPut(TransactionLogger.OCSP_CERT_ISSUER_NAME_DN,
-                                            ocspSigningCacheEntry.getSigningCertificateIssuerDn());
-                                    transactionLogger.paramPut(TransactionLogger.OCSP_CERT_ISSUER_NAME_DN_RAW,
-                                            ocspSigningCacheEntry.getSigningCertificateIssuerDnRaw());
-                                    // Issuer of the requested certificate is not logged to save database lookup
+                            logPreProducedResponse(ocspResp, ocspSigningCacheEntry, auditLogger, transactionLogger);
+                            if (useResponseCache && ocspSigningCacheEntry != null && ocspSigningCacheEntry.getSignedBehalfOfCaIds().isEmpty()) {
+                                // Only cached if the issuer is known, so that the response can be removed when the status changes
+                                final String issuerDn = NormalizedDnCache.INSTANCE.getNormalizedDn(
+                                        CertTools.getSubjectDN(ocspSigningCacheEntry.getIssuerCaCertificate()));
+                                if (NormalizedDnCache.INSTANCE.getCaId(issuerDn) == ocspResponseData.getCaId()) {
+                                    OcspResponseCache.INSTANCE.put(issuerDn, certId, ocspResp, ocspResponseData.getOcspResponse().length,
+                                            ocspResponseData.getNextUpdate(), maxAge, signerCert);
                                 }
-                                org.bouncycastle.cert.ocsp.CertificateStatus status = ((BasicOCSPResp) ocspResp.getResponseObject()).getResponses()[0]
-                                        .getCertStatus();
-
-                                transactionLogger.paramPut(TransactionLogger.CERT_STATUS, fetchCertStatus(status));
-
-                                if (!Objects.isNull(status) && ((RevokedStatus) status).hasRevocationReason()) {
-                                    transactionLogger.paramPut(TransactionLogger.REV_REASON, ((RevokedStatus) status).getRevocationReason());
-                                }
-                                transactionLogger.writeln();
-                                transactionLogger.flush();
                             }
                             return new OcspResponseInformation(ocspResp, maxAge, signerCert);
                         } catch (IOException e) {
@@ -1677,6 +1817,10 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
                 final List<String> extensionOids = ocspSigningCacheEntry.getOcspKeyBinding() != null
                         ? ocspSigningCacheEntry.getOcspKeyBinding().getOcspExtensions()
                         : new ArrayList<>();
+                if (!extensionOids.isEmpty()) {
+                    // OCSP extensions may depend on the requester
+                    certIdForResponseCache = null;
+                }
                                 
                 if (signerIssuerCertStatus.equals(CertificateStatus.REVOKED)) {
                     /*
@@ -1721,8 +1865,18 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
                         issuerDnOcspRequest = signedBehalfOfCaSubjectDn;
                         // we will also use certificate profile settings for issuing certificate
                     }
+                    if (certIdForResponseCache != null) {
+                        issuerDnForResponseCache = NormalizedDnCache.INSTANCE.getNormalizedDn(issuerDnOcspRequest);
+                    }
                     if (extensionOids.isEmpty()) {
-                        status = certificateStoreSession.getStatus(issuerDnOcspRequest, certId.getSerialNumber());
+                        status = null;
+                        final String normalizedIssuerDn = NormalizedDnCache.INSTANCE.getNormalizedDn(issuerDnOcspRequest);
+                        if (OcspConfiguration.isRevocationStatusIndexEnabled()) {
+                            status = OcspRevocationStatusIndex.INSTANCE.getStatus(normalizedIssuerDn, certId.getSerialNumber());
+                        }
+                        if (status == null) {
+                            status = certificateStoreSession.getStatusForNormalizedIssuerDn(normalizedIssuerDn, certId.getSerialNumber());
+                        }
                     } else {
                         certificateStatusHolder = certificateStoreSession.getCertificateAndStatus(issuerDnOcspRequest, certId.getSerialNumber());
                         status = certificateStatusHolder.getCertificateStatus();
@@ -1853,6 +2007,11 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
                         cal.clear();
                         cal.set(9999, 11, 31, 23, 59, 59); // 99991231235959Z
                         nextUpdate = cal.getTimeInMillis();
+                    } else if (preResponseValidity.equals(PresignResponseValidity.CONFIGURATION_BASED_SPREAD) && isPreSigning && nextUpdate > 0) {
+                        // Responses re-signed at the same time, e.g. when pre-production was enabled for a CA, would otherwise all be due
+                        // for re-signing at the same time in every validity period. A random part of the validity is cut off to spread them out.
+                        nextUpdate -= ThreadLocalRandom.current().nextLong(nextUpdate / PRESIGN_VALIDITY_SPREAD_DIVISOR + 1);
+                        maxAge = Math.min(maxAge, nextUpdate);
                     }
                     respItem = new OCSPResponseItem(certId, certStatus, nextUpdate);
                     final OcspKeyBinding ocspKeyBinding = ocspSigningCacheEntry.getOcspKeyBinding();
@@ -2006,7 +2165,7 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
         try {
             respBytes = ocspResponse.getEncoded();
             if (!isPreSigning && auditLogger.isEnabled()) {
-                auditLogger.paramPut(AuditLogger.OCSPRESPONSE, StringTools.hex(respBytes));
+                auditLogger.paramPut(AuditLogger.OCSPRESPONSE, respBytes);
                 auditLogger.writeln();
                 auditLogger.flush();
             }
@@ -2035,6 +2194,19 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
             }
         }
         
+        if (certIdForResponseCache != null && issuerDnForResponseCache != null && respBytes != null
+                && ocspResponse.getStatus() == OCSPRespBuilder.SUCCESSFUL) {
+            try {
+                final SingleResp[] singleResponses = ((BasicOCSPResp) ocspResponse.getResponseObject()).getResponses();
+                if (singleResponses.length == 1 && singleResponses[0].getNextUpdate() != null) {
+                    OcspResponseCache.INSTANCE.put(issuerDnForResponseCache, certIdForResponseCache, ocspResponse, respBytes.length,
+                            singleResponses[0].getNextUpdate().getTime(), maxAge, signerCert);
+                }
+            } catch (OCSPException e) {
+                log.debug("Not caching OCSP response that could not be parsed: " + e.getMessage());
+            }
+        }
+
         if (serialNrForResponseStore != null && caIdForResponseStore != 0 && 
                 ocspResponse.getStatus() == OCSPRespBuilder.SUCCESSFUL) { 
             try {
@@ -2380,16 +2552,19 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
             log.debug("The response certificate chain contains " + chain.length + " certificates");
         }
         /*
-         * The below code breaks the EJB standard by creating its own thread pool and creating a single thread (of the HsmResponseThread 
-         * type). The reason for this is that the HSM may deadlock when requesting an OCSP response, which we need to guard against. Since 
-         * there is no way of performing this action within the EJB3.0 standard, we are consciously creating threads here. 
+         * The below code breaks the EJB standard by signing in its own, bounded, thread pool (see OcspSigningPool). The reason for this is
+         * that the HSM may deadlock when requesting an OCSP response, which we need to guard against. Since there is no way of performing
+         * this action within the EJB3.0 standard, we are consciously creating threads here. 
          * 
          * Note that this does in no way break the spirit of the EJB standard, which is to not interrupt EJB's transaction handling by 
          * competing with its own thread pool, since these operations have no database impact.
          */
-        final Future<BasicOCSPResp> task = service.submit(new HsmResponseThread(basicRes, sigAlg, signerKey, chain, provider, producedAt));
+        // A single deadline for waiting for room in the signing queue and for the signature. Cancelling the task interrupts a hung signing thread.
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(HsmResponseThread.HSM_TIMEOUT_SECONDS);
+        final Future<BasicOCSPResp> task = OcspSigningPool.INSTANCE.submit(new HsmResponseThread(basicRes, sigAlg, signerKey, chain, provider, producedAt),
+                TimeUnit.SECONDS.toMillis(HsmResponseThread.HSM_TIMEOUT_SECONDS));
         try {
-            returnval = task.get(HsmResponseThread.HSM_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            returnval = task.get(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
         } catch (InterruptedException e) {
             task.cancel(true);
             throw new Error("OCSP response retrieval was interrupted while running. This should not happen", e);
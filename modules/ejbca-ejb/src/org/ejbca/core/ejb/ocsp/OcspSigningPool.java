@@ -0,0 +1,483 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.ejb.ocsp;
+
+import java.security.PrivateKey;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.log4j.Logger;
+import org.bouncycastle.cert.ocsp.BasicOCSPResp;
+import org.bouncycastle.operator.ContentSigner;
+import org.cesecore.config.OcspConfiguration;
+import org.cesecore.util.ComponentMetrics;
+import org.cesecore.util.ComponentMetrics.Sample;
+
+import com.keyfactor.util.keys.token.CryptoTokenOfflineException;
+
+/**
+ * Bounded pool of threads that sign OCSP responses.
+ * <p>
+ * The number of threads is fixed (see {@link OcspConfiguration#getSigningThreads()}), so the number of concurrent signatures
+ * never exceeds the number of sessions of the crypto tokens. Responses are queued per signing key. Under load, when all threads
+ * that may use a key are busy, responses for that key accumulate in its queue, and the next free thread signs up to
+ * {@link OcspConfiguration#getSigningMaxBatchSize()} of them in a row with the same content signer. No time is spent waiting
+ * for more responses, so a response is never delayed when there are free threads.
+ * <p>
+ * The number of queued responses is limited by {@link OcspConfiguration#getSigningQueueSize()}. When the queue is full,
+ * {@link #submit(HsmResponseThread, long)} waits for room, which slows down the request threads instead of letting the queue grow.
+ * <p>
+ * When a caller gives up and cancels the future of a response that is being signed, the signing thread is interrupted. Since a hung HSM
+ * call may not react to that, the thread is also replaced by a new one, so that hung calls can not block all signing. At most as many
+ * replacement threads as the configured number of threads are created. A replacement thread is removed when the hung call returns.
+ * <p>
+ * The pool is stopped by {@link #shutdown()} when the application is undeployed, and can not be used after that. The metrics are
+ * available from the metrics servlet, see {@link ComponentMetrics}.
+ */
+public enum OcspSigningPool {
+    INSTANCE;
+
+    private static final Logger log = Logger.getLogger(OcspSigningPool.class);
+
+    /** Responses waiting for a key, and the number of threads currently signing with it */
+    private static final class Lane {
+        private final Queue<SigningRequest> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger activeThreads = new AtomicInteger();
+    }
+
+    /**
+     * A response to sign. The future is cancelled by the caller when it gives up. The response is then not signed, or if it is being
+     * signed, the signing thread is interrupted and replaced.
+     */
+    private final class SigningRequest {
+        private final HsmResponseThread response;
+        private final Lane lane;
+        private final CompletableFuture<BasicOCSPResp> future = new CompletableFuture<BasicOCSPResp>() {
+            @Override
+            public boolean cancel(final boolean mayInterruptIfRunning) {
+                final boolean ret = super.cancel(mayInterruptIfRunning);
+                if (ret && mayInterruptIfRunning) {
+                    detachSigningThread();
+                }
+                return ret;
+            }
+        };
+        private final long enqueuedNanos = System.nanoTime();
+        /** The thread signing the response, guarded by this */
+        private Thread signingThread = null;
+        /** True if the signing thread was given up on and replaced, guarded by this */
+        private boolean detached = false;
+
+        private SigningRequest(final HsmResponseThread response, final Lane lane) {
+            this.response = response;
+            this.lane = lane;
+        }
+
+        private synchronized void setSigningThread(final Thread thread) {
+            signingThread = thread;
+        }
+
+        /** @return true if the signing thread was replaced while it was signing this response */
+        private synchronized boolean clearSigningThread() {
+            signingThread = null;
+            return detached;
+        }
+
+        private synchronized void detachSigningThread() {
+            if (signingThread != null && !detached) {
+                signingThread.interrupt();
+                detached = replaceHungThread(lane);
+            }
+        }
+    }
+
+    private final ReentrantLock startLock = new ReentrantLock();
+    private volatile ThreadPoolExecutor executor = null;
+    private volatile boolean shutdown = false;
+    private volatile Semaphore queueSlots;
+    private volatile int threads;
+    private volatile int maxBatchSize;
+    /** Weak keys, so lanes of keys that have been removed from the OCSP signing cache are dropped */
+    private final Map<PrivateKey, Lane> lanes = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private final AtomicInteger queued = new AtomicInteger();
+    private final LongAdder signed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder abandoned = new LongAdder();
+    private final LongAdder hung = new LongAdder();
+    private final AtomicInteger replacementThreads = new AtomicInteger();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder totalQueueMs = new LongAdder();
+    private final AtomicLong maxQueueMs = new AtomicLong();
+    private volatile long lastQueueMs = 0;
+
+    private OcspSigningPool() {
+        ComponentMetrics.INSTANCE.register("ocsp_signing_pool", this::collectMetrics);
+    }
+
+    private ThreadPoolExecutor start() throws CryptoTokenOfflineException {
+        final ThreadPoolExecutor current = executor;
+        if (current != null) {
+            return current;
+        }
+        startLock.lock();
+        try {
+            if (shutdown) {
+                throw new CryptoTokenOfflineException("OCSP signing pool has been shut down.");
+            }
+            if (executor == null) {
+                threads = OcspConfiguration.getSigningThreads();
+                maxBatchSize = OcspConfiguration.getSigningMaxBatchSize();
+                queueSlots = new Semaphore(OcspConfiguration.getSigningQueueSize());
+                final AtomicInteger threadNumber = new AtomicInteger();
+                executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), runnable -> {
+                    final Thread thread = new Thread(runnable, "OcspSigner-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                log.info("Started OCSP signing pool with " + threads + " threads, queue size " + OcspConfiguration.getSigningQueueSize()
+                        + " and maximum batch size " + maxBatchSize + ".");
+            }
+            return executor;
+        } finally {
+            startLock.unlock();
+        }
+    }
+
+    /**
+     * Stops the signing threads. Queued responses are failed, and responses that are submitted later are rejected. Called when the
+     * application is undeployed.
+     */
+    public void shutdown() {
+        final ThreadPoolExecutor stopped;
+        startLock.lock();
+        try {
+            shutdown = true;
+            stopped = executor;
+            executor = null;
+        } finally {
+            startLock.unlock();
+        }
+        if (stopped == null) {
+            return;
+        }
+        stopped.shutdownNow();
+        final List<Lane> stoppedLanes;
+        synchronized (lanes) {
+            stoppedLanes = new ArrayList<>(lanes.values());
+            lanes.clear();
+        }
+        int discarded = 0;
+        for (final Lane lane : stoppedLanes) {
+            SigningRequest request;
+            while ((request = lane.queue.poll()) != null) {
+                queued.decrementAndGet();
+                request.future.completeExceptionally(new CryptoTokenOfflineException("OCSP signing pool has been shut down."));
+                discarded++;
+            }
+        }
+        log.info("Stopped OCSP signing pool, " + discarded + " queued responses were not signed. " + getStatistics());
+    }
+
+    /** Used by unit tests to start the pool again after {@link #shutdown()} */
+    void reset() {
+        startLock.lock();
+        try {
+            shutdown = false;
+        } finally {
+            startLock.unlock();
+        }
+    }
+
+    /**
+     * Called when a caller gives up on a response that is being signed. The signing thread is interrupted and no longer counted as
+     * signing for the lane, and a replacement thread is added, so that calls that hang in the HSM can not block all signing.
+     *
+     * @return true if a replacement thread was added
+     */
+    private boolean replaceHungThread(final Lane lane) {
+        hung.increment();
+        final ThreadPoolExecutor current = executor;
+        if (current == null) {
+            return false;
+        }
+        if (replacementThreads.incrementAndGet() > threads) {
+            replacementThreads.decrementAndGet();
+            log.warn("OCSP response signing has timed out, and " + threads + " signing threads are already replaced. Not adding more threads.");
+            return false;
+        }
+        log.warn("OCSP response signing has timed out. Interrupting the signing thread and adding a replacement thread.");
+        synchronized (current) {
+            current.setMaximumPoolSize(current.getMaximumPoolSize() + 1);
+            current.setCorePoolSize(current.getCorePoolSize() + 1);
+        }
+        current.prestartCoreThread();
+        // The hung thread does not count towards the lane's threads anymore
+        lane.activeThreads.decrementAndGet();
+        if (!lane.queue.isEmpty()) {
+            execute(current, lane);
+        }
+        return true;
+    }
+
+    /** Called by a hung thread when its call has returned, to remove the thread that replaced it */
+    private void removeReplacementThread() {
+        replacementThreads.decrementAndGet();
+        final ThreadPoolExecutor current = executor;
+        if (current == null) {
+            return;
+        }
+        synchronized (current) {
+            current.setCorePoolSize(current.getCorePoolSize() - 1);
+            current.setMaximumPoolSize(current.getMaximumPoolSize() - 1);
+        }
+    }
+
+    /** Starts a thread draining the lane, unless the maximum number of threads are already signing with its key */
+    private void execute(final ThreadPoolExecutor current, final Lane lane) {
+        if (lane.activeThreads.incrementAndGet() <= threads) {
+            try {
+                current.execute(() -> drain(lane));
+            } catch (RejectedExecutionException e) {
+                // Shutting down
+                lane.activeThreads.decrementAndGet();
+            }
+        } else {
+            // All threads that may sign with this key are busy, and one of them will take the request
+            lane.activeThreads.decrementAndGet();
+        }
+    }
+
+    /**
+     * Queues a response for signing.
+     *
+     * @param response the response to sign
+     * @param timeoutMs how long to wait for room in the queue
+     * @return a future for the signed response. Cancelling it before the signing has started means the response is not signed, and
+     *     cancelling it with mayInterruptIfRunning while it is being signed interrupts and replaces the signing thread.
+     * @throws CryptoTokenOfflineException if the queue stayed full during the timeout, the thread was interrupted while waiting, or the
+     *     pool has been shut down
+     */
+    public Future<BasicOCSPResp> submit(final HsmResponseThread response, final long timeoutMs) throws CryptoTokenOfflineException {
+        final ThreadPoolExecutor current = start();
+        try {
+            if (!queueSlots.tryAcquire(timeoutMs, TimeUnit.MILLISECONDS)) {
+                rejected.increment();
+                throw new CryptoTokenOfflineException("OCSP signing queue has been full for " + timeoutMs + " ms.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CryptoTokenOfflineException("Interrupted while waiting for room in the OCSP signing queue.", e);
+        }
+        final Lane lane;
+        synchronized (lanes) {
+            lane = lanes.computeIfAbsent(response.getSignerKey(), key -> new Lane());
+        }
+        final SigningRequest request = new SigningRequest(response, lane);
+        queued.incrementAndGet();
+        lane.queue.add(request);
+        execute(current, lane);
+        return request.future;
+    }
+
+    private void drain(final Lane lane) {
+        final List<SigningRequest> batch = new ArrayList<>();
+        while (true) {
+            SigningRequest request;
+            while (batch.size() < maxBatchSize && (request = lane.queue.poll()) != null) {
+                batch.add(request);
+            }
+            queued.addAndGet(-batch.size());
+            queueSlots.release(batch.size());
+            if (batch.isEmpty()) {
+                lane.activeThreads.decrementAndGet();
+                // A request may have been queued after the last poll, while this thread still counted as active
+                if (lane.queue.isEmpty()) {
+                    return;
+                }
+                if (lane.activeThreads.incrementAndGet() > threads) {
+                    lane.activeThreads.decrementAndGet();
+                    return;
+                }
+                continue;
+            }
+            final boolean detached = signBatch(batch);
+            batch.clear();
+            if (detached) {
+                // A replacement thread has taken over the lane
+                return;
+            }
+        }
+    }
+
+    /** @return true if this thread was replaced in the lane, because a caller gave up while it was signing */
+    private boolean signBatch(final List<SigningRequest> batch) {
+        boolean detached = false;
+        ContentSigner signer = null;
+        String signerAlgorithm = null;
+        int batchSigned = 0;
+        for (final SigningRequest request : batch) {
+            if (request.future.isDone()) {
+                // The caller has timed out and cancelled the request
+                abandoned.increment();
+                continue;
+            }
+            final long queueMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - request.enqueuedNanos);
+            lastQueueMs = queueMs;
+            totalQueueMs.add(queueMs);
+            maxQueueMs.accumulateAndGet(queueMs, Math::max);
+            if (!detached) {
+                request.setSigningThread(Thread.currentThread());
+            }
+            try {
+                if (signer == null || !signerAlgorithm.equals(request.response.getSigningAlgorithm())) {
+                    signer = request.response.createSigner();
+                    signerAlgorithm = request.response.getSigningAlgorithm();
+                }
+                final BasicOCSPResp signedResponse = request.response.build(signer);
+                // Counted before the caller gets the response, so the metrics are up to date when it continues
+                signed.increment();
+                if (request.future.complete(signedResponse)) {
+                    batchSigned++;
+                } else {
+                    // The caller gave up while the response was being signed
+                    signed.decrement();
+                    abandoned.increment();
+                }
+            } catch (Exception e) {
+                // Don't reuse a signer that may be in an undefined state
+                signer = null;
+                failed.increment();
+                request.future.completeExceptionally(e);
+            } finally {
+                if (!detached && request.clearSigningThread()) {
+                    detached = true;
+                    signer = null;
+                    removeReplacementThread();
+                }
+                // Don't let an interrupt meant for this request affect the next one
+                Thread.interrupted();
+            }
+        }
+        if (batchSigned > 0) {
+            batches.increment();
+        }
+        if (log.isTraceEnabled()) {
+            log.trace("Signed batch of " + batchSigned + " OCSP responses. " + getStatistics());
+        }
+        return detached;
+    }
+
+    /** @return the number of responses waiting to be signed */
+    public int getQueueDepth() {
+        return queued.get();
+    }
+
+    /** @return the number of signed responses */
+    public long getSignedCount() {
+        return signed.sum();
+    }
+
+    /** @return the number of responses that could not be signed */
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    /** @return the number of responses that were not signed, since the caller had stopped waiting for them */
+    public long getAbandonedCount() {
+        return abandoned.sum();
+    }
+
+    /** @return the number of responses that the caller gave up on while they were being signed, e.g. since the HSM did not respond */
+    public long getHungCount() {
+        return hung.sum();
+    }
+
+    /** @return the number of threads that currently replace hung signing threads */
+    public int getReplacementThreadCount() {
+        return replacementThreads.get();
+    }
+
+    /** @return the number of responses that were not queued, since the queue was full */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /** @return the number of times a thread signed one or more responses in a row */
+    public long getBatchCount() {
+        return batches.sum();
+    }
+
+    /** @return the time the last signed response waited in the queue, in milliseconds */
+    public long getLastQueueTimeMs() {
+        return lastQueueMs;
+    }
+
+    /** @return the longest time a response waited in the queue, in milliseconds */
+    public long getMaxQueueTimeMs() {
+        return maxQueueMs.get();
+    }
+
+    /** @return the average time a response waited in the queue, in milliseconds */
+    public long getAverageQueueTimeMs() {
+        final long count = signed.sum() + failed.sum();
+        return count == 0 ? 0 : totalQueueMs.sum() / count;
+    }
+
+    private void collectMetrics(final List<Sample> samples) {
+        samples.add(Sample.gauge("ejbca_ocsp_signing_threads", "Number of OCSP signing threads, not counting replacements of hung threads.", threads));
+        samples.add(Sample.gauge("ejbca_ocsp_signing_replacement_threads", "Number of threads replacing hung OCSP signing threads.", getReplacementThreadCount()));
+        samples.add(Sample.gauge("ejbca_ocsp_signing_queue_depth", "Number of OCSP responses waiting to be signed.", getQueueDepth()));
+        samples.add(Sample.counter("ejbca_ocsp_signing_signed_total", "Number of signed OCSP responses.", getSignedCount()));
+        samples.add(Sample.counter("ejbca_ocsp_signing_failed_total", "Number of OCSP responses that could not be signed.", getFailedCount()));
+        samples.add(Sample.counter("ejbca_ocsp_signing_abandoned_total", "Number of OCSP responses not signed, since the caller had timed out.",
+                getAbandonedCount()));
+        samples.add(Sample.counter("ejbca_ocsp_signing_hung_total", "Number of OCSP responses that timed out while being signed.", getHungCount()));
+        samples.add(Sample.counter("ejbca_ocsp_signing_rejected_total", "Number of OCSP responses not queued, since the queue was full.",
+                getRejectedCount()));
+        samples.add(Sample.counter("ejbca_ocsp_signing_batches_total", "Number of times a thread signed one or more OCSP responses in a row.",
+                getBatchCount()));
+        samples.add(Sample.gauge("ejbca_ocsp_signing_queue_time_max_seconds", "Longest time an OCSP response has waited in the signing queue.",
+                getMaxQueueTimeMs() / 1000.0));
+        samples.add(Sample.gauge("ejbca_ocsp_signing_queue_time_avg_seconds", "Average time OCSP responses have waited in the signing queue.",
+                getAverageQueueTimeMs() / 1000.0));
+    }
+
+    /** @return a one line summary of the pool metrics, suitable for logging */
+    public String getStatistics() {
+        final long signedCount = getSignedCount();
+        final long batchCount = getBatchCount();
+        return "threads=" + threads + ", queueDepth=" + getQueueDepth() + ", signed=" + signedCount + ", failed=" + getFailedCount()
+                + ", abandoned=" + getAbandonedCount() + ", hung=" + getHungCount() + ", replacementThreads=" + getReplacementThreadCount()
+                + ", rejected=" + getRejectedCount() + ", batches=" + batchCount + ", avgBatchSize=" + (batchCount == 0 ? 0 : signedCount / batchCount)
+                + ", lastQueueMs=" + getLastQueueTimeMs() + ", avgQueueMs="
+                + getAverageQueueTimeMs() + ", maxQueueMs=" + getMaxQueueTimeMs();
+    }
+}
@@ -212,6 +212,24 @@ public class EndEntityAccessSessionBean implements EndEntityAccessSessionLocal,
         }
     }
 
+    @TransactionAttribute(TransactionAttributeType.SUPPORTS)
+    @Override
+    public Map<String, EndEntityInformation> findUsers(final Collection<String> usernames) {
+        final Map<String, EndEntityInformation> ret = new HashMap<>();
+        if (usernames.isEmpty()) {
+            return ret;
+        }
+        final TypedQuery<UserData> query = entityManager.createQuery("SELECT a FROM UserData a WHERE a.username IN (:usernames)", UserData.class);
+        query.setParameter("usernames", usernames);
+        for (final UserData userData : query.getResultList()) {
+            ret.put(userData.getUsername(), userData.toEndEntityInformation());
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Found " + ret.size() + " of " + usernames.size() + " users.");
+        }
+        return ret;
+    }
+
     @TransactionAttribute(TransactionAttributeType.SUPPORTS)
     @Override
     public EndEntityInformation findUser(final AuthenticationToken admin, final String username) throws AuthorizationDeniedException {
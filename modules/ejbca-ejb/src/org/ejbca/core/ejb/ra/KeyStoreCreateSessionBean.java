@@ -71,6 +71,7 @@ import org.ejbca.core.model.keyrecovery.KeyRecoveryInformation;
 import org.ejbca.core.model.ra.NotFoundException;
 import org.ejbca.core.model.ra.raadmin.EndEntityProfile;
 import org.ejbca.core.model.ra.raadmin.EndEntityProfileValidationException;
+import org.ejbca.util.keystore.KeyPairPool;
 
 import com.keyfactor.ErrorCode;
 import com.keyfactor.util.CertTools;
@@ -292,9 +293,9 @@ public class KeyStoreCreateSessionBean implements KeyStoreCreateSessionLocal, Ke
                 }
             }
             // generate new keys.
-            rsaKeys = KeyTools.genKeys(keyspec, keyalg);
+            rsaKeys = KeyPairPool.INSTANCE.getKeyPair(keyspec, keyalg);
             if (altKeyalg != null) {
-                altKeys = KeyTools.genKeys(altKeyspec, altKeyalg);
+                altKeys = KeyPairPool.INSTANCE.getKeyPair(altKeyspec, altKeyalg);
             }
         }
         X509Certificate cert = null;
@@ -405,9 +406,9 @@ public class KeyStoreCreateSessionBean implements KeyStoreCreateSessionLocal, Ke
                 }
             }
             // generate new keys.
-            rsaKeys = KeyTools.genKeys(keyspec, keyalg);
+            rsaKeys = KeyPairPool.INSTANCE.getKeyPair(keyspec, keyalg);
             if (altKeyalg != null) {
-                altKeys = KeyTools.genKeys(altKeyspec, altKeyalg);
+                altKeys = KeyPairPool.INSTANCE.getKeyPair(altKeyspec, altKeyalg);
             }
         }
         X509Certificate cert = null;
@@ -47,8 +47,16 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Predicate;
 
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
 import jakarta.ejb.ConcurrencyManagement;
 import jakarta.ejb.ConcurrencyManagementType;
 import jakarta.ejb.DependsOn;
@@ -59,6 +67,7 @@ import jakarta.ejb.Singleton;
 import jakarta.ejb.Startup;
 import jakarta.ejb.TransactionManagement;
 import jakarta.ejb.TransactionManagementType;
+import jakarta.enterprise.concurrent.ManagedExecutorService;
 
 import org.apache.commons.lang.ArrayUtils;
 import org.apache.log4j.Logger;
@@ -104,6 +113,7 @@ import org.cesecore.roles.Role;
 import org.cesecore.roles.RoleExistsException;
 import org.cesecore.roles.member.RoleMember;
 import org.cesecore.util.LogRedactionUtils;
+import org.ejbca.config.EjbcaConfiguration;
 import org.ejbca.config.GlobalConfiguration;
 import org.ejbca.core.EjbcaException;
 import org.ejbca.core.ejb.dto.CertRevocationDto;
@@ -146,6 +156,7 @@ import org.ejbca.cvc.exception.ConstructionException;
 import org.ejbca.cvc.exception.ParseException;
 import org.ejbca.ui.web.protocol.CertificateRenewalException;
 import org.ejbca.util.query.IllegalQueryException;
+import org.ejbca.util.keystore.KeyPairPool;
 
 import com.keyfactor.CesecoreException;
 import com.keyfactor.ErrorCode;
@@ -208,6 +219,13 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
     private RaMasterApi[] savedRaMasterApisLocalFirstBeforeTest;
     private List<String> functionTraceForTest;
 
+    /** Searches the peer back ends concurrently, so the remote calls are made from container managed threads */
+    @Resource
+    private ManagedExecutorService managedExecutorService;
+
+    /** Limits the number of peer back end searches that run on {@link #managedExecutorService} at the same time */
+    private final Semaphore searchPermits = new Semaphore(EjbcaConfiguration.getPeerSearchConcurrency());
+
     /** Default constructor */
     public RaMasterApiProxyBean() {
     }
@@ -216,6 +234,7 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
     public RaMasterApiProxyBean(final RaMasterApiSessionLocal raMasterApiSession,
             final GlobalConfigurationSessionLocal globalConfigurationSession,
             final KeyRecoverySessionLocal keyRecoverySession,
+            final ManagedExecutorService managedExecutorService,
             final RaMasterApi... raMasterApis) {
         this.raMasterApis = raMasterApis;
         final List<RaMasterApi> implementations = new ArrayList<>(Arrays.asList(raMasterApis));
@@ -224,6 +243,7 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
         this.raMasterApiSession = raMasterApiSession;
         this.localNodeGlobalConfigurationSession = globalConfigurationSession;
         this.localNodeKeyRecoverySession = keyRecoverySession;
+        this.managedExecutorService = managedExecutorService;
     }
 
     @PostConstruct
@@ -253,6 +273,153 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
         this.raMasterApisLocalFirst = implementations.toArray(new RaMasterApi[0]);
     }
 
+    /**
+     * Starts a search of a peer back end on the managed executor, if fewer than peerconnector.search.concurrency peer searches are
+     * running. Otherwise the search is left to the calling thread, which runs it when it collects the response.
+     *
+     * @return true if the search was started
+     */
+    private boolean startSearch(final FutureTask<?> task) {
+        if (managedExecutorService == null || !searchPermits.tryAcquire()) {
+            return false;
+        }
+        try {
+            managedExecutorService.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    searchPermits.release();
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            searchPermits.release();
+            log.debug("Peer back end search was rejected by the executor, searching from the calling thread instead.");
+            return false;
+        }
+    }
+
+    /** A search request to a single back end */
+    private interface BackendSearch<T> {
+        T search(RaMasterApi raMasterApi);
+    }
+
+    /** The responses from the back ends to a search, in the order of raMasterApisLocalFirst */
+    private static final class BackendSearchResponses<T> {
+        private final List<T> responses = new ArrayList<>();
+        private boolean backendUnavailable = false;
+    }
+
+    /**
+     * Sends a search request to all back ends at the same time, so the latency of a search is that of the slowest back end
+     * rather than the sum of all of them. The first back end, normally the local one, is searched in the calling thread, and the other
+     * back ends on the managed executor. When peerconnector.search.concurrency peer searches are already running, the remaining
+     * back ends are searched from the calling thread after the local one, one after another, as if they were not searched in parallel.
+     * <p>
+     * The responses are returned in the order of the back ends, so they are merged with the same precedence as when the back ends
+     * were searched one after another. A back end that does not respond within peerconnector.search.timeout ms, or is unavailable,
+     * is skipped, and a back end that does not support the search is ignored.
+     *
+     * @param operation name of the search, for logging
+     * @param isApplicable tells if a back end is available and supports the search
+     * @param search the search to send to each back end
+     * @return the responses of all back ends that responded in time
+     */
+    private <T> BackendSearchResponses<T> searchBackends(final String operation, final Predicate<RaMasterApi> isApplicable, final BackendSearch<T> search) {
+        final RaMasterApi[] backends = raMasterApisLocalFirst;
+        final BackendSearchResponses<T> ret = new BackendSearchResponses<>();
+        if (backends.length == 0) {
+            return ret;
+        }
+        final long startTime = System.nanoTime();
+        final long deadline = startTime + TimeUnit.MILLISECONDS.toNanos(EjbcaConfiguration.getPeerSearchTimeoutMillis());
+        final List<FutureTask<T>> futures = new ArrayList<>(backends.length - 1);
+        final boolean[] started = new boolean[backends.length - 1];
+        for (int i = 1; i < backends.length; i++) {
+            final int index = i;
+            final FutureTask<T> future = new FutureTask<>(() -> searchBackend(operation, index, backends[index], isApplicable, search));
+            futures.add(future);
+            started[i - 1] = startSearch(future);
+        }
+        try {
+            try {
+                addSearchResponse(ret, searchBackend(operation, 0, backends[0], isApplicable, search));
+            } catch (UnsupportedOperationException | RaMasterBackendUnavailableException e) {
+                handleSearchFailure(ret, operation, 0, e);
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                final FutureTask<T> future = futures.get(i);
+                if (!started[i]) {
+                    future.run();
+                }
+                try {
+                    addSearchResponse(ret, future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+                } catch (TimeoutException e) {
+                    future.cancel(true);
+                    RaSearchStatistics.INSTANCE.addTimeout(i + 1);
+                    log.info(operation + " on back end " + (i + 1) + " did not respond within "
+                            + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) + " ms. Skipping its results.");
+                    ret.backendUnavailable = true;
+                } catch (ExecutionException e) {
+                    final Throwable cause = e.getCause();
+                    if (cause instanceof UnsupportedOperationException || cause instanceof RaMasterBackendUnavailableException) {
+                        handleSearchFailure(ret, operation, i + 1, (RuntimeException) cause);
+                    } else if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    } else if (cause instanceof Error) {
+                        throw (Error) cause;
+                    } else {
+                        throw new IllegalStateException(cause);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    ret.backendUnavailable = true;
+                    break;
+                }
+            }
+        } finally {
+            // Stop searches that are still running, if a back end failed or timed out
+            for (final FutureTask<T> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return ret;
+    }
+
+    private <T> T searchBackend(final String operation, final int index, final RaMasterApi raMasterApi, final Predicate<RaMasterApi> isApplicable,
+            final BackendSearch<T> search) {
+        if (!isApplicable.test(raMasterApi)) {
+            return null;
+        }
+        final long startTime = System.nanoTime();
+        try {
+            return search.search(raMasterApi);
+        } finally {
+            final long duration = System.nanoTime() - startTime;
+            RaSearchStatistics.INSTANCE.addSearch(index, duration);
+            if (log.isDebugEnabled()) {
+                log.debug(operation + " on back end " + index + " took " + TimeUnit.NANOSECONDS.toMillis(duration) + " ms.");
+            }
+        }
+    }
+
+    private static <T> void addSearchResponse(final BackendSearchResponses<T> responses, final T response) {
+        if (response != null) {
+            responses.responses.add(response);
+        }
+    }
+
+    private static void handleSearchFailure(final BackendSearchResponses<?> responses, final String operation, final int index, final RuntimeException e) {
+        if (e instanceof RaMasterBackendUnavailableException) {
+            if (log.isDebugEnabled()) {
+                log.debug("Timeout during back end invocation of " + operation + " on back end " + index + ".", e);
+            }
+            responses.backendUnavailable = true;
+        } else if (log.isDebugEnabled()) {
+            log.debug("Trouble during back end invocation of " + operation + " on back end " + index + ": " + e.getMessage());
+        }
+    }
+
     // Use in tests only!
     @Override
     public void deferLocalForTest() {
@@ -808,14 +975,9 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
     public RaRequestsSearchResponse searchForApprovalRequests(AuthenticationToken authenticationToken,
             RaRequestsSearchRequest raRequestsSearchRequest) {
         final RaRequestsSearchResponse searchResponse = new RaRequestsSearchResponse();
-        for (final RaMasterApi raMasterApi : raMasterApisLocalFirst) {
-            if (raMasterApi.isBackendAvailable()) {
-                try {
-                    searchResponse.merge(raMasterApi.searchForApprovalRequests(authenticationToken, raRequestsSearchRequest));
-                } catch (UnsupportedOperationException | RaMasterBackendUnavailableException e) {
-                    // Just try next implementation
-                }
-            }
+        for (final RaRequestsSearchResponse response : searchBackends("searchForApprovalRequests", RaMasterApi::isBackendAvailable,
+                raMasterApi -> raMasterApi.searchForApprovalRequests(authenticationToken, raRequestsSearchRequest)).responses) {
+            searchResponse.merge(response);
         }
         return searchResponse;
     }
@@ -930,7 +1092,6 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
     @Override
     public RaCertificateSearchResponse searchForCertificates(AuthenticationToken authenticationToken,
             RaCertificateSearchRequest raCertificateSearchRequest) {
-        final RaCertificateSearchResponse ret = new RaCertificateSearchResponse();
         for (final RaMasterApi raMasterApi : raMasterApisLocalFirst) {
             if (raMasterApi.isBackendAvailable()) {
                 if (raMasterApi.getApiVersion() < 18 && (
@@ -941,29 +1102,29 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
                         log.warn("Search operation 'BEGINS_WITH' not supported by Peer connected instance");
                         throw new UnsupportedOperationException("Operation 'BEGINS_WITH' not supported by instance");
                 }
-                try {
-                    ret.merge(raMasterApi.searchForCertificates(authenticationToken, raCertificateSearchRequest));
-                } catch (UnsupportedOperationException e) {
-                    if (log.isDebugEnabled()) {
-                        log.debug("Trouble during back end invocation: " + e.getMessage());
-                    }
-                    // Just try next implementation
-                } catch (RaMasterBackendUnavailableException e) {
-                    if (log.isDebugEnabled()) {
-                        log.debug("Timeout during back end invocation.", e);
-                    }
-                    // If the back end timed out due to a too heavy search we want to allow the client to retry with more fine grained criteria
-                    ret.setMightHaveMoreResults(true);
-                }
             }
         }
+        final RaCertificateSearchResponse ret = new RaCertificateSearchResponse();
+        final BackendSearchResponses<RaCertificateSearchResponse> responses = searchBackends("searchForCertificates", RaMasterApi::isBackendAvailable,
+                raMasterApi -> raMasterApi.searchForCertificates(authenticationToken, raCertificateSearchRequest));
+        for (final RaCertificateSearchResponse response : responses.responses) {
+            ret.merge(response);
+        }
+        if (responses.backendUnavailable) {
+            // If the back end timed out due to a too heavy search we want to allow the client to retry with more fine grained criteria
+            ret.setMightHaveMoreResults(true);
+        }
+        if (ret.getCdws().size() > raCertificateSearchRequest.getMaxResults()) {
+            // Each back end returns up to the maximum number of results, so the merged results can be more than what was requested
+            ret.setCdws(new ArrayList<>(ret.getCdws().subList(0, raCertificateSearchRequest.getMaxResults())));
+            ret.setMightHaveMoreResults(true);
+        }
         return ret;
     }
     
     @Override
     public RaCertificateSearchResponseV2 searchForCertificatesV2(AuthenticationToken authenticationToken,
             RaCertificateSearchRequestV2 raCertificateSearchRequest) {
-        final RaCertificateSearchResponseV2 ret = new RaCertificateSearchResponseV2();
         for (final RaMasterApi raMasterApi : raMasterApisLocalFirst) {
             if (raMasterApi.isBackendAvailable()) {
                 if (raMasterApi.getApiVersion() < 18 && (
@@ -974,20 +1135,13 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
                         log.warn("Search operation 'BEGINS_WITH' not supported by Peer connected instance");
                         throw new UnsupportedOperationException("Operation 'BEGINS_WITH' not supported by instance");
                 }
-                try {
-                    ret.merge(raMasterApi.searchForCertificatesV2(authenticationToken, raCertificateSearchRequest));
-                } catch (UnsupportedOperationException e) {
-                    if (log.isDebugEnabled()) {
-                        log.debug("Trouble during back end invocation: " + e.getMessage());
-                    }
-                    // Just try next implementation
-                } catch (RaMasterBackendUnavailableException e) {
-                    if (log.isDebugEnabled()) {
-                        log.debug("Timeout during back end invocation.", e);
-                    }
-                }
             }
         }
+        final RaCertificateSearchResponseV2 ret = new RaCertificateSearchResponseV2();
+        for (final RaCertificateSearchResponseV2 response : searchBackends("searchForCertificatesV2", RaMasterApi::isBackendAvailable,
+                raMasterApi -> raMasterApi.searchForCertificatesV2(authenticationToken, raCertificateSearchRequest)).responses) {
+            ret.merge(response);
+        }
         return ret;
     }
 
@@ -1005,14 +1159,9 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
     public RaRoleSearchResponse searchForRoles(AuthenticationToken authenticationToken,
             RaRoleSearchRequest raRoleSearchRequest) {
         final RaRoleSearchResponse ret = new RaRoleSearchResponse();
-        for (final RaMasterApi raMasterApi : raMasterApisLocalFirst) {
-            if (raMasterApi.isBackendAvailable() && raMasterApi.getApiVersion() >= 1) {
-                try {
-                    ret.merge(raMasterApi.searchForRoles(authenticationToken, raRoleSearchRequest));
-                } catch (UnsupportedOperationException | RaMasterBackendUnavailableException e) {
-                    // Just try next implementation
-                }
-            }
+        for (final RaRoleSearchResponse response : searchBackends("searchForRoles", raMasterApi -> raMasterApi.isBackendAvailable() && raMasterApi.getApiVersion() >= 1,
+                raMasterApi -> raMasterApi.searchForRoles(authenticationToken, raRoleSearchRequest)).responses) {
+            ret.merge(response);
         }
         return ret;
     }
@@ -1021,14 +1170,9 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
     public RaRoleMemberSearchResponse searchForRoleMembers(AuthenticationToken authenticationToken,
             RaRoleMemberSearchRequest raRoleMemberSearchRequest) {
         final RaRoleMemberSearchResponse ret = new RaRoleMemberSearchResponse();
-        for (final RaMasterApi raMasterApi : raMasterApisLocalFirst) {
-            if (raMasterApi.isBackendAvailable() && raMasterApi.getApiVersion() >= 1) {
-                try {
-                    ret.merge(raMasterApi.searchForRoleMembers(authenticationToken, raRoleMemberSearchRequest));
-                } catch (UnsupportedOperationException | RaMasterBackendUnavailableException e) {
-                    // Just try next implementation
-                }
-            }
+        for (final RaRoleMemberSearchResponse response : searchBackends("searchForRoleMembers", raMasterApi -> raMasterApi.isBackendAvailable() && raMasterApi.getApiVersion() >= 1,
+                raMasterApi -> raMasterApi.searchForRoleMembers(authenticationToken, raRoleMemberSearchRequest)).responses) {
+            ret.merge(response);
         }
         return ret;
     }
@@ -1037,23 +1181,19 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
     public RaEndEntitySearchResponse searchForEndEntities(AuthenticationToken authenticationToken,
             RaEndEntitySearchRequest raEndEntitySearchRequest) {
         final RaEndEntitySearchResponse ret = new RaEndEntitySearchResponse();
-        for (final RaMasterApi raMasterApi : raMasterApisLocalFirst) {
-            if (raMasterApi.isBackendAvailable()) {
-                try {
-                    ret.merge(raMasterApi.searchForEndEntities(authenticationToken, raEndEntitySearchRequest));
-                } catch (UnsupportedOperationException e) {
-                    if (log.isDebugEnabled()) {
-                        log.debug("Trouble during back end invocation: " + e.getMessage());
-                    }
-                    // Just try next implementation
-                } catch (RaMasterBackendUnavailableException e) {
-                    if (log.isDebugEnabled()) {
-                        log.debug("Timeout during back end invocation.", e);
-                    }
-                    // If the back end timed out due to a too heavy search we want to allow the client to retry with more fine grained criteria
-                    ret.setMightHaveMoreResults(true);
-                }
-            }
+        final BackendSearchResponses<RaEndEntitySearchResponse> responses = searchBackends("searchForEndEntities", RaMasterApi::isBackendAvailable,
+                raMasterApi -> raMasterApi.searchForEndEntities(authenticationToken, raEndEntitySearchRequest));
+        for (final RaEndEntitySearchResponse response : responses.responses) {
+            ret.merge(response);
+        }
+        if (responses.backendUnavailable) {
+            // If the back end timed out due to a too heavy search we want to allow the client to retry with more fine grained criteria
+            ret.setMightHaveMoreResults(true);
+        }
+        if (ret.getEndEntities().size() > raEndEntitySearchRequest.getMaxResults()) {
+            // Each back end returns up to the maximum number of results, so the merged results can be more than what was requested
+            ret.setEndEntities(new ArrayList<>(ret.getEndEntities().subList(0, raEndEntitySearchRequest.getMaxResults())));
+            ret.setMightHaveMoreResults(true);
         }
         return ret;
     }
@@ -1062,25 +1202,16 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
     public RaEndEntitySearchResponseV2 searchForEndEntitiesV2(AuthenticationToken authenticationToken, 
             RaEndEntitySearchRequestV2 raEndEntitySearchRequestV2) {
         final RaEndEntitySearchResponseV2 retMerged = new RaEndEntitySearchResponseV2();
-        for (final RaMasterApi raMasterApi : raMasterApisLocalFirst) {
-            if (raMasterApi.isBackendAvailable() && raMasterApi.getApiVersion() >= 14) {
-                try {
-                    RaEndEntitySearchResponseV2 retNode = raMasterApi.searchForEndEntitiesV2(authenticationToken, raEndEntitySearchRequestV2);
-                    retMerged.merge(retNode);
-                    retMerged.setSearchSummary(retNode.getSearchSummary());
-                } catch (UnsupportedOperationException e) {
-                    if (log.isDebugEnabled()) {
-                        log.debug("Trouble during back end invocation: " + e.getMessage());
-                    }
-                    // Just try next implementation
-                } catch (RaMasterBackendUnavailableException e) {
-                    if (log.isDebugEnabled()) {
-                        log.debug("Timeout during back end invocation.", e);
-                    }
-                    // If the back end timed out due to a too heavy search we want to allow the client to retry with more fine grained criteria
-                    retMerged.setMightHaveMoreResults(true);
-                }
-            }
+        final BackendSearchResponses<RaEndEntitySearchResponseV2> responses = searchBackends("searchForEndEntitiesV2",
+                raMasterApi -> raMasterApi.isBackendAvailable() && raMasterApi.getApiVersion() >= 14,
+                raMasterApi -> raMasterApi.searchForEndEntitiesV2(authenticationToken, raEndEntitySearchRequestV2));
+        for (final RaEndEntitySearchResponseV2 retNode : responses.responses) {
+            retMerged.merge(retNode);
+            retMerged.setSearchSummary(retNode.getSearchSummary());
+        }
+        if (responses.backendUnavailable) {
+            // If the back end timed out due to a too heavy search we want to allow the client to retry with more fine grained criteria
+            retMerged.setMightHaveMoreResults(true);
         }
         retMerged.sortMergedMembers();
         return retMerged;
@@ -1670,7 +1801,7 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
                 // Create new key pair and CSR
                 final String keyalg = storedEndEntity.getExtendedInformation().getKeyStoreAlgorithmType();
                 final String keyspec = storedEndEntity.getExtendedInformation().getKeyStoreAlgorithmSubType();
-                kp = KeyTools.genKeys(keyspec, keyalg);
+                kp = KeyPairPool.INSTANCE.getKeyPair(keyspec, keyalg);
                 // requestCertForEndEntity verifies the password and performs the finishUser operation
                 cert = requestCertForEndEntity(authenticationToken, storedEndEntity, endEntity.getPassword(), kp);
                 // Store key pair
@@ -252,6 +252,8 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 /**
@@ -1304,12 +1306,21 @@ public class RaMasterApiSessionBean implements RaMasterApiSessionLocal {
                                                                        final Collection<Integer> authorizedEepIds, final boolean accessAnyEepAvailable) {
         final RaCertificateSearchResponseV2 response = new RaCertificateSearchResponseV2();
         final boolean countOnly = request.getPageNumber() == -1;
-        final Query query = createQuery(entityManager, request, countOnly, issuerDns, authorizedCpIds, accessAnyCpAvailable, authorizedEepIds, accessAnyEepAvailable);
+        final String keysetColumn = countOnly ? null : getKeysetOrderColumn(request);
+        final Query query;
+        try {
+            query = createQuery(entityManager, request, countOnly, issuerDns, authorizedCpIds, accessAnyCpAvailable, authorizedEepIds, accessAnyEepAvailable);
+        } catch (IllegalArgumentException e) {
+            log.info("Requested search query by " + authenticationToken + " has an invalid cursor: " + e.getMessage());
+            response.setStatus(RaCertificateSearchResponseV2.Status.ERROR);
+            return response;
+        }
         int maxResults = -1;
         int offset = -1;
         if (!countOnly) {
             maxResults = Math.min(getGlobalCesecoreConfiguration().getMaximumQueryCount(), request.getMaxResults());
-            offset = (request.getPageNumber() - 1) * maxResults;
+            // With a cursor, the condition on the sort columns skips the previous pages
+            offset = keysetColumn != null && request.getCursor() != null ? 0 : (request.getPageNumber() - 1) * maxResults;
             query.setMaxResults(maxResults);
             query.setFirstResult(offset);
         }
@@ -1335,10 +1346,25 @@ public class RaMasterApiSessionBean implements RaMasterApiSessionLocal {
                 }
             } else {
                 final List<?> resultList = query.getResultList();
+                String fingerprint = null;
+                long sortValue = 0;
                 for (final Object fingerprintRecord : resultList) {
-                    final String fingerprint = ValueExtractor.extractStringValue(fingerprintRecord);
+                    if (keysetColumn != null) {
+                        final Object[] row = (Object[]) fingerprintRecord;
+                        fingerprint = ValueExtractor.extractStringValue(row[0]);
+                        sortValue = ValueExtractor.extractLongValue(row[1]);
+                    } else {
+                        fingerprint = ValueExtractor.extractStringValue(fingerprintRecord);
+                    }
                     response.getCdws().add(certificateStoreSession.getCertificateData(fingerprint));
                 }
+                if (keysetColumn != null) {
+                    final boolean descending = "DESC".equalsIgnoreCase(request.getOrderOperation().trim());
+                    response.setKeysetOrder(request.getOrderProperty().trim(), descending, maxResults);
+                    if (resultList.size() == maxResults) {
+                        response.setNextCursor(new RaSearchCursor(request.getOrderProperty().trim(), descending, sortValue, fingerprint).encode());
+                    }
+                }
                 response.setStatus(RaCertificateSearchResponseV2.Status.SUCCESSFUL);
                 if (log.isDebugEnabled()) {
                     log.debug("Certificate search query: page " + request.getPageNumber() + ", page size " + maxResults + ", count " + resultList.size() + " results. queryTimeout=" + queryTimeout + "ms");
@@ -1373,6 +1399,11 @@ public class RaMasterApiSessionBean implements RaMasterApiSessionLocal {
      * the JPA spec.  When countOnly is true, the return value from this query may be any java.lang.Number,
      * not necessarily a Long.  Casting to long may throw an exception for some database drivers.  The best
      * way to retrieve the count is to cast to java.lang.Number and use Number::longValue.
+     * <p>
+     * When the results are ordered by a column that supports keyset pagination, each result is a row with the fingerprint and the
+     * value of the sort column, and the fingerprint is used as a tie-breaker so that the order is stable.
+     *
+     * @throws IllegalArgumentException if the cursor of the request is malformed or was created for another order
      */
     static Query createQuery( final EntityManager entityManager,
                               final RaCertificateSearchRequestV2 request,
@@ -1388,9 +1419,19 @@ public class RaMasterApiSessionBean implements RaMasterApiSessionLocal {
         final String externalAccountIdSearchString = request.getExternalAccountIdSearchString();
         final String serialNumberSearchStringFromDec = request.getSerialNumberSearchStringFromDec();
         final String serialNumberSearchStringFromHex = request.getSerialNumberSearchStringFromHex();
+        final String keysetColumn = countOnly ? null : getKeysetOrderColumn(request);
+        RaSearchCursor cursor = null;
+        if (request.getCursor() != null && !countOnly) {
+            cursor = RaSearchCursor.decode(request.getCursor());
+            if (keysetColumn == null || !cursor.matchesOrder(request.getOrderProperty(), request.getOrderOperation())) {
+                throw new IllegalArgumentException("The cursor was created for a search with another order.");
+            }
+        }
         final StringBuilder sb = new StringBuilder("SELECT ");
         if (countOnly) {
             sb.append("count(*)");
+        } else if (keysetColumn != null) {
+            sb.append("a.fingerprint, a.").append(keysetColumn);
         } else {
             sb.append("a.fingerprint");
         }
@@ -1439,9 +1480,18 @@ public class RaMasterApiSessionBean implements RaMasterApiSessionLocal {
             sb.append(" AND (a.endEntityProfileId IN (:endEntityProfileId))");
         }
 
+        if (cursor != null) {
+            final String comparison = cursor.isDescending() ? " < " : " > ";
+            sb.append(" AND (a.").append(keysetColumn).append(comparison).append(":cursorValue OR (a.").append(keysetColumn)
+                    .append(" = :cursorValue AND a.fingerprint").append(comparison).append(":cursorKey))");
+        }
+
         String orderProperty = request.getOrderProperty();
         String orderOperation = request.getOrderOperation();
-        if (!countOnly && StringUtils.isNotBlank(orderProperty) && StringUtils.isNotBlank(orderOperation)) {
+        if (keysetColumn != null) {
+            orderOperation = orderOperation.trim().toUpperCase();
+            sb.append(" ORDER BY a.").append(keysetColumn).append(" ").append(orderOperation).append(", a.fingerprint ").append(orderOperation);
+        } else if (!countOnly && StringUtils.isNotBlank(orderProperty) && StringUtils.isNotBlank(orderOperation)) {
             orderOperation = orderOperation.trim();
             if("ASC".equalsIgnoreCase(orderOperation) || "DESC".equalsIgnoreCase(orderOperation)) {
                 orderProperty = mapOrderColumn(orderProperty);
@@ -1455,6 +1505,10 @@ public class RaMasterApiSessionBean implements RaMasterApiSessionLocal {
 
         final Query query = entityManager.createNativeQuery(sb.toString());
         query.setParameter("issuerDN", issuerDns);
+        if (cursor != null) {
+            query.setParameter("cursorValue", cursor.getLastValue());
+            query.setParameter("cursorKey", cursor.getLastKey());
+        }
         if (!accessAnyCpAvailable || !request.getCpIds().isEmpty()) {
             query.setParameter("certificateProfileId", authorizedCpIds);
         }
@@ -1612,6 +1666,26 @@ public class RaMasterApiSessionBean implements RaMasterApiSessionLocal {
             return " AND (" + comparisons.stream().collect(Collectors.joining(" OR ")) + ")";
     }
 
+    /**
+     * @return the column of the requested order if it supports keyset pagination, i.e. it is a non-null number, or null otherwise.
+     *      Other columns can be null, which would need a different condition for finding the next page.
+     */
+    private static String getKeysetOrderColumn(final RaCertificateSearchRequestV2 request) {
+        final String orderOperation = request.getOrderOperation();
+        if (request.getOrderProperty() == null || orderOperation == null
+                || !("ASC".equalsIgnoreCase(orderOperation.trim()) || "DESC".equalsIgnoreCase(orderOperation.trim()))) {
+            return null;
+        }
+        switch (request.getOrderProperty().trim()) {
+            case "UPDATE_TIME":
+                return "updateTime";
+            case "EXPIRE_DATE":
+                return "expireDate";
+            default:
+                return null;
+        }
+    }
+
     private final static String mapOrderColumn(final String property) {
         if (property != null) {
             switch (property.trim()) {
@@ -1660,6 +1734,7 @@ public class RaMasterApiSessionBean implements RaMasterApiSessionLocal {
                         RaMasterApiQueryCache.INSTANCE.getCachedResult(queryCacheKey);
                 searchSummary.incrementCurrentIdentifierIndex();
                 searchSummary.setCurrentIdentifierSearchOffset(0);
+                searchSummary.resetKeysetPosition();
                 // later may be used to update other props too
                 RaMasterApiQueryCache.INSTANCE.updateCache(queryCacheKey, searchSummary);
                 return null;
@@ -1672,6 +1747,7 @@ public class RaMasterApiSessionBean implements RaMasterApiSessionLocal {
                 searchSummary.setCurrentIdentifierIndex(
                         raEndEntitySearchRequest.getSearchSummary().getCurrentIdentifierIndex());
                 searchSummary.setCurrentIdentifierSearchOffset(0);
+                searchSummary.resetKeysetPosition();
             }
 
         } else {
@@ -1686,7 +1762,7 @@ public class RaMasterApiSessionBean implements RaMasterApiSessionLocal {
                         searchSummary.getCurrentIdentifierSearchOffset(),
                         raEndEntitySearchRequest.getSortOperation(),
                         raEndEntitySearchRequest.getAdditionalConstraint(),
-                        searchSummary.getCurrentIdentifier());
+                        searchSummary.getCurrentIdentifier(), searchSummary);
 
         // update cache entry - page number, reference update
         searchSummary.setCurrentIdentifierSearchOffset(
@@ -1699,13 +1775,20 @@ public class RaMasterApiSessionBean implements RaMasterApiSessionLocal {
 
     @Override
     public RaEndEntitySearchResponse searchForEndEntities(AuthenticationToken authenticationToken, RaEndEntitySearchRequest request) {
-        return searchForEndEntities(authenticationToken, request, -1, "", "", -1);
+        return searchForEndEntities(authenticationToken, request, -1, "", "", -1, null);
     }
 
-    @SuppressWarnings("unchecked")
+    /** Order of the V2 end entity search, as created by the REST API, e.g. " ORDER BY a.timeModified DESC" */
+    private static final Pattern END_ENTITY_SORT_OPERATION = Pattern.compile("\\s*ORDER BY a\\.(\\w+) (ASC|DESC)\\s*", Pattern.CASE_INSENSITIVE);
+
+    /**
+     * @param keysetSummary pagination state of a V2 search, which is updated with the position of the last result if the search
+     *      order supports keyset pagination, or null
+     */
     private RaEndEntitySearchResponse searchForEndEntities(
             AuthenticationToken authenticationToken, RaEndEntitySearchRequest request, int currentQueryOffset,
-            String sortingOperation, String additionalConstraintQuery, int additionalConstraintParam) {
+            String sortingOperation, String additionalConstraintQuery, int additionalConstraintParam,
+            RaEndEntitySearchPaginationSummary keysetSummary) {
         final RaEndEntitySearchResponse response = new RaEndEntitySearchResponse();
         final List<Integer> authorizedLocalCaIds = new ArrayList<>(caSession.getAuthorizedCaIds(authenticationToken));
         // Only search a subset of the requested CAs if requested
@@ -1748,7 +1831,28 @@ public class RaMasterApiSessionBean implements RaMasterApiSessionLocal {
         final String subjectDnSearchString = request.getSubjectDnSearchString();
         final String subjectAnSearchString = request.getSubjectAnSearchString();
         final String usernameSearchString = request.getUsernameSearchString();
-        final StringBuilder sb = new StringBuilder("SELECT a.username FROM UserData a WHERE (a.caId IN (:caId))");
+        // Use keyset pagination on (column, username) if the order is by a non-null number or by username. With an additional constraint
+        // the sort column has the same value for all results, so they are ordered by username only.
+        String keysetColumn = null;
+        String keysetOrder = null;
+        if (keysetSummary != null && StringUtils.isNotEmpty(sortingOperation)) {
+            final Matcher matcher = END_ENTITY_SORT_OPERATION.matcher(sortingOperation);
+            if (matcher.matches()) {
+                keysetOrder = matcher.group(2).toUpperCase();
+                if (StringUtils.isNotEmpty(additionalConstraintQuery) || "username".equals(matcher.group(1))) {
+                    keysetColumn = "username";
+                    if (StringUtils.isNotEmpty(additionalConstraintQuery)) {
+                        keysetOrder = "ASC";
+                    }
+                } else if ("timeModified".equals(matcher.group(1)) || "timeCreated".equals(matcher.group(1))) {
+                    keysetColumn = matcher.group(1);
+                }
+            }
+        }
+        final boolean keysetValueUsed = keysetColumn != null && !"username".equals(keysetColumn);
+        final boolean keysetPositionUsed = keysetColumn != null && keysetSummary.getKeysetLastUsername() != null;
+        final StringBuilder sb = new StringBuilder(keysetValueUsed ? "SELECT a.username, a." + keysetColumn : "SELECT a.username");
+        sb.append(" FROM UserData a WHERE (a.caId IN (:caId))");
         if (!subjectDnSearchString.isEmpty() || !subjectAnSearchString.isEmpty() || !usernameSearchString.isEmpty()) {
             sb.append(" AND (");
             boolean firstAppended = false;
@@ -1791,7 +1895,22 @@ public class RaMasterApiSessionBean implements RaMasterApiSessionLocal {
             sb.append(" AND (a.endEntityProfileId IN (:endEntityProfileId))");
         }
         sb.append(additionalConstraintQuery);
-        sb.append(sortingOperation);
+        if (keysetColumn != null) {
+            final String comparison = "DESC".equals(keysetOrder) ? " < " : " > ";
+            if (keysetPositionUsed && keysetValueUsed) {
+                sb.append(" AND (a.").append(keysetColumn).append(comparison).append(":keysetValue OR (a.").append(keysetColumn)
+                        .append(" = :keysetValue AND a.username").append(comparison).append(":keysetUsername))");
+            } else if (keysetPositionUsed) {
+                sb.append(" AND a.username").append(comparison).append(":keysetUsername");
+            }
+            sb.append(" ORDER BY ");
+            if (keysetValueUsed) {
+                sb.append("a.").append(keysetColumn).append(" ").append(keysetOrder).append(", ");
+            }
+            sb.append("a.username ").append(keysetOrder);
+        } else {
+            sb.append(sortingOperation);
+        }
         log.info("formed query: " + LogRedactionUtils.getRedactedMessage(sb.toString()));
         final Query query = entityManager.createQuery(sb.toString());
         query.setParameter("caId", authorizedLocalCaIds);
@@ -1847,9 +1966,18 @@ public class RaMasterApiSessionBean implements RaMasterApiSessionLocal {
         if (StringUtils.isNotEmpty(additionalConstraintQuery)) {
             query.setParameter("sortconstraint", additionalConstraintParam);
         }
+        if (keysetPositionUsed) {
+            query.setParameter("keysetUsername", keysetSummary.getKeysetLastUsername());
+            if (keysetValueUsed) {
+                query.setParameter("keysetValue", keysetSummary.getKeysetLastValue());
+            }
+        }
         final int maxResults = Math.min(getGlobalCesecoreConfiguration().getMaximumQueryCount(), request.getMaxResults());
         query.setMaxResults(maxResults);
-        if (currentQueryOffset != -1) {
+        if (keysetPositionUsed) {
+            // The condition on the sort columns skips the previous pages
+            query.setFirstResult(0);
+        } else if (currentQueryOffset != -1) {
             // for v2 on multiple ca,cp,eep id in same page
             // maxResults is not updated for convenience
             query.setFirstResult(currentQueryOffset);
@@ -1867,12 +1995,24 @@ public class RaMasterApiSessionBean implements RaMasterApiSessionLocal {
             query.setHint("jakarta.persistence.query.timeout", String.valueOf(queryTimeout));
         }
         log.info("query:" + LogRedactionUtils.getRedactedMessage(query.toString()));
-        final List<String> usernames;
+        final List<?> usernames;
         try {
             usernames = query.getResultList();
-            for (final String username : usernames) {
+            String username = null;
+            long sortValue = 0;
+            for (final Object result : usernames) {
+                if (keysetValueUsed) {
+                    final Object[] row = (Object[]) result;
+                    username = (String) row[0];
+                    sortValue = ((Number) row[1]).longValue();
+                } else {
+                    username = (String) result;
+                }
                 response.getEndEntities().add(endEntityAccessSession.findUser(username));
             }
+            if (keysetColumn != null && username != null) {
+                keysetSummary.setKeysetPosition(sortValue, username);
+            }
             response.setMightHaveMoreResults(usernames.size() == maxResults);
             if (log.isDebugEnabled()) {
                 log.debug("Certificate search query: " + LogRedactionUtils.getRedactedMessage(sb.toString()) + " LIMIT " + maxResults + " \u2192 "
@@ -0,0 +1,83 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.model.era;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.cesecore.util.ComponentMetrics;
+import org.cesecore.util.ComponentMetrics.Sample;
+
+/**
+ * Latency of the searches that {@link RaMasterApiProxyBean} sends to each back end. Back ends are numbered in the order they are searched,
+ * so back end 0 is normally the local one.
+ * <p>
+ * The counters are available from the metrics servlet, see {@link ComponentMetrics}. The average latency of a back end is the rate of
+ * ejbca_ra_search_backend_seconds_total divided by the rate of ejbca_ra_search_backend_requests_total.
+ */
+public enum RaSearchStatistics {
+    INSTANCE;
+
+    /** Counters of a single back end */
+    private static final class Backend {
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+        private final LongAdder timeouts = new LongAdder();
+    }
+
+    private final Map<Integer, Backend> backends = new ConcurrentSkipListMap<>();
+
+    private RaSearchStatistics() {
+        ComponentMetrics.INSTANCE.register("ra_search", this::collectMetrics);
+    }
+
+    private Backend getBackend(final int index) {
+        return backends.computeIfAbsent(index, key -> new Backend());
+    }
+
+    /**
+     * @param index the number of the back end
+     * @param nanos the time the back end took to answer
+     */
+    public void addSearch(final int index, final long nanos) {
+        final Backend backend = getBackend(index);
+        backend.requests.increment();
+        backend.nanos.add(nanos);
+    }
+
+    /** Called when a back end did not answer within peerconnector.search.timeout ms, and its results were skipped. */
+    public void addTimeout(final int index) {
+        getBackend(index).timeouts.increment();
+    }
+
+    private void collectMetrics(final List<Sample> samples) {
+        for (final Map.Entry<Integer, Backend> entry : backends.entrySet()) {
+            final String index = String.valueOf(entry.getKey());
+            final Backend backend = entry.getValue();
+            samples.add(Sample.counter("ejbca_ra_search_backend_requests_total", "Number of RA searches answered by the back end.",
+                    backend.requests.sum()).withLabel("backend", index));
+            samples.add(Sample.counter("ejbca_ra_search_backend_seconds_total", "Total time the back end took to answer RA searches.",
+                    backend.nanos.sum() / (double) TimeUnit.SECONDS.toNanos(1)).withLabel("backend", index));
+            samples.add(Sample.counter("ejbca_ra_search_backend_timeouts_total", "Number of RA searches where the results of the back end were skipped "
+                    + "because it did not answer in time.", backend.timeouts.sum()).withLabel("backend", index));
+        }
+    }
+
+    /** Clear all counters. */
+    public void clear() {
+        backends.clear();
+    }
+}
@@ -13,9 +13,7 @@
 
 package org.ejbca.core.ejb.ca.publisher;
 
-import java.beans.XMLEncoder;
 import java.io.Serializable;
-import java.io.UnsupportedEncodingException;
 import java.util.HashMap;
 
 import jakarta.persistence.Entity;
@@ -32,6 +30,7 @@ import org.cesecore.dbprotection.DatabaseProtectionException;
 import org.cesecore.dbprotection.ProtectedData;
 import org.cesecore.dbprotection.ProtectionStringBuilder;
 import org.cesecore.util.Base64PutHashMap;
+import org.cesecore.util.CompactDataMapSerializer;
 import org.cesecore.util.QueryResultWrapper;
 import org.ejbca.core.model.ca.publisher.BasePublisher;
 
@@ -114,18 +113,11 @@ public class PublisherData extends ProtectedData implements Serializable {
 		// We must base64 encode string for UTF safety
         HashMap a = new Base64PutHashMap();
 		a.putAll((HashMap)publisher.saveData());
-		java.io.ByteArrayOutputStream baos = new java.io.ByteArrayOutputStream();
-		try (XMLEncoder encoder = new XMLEncoder(baos)) {
-		    encoder.writeObject(a);
-		}
-        try {
-            if (log.isDebugEnabled()) {
-                log.debug("Publisher data: \n" + baos.toString("UTF8"));
-            }
-            setData(baos.toString("UTF8"));
-        } catch (UnsupportedEncodingException e) {
-            throw new RuntimeException(e);
+		final String data = CompactDataMapSerializer.encode(a);
+        if (log.isDebugEnabled()) {
+            log.debug("Publisher data: \n" + data);
         }
+        setData(data);
 		this.publisher = publisher;
 		setUpdateCounter(getUpdateCounter() + 1);
 	}
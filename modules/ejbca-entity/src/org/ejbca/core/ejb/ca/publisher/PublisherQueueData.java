@@ -19,6 +19,7 @@ import java.io.Serializable;
 import java.io.UnsupportedEncodingException;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 
@@ -320,6 +321,51 @@ public class PublisherQueueData extends ProtectedData implements Serializable {
     	return query.getResultList();
     }
 
+    /**
+     * Lookup publisher queue data items with the specified status for the publisher specified, using keyset pagination. The results
+     * are ordered by the time they were created and then by primary key, in ascending order (i.e. oldest items first).
+     *
+     * @param entityManager the entity manager used to create the query.
+     * @param publisherId the id of a publisher, only publisher queue data items for this publisher is returned.
+     * @param publishStatus one of the constants in {@link PublisherConst}, only publisher queue data items with this status is returned.
+     * @param timeCreated timeCreated of the last item of the previous page, or -1 to start from the beginning
+     * @param pk primary key of the last item of the previous page, or an empty string to start from the beginning
+     * @param maxRows the maximum number of rows to fetch
+     * @return return a list of publisher queue data items.
+     */
+    @SuppressWarnings("unchecked")
+    public static List<PublisherQueueData> findDataByPublisherIdAndStatusAfter(EntityManager entityManager, int publisherId, int publishStatus,
+            long timeCreated, String pk, int maxRows) {
+        final Query query = entityManager.createQuery("SELECT a FROM PublisherQueueData a WHERE a.publisherId=:publisherId AND a.publishStatus=:publishStatus"
+                + " AND (a.timeCreated>:timeCreated OR (a.timeCreated=:timeCreated2 AND a.pk>:pk)) ORDER BY a.timeCreated ASC, a.pk ASC");
+        query.setParameter("publisherId", publisherId);
+        query.setParameter("publishStatus", publishStatus);
+        query.setParameter("timeCreated", timeCreated);
+        query.setParameter("timeCreated2", timeCreated);
+        query.setParameter("pk", pk);
+        query.setMaxResults(maxRows);
+        return query.getResultList();
+    }
+
+    /** @return the publisher queue data items with the given primary keys */
+    @SuppressWarnings("unchecked")
+    public static List<PublisherQueueData> findByPks(EntityManager entityManager, Collection<String> pks) {
+        final Query query = entityManager.createQuery("SELECT a FROM PublisherQueueData a WHERE a.pk IN (:pks)");
+        query.setParameter("pks", pks);
+        return query.getResultList();
+    }
+
+    /**
+     * Removes the publisher queue data items with the given primary keys, in a single statement.
+     *
+     * @return the number of removed items
+     */
+    public static int deleteByPks(EntityManager entityManager, Collection<String> pks) {
+        final Query query = entityManager.createQuery("DELETE FROM PublisherQueueData a WHERE a.pk IN (:pks)");
+        query.setParameter("pks", pks);
+        return query.executeUpdate();
+    }
+
 	/** @return return the count. */
 	public static long findCountOfPendingEntriesForPublisher(EntityManager entityManager, int publisherId) {
 		Query query = entityManager.createQuery("SELECT COUNT(a) FROM PublisherQueueData a WHERE a.publisherId=:publisherId AND publishStatus=" + PublisherConst.STATUS_PENDING);
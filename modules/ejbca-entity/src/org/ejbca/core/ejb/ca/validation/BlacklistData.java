@@ -247,6 +247,41 @@ public class BlacklistData extends ProtectedData implements Serializable {
         return query.getResultList();
     }
 
+    /**
+     * Reads the values of the entries of a type in batches ordered by id, without loading the data of the entries.
+     *
+     * @param type the type of the entries
+     * @param afterId only entries with a higher id are returned, use Integer.MIN_VALUE to start from the beginning
+     * @param maxResults the maximum number of entries to return
+     * @return a list of [id, value, updateCounter] arrays
+     */
+    @SuppressWarnings("unchecked")
+    public static List<Object[]> findIdAndValueByType(EntityManager entityManager, final String type, final int afterId, final int maxResults) {
+        final Query query = entityManager.createQuery(
+                "SELECT a.id, a.value, a.updateCounter FROM BlacklistData a WHERE a.type=:type AND a.id>:afterId ORDER BY a.id");
+        query.setParameter("type", type);
+        query.setParameter("afterId", afterId);
+        query.setMaxResults(maxResults);
+        return query.getResultList();
+    }
+
+    /**
+     * @param type the type of the entries
+     * @return the number of entries of the type, the sum of their ids and the sum of their update counters. The sums change when
+     *     entries are added or removed, and when an existing entry is changed.
+     */
+    public static long[] getChecksumsByType(EntityManager entityManager, final String type) {
+        final Query query = entityManager.createQuery(
+                "SELECT COUNT(a.id), SUM(a.id), SUM(a.updateCounter) FROM BlacklistData a WHERE a.type=:type");
+        query.setParameter("type", type);
+        final Object[] result = (Object[]) query.getSingleResult();
+        final long[] ret = new long[result.length];
+        for (int i = 0; i < result.length; i++) {
+            ret[i] = result[i] == null ? 0 : ((Number) result[i]).longValue();
+        }
+        return ret;
+    }
+
     /** @return return the query results as a List. */
     @SuppressWarnings("unchecked")
     public static List<BlacklistData> findAllById(EntityManager entityManager, Collection<Integer> ids) {
@@ -13,12 +13,8 @@
 
 package org.ejbca.core.ejb.services;
 
-import java.beans.XMLEncoder;
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.Serializable;
-import java.io.UnsupportedEncodingException;
-import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 
 import jakarta.persistence.Entity;
@@ -37,7 +33,7 @@ import org.cesecore.dbprotection.ProtectionStringBuilder;
 import org.cesecore.internal.UpgradeableDataHashMap;
 import org.cesecore.util.Base64GetHashMap;
 import org.cesecore.util.Base64PutHashMap;
-import org.cesecore.util.SecureXMLDecoder;
+import org.cesecore.util.CompactDataMapSerializer;
 import org.ejbca.core.model.services.ServiceConfiguration;
 
 /**
@@ -125,8 +121,8 @@ public class ServiceData extends ProtectedData implements Serializable {
     @Transient
     public ServiceConfiguration getServiceConfiguration() {
         final HashMap<?, ?> h;
-    	try (SecureXMLDecoder decoder = new SecureXMLDecoder(new ByteArrayInputStream(getData().getBytes(StandardCharsets.UTF_8)))) {
-    	    h = (HashMap<?, ?>) decoder.readObject();
+    	try {
+    	    h = (HashMap<?, ?>) CompactDataMapSerializer.decode(getData());
     	} catch (IOException e) {
             final String msg = "Failed to parse ServiceData data map in database: " + e.getMessage();
             if (log.isDebugEnabled()) {
@@ -168,18 +164,11 @@ public class ServiceData extends ProtectedData implements Serializable {
         // We must base64 encode string for UTF safety
         HashMap<Object, Object> a = new Base64PutHashMap();
         a.putAll((HashMap<Object, Object>)serviceConfiguration.saveData());
-        java.io.ByteArrayOutputStream baos = new java.io.ByteArrayOutputStream();
-        try (XMLEncoder encoder = new XMLEncoder(baos)) {
-            encoder.writeObject(a);
-        }
-        try {
-            if (log.isDebugEnabled()) {
-                log.debug("Service data: \n" + baos.toString("UTF8"));
-            }
-            setData(baos.toString("UTF8"));
-        } catch (UnsupportedEncodingException e) {
-            throw new RuntimeException(e);
+        final String data = CompactDataMapSerializer.encode(a);
+        if (log.isDebugEnabled()) {
+            log.debug("Service data: \n" + data);
         }
+        setData(data);
     }
 
     //
@@ -21,7 +21,7 @@ import io.swagger.v3.oas.annotations.media.Schema;
 /**
  * A class representing pagination parameters with a page size and a current page.
  */
-@JsonPropertyOrder({ "page_size", "current_page" })
+@JsonPropertyOrder({ "page_size", "current_page", "cursor" })
 public class Pagination {
 
     @Schema(description = "Number of results per page", example = "10")
@@ -34,6 +34,13 @@ public class Pagination {
     @JsonProperty("current_page")
     private int currentPage;
 
+    @Schema(description = "Cursor from the next_cursor of the previous page. When given, the page after that one is returned, "
+            + "regardless of current_page, and the search must have the same criteria and sort. This is much faster than current_page for "
+            + "pages far into large result sets.", example = "VVBEQVRFX1RJTUU6REVTQzoxNzAwMDAwMDAwMDAwOmFiY2Q")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonProperty("cursor")
+    private String cursor;
+
     public Pagination() {
         super();
     }
@@ -59,5 +66,13 @@ public class Pagination {
     public void setCurrentPage(final int currentPage) {
         this.currentPage = currentPage;
     }
+
+    public String getCursor() {
+        return cursor;
+    }
+
+    public void setCursor(final String cursor) {
+        this.cursor = cursor;
+    }
         
 }
@@ -19,7 +19,7 @@ import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 /**
  * JSON output for pagination summary.
  */
-@JsonPropertyOrder({ "page_size", "current_page", "total_certs" })
+@JsonPropertyOrder({ "page_size", "current_page", "total_certs", "next_cursor" })
 public class PaginationSummary {
 
     @JsonInclude(JsonInclude.Include.NON_NULL)
@@ -34,6 +34,10 @@ public class PaginationSummary {
     @JsonProperty("current_page")
     private Integer currentPage;
 
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonProperty("next_cursor")
+    private String nextCursor;
+
     public PaginationSummary() {
         super();
     }
@@ -73,6 +77,15 @@ public class PaginationSummary {
         this.currentPage = currentPage;
     }
 
+    /** @return cursor for requesting the next page, only present for full pages of searches sorted by UPDATE_TIME or EXPIRE_DATE */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(final String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+
 //    /**
 //     * Returns the number of pages starting at 1 or null if totalCerts is null.
 //     * 
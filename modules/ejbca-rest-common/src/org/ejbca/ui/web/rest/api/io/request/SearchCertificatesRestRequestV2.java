@@ -19,8 +19,10 @@ import io.swagger.v3.oas.annotations.media.Schema;
 import jakarta.validation.Valid;
 import jakarta.ws.rs.core.Response;
 
+import org.apache.commons.lang3.StringUtils;
 import org.cesecore.certificates.certificate.CertificateConstants;
 import org.ejbca.core.model.era.RaCertificateSearchRequestV2;
+import org.ejbca.core.model.era.RaSearchCursor;
 import org.ejbca.ui.web.rest.api.exception.RestException;
 import org.ejbca.ui.web.rest.api.validator.ValidSearchCertificateCriteriaRestRequestList;
 import org.ejbca.ui.web.rest.api.validator.ValidSearchCertificatePagination;
@@ -146,6 +148,14 @@ public class SearchCertificatesRestRequestV2 implements SearchCertificateCriteri
             if (pagination != null) {
                 raRequest.setMaxResults(pagination.getPageSize());
                 raRequest.setPageNumber(pagination.getCurrentPage());
+                if (StringUtils.isNotEmpty(pagination.getCursor())) {
+                    try {
+                        RaSearchCursor.decode(pagination.getCursor());
+                    } catch (IllegalArgumentException e) {
+                        throw new RestException(Response.Status.BAD_REQUEST.getStatusCode(), "Malformed pagination cursor.");
+                    }
+                    raRequest.setCursor(pagination.getCursor());
+                }
             }
             final SearchCertificateSortRestRequest orderBy = restRequest.getSort();
             if (orderBy != null) {
@@ -126,6 +126,7 @@ public class SearchCertificatesRestResponseV2 {
                 } else if (count > 0) {
                     summary.setTotalCerts((long) pageSize * (currentPage - 1) + count);
                 }
+                summary.setNextCursor(raCertificateSearchResponse.getNextCursor());
             } else {
                 summary = new PaginationSummary(raCertificateSearchResponse.getTotalCount());
             }
@@ -0,0 +1,62 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.ui.web.pub;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringWriter;
+import java.util.Arrays;
+
+import org.cesecore.util.ComponentMetrics.Sample;
+import org.ejbca.core.ejb.ProfilingStats;
+import org.ejbca.core.ejb.ProfilingStats.MethodStats;
+import org.junit.Test;
+
+/**
+ * Test of the output format of {@link MetricsServlet}.
+ */
+public class MetricsServletUnitTest {
+
+    @Test
+    public void prometheusTextFormat() throws Exception {
+        final MethodStats ocsp = ProfilingStats.INSTANCE.getMethodStats("org.ejbca.core.ejb.ocsp.OcspResponseGeneratorSessionBean.getOcspResponse");
+        ocsp.add(1_500_000L, false);
+        ocsp.add(2_500_000L, true);
+        final MethodStats quoted = ProfilingStats.INSTANCE.getMethodStats("Some\"Bean\\.method");
+        quoted.add(1000L, false);
+        final StringWriter out = new StringWriter();
+        MetricsServlet.writeMetrics(out, Arrays.asList(ocsp, quoted));
+        final String metrics = out.toString();
+        final String label = "{method=\"org.ejbca.core.ejb.ocsp.OcspResponseGeneratorSessionBean.getOcspResponse\"";
+        assertTrue(metrics, metrics.contains("# TYPE ejbca_ejb_invocations_total counter\n"));
+        assertTrue(metrics, metrics.contains("ejbca_ejb_invocations_total" + label + "} 2\n"));
+        assertTrue(metrics, metrics.contains("ejbca_ejb_invocation_failures_total" + label + "} 1\n"));
+        assertTrue(metrics, metrics.contains("# TYPE ejbca_ejb_invocation_duration_seconds summary\n"));
+        assertTrue(metrics, metrics.contains("ejbca_ejb_invocation_duration_seconds" + label + ",quantile=\"0.99\"} 0.00"));
+        assertTrue(metrics, metrics.contains("ejbca_ejb_invocation_duration_seconds_sum" + label + "} 0.004\n"));
+        assertTrue(metrics, metrics.contains("ejbca_ejb_invocation_duration_seconds_count" + label + "} 2\n"));
+        assertTrue("Label values should be escaped: " + metrics, metrics.contains("{method=\"Some\\\"Bean\\\\.method\"}"));
+        assertTrue("Output should be sorted by method name", metrics.indexOf("Some") < metrics.indexOf("org.ejbca"));
+    }
+
+    @Test
+    public void componentMetrics() throws Exception {
+        final StringWriter out = new StringWriter();
+        MetricsServlet.writeComponentMetrics(out, Arrays.asList(Sample.gauge("ejbca_test_depth", "Test depth.", 3).withLabel("key", "RSA:2048"),
+                Sample.counter("ejbca_test_total", "Test counter.", 5), Sample.gauge("ejbca_test_depth", "Test depth.", 1).withLabel("key", "EC\"")));
+        final String metrics = out.toString();
+        assertTrue(metrics, metrics.startsWith("# HELP ejbca_test_depth Test depth.\n# TYPE ejbca_test_depth gauge\n"
+                + "ejbca_test_depth{key=\"RSA:2048\"} 3.0\nejbca_test_depth{key=\"EC\\\"\"} 1.0\n"));
+        assertTrue(metrics, metrics.endsWith("# HELP ejbca_test_total Test counter.\n# TYPE ejbca_test_total counter\nejbca_test_total 5.0\n"));
+    }
+}
@@ -0,0 +1,166 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.ui.web.pub;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import jakarta.servlet.ServletConfig;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import org.apache.commons.lang.ArrayUtils;
+import org.apache.log4j.Logger;
+import org.cesecore.util.ComponentMetrics;
+import org.cesecore.util.ComponentMetrics.Sample;
+import org.ejbca.config.EjbcaConfiguration;
+import org.ejbca.core.ejb.ProfilingStats;
+import org.ejbca.core.ejb.ProfilingStats.MethodStats;
+import org.ejbca.core.model.InternalEjbcaResources;
+
+/**
+ * Servlet that exposes the invocation statistics of all EJB methods in the Prometheus text exposition format, so that e.g. the
+ * latency of OCSP, certificate issuance and publishing can be monitored in production.
+ * <p>
+ * For each method the number of invocations, the number of failed invocations and a summary of the durations with the
+ * 50th, 90th, 99th and 99.9th percentiles since startup are returned, followed by the metrics of internal components such as the
+ * OCSP signing pool. Access is restricted to healthcheck.authorizedips, in the same way as for the health check servlet.
+ *
+ * @see ProfilingStats
+ * @see ComponentMetrics
+ */
+public class MetricsServlet extends HttpServlet {
+
+    private static final long serialVersionUID = 1L;
+    private static final Logger log = Logger.getLogger(MetricsServlet.class);
+    /** Internal localization of logs and errors */
+    private static final InternalEjbcaResources intres = InternalEjbcaResources.getInstance();
+
+    static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+
+    private String[] authIPs = null;
+    private boolean anyIpAuthorized = false;
+
+    @Override
+    public void init(ServletConfig config) throws ServletException {
+        super.init(config);
+        authIPs = EjbcaConfiguration.getHealthCheckAuthorizedIps().split(";");
+        anyIpAuthorized = ArrayUtils.contains(authIPs, "ANY");
+    }
+
+    @Override
+    public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException {
+        String remoteIP = request.getRemoteAddr();
+        if (remoteIP == null || remoteIP.length() > 100) {
+            remoteIP = "unknown";
+        }
+        if (!anyIpAuthorized && !ArrayUtils.contains(authIPs, remoteIP)) {
+            log.error(intres.getLocalizedMessage("healthcheck.errorauth", remoteIP));
+            response.sendError(HttpServletResponse.SC_UNAUTHORIZED, "ERROR : Metrics request received from an non authorized IP: " + remoteIP);
+            return;
+        }
+        if (!EjbcaConfiguration.isEjbMetricsEnabled()) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND, "Metrics are disabled with ejbca.metrics.enabled.");
+            return;
+        }
+        response.setContentType(CONTENT_TYPE);
+        final Writer out = response.getWriter();
+        writeMetrics(out, ProfilingStats.INSTANCE.getMethodStats());
+        writeComponentMetrics(out, ComponentMetrics.INSTANCE.getSamples());
+        out.flush();
+    }
+
+    /** Writes the statistics in the Prometheus text exposition format, sorted by method name */
+    static void writeMetrics(final Writer out, final Collection<MethodStats> methodStats) throws IOException {
+        final List<MethodStats> sorted = new ArrayList<>(methodStats);
+        sorted.sort(Comparator.comparing(MethodStats::getFullMethodName));
+        final StringBuilder sb = new StringBuilder();
+        sb.append("# HELP ejbca_ejb_invocations_total Number of EJB method invocations.\n");
+        sb.append("# TYPE ejbca_ejb_invocations_total counter\n");
+        for (final MethodStats stats : sorted) {
+            appendName(sb, "ejbca_ejb_invocations_total", stats).append("} ").append(stats.getInvocations()).append('\n');
+        }
+        sb.append("# HELP ejbca_ejb_invocation_failures_total Number of EJB method invocations that threw an exception.\n");
+        sb.append("# TYPE ejbca_ejb_invocation_failures_total counter\n");
+        for (final MethodStats stats : sorted) {
+            appendName(sb, "ejbca_ejb_invocation_failures_total", stats).append("} ").append(stats.getFailures()).append('\n');
+        }
+        sb.append("# HELP ejbca_ejb_invocation_duration_seconds Duration of EJB method invocations since startup.\n");
+        sb.append("# TYPE ejbca_ejb_invocation_duration_seconds summary\n");
+        for (final MethodStats stats : sorted) {
+            for (final double quantile : QUANTILES) {
+                appendName(sb, "ejbca_ejb_invocation_duration_seconds", stats).append(",quantile=\"").append(quantile).append("\"} ")
+                        .append(toSeconds(stats.getDurationNanosAtQuantile(quantile))).append('\n');
+            }
+            appendName(sb, "ejbca_ejb_invocation_duration_seconds_sum", stats).append("} ").append(toSeconds(stats.getDurationNanos())).append('\n');
+            appendName(sb, "ejbca_ejb_invocation_duration_seconds_count", stats).append("} ").append(stats.getInvocations()).append('\n');
+        }
+        out.write(sb.toString());
+    }
+
+    /** Writes the metrics of internal components in the Prometheus text exposition format, with the samples of a metric kept together */
+    static void writeComponentMetrics(final Writer out, final List<Sample> samples) throws IOException {
+        final StringBuilder sb = new StringBuilder();
+        final Set<String> written = new HashSet<>();
+        for (final Sample first : samples) {
+            if (!written.add(first.getName())) {
+                continue;
+            }
+            sb.append("# HELP ").append(first.getName()).append(' ').append(first.getHelp()).append('\n');
+            sb.append("# TYPE ").append(first.getName()).append(' ').append(first.getType()).append('\n');
+            for (final Sample sample : samples) {
+                if (sample.getName().equals(first.getName())) {
+                    sb.append(sample.getName());
+                    if (sample.getLabelName() != null) {
+                        sb.append('{').append(sample.getLabelName()).append("=\"");
+                        appendEscaped(sb, sample.getLabelValue());
+                        sb.append("\"}");
+                    }
+                    sb.append(' ').append(sample.getValue()).append('\n');
+                }
+            }
+        }
+        out.write(sb.toString());
+    }
+
+    private static StringBuilder appendName(final StringBuilder sb, final String metricName, final MethodStats stats) {
+        sb.append(metricName).append("{method=\"");
+        appendEscaped(sb, stats.getFullMethodName());
+        return sb.append('"');
+    }
+
+    private static void appendEscaped(final StringBuilder sb, final String labelValue) {
+        for (int i = 0; i < labelValue.length(); i++) {
+            final char c = labelValue.charAt(i);
+            switch (c) {
+            case '\\': sb.append("\\\\"); break;
+            case '"': sb.append("\\\""); break;
+            case '\n': sb.append("\\n"); break;
+            default: sb.append(c);
+            }
+        }
+    }
+
+    private static double toSeconds(final long nanos) {
+        return nanos / 1_000_000_000.0;
+    }
+}